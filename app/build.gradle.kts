@@ -41,6 +41,24 @@ android {
         targetCompatibility = JavaVersion.VERSION_11
     }
 
+    buildFeatures {
+        // AppLog 按 BuildConfig.DEBUG 选择默认日志级别
+        buildConfig = true
+    }
+
+    // JVM 单元测试：android.jar 中的方法（如 android.util.Log）返回默认值而不抛异常
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+        // JMH 基准测试：-Pbenchmark 运行全部，-Pbenchmark=类名 运行指定基准（见 BenchmarkRunnerTest）
+        unitTests.all {
+            val benchmark = project.findProperty("benchmark")?.toString()
+            it.systemProperty("evcam.benchmark", if (benchmark == null) "" else benchmark.ifEmpty { ".*Benchmark" })
+            // 需要真实设备目录的测试参数：-Pevcam.xxx=值 转为系统属性（如 SegmentFileTest、StorageBenchmarkTest）
+            project.properties.filterKeys { key -> key.startsWith("evcam.") }
+                .forEach { (key, value) -> it.systemProperty(key, value.toString()) }
+        }
+    }
+
 }
 
 dependencies {
@@ -70,6 +88,8 @@ dependencies {
     // WorkManager 閻庤纰嶅鍌涚鐠囨彃顫ら柨娑樼墢閺併倖绂嶆惔婵堢婵炶弓绱槐?    implementation("androidx.work:work-runtime:2.9.0")
 
     testImplementation(libs.junit)
+    testImplementation(libs.jmh.core)
+    testAnnotationProcessor(libs.jmh.generator.annprocess)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
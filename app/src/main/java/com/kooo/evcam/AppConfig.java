@@ -3,13 +3,17 @@ package com.kooo.evcam;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * 应用配置管理类
  * 管理应用级别的配置项
  */
 public class AppConfig {
     private static final String TAG = "AppConfig";
-    private static final String PREF_NAME = "app_config";
+    static final String PREF_NAME = "app_config";
     
     // 配置项键名
     private static final String KEY_FIRST_LAUNCH = "first_launch";  // 首次启动标记
@@ -19,10 +23,11 @@ public class AppConfig {
     private static final String KEY_SCREEN_OFF_RECORDING = "screen_off_recording";  // 息屏录制（锁车录制）
     private static final String KEY_KEEP_ALIVE_ENABLED = "keep_alive_enabled";  // 保活服务
     private static final String KEY_PREVENT_SLEEP_ENABLED = "prevent_sleep_enabled";  // 防止休眠（持续WakeLock）
-    private static final String KEY_RECORDING_MODE = "recording_mode";  // 录制模式
+    static final String KEY_RECORDING_MODE = "recording_mode";  // 录制模式
+    static final String KEY_PERSISTENT_RECORD_SESSION = "persistent_record_session";  // 常驻录制会话（持久化录制 Surface）
     
     // 存储位置配置
-    private static final String KEY_STORAGE_LOCATION = "storage_location";  // 存储位置
+    static final String KEY_STORAGE_LOCATION = "storage_location";  // 存储位置
     private static final String KEY_CUSTOM_SD_CARD_PATH = "custom_sd_card_path";  // 手动设置的U盘路径
     private static final String KEY_LAST_DETECTED_SD_PATH = "last_detected_sd_path";  // 上次自动检测到的U盘路径（缓存）
     
@@ -43,15 +48,21 @@ public class AppConfig {
     // 存储清理配置
     private static final String KEY_VIDEO_STORAGE_LIMIT_GB = "video_storage_limit_gb";  // 视频存储限制（GB）
     private static final String KEY_PHOTO_STORAGE_LIMIT_GB = "photo_storage_limit_gb";  // 图片存储限制（GB）
+    private static final String KEY_EVENT_RETENTION_DAYS = "event_retention_days";  // 事件录像保留天数
+    private static final String KEY_LOCKED_STORAGE_LIMIT_GB = "locked_storage_limit_gb";  // 锁定文件存储上限（GB）
+    private static final String KEY_CAMERA_RETENTION_WEIGHTS = "camera_retention_weights";  // 摄像头保留权重
+    private static final String KEY_RELAY_COPY_CONCURRENCY = "relay_copy_concurrency";  // 中转复制并发数（每个存储卷）
+    private static final String KEY_RELAY_COPY_RATE_LIMIT_MB = "relay_copy_rate_limit_mb";  // 中转复制限速（MB/s）
+    static final String KEY_STORAGE_BENCHMARK_PREFIX = "storage_benchmark_";  // 存储写入测试结果（按存储位置）
     
     // 分段录制配置
-    private static final String KEY_SEGMENT_DURATION_MINUTES = "segment_duration_minutes";  // 分段时长（分钟）
+    static final String KEY_SEGMENT_DURATION_MINUTES = "segment_duration_minutes";  // 分段时长（分钟）
     
     // 录制状态显示配置
     private static final String KEY_RECORDING_STATS_ENABLED = "recording_stats_enabled";  // 录制状态显示开关
     
     // 时间角标配置
-    private static final String KEY_TIMESTAMP_WATERMARK_ENABLED = "timestamp_watermark_enabled";  // 时间角标开关
+    static final String KEY_TIMESTAMP_WATERMARK_ENABLED = "timestamp_watermark_enabled";  // 时间角标开关
     
     // 录制摄像头选择配置
     private static final String KEY_RECORDING_CAMERA_FRONT_ENABLED = "recording_camera_front_enabled";  // 前摄像头参与录制
@@ -60,14 +71,14 @@ public class AppConfig {
     private static final String KEY_RECORDING_CAMERA_RIGHT_ENABLED = "recording_camera_right_enabled";  // 右摄像头参与录制
     
     // 亮度/降噪调节配置
-    private static final String KEY_IMAGE_ADJUST_ENABLED = "image_adjust_enabled";  // 是否启用亮度/降噪调节
-    private static final String KEY_EXPOSURE_COMPENSATION = "exposure_compensation";  // 曝光补偿值
-    private static final String KEY_AWB_MODE = "awb_mode";  // 白平衡模式
-    private static final String KEY_TONEMAP_MODE = "tonemap_mode";  // 色调映射模式
-    private static final String KEY_EDGE_MODE = "edge_mode";  // 边缘增强模式
-    private static final String KEY_NOISE_REDUCTION_MODE = "noise_reduction_mode";  // 降噪模式
-    private static final String KEY_EFFECT_MODE = "effect_mode";  // 特效模式
-    private static final String KEY_SCENE_MODE = "scene_mode";  // 场景模式
+    static final String KEY_IMAGE_ADJUST_ENABLED = "image_adjust_enabled";  // 是否启用亮度/降噪调节
+    static final String KEY_EXPOSURE_COMPENSATION = "exposure_compensation";  // 曝光补偿值
+    static final String KEY_AWB_MODE = "awb_mode";  // 白平衡模式
+    static final String KEY_TONEMAP_MODE = "tonemap_mode";  // 色调映射模式
+    static final String KEY_EDGE_MODE = "edge_mode";  // 边缘增强模式
+    static final String KEY_NOISE_REDUCTION_MODE = "noise_reduction_mode";  // 降噪模式
+    static final String KEY_EFFECT_MODE = "effect_mode";  // 特效模式
+    static final String KEY_SCENE_MODE = "scene_mode";  // 场景模式
     
     // 白平衡模式常量（对应 CameraMetadata.CONTROL_AWB_MODE_*）
     public static final int AWB_MODE_DEFAULT = -1;  // 默认（不设置）
@@ -130,13 +141,16 @@ public class AppConfig {
     public static final String RECORDING_MODE_CODEC = "codec";  // OpenGL + MediaCodec（软编码）
     
     // 分辨率配置相关键名
-    private static final String KEY_TARGET_RESOLUTION = "target_resolution";  // 目标分辨率
+    static final String KEY_TARGET_RESOLUTION = "target_resolution";  // 目标分辨率
     
     // 分辨率常量
     public static final String RESOLUTION_DEFAULT = "default";  // 默认（优先1280x800）
+    // “默认”分辨率优先匹配的尺寸；摄像头实际尺寸未知时也按此估算码率
+    public static final int DEFAULT_RESOLUTION_WIDTH = 1280;
+    public static final int DEFAULT_RESOLUTION_HEIGHT = 800;
     
     // 码率配置相关键名
-    private static final String KEY_BITRATE_LEVEL = "bitrate_level";  // 码率等级
+    static final String KEY_BITRATE_LEVEL = "bitrate_level";  // 码率等级
     
     // 码率等级常量
     public static final String BITRATE_LOW = "low";        // 低码率（计算值的50%）
@@ -144,7 +158,7 @@ public class AppConfig {
     public static final String BITRATE_HIGH = "high";      // 高码率（计算值的150%）
     
     // 帧率配置相关键名
-    private static final String KEY_FRAMERATE_LEVEL = "framerate_level";  // 帧率等级
+    static final String KEY_FRAMERATE_LEVEL = "framerate_level";  // 帧率等级
     
     // 帧率等级常量
     public static final String FRAMERATE_STANDARD = "standard";  // 标准帧率（默认）
@@ -175,10 +189,90 @@ public class AppConfig {
     public static final String CAR_MODEL_PHONE = "phone";  // 手机
     public static final String CAR_MODEL_CUSTOM = "custom";  // 自定义车型
     
-    private final SharedPreferences prefs;
+    /**
+     * 配置项所属分组（{@link ConfigService} 按分组通知订阅者）
+     * 新增配置项时在这里登记，未登记的配置项归入 OTHER；按存储位置保存的写入测试结果以前缀匹配，见 ConfigService.groupOf
+     */
+    static final Map<String, ConfigService.KeyGroup> KEY_GROUPS;
+    
+    static {
+        Map<String, ConfigService.KeyGroup> groups = new HashMap<>();
+        groups.put(KEY_TARGET_RESOLUTION, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_BITRATE_LEVEL, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_FRAMERATE_LEVEL, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_SEGMENT_DURATION_MINUTES, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_TIMESTAMP_WATERMARK_ENABLED, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_RECORDING_MODE, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_PERSISTENT_RECORD_SESSION, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_RECORDING_CAMERA_FRONT_ENABLED, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_RECORDING_CAMERA_BACK_ENABLED, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_RECORDING_CAMERA_LEFT_ENABLED, ConfigService.KeyGroup.RECORDING);
+        groups.put(KEY_RECORDING_CAMERA_RIGHT_ENABLED, ConfigService.KeyGroup.RECORDING);
+        
+        groups.put(KEY_IMAGE_ADJUST_ENABLED, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_EXPOSURE_COMPENSATION, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_AWB_MODE, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_TONEMAP_MODE, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_EDGE_MODE, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_NOISE_REDUCTION_MODE, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_EFFECT_MODE, ConfigService.KeyGroup.IMAGE_ADJUST);
+        groups.put(KEY_SCENE_MODE, ConfigService.KeyGroup.IMAGE_ADJUST);
+        
+        groups.put(KEY_CAR_MODEL, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_COUNT, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_FRONT_ID, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_BACK_ID, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_LEFT_ID, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_RIGHT_ID, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_FRONT_NAME, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_BACK_NAME, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_LEFT_NAME, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_RIGHT_NAME, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_FRONT_ROTATION, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_BACK_ROTATION, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_LEFT_ROTATION, ConfigService.KeyGroup.CAMERA);
+        groups.put(KEY_CAMERA_RIGHT_ROTATION, ConfigService.KeyGroup.CAMERA);
+        
+        groups.put(KEY_STORAGE_LOCATION, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_CUSTOM_SD_CARD_PATH, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_LAST_DETECTED_SD_PATH, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_VIDEO_STORAGE_LIMIT_GB, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_PHOTO_STORAGE_LIMIT_GB, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_EVENT_RETENTION_DAYS, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_LOCKED_STORAGE_LIMIT_GB, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_CAMERA_RETENTION_WEIGHTS, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_RELAY_COPY_CONCURRENCY, ConfigService.KeyGroup.STORAGE);
+        groups.put(KEY_RELAY_COPY_RATE_LIMIT_MB, ConfigService.KeyGroup.STORAGE);
+        
+        groups.put(KEY_FLOATING_WINDOW_ENABLED, ConfigService.KeyGroup.UI);
+        groups.put(KEY_FLOATING_WINDOW_SIZE, ConfigService.KeyGroup.UI);
+        groups.put(KEY_FLOATING_WINDOW_ALPHA, ConfigService.KeyGroup.UI);
+        groups.put(KEY_FLOATING_WINDOW_X, ConfigService.KeyGroup.UI);
+        groups.put(KEY_FLOATING_WINDOW_Y, ConfigService.KeyGroup.UI);
+        groups.put(KEY_SCREEN_ORIENTATION, ConfigService.KeyGroup.UI);
+        groups.put(KEY_RECORDING_STATS_ENABLED, ConfigService.KeyGroup.UI);
+        KEY_GROUPS = Collections.unmodifiableMap(groups);
+    }
+    
+    private final ConfigService config;
     
     public AppConfig(Context context) {
-        prefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
+        config = ConfigService.getInstance(context);
+    }
+    
+    /**
+     * 当前配置的不可变快照（可在任意线程无锁读取，热路径可直接持有）
+     */
+    public ConfigSnapshot getSnapshot() {
+        return config.snapshot();
+    }
+    
+    private ConfigSnapshot snapshot() {
+        return config.snapshot();
+    }
+    
+    private SharedPreferences.Editor edit() {
+        return config.edit();
     }
     
     // ==================== 首次启动相关方法 ====================
@@ -188,14 +282,14 @@ public class AppConfig {
      * @return true 表示首次启动（新安装后第一次打开）
      */
     public boolean isFirstLaunch() {
-        return prefs.getBoolean(KEY_FIRST_LAUNCH, true);
+        return snapshot().getBoolean(KEY_FIRST_LAUNCH, true);
     }
     
     /**
      * 标记首次启动已完成
      */
     public void setFirstLaunchCompleted() {
-        prefs.edit().putBoolean(KEY_FIRST_LAUNCH, false).apply();
+        edit().putBoolean(KEY_FIRST_LAUNCH, false).apply();
         AppLog.d(TAG, "首次启动标记已设置为完成");
     }
     
@@ -206,7 +300,7 @@ public class AppConfig {
      * @return 设备名称，如果未设置返回 null
      */
     public String getDeviceNickname() {
-        return prefs.getString(KEY_DEVICE_NICKNAME, null);
+        return snapshot().getString(KEY_DEVICE_NICKNAME, null);
     }
     
     /**
@@ -214,7 +308,7 @@ public class AppConfig {
      * @param nickname 设备名称
      */
     public void setDeviceNickname(String nickname) {
-        prefs.edit().putString(KEY_DEVICE_NICKNAME, nickname).apply();
+        edit().putString(KEY_DEVICE_NICKNAME, nickname).apply();
         AppLog.d(TAG, "设备识别名称已设置: " + nickname);
     }
     
@@ -234,7 +328,7 @@ public class AppConfig {
      * @param enabled true 表示启用开机自启动
      */
     public void setAutoStartOnBoot(boolean enabled) {
-        prefs.edit().putBoolean(KEY_AUTO_START_ON_BOOT, enabled).apply();
+        edit().putBoolean(KEY_AUTO_START_ON_BOOT, enabled).apply();
         AppLog.d(TAG, "开机自启动设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -244,7 +338,7 @@ public class AppConfig {
      */
     public boolean isAutoStartOnBoot() {
         // 默认启用开机自启动（车机系统场景）
-        return prefs.getBoolean(KEY_AUTO_START_ON_BOOT, true);
+        return snapshot().getBoolean(KEY_AUTO_START_ON_BOOT, true);
     }
     
     /**
@@ -252,7 +346,7 @@ public class AppConfig {
      * @param enabled true 表示启用启动自动录制
      */
     public void setAutoStartRecording(boolean enabled) {
-        prefs.edit().putBoolean(KEY_AUTO_START_RECORDING, enabled).apply();
+        edit().putBoolean(KEY_AUTO_START_RECORDING, enabled).apply();
         AppLog.d(TAG, "启动自动录制设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -262,7 +356,7 @@ public class AppConfig {
      */
     public boolean isAutoStartRecording() {
         // 默认禁用启动自动录制（需要用户主动开启）
-        return prefs.getBoolean(KEY_AUTO_START_RECORDING, false);
+        return snapshot().getBoolean(KEY_AUTO_START_RECORDING, false);
     }
     
     /**
@@ -270,7 +364,7 @@ public class AppConfig {
      * @param enabled true 表示息屏时继续录制
      */
     public void setScreenOffRecordingEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_SCREEN_OFF_RECORDING, enabled).apply();
+        edit().putBoolean(KEY_SCREEN_OFF_RECORDING, enabled).apply();
         AppLog.d(TAG, "息屏录制设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -280,7 +374,7 @@ public class AppConfig {
      */
     public boolean isScreenOffRecordingEnabled() {
         // 默认禁用息屏录制
-        return prefs.getBoolean(KEY_SCREEN_OFF_RECORDING, false);
+        return snapshot().getBoolean(KEY_SCREEN_OFF_RECORDING, false);
     }
     
     /**
@@ -288,7 +382,7 @@ public class AppConfig {
      * @param enabled true 表示启用保活服务
      */
     public void setKeepAliveEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_KEEP_ALIVE_ENABLED, enabled).apply();
+        edit().putBoolean(KEY_KEEP_ALIVE_ENABLED, enabled).apply();
         AppLog.d(TAG, "保活服务设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -298,7 +392,7 @@ public class AppConfig {
      */
     public boolean isKeepAliveEnabled() {
         // 默认启用保活服务
-        return prefs.getBoolean(KEY_KEEP_ALIVE_ENABLED, true);
+        return snapshot().getBoolean(KEY_KEEP_ALIVE_ENABLED, true);
     }
     
     /**
@@ -306,7 +400,7 @@ public class AppConfig {
      * @param enabled true 表示启用防止休眠
      */
     public void setPreventSleepEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_PREVENT_SLEEP_ENABLED, enabled).apply();
+        edit().putBoolean(KEY_PREVENT_SLEEP_ENABLED, enabled).apply();
         AppLog.d(TAG, "防止休眠设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -319,7 +413,7 @@ public class AppConfig {
         // 原因：1. 车机使用车辆供电，不影响电池
         //       2. 摄像头应用需要在息屏时继续录制
         //       3. 远程控制需要后台运行
-        return prefs.getBoolean(KEY_PREVENT_SLEEP_ENABLED, true);
+        return snapshot().getBoolean(KEY_PREVENT_SLEEP_ENABLED, true);
     }
     
     /**
@@ -327,7 +421,7 @@ public class AppConfig {
      * @param mode 录制模式（auto/media_recorder/codec）
      */
     public void setRecordingMode(String mode) {
-        prefs.edit().putString(KEY_RECORDING_MODE, mode).apply();
+        edit().putString(KEY_RECORDING_MODE, mode).apply();
         AppLog.d(TAG, "录制模式设置: " + mode);
     }
     
@@ -336,7 +430,7 @@ public class AppConfig {
      * @return 录制模式，默认为自动
      */
     public String getRecordingMode() {
-        return prefs.getString(KEY_RECORDING_MODE, RECORDING_MODE_AUTO);
+        return snapshot().getRecordingMode();
     }
     
     /**
@@ -358,11 +452,29 @@ public class AppConfig {
         }
     }
     
+    /**
+     * 设置是否启用常驻录制会话
+     * 启用后 MediaRecorder 模式使用持久化输入 Surface，开始/停止录制和分段切换不再重建相机会话
+     * @param enabled true 表示启用
+     */
+    public void setPersistentRecordSessionEnabled(boolean enabled) {
+        edit().putBoolean(KEY_PERSISTENT_RECORD_SESSION, enabled).apply();
+        AppLog.d(TAG, "常驻录制会话设置: " + (enabled ? "启用" : "禁用"));
+    }
+    
+    /**
+     * 获取是否启用常驻录制会话
+     * @return true 表示启用，默认启用
+     */
+    public boolean isPersistentRecordSessionEnabled() {
+        return snapshot().isPersistentRecordSession();
+    }
+    
     /**
      * 重置所有配置为默认值
      */
     public void resetToDefault() {
-        prefs.edit().clear().apply();
+        edit().clear().apply();
         AppLog.d(TAG, "配置已重置为默认值");
     }
     
@@ -373,7 +485,7 @@ public class AppConfig {
      * @param resolution 分辨率字符串（如 "1280x720"）或 "default"
      */
     public void setTargetResolution(String resolution) {
-        prefs.edit().putString(KEY_TARGET_RESOLUTION, resolution).apply();
+        edit().putString(KEY_TARGET_RESOLUTION, resolution).apply();
         AppLog.d(TAG, "目标分辨率设置: " + resolution);
     }
     
@@ -382,7 +494,7 @@ public class AppConfig {
      * @return 分辨率字符串，默认为 "default"
      */
     public String getTargetResolution() {
-        return prefs.getString(KEY_TARGET_RESOLUTION, RESOLUTION_DEFAULT);
+        return snapshot().getTargetResolution();
     }
     
     /**
@@ -413,6 +525,16 @@ public class AppConfig {
         }
         return null;
     }
+
+    /**
+     * 目标分辨率对应的宽高
+     * @param resolution 分辨率字符串（如 "1280x720"）
+     * @return [width, height]，“默认”或解析失败时返回默认分辨率
+     */
+    public static int[] resolveResolution(String resolution) {
+        int[] parsed = parseResolution(resolution);
+        return parsed != null ? parsed : new int[]{DEFAULT_RESOLUTION_WIDTH, DEFAULT_RESOLUTION_HEIGHT};
+    }
     
     // ==================== 码率配置相关方法 ====================
     
@@ -421,7 +543,7 @@ public class AppConfig {
      * @param level 码率等级（low/medium/high）
      */
     public void setBitrateLevel(String level) {
-        prefs.edit().putString(KEY_BITRATE_LEVEL, level).apply();
+        edit().putString(KEY_BITRATE_LEVEL, level).apply();
         AppLog.d(TAG, "码率等级设置: " + level);
     }
     
@@ -430,7 +552,7 @@ public class AppConfig {
      * @return 码率等级，默认为 medium
      */
     public String getBitrateLevel() {
-        return prefs.getString(KEY_BITRATE_LEVEL, BITRATE_MEDIUM);
+        return snapshot().getBitrateLevel();
     }
     
     /**
@@ -549,7 +671,7 @@ public class AppConfig {
      * @param level 帧率等级（standard/low）
      */
     public void setFramerateLevel(String level) {
-        prefs.edit().putString(KEY_FRAMERATE_LEVEL, level).apply();
+        edit().putString(KEY_FRAMERATE_LEVEL, level).apply();
         AppLog.d(TAG, "帧率等级设置: " + level);
     }
     
@@ -558,7 +680,7 @@ public class AppConfig {
      * @return 帧率等级，默认为 standard
      */
     public String getFramerateLevel() {
-        return prefs.getString(KEY_FRAMERATE_LEVEL, FRAMERATE_STANDARD);
+        return snapshot().getFramerateLevel();
     }
     
     /**
@@ -596,7 +718,7 @@ public class AppConfig {
      * @param carModel 车型标识（galaxy_e5 或 custom）
      */
     public void setCarModel(String carModel) {
-        prefs.edit().putString(KEY_CAR_MODEL, carModel).apply();
+        edit().putString(KEY_CAR_MODEL, carModel).apply();
         AppLog.d(TAG, "车型设置: " + carModel);
     }
     
@@ -605,7 +727,7 @@ public class AppConfig {
      * @return 车型标识，默认为银河E5
      */
     public String getCarModel() {
-        return prefs.getString(KEY_CAR_MODEL, CAR_MODEL_GALAXY_E5);
+        return snapshot().getString(KEY_CAR_MODEL, CAR_MODEL_GALAXY_E5);
     }
     
     /**
@@ -620,7 +742,7 @@ public class AppConfig {
      * @param count 摄像头数量（4/2/1）
      */
     public void setCameraCount(int count) {
-        prefs.edit().putInt(KEY_CAMERA_COUNT, count).apply();
+        edit().putInt(KEY_CAMERA_COUNT, count).apply();
         AppLog.d(TAG, "摄像头数量设置: " + count);
     }
     
@@ -643,7 +765,7 @@ public class AppConfig {
             case CAR_MODEL_CUSTOM:
             default:
                 // 自定义车型使用用户设置的数量
-                return prefs.getInt(KEY_CAMERA_COUNT, 4);
+                return snapshot().getInt(KEY_CAMERA_COUNT, 4);
         }
     }
     
@@ -652,7 +774,7 @@ public class AppConfig {
      * @return 用户设置的摄像头数量，默认为4
      */
     public int getCustomCameraCount() {
-        return prefs.getInt(KEY_CAMERA_COUNT, 4);
+        return snapshot().getInt(KEY_CAMERA_COUNT, 4);
     }
     
     /**
@@ -660,7 +782,7 @@ public class AppConfig {
      * @param orientation 屏幕方向（landscape/portrait）
      */
     public void setScreenOrientation(String orientation) {
-        prefs.edit().putString(KEY_SCREEN_ORIENTATION, orientation).apply();
+        edit().putString(KEY_SCREEN_ORIENTATION, orientation).apply();
         AppLog.d(TAG, "屏幕方向设置: " + orientation);
     }
     
@@ -669,7 +791,7 @@ public class AppConfig {
      * @return 屏幕方向，默认为横屏
      */
     public String getScreenOrientation() {
-        return prefs.getString(KEY_SCREEN_ORIENTATION, "landscape");
+        return snapshot().getString(KEY_SCREEN_ORIENTATION, "landscape");
     }
     
     /**
@@ -696,7 +818,7 @@ public class AppConfig {
                 AppLog.w(TAG, "未知的摄像头位置: " + position);
                 return;
         }
-        prefs.edit().putString(key, cameraId).apply();
+        edit().putString(key, cameraId).apply();
         AppLog.d(TAG, "摄像头编号设置: " + position + " = " + cameraId);
     }
     
@@ -728,7 +850,7 @@ public class AppConfig {
             default:
                 return "-1";
         }
-        return prefs.getString(key, defaultValue);
+        return snapshot().getString(key, defaultValue);
     }
     
     /**
@@ -755,7 +877,7 @@ public class AppConfig {
                 AppLog.w(TAG, "未知的摄像头位置: " + position);
                 return;
         }
-        prefs.edit().putString(key, name).apply();
+        edit().putString(key, name).apply();
         AppLog.d(TAG, "摄像头名称设置: " + position + " = " + name);
     }
     
@@ -790,7 +912,7 @@ public class AppConfig {
             default:
                 return "未知";
         }
-        return prefs.getString(key, defaultValue);
+        return snapshot().getString(key, defaultValue);
     }
     
     /**
@@ -853,7 +975,7 @@ public class AppConfig {
                 AppLog.w(TAG, "未知的摄像头位置: " + position);
                 return;
         }
-        prefs.edit().putInt(key, rotation).apply();
+        edit().putInt(key, rotation).apply();
         AppLog.d(TAG, "摄像头旋转角度设置: " + position + " = " + rotation + "°");
     }
 
@@ -885,7 +1007,7 @@ public class AppConfig {
             default:
                 return 0;
         }
-        return prefs.getInt(key, 0);
+        return snapshot().getInt(key, 0);
     }
 
     /**
@@ -924,7 +1046,7 @@ public class AppConfig {
      * @param location 存储位置（internal 或 external_sd）
      */
     public void setStorageLocation(String location) {
-        prefs.edit().putString(KEY_STORAGE_LOCATION, location).apply();
+        edit().putString(KEY_STORAGE_LOCATION, location).apply();
         AppLog.d(TAG, "存储位置设置: " + location);
     }
     
@@ -933,7 +1055,7 @@ public class AppConfig {
      * @return 存储位置，默认为内部存储
      */
     public String getStorageLocation() {
-        return prefs.getString(KEY_STORAGE_LOCATION, STORAGE_INTERNAL);
+        return snapshot().getStorageLocation();
     }
     
     /**
@@ -950,10 +1072,10 @@ public class AppConfig {
      */
     public void setCustomSdCardPath(String path) {
         if (path == null || path.trim().isEmpty()) {
-            prefs.edit().remove(KEY_CUSTOM_SD_CARD_PATH).apply();
+            edit().remove(KEY_CUSTOM_SD_CARD_PATH).apply();
             AppLog.d(TAG, "清除自定义U盘路径，使用自动检测");
         } else {
-            prefs.edit().putString(KEY_CUSTOM_SD_CARD_PATH, path.trim()).apply();
+            edit().putString(KEY_CUSTOM_SD_CARD_PATH, path.trim()).apply();
             AppLog.d(TAG, "设置自定义U盘路径: " + path.trim());
         }
     }
@@ -963,7 +1085,7 @@ public class AppConfig {
      * @return 自定义路径，如果未设置返回null
      */
     public String getCustomSdCardPath() {
-        String path = prefs.getString(KEY_CUSTOM_SD_CARD_PATH, null);
+        String path = snapshot().getString(KEY_CUSTOM_SD_CARD_PATH, null);
         if (path != null && path.trim().isEmpty()) {
             return null;
         }
@@ -983,9 +1105,9 @@ public class AppConfig {
      */
     public void setLastDetectedSdPath(String path) {
         if (path == null || path.trim().isEmpty()) {
-            prefs.edit().remove(KEY_LAST_DETECTED_SD_PATH).apply();
+            edit().remove(KEY_LAST_DETECTED_SD_PATH).apply();
         } else {
-            prefs.edit().putString(KEY_LAST_DETECTED_SD_PATH, path.trim()).apply();
+            edit().putString(KEY_LAST_DETECTED_SD_PATH, path.trim()).apply();
             AppLog.d(TAG, "缓存U盘路径: " + path.trim());
         }
     }
@@ -995,7 +1117,7 @@ public class AppConfig {
      * @return 缓存的路径，如果未设置返回null
      */
     public String getLastDetectedSdPath() {
-        return prefs.getString(KEY_LAST_DETECTED_SD_PATH, null);
+        return snapshot().getString(KEY_LAST_DETECTED_SD_PATH, null);
     }
     
     /**
@@ -1035,7 +1157,7 @@ public class AppConfig {
      * @param enabled true 表示启用悬浮窗
      */
     public void setFloatingWindowEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_FLOATING_WINDOW_ENABLED, enabled).apply();
+        edit().putBoolean(KEY_FLOATING_WINDOW_ENABLED, enabled).apply();
         AppLog.d(TAG, "悬浮窗设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -1044,7 +1166,7 @@ public class AppConfig {
      * @return true 表示启用悬浮窗
      */
     public boolean isFloatingWindowEnabled() {
-        return prefs.getBoolean(KEY_FLOATING_WINDOW_ENABLED, false);
+        return snapshot().getBoolean(KEY_FLOATING_WINDOW_ENABLED, false);
     }
     
     /**
@@ -1052,7 +1174,7 @@ public class AppConfig {
      * @param sizeDp 悬浮窗大小，单位dp
      */
     public void setFloatingWindowSize(int sizeDp) {
-        prefs.edit().putInt(KEY_FLOATING_WINDOW_SIZE, sizeDp).apply();
+        edit().putInt(KEY_FLOATING_WINDOW_SIZE, sizeDp).apply();
         AppLog.d(TAG, "悬浮窗大小设置: " + sizeDp + "dp");
     }
     
@@ -1061,7 +1183,7 @@ public class AppConfig {
      * @return 悬浮窗大小，默认为中等大小
      */
     public int getFloatingWindowSize() {
-        return prefs.getInt(KEY_FLOATING_WINDOW_SIZE, FLOATING_SIZE_MEDIUM);
+        return snapshot().getInt(KEY_FLOATING_WINDOW_SIZE, FLOATING_SIZE_MEDIUM);
     }
     
     /**
@@ -1069,7 +1191,7 @@ public class AppConfig {
      * @param alpha 透明度百分比，0为完全透明，100为完全不透明
      */
     public void setFloatingWindowAlpha(int alpha) {
-        prefs.edit().putInt(KEY_FLOATING_WINDOW_ALPHA, alpha).apply();
+        edit().putInt(KEY_FLOATING_WINDOW_ALPHA, alpha).apply();
         AppLog.d(TAG, "悬浮窗透明度设置: " + alpha + "%");
     }
     
@@ -1078,7 +1200,7 @@ public class AppConfig {
      * @return 透明度百分比，默认为100（完全不透明）
      */
     public int getFloatingWindowAlpha() {
-        return prefs.getInt(KEY_FLOATING_WINDOW_ALPHA, 100);
+        return snapshot().getInt(KEY_FLOATING_WINDOW_ALPHA, 100);
     }
     
     /**
@@ -1087,7 +1209,7 @@ public class AppConfig {
      * @param y Y坐标
      */
     public void setFloatingWindowPosition(int x, int y) {
-        prefs.edit()
+        edit()
             .putInt(KEY_FLOATING_WINDOW_X, x)
             .putInt(KEY_FLOATING_WINDOW_Y, y)
             .apply();
@@ -1098,7 +1220,7 @@ public class AppConfig {
      * @return X坐标，默认-1表示未设置
      */
     public int getFloatingWindowX() {
-        return prefs.getInt(KEY_FLOATING_WINDOW_X, -1);
+        return snapshot().getInt(KEY_FLOATING_WINDOW_X, -1);
     }
     
     /**
@@ -1106,7 +1228,7 @@ public class AppConfig {
      * @return Y坐标，默认-1表示未设置
      */
     public int getFloatingWindowY() {
-        return prefs.getInt(KEY_FLOATING_WINDOW_Y, -1);
+        return snapshot().getInt(KEY_FLOATING_WINDOW_Y, -1);
     }
     
     // ==================== 存储清理配置相关方法 ====================
@@ -1116,7 +1238,7 @@ public class AppConfig {
      * @param limitGb 存储限制，单位GB，0表示不限制
      */
     public void setVideoStorageLimitGb(int limitGb) {
-        prefs.edit().putInt(KEY_VIDEO_STORAGE_LIMIT_GB, limitGb).apply();
+        edit().putInt(KEY_VIDEO_STORAGE_LIMIT_GB, limitGb).apply();
         AppLog.d(TAG, "视频存储限制设置: " + limitGb + " GB");
     }
     
@@ -1125,7 +1247,7 @@ public class AppConfig {
      * @return 存储限制，单位GB，0表示不限制，默认10GB
      */
     public int getVideoStorageLimitGb() {
-        return prefs.getInt(KEY_VIDEO_STORAGE_LIMIT_GB, 10);
+        return snapshot().getInt(KEY_VIDEO_STORAGE_LIMIT_GB, 10);
     }
     
     /**
@@ -1133,7 +1255,7 @@ public class AppConfig {
      * @param limitGb 存储限制，单位GB，0表示不限制
      */
     public void setPhotoStorageLimitGb(int limitGb) {
-        prefs.edit().putInt(KEY_PHOTO_STORAGE_LIMIT_GB, limitGb).apply();
+        edit().putInt(KEY_PHOTO_STORAGE_LIMIT_GB, limitGb).apply();
         AppLog.d(TAG, "图片存储限制设置: " + limitGb + " GB");
     }
     
@@ -1142,7 +1264,7 @@ public class AppConfig {
      * @return 存储限制，单位GB，0表示不限制，默认10GB
      */
     public int getPhotoStorageLimitGb() {
-        return prefs.getInt(KEY_PHOTO_STORAGE_LIMIT_GB, 10);
+        return snapshot().getInt(KEY_PHOTO_STORAGE_LIMIT_GB, 10);
     }
     
     /**
@@ -1153,6 +1275,110 @@ public class AppConfig {
         return getVideoStorageLimitGb() > 0 || getPhotoStorageLimitGb() > 0;
     }
     
+    /**
+     * 设置事件录像保留天数
+     * @param days 保留天数，过期后与循环录像一起参与清理
+     */
+    public void setEventRetentionDays(int days) {
+        edit().putInt(KEY_EVENT_RETENTION_DAYS, days).apply();
+        AppLog.d(TAG, "事件录像保留天数设置: " + days);
+    }
+    
+    /**
+     * 获取事件录像保留天数
+     * @return 保留天数，默认7天
+     */
+    public int getEventRetentionDays() {
+        return snapshot().getInt(KEY_EVENT_RETENTION_DAYS, 7);
+    }
+    
+    /**
+     * 设置锁定文件存储上限（GB）
+     * @param limitGb 上限，单位GB，0表示不限制（锁定文件永不自动删除）
+     */
+    public void setLockedStorageLimitGb(int limitGb) {
+        edit().putInt(KEY_LOCKED_STORAGE_LIMIT_GB, limitGb).apply();
+        AppLog.d(TAG, "锁定文件存储上限设置: " + limitGb + " GB");
+    }
+    
+    /**
+     * 获取锁定文件存储上限（GB）
+     * @return 上限，单位GB，0表示不限制，默认0
+     */
+    public int getLockedStorageLimitGb() {
+        return snapshot().getInt(KEY_LOCKED_STORAGE_LIMIT_GB, 0);
+    }
+    
+    /**
+     * 设置摄像头保留权重
+     * @param weights 格式 "front:2,back:1.5"，权重越大保留越久，未配置的摄像头为1
+     */
+    public void setCameraRetentionWeights(String weights) {
+        edit().putString(KEY_CAMERA_RETENTION_WEIGHTS, weights).apply();
+        AppLog.d(TAG, "摄像头保留权重设置: " + weights);
+    }
+    
+    /**
+     * 获取摄像头保留权重
+     * @return 权重配置，默认为空（所有摄像头相同）
+     */
+    public String getCameraRetentionWeights() {
+        return snapshot().getString(KEY_CAMERA_RETENTION_WEIGHTS, "");
+    }
+    
+    /**
+     * 设置中转复制并发数
+     * @param concurrency 每个目标存储卷同时进行的复制数（1-4）
+     */
+    public void setRelayCopyConcurrency(int concurrency) {
+        edit().putInt(KEY_RELAY_COPY_CONCURRENCY, concurrency).apply();
+        AppLog.d(TAG, "中转复制并发数设置: " + concurrency);
+    }
+    
+    /**
+     * 获取中转复制并发数
+     * @return 每个目标存储卷同时进行的复制数，默认2
+     */
+    public int getRelayCopyConcurrency() {
+        return snapshot().getInt(KEY_RELAY_COPY_CONCURRENCY, 2);
+    }
+    
+    /**
+     * 设置中转复制限速
+     * @param limitMb 速率上限，单位MB/s，0表示不限速（临时目录积压过多时自动取消限速）
+     */
+    public void setRelayCopyRateLimitMb(int limitMb) {
+        edit().putInt(KEY_RELAY_COPY_RATE_LIMIT_MB, limitMb).apply();
+        AppLog.d(TAG, "中转复制限速设置: " + limitMb + " MB/s");
+    }
+    
+    /**
+     * 获取中转复制限速
+     * @return 速率上限，单位MB/s，0表示不限速，默认0
+     */
+    public int getRelayCopyRateLimitMb() {
+        return snapshot().getInt(KEY_RELAY_COPY_RATE_LIMIT_MB, 0);
+    }
+    
+    /**
+     * 保存存储写入测试结果
+     * @param location 存储位置（STORAGE_INTERNAL / STORAGE_EXTERNAL_SD）
+     * @param result 序列化的测试结果（StorageBenchmark.Result.serialize()）
+     */
+    public void setStorageBenchmarkResult(String location, String result) {
+        edit().putString(KEY_STORAGE_BENCHMARK_PREFIX + location, result).apply();
+        AppLog.d(TAG, "存储写入测试结果保存: " + location);
+    }
+    
+    /**
+     * 获取存储写入测试结果
+     * @param location 存储位置（STORAGE_INTERNAL / STORAGE_EXTERNAL_SD）
+     * @return 序列化的测试结果，未测试过返回null
+     */
+    public String getStorageBenchmarkResult(String location) {
+        return snapshot().getString(KEY_STORAGE_BENCHMARK_PREFIX + location, null);
+    }
+    
     // ==================== 分段录制配置相关方法 ====================
     
     /**
@@ -1160,7 +1386,7 @@ public class AppConfig {
      * @param minutes 分段时长，单位分钟（1/3/5）
      */
     public void setSegmentDurationMinutes(int minutes) {
-        prefs.edit().putInt(KEY_SEGMENT_DURATION_MINUTES, minutes).apply();
+        edit().putInt(KEY_SEGMENT_DURATION_MINUTES, minutes).apply();
         AppLog.d(TAG, "分段时长设置: " + minutes + " 分钟");
     }
     
@@ -1169,7 +1395,7 @@ public class AppConfig {
      * @return 分段时长，单位分钟，默认为1分钟
      */
     public int getSegmentDurationMinutes() {
-        return prefs.getInt(KEY_SEGMENT_DURATION_MINUTES, SEGMENT_DURATION_1_MIN);
+        return snapshot().getSegmentDurationMinutes();
     }
     
     /**
@@ -1187,7 +1413,7 @@ public class AppConfig {
      * @param enabled true 表示显示录制时间和分段数
      */
     public void setRecordingStatsEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_RECORDING_STATS_ENABLED, enabled).apply();
+        edit().putBoolean(KEY_RECORDING_STATS_ENABLED, enabled).apply();
         AppLog.d(TAG, "录制状态显示设置: " + (enabled ? "显示" : "隐藏"));
     }
     
@@ -1197,7 +1423,7 @@ public class AppConfig {
      */
     public boolean isRecordingStatsEnabled() {
         // 默认开启录制状态显示
-        return prefs.getBoolean(KEY_RECORDING_STATS_ENABLED, true);
+        return snapshot().getBoolean(KEY_RECORDING_STATS_ENABLED, true);
     }
     
     // ==================== 时间角标配置相关方法 ====================
@@ -1207,7 +1433,7 @@ public class AppConfig {
      * @param enabled true 表示在保存的视频和图片上添加时间角标
      */
     public void setTimestampWatermarkEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_TIMESTAMP_WATERMARK_ENABLED, enabled).apply();
+        edit().putBoolean(KEY_TIMESTAMP_WATERMARK_ENABLED, enabled).apply();
         AppLog.d(TAG, "时间角标设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -1217,7 +1443,7 @@ public class AppConfig {
      */
     public boolean isTimestampWatermarkEnabled() {
         // 默认关闭时间角标
-        return prefs.getBoolean(KEY_TIMESTAMP_WATERMARK_ENABLED, false);
+        return snapshot().isTimestampWatermarkEnabled();
     }
     
     // ==================== 录制摄像头选择配置相关方法 ====================
@@ -1246,7 +1472,7 @@ public class AppConfig {
                 AppLog.w(TAG, "未知的摄像头位置: " + position);
                 return;
         }
-        prefs.edit().putBoolean(key, enabled).apply();
+        edit().putBoolean(key, enabled).apply();
         AppLog.d(TAG, "录制摄像头设置: " + position + " = " + (enabled ? "启用" : "禁用"));
     }
     
@@ -1274,7 +1500,7 @@ public class AppConfig {
                 return true;  // 未知位置默认启用
         }
         // 默认启用（全选）
-        return prefs.getBoolean(key, true);
+        return snapshot().getBoolean(key, true);
     }
     
     /**
@@ -1322,7 +1548,7 @@ public class AppConfig {
      * 重置录制摄像头选择为全选
      */
     public void resetRecordingCameraSelection() {
-        prefs.edit()
+        edit()
             .putBoolean(KEY_RECORDING_CAMERA_FRONT_ENABLED, true)
             .putBoolean(KEY_RECORDING_CAMERA_BACK_ENABLED, true)
             .putBoolean(KEY_RECORDING_CAMERA_LEFT_ENABLED, true)
@@ -1354,7 +1580,7 @@ public class AppConfig {
      * @param enabled true 表示启用
      */
     public void setImageAdjustEnabled(boolean enabled) {
-        prefs.edit().putBoolean(KEY_IMAGE_ADJUST_ENABLED, enabled).apply();
+        edit().putBoolean(KEY_IMAGE_ADJUST_ENABLED, enabled).apply();
         AppLog.d(TAG, "亮度/降噪调节设置: " + (enabled ? "启用" : "禁用"));
     }
     
@@ -1363,7 +1589,7 @@ public class AppConfig {
      * @return true 表示启用
      */
     public boolean isImageAdjustEnabled() {
-        return prefs.getBoolean(KEY_IMAGE_ADJUST_ENABLED, false);
+        return snapshot().isImageAdjustEnabled();
     }
     
     /**
@@ -1371,7 +1597,7 @@ public class AppConfig {
      * @param value 曝光补偿值（范围取决于设备，通常 -12 到 +12）
      */
     public void setExposureCompensation(int value) {
-        prefs.edit().putInt(KEY_EXPOSURE_COMPENSATION, value).apply();
+        edit().putInt(KEY_EXPOSURE_COMPENSATION, value).apply();
         AppLog.d(TAG, "曝光补偿设置: " + value);
     }
     
@@ -1380,7 +1606,7 @@ public class AppConfig {
      * @return 曝光补偿值，默认为 0
      */
     public int getExposureCompensation() {
-        return prefs.getInt(KEY_EXPOSURE_COMPENSATION, 0);
+        return snapshot().getExposureCompensation();
     }
     
     /**
@@ -1388,7 +1614,7 @@ public class AppConfig {
      * @param mode 白平衡模式（AWB_MODE_* 常量）
      */
     public void setAwbMode(int mode) {
-        prefs.edit().putInt(KEY_AWB_MODE, mode).apply();
+        edit().putInt(KEY_AWB_MODE, mode).apply();
         AppLog.d(TAG, "白平衡模式设置: " + mode);
     }
     
@@ -1397,7 +1623,7 @@ public class AppConfig {
      * @return 白平衡模式，默认为 AWB_MODE_DEFAULT（不设置）
      */
     public int getAwbMode() {
-        return prefs.getInt(KEY_AWB_MODE, AWB_MODE_DEFAULT);
+        return snapshot().getAwbMode();
     }
     
     /**
@@ -1405,7 +1631,7 @@ public class AppConfig {
      * @param mode 色调映射模式（TONEMAP_MODE_* 常量）
      */
     public void setTonemapMode(int mode) {
-        prefs.edit().putInt(KEY_TONEMAP_MODE, mode).apply();
+        edit().putInt(KEY_TONEMAP_MODE, mode).apply();
         AppLog.d(TAG, "色调映射模式设置: " + mode);
     }
     
@@ -1414,7 +1640,7 @@ public class AppConfig {
      * @return 色调映射模式，默认为 TONEMAP_MODE_DEFAULT（不设置）
      */
     public int getTonemapMode() {
-        return prefs.getInt(KEY_TONEMAP_MODE, TONEMAP_MODE_DEFAULT);
+        return snapshot().getTonemapMode();
     }
     
     /**
@@ -1422,7 +1648,7 @@ public class AppConfig {
      * @param mode 边缘增强模式（EDGE_MODE_* 常量）
      */
     public void setEdgeMode(int mode) {
-        prefs.edit().putInt(KEY_EDGE_MODE, mode).apply();
+        edit().putInt(KEY_EDGE_MODE, mode).apply();
         AppLog.d(TAG, "边缘增强模式设置: " + mode);
     }
     
@@ -1431,7 +1657,7 @@ public class AppConfig {
      * @return 边缘增强模式，默认为 EDGE_MODE_DEFAULT（不设置）
      */
     public int getEdgeMode() {
-        return prefs.getInt(KEY_EDGE_MODE, EDGE_MODE_DEFAULT);
+        return snapshot().getEdgeMode();
     }
     
     /**
@@ -1439,7 +1665,7 @@ public class AppConfig {
      * @param mode 降噪模式（NOISE_REDUCTION_* 常量）
      */
     public void setNoiseReductionMode(int mode) {
-        prefs.edit().putInt(KEY_NOISE_REDUCTION_MODE, mode).apply();
+        edit().putInt(KEY_NOISE_REDUCTION_MODE, mode).apply();
         AppLog.d(TAG, "降噪模式设置: " + mode);
     }
     
@@ -1448,7 +1674,7 @@ public class AppConfig {
      * @return 降噪模式，默认为 NOISE_REDUCTION_DEFAULT（不设置）
      */
     public int getNoiseReductionMode() {
-        return prefs.getInt(KEY_NOISE_REDUCTION_MODE, NOISE_REDUCTION_DEFAULT);
+        return snapshot().getNoiseReductionMode();
     }
     
     /**
@@ -1456,7 +1682,7 @@ public class AppConfig {
      * @param mode 特效模式（EFFECT_MODE_* 常量）
      */
     public void setEffectMode(int mode) {
-        prefs.edit().putInt(KEY_EFFECT_MODE, mode).apply();
+        edit().putInt(KEY_EFFECT_MODE, mode).apply();
         AppLog.d(TAG, "特效模式设置: " + mode);
     }
     
@@ -1465,7 +1691,7 @@ public class AppConfig {
      * @return 特效模式，默认为 EFFECT_MODE_DEFAULT（不设置）
      */
     public int getEffectMode() {
-        return prefs.getInt(KEY_EFFECT_MODE, EFFECT_MODE_DEFAULT);
+        return snapshot().getEffectMode();
     }
     
     /**
@@ -1473,7 +1699,7 @@ public class AppConfig {
      * @param mode 场景模式
      */
     public void setSceneMode(int mode) {
-        prefs.edit().putInt(KEY_SCENE_MODE, mode).apply();
+        edit().putInt(KEY_SCENE_MODE, mode).apply();
         AppLog.d(TAG, "场景模式设置: " + mode);
     }
     
@@ -1482,14 +1708,14 @@ public class AppConfig {
      * @return 场景模式，默认为 -1（不设置）
      */
     public int getSceneMode() {
-        return prefs.getInt(KEY_SCENE_MODE, -1);
+        return snapshot().getSceneMode();
     }
     
     /**
      * 重置所有亮度/降噪调节参数为默认值
      */
     public void resetImageAdjustParams() {
-        prefs.edit()
+        edit()
             .putInt(KEY_EXPOSURE_COMPENSATION, 0)
             .putInt(KEY_AWB_MODE, AWB_MODE_DEFAULT)
             .putInt(KEY_TONEMAP_MODE, TONEMAP_MODE_DEFAULT)
@@ -9,35 +9,51 @@ import android.util.Log;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 
-import org.json.JSONObject;
-
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public final class AppLog {
     private static final String PREFS_NAME = "app_settings";
     private static final String KEY_DEBUG_TO_INFO = "debug_to_info";
-    private static final int MAX_BUFFER_LINES = 5000;
-    private static final Object LOCK = new Object();
-    private static final List<String> BUFFER = new ArrayList<>();
+    private static final int MAX_BUFFER_LINES = 8192;
+    // 内存日志缓冲区（无锁环形缓冲区，保存 / 上传时才格式化）
+    private static final LogRingBuffer BUFFER = new LogRingBuffer(MAX_BUFFER_LINES);
     private static volatile boolean debugToInfo = false;
     
+    // logcat 输出级别：低于该级别的日志不输出到 logcat
+    // debug 构建或打开 Debug 开关时为 DEBUG，release 构建默认 INFO（见 applyDefaultLevel）
+    private static volatile int sDefaultLevel = BuildConfig.DEBUG ? Log.DEBUG : Log.INFO;
+    private static final Map<String, Integer> TAG_LEVELS = new ConcurrentHashMap<>();
+    // 内存缓冲区 / 会话日志的记录级别：与 logcat 级别无关，默认记录 DEBUG，现场上传的日志包含调试信息
+    // 两个级别都低于日志级别时才直接丢弃（不格式化）
+    private static volatile int sRecordLevel = Log.DEBUG;
+    private static volatile boolean sHasTagLevels = false;
+    // 参数化日志的格式化缓冲区（每个线程复用一个）
+    private static final ThreadLocal<StringBuilder> FORMAT_BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(256));
+    
     // 会话日志文件名
     private static final String CURRENT_SESSION_LOG = "current_session.log";
     private static final String PREVIOUS_SESSION_LOG = "previous_session.log";
+    // 内存映射的会话日志（进程被杀也不丢失，下次启动时解码为上次日志）
+    private static final String MAPPED_SESSION_LOG = "session.mmap";
+    private static final int MAPPED_SESSION_LOG_SIZE = 2 * 1024 * 1024;
+    private static volatile MappedSessionLog sMappedLog = null;
+    private static boolean sSessionLogsRotated = false;
     
     // Application Context 引用（用于崩溃时保存日志）
     private static Context sAppContext = null;
@@ -55,6 +71,12 @@ public final class AppLog {
     public interface UploadCallback {
         void onSuccess();
         void onError(String error);
+        
+        /**
+         * 上传进度（0-100，在上传线程调用）
+         */
+        default void onProgress(int percent) {
+        }
     }
 
     private AppLog() {
@@ -70,6 +92,7 @@ public final class AppLog {
         
         SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         debugToInfo = prefs.getBoolean(KEY_DEBUG_TO_INFO, false);
+        applyDefaultLevel();
         
         // 启动时轮换日志文件
         rotateSessionLogs(context);
@@ -98,6 +121,12 @@ public final class AppLog {
                 // 添加崩溃信息到缓冲区
                 addToBuffer(Log.ERROR, "CRASH", crashInfo);
                 
+                // 映射区写回存储（防止紧接着断电）
+                MappedSessionLog mappedLog = sMappedLog;
+                if (mappedLog != null) {
+                    mappedLog.force();
+                }
+                
                 // 保存日志到文件
                 if (sAppContext != null) {
                     saveToPersistentLog(sAppContext);
@@ -118,17 +147,28 @@ public final class AppLog {
     
     /**
      * 轮换会话日志文件
-     * 将当前日志备份为上次日志，清空当前日志
+     * 将上次运行的映射日志（或当前日志）备份为上次日志，然后为本次运行创建新的映射日志
+     * 每个进程只轮换一次（init 可能被多次调用）
      */
     private static void rotateSessionLogs(Context context) {
         if (context == null) return;
+        synchronized (AppLog.class) {
+            if (sSessionLogsRotated) return;
+            sSessionLogsRotated = true;
+        }
         
         File logDir = getLogDirectory(context);
         File currentLog = new File(logDir, CURRENT_SESSION_LOG);
         File previousLog = new File(logDir, PREVIOUS_SESSION_LOG);
+        File mappedLogFile = new File(logDir, MAPPED_SESSION_LOG);
         
-        // 如果当前日志存在，将其备份为上次日志
-        if (currentLog.exists() && currentLog.length() > 0) {
+        // 映射日志包含上次运行直到进程结束的全部记录，优先使用
+        if (recoverMappedSessionLog(mappedLogFile, previousLog)) {
+            if (currentLog.exists() && !currentLog.delete()) {
+                Log.w("AppLog", "Failed to delete current session log");
+            }
+        } else if (currentLog.exists() && currentLog.length() > 0) {
+            // 如果当前日志存在，将其备份为上次日志
             // 删除旧的上次日志
             if (previousLog.exists()) {
                 if (!previousLog.delete()) {
@@ -143,6 +183,40 @@ public final class AppLog {
                 Log.w("AppLog", "Failed to rename current session log to previous");
             }
         }
+        
+        try {
+            sMappedLog = MappedSessionLog.create(mappedLogFile, MAPPED_SESSION_LOG_SIZE);
+        } catch (IOException e) {
+            Log.w("AppLog", "Failed to create mapped session log: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 将上次运行的映射日志解码为上次日志文件
+     * @return 是否解码出日志
+     */
+    private static boolean recoverMappedSessionLog(File mappedLogFile, File previousLog) {
+        List<LogRingBuffer.Record> records;
+        try {
+            records = MappedSessionLog.decode(mappedLogFile);
+        } catch (IOException e) {
+            Log.w("AppLog", "Failed to decode mapped session log: " + e.getMessage());
+            return false;
+        }
+        if (records.isEmpty()) {
+            return false;
+        }
+        
+        List<String> lines = new ArrayList<>(records.size());
+        LogRingBuffer.LineFormatter formatter = new LogRingBuffer.LineFormatter();
+        for (LogRingBuffer.Record record : records) {
+            lines.add(formatter.format(record));
+        }
+        if (!writeLogToFile(previousLog, lines)) {
+            return false;
+        }
+        Log.i("AppLog", "Previous session log recovered from mapped log: " + lines.size() + " lines");
+        return true;
     }
     
     /**
@@ -164,10 +238,7 @@ public final class AppLog {
     public static void saveToPersistentLog(Context context) {
         if (context == null) return;
         
-        List<String> snapshot;
-        synchronized (LOCK) {
-            snapshot = new ArrayList<>(BUFFER);
-        }
+        List<String> snapshot = BUFFER.snapshotLines();
         
         if (snapshot.isEmpty()) return;
         
@@ -288,6 +359,7 @@ public final class AppLog {
 
     public static void setDebugToInfoEnabled(Context context, boolean enabled) {
         debugToInfo = enabled;
+        applyDefaultLevel();
         if (context != null) {
             SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             prefs.edit().putBoolean(KEY_DEBUG_TO_INFO, enabled).apply();
@@ -298,10 +370,7 @@ public final class AppLog {
         if (context == null) {
             return null;
         }
-        List<String> snapshot;
-        synchronized (LOCK) {
-            snapshot = new ArrayList<>(BUFFER);
-        }
+        List<String> snapshot = BUFFER.snapshotLines();
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
         String fileName = "evcam_log_" + timestamp + ".txt";
 
@@ -341,21 +410,18 @@ public final class AppLog {
         
         // 在后台线程执行网络请求
         new Thread(() -> {
-            HttpURLConnection connection = null;
             try {
-                // 获取日志内容
-                List<String> snapshot;
+                // 获取日志来源：只复制记录引用或文件路径，日志在上传时逐行格式化写出
+                LogUploader.Source source;
                 if (uploadPreviousSession) {
-                    // 获取上次运行日志
-                    snapshot = getPreviousSessionLogs(context);
+                    // 上次运行日志（由映射日志解码而来）
+                    source = LogUploader.ofFile(new File(getLogDirectory(context), PREVIOUS_SESSION_LOG));
                 } else {
-                    // 获取当前运行日志
-                    synchronized (LOCK) {
-                        snapshot = new ArrayList<>(BUFFER);
-                    }
+                    // 当前运行日志
+                    source = LogUploader.ofRecords(BUFFER.snapshot());
                 }
                 
-                if (snapshot.isEmpty()) {
+                if (source.isEmpty()) {
                     callback.onError(uploadPreviousSession ? "上次运行日志为空" : "日志为空");
                     return;
                 }
@@ -371,81 +437,40 @@ public final class AppLog {
                     // 忽略
                 }
                 
-                // 构建日志内容
+                // 构建日志头部
                 String logType = uploadPreviousSession ? "上次运行日志" : "本次运行日志";
-                StringBuilder logContent = new StringBuilder();
-                logContent.append("=== EVCam 日志上传 (").append(logType).append(") ===\n");
-                logContent.append("用户标识: ").append(deviceNickname != null ? deviceNickname : "未知").append("\n");
-                logContent.append("设备型号: ").append(Build.MODEL).append("\n");
-                logContent.append("系统版本: Android ").append(Build.VERSION.RELEASE)
+                StringBuilder logHeader = new StringBuilder();
+                logHeader.append("=== EVCam 日志上传 (").append(logType).append(") ===\n");
+                logHeader.append("用户标识: ").append(deviceNickname != null ? deviceNickname : "未知").append("\n");
+                logHeader.append("设备型号: ").append(Build.MODEL).append("\n");
+                logHeader.append("系统版本: Android ").append(Build.VERSION.RELEASE)
                          .append(" (API ").append(Build.VERSION.SDK_INT).append(")\n");
-                logContent.append("应用版本: ").append(versionName)
+                logHeader.append("应用版本: ").append(versionName)
                          .append(" (").append(versionCode).append(")\n");
-                logContent.append("上传时间: ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.CHINA).format(new Date())).append("\n");
-                logContent.append("日志类型: ").append(logType).append("\n");
-                logContent.append("日志条数: ").append(snapshot.size()).append("\n");
-                logContent.append("========================\n\n");
+                logHeader.append("上传时间: ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.CHINA).format(new Date())).append("\n");
+                logHeader.append("日志类型: ").append(logType).append("\n");
+                logHeader.append("日志条数: ").append(source.lineCount()).append("\n");
+                logHeader.append("========================\n\n");
                 
                 // 添加问题描述
-                logContent.append("【问题描述】\n");
-                logContent.append(problemDescription != null ? problemDescription : "（无）").append("\n\n");
-                logContent.append("========================\n\n");
-                
-                for (String line : snapshot) {
-                    logContent.append(line).append("\n");
-                }
-                
-                // 构建请求 URL
-                URL url = new URL(GOTIFY_SERVER_URL + "/message?token=" + GOTIFY_APP_TOKEN);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-                connection.setDoOutput(true);
-                connection.setConnectTimeout(15000);
-                connection.setReadTimeout(15000);
+                logHeader.append("【问题描述】\n");
+                logHeader.append(problemDescription != null ? problemDescription : "（无）").append("\n\n");
+                logHeader.append("========================\n\n");
                 
-                // 构建 JSON 请求体 - 标题包含用户标识和日志类型便于识别
-                JSONObject jsonBody = new JSONObject();
+                // 标题包含用户标识和日志类型便于识别
                 String logTypeShort = uploadPreviousSession ? "[Previous]" : "[Current]";
                 String title = deviceNickname != null ? 
                         "EVCam " + logTypeShort + " - " + deviceNickname : 
                         "EVCam " + logTypeShort + " - " + Build.MODEL;
-                jsonBody.put("title", title);
-                jsonBody.put("message", logContent.toString());
-                jsonBody.put("priority", 5);
-                
-                // 发送请求
-                try (OutputStream os = connection.getOutputStream()) {
-                    byte[] input = jsonBody.toString().getBytes(StandardCharsets.UTF_8);
-                    os.write(input, 0, input.length);
-                }
                 
-                // 获取响应
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_CREATED) {
-                    callback.onSuccess();
-                } else {
-                    // 读取错误信息
-                    StringBuilder errorResponse = new StringBuilder();
-                    try (BufferedReader br = new BufferedReader(
-                            new InputStreamReader(connection.getErrorStream(), StandardCharsets.UTF_8))) {
-                        String line;
-                        while ((line = br.readLine()) != null) {
-                            errorResponse.append(line);
-                        }
-                    } catch (Exception e) {
-                        // 忽略读取错误流的异常
-                    }
-                    callback.onError("HTTP " + responseCode + ": " + errorResponse);
-                }
+                // 流式上传（分块传输；Gotify 不解压请求体，不使用 gzip）
+                LogUploader uploader = new LogUploader(GOTIFY_SERVER_URL + "/message?token=" + GOTIFY_APP_TOKEN, false);
+                uploader.upload(title, logHeader.toString(), Collections.singletonList(source), 5, callback::onProgress);
+                callback.onSuccess();
                 
             } catch (Exception e) {
                 Log.e("AppLog", "Upload failed", e);
                 callback.onError(e.getMessage());
-            } finally {
-                if (connection != null) {
-                    connection.disconnect();
-                }
             }
         }).start();
     }
@@ -466,6 +491,69 @@ public final class AppLog {
         }
     }
 
+    // ==================== 运行时日志级别 ====================
+    
+    /**
+     * 设置默认 logcat 输出级别（未单独设置级别的 tag 使用）
+     * @param level android.util.Log 的级别常量，如 Log.DEBUG、Log.INFO
+     */
+    public static void setDefaultLevel(int level) {
+        sDefaultLevel = level;
+    }
+    
+    /**
+     * 设置内存缓冲区 / 会话日志的记录级别（同时决定上传日志的内容）
+     * @param level android.util.Log 的级别常量，默认 Log.DEBUG
+     */
+    public static void setRecordLevel(int level) {
+        sRecordLevel = level;
+    }
+    
+    /**
+     * 按构建类型和 Debug 开关设置 logcat 级别：debug 构建或打开 Debug 开关时输出 DEBUG，
+     * 否则 release 构建只向 logcat 输出 INFO 及以上；内存缓冲区和会话日志仍记录 DEBUG
+     */
+    private static void applyDefaultLevel() {
+        setDefaultLevel(BuildConfig.DEBUG || debugToInfo ? Log.DEBUG : Log.INFO);
+    }
+    
+    /**
+     * 设置单个 tag 的 logcat 输出级别
+     * @param level android.util.Log 的级别常量；传入 -1 清除该 tag 的单独设置
+     */
+    public static void setLevel(String tag, int level) {
+        if (tag == null) {
+            return;
+        }
+        if (level < 0) {
+            TAG_LEVELS.remove(tag);
+        } else {
+            TAG_LEVELS.put(tag, level);
+        }
+        sHasTagLevels = !TAG_LEVELS.isEmpty();
+    }
+    
+    /**
+     * 指定 tag 和级别的日志是否会被记录（输出到 logcat 或记录到内存缓冲区 / 会话日志）
+     * 热路径上拼接日志前先调用此方法判断，避免级别关闭时仍创建字符串
+     */
+    public static boolean isLoggable(String tag, int level) {
+        return level >= sRecordLevel || isLogcatLoggable(tag, level);
+    }
+    
+    private static boolean isLogcatLoggable(String tag, int level) {
+        int minLevel = sDefaultLevel;
+        if (sHasTagLevels && tag != null) {
+            Integer tagLevel = TAG_LEVELS.get(tag);
+            if (tagLevel != null) {
+                minLevel = tagLevel;
+            }
+        }
+        return level >= minLevel;
+    }
+    
+    // ==================== 日志输出 ====================
+    
     public static void d(String tag, String message) {
         logInternal(Log.DEBUG, tag, message, null);
     }
@@ -498,42 +586,129 @@ public final class AppLog {
         logInternal(Log.ERROR, tag, message, tr);
     }
 
+    // ==================== 参数化日志（热路径） ====================
+    // 消息模板中的 {} 依次替换为参数；级别关闭时不格式化、不分配对象
+    // 参数为 long 避免装箱，Object 参数（如 cameraId）只在输出时转换为字符串
+    
+    public static void d(String tag, String format, Object a, long b) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            logInternal(Log.DEBUG, tag, format(format, a, b, 0, 0, 1), null);
+        }
+    }
+    
+    public static void d(String tag, String format, Object a, long b, long c) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            logInternal(Log.DEBUG, tag, format(format, a, b, c, 0, 2), null);
+        }
+    }
+    
+    public static void d(String tag, String format, Object a, long b, long c, long d) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            logInternal(Log.DEBUG, tag, format(format, a, b, c, d, 3), null);
+        }
+    }
+    
+    public static void i(String tag, String format, Object a, long b) {
+        if (isLoggable(tag, Log.INFO)) {
+            logInternal(Log.INFO, tag, format(format, a, b, 0, 0, 1), null);
+        }
+    }
+    
+    public static void i(String tag, String format, Object a, long b, long c) {
+        if (isLoggable(tag, Log.INFO)) {
+            logInternal(Log.INFO, tag, format(format, a, b, c, 0, 2), null);
+        }
+    }
+    
+    public static void w(String tag, String format, Object a, long b) {
+        if (isLoggable(tag, Log.WARN)) {
+            logInternal(Log.WARN, tag, format(format, a, b, 0, 0, 1), null);
+        }
+    }
+    
+    public static void w(String tag, String format, Object a, long b, long c) {
+        if (isLoggable(tag, Log.WARN)) {
+            logInternal(Log.WARN, tag, format(format, a, b, c, 0, 2), null);
+        }
+    }
+    
+    /**
+     * 延迟构造消息：级别关闭时不调用 supplier
+     * 注意：捕获了局部变量的 lambda 每次调用仍会创建对象，热路径上优先使用参数化重载或 isLoggable 判断
+     */
+    public static void d(String tag, Supplier<String> message) {
+        if (isLoggable(tag, Log.DEBUG)) {
+            logInternal(Log.DEBUG, tag, message.get(), null);
+        }
+    }
+    
+    public static void i(String tag, Supplier<String> message) {
+        if (isLoggable(tag, Log.INFO)) {
+            logInternal(Log.INFO, tag, message.get(), null);
+        }
+    }
+    
+    public static void w(String tag, Supplier<String> message) {
+        if (isLoggable(tag, Log.WARN)) {
+            logInternal(Log.WARN, tag, message.get(), null);
+        }
+    }
+    
+    /**
+     * 按模板格式化：第一个 {} 替换为 a，之后的 {} 依次替换为 b、c、d
+     * @param longCount long 参数个数（1-3）
+     */
+    private static String format(String format, Object a, long b, long c, long d, int longCount) {
+        if (format == null) {
+            return "";
+        }
+        StringBuilder sb = FORMAT_BUILDER.get();
+        sb.setLength(0);
+        int argIndex = 0;
+        int start = 0;
+        int index;
+        while ((index = format.indexOf("{}", start)) >= 0 && argIndex <= longCount) {
+            sb.append(format, start, index);
+            if (argIndex == 0) {
+                sb.append(a);
+            } else if (argIndex == 1) {
+                sb.append(b);
+            } else if (argIndex == 2) {
+                sb.append(c);
+            } else {
+                sb.append(d);
+            }
+            argIndex++;
+            start = index + 2;
+        }
+        sb.append(format, start, format.length());
+        return sb.toString();
+    }
+
     private static void logInternal(int level, String tag, String message, Throwable tr) {
         String safeTag = tag == null ? "AppLog" : tag;
+        if (!isLoggable(safeTag, level)) {
+            return;
+        }
         String safeMessage = message == null ? "" : message;
         if (tr != null) {
             safeMessage = safeMessage + "\n" + Log.getStackTraceString(tr);
         }
         int outputLevel = (level == Log.DEBUG && debugToInfo) ? Log.INFO : level;
-        Log.println(outputLevel, safeTag, safeMessage);
-        addToBuffer(outputLevel, safeTag, safeMessage);
-    }
-
-    private static void addToBuffer(int level, String tag, String message) {
-        String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).format(new Date());
-        String levelLabel = levelToLabel(level);
-        String line = timestamp + " " + levelLabel + "/" + tag + ": " + message;
-        synchronized (LOCK) {
-            BUFFER.add(line);
-            if (BUFFER.size() > MAX_BUFFER_LINES) {
-                int removeCount = BUFFER.size() - MAX_BUFFER_LINES;
-                BUFFER.subList(0, removeCount).clear();
-            }
+        if (isLogcatLoggable(safeTag, level)) {
+            Log.println(outputLevel, safeTag, safeMessage);
+        }
+        if (level >= sRecordLevel) {
+            addToBuffer(outputLevel, safeTag, safeMessage);
         }
     }
 
-    private static String levelToLabel(int level) {
-        switch (level) {
-            case Log.ERROR:
-                return "E";
-            case Log.WARN:
-                return "W";
-            case Log.INFO:
-                return "I";
-            case Log.DEBUG:
-                return "D";
-            default:
-                return String.valueOf(level);
+    private static void addToBuffer(int level, String tag, String message) {
+        long timeMs = System.currentTimeMillis();
+        BUFFER.append(timeMs, level, tag, message);
+        MappedSessionLog mappedLog = sMappedLog;
+        if (mappedLog != null) {
+            mappedLog.append(timeMs, level, tag, message);
         }
     }
 }
@@ -0,0 +1,293 @@
+package com.kooo.evcam;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 进程级配置服务
+ * 启动时把 SharedPreferences 一次性加载为不可变的 {@link ConfigSnapshot}，之后通过 volatile 引用无锁读取；
+ * 配置修改时（AppConfig 的 setter 或其他途径写入）重新生成快照，并按配置分组通知订阅者；
+ * 通知在专用线程上按修改顺序执行，不阻塞写入配置的线程
+ *
+ * AppConfig 的 getter 全部从当前快照读取，setter 通过 {@link #edit()} 写入：
+ * apply() / commit() 返回前新快照已发布，随后的读取能立即看到新值；
+ * SharedPreferences 随后对同一修改的回调发现快照已是最新值，不再重新加载
+ */
+public final class ConfigService {
+    private static final String TAG = "ConfigService";
+
+    /**
+     * 配置分组（订阅者只接收关心的分组的变化）
+     */
+    public enum KeyGroup {
+        RECORDING,      // 录制参数（分辨率、码率、帧率、分段、水印、录制模式、参与录制的摄像头）
+        IMAGE_ADJUST,   // 亮度/降噪调节
+        CAMERA,         // 车型、摄像头数量、ID、名称、旋转
+        STORAGE,        // 存储位置、存储限制、清理、中转复制
+        UI,             // 悬浮窗、状态显示、屏幕方向
+        OTHER
+    }
+
+    /**
+     * 配置变化监听
+     */
+    public interface ConfigListener {
+        /**
+         * 配置变化（在配置通知线程调用，按修改顺序）
+         * @param snapshot 新的配置快照
+         * @param changedKeys 本分组中值发生变化的配置项
+         */
+        void onConfigChanged(ConfigSnapshot snapshot, Set<String> changedKeys);
+    }
+
+    private static ConfigService instance;
+
+    private final SharedPreferences prefs;
+    private volatile ConfigSnapshot snapshot;
+    private final Map<KeyGroup, CopyOnWriteArrayList<ConfigListener>> listeners = new EnumMap<>(KeyGroup.class);
+    // 订阅者回调线程（单线程，保证通知顺序与快照版本一致）
+    private final ExecutorService notifyExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ConfigService-notify");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // SharedPreferences 只持有监听器的弱引用，必须保存在字段中
+    // 通过 edit() 写入的修改已经发布，回调时快照已是最新值，跳过重新加载；其他途径写入的修改才重新加载
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener = (p, key) -> {
+        if (!isPublished(key)) {
+            reload();
+        }
+    };
+
+    private ConfigService(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(AppConfig.PREF_NAME, Context.MODE_PRIVATE);
+        for (KeyGroup group : KeyGroup.values()) {
+            listeners.put(group, new CopyOnWriteArrayList<>());
+        }
+        snapshot = new ConfigSnapshot(prefs.getAll(), 0);
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+    }
+
+    public static synchronized ConfigService getInstance(Context context) {
+        if (instance == null) {
+            instance = new ConfigService(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 当前配置快照（无锁）
+     */
+    public ConfigSnapshot snapshot() {
+        return snapshot;
+    }
+
+    public void addListener(KeyGroup group, ConfigListener listener) {
+        listeners.get(group).addIfAbsent(listener);
+    }
+
+    public void removeListener(ConfigListener listener) {
+        for (CopyOnWriteArrayList<ConfigListener> list : listeners.values()) {
+            list.remove(listener);
+        }
+    }
+
+    /**
+     * 配置编辑器：apply() / commit() 写入后立即发布新快照
+     */
+    SharedPreferences.Editor edit() {
+        return new PublishingEditor(prefs.edit());
+    }
+
+    /**
+     * 重新加载配置；值有变化时发布新快照并通知订阅者
+     */
+    void reload() {
+        Set<String> changed = new HashSet<>();
+        synchronized (this) {
+            ConfigSnapshot previous = snapshot;
+            Map<String, ?> values = prefs.getAll();
+            Map<String, ?> oldValues = previous.getValues();
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                Object old = oldValues.get(entry.getKey());
+                if (old == null ? entry.getValue() != null : !old.equals(entry.getValue())) {
+                    changed.add(entry.getKey());
+                }
+            }
+            for (String key : oldValues.keySet()) {
+                if (!values.containsKey(key)) {
+                    changed.add(key);
+                }
+            }
+            if (changed.isEmpty()) {
+                return;
+            }
+            ConfigSnapshot next = new ConfigSnapshot(values, previous.getVersion() + 1);
+            snapshot = next;
+            // 在锁内提交，通知顺序与快照版本一致
+            notifyExecutor.execute(() -> notifyListeners(next, changed));
+        }
+    }
+
+    /**
+     * 配置项在 SharedPreferences 中的当前值是否已包含在快照中
+     * 只读取这一项，不复制全部配置
+     * @param key 配置项（null 表示配置被清空）
+     */
+    private boolean isPublished(String key) {
+        if (key == null) {
+            return false;
+        }
+        Object published = snapshot.getValues().get(key);
+        if (published == null) {
+            return !prefs.contains(key);
+        }
+        if (!prefs.contains(key)) {
+            return false;
+        }
+        try {
+            Object current;
+            if (published instanceof String) {
+                current = prefs.getString(key, null);
+            } else if (published instanceof Integer) {
+                current = prefs.getInt(key, 0);
+            } else if (published instanceof Long) {
+                current = prefs.getLong(key, 0);
+            } else if (published instanceof Float) {
+                current = prefs.getFloat(key, 0);
+            } else if (published instanceof Boolean) {
+                current = prefs.getBoolean(key, false);
+            } else if (published instanceof Set) {
+                current = prefs.getStringSet(key, null);
+            } else {
+                return false;
+            }
+            return published.equals(current);
+        } catch (ClassCastException e) {
+            // 类型已改变
+            return false;
+        }
+    }
+
+    private void notifyListeners(ConfigSnapshot next, Set<String> changed) {
+        Map<KeyGroup, Set<String>> byGroup = new EnumMap<>(KeyGroup.class);
+        for (String key : changed) {
+            KeyGroup group = groupOf(key);
+            Set<String> keys = byGroup.get(group);
+            if (keys == null) {
+                keys = new HashSet<>();
+                byGroup.put(group, keys);
+            }
+            keys.add(key);
+        }
+        for (Map.Entry<KeyGroup, Set<String>> entry : byGroup.entrySet()) {
+            Set<String> keys = Collections.unmodifiableSet(entry.getValue());
+            for (ConfigListener listener : listeners.get(entry.getKey())) {
+                try {
+                    listener.onConfigChanged(next, keys);
+                } catch (Exception e) {
+                    AppLog.e(TAG, "配置变化通知失败: " + entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 配置项所属分组（见 {@link AppConfig#KEY_GROUPS}）
+     */
+    static KeyGroup groupOf(String key) {
+        if (key == null) {
+            return KeyGroup.OTHER;
+        }
+        KeyGroup group = AppConfig.KEY_GROUPS.get(key);
+        if (group != null) {
+            return group;
+        }
+        if (key.startsWith(AppConfig.KEY_STORAGE_BENCHMARK_PREFIX)) {
+            return KeyGroup.STORAGE;
+        }
+        return KeyGroup.OTHER;
+    }
+
+    /**
+     * 写入后立即重新加载快照的编辑器
+     */
+    private final class PublishingEditor implements SharedPreferences.Editor {
+        private final SharedPreferences.Editor editor;
+
+        PublishingEditor(SharedPreferences.Editor editor) {
+            this.editor = editor;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, String value) {
+            editor.putString(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, Set<String> values) {
+            editor.putStringSet(key, values);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            editor.putInt(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            editor.putLong(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            editor.putFloat(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            editor.putBoolean(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            editor.remove(key);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            editor.clear();
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            boolean result = editor.commit();
+            reload();
+            return result;
+        }
+
+        @Override
+        public void apply() {
+            // apply() 立即更新 SharedPreferences 的内存数据，磁盘写入在后台完成
+            editor.apply();
+            reload();
+        }
+    }
+}
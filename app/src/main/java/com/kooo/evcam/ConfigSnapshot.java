@@ -0,0 +1,164 @@
+package com.kooo.evcam;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 应用配置的不可变快照
+ * 由 {@link ConfigService} 在配置加载和每次修改后创建；创建后不再变化，可在任意线程无锁读取
+ *
+ * 录制、拍照等热路径使用的配置项在创建时解析为类型化字段，读取时没有 Map 查找；
+ * 其他配置项通过 getString / getInt / getBoolean 从不可变副本中读取（默认值语义与 SharedPreferences 相同）
+ */
+public final class ConfigSnapshot {
+
+    private final Map<String, ?> values;
+    private final long version;
+
+    // 录制参数
+    private final String targetResolution;
+    private final String bitrateLevel;
+    private final String framerateLevel;
+    private final int segmentDurationMinutes;
+    private final boolean timestampWatermarkEnabled;
+    private final String recordingMode;
+    private final boolean persistentRecordSession;
+    private final String storageLocation;
+
+    // 亮度/降噪调节参数
+    private final boolean imageAdjustEnabled;
+    private final int exposureCompensation;
+    private final int awbMode;
+    private final int tonemapMode;
+    private final int edgeMode;
+    private final int noiseReductionMode;
+    private final int effectMode;
+    private final int sceneMode;
+
+    ConfigSnapshot(Map<String, ?> values, long version) {
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+        this.version = version;
+
+        targetResolution = getString(AppConfig.KEY_TARGET_RESOLUTION, AppConfig.RESOLUTION_DEFAULT);
+        bitrateLevel = getString(AppConfig.KEY_BITRATE_LEVEL, AppConfig.BITRATE_MEDIUM);
+        framerateLevel = getString(AppConfig.KEY_FRAMERATE_LEVEL, AppConfig.FRAMERATE_STANDARD);
+        segmentDurationMinutes = getInt(AppConfig.KEY_SEGMENT_DURATION_MINUTES, AppConfig.SEGMENT_DURATION_1_MIN);
+        timestampWatermarkEnabled = getBoolean(AppConfig.KEY_TIMESTAMP_WATERMARK_ENABLED, false);
+        recordingMode = getString(AppConfig.KEY_RECORDING_MODE, AppConfig.RECORDING_MODE_AUTO);
+        persistentRecordSession = getBoolean(AppConfig.KEY_PERSISTENT_RECORD_SESSION, true);
+        storageLocation = getString(AppConfig.KEY_STORAGE_LOCATION, AppConfig.STORAGE_INTERNAL);
+
+        imageAdjustEnabled = getBoolean(AppConfig.KEY_IMAGE_ADJUST_ENABLED, false);
+        exposureCompensation = getInt(AppConfig.KEY_EXPOSURE_COMPENSATION, 0);
+        awbMode = getInt(AppConfig.KEY_AWB_MODE, AppConfig.AWB_MODE_DEFAULT);
+        tonemapMode = getInt(AppConfig.KEY_TONEMAP_MODE, AppConfig.TONEMAP_MODE_DEFAULT);
+        edgeMode = getInt(AppConfig.KEY_EDGE_MODE, AppConfig.EDGE_MODE_DEFAULT);
+        noiseReductionMode = getInt(AppConfig.KEY_NOISE_REDUCTION_MODE, AppConfig.NOISE_REDUCTION_DEFAULT);
+        effectMode = getInt(AppConfig.KEY_EFFECT_MODE, AppConfig.EFFECT_MODE_DEFAULT);
+        sceneMode = getInt(AppConfig.KEY_SCENE_MODE, -1);
+    }
+
+    /**
+     * 快照版本号（每次配置变化加 1）
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    // ==================== 通用读取 ====================
+
+    public String getString(String key, String defaultValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Integer ? (Integer) value : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Long ? (Long) value : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    Map<String, ?> getValues() {
+        return values;
+    }
+
+    // ==================== 类型化字段（热路径） ====================
+
+    public String getTargetResolution() {
+        return targetResolution;
+    }
+
+    public String getBitrateLevel() {
+        return bitrateLevel;
+    }
+
+    public String getFramerateLevel() {
+        return framerateLevel;
+    }
+
+    public int getSegmentDurationMinutes() {
+        return segmentDurationMinutes;
+    }
+
+    public boolean isTimestampWatermarkEnabled() {
+        return timestampWatermarkEnabled;
+    }
+
+    public String getRecordingMode() {
+        return recordingMode;
+    }
+
+    public boolean isPersistentRecordSession() {
+        return persistentRecordSession;
+    }
+
+    public String getStorageLocation() {
+        return storageLocation;
+    }
+
+    public boolean isImageAdjustEnabled() {
+        return imageAdjustEnabled;
+    }
+
+    public int getExposureCompensation() {
+        return exposureCompensation;
+    }
+
+    public int getAwbMode() {
+        return awbMode;
+    }
+
+    public int getTonemapMode() {
+        return tonemapMode;
+    }
+
+    public int getEdgeMode() {
+        return edgeMode;
+    }
+
+    public int getNoiseReductionMode() {
+        return noiseReductionMode;
+    }
+
+    public int getEffectMode() {
+        return effectMode;
+    }
+
+    public int getSceneMode() {
+        return sceneMode;
+    }
+}
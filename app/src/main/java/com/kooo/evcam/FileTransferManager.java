@@ -3,14 +3,30 @@ package com.kooo.evcam;
 import android.content.Context;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
+import com.kooo.evcam.storage.RelayCopier;
+import com.kooo.evcam.storage.TransferJournal;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 文件传输管理器
@@ -18,11 +34,22 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 
  * 工作原理：
  * 1. 录制时先写入内部存储的临时目录（高速）
- * 2. 分段完成后，将文件加入传输队列
+ * 2. 分段完成后，将文件加入传输队列（同时写入传输日志）
  * 3. 后台线程负责将文件移动/复制到目标目录
  * 4. 传输完成后删除临时文件
  * 
  * 这样可以避免U盘慢速写入影响录制性能
+ * 
+ * 传输由事件驱动：新任务或重试到期时才唤醒后台线程，空闲时不占用CPU。
+ * 任务状态记录在 {@link TransferJournal} 中，进程被杀后重启可以继续未完成的传输；
+ * 传输失败时按目标存储卷指数退避，U盘拔出期间不会反复尝试
+ * 
+ * 跨文件系统复制时计算 CRC32C 并记录检查点，中断后校验已复制部分并续传；
+ * 校验一致后才删除源文件，校验值写入媒体目录
+ * 
+ * 调度线程只负责分发，复制由工作线程池执行：每个目标存储卷同时进行的复制数可配置，
+ * 并可按存储卷限速，避免占满U盘带宽影响录制；临时目录积压超过目标值时
+ * 取消限速并增加并发，优先把积压降下来
  */
 public class FileTransferManager {
     private static final String TAG = "FileTransferManager";
@@ -30,21 +57,57 @@ public class FileTransferManager {
     // 临时目录名称（在内部存储的应用缓存目录下）
     public static final String TEMP_VIDEO_DIR = "temp_video";
     
+    // 传输日志文件名（在内部存储的 files 目录下）
+    private static final String JOURNAL_FILE_NAME = "transfer_journal";
+    
+    // 复制中的目标文件后缀（校验通过后改名为目标文件）
+    private static final String PART_FILE_SUFFIX = ".part";
+    
     // 传输任务
     private static class TransferTask {
+        final long journalId;       // 传输日志中的任务ID
         final File sourceFile;      // 源文件（临时目录中）
         final File targetFile;      // 目标文件（最终存储位置）
+        final String volume;        // 目标存储卷
         final TransferCallback callback;
+        final long sizeBytes;       // 加入队列时的源文件大小（用于统计积压）
         int retryCount;             // 重试次数
         
-        TransferTask(File source, File target, TransferCallback callback) {
+        TransferTask(long journalId, File source, File target, TransferCallback callback) {
+            this.journalId = journalId;
             this.sourceFile = source;
             this.targetFile = target;
+            this.volume = MediaCatalog.volumeOf(target.getAbsolutePath());
+            this.sizeBytes = source.length();
             this.callback = callback;
             this.retryCount = 0;
         }
     }
     
+    // 工作线程的传输结果
+    private static class TransferOutcome {
+        boolean success;
+        boolean sourceMissing;
+        boolean countRetry;         // 失败是否计入重试次数
+        String error;
+        long fileSize;
+        long checksum = MediaCatalog.CHECKSUM_NONE;
+        RelayCopier.Result copyResult;  // 跨文件系统复制时的结果（移动时为null）
+    }
+    
+    // 存储卷状态（仅在调度线程中访问，限速器由工作线程共享）
+    private static class VolumeState {
+        int inFlight;                   // 正在进行的复制数
+        double bytesPerSec;             // 持续复制速率（平滑）
+        final RelayCopier.RateLimiter limiter = new RelayCopier.RateLimiter();
+    }
+    
+    // 存储卷退避状态
+    private static class VolumeBackoff {
+        int failures;               // 连续失败次数
+        long retryAtMs;             // 下次允许尝试的时间（uptime）
+    }
+    
     // 传输回调
     public interface TransferCallback {
         void onTransferComplete(File sourceFile, File targetFile);
@@ -55,18 +118,36 @@ public class FileTransferManager {
     private static FileTransferManager instance;
     
     private final Context context;
+    private final AppConfig appConfig;
+    private final TransferJournal journal;
+    // 新任务先进入此队列，由调度线程取出
     private final ConcurrentLinkedQueue<TransferTask> transferQueue;
+    // 未完成（排队、等待重试、复制中）的任务，按日志ID索引
+    private final Map<Long, TransferTask> queuedTasks;
+    // 未完成任务的源文件总大小（临时目录积压）
+    private final AtomicLong backlogBytes;
+    // 工作线程正在复制的任务（日志ID）：服务停止后仍在执行的复制完成前，重新启动的服务不会再次分发
+    private final Set<Long> copyingTasks;
+    // 以下仅在调度线程中访问
+    private final ArrayDeque<TransferTask> pendingTasks;
+    private final Map<String, VolumeBackoff> volumeBackoffs;
+    private final Map<String, VolumeState> volumeStates;
     private HandlerThread transferThread;
     private Handler transferHandler;
+    private ExecutorService copyExecutor;
     private final AtomicBoolean isRunning;
-    private final AtomicBoolean isProcessing;
+    private long serviceStartTimeMs;
     
     // 配置
-    private static final int MAX_RETRY_COUNT = 3;           // 最大重试次数
-    private static final long RETRY_DELAY_MS = 5000;        // 重试延迟（毫秒）
-    private static final long TRANSFER_CHECK_INTERVAL_MS = 1000;  // 检查队列间隔
+    private static final int MAX_RETRY_COUNT = 8;           // 最大重试次数（目标存储卷可用时）
+    private static final long RETRY_BASE_DELAY_MS = 2000;   // 重试初始延迟（毫秒），每次失败翻倍
+    private static final long RETRY_MAX_DELAY_MS = 5 * 60 * 1000;  // 重试最大延迟：5分钟
     private static final long STARTUP_CLEANUP_DELAY_MS = 60 * 1000;  // 启动后清理延迟：1分钟
     private static final long TEMP_FILE_EXPIRE_MS = 60 * 60 * 1000;  // 临时文件过期时间：1小时
+    private static final long MIN_VALID_TEMP_FILE_SIZE = 1024;       // 小于此大小的遗留临时文件视为无效
+    private static final int MAX_COPY_CONCURRENCY = 4;      // 每个存储卷的最大并发复制数
+    private static final long TEMP_BACKLOG_TARGET_BYTES = 1024L * 1024 * 1024;  // 临时目录积压目标：1GB
+    private static final double THROUGHPUT_EWMA_ALPHA = 0.3;  // 复制速率平滑系数
     
     // 统计
     private long totalTransferred = 0;      // 已传输文件数
@@ -75,9 +156,16 @@ public class FileTransferManager {
     
     private FileTransferManager(Context context) {
         this.context = context.getApplicationContext();
+        this.appConfig = new AppConfig(this.context);
+        this.journal = new TransferJournal(new File(this.context.getFilesDir(), JOURNAL_FILE_NAME));
         this.transferQueue = new ConcurrentLinkedQueue<>();
+        this.queuedTasks = new ConcurrentHashMap<>();
+        this.backlogBytes = new AtomicLong(0);
+        this.copyingTasks = ConcurrentHashMap.newKeySet();
+        this.pendingTasks = new ArrayDeque<>();
+        this.volumeBackoffs = new HashMap<>();
+        this.volumeStates = new HashMap<>();
         this.isRunning = new AtomicBoolean(false);
-        this.isProcessing = new AtomicBoolean(false);
     }
     
     /**
@@ -99,21 +187,28 @@ public class FileTransferManager {
             return;
         }
         
+        serviceStartTimeMs = System.currentTimeMillis();
         transferThread = new HandlerThread("FileTransfer");
         transferThread.start();
         transferHandler = new Handler(transferThread.getLooper());
+        AtomicInteger workerIndex = new AtomicInteger(0);
+        copyExecutor = Executors.newFixedThreadPool(MAX_COPY_CONCURRENCY,
+                r -> new Thread(r, "FileTransfer-copy-" + workerIndex.incrementAndGet()));
         
-        // 启动定期检查队列
-        scheduleNextCheck();
+        // 恢复传输日志中未完成的任务（上次进程退出或服务停止时尚未传输完成）
+        resetInFlightTasks();
+        transferHandler.post(this::resumeJournaledTasks);
         
-        // 启动后1分钟检查并清理过期的临时文件
-        transferHandler.postDelayed(this::cleanupExpiredTempFiles, STARTUP_CLEANUP_DELAY_MS);
+        // 启动后1分钟接管遗留的临时文件
+        transferHandler.postDelayed(this::adoptOrphanedTempFiles, STARTUP_CLEANUP_DELAY_MS);
         
         AppLog.d(TAG, "File transfer service started");
     }
     
     /**
      * 停止传输服务
+     * 未完成的任务保留在传输日志中，下次启动时继续；正在进行的复制会执行完当前文件
+     * 不等待复制结束：这些任务在复制完成前不会被重新启动的服务分发，避免两个线程写同一个 .part 文件
      */
     public void stop() {
         if (!isRunning.getAndSet(false)) {
@@ -135,12 +230,22 @@ public class FileTransferManager {
             transferThread = null;
         }
         
+        if (copyExecutor != null) {
+            copyExecutor.shutdown();
+            copyExecutor = null;
+        }
+        
+        // 退避状态不保留，重新启动时立即尝试
+        volumeBackoffs.clear();
+        
         AppLog.d(TAG, "File transfer service stopped. Stats: transferred=" + totalTransferred + 
-                ", failed=" + totalFailed + ", bytes=" + formatSize(totalBytesTransferred));
+                ", failed=" + totalFailed + ", bytes=" + formatSize(totalBytesTransferred) +
+                ", unfinished=" + journal.getActiveCount());
     }
     
     /**
      * 添加传输任务
+     * 任务先写入传输日志再加入队列，进程被杀后重启可以恢复
      * @param sourceFile 源文件（临时目录中）
      * @param targetFile 目标文件（最终位置）
      * @param callback 回调（可为null）
@@ -154,15 +259,15 @@ public class FileTransferManager {
             return;
         }
         
-        TransferTask task = new TransferTask(sourceFile, targetFile, callback);
-        transferQueue.offer(task);
+        if (journal.isActiveSource(sourceFile.getAbsolutePath())) {
+            AppLog.d(TAG, "Transfer task already queued: " + sourceFile.getName());
+            return;
+        }
         
-        AppLog.d(TAG, "Added transfer task: " + sourceFile.getName() + " -> " + targetFile.getAbsolutePath());
+        long journalId = journal.enqueue(sourceFile.getAbsolutePath(), targetFile.getAbsolutePath());
+        enqueueTask(new TransferTask(journalId, sourceFile, targetFile, callback));
         
-        // 如果服务在运行，立即触发处理
-        if (isRunning.get() && transferHandler != null) {
-            transferHandler.post(this::processQueue);
-        }
+        AppLog.d(TAG, "Added transfer task: " + sourceFile.getName() + " -> " + targetFile.getAbsolutePath());
     }
     
     /**
@@ -181,52 +286,52 @@ public class FileTransferManager {
     }
     
     /**
-     * 获取临时目录中的文件数量
+     * 获取临时目录中等待传输的文件数量（按传输日志中未完成的任务计，不扫描目录）
      */
     public int getPendingFileCount() {
-        File tempDir = getTempVideoDir();
-        if (tempDir == null || !tempDir.exists()) {
-            return 0;
-        }
-        File[] files = tempDir.listFiles();
-        return files != null ? files.length : 0;
+        return journal.getActiveCount();
     }
     
     /**
      * 获取临时目录占用的空间（字节）
+     * 按媒体目录中临时目录所在存储卷的总大小计（O(1)，不扫描目录）；中转期间临时目录是该存储卷上唯一的媒体目录
      */
     public long getTempDirSize() {
         File tempDir = getTempVideoDir();
-        if (tempDir == null || !tempDir.exists()) {
+        if (tempDir == null) {
             return 0;
         }
-        
-        long size = 0;
-        File[] files = tempDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                size += file.length();
-            }
-        }
-        return size;
+        MediaCatalog catalog = MediaCatalog.getInstance(context);
+        String volume = MediaCatalog.volumeOf(tempDir.getAbsolutePath());
+        return catalog.getTotalSize(MediaCatalog.TYPE_VIDEO, volume)
+                + catalog.getTotalSize(MediaCatalog.TYPE_PHOTO, volume);
     }
     
     /**
-     * 清理临时目录（删除所有文件）
+     * 清理临时目录（删除媒体目录中记录的临时文件和传输日志中未完成任务的源文件）
      * 注意：仅在确认不需要这些文件时调用
      */
     public void clearTempDir() {
         File tempDir = getTempVideoDir();
-        if (tempDir == null || !tempDir.exists()) {
+        if (tempDir == null) {
             return;
         }
         
-        File[] files = tempDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.delete()) {
-                    AppLog.d(TAG, "Deleted temp file: " + file.getName());
-                }
+        MediaCatalog catalog = MediaCatalog.getInstance(context);
+        List<File> files = new ArrayList<>();
+        for (MediaCatalog.Entry entry : catalog.listNewestFirst(MediaCatalog.TYPE_VIDEO, tempDir)) {
+            files.add(entry.getFile());
+        }
+        for (MediaCatalog.Entry entry : catalog.listNewestFirst(MediaCatalog.TYPE_PHOTO, tempDir)) {
+            files.add(entry.getFile());
+        }
+        for (TransferJournal.Record record : journal.getActiveRecords()) {
+            files.add(new File(record.sourcePath));
+        }
+        for (File file : files) {
+            if (file.delete()) {
+                catalog.onMediaFileDeleted(file);
+                AppLog.d(TAG, "Deleted temp file: " + file.getName());
             }
         }
         
@@ -237,41 +342,155 @@ public class FileTransferManager {
      * 获取队列中等待传输的任务数
      */
     public int getQueueSize() {
-        return transferQueue.size();
+        return queuedTasks.size();
+    }
+    
+    /**
+     * 获取未完成任务的源文件总大小（临时目录积压，字节）
+     */
+    public long getBacklogBytes() {
+        return backlogBytes.get();
+    }
+    
+    /**
+     * 获取存储卷的持续复制速率
+     * @param volume 存储卷（见 {@link MediaCatalog#volumeOf(String)}）
+     * @return 字节/秒，尚未测量时返回0
+     */
+    public double getVolumeThroughput(String volume) {
+        synchronized (volumeStates) {
+            VolumeState state = volumeStates.get(volume);
+            return state != null ? state.bytesPerSec : 0;
+        }
     }
     
     /**
      * 获取传输统计信息
      */
     public String getStats() {
-        return String.format("已传输: %d 个文件 (%s), 失败: %d, 队列: %d, 临时文件: %d",
+        StringBuilder speeds = new StringBuilder();
+        synchronized (volumeStates) {
+            for (Map.Entry<String, VolumeState> entry : volumeStates.entrySet()) {
+                if (entry.getValue().bytesPerSec > 0) {
+                    speeds.append(String.format(", %s: %.1f MB/s", entry.getKey(),
+                            entry.getValue().bytesPerSec / (1024.0 * 1024)));
+                }
+            }
+        }
+        return String.format("已传输: %d 个文件 (%s), 失败: %d, 队列: %d (%s), 临时文件: %d",
                 totalTransferred, formatSize(totalBytesTransferred), 
-                totalFailed, getQueueSize(), getPendingFileCount());
+                totalFailed, getQueueSize(), formatSize(getBacklogBytes()), getPendingFileCount()) + speeds;
     }
     
     // ===== 私有方法 =====
     
     /**
-     * 调度下一次队列检查
+     * 加入队列并唤醒传输线程
      */
-    private void scheduleNextCheck() {
-        if (!isRunning.get() || transferHandler == null) {
-            return;
-        }
+    private void enqueueTask(TransferTask task) {
+        queuedTasks.put(task.journalId, task);
+        backlogBytes.addAndGet(task.sizeBytes);
+        transferQueue.offer(task);
         
-        transferHandler.postDelayed(() -> {
-            if (isRunning.get()) {
-                processQueue();
-                scheduleNextCheck();
+        // 如果服务在运行，立即触发处理
+        Handler handler = transferHandler;
+        if (isRunning.get() && handler != null) {
+            handler.post(this::processQueue);
+        }
+    }
+    
+    /**
+     * 丢弃上次停止服务时仍在复制中的任务状态，由 {@link #resumeJournaledTasks()} 从日志重新恢复
+     */
+    private void resetInFlightTasks() {
+        Set<Long> waiting = new HashSet<>();
+        for (TransferTask task : pendingTasks) {
+            waiting.add(task.journalId);
+        }
+        for (TransferTask task : transferQueue) {
+            waiting.add(task.journalId);
+        }
+        for (TransferTask task : queuedTasks.values()) {
+            if (!waiting.contains(task.journalId)) {
+                finishTask(task);
             }
-        }, TRANSFER_CHECK_INTERVAL_MS);
+        }
+        synchronized (volumeStates) {
+            for (VolumeState state : volumeStates.values()) {
+                state.inFlight = 0;
+            }
+        }
     }
     
     /**
-     * 清理过期的临时文件
-     * 在服务运行期间定期调用
+     * 恢复传输日志中未完成的任务
+     * 上次中断时正在传输的任务重新传输（复制会覆盖不完整的目标文件）
      */
-    private void cleanupExpiredTempFiles() {
+    private void resumeJournaledTasks() {
+        int resumed = 0;
+        for (TransferJournal.Record record : journal.getActiveRecords()) {
+            if (queuedTasks.containsKey(record.id) || copyingTasks.contains(record.id)) {
+                // 已在队列中，或上次停止服务前的复制仍在进行（完成后再恢复）
+                continue;
+            }
+            File source = new File(record.sourcePath);
+            File target = new File(record.targetPath);
+            if (!source.exists()) {
+                if (target.exists()) {
+                    // 上次已移动完成但未来得及记录
+                    recoverCompletedTransfer(record, source, target);
+                } else {
+                    AppLog.w(TAG, "Journaled source lost: " + source.getName());
+                    journal.markFailed(record.id);
+                    new File(record.targetPath + PART_FILE_SUFFIX).delete();
+                }
+                continue;
+            }
+            TransferTask task = new TransferTask(record.id, source, target, null);
+            queuedTasks.put(task.journalId, task);
+            backlogBytes.addAndGet(task.sizeBytes);
+            pendingTasks.add(task);
+            resumed++;
+        }
+        if (resumed > 0) {
+            AppLog.d(TAG, "Resumed " + resumed + " unfinished transfer(s) from journal");
+        }
+        processQueue();
+    }
+    
+    /**
+     * 恢复源文件已删除、目标文件已存在的任务
+     * 复制完成时日志中记录了完整文件的校验值，先校验目标文件：不一致说明目标文件已损坏，
+     * 源文件已不存在无法重新复制，标记失败且不记录校验值；同一文件系统内移动的任务没有校验值，直接完成
+     */
+    private void recoverCompletedTransfer(TransferJournal.Record record, File source, File target) {
+        TransferJournal.Checkpoint checkpoint = journal.getCheckpoint(record.id);
+        if (checkpoint == null) {
+            MediaCatalog.getInstance(context).onMediaFileMoved(source, target);
+            journal.markDone(record.id);
+            return;
+        }
+        try {
+            RelayCopier.verify(target, checkpoint.offset, checkpoint.checksum);
+        } catch (IOException e) {
+            AppLog.e(TAG, "Recovered target failed verification: " + target.getAbsolutePath() + " - " +
+                    e.getMessage());
+            MediaCatalog.getInstance(context).onMediaFileMoved(source, target);
+            journal.markFailed(record.id);
+            totalFailed++;
+            return;
+        }
+        MediaCatalog.getInstance(context).onMediaFileMoved(source, target, checkpoint.checksum);
+        journal.markDone(record.id);
+    }
+    
+    /**
+     * 接管遗留的临时文件
+     * 不在传输日志中、且在本次服务启动前或超过过期时间未修改的文件，
+     * 说明其所属的录制/上传流程已经中断，直接传输到最终目录，避免占满内部存储
+     * 小于 1KB 的文件是无效分段，直接删除
+     */
+    private void adoptOrphanedTempFiles() {
         File tempDir = getTempVideoDir();
         if (tempDir == null || !tempDir.exists()) {
             return;
@@ -282,142 +501,319 @@ public class FileTransferManager {
             return;
         }
         
+        File finalDir = StorageHelper.getFinalVideoDir(context);
         long now = System.currentTimeMillis();
+        int adoptedCount = 0;
         int deletedCount = 0;
-        long deletedSize = 0;
         
         for (File file : files) {
-            long fileAge = now - file.lastModified();
-            if (fileAge > TEMP_FILE_EXPIRE_MS) {
-                long fileSize = file.length();
+            // 隐藏文件（录制期间的写入延迟探测文件）不是录像
+            if (!file.isFile() || file.getName().startsWith(".") || journal.isActiveSource(file.getAbsolutePath())) {
+                continue;
+            }
+            long lastModified = file.lastModified();
+            if (lastModified >= serviceStartTimeMs && now - lastModified <= TEMP_FILE_EXPIRE_MS) {
+                continue;
+            }
+            if (file.length() < MIN_VALID_TEMP_FILE_SIZE) {
                 if (file.delete()) {
                     deletedCount++;
-                    deletedSize += fileSize;
-                    AppLog.d(TAG, "Cleanup: deleted expired temp file: " + file.getName());
+                    MediaCatalog.getInstance(context).onMediaFileDeleted(file);
+                    AppLog.d(TAG, "Cleanup: deleted invalid temp file: " + file.getName());
                 }
+                continue;
+            }
+            if (finalDir == null) {
+                continue;
             }
+            addTransferTask(file, MediaLayout.resolve(finalDir, file.getName()), null);
+            adoptedCount++;
         }
         
-        if (deletedCount > 0) {
-            AppLog.d(TAG, "Periodic cleanup: deleted " + deletedCount + " expired files, freed " + formatSize(deletedSize));
+        if (adoptedCount > 0 || deletedCount > 0) {
+            AppLog.d(TAG, "Startup cleanup: adopted " + adoptedCount + " orphaned temp files, deleted " +
+                    deletedCount + " invalid files");
         }
     }
     
     /**
-     * 处理传输队列
+     * 处理传输队列（调度线程）
+     * 按加入顺序分发任务：目标存储卷处于退避期或并发已满的任务留在队列中，
+     * 退避到期或有复制完成时再次调度
      */
     private void processQueue() {
-        if (!isRunning.get() || isProcessing.getAndSet(true)) {
+        if (!isRunning.get() || copyExecutor == null) {
             return;
         }
         
-        try {
-            TransferTask task;
-            while ((task = transferQueue.poll()) != null) {
-                if (!isRunning.get()) {
-                    // 服务停止，将任务放回队列
-                    transferQueue.offer(task);
-                    break;
-                }
-                
-                processTask(task);
+        TransferTask incoming;
+        while ((incoming = transferQueue.poll()) != null) {
+            pendingTasks.add(incoming);
+        }
+        
+        // 积压超过目标值时取消限速并增加并发
+        boolean backlogHigh = backlogBytes.get() > TEMP_BACKLOG_TARGET_BYTES;
+        int concurrency = Math.max(1, Math.min(MAX_COPY_CONCURRENCY,
+                appConfig.getRelayCopyConcurrency() + (backlogHigh ? 1 : 0)));
+        long rateLimit = backlogHigh ? 0 : appConfig.getRelayCopyRateLimitMb() * 1024L * 1024;
+        
+        long now = SystemClock.uptimeMillis();
+        long earliestRetry = Long.MAX_VALUE;
+        Iterator<TransferTask> it = pendingTasks.iterator();
+        while (it.hasNext()) {
+            TransferTask task = it.next();
+            VolumeBackoff backoff = volumeBackoffs.get(task.volume);
+            if (backoff != null && now < backoff.retryAtMs) {
+                earliestRetry = Math.min(earliestRetry, backoff.retryAtMs);
+                continue;
             }
-        } finally {
-            isProcessing.set(false);
+            VolumeState state = getVolumeState(task.volume);
+            if (state.inFlight >= concurrency) {
+                continue;
+            }
+            it.remove();
+            state.inFlight++;
+            state.limiter.setRate(rateLimit);
+            dispatch(task, state);
+        }
+        
+        // 为等待退避的任务安排一次唤醒（取最早到期的存储卷）
+        Handler handler = transferHandler;
+        if (handler != null) {
+            handler.removeCallbacks(retryRunnable);
+            if (earliestRetry != Long.MAX_VALUE) {
+                handler.postAtTime(retryRunnable, earliestRetry);
+            }
+        }
+    }
+    
+    private final Runnable retryRunnable = this::processQueue;
+    
+    private VolumeState getVolumeState(String volume) {
+        synchronized (volumeStates) {
+            VolumeState state = volumeStates.get(volume);
+            if (state == null) {
+                state = new VolumeState();
+                volumeStates.put(volume, state);
+            }
+            return state;
         }
     }
     
     /**
-     * 处理单个传输任务
+     * 将任务交给工作线程执行，完成后回到调度线程处理结果
      */
-    private void processTask(TransferTask task) {
-        if (!task.sourceFile.exists()) {
-            AppLog.w(TAG, "Source file no longer exists: " + task.sourceFile.getName());
-            if (task.callback != null) {
-                task.callback.onTransferFailed(task.sourceFile, task.targetFile, "Source file not found");
+    private void dispatch(TransferTask task, VolumeState state) {
+        Handler handler = transferHandler;
+        copyingTasks.add(task.journalId);
+        copyExecutor.execute(() -> {
+            TransferOutcome outcome;
+            try {
+                outcome = transfer(task, state.limiter);
+            } finally {
+                copyingTasks.remove(task.journalId);
             }
-            totalFailed++;
-            return;
+            if (!handler.post(() -> onTaskFinished(task, state, outcome))) {
+                // 服务已停止，消息被丢弃：任务仍在传输日志中，根据源/目标文件状态恢复
+                // 服务已重新启动时立即恢复，否则等下次启动
+                Handler current = transferHandler;
+                if (isRunning.get() && current != null) {
+                    current.post(this::resumeJournaledTasks);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 执行单个传输任务（工作线程）
+     */
+    private TransferOutcome transfer(TransferTask task, RelayCopier.RateLimiter limiter) {
+        TransferOutcome outcome = new TransferOutcome();
+        if (!task.sourceFile.exists()) {
+            outcome.sourceMissing = true;
+            outcome.error = "Source file not found";
+            return outcome;
         }
         
-        // 确保目标目录存在
+        // 确保目标目录存在（失败说明目标存储卷不可用，只退避不计入重试次数）
         File targetDir = task.targetFile.getParentFile();
         if (targetDir != null && !targetDir.exists()) {
             if (!targetDir.mkdirs()) {
                 AppLog.e(TAG, "Failed to create target directory: " + targetDir.getAbsolutePath());
-                handleTransferFailure(task, "Cannot create target directory");
-                return;
+                outcome.error = "Cannot create target directory";
+                return outcome;
             }
         }
         
-        // 尝试移动文件（如果在同一文件系统，这是最快的）
-        boolean moved = task.sourceFile.renameTo(task.targetFile);
+        journal.markStarted(task.journalId);
         
-        if (moved) {
-            // 移动成功
-            long fileSize = task.targetFile.length();
+        // 尝试移动文件（如果在同一文件系统，这是最快的）
+        if (task.sourceFile.renameTo(task.targetFile)) {
+            outcome.success = true;
+            outcome.fileSize = task.targetFile.length();
             AppLog.d(TAG, "File moved successfully: " + task.sourceFile.getName() + 
-                    " -> " + task.targetFile.getAbsolutePath() + " (" + formatSize(fileSize) + ")");
+                    " -> " + task.targetFile.getAbsolutePath() + " (" + formatSize(outcome.fileSize) + ")");
+            return outcome;
+        }
+        
+        // 移动失败（可能跨文件系统），复制到 .part 文件，校验通过后再改名
+        // 上次复制中断时，从传输日志中的检查点续传
+        File partFile = getPartFile(task);
+        TransferJournal.Checkpoint checkpoint = journal.getCheckpoint(task.journalId);
+        AppLog.d(TAG, "Move failed, trying copy: " + task.sourceFile.getName() +
+                (checkpoint != null ? " (resume from " + formatSize(checkpoint.offset) + ")" : ""));
+        try {
+            outcome.copyResult = RelayCopier.copy(task.sourceFile, partFile, limiter,
+                    checkpoint != null ? checkpoint.offset : 0, checkpoint != null ? checkpoint.checksum : 0,
+                    (offset, checksum) -> journal.checkpoint(task.journalId, offset, checksum));
+        } catch (RelayCopier.ChecksumMismatchException e) {
+            AppLog.e(TAG, "Checksum mismatch, will copy again: " + task.sourceFile.getName() + " - " + e.getMessage());
             
-            totalTransferred++;
-            totalBytesTransferred += fileSize;
+            // 目标文件不可信，删除后从头复制
+            partFile.delete();
+            journal.clearCheckpoint(task.journalId);
+            outcome.countRetry = true;
+            outcome.error = "Checksum mismatch";
+            return outcome;
+        } catch (IOException e) {
+            AppLog.e(TAG, "Error copying file: " + task.sourceFile.getName(), e);
             
-            if (task.callback != null) {
-                task.callback.onTransferComplete(task.sourceFile, task.targetFile);
-            }
+            // 保留已复制部分，下次按检查点续传
+            outcome.countRetry = true;
+            outcome.error = "Copy failed";
+            return outcome;
+        }
+        
+        if (outcome.copyResult.resumedFrom == 0 && checkpoint != null) {
+            AppLog.w(TAG, "Checkpoint did not match partial copy, copied from start: " + task.sourceFile.getName());
+        }
+        
+        // 完整文件的校验值写入传输日志：删除源文件后中断时，重启恢复用它校验目标文件
+        journal.checkpoint(task.journalId, outcome.copyResult.bytes, outcome.copyResult.checksum);
+        
+        // 已有同名目标文件时覆盖（FAT 文件系统上 renameTo 不会覆盖）
+        if (task.targetFile.exists()) {
+            task.targetFile.delete();
+        }
+        if (!partFile.renameTo(task.targetFile)) {
+            AppLog.e(TAG, "Failed to rename copied file: " + partFile.getAbsolutePath());
+            outcome.countRetry = true;
+            outcome.error = "Rename failed";
+            return outcome;
+        }
+        
+        // 复制成功且校验一致（已落盘），删除源文件
+        outcome.success = true;
+        outcome.fileSize = outcome.copyResult.bytes;
+        outcome.checksum = outcome.copyResult.checksum;
+        if (task.sourceFile.delete()) {
+            AppLog.d(TAG, "File copied and source deleted: " + task.sourceFile.getName() + 
+                    " -> " + task.targetFile.getAbsolutePath() + " (" + formatSize(outcome.fileSize) + 
+                    String.format(", %.1f MB/s)", outcome.copyResult.getIoBytesPerSec() / (1024 * 1024)));
         } else {
-            // 移动失败（可能跨文件系统），尝试复制
-            AppLog.d(TAG, "Move failed, trying copy: " + task.sourceFile.getName());
-            
-            boolean copied = copyFile(task.sourceFile, task.targetFile);
-            
-            if (copied) {
-                // 复制成功，删除源文件
-                long fileSize = task.targetFile.length();
-                
-                if (task.sourceFile.delete()) {
-                    AppLog.d(TAG, "File copied and source deleted: " + task.sourceFile.getName() + 
-                            " -> " + task.targetFile.getAbsolutePath() + " (" + formatSize(fileSize) + ")");
-                } else {
-                    AppLog.w(TAG, "File copied but failed to delete source: " + task.sourceFile.getName());
-                }
-                
-                totalTransferred++;
-                totalBytesTransferred += fileSize;
-                
-                if (task.callback != null) {
-                    task.callback.onTransferComplete(task.sourceFile, task.targetFile);
+            AppLog.w(TAG, "File copied but failed to delete source: " + task.sourceFile.getName());
+        }
+        return outcome;
+    }
+    
+    /**
+     * 处理传输结果（调度线程），并继续调度等待中的任务
+     */
+    private void onTaskFinished(TransferTask task, VolumeState state, TransferOutcome outcome) {
+        state.inFlight--;
+        
+        if (outcome.success) {
+            if (outcome.copyResult != null && outcome.copyResult.bytes >= RelayCopier.CHUNK_SIZE) {
+                double rate = outcome.copyResult.getIoBytesPerSec();
+                synchronized (volumeStates) {
+                    state.bytesPerSec = state.bytesPerSec <= 0 ? rate
+                            : THROUGHPUT_EWMA_ALPHA * rate + (1 - THROUGHPUT_EWMA_ALPHA) * state.bytesPerSec;
                 }
-            } else {
-                // 复制也失败
-                handleTransferFailure(task, "Copy failed");
             }
+            onTransferSucceeded(task, outcome.fileSize, outcome.checksum);
+        } else if (outcome.sourceMissing) {
+            AppLog.w(TAG, "Source file no longer exists: " + task.sourceFile.getName());
+            finishTask(task);
+            journal.markFailed(task.journalId);
+            getPartFile(task).delete();
+            if (task.callback != null) {
+                task.callback.onTransferFailed(task.sourceFile, task.targetFile, outcome.error);
+            }
+            totalFailed++;
+        } else {
+            handleTransferFailure(task, outcome.error, outcome.countRetry);
+        }
+        
+        processQueue();
+    }
+    
+    /**
+     * 传输成功：记录日志、更新目录、清除目标存储卷的退避状态
+     */
+    private void onTransferSucceeded(TransferTask task, long fileSize, long checksum) {
+        totalTransferred++;
+        totalBytesTransferred += fileSize;
+        MediaCatalog.getInstance(context).onMediaFileMoved(task.sourceFile, task.targetFile, checksum);
+        finishTask(task);
+        journal.markDone(task.journalId);
+        
+        if (volumeBackoffs.remove(task.volume) != null) {
+            AppLog.d(TAG, "Target volume recovered: " + task.volume);
+        }
+        
+        if (task.callback != null) {
+            task.callback.onTransferComplete(task.sourceFile, task.targetFile);
+        }
+    }
+    
+    /**
+     * 复制过程中使用的临时目标文件（与目标文件同目录）
+     */
+    private static File getPartFile(TransferTask task) {
+        return new File(task.targetFile.getPath() + PART_FILE_SUFFIX);
+    }
+    
+    private void finishTask(TransferTask task) {
+        if (queuedTasks.remove(task.journalId) != null) {
+            backlogBytes.addAndGet(-task.sizeBytes);
         }
     }
     
     /**
      * 处理传输失败
+     * 目标存储卷进入指数退避（2s、4s、8s ... 最长5分钟），期间该卷的所有任务暂缓
+     * @param countRetry 是否计入任务重试次数（目标存储卷不可用时不计入，等待其恢复）
      */
-    private void handleTransferFailure(TransferTask task, String error) {
-        task.retryCount++;
+    private void handleTransferFailure(TransferTask task, String error, boolean countRetry) {
+        if (countRetry) {
+            task.retryCount++;
+        }
+        
+        VolumeBackoff backoff = volumeBackoffs.get(task.volume);
+        if (backoff == null) {
+            backoff = new VolumeBackoff();
+            volumeBackoffs.put(task.volume, backoff);
+        }
+        backoff.failures++;
+        long delay = Math.min(RETRY_MAX_DELAY_MS,
+                RETRY_BASE_DELAY_MS << Math.min(backoff.failures - 1, 20));
+        backoff.retryAtMs = SystemClock.uptimeMillis() + delay;
         
         if (task.retryCount < MAX_RETRY_COUNT) {
-            // 重试
-            AppLog.w(TAG, "Transfer failed, will retry (" + task.retryCount + "/" + MAX_RETRY_COUNT + "): " + 
-                    task.sourceFile.getName() + " - " + error);
+            // 重试（放回队首，保持原有顺序）
+            AppLog.w(TAG, "Transfer failed, will retry in " + (delay / 1000) + "s (" + task.retryCount + "/" +
+                    MAX_RETRY_COUNT + "): " + task.sourceFile.getName() + " - " + error);
             
-            // 延迟后重新加入队列
-            if (transferHandler != null) {
-                transferHandler.postDelayed(() -> {
-                    transferQueue.offer(task);
-                }, RETRY_DELAY_MS);
-            }
+            pendingTasks.addFirst(task);
         } else {
-            // 超过重试次数，放弃
+            // 超过重试次数，放弃（源文件保留在临时目录，下次启动时重新接管）
             AppLog.e(TAG, "Transfer failed after " + MAX_RETRY_COUNT + " retries: " + 
                     task.sourceFile.getName() + " - " + error);
             
             totalFailed++;
+            finishTask(task);
+            journal.markFailed(task.journalId);
+            getPartFile(task).delete();
             
             if (task.callback != null) {
                 task.callback.onTransferFailed(task.sourceFile, task.targetFile, error);
@@ -425,58 +821,6 @@ public class FileTransferManager {
         }
     }
     
-    /**
-     * 复制文件（使用 NIO Channel，效率较高）
-     */
-    private boolean copyFile(File source, File target) {
-        FileChannel sourceChannel = null;
-        FileChannel targetChannel = null;
-        
-        try {
-            sourceChannel = new FileInputStream(source).getChannel();
-            targetChannel = new FileOutputStream(target).getChannel();
-            
-            long size = sourceChannel.size();
-            long transferred = 0;
-            
-            // 分块传输，避免内存问题
-            final long CHUNK_SIZE = 8 * 1024 * 1024;  // 8MB chunks
-            
-            while (transferred < size) {
-                long remaining = size - transferred;
-                long toTransfer = Math.min(remaining, CHUNK_SIZE);
-                long actualTransferred = sourceChannel.transferTo(transferred, toTransfer, targetChannel);
-                
-                if (actualTransferred == 0) {
-                    // 传输停滞，可能有问题
-                    AppLog.w(TAG, "Transfer stalled at " + transferred + "/" + size);
-                    break;
-                }
-                
-                transferred += actualTransferred;
-            }
-            
-            return transferred == size;
-            
-        } catch (IOException e) {
-            AppLog.e(TAG, "Error copying file: " + source.getName(), e);
-            
-            // 删除可能不完整的目标文件
-            if (target.exists()) {
-                target.delete();
-            }
-            
-            return false;
-        } finally {
-            try {
-                if (sourceChannel != null) sourceChannel.close();
-                if (targetChannel != null) targetChannel.close();
-            } catch (IOException e) {
-                // Ignore
-            }
-        }
-    }
-    
     /**
      * 格式化文件大小
      */
@@ -0,0 +1,144 @@
+package com.kooo.evcam;
+
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * AppLog 的内存日志缓冲区
+ * 固定容量的多生产者环形缓冲区：写入只做一次 getAndIncrement 领取序号、一次数组写入，不加锁，
+ * 也不格式化时间和拼接字符串；只保存原始记录（时间戳、级别、tag、消息），
+ * 保存或上传日志时才按 "yyyy-MM-dd HH:mm:ss.SSS L/tag: message" 格式化
+ *
+ * 缓冲区写满后新记录覆盖最旧的记录；每条记录带有序号，读取时序号不符的槽位（已被覆盖或尚未写入）直接跳过
+ */
+final class LogRingBuffer {
+
+    /**
+     * 一条原始日志记录（不可变）
+     */
+    static final class Record {
+        final long seq;
+        final long timeMs;
+        final int level;
+        final String tag;
+        final String message;
+
+        Record(long seq, long timeMs, int level, String tag, String message) {
+            this.seq = seq;
+            this.timeMs = timeMs;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+        }
+    }
+
+    private final AtomicReferenceArray<Record> slots;
+    private final int mask;
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    /**
+     * @param capacity 容量（向上取整到 2 的幂）
+     */
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 追加一条记录（可在任意线程调用，不加锁）
+     */
+    void append(long timeMs, int level, String tag, String message) {
+        long seq = nextSeq.getAndIncrement();
+        slots.set((int) (seq & mask), new Record(seq, timeMs, level, tag, message));
+    }
+
+    /**
+     * 下一条记录的序号（即已写入的记录总数）
+     */
+    long nextSeq() {
+        return nextSeq.get();
+    }
+
+    /**
+     * 按序号顺序复制当前缓冲区中的记录（只复制引用，不格式化）
+     */
+    List<Record> snapshot() {
+        return snapshot(0);
+    }
+
+    /**
+     * 按序号顺序复制序号 >= fromSeq 的记录
+     */
+    List<Record> snapshot(long fromSeq) {
+        long end = nextSeq.get();
+        long start = Math.max(fromSeq, end - capacity());
+        List<Record> records = new ArrayList<>((int) Math.max(0, end - start));
+        for (long seq = start; seq < end; seq++) {
+            Record record = slots.get((int) (seq & mask));
+            // 序号不符：该槽位已被更新的记录覆盖，或领取序号的线程还没写入
+            if (record != null && record.seq == seq) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 复制并格式化当前缓冲区中的记录
+     */
+    List<String> snapshotLines() {
+        List<Record> records = snapshot();
+        List<String> lines = new ArrayList<>(records.size());
+        LineFormatter formatter = new LineFormatter();
+        for (Record record : records) {
+            lines.add(formatter.format(record));
+        }
+        return lines;
+    }
+
+    /**
+     * 日志行格式化器（非线程安全，每次保存 / 上传时创建一个）
+     */
+    static final class LineFormatter {
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        private final Date date = new Date();
+        private final StringBuilder sb = new StringBuilder(256);
+
+        String format(Record record) {
+            date.setTime(record.timeMs);
+            sb.setLength(0);
+            sb.append(dateFormat.format(date)).append(' ')
+                    .append(levelToLabel(record.level)).append('/')
+                    .append(record.tag).append(": ")
+                    .append(record.message);
+            return sb.toString();
+        }
+    }
+
+    static String levelToLabel(int level) {
+        switch (level) {
+            case Log.ERROR:
+                return "E";
+            case Log.WARN:
+                return "W";
+            case Log.INFO:
+                return "I";
+            case Log.DEBUG:
+                return "D";
+            default:
+                return String.valueOf(level);
+        }
+    }
+}
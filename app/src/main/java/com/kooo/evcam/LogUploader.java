@@ -0,0 +1,350 @@
+package com.kooo.evcam;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 日志流式上传
+ * 日志不再先拼成一个完整字符串：请求体（Gotify 消息 JSON）边格式化边写入分块传输（chunked）的 HTTP 连接
+ *
+ * 可选经 GZIPOutputStream 压缩（Content-Encoding: gzip）。Gotify 不解压请求体，因此上传到 Gotify 时不压缩；
+ * 其他服务器明确拒绝压缩请求体（415，或 400 且错误信息指出编码问题）时以不压缩方式重传一次，
+ * 并记住该地址，之后的上传直接不压缩。其他错误不重传
+ *
+ * 日志来源可以是内存缓冲区的快照（只复制记录引用，不持有锁），也可以是日志文件（逐行读取），
+ * 可以组合多个来源（如本次运行日志 + 上次运行日志）
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+final class LogUploader {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    // 拒绝过压缩请求体的上传地址（进程内有效）
+    private static final Set<String> gzipRejectedUrls = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 上传进度回调（在上传线程调用）
+     */
+    interface ProgressListener {
+        void onProgress(int percent);
+    }
+
+    /**
+     * 日志来源
+     */
+    abstract static class Source {
+        /**
+         * 逐行写出日志
+         * @param progress 写出进度回调，参数为本来源内的完成比例（0-1）
+         */
+        abstract void writeLines(LineSink sink, FractionListener progress) throws IOException;
+
+        /**
+         * 是否没有任何日志
+         */
+        abstract boolean isEmpty();
+
+        /**
+         * 日志行数（日志文件需要读一遍统计换行）
+         */
+        abstract long lineCount() throws IOException;
+    }
+
+    interface LineSink {
+        void line(String line) throws IOException;
+    }
+
+    interface FractionListener {
+        void onFraction(double fraction);
+    }
+
+    /**
+     * 内存缓冲区快照
+     */
+    static Source ofRecords(List<LogRingBuffer.Record> records) {
+        return new Source() {
+            @Override
+            void writeLines(LineSink sink, FractionListener progress) throws IOException {
+                LogRingBuffer.LineFormatter formatter = new LogRingBuffer.LineFormatter();
+                int size = records.size();
+                for (int i = 0; i < size; i++) {
+                    sink.line(formatter.format(records.get(i)));
+                    if ((i & 255) == 0) {
+                        progress.onFraction((double) i / size);
+                    }
+                }
+            }
+
+            @Override
+            boolean isEmpty() {
+                return records.isEmpty();
+            }
+
+            @Override
+            long lineCount() {
+                return records.size();
+            }
+        };
+    }
+
+    /**
+     * 日志文件（逐行读取，不整体载入内存）
+     */
+    static Source ofFile(File file) {
+        return new Source() {
+            @Override
+            void writeLines(LineSink sink, FractionListener progress) throws IOException {
+                long total = Math.max(1, file.length());
+                long read = 0;
+                int lines = 0;
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        sink.line(line);
+                        // 按字符数估算已读字节（中文按 UTF-8 的 3 字节计会偏小，只用于进度显示）
+                        read += line.length() + 1;
+                        if ((++lines & 255) == 0) {
+                            progress.onFraction(Math.min(1.0, (double) read / total));
+                        }
+                    }
+                }
+            }
+
+            @Override
+            boolean isEmpty() {
+                return !file.exists() || file.length() == 0;
+            }
+
+            @Override
+            long lineCount() throws IOException {
+                if (isEmpty()) {
+                    return 0;
+                }
+                long lines = 0;
+                byte last = '\n';
+                byte[] buffer = new byte[CHUNK_SIZE];
+                try (InputStream in = new FileInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        for (int i = 0; i < n; i++) {
+                            if (buffer[i] == '\n') {
+                                lines++;
+                            }
+                        }
+                        last = buffer[n - 1];
+                    }
+                }
+                // 最后一行没有换行符时也计入
+                return last == '\n' ? lines : lines + 1;
+            }
+        };
+    }
+
+    private final String url;
+    private final boolean gzip;
+
+    /**
+     * @param url 上传地址
+     * @param gzip 是否压缩请求体（服务器须支持 Content-Encoding: gzip 的请求）
+     */
+    LogUploader(String url, boolean gzip) {
+        this.url = url;
+        this.gzip = gzip;
+    }
+
+    /**
+     * 上传日志（阻塞，在后台线程调用）
+     * @param title 消息标题
+     * @param header 日志正文前的说明文字（设备信息、问题描述等）
+     * @param sources 日志来源，按顺序写出
+     * @param priority Gotify 消息优先级
+     * @return HTTP 响应码（2xx 表示成功）
+     * @throws HttpException 服务器返回错误
+     */
+    int upload(String title, String header, List<Source> sources, int priority, ProgressListener listener)
+            throws IOException {
+        if (!gzip || gzipRejectedUrls.contains(url)) {
+            return post(title, header, sources, priority, false, listener);
+        }
+        try {
+            return post(title, header, sources, priority, true, listener);
+        } catch (HttpException e) {
+            if (!isEncodingRejected(e)) {
+                throw e;
+            }
+            // 服务器不支持 gzip 请求体：记住该地址，以不压缩方式重传
+            gzipRejectedUrls.add(url);
+            return post(title, header, sources, priority, false, listener);
+        }
+    }
+
+    /**
+     * 服务器是否因为请求体压缩而拒绝：415，或 400 且错误信息提到编码 / gzip
+     * （不解压的 JSON 解析器会报告 gzip 魔数的首字节 0x1f 为非法字符）
+     */
+    static boolean isEncodingRejected(HttpException e) {
+        if (e.code == HTTP_UNSUPPORTED_MEDIA_TYPE) {
+            return true;
+        }
+        if (e.code != HttpURLConnection.HTTP_BAD_REQUEST) {
+            return false;
+        }
+        String body = e.body.toLowerCase(Locale.US);
+        return body.contains("gzip") || body.contains("encoding") || body.contains("\\x1f")
+                || body.contains("\\u001f");
+    }
+
+    /**
+     * 服务器返回非 2xx 响应
+     */
+    static final class HttpException extends IOException {
+        final int code;
+        final String body;
+
+        HttpException(int code, String body) {
+            super("HTTP " + code + ": " + body);
+            this.code = code;
+            this.body = body;
+        }
+    }
+
+    private int post(String title, String header, List<Source> sources, int priority, boolean gzip,
+                     ProgressListener listener) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            if (gzip) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(CHUNK_SIZE);
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+
+            try (OutputStream raw = connection.getOutputStream();
+                 OutputStream body = gzip ? new GZIPOutputStream(raw, CHUNK_SIZE) : raw;
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), CHUNK_SIZE)) {
+                writeBody(writer, title, header, sources, priority, listener);
+            }
+
+            int code = connection.getResponseCode();
+            if (code / 100 != 2) {
+                throw new HttpException(code, readError(connection));
+            }
+            if (listener != null) {
+                listener.onProgress(100);
+            }
+            return code;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 写出 Gotify 消息 JSON：{"title":..., "priority":..., "message":"<header><日志行>..."}
+     */
+    static void writeBody(Writer writer, String title, String header, List<Source> sources, int priority,
+                          ProgressListener listener) throws IOException {
+        writer.write("{\"title\":\"");
+        writeEscaped(writer, title);
+        writer.write("\",\"priority\":");
+        writer.write(Integer.toString(priority));
+        writer.write(",\"message\":\"");
+        writeEscaped(writer, header);
+
+        List<Source> nonEmpty = new ArrayList<>();
+        for (Source source : sources) {
+            if (!source.isEmpty()) {
+                nonEmpty.add(source);
+            }
+        }
+        int count = nonEmpty.size();
+        int[] lastPercent = {-1};
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            nonEmpty.get(i).writeLines(line -> {
+                writeEscaped(writer, line);
+                writer.write("\\n");
+            }, fraction -> {
+                // 最后 1% 留给服务器响应
+                int percent = (int) ((index + fraction) * 99 / count);
+                if (listener != null && percent != lastPercent[0]) {
+                    lastPercent[0] = percent;
+                    listener.onProgress(percent);
+                }
+            });
+        }
+        writer.write("\"}");
+    }
+
+    private static void writeEscaped(Writer writer, String s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        int length = s.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            String escape;
+            if (c == '"') {
+                escape = "\\\"";
+            } else if (c == '\\') {
+                escape = "\\\\";
+            } else if (c == '\n') {
+                escape = "\\n";
+            } else if (c == '\r') {
+                escape = "\\r";
+            } else if (c == '\t') {
+                escape = "\\t";
+            } else if (c < 0x20) {
+                escape = String.format("\\u%04x", (int) c);
+            } else {
+                continue;
+            }
+            writer.write(s, start, i - start);
+            writer.write(escape);
+            start = i + 1;
+        }
+        writer.write(s, start, length - start);
+    }
+
+    private static String readError(HttpURLConnection connection) {
+        StringBuilder sb = new StringBuilder();
+        try (InputStream in = connection.getErrorStream()) {
+            if (in == null) {
+                return "";
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line);
+            }
+        } catch (IOException e) {
+            // 忽略读取错误流的异常
+        }
+        return sb.toString();
+    }
+}
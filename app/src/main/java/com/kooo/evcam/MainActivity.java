@@ -10,6 +10,8 @@ import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -37,6 +39,8 @@ import com.kooo.evcam.camera.MultiCameraManager;
 import com.kooo.evcam.camera.SingleCamera;
 import com.kooo.evcam.FileTransferManager;
 import com.kooo.evcam.StorageHelper;
+import com.kooo.evcam.storage.IoScheduler;
+import com.kooo.evcam.storage.StorageVolumeMonitor;
 import com.kooo.evcam.dingtalk.DingTalkApiClient;
 import com.kooo.evcam.dingtalk.DingTalkConfig;
 import com.kooo.evcam.dingtalk.DingTalkStreamManager;
@@ -52,7 +56,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -87,6 +93,8 @@ public class MainActivity extends AppCompatActivity {
     private int textureReadyCount = 0;  // 记录准备好的TextureView数量
     private int requiredTextureCount = 4;  // 需要准备好的TextureView数量（根据摄像头数量）
     private boolean isRecording = false;  // 录制状态标志
+    private File activeRecordingDir;  // 当前录制写入的目录（用于判断被拔出的存储卷是否影响录制）
+    private final StorageVolumeMonitor.VolumeListener volumeListener = this::onStorageVolumeChanged;
     private boolean isInBackground = false;  // 是否在后台
     private boolean pendingRemoteCommand = false;  // 是否有待处理的远程命令
     private boolean isRemoteWakeUp = false;  // 是否是远程命令唤醒的（用于完成后自动退回后台）
@@ -108,7 +116,7 @@ public class MainActivity extends AppCompatActivity {
     
     // 息屏录制相关
     private android.content.BroadcastReceiver screenStateReceiver;  // 屏幕状态广播接收器
-    private android.os.Handler screenStateHandler;  // 息屏/亮屏延迟处理
+    private Handler screenStateHandler;  // 息屏/亮屏延迟处理
     private Runnable screenOffStopRunnable;  // 息屏停止录制的延迟任务
     private Runnable screenOnStartRunnable;  // 亮屏恢复录制的延迟任务
     private Runnable screenOffBackgroundRunnable;  // 息屏退后台的延迟任务
@@ -123,13 +131,13 @@ public class MainActivity extends AppCompatActivity {
     private int configuredCameraCount = 4;  // 配置的摄像头数量
 
     // 录制按钮闪烁动画相关
-    private android.os.Handler blinkHandler;
+    private Handler blinkHandler;
     private Runnable blinkRunnable;
     private boolean isBlinking = false;
 
     // 录制状态显示相关
     private TextView tvRecordingStats;
-    private android.os.Handler recordingTimerHandler;
+    private Handler recordingTimerHandler;
     private Runnable recordingTimerRunnable;
     private long recordingStartTime = 0;  // 录制开始时间
     private int currentSegmentCount = 1;  // 当前分段数
@@ -145,7 +153,7 @@ public class MainActivity extends AppCompatActivity {
 
 
     // 远程录制相关
-    private android.os.Handler autoStopHandler;  // 自动停止录制的 Handler
+    private Handler autoStopHandler;  // 自动停止录制的 Handler
     private Runnable autoStopRunnable;  // 自动停止录制的 Runnable
     private String remoteRecordingTimestamp;  // 远程录制统一时间戳（用于文件命名和查找）
     private boolean isRemoteRecording = false;  // 是否正在进行远程录制
@@ -226,7 +234,7 @@ public class MainActivity extends AppCompatActivity {
         feishuConfig = new com.kooo.evcam.feishu.FeishuConfig(this);
 
         // 初始化自动停止 Handler
-        autoStopHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+        autoStopHandler = new Handler(Looper.getMainLooper());
         
         // 初始化远程录制时间戳
         remoteRecordingTimestamp = null;
@@ -253,7 +261,7 @@ public class MainActivity extends AppCompatActivity {
                 // 如果服务正在启动中，延迟获取实例
                 if (dingTalkApiClient == null || dingTalkStreamManager == null) {
                     AppLog.d(TAG, "钉钉服务正在启动中，延迟 500ms 后获取实例");
-                    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         dingTalkApiClient = RemoteServiceManager.getInstance().getDingTalkApiClient();
                         dingTalkStreamManager = RemoteServiceManager.getInstance().getDingTalkStreamManager();
                         AppLog.d(TAG, "延迟获取钉钉实例: apiClient=" + (dingTalkApiClient != null) + 
@@ -276,7 +284,7 @@ public class MainActivity extends AppCompatActivity {
                 // 如果服务正在启动中，延迟获取实例
                 if (telegramApiClient == null || telegramBotManager == null) {
                     AppLog.d(TAG, "Telegram 服务正在启动中，延迟 500ms 后获取实例");
-                    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         telegramApiClient = RemoteServiceManager.getInstance().getTelegramApiClient();
                         telegramBotManager = RemoteServiceManager.getInstance().getTelegramBotManager();
                         AppLog.d(TAG, "延迟获取 Telegram 实例: apiClient=" + (telegramApiClient != null) + 
@@ -297,7 +305,7 @@ public class MainActivity extends AppCompatActivity {
                 
                 if (feishuApiClient == null || feishuBotManager == null) {
                     AppLog.d(TAG, "飞书服务正在启动中，延迟 500ms 后获取实例");
-                    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         feishuApiClient = RemoteServiceManager.getInstance().getFeishuApiClient();
                         feishuBotManager = RemoteServiceManager.getInstance().getFeishuBotManager();
                         AppLog.d(TAG, "延迟获取飞书实例: apiClient=" + (feishuApiClient != null) + 
@@ -344,6 +352,10 @@ public class MainActivity extends AppCompatActivity {
         
         // 启动文件传输服务（用于U盘中转写入模式）
         FileTransferManager.getInstance(this).start();
+        
+        // 监听存储卷挂载/拔出（U盘被拔出时切换到内部存储继续录制）
+        StorageVolumeMonitor.getInstance().start(this);
+        StorageVolumeMonitor.getInstance().addListener(volumeListener);
 
         // 检查是否是开机自启动
         boolean autoStartFromBoot = getIntent().getBooleanExtra("auto_start_from_boot", false);
@@ -367,7 +379,7 @@ public class MainActivity extends AppCompatActivity {
             AppLog.d(TAG, "悬浮窗服务已启动");
             
             // 延迟发送当前状态（等待服务启动完成）
-            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+            new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 // 发送当前录制状态
                 broadcastCurrentRecordingState();
                 // 应用在前台，隐藏悬浮窗
@@ -399,7 +411,7 @@ public class MainActivity extends AppCompatActivity {
             shouldMoveToBackgroundOnReady = false;  // 清除标志，避免重复执行
             
             // 延迟移到后台，确保初始化完成
-            new android.os.Handler().postDelayed(() -> {
+            new Handler().postDelayed(() -> {
                 moveTaskToBack(true);  // 将应用移到后台
                 AppLog.d(TAG, "应用已移到后台，开机自启动完成");
             }, 500);  // 延迟 500ms
@@ -455,7 +467,7 @@ public class MainActivity extends AppCompatActivity {
             int delay = isInBackground ? 3000 : 1500;
             final String finalAction = action;
             
-            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+            new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 pendingRemoteCommand = false;
                 
                 // 检查摄像头是否准备好
@@ -471,7 +483,7 @@ public class MainActivity extends AppCompatActivity {
                 // 如果连接的摄像头不足，继续等待
                 if (!cameraManager.hasConnectedCameras()) {
                     AppLog.w(TAG, "Telegram: No cameras connected yet, waiting 1.5s more...");
-                    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         boolean hasCamera = cameraManager != null && cameraManager.hasConnectedCameras();
                         AppLog.d(TAG, "Telegram: After waiting, hasConnectedCameras: " + hasCamera);
                         executeTelegramCommand(finalAction, chatId, duration);
@@ -514,7 +526,7 @@ public class MainActivity extends AppCompatActivity {
             final String finalAction = action;
             final String finalChatId = chatId;
             
-            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+            new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 pendingRemoteCommand = false;
                 
                 // 检查摄像头是否准备好
@@ -530,7 +542,7 @@ public class MainActivity extends AppCompatActivity {
                 // 如果连接的摄像头不足，继续等待
                 if (!cameraManager.hasConnectedCameras()) {
                     AppLog.w(TAG, "Feishu: No cameras connected yet, waiting 1.5s more...");
-                    new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                    new Handler(Looper.getMainLooper()).postDelayed(() -> {
                         boolean hasCamera = cameraManager != null && cameraManager.hasConnectedCameras();
                         AppLog.d(TAG, "Feishu: After waiting, hasConnectedCameras: " + hasCamera);
                         executeFeishuCommand(finalAction, finalChatId, duration);
@@ -571,7 +583,7 @@ public class MainActivity extends AppCompatActivity {
         // 如果从后台唤醒，摄像头需要时间重新连接
         int delay = isInBackground ? 3000 : 1500;
         
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
             pendingRemoteCommand = false;
             
             // 检查摄像头是否准备好
@@ -587,7 +599,7 @@ public class MainActivity extends AppCompatActivity {
             // 如果连接的摄像头少于4个，继续等待
             if (connectedCount < 4) {
                 AppLog.w(TAG, "Only " + connectedCount + " cameras connected, waiting 1.5s more...");
-                new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                new Handler(Looper.getMainLooper()).postDelayed(() -> {
                     int finalCount = cameraManager.getConnectedCameraCount();
                     AppLog.d(TAG, "After waiting, connected cameras: " + finalCount + "/4");
                     if (finalCount < 4) {
@@ -702,7 +714,7 @@ public class MainActivity extends AppCompatActivity {
         AppLog.d(TAG, "Recording stopped");
         
         // 延迟退到后台
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
             moveTaskToBack(true);
             AppLog.d(TAG, "Moved to background");
         }, 1000);
@@ -1021,7 +1033,7 @@ public class MainActivity extends AppCompatActivity {
         isRecordingStatsEnabled = appConfig.isRecordingStatsEnabled();
         
         // 初始化计时器 Handler
-        recordingTimerHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+        recordingTimerHandler = new Handler(Looper.getMainLooper());
         
         // 确保 View 可点击（即使 INVISIBLE 也能响应点击）
         tvRecordingStats.setClickable(true);
@@ -1382,7 +1394,7 @@ public class MainActivity extends AppCompatActivity {
         appConfig.setFirstLaunchCompleted();
 
         // 延迟执行，确保 UI 完全初始化
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
             // 进入设置界面
             showSettingsInterface();
             clearAllNavigationChecks();
@@ -1720,6 +1732,28 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        // 设置录制参数修改结果回调（录制中修改码率、帧率、水印、分段时长、分辨率等）
+        cameraManager.setReconfigureCallback(results -> {
+            // 各摄像头的生效方式相同，按参数汇总，丢帧数取最大值
+            Map<String, MultiCameraManager.ReconfigureResult> bySetting = new LinkedHashMap<>();
+            for (MultiCameraManager.ReconfigureResult result : results) {
+                MultiCameraManager.ReconfigureResult existing = bySetting.get(result.setting);
+                if (existing == null || result.framesLost > existing.framesLost) {
+                    bySetting.put(result.setting, result);
+                }
+            }
+            StringBuilder message = new StringBuilder("录制参数已更新：");
+            for (MultiCameraManager.ReconfigureResult result : bySetting.values()) {
+                message.append("\n")
+                        .append(MultiCameraManager.ReconfigureResult.getSettingDisplayName(result.setting))
+                        .append(" - ").append(result.path.getDisplayName());
+                if (result.framesLost > 0) {
+                    message.append("（丢失约 ").append(result.framesLost).append(" 帧）");
+                }
+            }
+            Toast.makeText(this, message.toString(), Toast.LENGTH_LONG).show();
+        });
+
         // 设置首次数据写入回调
         // 用于在摄像头真正开始输出数据后启动计时器（分段计时、钉钉录制计时等）
         cameraManager.setFirstDataWrittenCallback(() -> {
@@ -2282,7 +2316,7 @@ public class MainActivity extends AppCompatActivity {
         AppLog.d(TAG, "检测到需要恢复录制（主题切换后），将在2秒后自动恢复...");
         
         // 延迟2秒后恢复录制，确保所有摄像头都已准备就绪
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
             // 再次检查是否已经在录制（可能用户手动开始了）
             if (isRecording) {
                 AppLog.d(TAG, "已在录制中，跳过恢复录制");
@@ -2336,7 +2370,7 @@ public class MainActivity extends AppCompatActivity {
         AppLog.d(TAG, "检测到启用了启动自动录制，将在2秒后自动开始录制...");
         
         // 延迟2秒后开始录制，确保所有摄像头都已准备就绪
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
             // 再次检查是否已经在录制（可能用户手动开始了）
             if (isRecording) {
                 AppLog.d(TAG, "已在录制中，跳过自动录制");
@@ -2361,7 +2395,7 @@ public class MainActivity extends AppCompatActivity {
      * 用于检测屏幕开关状态，实现息屏录制功能
      */
     private void initScreenStateReceiver() {
-        screenStateHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+        screenStateHandler = new Handler(Looper.getMainLooper());
         
         screenStateReceiver = new android.content.BroadcastReceiver() {
             @Override
@@ -2683,6 +2717,7 @@ public class MainActivity extends AppCompatActivity {
             boolean success = cameraManager.startRecording(timestamp, enabledCameras);
             if (success) {
                 isRecording = true;
+                activeRecordingDir = StorageHelper.getRecordingDir(this);
                 isPreparingRecording = true;  // 标记为准备中状态
 
                 // 启动前台服务保护（防止后台录制被中断）
@@ -2721,10 +2756,36 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 存储卷变化回调（主线程）
+     * 正在写入的存储卷被弹出或拔出时，立即停止录制（避免后续写入失败导致文件损坏），
+     * 稍后重新开始录制，此时U盘已不可用，会自动回退到内部存储
+     */
+    private void onStorageVolumeChanged(File volume, boolean available) {
+        if (available || !isRecording || activeRecordingDir == null) {
+            return;
+        }
+        String recordingPath = activeRecordingDir.getAbsolutePath();
+        String volumePath = volume.getAbsolutePath();
+        if (!recordingPath.equals(volumePath) && !recordingPath.startsWith(volumePath + "/")) {
+            return;
+        }
+        
+        AppLog.w(TAG, "录制所在的存储卷不可用: " + volumePath + "，切换存储后重新录制");
+        stopRecording();
+        Toast.makeText(this, "U盘已移除，切换到内部存储继续录制", Toast.LENGTH_SHORT).show();
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
+            if (!isRecording && !isFinishing()) {
+                startRecording();
+            }
+        }, 1500);
+    }
+    
     private void stopRecording() {
         if (cameraManager != null) {
             cameraManager.stopRecording();
             isRecording = false;
+            activeRecordingDir = null;
             isPreparingRecording = false;  // 重置准备中状态
 
             // 停止前台服务
@@ -2795,7 +2856,7 @@ public class MainActivity extends AppCompatActivity {
 
     private void startBlinkAnimation() {
         if (blinkHandler == null) {
-            blinkHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+            blinkHandler = new Handler(Looper.getMainLooper());
         }
 
         isBlinking = true;
@@ -2880,7 +2941,7 @@ public class MainActivity extends AppCompatActivity {
         AppLog.d(TAG, "Remote command completed, will return to background in 2 seconds");
 
         // 延迟2秒后退回后台，让用户看到 Toast 提示
-        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
             // 重置标记
             isRemoteWakeUp = false;
 
@@ -3378,7 +3439,7 @@ public class MainActivity extends AppCompatActivity {
             // 存储信息（简短版）
             try {
                 boolean useExternal = appConfig.isUsingExternalSdCard();
-                java.io.File storageDir = useExternal ? 
+                File storageDir = useExternal ? 
                         StorageHelper.getExternalSdCardRoot(this) : 
                         android.os.Environment.getExternalStorageDirectory();
                 if (storageDir != null && storageDir.exists()) {
@@ -3391,6 +3452,11 @@ public class MainActivity extends AppCompatActivity {
                 // 忽略存储获取错误
             }
             
+            // 后台 I/O 调度（录制时后台删除/复制/上传是否被限流）
+            if (isRecording) {
+                sb.append("⚖️ I/O: ").append(IoScheduler.getInstance().getStats()).append("\n");
+            }
+            
             // 应用状态
             sb.append("📱 应用: ").append(isInBackground ? "后台" : "前台").append("\n");
             
@@ -3618,7 +3684,7 @@ public class MainActivity extends AppCompatActivity {
         // 返回前台时，检查摄像头连接状态
         if (cameraManager != null && wasInBackground) {
             // 延迟500ms后重新打开摄像头
-            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+            new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 // 只在没有正在录制时重新打开（录制时摄像头应该保持连接）
                 if (!isRecording) {
                     AppLog.d(TAG, "Reopening cameras after returning from background");
@@ -3633,7 +3699,7 @@ public class MainActivity extends AppCompatActivity {
                     // 如果启用了自动录制，从后台返回时自动恢复录制
                     if (appConfig.isAutoStartRecording()) {
                         AppLog.d(TAG, "启用了自动录制，从后台返回后将自动恢复录制");
-                        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+                        new Handler(Looper.getMainLooper()).postDelayed(() -> {
                             if (!isRecording && cameraManager != null && cameraManager.hasConnectedCameras()) {
                                 AppLog.d(TAG, "自动恢复录制...");
                                 startRecording();
@@ -3656,6 +3722,8 @@ public class MainActivity extends AppCompatActivity {
         // 放在 onDestroy 开头，确保在清理其他资源前保存完整日志
         AppLog.saveToPersistentLog(this);
 
+        StorageVolumeMonitor.getInstance().removeListener(volumeListener);
+
         // 取消自动停止录制的任务
         if (autoStopHandler != null && autoStopRunnable != null) {
             autoStopHandler.removeCallbacks(autoStopRunnable);
@@ -3855,7 +3923,7 @@ public class MainActivity extends AppCompatActivity {
         // 如果启用，立即应用当前配置的参数
         if (enabled && imageAdjustManager != null) {
             // 延迟执行，确保摄像头会话已经配置好
-            new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> {
+            new Handler(Looper.getMainLooper()).postDelayed(() -> {
                 imageAdjustManager.updateAllCameras();
             }, 500);
         }
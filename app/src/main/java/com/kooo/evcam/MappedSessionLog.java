@@ -0,0 +1,231 @@
+package com.kooo.evcam;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存映射的会话日志文件
+ * 每条日志在写入内存缓冲区的同时直接写入一个 mmap 的环形文件，写入的数据位于内核页缓存中，
+ * 进程被杀（Native 崩溃、ANR、低内存查杀）后仍会由系统写回文件；
+ * 下次启动时解码为 previous_session.log，不再依赖崩溃处理器保存日志
+ *
+ * 文件布局：64 字节文件头 + 环形数据区。每条记录 8 字节对齐：
+ * [int 长度][int ~长度][long 逻辑位置][long 时间戳][short 级别][short tag 字符数][int 消息字符数]
+ * [tag UTF-16][消息 UTF-16][对齐填充][long 逻辑位置 ^ TRAILER_MAGIC]
+ * 逻辑位置单调递增（数据区中的物理位置 = 逻辑位置 % 数据区大小），解码时用于校验和排序；
+ * 写到一半断电的记录因尾部标记不符而被丢弃
+ *
+ * 多线程写入时通过 CAS 领取互不重叠的区域，之后各自用绝对位置写入，不加锁；
+ * 字符串先复制到线程私有的 char[]，再批量写入线程私有的 CharBuffer 视图（小端，与设备字节序一致，可直接内存复制）
+ */
+final class MappedSessionLog {
+
+    private static final int FILE_MAGIC = 0x4556434C;  // "EVCL"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 32;
+    private static final int RECORD_TRAILER_SIZE = 8;
+    private static final long TRAILER_MAGIC = 0x5EC7_10C5_A5A5_5A5AL;
+
+    // 单条记录的字符数上限（超出部分截断，避免一条长堆栈占满环形区）
+    private static final int MAX_TAG_CHARS = 64;
+    private static final int MAX_MESSAGE_CHARS = 8192;
+    // 数据区最小大小（必须能容纳最长的一条记录）
+    private static final int MIN_DATA_SIZE = 64 * 1024;
+
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int dataSize;
+    // 下一条记录的逻辑位置
+    private final AtomicLong nextPosition = new AtomicLong();
+    // 每个写入线程的字符暂存区和字符视图（视图的 position 为线程私有状态）
+    private final ThreadLocal<CharWriter> charWriters;
+
+    private MappedSessionLog(RandomAccessFile raf, MappedByteBuffer buffer, int dataSize) {
+        this.raf = raf;
+        this.buffer = buffer;
+        this.dataSize = dataSize;
+        this.charWriters = ThreadLocal.withInitial(() -> new CharWriter(buffer));
+    }
+
+    private static final class CharWriter {
+        final char[] scratch = new char[MAX_MESSAGE_CHARS];
+        final CharBuffer view;
+
+        CharWriter(MappedByteBuffer buffer) {
+            ByteBuffer duplicate = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            view = duplicate.asCharBuffer();
+        }
+
+        /**
+         * 在字节偏移 byteOffset（偶数）处写入字符串的前 count 个字符
+         */
+        void write(int byteOffset, String s, int count) {
+            s.getChars(0, count, scratch, 0);
+            view.position(byteOffset >> 1);
+            view.put(scratch, 0, count);
+        }
+    }
+
+    /**
+     * 创建（清空）会话日志文件并映射到内存
+     * @param file 日志文件
+     * @param dataSize 环形数据区大小（字节，按 8 字节对齐）
+     */
+    static MappedSessionLog create(File file, int dataSize) throws IOException {
+        int alignedSize = Math.max(dataSize, MIN_DATA_SIZE) & ~7;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // 先截断再扩展：数据区全部为 0，旧会话的记录不会残留
+            raf.setLength(0);
+            raf.setLength(FILE_HEADER_SIZE + alignedSize);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE + alignedSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, FILE_MAGIC);
+            buffer.putInt(4, FILE_VERSION);
+            buffer.putInt(8, alignedSize);
+            buffer.putLong(16, System.currentTimeMillis());
+            return new MappedSessionLog(raf, buffer, alignedSize);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 写入一条记录（可在任意线程调用）
+     */
+    void append(long timeMs, int level, String tag, String message) {
+        int tagChars = Math.min(tag.length(), MAX_TAG_CHARS);
+        int messageChars = Math.min(message.length(), MAX_MESSAGE_CHARS);
+        int length = align8(RECORD_HEADER_SIZE + 2 * (tagChars + messageChars) + RECORD_TRAILER_SIZE);
+        long position = reserve(length);
+        int offset = FILE_HEADER_SIZE + (int) (position % dataSize);
+
+        ByteBuffer b = buffer;
+        b.putInt(offset, length);
+        b.putInt(offset + 4, ~length);
+        b.putLong(offset + 8, position);
+        b.putLong(offset + 16, timeMs);
+        b.putShort(offset + 24, (short) level);
+        b.putShort(offset + 26, (short) tagChars);
+        b.putInt(offset + 28, messageChars);
+        CharWriter writer = charWriters.get();
+        int p = offset + RECORD_HEADER_SIZE;
+        writer.write(p, tag, tagChars);
+        writer.write(p + 2 * tagChars, message, messageChars);
+        // 尾部标记最后写入
+        b.putLong(offset + length - RECORD_TRAILER_SIZE, position ^ TRAILER_MAGIC);
+    }
+
+    /**
+     * 将映射区强制写回存储（用于断电保护的关键时刻，如崩溃处理器）
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * 领取一段连续区域；剩余空间放不下时跳到数据区开头
+     * @return 记录的逻辑位置
+     */
+    private long reserve(int length) {
+        while (true) {
+            long current = nextPosition.get();
+            long physical = current % dataSize;
+            long start = physical + length > dataSize ? current + (dataSize - physical) : current;
+            if (nextPosition.compareAndSet(current, start + length)) {
+                return start;
+            }
+        }
+    }
+
+    private static int align8(int value) {
+        return (value + 7) & ~7;
+    }
+
+    /**
+     * 解码会话日志文件（上次运行写入的内容）
+     * @return 按写入顺序排列的记录；文件不存在或格式不符时返回空列表
+     */
+    static List<LogRingBuffer.Record> decode(File file) throws IOException {
+        List<LogRingBuffer.Record> records = new ArrayList<>();
+        if (!file.exists() || file.length() <= FILE_HEADER_SIZE) {
+            return records;
+        }
+        ByteBuffer b;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            b = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        if (b.getInt(0) != FILE_MAGIC || b.getInt(4) != FILE_VERSION) {
+            return records;
+        }
+        int dataSize = b.getInt(8);
+        if (dataSize <= 0 || (dataSize & 7) != 0 || FILE_HEADER_SIZE + (long) dataSize > b.capacity()) {
+            return records;
+        }
+
+        long maxPosition = -1;
+        int physical = 0;
+        while (physical + RECORD_HEADER_SIZE + RECORD_TRAILER_SIZE <= dataSize) {
+            LogRingBuffer.Record record = readRecord(b, dataSize, physical);
+            if (record == null) {
+                // 无效位置（未写入、被覆盖或写入中断），按 8 字节继续查找下一条记录
+                physical += 8;
+                continue;
+            }
+            records.add(record);
+            maxPosition = Math.max(maxPosition, record.seq);
+            physical += b.getInt(FILE_HEADER_SIZE + physical);
+        }
+
+        // 只保留最近一圈的记录
+        long oldest = maxPosition - dataSize;
+        records.removeIf(r -> r.seq <= oldest);
+        Collections.sort(records, (a, c) -> Long.compare(a.seq, c.seq));
+        return records;
+    }
+
+    private static LogRingBuffer.Record readRecord(ByteBuffer b, int dataSize, int physical) {
+        int offset = FILE_HEADER_SIZE + physical;
+        int length = b.getInt(offset);
+        if (length < RECORD_HEADER_SIZE + RECORD_TRAILER_SIZE || (length & 7) != 0
+                || b.getInt(offset + 4) != ~length || physical + length > dataSize) {
+            return null;
+        }
+        long position = b.getLong(offset + 8);
+        if (position < 0 || position % dataSize != physical
+                || b.getLong(offset + length - RECORD_TRAILER_SIZE) != (position ^ TRAILER_MAGIC)) {
+            return null;
+        }
+        int tagChars = b.getShort(offset + 26);
+        int messageChars = b.getInt(offset + 28);
+        if (tagChars < 0 || messageChars < 0
+                || RECORD_HEADER_SIZE + 2L * (tagChars + messageChars) + RECORD_TRAILER_SIZE > length) {
+            return null;
+        }
+        long timeMs = b.getLong(offset + 16);
+        int level = b.getShort(offset + 24);
+        int p = offset + RECORD_HEADER_SIZE;
+        char[] tag = new char[tagChars];
+        for (int i = 0; i < tagChars; i++, p += 2) {
+            tag[i] = b.getChar(p);
+        }
+        char[] message = new char[messageChars];
+        for (int i = 0; i < messageChars; i++, p += 2) {
+            message[i] = b.getChar(p);
+        }
+        return new LogRingBuffer.Record(position, timeMs, level, new String(tag), new String(message));
+    }
+}
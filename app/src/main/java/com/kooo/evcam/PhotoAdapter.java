@@ -19,6 +19,8 @@ import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.signature.ObjectKey;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -99,6 +101,24 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
 
         loadThumbnail(photoFile, holder.photoThumbnail);
 
+        // 锁定状态（锁定的照片不参与自动清理）
+        MediaCatalog catalog = MediaCatalog.getInstance(context);
+        MediaCatalog.Entry entry = catalog.get(photoFile.getAbsolutePath());
+        boolean isLocked = entry != null && entry.isLocked();
+        holder.btnLock.setText(isLocked ? "解锁" : "锁定");
+        holder.btnLock.setOnClickListener(v -> {
+            String path = photoFile.getAbsolutePath();
+            if (catalog.get(path) == null) {
+                catalog.onMediaFileClosed(photoFile, MediaCatalog.TYPE_PHOTO);
+            }
+            if (catalog.setLocked(path, !isLocked)) {
+                Toast.makeText(context, isLocked ? "已解锁" : "已锁定，不会被自动清理", Toast.LENGTH_SHORT).show();
+                notifyItemChanged(position);
+            } else {
+                Toast.makeText(context, "操作失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+
         boolean isSelected = selectedPositions.contains(position);
         updateSelectionStyle(holder, isSelected);
 
@@ -109,10 +129,12 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
                 }
             });
             holder.btnView.setEnabled(false);
+            holder.btnLock.setEnabled(false);
             holder.btnDelete.setEnabled(false);
         } else {
             holder.itemView.setOnClickListener(null);
             holder.btnView.setEnabled(true);
+            holder.btnLock.setEnabled(true);
             holder.btnDelete.setEnabled(true);
 
             holder.btnView.setOnClickListener(v -> {
@@ -127,6 +149,8 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
                         .setMessage("确定要删除 " + photoFile.getName() + " 吗？")
                         .setPositiveButton("删除", (dialog, which) -> {
                             if (photoFile.delete()) {
+                                MediaCatalog.getInstance(context).onMediaFileDeleted(photoFile);
+                                MediaLayout.pruneEmptyPartition(photoFile);
                                 photoFiles.remove(position);
                                 notifyItemRemoved(position);
                                 notifyItemRangeChanged(position, photoFiles.size());
@@ -193,6 +217,7 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         TextView photoSize;
         TextView photoDate;
         Button btnView;
+        Button btnLock;
         Button btnDelete;
 
         public PhotoViewHolder(@NonNull View itemView) {
@@ -202,6 +227,7 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
             photoSize = itemView.findViewById(R.id.photo_size);
             photoDate = itemView.findViewById(R.id.photo_date);
             btnView = itemView.findViewById(R.id.btn_view);
+            btnLock = itemView.findViewById(R.id.btn_lock);
             btnDelete = itemView.findViewById(R.id.btn_delete);
         }
     }
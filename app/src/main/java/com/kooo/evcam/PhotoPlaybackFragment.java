@@ -17,10 +17,11 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -124,17 +125,33 @@ public class PhotoPlaybackFragment extends Fragment {
      * 更新照片列表
      */
     private void updatePhotoList() {
+        MediaCatalog catalog = MediaCatalog.getInstance(getContext());
+        if (!catalog.isReady()) {
+            // 媒体目录仍在后台加载，加载完成后再刷新（不在主线程等待）
+            catalog.whenReady(() -> photoList.post(() -> {
+                if (isAdded()) {
+                    updatePhotoList();
+                }
+            }));
+            return;
+        }
         photoFiles.clear();
 
         // 获取保存目录
         File saveDir = StorageHelper.getPhotoDir(getContext());
-        if (saveDir.exists() && saveDir.isDirectory()) {
-            File[] files = saveDir.listFiles((dir, name) -> {
-                String lowerName = name.toLowerCase();
-                return lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg") || lowerName.endsWith(".png");
-            });
-            if (files != null && files.length > 0) {
-                photoFiles.addAll(Arrays.asList(files));
+
+        // 优先从媒体目录读取（已按拍摄时间倒序），避免扫描所有分区目录
+        List<MediaCatalog.Entry> entries = catalog.listNewestFirst(MediaCatalog.TYPE_PHOTO, saveDir);
+        for (MediaCatalog.Entry entry : entries) {
+            photoFiles.add(entry.getFile());
+        }
+
+        if (photoFiles.isEmpty() && saveDir.exists() && saveDir.isDirectory()) {
+            // 目录尚未建立（首次启动对账完成前），回退到扫描目录（含分区目录）
+            List<File> files = MediaLayout.listFiles(saveDir,
+                    (dir, name) -> MediaCatalog.guessType(name) == MediaCatalog.TYPE_PHOTO);
+            if (!files.isEmpty()) {
+                photoFiles.addAll(files);
 
                 // 按修改时间倒序排序（最新的在前）
                 Collections.sort(photoFiles, new Comparator<File>() {
@@ -223,6 +240,8 @@ public class PhotoPlaybackFragment extends Fragment {
                         if (position < photoFiles.size()) {
                             File file = photoFiles.get(position);
                             if (file.delete()) {
+                                MediaCatalog.getInstance(getContext()).onMediaFileDeleted(file);
+                                MediaLayout.pruneEmptyPartition(file);
                                 photoFiles.remove((int) position);
                                 deletedCount++;
                             }
@@ -17,10 +17,11 @@ import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -124,14 +125,32 @@ public class PlaybackFragment extends Fragment {
      * 更新视频列表
      */
     private void updateVideoList() {
+        MediaCatalog catalog = MediaCatalog.getInstance(getContext());
+        if (!catalog.isReady()) {
+            // 媒体目录仍在后台加载，加载完成后再刷新（不在主线程等待）
+            catalog.whenReady(() -> videoList.post(() -> {
+                if (isAdded()) {
+                    updateVideoList();
+                }
+            }));
+            return;
+        }
         videoFiles.clear();
 
         // 获取保存目录
         File saveDir = StorageHelper.getVideoDir(getContext());
-        if (saveDir.exists() && saveDir.isDirectory()) {
-            File[] files = saveDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".mp4"));
-            if (files != null && files.length > 0) {
-                videoFiles.addAll(Arrays.asList(files));
+
+        // 优先从媒体目录读取（已按开始时间倒序），避免大目录下 listFiles + lastModified 排序
+        List<MediaCatalog.Entry> entries = catalog.listNewestFirst(MediaCatalog.TYPE_VIDEO, saveDir);
+        for (MediaCatalog.Entry entry : entries) {
+            videoFiles.add(entry.getFile());
+        }
+
+        if (videoFiles.isEmpty() && saveDir.exists() && saveDir.isDirectory()) {
+            // 目录尚未建立（首次启动对账完成前），回退到扫描目录（含分区目录）
+            List<File> files = MediaLayout.listFiles(saveDir, (dir, name) -> name.toLowerCase().endsWith(".mp4"));
+            if (!files.isEmpty()) {
+                videoFiles.addAll(files);
 
                 // 按修改时间倒序排序（最新的在前）
                 Collections.sort(videoFiles, new Comparator<File>() {
@@ -220,6 +239,8 @@ public class PlaybackFragment extends Fragment {
                         if (position < videoFiles.size()) {
                             File file = videoFiles.get(position);
                             if (file.delete()) {
+                                MediaCatalog.getInstance(getContext()).onMediaFileDeleted(file);
+                                MediaLayout.pruneEmptyPartition(file);
                                 videoFiles.remove((int) position);
                                 deletedCount++;
                             }
@@ -23,7 +23,10 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import com.kooo.evcam.camera.ImageAdjustManager;
+import com.kooo.evcam.storage.StorageBenchmark;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -75,6 +78,12 @@ public class ResolutionSettingsFragment extends Fragment {
     private TextView imageAdjustCurrentText;
     private TextView imageAdjustSupportedText;
     private ImageAdjustManager imageAdjustManager;
+    
+    // 存储写入测试
+    private static final long BENCHMARK_BYTES_PER_WRITER = 64L * 1024 * 1024;
+    private Button storageBenchmarkButton;
+    private TextView storageBenchmarkResultText;
+    private boolean isBenchmarkRunning = false;
 
     /**
      * 摄像头信息类
@@ -156,6 +165,13 @@ public class ResolutionSettingsFragment extends Fragment {
         resetAdjustButton = view.findViewById(R.id.btn_reset_adjust);
         imageAdjustCurrentText = view.findViewById(R.id.tv_image_adjust_current);
         imageAdjustSupportedText = view.findViewById(R.id.tv_image_adjust_supported);
+        
+        // 存储写入测试控件
+        storageBenchmarkButton = view.findViewById(R.id.btn_storage_benchmark);
+        storageBenchmarkResultText = view.findViewById(R.id.tv_storage_benchmark_result);
+        if (storageBenchmarkButton != null) {
+            storageBenchmarkButton.setOnClickListener(v -> runStorageBenchmark());
+        }
     }
 
     /**
@@ -522,15 +538,9 @@ public class ResolutionSettingsFragment extends Fragment {
         }
 
         // 获取目标分辨率
-        int width = 1280;
-        int height = 800;
-        if (!AppConfig.RESOLUTION_DEFAULT.equals(selectedResolution)) {
-            int[] parsed = AppConfig.parseResolution(selectedResolution);
-            if (parsed != null) {
-                width = parsed[0];
-                height = parsed[1];
-            }
-        }
+        int[] size = AppConfig.resolveResolution(selectedResolution);
+        int width = size[0];
+        int height = size[1];
 
         // 获取帧率（根据用户选择的帧率等级）
         int frameRate = getSelectedFrameRate();
@@ -550,6 +560,17 @@ public class ResolutionSettingsFragment extends Fragment {
                 AppConfig.formatBitrate(highBitrate)
         );
         bitrateDescText.setText(desc);
+        
+        // 码率变化后重新评估存储是否跟得上
+        updateStorageBenchmarkAdvice();
+    }
+    
+    /**
+     * 当前选择的码率等级对应的单路码率（bps）
+     */
+    private int getSelectedBitrate() {
+        int[] size = AppConfig.resolveResolution(selectedResolution);
+        return appConfig.getActualBitrate(size[0], size[1], getSelectedFrameRate());
     }
     
     /**
@@ -656,7 +677,7 @@ public class ResolutionSettingsFragment extends Fragment {
                 ? "默认 (1280×800)" 
                 : selectedResolution;
         
-        Toast.makeText(getContext(), "分辨率已设置为: " + resolutionName + "\n重启应用后生效", Toast.LENGTH_SHORT).show();
+        Toast.makeText(getContext(), "分辨率已设置为: " + resolutionName + "\n录制中将立即生效，未录制时重启应用后生效", Toast.LENGTH_SHORT).show();
         AppLog.d(TAG, "分辨率已保存: " + oldResolution + " -> " + selectedResolution);
         
         // 更新当前参数显示
@@ -676,7 +697,7 @@ public class ResolutionSettingsFragment extends Fragment {
         
         String bitrateName = AppConfig.getBitrateLevelDisplayName(selectedBitrateLevel);
         
-        Toast.makeText(getContext(), "码率已设置为: " + bitrateName + "\n重启应用后生效", Toast.LENGTH_SHORT).show();
+        Toast.makeText(getContext(), "码率已设置为: " + bitrateName + "\n下次录制生效（录制中立即应用）", Toast.LENGTH_SHORT).show();
         AppLog.d(TAG, "码率已保存: " + oldBitrate + " -> " + selectedBitrateLevel);
         
         // 更新当前参数显示
@@ -696,13 +717,124 @@ public class ResolutionSettingsFragment extends Fragment {
         
         String framerateName = AppConfig.getFramerateLevelDisplayName(selectedFramerateLevel);
         
-        Toast.makeText(getContext(), "帧率已设置为: " + framerateName + "\n重启应用后生效", Toast.LENGTH_SHORT).show();
+        Toast.makeText(getContext(), "帧率已设置为: " + framerateName + "\n下次录制生效（录制中立即应用）", Toast.LENGTH_SHORT).show();
         AppLog.d(TAG, "帧率已保存: " + oldFramerate + " -> " + selectedFramerateLevel);
         
         // 更新当前参数显示
         displayCurrentParams();
     }
     
+    // ==================== 存储写入测试 ====================
+    
+    /**
+     * 在当前录制存储上运行写入测试（后台线程），每个启用录制的摄像头一个写入线程
+     */
+    private void runStorageBenchmark() {
+        if (getContext() == null || isBenchmarkRunning) {
+            return;
+        }
+        if (getActivity() instanceof MainActivity && ((MainActivity) getActivity()).isCurrentlyRecording()) {
+            Toast.makeText(getContext(), "录制中无法测试，请先停止录制", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        Context context = getContext().getApplicationContext();
+        File videoDir = StorageHelper.getVideoDir(context);
+        int writers = Math.max(1, appConfig.getEnabledRecordingCameras().size());
+        StorageBenchmark benchmark = new StorageBenchmark(videoDir, writers, BENCHMARK_BYTES_PER_WRITER);
+        long available = StorageHelper.getAvailableSpace(videoDir);
+        // 留出测试数据两倍的空间，避免测试本身把存储写满
+        if (available < benchmark.getRequiredBytes() * 2) {
+            Toast.makeText(getContext(), "存储空间不足，需要至少 "
+                    + StorageHelper.formatSize(benchmark.getRequiredBytes() * 2), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        String location = appConfig.getStorageLocation();
+        isBenchmarkRunning = true;
+        storageBenchmarkButton.setEnabled(false);
+        storageBenchmarkResultText.setText("正在测试 " + writers + " 路同时写入...");
+        AppLog.d(TAG, "开始存储写入测试: " + videoDir.getAbsolutePath() + "，写入线程 " + writers);
+        
+        new Thread(() -> {
+            String error = null;
+            StorageBenchmark.Result result = null;
+            try {
+                result = benchmark.run(percent -> {
+                    if (getActivity() != null) {
+                        getActivity().runOnUiThread(() -> {
+                            if (isBenchmarkRunning && storageBenchmarkResultText != null) {
+                                storageBenchmarkResultText.setText("正在测试 " + writers + " 路同时写入... " + percent + "%");
+                            }
+                        });
+                    }
+                });
+                appConfig.setStorageBenchmarkResult(location, result.serialize());
+                AppLog.d(TAG, "存储写入测试完成: " + result);
+            } catch (IOException e) {
+                error = e.getMessage();
+                AppLog.e(TAG, "存储写入测试失败", e);
+            }
+            
+            final String finalError = error;
+            if (getActivity() != null) {
+                getActivity().runOnUiThread(() -> {
+                    isBenchmarkRunning = false;
+                    if (storageBenchmarkButton != null) {
+                        storageBenchmarkButton.setEnabled(true);
+                    }
+                    if (finalError != null) {
+                        if (storageBenchmarkResultText != null) {
+                            storageBenchmarkResultText.setText("测试失败: " + finalError);
+                        }
+                        return;
+                    }
+                    updateStorageBenchmarkAdvice();
+                });
+            } else {
+                isBenchmarkRunning = false;
+            }
+        }).start();
+    }
+    
+    /**
+     * 显示当前存储位置的测试结果，并与当前选择的总码率比较
+     */
+    private void updateStorageBenchmarkAdvice() {
+        if (storageBenchmarkResultText == null || appConfig == null || isBenchmarkRunning) {
+            return;
+        }
+        
+        StorageBenchmark.Result result = StorageBenchmark.Result.deserialize(
+                appConfig.getStorageBenchmarkResult(appConfig.getStorageLocation()));
+        if (result == null) {
+            storageBenchmarkResultText.setText("尚未测试当前存储位置");
+            storageBenchmarkResultText.setTextColor(getResources().getColor(R.color.text_secondary, null));
+            return;
+        }
+        
+        int cameras = Math.max(1, appConfig.getEnabledRecordingCameras().size());
+        long totalBitrate = (long) getSelectedBitrate() * cameras;
+        long safeBitrate = result.getMaxSafeAggregateBitrate();
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(result.toString()).append("\n");
+        sb.append("可安全录制的总码率: ").append(AppConfig.formatBitrate((int) Math.min(safeBitrate, Integer.MAX_VALUE)));
+        sb.append("\n当前 ").append(cameras).append(" 路 × ").append(AppConfig.formatBitrate(getSelectedBitrate()))
+                .append(" = ").append(AppConfig.formatBitrate((int) Math.min(totalBitrate, Integer.MAX_VALUE)));
+        if (result.writers != cameras) {
+            sb.append("\n（测试时为 ").append(result.writers).append(" 路，建议重新测试）");
+        }
+        
+        boolean overLimit = totalBitrate > safeBitrate;
+        if (overLimit) {
+            sb.append("\n⚠️ 当前码率超出存储写入能力，可能丢帧或录制中断，建议降低码率/帧率或更换更快的存储");
+        }
+        storageBenchmarkResultText.setText(sb.toString());
+        storageBenchmarkResultText.setTextColor(getResources().getColor(
+                overLimit ? android.R.color.holo_red_dark : R.color.text_secondary, null));
+    }
+    
     // ==================== 亮度/降噪调节 ====================
     
     /**
@@ -30,6 +30,7 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentTransaction;
 
 import com.google.android.material.switchmaterial.SwitchMaterial;
+import com.kooo.evcam.storage.SpaceForecaster;
 
 import java.io.File;
 import java.util.List;
@@ -99,6 +100,7 @@ public class SettingsFragment extends Fragment {
     private EditText photoStorageLimitEdit;
     private TextView videoUsedSizeText;
     private TextView photoUsedSizeText;
+    private TextView storageForecastText;
     private boolean isInitializingStorageCleanup = false;
     
     // 录制摄像头选择配置相关
@@ -1016,7 +1018,7 @@ public class SettingsFragment extends Fragment {
                 appConfig.setSegmentDurationMinutes(newDuration);
                 
                 if (getContext() != null) {
-                    Toast.makeText(getContext(), "分段时长已设置为「" + durationName + "」，下次录制生效", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(getContext(), "分段时长已设置为「" + durationName + "」，下一分段生效", Toast.LENGTH_SHORT).show();
                 }
             }
             
@@ -1504,6 +1506,7 @@ public class SettingsFragment extends Fragment {
         photoStorageLimitEdit = view.findViewById(R.id.et_photo_storage_limit);
         videoUsedSizeText = view.findViewById(R.id.tv_video_used_size);
         photoUsedSizeText = view.findViewById(R.id.tv_photo_used_size);
+        storageForecastText = view.findViewById(R.id.tv_storage_forecast);
         
         if (videoStorageLimitEdit == null || photoStorageLimitEdit == null || getContext() == null) {
             return;
@@ -1617,6 +1620,7 @@ public class SettingsFragment extends Fragment {
             
             String videoSizeStr = "已用: " + StorageHelper.formatSize(videoSize);
             String photoSizeStr = "已用: " + StorageHelper.formatSize(photoSize);
+            String forecastStr = formatStorageForecast(cleanupManager.getVideoVolumeForecast());
             
             // 回到主线程更新UI
             if (getActivity() != null) {
@@ -1627,11 +1631,30 @@ public class SettingsFragment extends Fragment {
                     if (photoUsedSizeText != null) {
                         photoUsedSizeText.setText(photoSizeStr);
                     }
+                    if (storageForecastText != null) {
+                        storageForecastText.setText(forecastStr);
+                    }
                 });
             }
         }).start();
     }
     
+    /**
+     * 格式化空间预测信息
+     */
+    private String formatStorageForecast(SpaceForecaster.Forecast forecast) {
+        if (forecast.writeBytesPerSec <= 0) {
+            return "剩余: " + StorageHelper.formatSize(forecast.availableBytes) + "（暂无写入数据）";
+        }
+        long minutes = forecast.secondsToFull / 60;
+        String timeStr = minutes >= 60 ? (minutes / 60) + " 小时 " + (minutes % 60) + " 分钟" : minutes + " 分钟";
+        return "剩余: " + StorageHelper.formatSize(forecast.availableBytes) +
+                "，写入 " + StorageHelper.formatSize((long) forecast.writeBytesPerSec) + "/s" +
+                "，约 " + timeStr + " 写满" +
+                "，预留 " + StorageHelper.formatSize(forecast.reserveBytes) +
+                "（" + forecast.activeCameras + " 路录制）";
+    }
+    
     /**
      * 通知 MainActivity 存储清理配置已更改
      */
@@ -1873,6 +1896,17 @@ public class SettingsFragment extends Fragment {
                     });
                 }
             }
+
+            @Override
+            public void onProgress(int percent) {
+                if (getActivity() != null) {
+                    getActivity().runOnUiThread(() -> {
+                        if (!uploadLogsButton.isEnabled()) {
+                            uploadLogsButton.setText("上传中 " + percent + "%");
+                        }
+                    });
+                }
+            }
         });
     }
 }
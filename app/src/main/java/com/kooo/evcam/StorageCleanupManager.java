@@ -5,22 +5,29 @@ import android.os.Handler;
 import android.os.Looper;
 import android.widget.Toast;
 
+import com.kooo.evcam.storage.LayoutMigrator;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.RetentionPolicy;
+import com.kooo.evcam.storage.SpaceForecaster;
+import com.kooo.evcam.storage.StorageQuotaEngine;
+import com.kooo.evcam.storage.StorageVolumeMonitor;
+
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 存储清理管理器
  * 自动删除超过限制的旧视频和图片文件
  * 
  * 功能：
- * - 冷启动30秒后执行首次检测
- * - 每隔1小时执行定期检测
+ * - 事件驱动：每次分段关闭、照片保存、中转文件落盘后立即检查配额（基于媒体目录累计值，不扫描目录）
+ * - 冷启动时执行一次目录对账，之后每隔1小时对账一次（修正目录与磁盘的偏差）
+ * - 旧版本平铺存放的文件在后台逐批迁移到日期/小时分区目录；分区清空后整个目录一并删除
+ * - 按实测写入速率预留空间：保证每个录制中的摄像头至少还能写入2个分段
+ * - 按保留层级淘汰：循环录像 → 过期事件录像 → 未过期事件录像，锁定文件只受锁定上限约束
  * - 支持分别设置视频和图片的存储限制（GB）
  * - 删除时额外删除20%，避免频繁删除
  */
@@ -40,24 +47,59 @@ public class StorageCleanupManager {
     // 内部存储低空间阈值（3GB）
     private static final long LOW_SPACE_THRESHOLD_BYTES = 3L * GB_TO_BYTES;
     
-    // 低空间强制清理比例（删除20%的已用空间，保留80%）
+    // 低空间清理目标：可用空间恢复到阈值之上20%，避免反复触发
     private static final double LOW_SPACE_CLEANUP_RATIO = 0.20;
     
+    // 只有结束时间在此范围内的条目才计入写入速率（排除对账补录的旧文件）
+    private static final long RECENT_WRITE_WINDOW_MS = 10 * 60 * 1000;
+    
+    // 分区目录迁移：启动后延迟、每批文件数、批次间隔、跳过最近修改的文件（可能正在录制）
+    private static final long MIGRATION_START_DELAY_MS = 10 * 1000;
+    private static final int MIGRATION_BATCH_SIZE = 100;
+    private static final long MIGRATION_BATCH_INTERVAL_MS = 5 * 1000;
+    private static final long MIGRATION_MIN_FILE_AGE_MS = 15 * 60 * 1000;
+    
     private final Context context;
     private final AppConfig appConfig;
+    private final MediaCatalog mediaCatalog;
+    private final StorageQuotaEngine quotaEngine;
+    private final SpaceForecaster forecaster;
+    private final LayoutMigrator layoutMigrator;
+    private final AtomicBoolean enforcePending = new AtomicBoolean(false);
     private ScheduledExecutorService scheduler;
     private Handler mainHandler;
     private boolean isRunning = false;
     
+    // 目录新增条目时记录写入量（更新条目不重复记录），新增或更新都投递一次配额检查（合并连续事件）
+    private final MediaCatalog.ChangeListener catalogListener = new MediaCatalog.ChangeListener() {
+        @Override
+        public void onEntryAdded(MediaCatalog.Entry entry) {
+            long now = System.currentTimeMillis();
+            if (entry.type == MediaCatalog.TYPE_VIDEO && now - entry.getEndTimeMs() < RECENT_WRITE_WINDOW_MS) {
+                forecaster.onBytesWritten(entry.volume, entry.camera, entry.size, entry.durationMs, now);
+            }
+            scheduleEnforce();
+        }
+
+        @Override
+        public void onEntryUpdated(MediaCatalog.Entry entry) {
+            scheduleEnforce();
+        }
+    };
+    
     public StorageCleanupManager(Context context) {
         this.context = context.getApplicationContext();
         this.appConfig = new AppConfig(context);
+        this.mediaCatalog = MediaCatalog.getInstance(context);
+        this.quotaEngine = new StorageQuotaEngine(mediaCatalog);
+        this.forecaster = SpaceForecaster.getInstance();
+        this.layoutMigrator = new LayoutMigrator(mediaCatalog);
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
     
     /**
      * 启动存储清理任务
-     * 冷启动30秒后执行首次检测，之后每隔1小时执行一次
+     * 启动时对账并检查一次，之后由目录事件驱动；每隔1小时对账一次
      * 注意：即使清理功能未启用，也会启动以检测内部存储低空间情况
      */
     public void start() {
@@ -69,18 +111,26 @@ public class StorageCleanupManager {
         isRunning = true;
         scheduler = Executors.newSingleThreadScheduledExecutor();
         
-        // 30秒后执行首次检测
-        scheduler.schedule(this::performCleanup, INITIAL_DELAY_MS, TimeUnit.MILLISECONDS);
+        // 启动时立即执行一次媒体目录对账（补充离线期间新增/删除的文件）
+        scheduler.execute(this::reconcileCatalog);
         
-        // 每1小时执行一次定期检测
+        // 对账后开始把旧的平铺文件逐批迁移到日期/小时分区目录
+        scheduler.schedule(this::migrateLayoutBatch, MIGRATION_START_DELAY_MS, TimeUnit.MILLISECONDS);
+        
+        // 30秒后执行首次配额检查
+        scheduler.schedule(this::enforceQuotas, INITIAL_DELAY_MS, TimeUnit.MILLISECONDS);
+        
+        // 每1小时对账一次（配额检查由事件驱动，这里只修正偏差）
         scheduler.scheduleAtFixedRate(
             this::performCleanup,
-            INITIAL_DELAY_MS + PERIODIC_INTERVAL_MS,  // 首次定期检测在首次检测后1小时
+            INITIAL_DELAY_MS + PERIODIC_INTERVAL_MS,  // 首次定期对账在首次检测后1小时
             PERIODIC_INTERVAL_MS,
             TimeUnit.MILLISECONDS
         );
         
-        AppLog.d(TAG, "存储清理任务已启动：30秒后首次检测，之后每1小时检测一次");
+        mediaCatalog.addChangeListener(catalogListener);
+        
+        AppLog.d(TAG, "存储清理任务已启动：事件驱动配额检查，每1小时对账一次");
         AppLog.d(TAG, "视频限制: " + appConfig.getVideoStorageLimitGb() + " GB, 图片限制: " + appConfig.getPhotoStorageLimitGb() + " GB");
     }
     
@@ -88,6 +138,7 @@ public class StorageCleanupManager {
      * 停止存储清理任务
      */
     public void stop() {
+        mediaCatalog.removeChangeListener(catalogListener);
         if (scheduler != null && !scheduler.isShutdown()) {
             scheduler.shutdown();
             scheduler = null;
@@ -97,250 +148,227 @@ public class StorageCleanupManager {
     }
     
     /**
-     * 执行清理任务
+     * 投递一次配额检查（已有待执行的检查时忽略）
+     */
+    private void scheduleEnforce() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null || executor.isShutdown() || !enforcePending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                enforcePending.set(false);
+                enforceQuotas();
+            });
+        } catch (Exception e) {
+            enforcePending.set(false);
+        }
+    }
+    
+    /**
+     * 迁移一批平铺文件到分区目录，还有剩余时稍后继续
+     * 每批数量有限并间隔执行，避免与录制争抢存储 I/O
+     */
+    private void migrateLayoutBatch() {
+        int remaining;
+        try {
+            remaining = layoutMigrator.migrateBatch(StorageHelper.getVideoDir(context), MediaCatalog.TYPE_VIDEO,
+                    MIGRATION_BATCH_SIZE, MIGRATION_MIN_FILE_AGE_MS);
+            remaining += layoutMigrator.migrateBatch(StorageHelper.getPhotoDir(context), MediaCatalog.TYPE_PHOTO,
+                    MIGRATION_BATCH_SIZE, MIGRATION_MIN_FILE_AGE_MS);
+        } catch (Exception e) {
+            AppLog.e(TAG, "分区目录迁移失败", e);
+            return;
+        }
+        ScheduledExecutorService executor = scheduler;
+        if (remaining > 0 && executor != null && !executor.isShutdown()) {
+            executor.schedule(this::migrateLayoutBatch, MIGRATION_BATCH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else if (remaining == 0) {
+            AppLog.d(TAG, "分区目录迁移完成");
+        }
+    }
+    
+    /**
+     * 媒体目录对账：扫描视频、图片和中转临时目录各一次
+     */
+    private void reconcileCatalog() {
+        try {
+            mediaCatalog.reconcile(StorageHelper.getVideoDir(context), MediaCatalog.TYPE_VIDEO);
+            mediaCatalog.reconcile(StorageHelper.getPhotoDir(context), MediaCatalog.TYPE_PHOTO);
+            mediaCatalog.reconcile(new File(context.getCacheDir(), FileTransferManager.TEMP_VIDEO_DIR), MediaCatalog.TYPE_VIDEO);
+        } catch (Exception e) {
+            AppLog.e(TAG, "媒体目录对账失败", e);
+        }
+    }
+    
+    /**
+     * 定期任务：对账后执行一次配额检查
      */
     private void performCleanup() {
-        AppLog.d(TAG, "开始执行存储清理检测...");
-        
-        // 首先检测内部存储低空间情况（强制清理）
-        performLowSpaceCleanupIfNeeded();
-        
-        int videoLimitGb = appConfig.getVideoStorageLimitGb();
-        int photoLimitGb = appConfig.getPhotoStorageLimitGb();
-        
-        // 检测并清理视频
-        if (videoLimitGb > 0) {
-            CleanupResult videoResult = cleanupDirectory(
-                StorageHelper.getVideoDir(context),
-                videoLimitGb * GB_TO_BYTES,
-                "视频"
-            );
-            if (videoResult.deletedCount > 0) {
-                showCleanupNotification(videoResult, "视频");
+        AppLog.d(TAG, "开始执行存储对账...");
+        reconcileCatalog();
+        enforceQuotas();
+        AppLog.d(TAG, "存储对账完成");
+    }
+    
+    /**
+     * 配额检查（增量）：只读取媒体目录累计值，超限时删除最旧的未锁定文件
+     */
+    private void enforceQuotas() {
+        try {
+            quotaEngine.setRetentionPolicy(buildRetentionPolicy());
+            
+            // 锁定文件超过上限时删除最旧的锁定文件
+            enforceLockedCap(MediaCatalog.TYPE_VIDEO, StorageHelper.getVideoDir(context), "视频");
+            enforceLockedCap(MediaCatalog.TYPE_PHOTO, StorageHelper.getPhotoDir(context), "图片");
+            
+            // 检测低空间情况（强制清理）
+            performLowSpaceCleanupIfNeeded();
+            
+            int videoLimitGb = appConfig.getVideoStorageLimitGb();
+            int photoLimitGb = appConfig.getPhotoStorageLimitGb();
+            
+            // 检测并清理视频
+            if (videoLimitGb > 0) {
+                StorageQuotaEngine.Result videoResult = quotaEngine.enforceLimit(
+                    MediaCatalog.TYPE_VIDEO,
+                    volumeOf(StorageHelper.getVideoDir(context)),
+                    videoLimitGb * GB_TO_BYTES,
+                    EXTRA_DELETE_RATIO
+                );
+                if (videoResult.deletedCount > 0) {
+                    logResult(videoResult, "视频");
+                    showCleanupNotification(videoResult, "视频");
+                }
             }
-        }
-        
-        // 检测并清理图片
-        if (photoLimitGb > 0) {
-            CleanupResult photoResult = cleanupDirectory(
-                StorageHelper.getPhotoDir(context),
-                photoLimitGb * GB_TO_BYTES,
-                "图片"
-            );
-            if (photoResult.deletedCount > 0) {
-                showCleanupNotification(photoResult, "图片");
+            
+            // 检测并清理图片
+            if (photoLimitGb > 0) {
+                StorageQuotaEngine.Result photoResult = quotaEngine.enforceLimit(
+                    MediaCatalog.TYPE_PHOTO,
+                    volumeOf(StorageHelper.getPhotoDir(context)),
+                    photoLimitGb * GB_TO_BYTES,
+                    EXTRA_DELETE_RATIO
+                );
+                if (photoResult.deletedCount > 0) {
+                    logResult(photoResult, "图片");
+                    showCleanupNotification(photoResult, "图片");
+                }
             }
+        } catch (Exception e) {
+            AppLog.e(TAG, "配额检查失败", e);
         }
-        
-        AppLog.d(TAG, "存储清理检测完成");
     }
     
     /**
-     * 内部存储低空间时强制清理
-     * 当使用内部存储且可用空间低于3GB时，强制清理20%的已用空间
+     * 低空间时强制清理
+     * 低水位取以下两者的较大值：
+     * - 预测器给出的预留空间（每个录制中的摄像头保留2个分段 + 删除期间的写入量）
+     * - 使用内部存储时的固定阈值3GB
+     * 低于低水位时删除最旧的视频（不足时再删图片），直到可用空间恢复到低水位之上20%
      */
     private void performLowSpaceCleanupIfNeeded() {
         // 检测当前是否使用内部存储
         boolean usingInternal = !appConfig.isUsingExternalSdCard() || StorageHelper.isSdCardFallback(context);
         
-        if (!usingInternal) {
-            // 使用U盘，不需要强制清理
+        File videoDir = StorageHelper.getVideoDir(context);
+        String volume = volumeOf(videoDir);
+        File probeDir = usingInternal ? android.os.Environment.getExternalStorageDirectory() : videoDir;
+        long available = StorageHelper.getAvailableSpace(probeDir);
+        if (available < 0) {
             return;
         }
         
-        // 获取内部存储可用空间
-        File internalDir = android.os.Environment.getExternalStorageDirectory();
-        long availableSpace = StorageHelper.getAvailableSpace(internalDir);
-        
-        AppLog.d(TAG, "内部存储可用空间: " + StorageHelper.formatSize(availableSpace));
-        
-        if (availableSpace < 0 || availableSpace >= LOW_SPACE_THRESHOLD_BYTES) {
-            // 空间充足，不需要清理
+        SpaceForecaster.Forecast forecast = forecaster.forecast(volume, available, System.currentTimeMillis());
+        long lowWatermark = forecast.reserveBytes;
+        if (usingInternal) {
+            lowWatermark = Math.max(lowWatermark, LOW_SPACE_THRESHOLD_BYTES);
+        }
+        if (lowWatermark <= 0 || available >= lowWatermark) {
             return;
         }
         
-        AppLog.w(TAG, "内部存储空间不足（<3GB），开始强制清理...");
-        
-        // 强制清理视频（删除20%的已用空间）
-        File videoDir = StorageHelper.getVideoDir(context, false);
-        CleanupResult videoResult = cleanupByPercentage(videoDir, LOW_SPACE_CLEANUP_RATIO, "视频");
-        if (videoResult.deletedCount > 0) {
-            showLowSpaceCleanupNotification(videoResult, "视频");
+        AppLog.w(TAG, "可用空间不足：" + StorageHelper.formatSize(available) + " < 低水位 " +
+                StorageHelper.formatSize(lowWatermark) + "（写入速率 " +
+                StorageHelper.formatSize((long) forecast.writeBytesPerSec) + "/s，预计 " +
+                forecast.secondsToFull + " 秒写满）");
+        
+        long targetFree = (long) (lowWatermark * (1 + LOW_SPACE_CLEANUP_RATIO));
+        long startTime = System.currentTimeMillis();
+        StorageQuotaEngine.Result[] results = quotaEngine.enforceFreeSpace(
+                new int[] {MediaCatalog.TYPE_VIDEO, MediaCatalog.TYPE_PHOTO},
+                volume,
+                () -> available,
+                lowWatermark,
+                targetFree);
+        forecaster.onBytesEvicted(volume, results[0].deletedSize + results[1].deletedSize,
+                System.currentTimeMillis() - startTime);
+        if (results[0].deletedCount > 0 || results[1].deletedCount > 0) {
+            // 删除后空间统计缓存已过时
+            StorageVolumeMonitor.getInstance().invalidate();
         }
         
-        // 强制清理图片（删除20%的已用空间）
-        File photoDir = StorageHelper.getPhotoDir(context, false);
-        CleanupResult photoResult = cleanupByPercentage(photoDir, LOW_SPACE_CLEANUP_RATIO, "图片");
-        if (photoResult.deletedCount > 0) {
-            showLowSpaceCleanupNotification(photoResult, "图片");
+        if (results[0].deletedCount > 0) {
+            logResult(results[0], "视频");
+            showLowSpaceCleanupNotification(results[0], "视频");
+        }
+        if (results[1].deletedCount > 0) {
+            logResult(results[1], "图片");
+            showLowSpaceCleanupNotification(results[1], "图片");
         }
     }
     
     /**
-     * 按比例清理目录（删除指定比例的已用空间）
-     * @param directory 目标目录
-     * @param deleteRatio 删除比例（0.0-1.0）
-     * @param typeName 类型名称
-     * @return 清理结果
+     * 获取当前录制存储卷的空间预测（用于设置页显示）
      */
-    private CleanupResult cleanupByPercentage(File directory, double deleteRatio, String typeName) {
-        CleanupResult result = new CleanupResult();
-        
-        if (directory == null || !directory.exists() || !directory.isDirectory()) {
-            return result;
-        }
-        
-        File[] files = directory.listFiles(File::isFile);
-        if (files == null || files.length == 0) {
-            return result;
-        }
-        
-        // 计算当前总大小
-        long totalSize = 0;
-        for (File file : files) {
-            totalSize += file.length();
-        }
-        
-        result.originalSize = totalSize;
-        
-        if (totalSize == 0) {
-            return result;
-        }
-        
-        // 计算需要删除的大小（总大小的指定比例）
-        long needToDelete = (long) (totalSize * deleteRatio);
-        long targetSize = totalSize - needToDelete;
-        
-        AppLog.d(TAG, typeName + "强制清理：当前占用 " + StorageHelper.formatSize(totalSize) + 
-                "，将删除 " + StorageHelper.formatSize(needToDelete) + " (20%)");
-        
-        // 按修改时间排序（最旧的在前）
-        List<File> sortedFiles = new ArrayList<>(Arrays.asList(files));
-        sortedFiles.sort(Comparator.comparingLong(File::lastModified));
-        
-        // 删除最旧的文件直到达到目标大小
-        long deletedSize = 0;
-        int deletedCount = 0;
-        
-        for (File file : sortedFiles) {
-            if (totalSize - deletedSize <= targetSize) {
-                break;
-            }
-            
-            long fileSize = file.length();
-            if (file.delete()) {
-                deletedSize += fileSize;
-                deletedCount++;
-                AppLog.d(TAG, "强制删除旧文件: " + file.getName() + " (" + StorageHelper.formatSize(fileSize) + ")");
-            }
+    public SpaceForecaster.Forecast getVideoVolumeForecast() {
+        File videoDir = StorageHelper.getVideoDir(context);
+        return forecaster.forecast(volumeOf(videoDir), StorageHelper.getAvailableSpace(videoDir),
+                System.currentTimeMillis());
+    }
+    
+    /**
+     * 根据配置构建保留策略
+     */
+    private RetentionPolicy buildRetentionPolicy() {
+        return new RetentionPolicy(
+                appConfig.getEventRetentionDays() * 24L * 60 * 60 * 1000,
+                appConfig.getLockedStorageLimitGb() * GB_TO_BYTES,
+                RetentionPolicy.parseCameraWeights(appConfig.getCameraRetentionWeights()));
+    }
+    
+    private void enforceLockedCap(int type, File dir, String typeName) {
+        StorageQuotaEngine.Result result = quotaEngine.enforceLockedCap(type, volumeOf(dir));
+        if (result.deletedCount > 0) {
+            AppLog.d(TAG, "锁定" + typeName + "超过上限，已删除 " + result.deletedCount + " 个最旧的锁定文件");
+            showCleanupNotification(result, "锁定" + typeName);
         }
-        
-        result.deletedSize = deletedSize;
-        result.deletedCount = deletedCount;
-        result.finalSize = totalSize - deletedSize;
-        
-        AppLog.d(TAG, typeName + "强制清理完成：删除 " + deletedCount + " 个文件，释放 " + StorageHelper.formatSize(deletedSize));
-        
-        return result;
+    }
+    
+    private static String volumeOf(File dir) {
+        return MediaCatalog.volumeOf(dir.getAbsolutePath());
+    }
+    
+    private void logResult(StorageQuotaEngine.Result result, String typeName) {
+        AppLog.d(TAG, typeName + "清理完成：删除 " + result.deletedCount + " 个文件，释放 " + 
+                StorageHelper.formatSize(result.deletedSize) + "，剩余 " + StorageHelper.formatSize(result.finalSize));
     }
     
     /**
      * 显示低空间强制清理通知
      */
-    private void showLowSpaceCleanupNotification(CleanupResult result, String typeName) {
+    private void showLowSpaceCleanupNotification(StorageQuotaEngine.Result result, String typeName) {
         mainHandler.post(() -> {
-            String message = "内部存储空间不足，已清理" + typeName + " " + 
+            String message = "存储空间不足，已清理" + typeName + " " + 
                     result.deletedCount + "个文件（" + StorageHelper.formatSize(result.deletedSize) + "）";
             Toast.makeText(context, message, Toast.LENGTH_LONG).show();
         });
     }
     
-    /**
-     * 清理指定目录
-     * @param directory 目标目录
-     * @param limitBytes 限制大小（字节）
-     * @param typeName 类型名称（用于日志）
-     * @return 清理结果
-     */
-    private CleanupResult cleanupDirectory(File directory, long limitBytes, String typeName) {
-        CleanupResult result = new CleanupResult();
-        
-        if (directory == null || !directory.exists() || !directory.isDirectory()) {
-            AppLog.w(TAG, typeName + "目录不存在: " + (directory != null ? directory.getAbsolutePath() : "null"));
-            return result;
-        }
-        
-        // 获取目录中所有文件（不筛选格式）
-        File[] files = directory.listFiles(File::isFile);
-        
-        if (files == null || files.length == 0) {
-            AppLog.d(TAG, typeName + "目录为空");
-            return result;
-        }
-        
-        // 计算当前总大小
-        long totalSize = 0;
-        for (File file : files) {
-            totalSize += file.length();
-        }
-        
-        result.originalSize = totalSize;
-        
-        AppLog.d(TAG, typeName + "当前占用: " + StorageHelper.formatSize(totalSize) + 
-                " / 限制: " + StorageHelper.formatSize(limitBytes));
-        
-        // 如果未超过限制，无需清理
-        if (totalSize <= limitBytes) {
-            AppLog.d(TAG, typeName + "未超过限制，无需清理");
-            return result;
-        }
-        
-        // 计算目标大小（限制的80%，即额外删除20%）
-        long targetSize = (long) (limitBytes * (1 - EXTRA_DELETE_RATIO));
-        long needToDelete = totalSize - targetSize;
-        
-        AppLog.d(TAG, typeName + "超过限制，需要删除: " + StorageHelper.formatSize(needToDelete) + 
-                "，目标大小: " + StorageHelper.formatSize(targetSize));
-        
-        // 按修改时间排序（最旧的在前）
-        List<File> sortedFiles = new ArrayList<>(Arrays.asList(files));
-        sortedFiles.sort(Comparator.comparingLong(File::lastModified));
-        
-        // 删除最旧的文件直到达到目标大小
-        long deletedSize = 0;
-        int deletedCount = 0;
-        
-        for (File file : sortedFiles) {
-            if (totalSize - deletedSize <= targetSize) {
-                break;
-            }
-            
-            long fileSize = file.length();
-            String fileName = file.getName();
-            
-            if (file.delete()) {
-                deletedSize += fileSize;
-                deletedCount++;
-                AppLog.d(TAG, "已删除" + typeName + ": " + fileName + " (" + StorageHelper.formatSize(fileSize) + ")");
-            } else {
-                AppLog.w(TAG, "删除" + typeName + "失败: " + fileName);
-            }
-        }
-        
-        result.deletedCount = deletedCount;
-        result.deletedSize = deletedSize;
-        result.finalSize = totalSize - deletedSize;
-        
-        AppLog.d(TAG, typeName + "清理完成：删除 " + deletedCount + " 个文件，释放 " + 
-                StorageHelper.formatSize(deletedSize) + "，剩余 " + StorageHelper.formatSize(result.finalSize));
-        
-        return result;
-    }
-    
     /**
      * 显示清理通知
      */
-    private void showCleanupNotification(CleanupResult result, String typeName) {
+    private void showCleanupNotification(StorageQuotaEngine.Result result, String typeName) {
         mainHandler.post(() -> {
             String message = "已清理" + typeName + "：删除 " + result.deletedCount + " 个文件，释放 " + 
                     StorageHelper.formatSize(result.deletedSize);
@@ -357,49 +385,20 @@ public class StorageCleanupManager {
     }
     
     /**
-     * 获取当前视频占用大小
+     * 获取当前视频占用大小（从媒体目录累计值读取，O(1)）
      * @return 占用大小（字节）
      */
     public long getVideoUsedSize() {
-        return getDirectorySize(StorageHelper.getVideoDir(context));
+        File videoDir = StorageHelper.getVideoDir(context);
+        return mediaCatalog.getTotalSize(MediaCatalog.TYPE_VIDEO, MediaCatalog.volumeOf(videoDir.getAbsolutePath()));
     }
     
     /**
-     * 获取当前图片占用大小
+     * 获取当前图片占用大小（从媒体目录累计值读取，O(1)）
      * @return 占用大小（字节）
      */
     public long getPhotoUsedSize() {
-        return getDirectorySize(StorageHelper.getPhotoDir(context));
-    }
-    
-    /**
-     * 获取目录中所有文件的总大小
-     */
-    private long getDirectorySize(File directory) {
-        if (directory == null || !directory.exists() || !directory.isDirectory()) {
-            return 0;
-        }
-        
-        File[] files = directory.listFiles(File::isFile);
-        
-        if (files == null) {
-            return 0;
-        }
-        
-        long totalSize = 0;
-        for (File file : files) {
-            totalSize += file.length();
-        }
-        return totalSize;
-    }
-    
-    /**
-     * 清理结果
-     */
-    private static class CleanupResult {
-        long originalSize = 0;  // 清理前大小
-        long deletedSize = 0;   // 删除的大小
-        long finalSize = 0;     // 清理后大小
-        int deletedCount = 0;   // 删除的文件数
+        File photoDir = StorageHelper.getPhotoDir(context);
+        return mediaCatalog.getTotalSize(MediaCatalog.TYPE_PHOTO, MediaCatalog.volumeOf(photoDir.getAbsolutePath()));
     }
 }
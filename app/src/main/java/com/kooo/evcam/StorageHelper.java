@@ -3,7 +3,9 @@ package com.kooo.evcam;
 import android.content.Context;
 import android.os.Build;
 import android.os.Environment;
-import android.os.StatFs;
+
+import com.kooo.evcam.storage.MountTable;
+import com.kooo.evcam.storage.StorageVolumeMonitor;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -87,7 +89,7 @@ public class StorageHelper {
             // 第一个是内部存储，第二个及以后是U盘
             for (int i = 1; i < externalDirs.length; i++) {
                 File dir = externalDirs[i];
-                if (dir != null && dir.exists()) {
+                if (dir != null && dir.exists() && !StorageVolumeMonitor.getInstance().isEjecting(dir)) {
                     // 尝试获取U盘根目录（去掉 /Android/data/包名/files 部分）
                     String path = dir.getAbsolutePath();
                     int index = path.indexOf("/Android/data/");
@@ -304,12 +306,13 @@ public class StorageHelper {
         }
         
         AppConfig config = new AppConfig(context);
+        StorageVolumeMonitor monitor = StorageVolumeMonitor.getInstance();
         
         // 方法0：优先使用用户手动设置的路径
         String customPath = config.getCustomSdCardPath();
         if (customPath != null && !customPath.isEmpty()) {
             File customDir = new File(customPath);
-            if (customDir.exists() && customDir.isDirectory() && customDir.canRead()) {
+            if (!monitor.isEjecting(customDir) && customDir.exists() && customDir.isDirectory() && customDir.canRead()) {
                 return customDir;
             }
         }
@@ -318,13 +321,13 @@ public class StorageHelper {
         String cachedPath = config.getLastDetectedSdPath();
         if (cachedPath != null && !cachedPath.isEmpty()) {
             File cachedDir = new File(cachedPath);
-            if (cachedDir.exists() && cachedDir.isDirectory() && cachedDir.canRead()) {
+            if (!monitor.isEjecting(cachedDir) && cachedDir.exists() && cachedDir.isDirectory() && cachedDir.canRead()) {
                 return cachedDir;
             }
             // 缓存的路径不可用了（U盘拔出或更换），继续检测
         }
         
-        // 方法2：读取 /proc/mounts（快速可靠，能看到所有挂载的存储设备）
+        // 方法2：查询挂载表（快速可靠，能看到所有挂载的存储设备；由 StorageVolumeMonitor 缓存）
         // 会检测任何 XXXX-XXXX 格式的 SD 卡，实现无感切换
         File sdRoot = getSdCardFromMounts();
         if (sdRoot != null) {
@@ -346,33 +349,15 @@ public class StorageHelper {
     }
     
     /**
-     * 方法1：读取 /proc/mounts 查找 SD 卡
+     * 方法1：从挂载表查找 SD 卡
      * 这是最可靠的方法，能看到系统实际挂载的所有存储设备
-     * 只接受 /storage/XXXX-XXXX 格式
+     * 只接受 /storage/XXXX-XXXX 格式，跳过正在弹出的存储卷
      */
     private static File getSdCardFromMounts() {
-        try {
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                    new java.io.FileReader("/proc/mounts"));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\s+");
-                if (parts.length < 2) continue;
-                
-                String mountPoint = parts[1];
-                // 只接受 /storage/XXXX-XXXX 格式
-                if (mountPoint.matches("/storage/[0-9A-Fa-f]{4}-[0-9A-Fa-f]{4}")) {
-                    File sdCard = new File(mountPoint);
-                    if (sdCard.exists() && sdCard.isDirectory() && sdCard.canRead()) {
-                        AppLog.d(TAG, "通过 /proc/mounts 找到U盘: " + mountPoint);
-                        reader.close();
-                        return sdCard;
-                    }
-                }
+        for (File sdCard : StorageVolumeMonitor.getInstance().getRemovableVolumes()) {
+            if (sdCard.exists() && sdCard.isDirectory() && sdCard.canRead()) {
+                return sdCard;
             }
-            reader.close();
-        } catch (Exception e) {
-            // 忽略错误
         }
         return null;
     }
@@ -392,13 +377,13 @@ public class StorageHelper {
             // 第一个是内部存储，第二个及以后可能是U盘
             for (int i = 1; i < externalDirs.length; i++) {
                 File dir = externalDirs[i];
-                if (dir != null && dir.exists()) {
+                if (dir != null && dir.exists() && !StorageVolumeMonitor.getInstance().isEjecting(dir)) {
                     String path = dir.getAbsolutePath();
                     int index = path.indexOf("/Android/data/");
                     if (index > 0) {
                         String sdRootPath = path.substring(0, index);
                         // 只接受 /storage/XXXX-XXXX 格式
-                        if (sdRootPath.matches("/storage/[0-9A-Fa-f]{4}-[0-9A-Fa-f]{4}")) {
+                        if (MountTable.isRemovableVolumePath(sdRootPath)) {
                             File sdRoot = new File(sdRootPath);
                             if (sdRoot.exists() && sdRoot.canRead()) {
                                 AppLog.d(TAG, "通过 getExternalFilesDirs 找到U盘: " + sdRoot.getAbsolutePath());
@@ -432,29 +417,22 @@ public class StorageHelper {
         
         // 1. /proc/mounts 内容（最可靠的挂载信息）
         info.add("=== /proc/mounts ===");
-        try {
-            java.io.BufferedReader reader = new java.io.BufferedReader(
-                    new java.io.FileReader("/proc/mounts"));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\s+");
-                if (parts.length >= 2) {
-                    String mountPoint = parts[1];
-                    // 只显示 /storage/ 相关的挂载点
-                    if (mountPoint.startsWith("/storage/")) {
-                        String marker = "";
-                        if (mountPoint.contains("emulated")) {
-                            marker = " [内部]";
-                        } else if (mountPoint.matches("/storage/[0-9A-Fa-f]{4}-[0-9A-Fa-f]{4}")) {
-                            marker = " [U盘]";
-                        }
-                        info.add(mountPoint + marker);
-                    }
+        List<MountTable.Mount> mounts = MountTable.read();
+        if (mounts.isEmpty()) {
+            info.add("读取失败");
+        }
+        for (MountTable.Mount mount : mounts) {
+            String mountPoint = mount.mountPoint;
+            // 只显示 /storage/ 相关的挂载点
+            if (mountPoint.startsWith("/storage/")) {
+                String marker = "";
+                if (mountPoint.contains("emulated")) {
+                    marker = " [内部]";
+                } else if (mount.isRemovableVolume()) {
+                    marker = " [U盘]";
                 }
+                info.add(mountPoint + marker);
             }
-            reader.close();
-        } catch (Exception e) {
-            info.add("读取失败: " + e.getMessage());
         }
         
         // 2. getExternalFilesDirs 信息
@@ -508,21 +486,12 @@ public class StorageHelper {
     
     /**
      * 获取存储空间信息
+     * 由 StorageVolumeMonitor 缓存，短时间内重复查询不会重复执行 StatFs
      * @param path 存储路径
      * @return 可用空间（字节），如果获取失败返回 -1
      */
     public static long getAvailableSpace(File path) {
-        if (path == null || !path.exists()) {
-            return -1;
-        }
-        
-        try {
-            StatFs stat = new StatFs(path.getAbsolutePath());
-            return stat.getAvailableBlocksLong() * stat.getBlockSizeLong();
-        } catch (Exception e) {
-            AppLog.e(TAG, "获取存储空间信息失败", e);
-            return -1;
-        }
+        return StorageVolumeMonitor.getInstance().getAvailableSpace(path);
     }
     
     /**
@@ -531,17 +500,7 @@ public class StorageHelper {
      * @return 总空间（字节），如果获取失败返回 -1
      */
     public static long getTotalSpace(File path) {
-        if (path == null || !path.exists()) {
-            return -1;
-        }
-        
-        try {
-            StatFs stat = new StatFs(path.getAbsolutePath());
-            return stat.getBlockCountLong() * stat.getBlockSizeLong();
-        } catch (Exception e) {
-            AppLog.e(TAG, "获取总存储空间失败", e);
-            return -1;
-        }
+        return StorageVolumeMonitor.getInstance().getTotalSpace(path);
     }
     
     /**
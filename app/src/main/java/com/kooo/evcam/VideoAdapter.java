@@ -19,6 +19,8 @@ import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.signature.ObjectKey;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -101,6 +103,24 @@ public class VideoAdapter extends RecyclerView.Adapter<VideoAdapter.VideoViewHol
 
         loadThumbnail(videoFile, holder.videoThumbnail);
 
+        // 锁定状态（锁定的视频不参与自动清理）
+        MediaCatalog catalog = MediaCatalog.getInstance(context);
+        MediaCatalog.Entry entry = catalog.get(videoFile.getAbsolutePath());
+        boolean isLocked = entry != null && entry.isLocked();
+        holder.btnLock.setText(isLocked ? "解锁" : "锁定");
+        holder.btnLock.setOnClickListener(v -> {
+            String path = videoFile.getAbsolutePath();
+            if (catalog.get(path) == null) {
+                catalog.onMediaFileClosed(videoFile, MediaCatalog.TYPE_VIDEO);
+            }
+            if (catalog.setLocked(path, !isLocked)) {
+                Toast.makeText(context, isLocked ? "已解锁" : "已锁定，不会被自动清理", Toast.LENGTH_SHORT).show();
+                notifyItemChanged(position);
+            } else {
+                Toast.makeText(context, "操作失败", Toast.LENGTH_SHORT).show();
+            }
+        });
+
         boolean isSelected = selectedPositions.contains(position);
         updateSelectionStyle(holder, isSelected);
 
@@ -111,10 +131,12 @@ public class VideoAdapter extends RecyclerView.Adapter<VideoAdapter.VideoViewHol
                 }
             });
             holder.btnPlay.setEnabled(false);
+            holder.btnLock.setEnabled(false);
             holder.btnDelete.setEnabled(false);
         } else {
             holder.itemView.setOnClickListener(null);
             holder.btnPlay.setEnabled(true);
+            holder.btnLock.setEnabled(true);
             holder.btnDelete.setEnabled(true);
 
             holder.btnPlay.setOnClickListener(v -> {
@@ -129,6 +151,8 @@ public class VideoAdapter extends RecyclerView.Adapter<VideoAdapter.VideoViewHol
                         .setMessage("确定要删除 " + videoFile.getName() + " 吗？")
                         .setPositiveButton("删除", (dialog, which) -> {
                             if (videoFile.delete()) {
+                                MediaCatalog.getInstance(context).onMediaFileDeleted(videoFile);
+                                MediaLayout.pruneEmptyPartition(videoFile);
                                 videoFiles.remove(position);
                                 notifyItemRemoved(position);
                                 notifyItemRangeChanged(position, videoFiles.size());
@@ -196,6 +220,7 @@ public class VideoAdapter extends RecyclerView.Adapter<VideoAdapter.VideoViewHol
         TextView videoSize;
         TextView videoDate;
         Button btnPlay;
+        Button btnLock;
         Button btnDelete;
 
         public VideoViewHolder(@NonNull View itemView) {
@@ -205,6 +230,7 @@ public class VideoAdapter extends RecyclerView.Adapter<VideoAdapter.VideoViewHol
             videoSize = itemView.findViewById(R.id.video_size);
             videoDate = itemView.findViewById(R.id.video_date);
             btnPlay = itemView.findViewById(R.id.btn_play);
+            btnLock = itemView.findViewById(R.id.btn_lock);
             btnDelete = itemView.findViewById(R.id.btn_delete);
         }
     }
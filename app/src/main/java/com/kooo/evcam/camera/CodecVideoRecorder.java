@@ -5,12 +5,16 @@ import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
 import android.media.MediaMuxer;
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.view.Surface;
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.storage.MediaLayout;
+import com.kooo.evcam.storage.SegmentFile;
+import com.kooo.evcam.storage.StorageVolumeMonitor;
 
 import java.io.File;
 import java.io.IOException;
@@ -39,9 +43,14 @@ public class CodecVideoRecorder {
     private static final String MIME_TYPE = MediaFormat.MIMETYPE_VIDEO_AVC;  // H.264
     private static final int I_FRAME_INTERVAL = 1;  // I帧间隔（秒）
     
-    // 编码参数（可配置）
-    private int frameRate = 30;       // 默认 30fps
-    private int bitRate = 3000000;    // 默认 3Mbps
+    // 编码参数（可配置，录制中可修改）
+    private volatile int frameRate = 30;       // 默认 30fps
+    private volatile int bitRate = 3000000;    // 默认 3Mbps
+
+    // 帧率控制（仅在编码线程访问）：摄像头输出帧率高于目标帧率时按时间戳丢弃多余的帧
+    private int pacedFrameRate = 0;       // 当前帧率控制使用的目标帧率
+    private long nextFrameDueNs = -1;     // 下一帧的预期时间戳
+    private long pacedSkippedFrames = 0;  // 帧率控制跳过的帧数
 
     private final String cameraId;
     private final int width;
@@ -54,6 +63,9 @@ public class CodecVideoRecorder {
 
     // MediaMuxer 相关
     private MediaMuxer muxer;
+    private SegmentFile segmentFile;  // 当前分段文件（预分配空间，muxer 停止后截断）
+    // 当前分段已写入 Muxer 的字节数（编码线程写入；文件预分配后 length() 不反映写入进度，写入检测用这个计数）
+    private volatile long segmentBytesWritten = 0;
     private int videoTrackIndex = -1;
     private boolean muxerStarted = false;
 
@@ -85,7 +97,7 @@ public class CodecVideoRecorder {
     private long encodedOutputFrameCount = 0;
 
     // 分段录制相关
-    private long segmentDurationMs = 60000;  // 分段时长，默认1分钟，可通过 setSegmentDuration 配置
+    private volatile long segmentDurationMs = 60000;  // 分段时长，默认1分钟，可通过 setSegmentDuration 配置
     private static final long SEGMENT_DURATION_COMPENSATION_MS = 0;  // 分段时长补偿（H3修复后定时器更精确，不再需要补偿）
     private static final long MIN_VALID_FILE_SIZE = 10 * 1024;  // 最小有效文件大小 10KB
     
@@ -96,6 +108,7 @@ public class CodecVideoRecorder {
     private Runnable segmentRunnable;
     private int segmentIndex = 0;
     private String saveDirectory;
+    private boolean partitionedLayout;  // 保存目录是否使用日期/小时分区布局
     private String cameraPosition;
     private long lastFileSize = 0;
     private static final long FILE_SIZE_CHECK_INTERVAL_MS = 5000;
@@ -199,6 +212,37 @@ public class CodecVideoRecorder {
         AppLog.d(TAG, "Camera " + cameraId + " frame rate set to " + fps + " fps");
     }
 
+    /**
+     * 录制中修改码率
+     * 通过 MediaCodec.setParameters 修改运行中的编码器，不重建编码器、不丢帧；
+     * 分段切换重新创建编码器时同样使用新码率
+     * @param bitrate 码率（bps）
+     * @return true 表示已提交给运行中的编码器；false 表示未在录制，下次创建编码器时生效
+     */
+    public boolean updateBitRate(int bitrate) {
+        setBitRate(bitrate);
+        Handler handler = encoderHandler;
+        if (!isRecording.get() || handler == null) {
+            return false;
+        }
+        // 在编码线程上执行，避免与分段切换时的编码器重建并发
+        handler.post(() -> {
+            if (encoder == null) {
+                // 编码器正在重建，新编码器会使用新码率
+                return;
+            }
+            try {
+                Bundle params = new Bundle();
+                params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+                encoder.setParameters(params);
+                AppLog.d(TAG, "Camera " + cameraId + " encoder bitrate updated to " + (bitRate / 1000) + " Kbps");
+            } catch (IllegalStateException e) {
+                AppLog.w(TAG, "Camera " + cameraId + " failed to update encoder bitrate, will apply at next segment: " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
     /**
      * 获取当前配置的码率
      */
@@ -242,6 +286,8 @@ public class CodecVideoRecorder {
         this.recordedFrameCount = 0;
         this.firstFrameTimestampNs = -1;  // 重置时间戳基准
         this.encodedOutputFrameCount = 0;  // 重置编码输出帧计数
+        this.nextFrameDueNs = -1;  // 重置帧率控制
+        this.pacedSkippedFrames = 0;
 
         // 重置健康检查状态
         this.encoderHealthy = true;
@@ -254,7 +300,8 @@ public class CodecVideoRecorder {
 
         // 从文件路径中提取保存目录和摄像头位置
         File file = new File(filePath);
-        this.saveDirectory = file.getParent();
+        this.saveDirectory = MediaLayout.rootOf(file).getAbsolutePath();
+        this.partitionedLayout = MediaLayout.isPartitioned(file);
         String fileName = file.getName();
         int lastUnderscoreIndex = fileName.lastIndexOf('_');
         if (lastUnderscoreIndex > 0 && fileName.endsWith(".mp4")) {
@@ -321,6 +368,14 @@ public class CodecVideoRecorder {
 
                             // 获取绝对时间戳（系统启动以来的纳秒）
                             long absoluteTimestampNs = surfaceTexture.getTimestamp();
+
+                            // 帧率控制：超出目标帧率的帧只消费不编码（目标帧率修改后从下一帧开始生效）
+                            if (shouldSkipFrame(absoluteTimestampNs)) {
+                                if (eglEncoder != null && eglEncoder.isInitialized()) {
+                                    eglEncoder.consumeFrame();
+                                }
+                                return;
+                            }
                             
                             // 计算相对时间戳（以第一帧为基准）
                             // 注意：firstFrameTimestampNs 在整个录制期间不重置
@@ -328,7 +383,7 @@ public class CodecVideoRecorder {
                             // 否则 GraphicBufferSource 会拒绝帧
                             if (firstFrameTimestampNs < 0) {
                                 firstFrameTimestampNs = absoluteTimestampNs;
-                                AppLog.d(TAG, "Camera " + cameraId + " First frame timestamp: " + absoluteTimestampNs + " ns");
+                                AppLog.d(TAG, "Camera {} First frame timestamp: {} ns", cameraId, absoluteTimestampNs);
                             }
                             long relativeTimestampNs = absoluteTimestampNs - firstFrameTimestampNs;
 
@@ -339,7 +394,7 @@ public class CodecVideoRecorder {
 
                                 // 定期输出帧计数
                                 if (recordedFrameCount % 100 == 0) {
-                                    AppLog.d(TAG, "Camera " + cameraId + " Encoded frames: " + recordedFrameCount);
+                                    AppLog.d(TAG, "Camera {} Encoded frames: {}", cameraId, recordedFrameCount);
                                 }
                             }
 
@@ -559,13 +614,19 @@ public class CodecVideoRecorder {
             }
             muxerStarted = false;
         }
+        // 截断预分配空间（在验证文件之前）
+        closeSegmentFile();
 
         // 验证并清理所有录制的文件
         List<String> deletedFiles = validateAndCleanupAllFiles();
 
-        AppLog.d(TAG, "Camera " + cameraId + " Codec recording stopped, frames recorded: " + recordedFrameCount);
+        AppLog.d(TAG, "Camera " + cameraId + " Codec recording stopped, frames recorded: " + recordedFrameCount
+                + ", skipped by frame pacing: " + pacedSkippedFrames);
 
         if (callback != null) {
+            if (currentFilePath != null && new File(currentFilePath).exists()) {
+                callback.onSegmentCompleted(cameraId, currentFilePath);
+            }
             callback.onRecordStop(cameraId);
             // 通知损坏文件被删除
             if (!deletedFiles.isEmpty()) {
@@ -639,6 +700,7 @@ public class CodecVideoRecorder {
             muxer.release();
             muxer = null;
         }
+        closeSegmentFile();
 
         // 停止编码线程
         if (encoderThread != null) {
@@ -740,11 +802,66 @@ public class CodecVideoRecorder {
      * 创建 MediaMuxer
      */
     private void createMuxer(String filePath) throws IOException {
-        muxer = new MediaMuxer(filePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        closeSegmentFile();
+        // 按码率 × 分段时长预分配文件空间，Muxer 写入已分配的区域
+        segmentFile = SegmentFile.create(new File(filePath), bitRate,
+                segmentDurationMs + SEGMENT_DURATION_COMPENSATION_MS, StorageVolumeMonitor.getInstance().getMounts());
+        try {
+            muxer = new MediaMuxer(segmentFile.getFileDescriptor(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        } catch (IOException | RuntimeException e) {
+            closeSegmentFile();
+            throw e;
+        }
         videoTrackIndex = -1;
         muxerStarted = false;
+        segmentBytesWritten = 0;
 
-        AppLog.d(TAG, "Camera " + cameraId + " Muxer created: " + filePath);
+        AppLog.d(TAG, "Camera " + cameraId + " Muxer created: " + filePath
+                + " (preallocated " + (segmentFile.getPreallocatedBytes() / (1024 * 1024)) + " MB)");
+    }
+
+    /**
+     * 截断预分配的多余空间并关闭分段文件（须在 muxer.stop() / release() 之后调用）
+     */
+    private void closeSegmentFile() {
+        if (segmentFile != null) {
+            try {
+                segmentFile.close();
+            } catch (IOException e) {
+                AppLog.w(TAG, "Camera " + cameraId + " Failed to close segment file: " + e.getMessage());
+            }
+            segmentFile = null;
+        }
+    }
+
+    /**
+     * 帧率控制（在编码线程上调用）
+     * 按时间戳均匀丢弃多余的帧，允许 1/4 帧间隔的抖动；
+     * 摄像头帧率不高于目标帧率时不丢帧，也不累积欠账
+     * @param timestampNs 帧时间戳
+     * @return true 表示跳过这一帧
+     */
+    private boolean shouldSkipFrame(long timestampNs) {
+        int fps = frameRate;
+        if (fps <= 0) {
+            return false;
+        }
+        long intervalNs = 1_000_000_000L / fps;
+        if (fps != pacedFrameRate || nextFrameDueNs < 0) {
+            // 首帧或目标帧率刚被修改：以当前帧为新的基准
+            pacedFrameRate = fps;
+            nextFrameDueNs = timestampNs + intervalNs;
+            return false;
+        }
+        if (timestampNs < nextFrameDueNs - intervalNs / 4) {
+            pacedSkippedFrames++;
+            return true;
+        }
+        nextFrameDueNs += intervalNs;
+        if (nextFrameDueNs <= timestampNs) {
+            nextFrameDueNs = timestampNs + intervalNs;
+        }
+        return false;
     }
 
     // 注意：encodingLoop() 方法已被移除
@@ -820,7 +937,7 @@ public class CodecVideoRecorder {
                             
                             // 调试日志（仅第一帧）
                             if (encodedOutputFrameCount == 0) {
-                                AppLog.d(TAG, "Camera " + cameraId + " First frame PTS: " + calculatedPtsUs + " us");
+                                AppLog.d(TAG, "Camera {} First frame PTS: {} us", cameraId, calculatedPtsUs);
                             }
                             
                             // 使用计算的时间戳
@@ -829,6 +946,7 @@ public class CodecVideoRecorder {
                             encodedData.position(bufferInfo.offset);
                             encodedData.limit(bufferInfo.offset + bufferInfo.size);
                             muxer.writeSampleData(videoTrackIndex, encodedData, bufferInfo);
+                            segmentBytesWritten += bufferInfo.size;
                             
                             encodedOutputFrameCount++;
                             lastEncoderOutputTime = System.currentTimeMillis();
@@ -917,7 +1035,12 @@ public class CodecVideoRecorder {
             
             // 2. 验证当前文件（在主线程上执行，因为是 IO 操作）
             final String previousFilePath = currentFilePath;
-            segmentHandler.post(() -> validateAndCleanupFile(previousFilePath));
+            segmentHandler.post(() -> {
+                if (validateAndCleanupFile(previousFilePath) == null && callback != null
+                        && previousFilePath != null && new File(previousFilePath).exists()) {
+                    callback.onSegmentCompleted(cameraId, previousFilePath);
+                }
+            });
 
             // 3. 准备下一段
             segmentIndex++;
@@ -1096,6 +1219,7 @@ public class CodecVideoRecorder {
             muxerStarted = false;
             videoTrackIndex = -1;
         }
+        closeSegmentFile();
         
         // 4. 释放旧编码器（即使失败也继续）
         if (encoder != null) {
@@ -1145,6 +1269,10 @@ public class CodecVideoRecorder {
     private String generateSegmentPath() {
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
         String fileName = timestamp + "_" + cameraPosition + ".mp4";
+        if (partitionedLayout) {
+            // 按日期/小时分区存放，跨小时的分段写入新的分区目录
+            return MediaLayout.resolveAndCreate(new File(saveDirectory), fileName).getAbsolutePath();
+        }
         return new File(saveDirectory, fileName).getAbsolutePath();
     }
 
@@ -1220,6 +1348,7 @@ public class CodecVideoRecorder {
                 muxerStarted = false;
                 videoTrackIndex = -1;
             }
+            closeSegmentFile();
 
             // 2. 清理旧的编码器
             if (encoder != null) {
@@ -1310,8 +1439,8 @@ public class CodecVideoRecorder {
 
         fileSizeCheckRunnable = () -> {
             if (isRecording.get() && currentFilePath != null) {
-                File file = new File(currentFilePath);
-                long currentSize = file.exists() ? file.length() : 0;
+                // 按已写入 Muxer 的字节数判断（预分配的分段文件创建时 length() 已接近整段大小）
+                long currentSize = segmentBytesWritten;
                 long sizeIncrease = currentSize - lastFileSize;
 
                 // 检查是否有写入
@@ -1321,7 +1450,7 @@ public class CodecVideoRecorder {
                     // 首次写入检测
                     if (!hasFirstWrite) {
                         hasFirstWrite = true;
-                        AppLog.d(TAG, "Camera " + cameraId + " first write detected! Size: " + currentSize + " bytes");
+                        AppLog.d(TAG, "Camera {} first write detected! Size: {} bytes", cameraId, currentSize);
                         // 取消首次写入超时检查
                         cancelFirstWriteTimeout();
                         
@@ -1336,9 +1465,9 @@ public class CodecVideoRecorder {
                             callback.onFirstDataWritten(cameraId);
                         }
                     }
-                    AppLog.d(TAG, "Camera " + cameraId + " file size: " + currentSize + " bytes (" + (currentSize / 1024) + " KB), frames: " + recordedFrameCount);
+                    AppLog.d(TAG, "Camera {} file size: {} bytes ({} KB), frames: {}", cameraId, currentSize, currentSize / 1024, recordedFrameCount);
                 } else if (sizeIncrease == 0 && lastFileSize > 0) {
-                    AppLog.w(TAG, "Camera " + cameraId + " WARNING: File size not growing! Current: " + currentSize + " bytes");
+                    AppLog.w(TAG, "Camera {} WARNING: File size not growing! Current: {} bytes", cameraId, currentSize);
                 }
 
                 lastFileSize = currentSize;
@@ -139,7 +139,7 @@ public class EglSurfaceEncoder {
     private boolean isReleased = false;
 
     // 时间水印相关
-    private boolean watermarkEnabled = false;
+    private volatile boolean watermarkEnabled = false;  // 可在任意线程修改，下一帧生效
     private int watermarkProgram;
     private int watermarkTextureId;
     private int watermarkTextureHandle;
@@ -211,11 +211,7 @@ public class EglSurfaceEncoder {
     public void setWatermarkEnabled(boolean enabled) {
         this.watermarkEnabled = enabled;
         AppLog.d(TAG, "Camera " + cameraId + " Watermark " + (enabled ? "enabled" : "disabled"));
-        
-        // 如果已初始化且启用水印，需要初始化水印相关资源
-        if (isInitialized && enabled && watermarkProgram == 0) {
-            initWatermarkGl();
-        }
+        // 水印的 OpenGL 资源在渲染线程绘制下一帧时创建（GL 调用必须在持有 EGL context 的线程上执行）
     }
 
     /**
@@ -244,6 +240,11 @@ public class EglSurfaceEncoder {
             // 首先绑定 EGL context（必须在 updateTexImage 之前）
             makeCurrent();
 
+            // 录制中开启水印：首次需要时创建水印资源
+            if (watermarkEnabled && watermarkProgram == 0) {
+                initWatermarkGl();
+            }
+
             // 更新纹理（需要在正确的 EGL context 中）
             inputSurfaceTexture.updateTexImage();
             inputSurfaceTexture.getTransformMatrix(texMatrix);
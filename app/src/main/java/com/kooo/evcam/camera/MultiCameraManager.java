@@ -3,8 +3,13 @@ package com.kooo.evcam.camera;
 
 import com.kooo.evcam.AppConfig;
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.ConfigService;
+import com.kooo.evcam.ConfigSnapshot;
 import com.kooo.evcam.FileTransferManager;
 import com.kooo.evcam.StorageHelper;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
+import com.kooo.evcam.storage.WriteLatencyProbe;
 import android.content.Context;
 import android.os.Environment;
 import android.util.Log;
@@ -21,6 +26,7 @@ import java.util.Locale;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 四路摄像头管理器
@@ -39,6 +45,7 @@ public class MultiCameraManager {
     private int maxOpenCameras = DEFAULT_MAX_OPEN_CAMERAS;
 
     private boolean isRecording = false;
+    private File writeProbeDir = null;  // 正在探测写入延迟的录制目录
     private boolean useCodecRecording = false;  // 是否使用软编码录制（用于 L6/L7）
     private boolean useRelayWrite = false;      // 是否使用中转写入（录制到内部存储，异步传输到U盘）
     private File finalSaveDir = null;           // 最终存储目录（用于中转写入模式）
@@ -64,6 +71,67 @@ public class MultiCameraManager {
     private final Map<String, Boolean> cameraSessionReady = new LinkedHashMap<>();
     private final Map<String, Boolean> cameraRecordingActive = new LinkedHashMap<>();
     private RecordingStatusCallback recordingStatusCallback;
+    
+    // 常驻录制会话（持久化录制 Surface）相关
+    private boolean singleOutputMode = false;  // 单一输出模式下不支持常驻会话
+    private final Map<String, Long> recordingStartRequestTimes = new ConcurrentHashMap<>();  // 各摄像头发起录制的时间
+    private final Map<String, String> recordingStartPaths = new ConcurrentHashMap<>();  // 各摄像头的启动路径（persistent/rebuild）
+    private final Map<String, Long> lastStartLatencies = new ConcurrentHashMap<>();  // 最近一次录制各摄像头的启动到首帧写入延迟（毫秒）
+    private final Map<String, Long> segmentSwitchStartTimes = new ConcurrentHashMap<>();  // 各摄像头停止向上一分段发送帧的时间
+    private final Map<String, String> segmentSwitchPaths = new ConcurrentHashMap<>();  // 各摄像头本次分段切换的路径
+    private final Map<String, LatencyStats> startLatencyStats = new ConcurrentHashMap<>();  // 启动路径 -> 启动到首帧写入延迟
+    private final Map<String, LatencyStats> segmentSwitchStats = new ConcurrentHashMap<>();  // 切换路径 -> 分段切换间隔
+
+    /**
+     * 延迟统计（按路径分别累计，persistent=常驻会话，rebuild=重建会话，用于对比两种方式）
+     * 首次写入通过文件大小轮询检测，单次样本精度约为 500ms，需看多次的平均值
+     */
+    public static final class LatencyStats {
+        private long count;
+        private long totalMs;
+        private long maxMs;
+
+        synchronized void add(long latencyMs) {
+            count++;
+            totalMs += latencyMs;
+            maxMs = Math.max(maxMs, latencyMs);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getAverageMs() {
+            return count > 0 ? totalMs / count : 0;
+        }
+
+        public synchronized long getMaxMs() {
+            return maxMs;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "n=" + count + ", avg=" + getAverageMs() + "ms, max=" + maxMs + "ms";
+        }
+    }
+
+    // 录制中修改录制参数（实时重新配置）相关
+    private static final long REOPEN_TIMEOUT_MS = 5000;  // 重新打开摄像头的超时时间
+    private volatile ConfigSnapshot recordingConfig = null;  // 当前录制已应用的配置
+    private ReconfigureCallback reconfigureCallback;
+    private List<ReconfigureResult> pendingRebuildResults = null;  // 等待新录制首次写入以统计丢帧的重建结果
+    private long rebuildStopTimeNs = 0;  // 重建时停止录制的时间
+    private int rebuildFrameRate = 0;  // 重建后的目标帧率（用于估算丢帧数）
+    private final Set<String> reopenPendingCameraIds = new HashSet<>();  // 等待重新配置完成的摄像头
+    private Runnable pendingReopenRestart = null;  // 摄像头重新打开后执行的录制启动任务
+    private Runnable reconfigureRestart = null;  // 重建录制时待执行的重新开始录制任务（停止录制时取消）
+    // 录制参数变化时自动重新配置（ConfigService 在配置通知线程回调，切到主线程执行）
+    private final ConfigService.ConfigListener recordingConfigListener = (snapshot, changedKeys) ->
+            mainHandler.post(() -> {
+                if (isRecording && !isRebuildingRecording) {
+                    reconfigureRecording();
+                }
+            });
 
     public interface StatusCallback {
         void onCameraStatusUpdate(String cameraId, String status);
@@ -126,8 +194,96 @@ public class MultiCameraManager {
         void onTimestampUpdated(String newTimestamp);
     }
 
+    /**
+     * 录制参数修改的生效方式（按代价从低到高）
+     */
+    public enum ReconfigurePath {
+        ENCODER_PARAMETERS("实时生效"),     // MediaCodec.setParameters 直接修改运行中的编码器
+        NEXT_FRAME("下一帧生效"),           // 渲染下一帧时生效（时间水印、帧率控制）
+        NEXT_SEGMENT("下一分段生效"),       // 下一次分段切换时生效
+        REBUILD("已重建录制"),              // 停止并重新开始录制（分辨率、录制模式）
+        DEFERRED("下次录制生效"),           // 当前录制不应用（如远程录制中）
+        UNSUPPORTED("当前录制模式不支持");  // 如 MediaRecorder 模式的时间水印
+
+        private final String displayName;
+
+        ReconfigurePath(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 单个录制参数修改的结果
+     */
+    public static final class ReconfigureResult {
+        public static final String SETTING_BITRATE = "bitrate";
+        public static final String SETTING_FRAMERATE = "framerate";
+        public static final String SETTING_WATERMARK = "watermark";
+        public static final String SETTING_SEGMENT_DURATION = "segment_duration";
+        public static final String SETTING_RESOLUTION = "resolution";
+        public static final String SETTING_RECORDING_MODE = "recording_mode";
+        // 丢帧数未测量（只有重建录制时统计丢帧，其他路径不测量）
+        public static final int FRAMES_NOT_MEASURED = -1;
+
+        public final String cameraKey;  // 摄像头位置；重建时为 "all"
+        public final String setting;    // SETTING_* 之一
+        public final ReconfigurePath path;
+        public final int framesLost;    // 丢失的帧数（重建为停止到新录制首次写入的间隔按帧率估算），未测量时为 FRAMES_NOT_MEASURED
+
+        ReconfigureResult(String cameraKey, String setting, ReconfigurePath path) {
+            this(cameraKey, setting, path, FRAMES_NOT_MEASURED);
+        }
+
+        ReconfigureResult(String cameraKey, String setting, ReconfigurePath path, int framesLost) {
+            this.cameraKey = cameraKey;
+            this.setting = setting;
+            this.path = path;
+            this.framesLost = framesLost;
+        }
+
+        /**
+         * 参数的显示名称
+         */
+        public static String getSettingDisplayName(String setting) {
+            switch (setting) {
+                case SETTING_BITRATE:
+                    return "码率";
+                case SETTING_FRAMERATE:
+                    return "帧率";
+                case SETTING_WATERMARK:
+                    return "时间水印";
+                case SETTING_SEGMENT_DURATION:
+                    return "分段时长";
+                case SETTING_RESOLUTION:
+                    return "分辨率";
+                case SETTING_RECORDING_MODE:
+                    return "录制模式";
+                default:
+                    return setting;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return cameraKey + " " + setting + " -> " + path + " (frames lost: " + framesLost + ")";
+        }
+    }
+
+    /**
+     * 录制参数修改结果回调（在主线程调用）
+     * 不需要重建的修改在应用后立即回调；重建录制的结果在新录制首次写入后回调（此时才能统计丢帧数）
+     */
+    public interface ReconfigureCallback {
+        void onReconfigured(List<ReconfigureResult> results);
+    }
+
     public MultiCameraManager(Context context) {
         this.context = context;
+        ConfigService.getInstance(context).addListener(ConfigService.KeyGroup.RECORDING, recordingConfigListener);
     }
     
     private SegmentSwitchCallback segmentSwitchCallback;
@@ -187,6 +343,10 @@ public class MultiCameraManager {
         this.timestampUpdateCallback = callback;
     }
 
+    public void setReconfigureCallback(ReconfigureCallback callback) {
+        this.reconfigureCallback = callback;
+    }
+
     public void setMaxOpenCameras(int maxOpenCameras) {
         this.maxOpenCameras = Math.max(1, maxOpenCameras);
     }
@@ -202,6 +362,7 @@ public class MultiCameraManager {
     @Deprecated
     public void setSingleOutputMode(boolean enabled) {
         AppLog.d(TAG, "Setting single output mode: " + (enabled ? "ENABLED" : "DISABLED"));
+        this.singleOutputMode = enabled;
         for (SingleCamera camera : cameras.values()) {
             camera.setSingleOutputMode(enabled);
         }
@@ -315,6 +476,9 @@ public class MultiCameraManager {
                     statusCallback.onCameraStatusUpdate(cameraId, "预览已启动");
                 }
 
+                // 修改分辨率后重新打开的摄像头：全部配置完成后重新开始录制
+                onCameraReopened(cameraId);
+
                 // 检查是否有录制器正在等待会话重新配置（分段切换）
                 for (Map.Entry<String, SingleCamera> entry : cameras.entrySet()) {
                     if (entry.getValue().getCameraId().equals(cameraId)) {
@@ -440,8 +604,8 @@ public class MultiCameraManager {
             entry.getValue().setCallback(callback);
         }
 
-        // 为已初始化的摄像头创建录制器实例
-        recorders.clear();
+        // 为已初始化的摄像头创建录制器实例（先释放旧的录制器及其持久化 Surface）
+        clearRecorders();
         if (frontId != null && cameras.containsKey("front")) {
             recorders.put("front", new VideoRecorder(frontId));
         }
@@ -480,6 +644,13 @@ public class MultiCameraManager {
                 for (Map.Entry<String, SingleCamera> entry : cameras.entrySet()) {
                     if (entry.getValue().getCameraId().equals(cameraId)) {
                         SingleCamera camera = entry.getValue();
+                        segmentSwitchStartTimes.put(cameraId, System.currentTimeMillis());
+                        if (camera.isRecordSurfacePersistent()) {
+                            // 常驻会话：只移除重复请求中的录制目标
+                            camera.stopRecordTarget();
+                            AppLog.d(TAG, "Camera " + cameraId + " record target paused for segment switch (persistent session)");
+                            break;
+                        }
                         // 优先使用新的仅预览模式（保持预览不卡顿）
                         boolean success = camera.switchToPreviewOnlyMode();
                         AppLog.d(TAG, "Camera " + cameraId + " switched to preview-only mode: " + (success ? "success" : "fallback to pause"));
@@ -505,10 +676,23 @@ public class MultiCameraManager {
                                 scheduleRelayTransfer(completedFilePath);
                             }
                             
-                            // 更新录制 Surface 并重新创建会话（MediaRecorder 模式）
-                            camera.setRecordSurface(recorder.getSurface(), false);
-                            camera.recreateSession();
-                            AppLog.d(TAG, "Recreated session for camera " + cameraId + " after segment switch");
+                            if (recorder.isUsingPersistentSurface() && camera.isRecordSurfaceAttached(recorder.getSurface())) {
+                                // 常驻会话：新的 MediaRecorder 绑定同一个持久化 Surface，直接启动并恢复录制目标
+                                recorder.clearWaitingForSessionReconfiguration();
+                                segmentSwitchPaths.put(cameraId, "persistent");
+                                if (recorder.startRecording()) {
+                                    camera.startRecordTarget();
+                                    AppLog.d(TAG, "Camera " + cameraId + " switched segment without session rebuild");
+                                } else {
+                                    AppLog.e(TAG, "Camera " + cameraId + " failed to start next segment on persistent surface");
+                                }
+                            } else {
+                                // 更新录制 Surface 并重新创建会话（MediaRecorder 模式）
+                                segmentSwitchPaths.put(cameraId, "rebuild");
+                                camera.setRecordSurface(recorder.getSurface(), false);
+                                camera.recreateSession();
+                                AppLog.d(TAG, "Recreated session for camera " + cameraId + " after segment switch");
+                            }
                         }
                         
                         // 通知分段切换回调（只通知一次，第一个触发的摄像头会通知）
@@ -521,6 +705,11 @@ public class MultiCameraManager {
                 }
             }
 
+            @Override
+            public void onSegmentCompleted(String cameraId, String filePath) {
+                MediaCatalog.getInstance(context).onMediaFileClosed(new File(filePath), MediaCatalog.TYPE_VIDEO);
+            }
+
             @Override
             public void onCorruptedFilesDeleted(String cameraId, List<String> deletedFiles) {
                 if (deletedFiles != null && !deletedFiles.isEmpty()) {
@@ -544,6 +733,9 @@ public class MultiCameraManager {
             @Override
             public void onFirstDataWritten(String cameraId) {
                 AppLog.d(TAG, "First data written for camera " + cameraId);
+                reportStartLatency(cameraId);
+                reportSegmentSwitchLatency(cameraId);
+                reportRebuildFramesLost();
                 // 只在第一个摄像头首次写入时通知外部（每次录制只通知一次）
                 if (!hasNotifiedFirstDataWritten && firstDataWrittenCallback != null) {
                     hasNotifiedFirstDataWritten = true;
@@ -556,11 +748,31 @@ public class MultiCameraManager {
         // 为已创建的录制器设置回调
         for (Map.Entry<String, VideoRecorder> entry : recorders.entrySet()) {
             entry.getValue().setCallback(recordCallback);
+            // 持久化 Surface 交给对应的摄像头在会话关闭后释放
+            SingleCamera camera = cameras.get(entry.getKey());
+            if (camera != null) {
+                entry.getValue().setSurfaceReleaser(camera::releaseSurfaceWhenDetached);
+            }
         }
 
         AppLog.d(TAG, "Cameras initialized");
     }
 
+    /**
+     * 释放并清空所有 MediaRecorder 录制器（包括持久化 Surface）
+     */
+    private void clearRecorders() {
+        for (VideoRecorder recorder : recorders.values()) {
+            try {
+                recorder.release();
+                recorder.releasePersistentSurface();
+            } catch (Exception e) {
+                AppLog.e(TAG, "Error releasing VideoRecorder", e);
+            }
+        }
+        recorders.clear();
+    }
+
     /**
      * 获取错误信息描述
      */
@@ -688,6 +900,7 @@ public class MultiCameraManager {
 
         // 检查是否使用中转写入模式
         AppConfig appConfig = new AppConfig(context);
+        recordingConfig = appConfig.getSnapshot();
         useRelayWrite = appConfig.shouldUseRelayWrite();
         
         // 获取录制目录（可能是临时目录或最终目录）
@@ -749,6 +962,9 @@ public class MultiCameraManager {
         int targetFrameRate = appConfig.getActualFrameRate(30);  // 假设硬件支持30fps
         AppLog.d(TAG, "Target frame rate: " + targetFrameRate + " fps (level: " + appConfig.getFramerateLevel() + ")");
 
+        // 常驻录制会话：使用持久化输入 Surface，会话只需配置一次（单一输出模式不支持）
+        boolean usePersistentSurface = appConfig.isPersistentRecordSessionEnabled() && !singleOutputMode;
+
         // 第一步：准备所有 MediaRecorder（但不启动）
         // 使用每个摄像头的实际预览分辨率，而不是硬编码的值
         boolean prepareSuccess = true;
@@ -760,10 +976,9 @@ public class MultiCameraManager {
             }
             
             // 获取摄像头的实际预览分辨率
-            Size previewSize = camera.getPreviewSize();
-            if (previewSize == null) {
-                AppLog.e(TAG, "Camera " + key + " preview size not available, using fallback 1280x720");
-                previewSize = new Size(1280, 720);  // 回退到常见分辨率
+            Size previewSize = getRecordingSize(camera, appConfig);
+            if (camera.getPreviewSize() == null) {
+                AppLog.e(TAG, "Camera " + key + " preview size not available, using fallback " + previewSize);
             }
             
             // 计算码率（基于分辨率和帧率）
@@ -776,13 +991,14 @@ public class MultiCameraManager {
             recorder.setSegmentDuration(segmentDurationMs);
             recorder.setVideoBitrate(bitrate);
             recorder.setVideoFrameRate(targetFrameRate);
+            recorder.setPersistentSurfaceEnabled(usePersistentSurface);
             
             AppLog.d(TAG, "Recording params for " + key + ": " + 
                     previewSize.getWidth() + "x" + previewSize.getHeight() + 
                     " @ " + targetFrameRate + "fps, " + AppConfig.formatBitrate(bitrate));
             
             // 所有摄像头使用统一的时间戳：日期_时间_摄像头位置.mp4
-            String path = new File(saveDir, timestamp + "_" + key + ".mp4").getAbsolutePath();
+            String path = segmentFile(saveDir, timestamp + "_" + key + ".mp4").getAbsolutePath();
             // 只准备 MediaRecorder，获取 Surface，使用预览的实际分辨率
             AppLog.d(TAG, "Preparing recording for " + key + " with size: " + previewSize.getWidth() + "x" + previewSize.getHeight());
             if (!recorder.prepareRecording(path, previewSize.getWidth(), previewSize.getHeight())) {
@@ -804,26 +1020,67 @@ public class MultiCameraManager {
         }
 
         // 第二步：将录制 Surface 添加到摄像头会话并重新创建会话
+        // 常驻会话中已包含同一个持久化 Surface 的摄像头无需重建，直接视为就绪
+        List<String> attachedKeys = new ArrayList<>();
+        List<String> rebuildKeys = new ArrayList<>();
+        recordingStartRequestTimes.clear();
+        recordingStartPaths.clear();
+        lastStartLatencies.clear();
+        long requestTime = System.currentTimeMillis();
+        for (String key : keys) {
+            SingleCamera camera = cameras.get(key);
+            VideoRecorder recorder = recorders.get(key);
+            if (camera == null || recorder == null) {
+                continue;
+            }
+            recordingStartRequestTimes.put(camera.getCameraId(), requestTime);
+            if (recorder.isUsingPersistentSurface() && camera.isRecordSurfaceAttached(recorder.getSurface())) {
+                attachedKeys.add(key);
+                recordingStartPaths.put(camera.getCameraId(), "persistent");
+            } else {
+                rebuildKeys.add(key);
+                recordingStartPaths.put(camera.getCameraId(), "rebuild");
+            }
+        }
+
         synchronized (sessionLock) {
-            sessionConfiguredCount = 0;
+            sessionConfiguredCount = attachedKeys.size();
             expectedSessionCount = keys.size();
             // 初始化每个摄像头的配置状态跟踪
             cameraSessionReady.clear();
             cameraRecordingActive.clear();
+            for (String key : attachedKeys) {
+                cameraSessionReady.put(key, true);
+            }
         }
 
-        for (String key : keys) {
+        for (String key : rebuildKeys) {
             SingleCamera camera = cameras.get(key);
             VideoRecorder recorder = recorders.get(key);
-            if (camera == null || recorder == null) {
-                continue;
+            if (recorder.isUsingPersistentSurface()) {
+                // 首次使用持久化 Surface：重建一次会话，之后录制启停都不再重建
+                camera.setPersistentRecordSurface(recorder.getSurface());
+            } else {
+                camera.setRecordSurface(recorder.getSurface(), false);  // MediaRecorder 模式
             }
-            camera.setRecordSurface(recorder.getSurface(), false);  // MediaRecorder 模式
             camera.recreateSession();
         }
+        AppLog.d(TAG, "Recording session path: persistent=" + attachedKeys + ", rebuild=" + rebuildKeys);
 
         // 第三步：设置待处理的录制启动任务（将被 executeRecordingStart 替代）
         final List<String> recordingKeys = new ArrayList<>(keys);
+        if (rebuildKeys.isEmpty()) {
+            // 所有摄像头都已在常驻会话中，无需等待会话配置，立即启动
+            final Runnable startTask = () -> executeRecordingStart(recordingKeys, false);
+            pendingRecordingStart = startTask;
+            mainHandler.post(() -> {
+                // stopRecording() 可能已取消本次启动
+                if (pendingRecordingStart == startTask) {
+                    startTask.run();
+                }
+            });
+            return true;
+        }
         pendingRecordingStart = () -> executeRecordingStart(recordingKeys, false);
 
         // 设置超时机制：如果 3 秒内没有所有会话配置完成，只启动已就绪的摄像头
@@ -873,6 +1130,11 @@ public class MultiCameraManager {
             VideoRecorder recorder = recorders.get(key);
             if (recorder != null) {
                 if (recorder.startRecording()) {
+                    // 常驻会话：录制器启动后再恢复录制目标，会话本身保持不变
+                    SingleCamera camera = cameras.get(key);
+                    if (camera != null && camera.isRecordSurfacePersistent() && !camera.isRecordTargetEnabled()) {
+                        camera.startRecordTarget();
+                    }
                     cameraRecordingActive.put(key, true);
                     activeCameras.add(key);
                 } else {
@@ -887,6 +1149,7 @@ public class MultiCameraManager {
         
         if (!activeCameras.isEmpty()) {
             isRecording = true;
+            startWriteProbe();
             lastNotifiedSegmentIndex = -1;
             AppLog.d(TAG, activeCameras.size() + " camera(s) started recording successfully: " + activeCameras);
             
@@ -929,8 +1192,13 @@ public class MultiCameraManager {
         // 重置首次写入通知标志（每次录制只通知一次）
         hasNotifiedFirstDataWritten = false;
 
+        // 记录当前录制参数（用于修改录制参数时重建）
+        currentRecordingTimestamp = timestamp;
+        currentEnabledCameras = enabledCameras;
+
         // 检查是否使用中转写入模式
         AppConfig appConfig = new AppConfig(context);
+        recordingConfig = appConfig.getSnapshot();
         useRelayWrite = appConfig.shouldUseRelayWrite();
         
         // 获取录制目录（可能是临时目录或最终目录）
@@ -1007,10 +1275,9 @@ public class MultiCameraManager {
             }
 
             // 获取摄像头的实际预览分辨率
-            Size previewSize = camera.getPreviewSize();
-            if (previewSize == null) {
-                AppLog.e(TAG, "Camera " + key + " preview size not available, using fallback 1280x800");
-                previewSize = new Size(1280, 800);
+            Size previewSize = getRecordingSize(camera, appConfig);
+            if (camera.getPreviewSize() == null) {
+                AppLog.e(TAG, "Camera " + key + " preview size not available, using fallback " + previewSize);
             }
             
             // 计算码率（基于分辨率和帧率）
@@ -1079,6 +1346,11 @@ public class MultiCameraManager {
                     }
                 }
 
+                @Override
+                public void onSegmentCompleted(String cameraId, String filePath) {
+                    MediaCatalog.getInstance(context).onMediaFileClosed(new File(filePath), MediaCatalog.TYPE_VIDEO);
+                }
+
                 @Override
                 public void onCorruptedFilesDeleted(String cameraId, List<String> deletedFiles) {
                     if (deletedFiles != null && !deletedFiles.isEmpty()) {
@@ -1103,6 +1375,7 @@ public class MultiCameraManager {
                 @Override
                 public void onFirstDataWritten(String cameraId) {
                     AppLog.d(TAG, "Codec first data written for camera " + cameraId);
+                    reportRebuildFramesLost();
                     // 只在第一个摄像头首次写入时通知外部（每次录制只通知一次）
                     if (!hasNotifiedFirstDataWritten && firstDataWrittenCallback != null) {
                         hasNotifiedFirstDataWritten = true;
@@ -1113,7 +1386,7 @@ public class MultiCameraManager {
             });
 
             // 准备录制
-            String path = new File(saveDir, timestamp + "_" + key + ".mp4").getAbsolutePath();
+            String path = segmentFile(saveDir, timestamp + "_" + key + ".mp4").getAbsolutePath();
             AppLog.d(TAG, "Preparing codec recording for " + key + " with size: " + previewSize.getWidth() + "x" + previewSize.getHeight());
 
             android.graphics.SurfaceTexture surfaceTexture = codecRecorder.prepareRecording(path);
@@ -1174,6 +1447,7 @@ public class MultiCameraManager {
             if (startSuccess) {
                 lastNotifiedSegmentIndex = -1;  // 重置分段通知计数
                 isRecording = true;
+                startWriteProbe();
                 AppLog.d(TAG, successCount + " camera(s) started codec recording successfully");
             } else {
                 AppLog.e(TAG, "Failed to start codec recording on all cameras");
@@ -1211,6 +1485,26 @@ public class MultiCameraManager {
         stopRecording(false);
     }
 
+    /**
+     * 开始探测录制目录的同步写入延迟，后台 I/O 据此限流或暂停（MediaRecorder 与 MediaCodec 模式共用）
+     */
+    private void startWriteProbe() {
+        File dir = StorageHelper.getRecordingDir(context);
+        if (writeProbeDir != null && writeProbeDir.equals(dir)) {
+            return;
+        }
+        stopWriteProbe();
+        writeProbeDir = dir;
+        WriteLatencyProbe.getInstance().start(dir);
+    }
+
+    private void stopWriteProbe() {
+        if (writeProbeDir != null) {
+            WriteLatencyProbe.getInstance().stop(writeProbeDir);
+            writeProbeDir = null;
+        }
+    }
+
     /**
      * 停止录制所有摄像头
      * @param skipRelayTransfer 是否跳过自动传输（用于远程录制，上传完成后再传输）
@@ -1218,6 +1512,18 @@ public class MultiCameraManager {
     public void stopRecording(boolean skipRelayTransfer) {
         AppLog.d(TAG, "stopRecording called, isRecording=" + isRecording + ", useCodecRecording=" + useCodecRecording + ", skipRelayTransfer=" + skipRelayTransfer);
 
+        // 取消修改录制参数后待执行的重新开始录制
+        if (reconfigureRestart != null) {
+            AppLog.d(TAG, "Cancelling pending restart after reconfiguration");
+            mainHandler.removeCallbacks(reconfigureRestart);
+            reconfigureRestart = null;
+            synchronized (sessionLock) {
+                pendingReopenRestart = null;
+                reopenPendingCameraIds.clear();
+                pendingRebuildResults = null;
+            }
+        }
+
         // 清理待处理的录制启动任务和会话计数器（线程安全处理）
         synchronized (sessionLock) {
             if (pendingRecordingStart != null) {
@@ -1271,6 +1577,14 @@ public class MultiCameraManager {
             codecRecorders.clear();
         }
 
+        // 常驻会话：先停止向录制 Surface 发送帧，再停止 MediaRecorder
+        for (String key : keys) {
+            SingleCamera camera = cameras.get(key);
+            if (camera != null && camera.isRecordSurfacePersistent()) {
+                camera.stopRecordTarget();
+            }
+        }
+
         // 停止 MediaRecorder 录制
         for (String key : keys) {
             VideoRecorder recorder = recorders.get(key);
@@ -1279,10 +1593,10 @@ public class MultiCameraManager {
             }
         }
 
-        // 清理摄像头会话
+        // 清理摄像头会话（常驻会话保持不变，下次录制可直接启动）
         for (String key : keys) {
             SingleCamera camera = cameras.get(key);
-            if (camera != null) {
+            if (camera != null && !camera.isRecordSurfacePersistent()) {
                 camera.clearRecordSurface();
                 camera.recreateSession();
             }
@@ -1313,8 +1627,10 @@ public class MultiCameraManager {
         }
 
         isRecording = false;
+        stopWriteProbe();
         useRelayWrite = false;
         finalSaveDir = null;
+        recordingConfig = null;
         
         // 清理 Watchdog 回退状态
         currentRecordingTimestamp = null;
@@ -1325,6 +1641,310 @@ public class MultiCameraManager {
         AppLog.d(TAG, "All cameras stopped recording");
     }
 
+    /**
+     * 将当前配置中的录制参数应用到正在进行的录制（录制参数修改后自动调用，也可手动调用）
+     * 每项修改选择代价最低的安全生效方式：
+     * - 码率：Codec 模式通过 MediaCodec.setParameters 实时修改；MediaRecorder 模式下一分段生效
+     * - 帧率：Codec 模式下一帧起按新帧率控制帧输出；MediaRecorder 模式下一分段生效
+     * - 时间水印：Codec 模式下一帧生效；MediaRecorder 模式不支持
+     * - 分段时长：下一次分段切换时生效
+     * - 分辨率、录制模式：停止并重新开始录制（分辨率需要重新打开摄像头选择预览尺寸）
+     * @return 各项修改的生效方式；重建录制的丢帧数在新录制首次写入后通过 ReconfigureCallback 回调
+     */
+    public List<ReconfigureResult> reconfigureRecording() {
+        List<ReconfigureResult> results = new ArrayList<>();
+        ConfigSnapshot previous = recordingConfig;
+        if (!isRecording || previous == null) {
+            return results;
+        }
+        AppConfig appConfig = new AppConfig(context);
+        ConfigSnapshot next = appConfig.getSnapshot();
+        if (next.getVersion() == previous.getVersion()) {
+            return results;
+        }
+        recordingConfig = next;
+
+        boolean resolutionChanged = !previous.getTargetResolution().equals(next.getTargetResolution());
+        // 录制模式设置变化且实际录制方式随之变化才需要重建（自动模式下 Watchdog 回退的 Codec 模式保持不变）
+        boolean modeChanged = !previous.getRecordingMode().equals(next.getRecordingMode())
+                && appConfig.shouldUseCodecRecording() != useCodecRecording;
+        boolean bitrateChanged = !previous.getBitrateLevel().equals(next.getBitrateLevel());
+        boolean framerateChanged = !previous.getFramerateLevel().equals(next.getFramerateLevel());
+        boolean watermarkChanged = previous.isTimestampWatermarkEnabled() != next.isTimestampWatermarkEnabled();
+        boolean segmentChanged = previous.getSegmentDurationMinutes() != next.getSegmentDurationMinutes();
+        // 远程录制使用固定时长的分段覆盖，录制中不重建也不修改分段
+        boolean remoteRecording = overrideSegmentDurationMs > 0;
+
+        if ((resolutionChanged || modeChanged) && !remoteRecording) {
+            // 重建会重新读取全部配置，其他修改一并生效
+            addRebuildResult(results, resolutionChanged ? ReconfigureResult.SETTING_RESOLUTION : null);
+            addRebuildResult(results, modeChanged ? ReconfigureResult.SETTING_RECORDING_MODE : null);
+            addRebuildResult(results, bitrateChanged ? ReconfigureResult.SETTING_BITRATE : null);
+            addRebuildResult(results, framerateChanged ? ReconfigureResult.SETTING_FRAMERATE : null);
+            addRebuildResult(results, watermarkChanged ? ReconfigureResult.SETTING_WATERMARK : null);
+            addRebuildResult(results, segmentChanged ? ReconfigureResult.SETTING_SEGMENT_DURATION : null);
+            AppLog.i(TAG, "Reconfigure: rebuilding recording (resolution=" + resolutionChanged + ", mode=" + modeChanged + ")");
+            rebuildRecordingForReconfigure(resolutionChanged, modeChanged, results);
+            return results;
+        }
+        if (resolutionChanged) {
+            results.add(new ReconfigureResult("all", ReconfigureResult.SETTING_RESOLUTION, ReconfigurePath.DEFERRED));
+        }
+        if (modeChanged) {
+            results.add(new ReconfigureResult("all", ReconfigureResult.SETTING_RECORDING_MODE, ReconfigurePath.DEFERRED));
+        }
+
+        int targetFrameRate = appConfig.getActualFrameRate(30);
+        long segmentDurationMs = appConfig.getSegmentDurationMs();
+        boolean watermarkEnabled = next.isTimestampWatermarkEnabled();
+
+        if (useCodecRecording) {
+            for (Map.Entry<String, CodecVideoRecorder> entry : codecRecorders.entrySet()) {
+                String key = entry.getKey();
+                CodecVideoRecorder recorder = entry.getValue();
+                if (framerateChanged) {
+                    recorder.setFrameRate(targetFrameRate);
+                    results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_FRAMERATE, ReconfigurePath.NEXT_FRAME));
+                }
+                if (bitrateChanged || framerateChanged) {
+                    // 码率按分辨率和帧率计算，帧率变化时码率也随之变化
+                    int bitrate = calculateRecordingBitrate(appConfig, key, targetFrameRate);
+                    if (bitrate != recorder.getBitRate()) {
+                        ReconfigurePath path = recorder.updateBitRate(bitrate)
+                                ? ReconfigurePath.ENCODER_PARAMETERS : ReconfigurePath.NEXT_SEGMENT;
+                        results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_BITRATE, path));
+                    }
+                }
+                if (watermarkChanged) {
+                    recorder.setWatermarkEnabled(watermarkEnabled);
+                    results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_WATERMARK, ReconfigurePath.NEXT_FRAME));
+                }
+                if (segmentChanged) {
+                    if (!remoteRecording) {
+                        recorder.setSegmentDuration(segmentDurationMs);
+                    }
+                    results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_SEGMENT_DURATION,
+                            remoteRecording ? ReconfigurePath.DEFERRED : ReconfigurePath.NEXT_SEGMENT));
+                }
+            }
+        } else {
+            // MediaRecorder 不支持录制中修改编码参数，每个分段重新准备 MediaRecorder 时读取新参数
+            for (String key : getRecordingCameraKeys()) {
+                VideoRecorder recorder = recorders.get(key);
+                if (recorder == null) {
+                    continue;
+                }
+                if (framerateChanged) {
+                    recorder.setVideoFrameRate(targetFrameRate);
+                    results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_FRAMERATE, ReconfigurePath.NEXT_SEGMENT));
+                }
+                if (bitrateChanged || framerateChanged) {
+                    int bitrate = calculateRecordingBitrate(appConfig, key, targetFrameRate);
+                    if (bitrate != recorder.getVideoBitrate()) {
+                        recorder.setVideoBitrate(bitrate);
+                        results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_BITRATE, ReconfigurePath.NEXT_SEGMENT));
+                    }
+                }
+                if (watermarkChanged) {
+                    results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_WATERMARK, ReconfigurePath.UNSUPPORTED));
+                }
+                if (segmentChanged) {
+                    if (!remoteRecording) {
+                        recorder.setSegmentDuration(segmentDurationMs);
+                    }
+                    results.add(new ReconfigureResult(key, ReconfigureResult.SETTING_SEGMENT_DURATION,
+                            remoteRecording ? ReconfigurePath.DEFERRED : ReconfigurePath.NEXT_SEGMENT));
+                }
+            }
+        }
+
+        dispatchReconfigureResults(results);
+        return results;
+    }
+
+    private static void addRebuildResult(List<ReconfigureResult> results, String setting) {
+        if (setting != null) {
+            results.add(new ReconfigureResult("all", setting, ReconfigurePath.REBUILD));
+        }
+    }
+
+    /**
+     * 当前参与录制的摄像头 key
+     */
+    private List<String> getRecordingCameraKeys() {
+        List<String> keys = new ArrayList<>();
+        Set<String> enabled = currentEnabledCameras;
+        for (String key : getActiveCameraKeys()) {
+            if (enabled == null || enabled.isEmpty() || enabled.contains(key)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 按摄像头的实际预览分辨率计算录制码率（与开始录制时的计算方式一致）
+     */
+    private int calculateRecordingBitrate(AppConfig appConfig, String key, int frameRate) {
+        Size size = getRecordingSize(cameras.get(key), appConfig);
+        return appConfig.getActualBitrate(size.getWidth(), size.getHeight(), frameRate);
+    }
+
+    /**
+     * 录制分辨率：摄像头的实际预览分辨率，尚不可用时回退到目标分辨率（"默认"时为 1280x800）
+     * MediaRecorder、MediaCodec 两种模式的开始录制和录制中修改参数共用，保证码率计算一致
+     */
+    private static Size getRecordingSize(SingleCamera camera, AppConfig appConfig) {
+        Size previewSize = camera != null ? camera.getPreviewSize() : null;
+        if (previewSize != null) {
+            return previewSize;
+        }
+        int[] fallback = AppConfig.resolveResolution(appConfig.getTargetResolution());
+        return new Size(fallback[0], fallback[1]);
+    }
+
+    /**
+     * 为应用新的分辨率或录制模式重建录制
+     * 停止当前录制后以新的时间戳重新开始；修改分辨率时先重新打开摄像头（预览尺寸在打开摄像头时选择），
+     * 所有摄像头配置完成后再开始录制
+     */
+    private void rebuildRecordingForReconfigure(boolean reopenCameras, boolean modeChanged,
+                                                List<ReconfigureResult> results) {
+        isRebuildingRecording = true;
+        final Set<String> savedEnabledCameras = currentEnabledCameras;
+        AppConfig appConfig = new AppConfig(context);
+        synchronized (sessionLock) {
+            pendingRebuildResults = new ArrayList<>(results);
+        }
+        rebuildFrameRate = appConfig.getActualFrameRate(30);
+        rebuildStopTimeNs = System.nanoTime();
+
+        stopRecording(false);
+        // stopRecording 会清除重建标志，重建完成前保持
+        isRebuildingRecording = true;
+
+        final Runnable restart = new Runnable() {
+            @Override
+            public void run() {
+                if (reconfigureRestart != this) {
+                    // 等待期间用户停止了录制
+                    return;
+                }
+                reconfigureRestart = null;
+                try {
+                    if (modeChanged) {
+                        useCodecRecording = new AppConfig(context).shouldUseCodecRecording();
+                    }
+                    String newTimestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+                    AppLog.d(TAG, "Restarting recording after reconfiguration, new timestamp: " + newTimestamp
+                            + ", codec=" + useCodecRecording);
+                    if (startRecording(newTimestamp, savedEnabledCameras)) {
+                        // 对外部而言录制没有中断：不再次通知首次写入，录制计时继续
+                        hasNotifiedFirstDataWritten = true;
+                        if (timestampUpdateCallback != null) {
+                            timestampUpdateCallback.onTimestampUpdated(newTimestamp);
+                        }
+                    } else {
+                        AppLog.e(TAG, "Failed to restart recording after reconfiguration");
+                        synchronized (sessionLock) {
+                            pendingRebuildResults = null;
+                        }
+                        if (statusCallback != null) {
+                            statusCallback.onCameraStatusUpdate("all", "recording_failed");
+                        }
+                    }
+                } finally {
+                    isRebuildingRecording = false;
+                }
+            }
+        };
+
+        reconfigureRestart = restart;
+        if (!reopenCameras) {
+            mainHandler.postDelayed(restart, 500);
+            return;
+        }
+
+        closeAllCameras();
+        synchronized (sessionLock) {
+            pendingReopenRestart = restart;
+            reopenPendingCameraIds.clear();
+        }
+        openAllCameras();
+        synchronized (sessionLock) {
+            for (String key : activeCameraKeys) {
+                SingleCamera camera = cameras.get(key);
+                if (camera != null) {
+                    reopenPendingCameraIds.add(camera.getCameraId());
+                }
+            }
+        }
+        mainHandler.postDelayed(() -> {
+            synchronized (sessionLock) {
+                if (pendingReopenRestart != restart) {
+                    return;
+                }
+                AppLog.w(TAG, "Camera reopen timeout, starting recording with ready cameras: pending=" + reopenPendingCameraIds);
+                pendingReopenRestart = null;
+                reopenPendingCameraIds.clear();
+            }
+            restart.run();
+        }, REOPEN_TIMEOUT_MS);
+    }
+
+    /**
+     * 摄像头会话配置完成（用于修改分辨率后重新打开摄像头的等待）
+     */
+    private void onCameraReopened(String cameraId) {
+        final Runnable restart;
+        synchronized (sessionLock) {
+            if (pendingReopenRestart == null || !reopenPendingCameraIds.remove(cameraId)
+                    || !reopenPendingCameraIds.isEmpty()) {
+                return;
+            }
+            restart = pendingReopenRestart;
+            pendingReopenRestart = null;
+        }
+        AppLog.d(TAG, "All cameras reopened, restarting recording");
+        // 与开始录制一致，等待会话稳定后再启动
+        mainHandler.postDelayed(restart, 300);
+    }
+
+    /**
+     * 重建后新录制首次写入：按停止到首次写入的间隔估算丢帧数并回调重建结果
+     */
+    private void reportRebuildFramesLost() {
+        final List<ReconfigureResult> pending;
+        synchronized (sessionLock) {
+            pending = pendingRebuildResults;
+            pendingRebuildResults = null;
+        }
+        if (pending == null) {
+            return;
+        }
+        long gapMs = (System.nanoTime() - rebuildStopTimeNs) / 1_000_000;
+        int framesLost = (int) (gapMs * rebuildFrameRate / 1000);
+        AppLog.i(TAG, "Recording rebuilt for reconfiguration, gap " + gapMs + " ms, ~" + framesLost + " frames lost per camera");
+        List<ReconfigureResult> results = new ArrayList<>(pending.size());
+        for (ReconfigureResult result : pending) {
+            results.add(new ReconfigureResult(result.cameraKey, result.setting, result.path, framesLost));
+        }
+        dispatchReconfigureResults(results);
+    }
+
+    private void dispatchReconfigureResults(List<ReconfigureResult> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        for (ReconfigureResult result : results) {
+            AppLog.d(TAG, "Reconfigure: " + result);
+        }
+        final ReconfigureCallback callback = reconfigureCallback;
+        if (callback != null) {
+            mainHandler.post(() -> callback.onReconfigured(results));
+        }
+    }
+
     /**
      * 处理录制重建请求（Watchdog 触发）
      * 
@@ -1477,6 +2097,7 @@ public class MultiCameraManager {
         }
         
         isRecording = false;
+        stopWriteProbe();
     }
     
     /**
@@ -1500,7 +2121,7 @@ public class MultiCameraManager {
             return;
         }
         
-        File targetFile = new File(finalSaveDir, tempFile.getName());
+        File targetFile = MediaLayout.resolve(finalSaveDir, tempFile.getName());
         
         AppLog.d(TAG, "Scheduling relay transfer: " + tempFile.getName() + 
                 " -> " + targetFile.getAbsolutePath());
@@ -1540,6 +2161,17 @@ public class MultiCameraManager {
         transferSpecificTempFiles(targetDir, files);
     }
     
+    /**
+     * 生成第一个分段的文件路径
+     * 中转写入的临时目录保持平铺；直接写入最终目录时按日期/小时分区存放
+     */
+    private File segmentFile(File saveDir, String fileName) {
+        if (useRelayWrite) {
+            return new File(saveDir, fileName);
+        }
+        return MediaLayout.resolveAndCreate(saveDir, fileName);
+    }
+    
     /**
      * 将指定的临时视频文件传输到最终目录
      * 【重要】此方法只传输预先指定的文件列表，避免传输在调用后新创建的文件
@@ -1574,7 +2206,7 @@ public class MultiCameraManager {
                 continue;
             }
             
-            File targetFile = new File(targetDir, tempFile.getName());
+            File targetFile = MediaLayout.resolve(targetDir, tempFile.getName());
             
             transferManager.addTransferTask(tempFile, targetFile, 
                     new FileTransferManager.TransferCallback() {
@@ -1591,12 +2223,77 @@ public class MultiCameraManager {
         }
     }
 
+    /**
+     * 记录并输出摄像头从发起录制到首次写入数据的延迟
+     * 日志中带有启动路径（persistent=常驻会话直接启动，rebuild=重建会话），便于对比优化前后效果
+     */
+    private void reportStartLatency(String cameraId) {
+        Long requestTime = recordingStartRequestTimes.remove(cameraId);
+        if (requestTime == null) {
+            return;  // 分段切换产生的首次写入，或已统计过
+        }
+        long latencyMs = System.currentTimeMillis() - requestTime;
+        lastStartLatencies.put(cameraId, latencyMs);
+        String path = recordingStartPaths.get(cameraId);
+        LatencyStats stats = statsFor(startLatencyStats, path);
+        stats.add(latencyMs);
+        AppLog.d(TAG, "Start-to-first-frame latency for camera " + cameraId + ": " + latencyMs +
+                "ms (path=" + path + ", " + stats + ")");
+    }
+
+    /**
+     * 记录并输出分段切换的间隔：从停止向上一分段发送帧到新分段首次写入
+     */
+    private void reportSegmentSwitchLatency(String cameraId) {
+        Long switchTime = segmentSwitchStartTimes.remove(cameraId);
+        String path = segmentSwitchPaths.remove(cameraId);
+        if (switchTime == null || path == null) {
+            return;  // 录制启动产生的首次写入
+        }
+        long latencyMs = System.currentTimeMillis() - switchTime;
+        LatencyStats stats = statsFor(segmentSwitchStats, path);
+        stats.add(latencyMs);
+        AppLog.d(TAG, "Segment switch gap for camera " + cameraId + ": " + latencyMs +
+                "ms (path=" + path + ", " + stats + ")");
+    }
+
+    private static LatencyStats statsFor(Map<String, LatencyStats> statsByPath, String path) {
+        return statsByPath.computeIfAbsent(path != null ? path : "unknown", key -> new LatencyStats());
+    }
+
+    /**
+     * 获取本进程内启动到首帧写入延迟的统计（按启动路径）
+     * @return 路径（persistent/rebuild） -> 统计
+     */
+    public Map<String, LatencyStats> getStartLatencyStats() {
+        return new LinkedHashMap<>(startLatencyStats);
+    }
+
+    /**
+     * 获取本进程内分段切换间隔的统计（按切换路径）
+     * 关闭常驻录制会话（AppConfig.setPersistentRecordSessionEnabled(false)）即可得到 rebuild 路径的对照数据
+     * @return 路径（persistent/rebuild） -> 统计
+     */
+    public Map<String, LatencyStats> getSegmentSwitchLatencyStats() {
+        return new LinkedHashMap<>(segmentSwitchStats);
+    }
+
+    /**
+     * 获取最近一次录制各摄像头的启动到首帧写入延迟
+     * 注意：首次写入通过文件大小轮询检测，精度约为 500ms
+     * @return cameraId -> 延迟（毫秒）
+     */
+    public Map<String, Long> getLastStartLatencies() {
+        return new LinkedHashMap<>(lastStartLatencies);
+    }
+
     /**
      * 释放所有资源
      * 添加完善的清理逻辑和异常保护
      */
     public void release() {
         AppLog.d(TAG, "Releasing MultiCameraManager resources");
+        ConfigService.getInstance(context).removeListener(recordingConfigListener);
         
         try {
             // 1. 首先清理所有待执行的 Handler 任务（防止内存泄漏）
@@ -1609,6 +2306,7 @@ public class MultiCameraManager {
                 sessionTimeoutRunnable = null;
             }
             pendingRecordingStart = null;
+            pendingReopenRestart = null;
             
             // 3. 重置会话配置计数器
             synchronized (sessionLock) {
@@ -1630,10 +2328,11 @@ public class MultiCameraManager {
                 AppLog.e(TAG, "Error closing cameras during release", e);
             }
             
-            // 6. 释放 VideoRecorder
+            // 6. 释放 VideoRecorder（摄像头已关闭，可以安全释放持久化 Surface）
             for (VideoRecorder recorder : recorders.values()) {
                 try {
                     recorder.release();
+                    recorder.releasePersistentSurface();
                 } catch (Exception e) {
                     AppLog.e(TAG, "Error releasing VideoRecorder", e);
                 }
@@ -1652,10 +2351,15 @@ public class MultiCameraManager {
             AppLog.e(TAG, "Unexpected error during release", e);
         } finally {
             // 8. 清理集合（确保执行）
+            // 异常路径上也要释放持久化 Surface（已释放时为空操作）
+            for (VideoRecorder recorder : recorders.values()) {
+                recorder.releasePersistentSurface();
+            }
             cameras.clear();
             recorders.clear();
             codecRecorders.clear();
             isRecording = false;
+            stopWriteProbe();
             isRebuildingRecording = false;
             currentRecordingTimestamp = null;
             currentEnabledCameras = null;
@@ -38,6 +38,15 @@ public interface RecordCallback {
      */
     void onSegmentSwitch(String cameraId, int newSegmentIndex, String completedFilePath);
 
+    /**
+     * 分段文件已关闭并通过校验（分段切换或停止录制时）
+     * 用于更新媒体目录，文件此时已完整可读
+     *
+     * @param cameraId 相机ID
+     * @param filePath 已关闭的文件路径
+     */
+    void onSegmentCompleted(String cameraId, String filePath);
+
     /**
      * 损坏文件被删除
      * @param cameraId 相机ID
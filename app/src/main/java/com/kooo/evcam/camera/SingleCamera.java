@@ -3,7 +3,10 @@ package com.kooo.evcam.camera;
 
 import com.kooo.evcam.AppConfig;
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.ConfigSnapshot;
 import com.kooo.evcam.StorageHelper;
+import com.kooo.evcam.storage.MediaCatalog;
+import com.kooo.evcam.storage.MediaLayout;
 import android.content.Context;
 import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
@@ -33,9 +36,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 单个摄像头管理类
@@ -58,6 +67,14 @@ public class SingleCamera {
 
     private Size previewSize;
     private Surface recordSurface;  // 录制Surface
+    private boolean recordSurfacePersistent = false;  // 录制 Surface 是否为持久化 Surface（会话常驻）
+    private volatile boolean recordTargetEnabled = true;  // 重复请求是否包含录制 Surface
+    private volatile Surface sessionRecordSurface;  // 当前会话中已配置的录制 Surface
+    // 录制 Surface -> 以它为输出且尚未关闭的会话数（会话关闭前不能释放该 Surface）
+    private final Map<Surface, Integer> openSessionOutputs = new HashMap<>();
+    // 等待引用它的会话关闭后再释放的 Surface
+    private final Set<Surface> surfacesPendingRelease = new HashSet<>();
+    private CameraCaptureSession.CaptureCallback frameCaptureCallback;  // 帧统计回调（会话配置后创建）
     private Surface previewSurface;  // 预览Surface（缓存以避免重复创建）
     private ImageReader imageReader;  // 用于拍照的ImageReader
     private boolean singleOutputMode = false;  // 单一输出模式（用于不支持多路输出的车机平台）
@@ -251,6 +268,8 @@ public class SingleCamera {
     public void setRecordSurface(Surface surface, boolean isCodec) {
         this.recordSurface = surface;
         this.isCodecRecording = isCodec;
+        this.recordSurfacePersistent = false;
+        this.recordTargetEnabled = true;
         if (surface != null) {
             AppLog.d(TAG, "Record surface set for camera " + cameraId + ": " + surface + 
                     ", isValid=" + surface.isValid() + ", mode=" + (isCodec ? "Codec" : "MediaRecorder"));
@@ -264,9 +283,161 @@ public class SingleCamera {
      */
     public void clearRecordSurface() {
         this.recordSurface = null;
+        this.recordSurfacePersistent = false;
+        this.recordTargetEnabled = true;
         AppLog.d(TAG, "Record surface cleared for camera " + cameraId);
     }
 
+    /**
+     * 设置持久化录制 Surface（MediaRecorder 模式）
+     * 该 Surface 会常驻在会话输出中，之后开始/停止录制只切换重复请求的目标，不再重建会话
+     * 调用后需要 recreateSession() 一次以将其加入会话
+     */
+    public void setPersistentRecordSurface(Surface surface) {
+        setRecordSurface(surface, false);
+        this.recordSurfacePersistent = surface != null;
+    }
+
+    /**
+     * 在不再有会话以该 Surface 为输出后释放它（持久化录制 Surface 由 VideoRecorder 交给这里释放）
+     * 会话仍在使用（包括正在关闭、尚未回调 onClosed 的会话）时延迟到会话关闭后释放，
+     * 避免相机向已释放的 Surface 输出帧
+     */
+    public void releaseSurfaceWhenDetached(Surface surface) {
+        if (surface == null) {
+            return;
+        }
+        synchronized (openSessionOutputs) {
+            if (openSessionOutputs.containsKey(surface)) {
+                surfacesPendingRelease.add(surface);
+                AppLog.d(TAG, "Camera " + cameraId + " surface release deferred until session closed: " + surface);
+                return;
+            }
+        }
+        releaseSurface(surface);
+    }
+
+    /**
+     * 以 surface 为输出的会话即将创建
+     */
+    private void retainSessionOutput(Surface surface) {
+        if (surface == null) {
+            return;
+        }
+        synchronized (openSessionOutputs) {
+            Integer count = openSessionOutputs.get(surface);
+            openSessionOutputs.put(surface, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * 以 surface 为输出的会话已关闭（或创建失败），没有其他会话引用且已请求释放时释放它
+     */
+    private void releaseSessionOutput(Surface surface) {
+        if (surface == null) {
+            return;
+        }
+        boolean release;
+        synchronized (openSessionOutputs) {
+            Integer count = openSessionOutputs.get(surface);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                openSessionOutputs.put(surface, count - 1);
+                return;
+            }
+            openSessionOutputs.remove(surface);
+            release = surfacesPendingRelease.remove(surface);
+        }
+        if (release) {
+            releaseSurface(surface);
+        }
+    }
+
+    /**
+     * 相机设备已关闭，所有会话都已失效，释放全部等待中的 Surface
+     */
+    private void releasePendingSurfaces() {
+        List<Surface> pending;
+        synchronized (openSessionOutputs) {
+            pending = new ArrayList<>(surfacesPendingRelease);
+            surfacesPendingRelease.clear();
+            openSessionOutputs.clear();
+        }
+        for (Surface surface : pending) {
+            releaseSurface(surface);
+        }
+    }
+
+    private void releaseSurface(Surface surface) {
+        try {
+            surface.release();
+            AppLog.d(TAG, "Camera " + cameraId + " released detached surface: " + surface);
+        } catch (Exception e) {
+            AppLog.w(TAG, "Camera " + cameraId + " failed to release surface: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 检查指定的录制 Surface 是否已配置在当前会话中
+     * 为 true 时可直接通过 startRecordTarget() 开始向其发送帧，无需重建会话
+     */
+    public boolean isRecordSurfaceAttached(Surface surface) {
+        return surface != null && captureSession != null && cameraDevice != null
+                && recordSurfacePersistent && sessionRecordSurface == surface && surface.isValid();
+    }
+
+    /**
+     * 录制 Surface 是否为常驻会话的持久化 Surface
+     */
+    public boolean isRecordSurfacePersistent() {
+        return recordSurfacePersistent;
+    }
+
+    /**
+     * 重复请求当前是否包含录制 Surface
+     */
+    public boolean isRecordTargetEnabled() {
+        return recordTargetEnabled;
+    }
+
+    /**
+     * 恢复向持久化录制 Surface 发送帧（只替换重复请求，不重建会话）
+     * @return true 如果成功
+     */
+    public boolean startRecordTarget() {
+        if (captureSession == null || cameraDevice == null || previewSurface == null || sessionRecordSurface == null) {
+            AppLog.w(TAG, "Camera " + cameraId + " cannot start record target: session/device/surface not ready");
+            return false;
+        }
+
+        try {
+            CaptureRequest.Builder recordBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            recordBuilder.addTarget(previewSurface);
+            recordBuilder.addTarget(sessionRecordSurface);
+            if (imageAdjustEnabled) {
+                applyImageAdjustParamsFromConfig(recordBuilder);
+            }
+            currentRequestBuilder = recordBuilder;
+            captureSession.setRepeatingRequest(recordBuilder.build(), frameCaptureCallback, backgroundHandler);
+            recordTargetEnabled = true;
+            AppLog.d(TAG, "Camera " + cameraId + " record target resumed (no session rebuild)");
+            return true;
+        } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+            AppLog.e(TAG, "Camera " + cameraId + " failed to resume record target", e);
+            return false;
+        }
+    }
+
+    /**
+     * 停止向持久化录制 Surface 发送帧（预览继续，会话保持不变）
+     */
+    public void stopRecordTarget() {
+        recordTargetEnabled = false;
+        switchToPreviewOnlyMode();
+    }
+
     /**
      * 暂停向录制 Surface 发送帧（旧方法，保留兼容性）
      * 注意：此方法会停止整个预览，导致画面卡顿，建议使用 switchToPreviewOnlyMode() 代替
@@ -330,6 +501,10 @@ public class SingleCamera {
             
             // 替换当前的重复请求（预览继续，但不再向录制 Surface 发送帧）
             captureSession.setRepeatingRequest(previewOnlyBuilder.build(), null, backgroundHandler);
+            if (!recordTargetEnabled) {
+                // 持久化会话空闲期间，后续参数调节应基于仅预览请求，避免重新向录制 Surface 发送帧
+                currentRequestBuilder = previewOnlyBuilder;
+            }
             AppLog.d(TAG, "Camera " + cameraId + " switched to preview-only mode (preview continues, recording paused)");
             return true;
             
@@ -887,6 +1062,7 @@ public class SingleCamera {
      * 创建预览会话
      */
     private void createCameraPreviewSession() {
+        Surface retainedRecordOutput = null;  // 会话创建调用返回前由这里负责归还引用
         try {
             AppLog.d(TAG, "createCameraPreviewSession: Starting for camera " + cameraId);
 
@@ -933,7 +1109,9 @@ public class SingleCamera {
             AppLog.d(TAG, "Camera " + cameraId + " Surface obtained: " + surface);
 
             AppLog.d(TAG, "Camera " + cameraId + " Creating capture request...");
-            int template = (recordSurface != null) ? CameraDevice.TEMPLATE_RECORD : CameraDevice.TEMPLATE_PREVIEW;
+            // 持久化录制 Surface 在未录制时只加入会话输出，不作为请求目标
+            final boolean targetRecordSurface = recordSurface != null && recordTargetEnabled;
+            int template = targetRecordSurface ? CameraDevice.TEMPLATE_RECORD : CameraDevice.TEMPLATE_PREVIEW;
             final CaptureRequest.Builder previewRequestBuilder = cameraDevice.createCaptureRequest(template);
             
             // 保存请求构建器引用（用于实时更新亮度/降噪参数）
@@ -946,6 +1124,7 @@ public class SingleCamera {
             
             // 准备所有输出Surface
             java.util.List<Surface> surfaces = new java.util.ArrayList<>();
+            Surface configuredRecordSurface = null;
 
             // 单一输出模式处理（用于 L6/L7 等不支持多路输出的车机平台）
             if (singleOutputMode && recordSurface != null && recordSurface.isValid()) {
@@ -973,8 +1152,12 @@ public class SingleCamera {
                         AppLog.w(TAG, "Camera " + cameraId + " Skipping invalid record surface to avoid session configuration failure");
                     } else {
                         surfaces.add(recordSurface);
-                        previewRequestBuilder.addTarget(recordSurface);
-                        AppLog.d(TAG, "Added record surface to camera " + cameraId + " (isValid=" + isValid + ")");
+                        configuredRecordSurface = recordSurface;
+                        if (targetRecordSurface) {
+                            previewRequestBuilder.addTarget(recordSurface);
+                        }
+                        AppLog.d(TAG, "Added record surface to camera " + cameraId + " (isValid=" + isValid +
+                                ", persistent=" + recordSurfacePersistent + ", targeted=" + targetRecordSurface + ")");
                     }
                 }
             }
@@ -991,8 +1174,26 @@ public class SingleCamera {
             }
 
             // 创建会话
+            final Surface sessionRecordOutput = configuredRecordSurface;
             AppLog.d(TAG, "Camera " + cameraId + " Creating capture session with " + surfaces.size() + " surfaces...");
+            retainSessionOutput(sessionRecordOutput);
+            retainedRecordOutput = sessionRecordOutput;
             cameraDevice.createCaptureSession(surfaces, new CameraCaptureSession.StateCallback() {
+                private boolean outputReleased = false;
+
+                // 会话关闭或配置失败时归还录制 Surface 的引用（只归还一次）
+                private void releaseOutputOnce() {
+                    if (!outputReleased) {
+                        outputReleased = true;
+                        releaseSessionOutput(sessionRecordOutput);
+                    }
+                }
+
+                @Override
+                public void onClosed(@NonNull CameraCaptureSession session) {
+                    releaseOutputOnce();
+                }
+
                 @Override
                 public void onConfigured(@NonNull CameraCaptureSession session) {
                     AppLog.d(TAG, "Camera " + cameraId + " Session configured!");
@@ -1015,6 +1216,7 @@ public class SingleCamera {
                     }
 
                     captureSession = session;
+                    sessionRecordSurface = sessionRecordOutput;
                     try {
                         // 重置帧计数
                         frameCount = 0;
@@ -1036,12 +1238,14 @@ public class SingleCamera {
                                 }
                                 
                                 if (now - lastFrameLogTime >= FRAME_LOG_INTERVAL_MS) {
-                                    long elapsed = now - lastFrameLogTime;
-                                    float fps = frameCount * 1000f / elapsed;
-                                    boolean hasRecordSurface = recordSurface != null;
-                                    AppLog.d(TAG, "Camera " + cameraId + " FRAME STATS: " + frameCount + " frames in " +
-                                            (elapsed / 1000) + "s (FPS: " + String.format("%.1f", fps) + ")" +
-                                            ", recordSurface=" + (hasRecordSurface ? "ACTIVE" : "null"));
+                                    if (AppLog.isLoggable(TAG, Log.DEBUG)) {
+                                        long elapsed = now - lastFrameLogTime;
+                                        float fps = frameCount * 1000f / elapsed;
+                                        boolean hasRecordSurface = recordSurface != null;
+                                        AppLog.d(TAG, "Camera " + cameraId + " FRAME STATS: " + frameCount + " frames in " +
+                                                (elapsed / 1000) + "s (FPS: " + String.format("%.1f", fps) + ")" +
+                                                ", recordSurface=" + (hasRecordSurface ? "ACTIVE" : "null"));
+                                    }
                                     frameCount = 0;
                                     lastFrameLogTime = now;
                                 }
@@ -1055,6 +1259,8 @@ public class SingleCamera {
                             }
                         };
 
+                        frameCaptureCallback = captureCallback;
+
                         // 开始预览
                         AppLog.d(TAG, "Camera " + cameraId + " Setting repeating request...");
                         
@@ -1080,6 +1286,7 @@ public class SingleCamera {
 
                 @Override
                 public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                    releaseOutputOnce();
                     AppLog.e(TAG, "Failed to configure camera " + cameraId + " session!");
                     AppLog.e(TAG, "Camera " + cameraId + " session configuration failed. This may indicate:");
                     AppLog.e(TAG, "  1. Device does not support simultaneous preview and recording surfaces");
@@ -1092,6 +1299,8 @@ public class SingleCamera {
                         // 清除录制 Surface，让重试时只使用预览 Surface
                         // 注意：不恢复 recordSurface，让上层（MultiCameraManager）重新管理录制状态
                         recordSurface = null;
+                        recordSurfacePersistent = false;
+                        recordTargetEnabled = true;
                         // 延迟重试，避免立即操作
                         if (backgroundHandler != null) {
                             backgroundHandler.postDelayed(() -> {
@@ -1109,12 +1318,15 @@ public class SingleCamera {
                     }
                 }
             }, backgroundHandler);
+            retainedRecordOutput = null;  // 之后由会话回调归还
 
         } catch (CameraAccessException e) {
+            releaseSessionOutput(retainedRecordOutput);
             AppLog.e(TAG, "Failed to create preview session for camera " + cameraId, e);
             AppLog.e(TAG, "Exception details: " + e.getMessage());
             e.printStackTrace();
         } catch (IllegalArgumentException e) {
+            releaseSessionOutput(retainedRecordOutput);
             // 特殊处理 "Surface was abandoned" 错误
             String message = e.getMessage();
             if (message != null && message.contains("abandoned")) {
@@ -1123,6 +1335,8 @@ public class SingleCamera {
                 if (recordSurface != null) {
                     AppLog.w(TAG, "Camera " + cameraId + " clearing abandoned recordSurface and retrying");
                     recordSurface = null;
+                    recordSurfacePersistent = false;
+                    recordTargetEnabled = true;
                     // 延迟重试创建会话（只使用预览 Surface）
                     if (backgroundHandler != null) {
                         backgroundHandler.postDelayed(() -> {
@@ -1138,6 +1352,7 @@ public class SingleCamera {
             AppLog.e(TAG, "Unexpected IllegalArgumentException creating session for camera " + cameraId, e);
             e.printStackTrace();
         } catch (Exception e) {
+            releaseSessionOutput(retainedRecordOutput);
             AppLog.e(TAG, "Unexpected exception creating session for camera " + cameraId, e);
             AppLog.e(TAG, "Exception details: " + e.getMessage());
             e.printStackTrace();
@@ -1156,6 +1371,7 @@ public class SingleCamera {
                     AppLog.d(TAG, "Camera " + cameraId + " ignored exception while closing session: " + e.getMessage());
                 }
                 captureSession = null;
+                sessionRecordSurface = null;
             }
             // 注意：不在这里释放 previewSurface，因为 createCameraPreviewSession 会处理
             // 减少延迟时间：Camera2 的 createCaptureSession 会自动处理旧 session
@@ -1267,7 +1483,7 @@ public class SingleCamera {
 
         // 使用传入的时间戳命名：yyyyMMdd_HHmmss_摄像头位置.jpg
         String position = (cameraPosition != null) ? cameraPosition : cameraId;
-        File photoFile = new File(photoDir, timestamp + "_" + position + ".jpg");
+        File photoFile = MediaLayout.resolveAndCreate(photoDir, timestamp + "_" + position + ".jpg");
 
         // 检查是否需要添加时间角标
         android.graphics.Bitmap finalBitmap = bitmap;
@@ -1277,10 +1493,12 @@ public class SingleCamera {
         }
 
         FileOutputStream output = null;
+        boolean saved = false;
         try {
             output = new FileOutputStream(photoFile);
             finalBitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, 90, output);
             output.flush();
+            saved = true;
             AppLog.i(TAG, "Photo saved: " + photoFile.getAbsolutePath());
         } catch (IOException e) {
             if (e.getMessage() != null && e.getMessage().contains("ENOSPC")) {
@@ -1307,6 +1525,10 @@ public class SingleCamera {
                 finalBitmap.recycle();
             }
         }
+
+        if (saved) {
+            MediaCatalog.getInstance(context).onMediaFileClosed(photoFile, MediaCatalog.TYPE_PHOTO);
+        }
     }
 
     /**
@@ -1412,6 +1634,8 @@ public class SingleCamera {
                 }
                 cameraDevice = null;
             }
+            // 设备已关闭，等待会话关闭的录制 Surface 可以释放了
+            releasePendingSurfaces();
 
             // 释放预览 Surface
             if (previewSurface != null) {
@@ -1633,10 +1857,11 @@ public class SingleCamera {
      */
     private void applyImageAdjustParamsFromConfig(CaptureRequest.Builder requestBuilder) {
         try {
-            AppConfig appConfig = new AppConfig(context);
+            // 从同一个配置快照读取全部参数，避免读到修改到一半的组合
+            ConfigSnapshot config = new AppConfig(context).getSnapshot();
             
             // 应用曝光补偿
-            int exposureComp = appConfig.getExposureCompensation();
+            int exposureComp = config.getExposureCompensation();
             if (exposureComp != 0) {
                 Range<Integer> range = getExposureCompensationRange();
                 if (range != null) {
@@ -1647,7 +1872,7 @@ public class SingleCamera {
             }
             
             // 应用白平衡模式
-            int awbMode = appConfig.getAwbMode();
+            int awbMode = config.getAwbMode();
             if (awbMode >= 0) {
                 int[] supportedModes = getSupportedAwbModes();
                 if (supportedModes != null && isModeSupported(supportedModes, awbMode)) {
@@ -1657,7 +1882,7 @@ public class SingleCamera {
             }
             
             // 应用色调映射模式
-            int tonemapMode = appConfig.getTonemapMode();
+            int tonemapMode = config.getTonemapMode();
             if (tonemapMode >= 0) {
                 int[] supportedModes = getSupportedTonemapModes();
                 if (supportedModes != null && isModeSupported(supportedModes, tonemapMode)) {
@@ -1667,7 +1892,7 @@ public class SingleCamera {
             }
             
             // 应用边缘增强模式
-            int edgeMode = appConfig.getEdgeMode();
+            int edgeMode = config.getEdgeMode();
             if (edgeMode >= 0) {
                 int[] supportedModes = getSupportedEdgeModes();
                 if (supportedModes != null && isModeSupported(supportedModes, edgeMode)) {
@@ -1677,7 +1902,7 @@ public class SingleCamera {
             }
             
             // 应用降噪模式
-            int noiseReductionMode = appConfig.getNoiseReductionMode();
+            int noiseReductionMode = config.getNoiseReductionMode();
             if (noiseReductionMode >= 0) {
                 int[] supportedModes = getSupportedNoiseReductionModes();
                 if (supportedModes != null && isModeSupported(supportedModes, noiseReductionMode)) {
@@ -1687,7 +1912,7 @@ public class SingleCamera {
             }
             
             // 应用特效模式
-            int effectMode = appConfig.getEffectMode();
+            int effectMode = config.getEffectMode();
             if (effectMode >= 0) {
                 int[] supportedModes = getSupportedEffectModes();
                 if (supportedModes != null && isModeSupported(supportedModes, effectMode)) {
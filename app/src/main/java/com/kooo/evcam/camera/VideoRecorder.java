@@ -2,6 +2,8 @@ package com.kooo.evcam.camera;
 
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.storage.MediaLayout;
+import android.media.MediaCodec;
 import android.media.MediaRecorder;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -37,6 +39,11 @@ public class VideoRecorder {
     private final String cameraId;
     private MediaRecorder mediaRecorder;
     private Surface cachedSurface;  // 缓存的录制 Surface，确保整个录制周期使用同一个对象
+    private Surface persistentSurface;  // 持久化输入 Surface（跨 MediaRecorder 实例复用，会话无需重建）
+    private boolean persistentSurfaceEnabled = false;  // 是否使用持久化输入 Surface
+    private int persistentSurfaceWidth;  // 持久化 Surface 对应的录制宽度
+    private int persistentSurfaceHeight;  // 持久化 Surface 对应的录制高度
+    private SurfaceReleaser surfaceReleaser;  // 持久化 Surface 的释放方式（为 null 时直接释放）
     private RecordCallback callback;
     private final AtomicBoolean isRecording = new AtomicBoolean(false);  // 使用 AtomicBoolean 确保线程安全
     private volatile RecordingState state = RecordingState.IDLE;  // 录制状态
@@ -44,12 +51,12 @@ public class VideoRecorder {
     private boolean waitingForSessionReconfiguration = false;  // 等待会话重新配置
     private String currentFilePath;
     
-    // 录制参数（可配置）
-    private int videoBitrate = 3000000;  // 默认 3Mbps
-    private int videoFrameRate = 30;     // 默认 30fps
+    // 录制参数（可配置；录制中修改时在下一分段重新准备 MediaRecorder 时生效）
+    private volatile int videoBitrate = 3000000;  // 默认 3Mbps
+    private volatile int videoFrameRate = 30;     // 默认 30fps
 
     // 分段录制相关
-    private long segmentDurationMs = 60000;  // 分段时长，默认1分钟，可通过 setSegmentDuration 配置
+    private volatile long segmentDurationMs = 60000;  // 分段时长，默认1分钟，可通过 setSegmentDuration 配置
     private static final long SEGMENT_DURATION_COMPENSATION_MS = 0;  // 分段时长补偿（H3修复后定时器更精确，不再需要补偿）
     private static final long FILE_SIZE_CHECK_INTERVAL_MS = 3000;  // 每3秒检查一次文件大小（加快检测）
     private static final long FIRST_CHECK_DELAY_MS = 500;  // 首次检查延迟（更快检测首次写入）
@@ -63,7 +70,8 @@ public class VideoRecorder {
     private Runnable fileSizeCheckRunnable;  // 文件大小检查任务
     private Runnable pendingSegmentSwitchRunnable;  // 待执行的分段切换任务（用于取消）
     private int segmentIndex = 0;
-    private String saveDirectory;  // 保存目录
+    private String saveDirectory;  // 保存目录（布局根目录）
+    private boolean partitionedLayout;  // 是否使用日期/小时分区布局
     private String cameraPosition;  // 摄像头位置（front/back/left/right）
     private int recordWidth;
     private int recordHeight;
@@ -117,6 +125,70 @@ public class VideoRecorder {
         AppLog.d(TAG, "Camera " + cameraId + " frame rate set to " + frameRate + " fps");
     }
 
+    /**
+     * 设置是否使用持久化输入 Surface
+     * 启用后每个 MediaRecorder 都通过 setInputSurface() 绑定同一个 Surface，
+     * 相机会话只需配置一次，开始/停止录制和分段切换只需修改重复请求的目标
+     * @param enabled true 表示启用
+     */
+    public void setPersistentSurfaceEnabled(boolean enabled) {
+        if (this.persistentSurfaceEnabled != enabled) {
+            AppLog.d(TAG, "Camera " + cameraId + " persistent input surface " + (enabled ? "enabled" : "disabled"));
+        }
+        this.persistentSurfaceEnabled = enabled;
+        if (!enabled) {
+            releasePersistentSurface();
+        }
+    }
+
+    /**
+     * 持久化 Surface 释放器
+     * 持久化 Surface 是相机会话的输出，必须等会话关闭后才能释放（由 SingleCamera 实现）
+     */
+    public interface SurfaceReleaser {
+        void releaseWhenDetached(Surface surface);
+    }
+
+    /**
+     * 设置持久化 Surface 的释放器
+     */
+    public void setSurfaceReleaser(SurfaceReleaser releaser) {
+        this.surfaceReleaser = releaser;
+    }
+
+    /**
+     * 当前录制 Surface 是否为持久化输入 Surface
+     */
+    public boolean isUsingPersistentSurface() {
+        return persistentSurfaceEnabled && persistentSurface != null && cachedSurface == persistentSurface;
+    }
+
+    /**
+     * 释放持久化输入 Surface
+     * 注意：调用前应确保相机会话已不再使用该 Surface
+     */
+    public void releasePersistentSurface() {
+        if (persistentSurface != null) {
+            if (cachedSurface == persistentSurface) {
+                cachedSurface = null;
+            }
+            Surface surface = persistentSurface;
+            persistentSurface = null;
+            if (surfaceReleaser != null) {
+                // 会话可能仍以它为输出，由相机在会话关闭后释放
+                surfaceReleaser.releaseWhenDetached(surface);
+                AppLog.d(TAG, "Camera " + cameraId + " persistent input surface detached");
+                return;
+            }
+            try {
+                surface.release();
+            } catch (Exception e) {
+                AppLog.w(TAG, "Camera " + cameraId + " failed to release persistent surface: " + e.getMessage());
+            }
+            AppLog.d(TAG, "Camera " + cameraId + " persistent input surface released");
+        }
+    }
+
     /**
      * 获取当前配置的码率
      */
@@ -242,11 +314,35 @@ public class VideoRecorder {
         mediaRecorder.setVideoFrameRate(videoFrameRate);
         mediaRecorder.setVideoSize(width, height);
         mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+        
+        // 持久化输入 Surface：必须在 prepare() 之前绑定
+        if (persistentSurfaceEnabled) {
+            if (persistentSurface != null && (persistentSurfaceWidth != width || persistentSurfaceHeight != height)) {
+                // 分辨率变化，旧 Surface 的缓冲区尺寸与会话输出不再匹配，需要重建
+                AppLog.d(TAG, "Camera " + cameraId + " record size changed, recreating persistent surface");
+                releasePersistentSurface();
+            }
+            if (persistentSurface == null) {
+                persistentSurface = MediaCodec.createPersistentInputSurface();
+                persistentSurfaceWidth = width;
+                persistentSurfaceHeight = height;
+                AppLog.d(TAG, "Camera " + cameraId + " persistent input surface created: " + persistentSurface);
+            }
+            mediaRecorder.setInputSurface(persistentSurface);
+        }
+        
         mediaRecorder.prepare();
         
         AppLog.d(TAG, "Camera " + cameraId + " MediaRecorder configured: " + width + "x" + height + 
                 " @ " + videoFrameRate + "fps, " + (videoBitrate / 1000) + " Kbps");
         
+        if (persistentSurfaceEnabled) {
+            // 使用持久化 Surface 时 MediaRecorder.getSurface() 不可用，直接缓存持久化 Surface
+            cachedSurface = persistentSurface;
+            AppLog.d(TAG, "Camera " + cameraId + " MediaRecorder bound to persistent surface: " + cachedSurface);
+            return;
+        }
+        
         // 准备后立即缓存 Surface，确保整个录制周期使用同一个对象
         // 这对于某些车机平台很重要，因为 Camera2 API 可能无法识别不同的 Surface 包装对象
         cachedSurface = mediaRecorder.getSurface();
@@ -278,7 +374,8 @@ public class VideoRecorder {
 
             // 从文件路径中提取保存目录和摄像头位置
             File file = new File(filePath);
-            this.saveDirectory = file.getParent();
+            this.saveDirectory = MediaLayout.rootOf(file).getAbsolutePath();
+            this.partitionedLayout = MediaLayout.isPartitioned(file);
             String fileName = file.getName();
             // 文件名格式：日期_时间_摄像头位置.mp4
             // 提取摄像头位置（最后一个下划线后的部分，去掉.mp4）
@@ -319,6 +416,10 @@ public class VideoRecorder {
     private String generateSegmentPath() {
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
         String fileName = timestamp + "_" + cameraPosition + ".mp4";
+        if (partitionedLayout) {
+            // 按日期/小时分区存放，跨小时的分段写入新的分区目录
+            return MediaLayout.resolveAndCreate(new File(saveDirectory), fileName).getAbsolutePath();
+        }
         return new File(saveDirectory, fileName).getAbsolutePath();
     }
 
@@ -473,7 +574,7 @@ public class VideoRecorder {
                     noWriteCount = 0;
                     if (!hasFirstWrite) {
                         hasFirstWrite = true;
-                        AppLog.d(TAG, "Camera " + cameraId + " first VALID write detected! Size: " + currentSize + " bytes (>" + MIN_VALID_FILE_SIZE + ")");
+                        AppLog.d(TAG, "Camera {} first VALID write detected! Size: {} bytes (>{})", cameraId, currentSize, MIN_VALID_FILE_SIZE);
                         // 取消首次写入超时检查
                         cancelFirstWriteTimeout();
                         
@@ -488,11 +589,11 @@ public class VideoRecorder {
                             callback.onFirstDataWritten(cameraId);
                         }
                     }
-                    AppLog.d(TAG, "Camera " + cameraId + " file size check: " + currentSize + " bytes (" + (currentSize / 1024) + " KB), increase: " + sizeIncrease + " bytes");
+                    AppLog.d(TAG, "Camera {} file size check: {} bytes ({} KB), increase: {} bytes", cameraId, currentSize, currentSize / 1024, sizeIncrease);
                 } else if (hasNewWrite && !hasFirstWrite) {
                     // 文件大小增加了但未超过阈值（可能只是 MP4 文件头）
                     // 不算首次有效写入，继续等待真正的视频数据
-                    AppLog.d(TAG, "Camera " + cameraId + " file header written: " + currentSize + " bytes, waiting for real video data (need >" + MIN_VALID_FILE_SIZE + ")...");
+                    AppLog.d(TAG, "Camera {} file header written: {} bytes, waiting for real video data (need >{})...", cameraId, currentSize, MIN_VALID_FILE_SIZE);
                 } else if (!hasNewWrite) {
                     // 无新写入：增加计数器
                     noWriteCount++;
@@ -730,6 +831,9 @@ public class VideoRecorder {
             // 【第五步】通知外部需要重新配置相机会话（因为 MediaRecorder 的 Surface 已经改变）
             // 外部需要调用 startRecording() 来启动新段的录制
             if (callback != null) {
+                if (completedFileValid) {
+                    callback.onSegmentCompleted(cameraId, completedFilePath);
+                }
                 // 只传递有效的已完成文件路径
                 callback.onSegmentSwitch(cameraId, segmentIndex, completedFileValid ? completedFilePath : null);
             }
@@ -866,6 +970,9 @@ public class VideoRecorder {
             deletedFiles = validateAndCleanupAllFiles();
 
             if (callback != null) {
+                if (currentFilePath != null && new File(currentFilePath).exists()) {
+                    callback.onSegmentCompleted(cameraId, currentFilePath);
+                }
                 callback.onRecordStop(cameraId);
             }
         } catch (RuntimeException e) {
@@ -1020,6 +1127,9 @@ public class VideoRecorder {
         isRecording.set(false);
         waitingForSessionReconfiguration = false;
         releaseMediaRecorder();
+        // Watchdog 重建时不复用持久化 Surface，由重建流程重新创建并配置会话
+        // （旧 Surface 在引用它的会话关闭后才真正释放，见 SurfaceReleaser）
+        releasePersistentSurface();
         
         // 【重要】验证并清理损坏文件（在清除路径记录之前）
         List<String> deletedFiles = validateAndCleanupAllFiles();
@@ -2,6 +2,8 @@ package com.kooo.evcam.dingtalk;
 
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemoteApiException;
+import com.kooo.evcam.remote.upload.ScheduledFileBody;
 import android.util.Log;
 
 import com.google.gson.Gson;
@@ -68,7 +70,7 @@ public class DingTalkApiClient {
             AppLog.d(TAG, "Access Token 响应: " + responseBody);
 
             if (!response.isSuccessful()) {
-                throw new IOException("获取 Access Token 失败: " + response.code() + " - " + responseBody);
+                throw RemoteApiException.fromResponse("获取 Access Token ", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
@@ -78,7 +80,7 @@ public class DingTalkApiClient {
                 int errcode = jsonResponse.get("errcode").getAsInt();
                 if (errcode != 0) {
                     String errmsg = jsonResponse.has("errmsg") ? jsonResponse.get("errmsg").getAsString() : "Unknown error";
-                    throw new IOException("获取 Access Token 失败: errcode=" + errcode + ", errmsg=" + errmsg);
+                    throw RemoteApiException.rejected("获取 Access Token 失败: errcode=" + errcode + ", errmsg=" + errmsg);
                 }
             }
 
@@ -93,7 +95,7 @@ public class DingTalkApiClient {
                 AppLog.d(TAG, "Access Token 获取成功");
                 return accessToken;
             } else {
-                throw new IOException("响应中没有 access_token: " + responseBody);
+                throw RemoteApiException.rejected("响应中没有 access_token: " + responseBody);
             }
         }
     }
@@ -103,7 +105,7 @@ public class DingTalkApiClient {
      */
     public void sendMessageViaWebhook(String webhookUrl, String text) throws IOException {
         if (webhookUrl == null || webhookUrl.isEmpty()) {
-            throw new IOException("Webhook URL 为空");
+            throw RemoteApiException.rejected("Webhook URL 为空");
         }
 
         // 构建消息体 - 按照自定义机器人的格式
@@ -129,7 +131,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "Webhook 发送消息失败，响应: " + responseBody);
-                throw new IOException("Webhook 发送消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("Webhook 发送消息", response, responseBody);
             }
             AppLog.d(TAG, "Webhook 消息发送成功，响应: " + responseBody);
         }
@@ -145,6 +147,18 @@ public class DingTalkApiClient {
         return "2".equals(conversationType);
     }
 
+    /**
+     * 旧版接口（oapi）以 errcode 返回的频率限制和系统繁忙，可以稍后重试
+     * -1：系统繁忙；90018：企业调用该接口的频率超过每秒上限
+     */
+    private static boolean isRateLimited(JsonObject jsonResponse) {
+        if (!jsonResponse.has("errcode")) {
+            return false;
+        }
+        int errcode = jsonResponse.get("errcode").getAsInt();
+        return errcode == -1 || errcode == 90018;
+    }
+
     /**
      * 发送文本消息（自动判断群聊或单聊）
      * 群聊使用 Webhook，单聊使用 API
@@ -173,7 +187,7 @@ public class DingTalkApiClient {
         } else {
             // 单聊：使用单聊 API
             if (userId == null || userId.isEmpty()) {
-                throw new IOException("发送单聊文本消息需要提供 userId");
+                throw RemoteApiException.rejected("发送单聊文本消息需要提供 userId");
             }
             sendTextMessageToUser(userId, text);
         }
@@ -212,7 +226,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送群聊文本消息失败，响应: " + responseBody);
-                throw new IOException("发送群聊文本消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送群聊文本消息", response, responseBody);
             }
             AppLog.d(TAG, "群聊文本消息发送成功，响应: " + responseBody);
         }
@@ -255,7 +269,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送单聊文本消息失败，响应: " + responseBody);
-                throw new IOException("发送单聊文本消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送单聊文本消息", response, responseBody);
             }
             AppLog.d(TAG, "单聊文本消息发送成功，响应: " + responseBody);
         }
@@ -275,23 +289,36 @@ public class DingTalkApiClient {
         return uploadMedia(imageFile, "image");
     }
 
+    /**
+     * 上传文件的一段到钉钉（分段发送超过上限的文件）
+     * @param fileName 该段的文件名
+     */
+    public String uploadFileSegment(File file, long offset, long length, String fileName) throws IOException {
+        RequestBody segmentBody = new ScheduledFileBody(file, offset, length,
+                MediaType.parse("application/octet-stream"));
+        return uploadMedia(segmentBody, fileName, "file");
+    }
+
     /**
      * 上传媒体文件到钉钉
      * @param file 文件
      * @param type 类型：file, image, voice, video
      */
     private String uploadMedia(File file, String type) throws IOException {
+        RequestBody fileBody = new ScheduledFileBody(
+                file,
+                MediaType.parse("application/octet-stream")
+        );
+        return uploadMedia(fileBody, file.getName(), type);
+    }
+
+    private String uploadMedia(RequestBody fileBody, String fileName, String type) throws IOException {
         String accessToken = getAccessToken();
         String url = OAPI_URL + "/media/upload?access_token=" + accessToken + "&type=" + type;
 
-        RequestBody fileBody = RequestBody.create(
-                MediaType.parse("application/octet-stream"),
-                file
-        );
-
         MultipartBody requestBody = new MultipartBody.Builder()
                 .setType(MultipartBody.FORM)
-                .addFormDataPart("media", file.getName(), fileBody)
+                .addFormDataPart("media", fileName, fileBody)
                 .build();
 
         Request request = new Request.Builder()
@@ -300,19 +327,21 @@ public class DingTalkApiClient {
                 .build();
 
         try (Response response = httpClient.newCall(request).execute()) {
+            String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
-                throw new IOException("上传媒体文件失败: " + response.code());
+                throw RemoteApiException.fromResponse("上传媒体文件", response, responseBody);
             }
 
-            String responseBody = response.body().string();
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
 
             if (jsonResponse.has("media_id")) {
                 String mediaId = jsonResponse.get("media_id").getAsString();
                 AppLog.d(TAG, type + " 上传成功，media_id: " + mediaId);
                 return mediaId;
+            } else if (isRateLimited(jsonResponse)) {
+                throw RemoteApiException.rateLimited("上传媒体文件失败: " + responseBody);
             } else {
-                throw new IOException("响应中没有 media_id: " + responseBody);
+                throw RemoteApiException.rejected("响应中没有 media_id: " + responseBody);
             }
         }
     }
@@ -332,7 +361,7 @@ public class DingTalkApiClient {
         } else {
             // 单聊：使用单聊 API
             if (userId == null || userId.isEmpty()) {
-                throw new IOException("发送单聊文件消息需要提供 userId");
+                throw RemoteApiException.rejected("发送单聊文件消息需要提供 userId");
             }
             sendFileMessageToUser(userId, mediaId, fileName);
         }
@@ -373,7 +402,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送群聊文件消息失败，响应: " + responseBody);
-                throw new IOException("发送群聊文件消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送群聊文件消息", response, responseBody);
             }
             AppLog.d(TAG, "群聊文件消息发送成功，响应: " + responseBody);
         }
@@ -397,7 +426,7 @@ public class DingTalkApiClient {
         if (userId != null && !userId.isEmpty()) {
             userIds.add(userId);
         } else {
-            throw new IOException("发送单聊文件消息需要提供 userId");
+            throw RemoteApiException.rejected("发送单聊文件消息需要提供 userId");
         }
 
         JsonObject body = new JsonObject();
@@ -422,7 +451,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送单聊文件消息失败，响应: " + responseBody);
-                throw new IOException("发送单聊文件消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送单聊文件消息", response, responseBody);
             }
             AppLog.d(TAG, "单聊文件消息发送成功，响应: " + responseBody);
         }
@@ -445,7 +474,7 @@ public class DingTalkApiClient {
         } else {
             // 单聊：使用单聊 API
             if (userId == null || userId.isEmpty()) {
-                throw new IOException("发送单聊视频消息需要提供 userId");
+                throw RemoteApiException.rejected("发送单聊视频消息需要提供 userId");
             }
             sendVideoMessageToUser(userId, videoMediaId, picMediaId, duration);
         }
@@ -489,7 +518,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送群聊视频消息失败，响应: " + responseBody);
-                throw new IOException("发送群聊视频消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送群聊视频消息", response, responseBody);
             }
             AppLog.d(TAG, "群聊视频消息发送成功，响应: " + responseBody);
         }
@@ -537,7 +566,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送单聊视频消息失败，响应: " + responseBody);
-                throw new IOException("发送单聊视频消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送单聊视频消息", response, responseBody);
             }
             AppLog.d(TAG, "单聊视频消息发送成功，响应: " + responseBody);
         }
@@ -557,7 +586,7 @@ public class DingTalkApiClient {
         } else {
             // 单聊：使用单聊 API
             if (userId == null || userId.isEmpty()) {
-                throw new IOException("发送单聊图片消息需要提供 userId");
+                throw RemoteApiException.rejected("发送单聊图片消息需要提供 userId");
             }
             sendImageMessageToUser(userId, photoURL);
         }
@@ -596,7 +625,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送群聊图片消息失败，响应: " + responseBody);
-                throw new IOException("发送群聊图片消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送群聊图片消息", response, responseBody);
             }
             AppLog.d(TAG, "群聊图片消息发送成功，响应: " + responseBody);
         }
@@ -639,7 +668,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送单聊图片消息失败，响应: " + responseBody);
-                throw new IOException("发送单聊图片消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送单聊图片消息", response, responseBody);
             }
             AppLog.d(TAG, "单聊图片消息发送成功，响应: " + responseBody);
         }
@@ -660,7 +689,7 @@ public class DingTalkApiClient {
         } else {
             // 单聊：使用单聊 API
             if (userId == null || userId.isEmpty()) {
-                throw new IOException("发送单聊Markdown消息需要提供 userId");
+                throw RemoteApiException.rejected("发送单聊Markdown消息需要提供 userId");
             }
             sendMarkdownMessageToUser(userId, title, text);
         }
@@ -700,7 +729,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送群聊Markdown消息失败，响应: " + responseBody);
-                throw new IOException("发送群聊Markdown消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送群聊Markdown消息", response, responseBody);
             }
             AppLog.d(TAG, "群聊Markdown消息发送成功，响应: " + responseBody);
         }
@@ -744,7 +773,7 @@ public class DingTalkApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送单聊Markdown消息失败，响应: " + responseBody);
-                throw new IOException("发送单聊Markdown消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送单聊Markdown消息", response, responseBody);
             }
             AppLog.d(TAG, "单聊Markdown消息发送成功，响应: " + responseBody);
         }
@@ -806,7 +835,7 @@ public class DingTalkApiClient {
             AppLog.d(TAG, "Stream 响应: " + responseBody);
 
             if (!response.isSuccessful()) {
-                throw new IOException("获取 Stream 连接信息失败: " + response.code() + " - " + responseBody);
+                throw RemoteApiException.fromResponse("获取 Stream 连接信息", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
@@ -817,7 +846,7 @@ public class DingTalkApiClient {
                 AppLog.d(TAG, "Stream 连接信息获取成功: " + endpoint);
                 return new StreamConnection(endpoint, ticket);
             } else {
-                throw new IOException("响应中缺少 endpoint 或 ticket: " + responseBody);
+                throw RemoteApiException.rejected("响应中缺少 endpoint 或 ticket: " + responseBody);
             }
         }
     }
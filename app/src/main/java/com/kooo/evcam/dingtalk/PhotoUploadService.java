@@ -2,8 +2,10 @@ package com.kooo.evcam.dingtalk;
 
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemotePlatform;
+import com.kooo.evcam.remote.upload.UploadScheduler;
+
 import android.content.Context;
-import android.util.Log;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -12,6 +14,7 @@ import java.util.List;
 /**
  * 图片上传服务
  * 负责将拍摄的照片上传到钉钉
+ * 上传由 {@link UploadScheduler} 调度：图片并发上传，图片消息按顺序发送
  */
 public class PhotoUploadService {
     private static final String TAG = "PhotoUploadService";
@@ -39,81 +42,101 @@ public class PhotoUploadService {
      * @param callback 上传回调
      */
     public void uploadPhotos(List<File> photoFiles, String conversationId, String conversationType, String userId, UploadCallback callback) {
-        new Thread(() -> {
-            try {
-                if (photoFiles == null || photoFiles.isEmpty()) {
-                    callback.onError("没有图片文件可上传");
-                    return;
-                }
-
-                callback.onProgress("开始上传 " + photoFiles.size() + " 张照片...");
+        if (photoFiles == null || photoFiles.isEmpty()) {
+            callback.onError("没有图片文件可上传");
+            return;
+        }
 
-                List<String> uploadedFiles = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (File photoFile : photoFiles) {
+            if (photoFile.exists()) {
+                files.add(photoFile);
+            } else {
+                AppLog.w(TAG, "图片文件不存在: " + photoFile.getPath());
+            }
+        }
+        if (files.isEmpty()) {
+            callback.onError("所有图片上传失败");
+            return;
+        }
+
+        callback.onProgress("开始上传 " + files.size() + " 张照片...");
+        int total = files.size();
+
+        UploadScheduler.FileUploader<Void, String> uploader = new UploadScheduler.FileUploader<Void, String>() {
+            @Override
+            public Void prepare(File photoFile, int index) {
+                return null;
+            }
 
-                for (int i = 0; i < photoFiles.size(); i++) {
-                    File photoFile = photoFiles.get(i);
+            @Override
+            public String upload(File photoFile, Void prepared, int index,
+                                 UploadScheduler.TokenBucket limiter) throws Exception {
+                // 1. 上传图片到钉钉（使用 image 类型）
+                callback.onProgress("正在上传图片 (" + (index + 1) + "/" + total + ")...");
+                limiter.acquire();
+                String mediaId = apiClient.uploadImage(photoFile);
+                AppLog.d(TAG, "图片上传成功，mediaId: " + mediaId);
+                return mediaId;
+            }
 
-                    if (!photoFile.exists()) {
-                        AppLog.w(TAG, "图片文件不存在: " + photoFile.getPath());
-                        continue;
-                    }
+            @Override
+            public void deliver(File photoFile, String mediaId, int index,
+                                UploadScheduler.TokenBucket limiter) throws Exception {
+                // 2. 尝试使用 mediaId 发送图片消息
+                callback.onProgress("正在发送图片消息 (" + (index + 1) + "/" + total + ")...");
+                limiter.acquire();
+                try {
+                    // 尝试直接使用 mediaId 作为 photoURL (可能钉钉会自动处理)
+                    apiClient.sendImageMessage(conversationId, conversationType, mediaId, userId);
+                    AppLog.d(TAG, "图片消息发送成功: " + photoFile.getName());
+                } catch (Exception imageError) {
+                    // 如果图片消息失败,降级为文件消息
+                    AppLog.w(TAG, "图片消息发送失败,降级为文件消息: " + imageError.getMessage());
+                    limiter.acquire();
+                    apiClient.sendFileMessage(conversationId, conversationType, mediaId, photoFile.getName(), userId);
+                    AppLog.d(TAG, "文件消息发送成功: " + photoFile.getName());
+                }
+            }
 
-                    callback.onProgress("正在上传 (" + (i + 1) + "/" + photoFiles.size() + "): " + photoFile.getName());
+            @Override
+            public void cleanup(Void prepared) {
+            }
+        };
 
-                    try {
-                        // 1. 上传图片到钉钉（使用 image 类型）
-                        callback.onProgress("正在上传图片 (" + (i + 1) + "/" + photoFiles.size() + ")...");
-                        String mediaId = apiClient.uploadImage(photoFile);
-                        AppLog.d(TAG, "图片上传成功，mediaId: " + mediaId);
+        boolean submitted = UploadScheduler.getInstance().submit(RemotePlatform.DINGTALK, files, uploader,
+                new UploadScheduler.BatchListener() {
+                    @Override
+                    public void onProgress(String message) {
+                        callback.onProgress(message);
+                    }
 
-                        // 2. 尝试使用 mediaId 发送图片消息
-                        callback.onProgress("正在发送图片消息 (" + (i + 1) + "/" + photoFiles.size() + ")...");
-                        try {
-                            // 尝试直接使用 mediaId 作为 photoURL (可能钉钉会自动处理)
-                            apiClient.sendImageMessage(conversationId, conversationType, mediaId, userId);
-                            AppLog.d(TAG, "图片消息发送成功: " + photoFile.getName());
-                        } catch (Exception imageError) {
-                            // 如果图片消息失败,降级为文件消息
-                            AppLog.w(TAG, "图片消息发送失败,降级为文件消息: " + imageError.getMessage());
-                            apiClient.sendFileMessage(conversationId, conversationType, mediaId, photoFile.getName(), userId);
-                            AppLog.d(TAG, "文件消息发送成功: " + photoFile.getName());
+                    @Override
+                    public void onComplete(List<String> uploaded, List<String> failed,
+                                           UploadScheduler.TokenBucket limiter) {
+                        if (uploaded.isEmpty()) {
+                            callback.onError("所有图片上传失败\n失败列表:\n" + String.join("\n", failed));
+                            return;
                         }
+                        String successMessage = failed.isEmpty()
+                                ? "图片上传完成！共上传 " + uploaded.size() + " 张照片"
+                                : "上传完成（部分失败）\n成功: " + uploaded.size() + " 张\n失败: " + failed.size()
+                                        + " 张\n\n失败列表:\n" + String.join("\n", failed);
+                        callback.onSuccess(successMessage);
 
-                        uploadedFiles.add(photoFile.getName());
-
-                        // 3. 延迟2秒后再上传下一张照片，减少网络和系统压力
-                        if (i < photoFiles.size() - 1) {  // 不是最后一张照片
-                            callback.onProgress("等待2秒后上传下一张照片...");
-                            Thread.sleep(2000);
+                        // 图片消息已按顺序发送并由服务器接受，完成消息排在其后
+                        try {
+                            limiter.acquire();
+                            // 发送完成消息，传递 conversationType 和 userId
+                            apiClient.sendTextMessage(conversationId, conversationType, successMessage, userId);
+                        } catch (Exception e) {
+                            AppLog.e(TAG, "发送完成消息失败", e);
                         }
-
-                    } catch (Exception e) {
-                        AppLog.e(TAG, "上传图片失败: " + photoFile.getName(), e);
-                        callback.onError("上传失败: " + photoFile.getName() + " - " + e.getMessage());
                     }
-                }
-
-                if (uploadedFiles.isEmpty()) {
-                    callback.onError("所有图片上传失败");
-                } else {
-                    String successMessage = "图片上传完成！共上传 " + uploadedFiles.size() + " 张照片";
-                    callback.onSuccess(successMessage);
-
-                    // 等待3秒，确保图片消息被钉钉服务器处理完毕后再发送完成消息
-                    // 避免"上传完成"消息比图片先到达用户端
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException ignored) {}
-
-                    // 发送完成消息，传递 conversationType 和 userId
-                    apiClient.sendTextMessage(conversationId, conversationType, successMessage, userId);
-                }
-
-            } catch (Exception e) {
-                AppLog.e(TAG, "上传过程出错", e);
-                callback.onError("上传过程出错: " + e.getMessage());
-            }
-        }).start();
+                });
+        if (!submitted) {
+            callback.onError("上传队列已满，请稍后重试");
+        }
     }
 
     /**
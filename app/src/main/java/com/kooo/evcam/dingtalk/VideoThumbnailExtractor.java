@@ -2,6 +2,8 @@ package com.kooo.evcam.dingtalk;
 
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.media.Mp4Info;
+import com.kooo.evcam.storage.IoScheduler;
 import android.graphics.Bitmap;
 import android.media.MediaMetadataRetriever;
 import android.util.Log;
@@ -17,6 +19,9 @@ import java.io.IOException;
 public class VideoThumbnailExtractor {
     private static final String TAG = "VideoThumbnailExtractor";
 
+    // 读取元数据时计入 I/O 预算的字节数（只读取文件头部）
+    private static final long METADATA_READ_BYTES = 64 * 1024;
+
     /**
      * 从视频文件提取封面图
      * @param videoFile 视频文件
@@ -27,7 +32,18 @@ public class VideoThumbnailExtractor {
         MediaMetadataRetriever retriever = null;
         FileOutputStream fos = null;
 
+        // 先解析 moov：没有视频轨道时不必创建解码器；无法解析时交给 MediaMetadataRetriever 处理
+        try {
+            if (!Mp4Info.get(videoFile).hasVideo()) {
+                AppLog.e(TAG, "视频文件没有视频轨道: " + videoFile.getName());
+                return false;
+            }
+        } catch (IOException e) {
+            AppLog.w(TAG, "解析 MP4 元数据失败: " + videoFile.getName() + " - " + e.getMessage());
+        }
+
         try {
+            IoScheduler.getInstance().acquire(IoScheduler.IoClass.READ, videoFile.length());
             retriever = new MediaMetadataRetriever();
             retriever.setDataSource(videoFile.getAbsolutePath());
 
@@ -70,17 +86,38 @@ public class VideoThumbnailExtractor {
      * @return 视频时长，失败返回 0
      */
     public static int getVideoDuration(File videoFile) {
+        int durationSec = (int) (getVideoDurationMs(videoFile) / 1000);
+        AppLog.d(TAG, "视频时长: " + durationSec + " 秒");
+        return durationSec;
+    }
+
+    /**
+     * 获取视频时长（毫秒）
+     * 优先解析 moov（{@link Mp4Info}，带缓存），无法解析时使用 MediaMetadataRetriever
+     * @param videoFile 视频文件
+     * @return 视频时长，失败返回 0
+     */
+    public static long getVideoDurationMs(File videoFile) {
+        try {
+            Mp4Info info = Mp4Info.get(videoFile);
+            if (info.durationUs > 0) {
+                return info.getDurationMs();
+            }
+        } catch (IOException e) {
+            AppLog.w(TAG, "解析 MP4 元数据失败，使用 MediaMetadataRetriever: " + videoFile.getName()
+                    + " - " + e.getMessage());
+        }
+
         MediaMetadataRetriever retriever = null;
         try {
+            // 只读取文件头部的元数据
+            IoScheduler.getInstance().acquire(IoScheduler.IoClass.READ, METADATA_READ_BYTES);
             retriever = new MediaMetadataRetriever();
             retriever.setDataSource(videoFile.getAbsolutePath());
 
             String durationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
             if (durationStr != null) {
-                long durationMs = Long.parseLong(durationStr);
-                int durationSec = (int) (durationMs / 1000);
-                AppLog.d(TAG, "视频时长: " + durationSec + " 秒");
-                return durationSec;
+                return Long.parseLong(durationStr);
             }
         } catch (Exception e) {
             AppLog.e(TAG, "获取视频时长失败: " + videoFile.getName(), e);
@@ -2,20 +2,34 @@ package com.kooo.evcam.dingtalk;
 
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemotePlatform;
+import com.kooo.evcam.remote.upload.ChunkedUploadEngine;
+import com.kooo.evcam.remote.upload.SplitUploadProtocol;
+import com.kooo.evcam.remote.upload.UploadScheduler;
+import com.kooo.evcam.remote.upload.VideoSegmenter;
+
 import android.content.Context;
-import android.util.Log;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 视频上传服务
  * 负责将录制的视频上传到钉钉
+ * 上传由 {@link UploadScheduler} 调度：封面提取与上一个视频的上传并行，视频和封面并发上传，视频消息按顺序发送
+ * 超过媒体上传上限的视频按关键帧无损分段（{@link VideoSegmenter}），每段作为视频消息发送；
+ * 无法按关键帧分段时按 {@link SplitUploadProtocol} 分段作为文件消息发送，中断后从未发送的段继续
  */
 public class VideoUploadService {
     private static final String TAG = "VideoUploadService";
 
+    // 媒体文件上传上限 20MB
+    private static final long MAX_UPLOAD_BYTES = 20L * 1024 * 1024;
+    // 分段发送时每段的大小
+    private static final long SEGMENT_BYTES = 19L * 1024 * 1024;
+
     private final Context context;
     private final DingTalkApiClient apiClient;
 
@@ -30,6 +44,39 @@ public class VideoUploadService {
         this.apiClient = apiClient;
     }
 
+    /**
+     * 视频的准备结果
+     */
+    private static final class PreparedVideo {
+        final File thumbnailFile;
+        final int duration;
+        // 按关键帧分段的结果，未超过上限或无法分段时为 null
+        final List<VideoSegmenter.Segment> segments;
+        // 已上传的段（重试时跳过）
+        final List<UploadedVideo> uploadedSegments = new ArrayList<>();
+
+        PreparedVideo(File thumbnailFile, int duration, List<VideoSegmenter.Segment> segments) {
+            this.thumbnailFile = thumbnailFile;
+            this.duration = duration;
+            this.segments = segments;
+        }
+    }
+
+    /**
+     * 视频和封面的 media_id
+     */
+    private static final class UploadedVideo {
+        final String videoMediaId;
+        final String picMediaId;
+        final int duration;
+
+        UploadedVideo(String videoMediaId, String picMediaId, int duration) {
+            this.videoMediaId = videoMediaId;
+            this.picMediaId = picMediaId;
+            this.duration = duration;
+        }
+    }
+
     /**
      * 上传视频文件到钉钉
      * @param videoFiles 视频文件列表
@@ -39,98 +86,193 @@ public class VideoUploadService {
      * @param callback 上传回调
      */
     public void uploadVideos(List<File> videoFiles, String conversationId, String conversationType, String userId, UploadCallback callback) {
-        new Thread(() -> {
-            try {
-                if (videoFiles == null || videoFiles.isEmpty()) {
-                    callback.onError("没有视频文件可上传");
-                    return;
-                }
-
-                callback.onProgress("开始上传 " + videoFiles.size() + " 个视频文件...");
+        if (videoFiles == null || videoFiles.isEmpty()) {
+            callback.onError("没有视频文件可上传");
+            return;
+        }
 
-                List<String> uploadedFiles = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (File videoFile : videoFiles) {
+            if (videoFile.exists()) {
+                files.add(videoFile);
+            } else {
+                AppLog.w(TAG, "视频文件不存在: " + videoFile.getPath());
+            }
+        }
+        if (files.isEmpty()) {
+            callback.onError("所有视频上传失败");
+            return;
+        }
 
-                for (int i = 0; i < videoFiles.size(); i++) {
-                    File videoFile = videoFiles.get(i);
+        callback.onProgress("开始上传 " + files.size() + " 个视频文件...");
+        int total = files.size();
 
-                    if (!videoFile.exists()) {
-                        AppLog.w(TAG, "视频文件不存在: " + videoFile.getPath());
-                        continue;
-                    }
+        UploadScheduler.FileUploader<PreparedVideo, List<UploadedVideo>> uploader =
+                new UploadScheduler.FileUploader<PreparedVideo, List<UploadedVideo>>() {
+            @Override
+            public PreparedVideo prepare(File videoFile, int index) {
+                // 1. 提取视频封面
+                File thumbnailFile = new File(videoFile.getParent(),
+                        videoFile.getName().replace(".mp4", "_thumb.jpg"));
+                if (!VideoThumbnailExtractor.extractThumbnail(videoFile, thumbnailFile)) {
+                    AppLog.w(TAG, "封面提取失败，跳过视频: " + videoFile.getName());
+                    thumbnailFile = null;
+                }
 
-                    callback.onProgress("正在处理 (" + (i + 1) + "/" + videoFiles.size() + "): " + videoFile.getName());
+                // 2. 获取视频时长
+                int duration = VideoThumbnailExtractor.getVideoDuration(videoFile);
+                if (duration == 0) {
+                    duration = 60; // 默认 60 秒
+                }
 
-                    try {
-                        // 1. 提取视频封面
-                        File thumbnailFile = new File(videoFile.getParent(),
-                                videoFile.getName().replace(".mp4", "_thumb.jpg"));
+                // 3. 超过上传上限：按关键帧分段
+                List<VideoSegmenter.Segment> segments = null;
+                if (videoFile.length() > MAX_UPLOAD_BYTES) {
+                    callback.onProgress("视频超过 20MB，正在分段 (" + (index + 1) + "/" + total + ")...");
+                    segments = VideoSegmenter.split(context, videoFile, MAX_UPLOAD_BYTES);
+                }
+                return new PreparedVideo(thumbnailFile, duration, segments);
+            }
 
-                        boolean thumbnailExtracted = VideoThumbnailExtractor.extractThumbnail(videoFile, thumbnailFile);
-                        if (!thumbnailExtracted) {
-                            AppLog.w(TAG, "封面提取失败，跳过视频: " + videoFile.getName());
-                            callback.onError("封面提取失败: " + videoFile.getName());
-                            continue;
-                        }
+            @Override
+            public List<UploadedVideo> upload(File videoFile, PreparedVideo prepared, int index,
+                                              UploadScheduler.TokenBucket limiter) throws Exception {
+                if (prepared.segments != null) {
+                    // 逐段上传（每段都是可播放的视频），已上传的段重试时跳过
+                    for (int i = prepared.uploadedSegments.size(); i < prepared.segments.size(); i++) {
+                        VideoSegmenter.Segment segment = prepared.segments.get(i);
+                        callback.onProgress("正在上传视频 (" + (index + 1) + "/" + total + ") 第 "
+                                + segment.number + "/" + segment.count + " 段...");
+                        File thumbnailFile = segment.thumbnailFile != null
+                                ? segment.thumbnailFile : prepared.thumbnailFile;
+                        prepared.uploadedSegments.add(uploadVideo(segment.file, thumbnailFile,
+                                Math.max(1, segment.durationMs / 1000), limiter));
+                    }
+                    return new ArrayList<>(prepared.uploadedSegments);
+                }
+                if (videoFile.length() > MAX_UPLOAD_BYTES) {
+                    // 无法按关键帧分段：在 deliver 中按字节顺序分段发送
+                    return null;
+                }
 
-                        // 2. 获取视频时长
-                        int duration = VideoThumbnailExtractor.getVideoDuration(videoFile);
-                        if (duration == 0) {
-                            duration = 60; // 默认 60 秒
-                        }
+                callback.onProgress("正在上传视频 (" + (index + 1) + "/" + total + ")...");
+                List<UploadedVideo> uploaded = new ArrayList<>();
+                uploaded.add(uploadVideo(videoFile, prepared.thumbnailFile, prepared.duration, limiter));
+                return uploaded;
+            }
 
-                        // 3. 上传视频文件到钉钉
-                        callback.onProgress("正在上传视频 (" + (i + 1) + "/" + videoFiles.size() + ")...");
-                        String videoMediaId = apiClient.uploadFile(videoFile);
+            @Override
+            public void deliver(File videoFile, List<UploadedVideo> uploaded, int index,
+                                UploadScheduler.TokenBucket limiter) throws Exception {
+                if (uploaded == null) {
+                    deliverSegments(videoFile, conversationId, conversationType, userId, limiter, callback);
+                    return;
+                }
 
-                        // 4. 上传封面图到钉钉
-                        callback.onProgress("正在上传封面 (" + (i + 1) + "/" + videoFiles.size() + ")...");
-                        String picMediaId = apiClient.uploadImage(thumbnailFile);
+                // 6. 发送视频消息（已发送的段从列表移除，重试时不重复发送）
+                callback.onProgress("正在发送视频消息 (" + (index + 1) + "/" + total + ")...");
+                while (!uploaded.isEmpty()) {
+                    UploadedVideo video = uploaded.get(0);
+                    limiter.acquire();
+                    apiClient.sendVideoMessage(conversationId, conversationType, video.videoMediaId,
+                            video.picMediaId, video.duration, userId);
+                    uploaded.remove(0);
+                }
+            }
 
-                        // 5. 发送视频消息
-                        callback.onProgress("正在发送视频消息 (" + (i + 1) + "/" + videoFiles.size() + ")...");
-                        apiClient.sendVideoMessage(conversationId, conversationType, videoMediaId, picMediaId, duration, userId);
+            @Override
+            public void cleanup(PreparedVideo prepared) {
+                // 7. 清理临时封面文件和分段
+                if (prepared != null && prepared.thumbnailFile != null && prepared.thumbnailFile.exists()) {
+                    prepared.thumbnailFile.delete();
+                }
+                if (prepared != null) {
+                    VideoSegmenter.delete(prepared.segments);
+                }
+            }
+        };
 
-                        uploadedFiles.add(videoFile.getName());
-                        AppLog.d(TAG, "视频上传成功: " + videoFile.getName());
+        boolean submitted = UploadScheduler.getInstance().submit(RemotePlatform.DINGTALK, files, uploader,
+                new UploadScheduler.BatchListener() {
+                    @Override
+                    public void onProgress(String message) {
+                        callback.onProgress(message);
+                    }
 
-                        // 6. 清理临时封面文件
-                        if (thumbnailFile.exists()) {
-                            thumbnailFile.delete();
+                    @Override
+                    public void onComplete(List<String> uploaded, List<String> failed,
+                                           UploadScheduler.TokenBucket limiter) {
+                        if (uploaded.isEmpty()) {
+                            callback.onError("所有视频上传失败\n失败列表:\n" + String.join("\n", failed));
+                            return;
                         }
+                        String successMessage = failed.isEmpty()
+                                ? "视频上传完成！共上传 " + uploaded.size() + " 个文件"
+                                : "上传完成（部分失败）\n成功: " + uploaded.size() + " 个\n失败: " + failed.size()
+                                        + " 个\n\n失败列表:\n" + String.join("\n", failed);
+                        callback.onSuccess(successMessage);
 
-                        // 7. 延迟2秒后再上传下一个视频，减少网络和系统压力
-                        if (i < videoFiles.size() - 1) {  // 不是最后一个视频
-                            callback.onProgress("等待2秒后上传下一个视频...");
-                            Thread.sleep(2000);
+                        // 视频消息已按顺序发送并由服务器接受，完成消息排在其后
+                        try {
+                            limiter.acquire();
+                            // 发送完成消息，传递 conversationType 和 userId
+                            apiClient.sendTextMessage(conversationId, conversationType, successMessage, userId);
+                        } catch (Exception e) {
+                            AppLog.e(TAG, "发送完成消息失败", e);
                         }
-
-                    } catch (Exception e) {
-                        AppLog.e(TAG, "上传视频失败: " + videoFile.getName(), e);
-                        callback.onError("上传失败: " + videoFile.getName() + " - " + e.getMessage());
                     }
-                }
+                });
+        if (!submitted) {
+            callback.onError("上传队列已满，请稍后重试");
+        }
+    }
 
-                if (uploadedFiles.isEmpty()) {
-                    callback.onError("所有视频上传失败");
-                } else {
-                    String successMessage = "视频上传完成！共上传 " + uploadedFiles.size() + " 个文件";
-                    callback.onSuccess(successMessage);
+    /**
+     * 上传视频和封面，获取 media_id
+     */
+    private UploadedVideo uploadVideo(File videoFile, File thumbnailFile, int duration,
+                                      UploadScheduler.TokenBucket limiter) throws IOException, InterruptedException {
+        // 钉钉视频消息必须带封面
+        if (thumbnailFile == null) {
+            throw new IllegalStateException("封面提取失败");
+        }
 
-                    // 等待5秒，确保视频消息被钉钉服务器处理完毕后再发送完成消息
-                    // 视频处理比图片更慢，需要更长的等待时间
-                    try {
-                        Thread.sleep(5000);
-                    } catch (InterruptedException ignored) {}
+        // 4. 上传视频文件到钉钉
+        limiter.acquire();
+        String videoMediaId = apiClient.uploadFile(videoFile);
 
-                    // 发送完成消息，传递 conversationType 和 userId
-                    apiClient.sendTextMessage(conversationId, conversationType, successMessage, userId);
-                }
+        // 5. 上传封面图到钉钉
+        limiter.acquire();
+        String picMediaId = apiClient.uploadImage(thumbnailFile);
+        return new UploadedVideo(videoMediaId, picMediaId, duration);
+    }
 
-            } catch (Exception e) {
-                AppLog.e(TAG, "上传过程出错", e);
-                callback.onError("上传过程出错: " + e.getMessage());
+    /**
+     * 分段发送超过上传上限的视频（每段作为文件消息），最后发送合并说明
+     */
+    private void deliverSegments(File videoFile, String conversationId, String conversationType, String userId,
+                                 UploadScheduler.TokenBucket limiter, UploadCallback callback)
+            throws IOException, InterruptedException {
+        SplitUploadProtocol protocol = new SplitUploadProtocol("dingtalk", SEGMENT_BYTES) {
+            @Override
+            protected void sendSegment(ChunkedUploadEngine.Part part, String segmentName, int number, int count)
+                    throws IOException {
+                callback.onProgress("正在发送 " + videoFile.getName() + " 第 " + number + "/" + count + " 段...");
+                String mediaId = apiClient.uploadFileSegment(part.file, part.offset, part.length, segmentName);
+                apiClient.sendFileMessage(conversationId, conversationType, mediaId, segmentName, userId);
             }
-        }).start();
+        };
+        ChunkedUploadEngine.getInstance(context).upload(videoFile, conversationId, protocol, limiter, null);
+
+        // 各段已发送完毕，合并说明发送失败不再重试（重试会重新发送所有段）
+        try {
+            limiter.acquire();
+            int count = (int) ((videoFile.length() + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+            apiClient.sendTextMessage(conversationId, conversationType,
+                    SplitUploadProtocol.joinHint(videoFile, count), userId);
+        } catch (IOException e) {
+            AppLog.e(TAG, "发送合并说明失败", e);
+        }
     }
 
     /**
@@ -1,8 +1,12 @@
 package com.kooo.evcam.feishu;
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemoteApiException;
+import com.kooo.evcam.remote.upload.ChunkedUploadEngine;
+import com.kooo.evcam.remote.upload.ScheduledFileBody;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 import java.io.File;
@@ -23,6 +27,8 @@ import okhttp3.Response;
 public class FeishuApiClient {
     private static final String TAG = "FeishuApiClient";
     private static final String BASE_URL = "https://open.feishu.cn/open-apis";
+    // 接口频率限制的业务错误码
+    private static final int RATE_LIMIT_CODE = 99991400;
 
     private final OkHttpClient httpClient;
     private final Gson gson;
@@ -71,7 +77,7 @@ public class FeishuApiClient {
             AppLog.d(TAG, "Access Token 响应: " + responseBody);
 
             if (!response.isSuccessful()) {
-                throw new IOException("获取 Access Token 失败: " + response.code() + " - " + responseBody);
+                throw RemoteApiException.fromResponse("获取 Access Token ", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
@@ -80,7 +86,7 @@ public class FeishuApiClient {
             int code = jsonResponse.has("code") ? jsonResponse.get("code").getAsInt() : -1;
             if (code != 0) {
                 String msg = jsonResponse.has("msg") ? jsonResponse.get("msg").getAsString() : "Unknown error";
-                throw new IOException("获取 Access Token 失败: code=" + code + ", msg=" + msg);
+                throw businessError("获取 Access Token ", code, msg);
             }
 
             if (jsonResponse.has("tenant_access_token")) {
@@ -94,7 +100,7 @@ public class FeishuApiClient {
                 AppLog.d(TAG, "Access Token 获取成功");
                 return accessToken;
             } else {
-                throw new IOException("响应中没有 tenant_access_token: " + responseBody);
+                throw RemoteApiException.rejected("响应中没有 tenant_access_token: " + responseBody);
             }
         }
     }
@@ -132,7 +138,7 @@ public class FeishuApiClient {
             AppLog.d(TAG, "WebSocket 连接信息响应: " + responseBody);
 
             if (!response.isSuccessful()) {
-                throw new IOException("获取 WebSocket 连接失败: " + response.code() + " - " + responseBody);
+                throw RemoteApiException.fromResponse("获取 WebSocket 连接", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
@@ -140,7 +146,7 @@ public class FeishuApiClient {
             int code = jsonResponse.has("code") ? jsonResponse.get("code").getAsInt() : -1;
             if (code != 0) {
                 String msg = jsonResponse.has("msg") ? jsonResponse.get("msg").getAsString() : "Unknown error";
-                throw new IOException("获取 WebSocket 连接失败: code=" + code + ", msg=" + msg);
+                throw businessError("获取 WebSocket 连接", code, msg);
             }
 
             JsonObject data = jsonResponse.getAsJsonObject("data");
@@ -187,7 +193,7 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送消息失败: " + responseBody);
-                throw new IOException("发送消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送消息", response, responseBody);
             }
             AppLog.d(TAG, "消息发送成功: " + responseBody);
         }
@@ -226,7 +232,7 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "回复消息失败: " + responseBody);
-                throw new IOException("回复消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("回复消息", response, responseBody);
             }
             AppLog.d(TAG, "回复消息成功: " + responseBody);
         }
@@ -241,9 +247,9 @@ public class FeishuApiClient {
         String accessToken = getTenantAccessToken();
         String url = BASE_URL + "/im/v1/images";
 
-        RequestBody fileBody = RequestBody.create(
-                MediaType.parse("image/jpeg"),
-                imageFile
+        RequestBody fileBody = new ScheduledFileBody(
+                imageFile,
+                MediaType.parse("image/jpeg")
         );
 
         MultipartBody requestBody = new MultipartBody.Builder()
@@ -262,7 +268,7 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "上传图片失败: " + responseBody);
-                throw new IOException("上传图片失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("上传图片", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
@@ -306,7 +312,7 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送图片消息失败: " + responseBody);
-                throw new IOException("发送图片消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送图片消息", response, responseBody);
             }
             AppLog.d(TAG, "图片消息发送成功: " + responseBody);
         }
@@ -333,9 +339,9 @@ public class FeishuApiClient {
         String accessToken = getTenantAccessToken();
         String url = BASE_URL + "/im/v1/files";
 
-        RequestBody fileBody = RequestBody.create(
-                MediaType.parse("application/octet-stream"),
-                file
+        RequestBody fileBody = new ScheduledFileBody(
+                file,
+                MediaType.parse("application/octet-stream")
         );
 
         MultipartBody.Builder bodyBuilder = new MultipartBody.Builder()
@@ -362,7 +368,7 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "上传文件失败: " + responseBody);
-                throw new IOException("上传文件失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("上传文件", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
@@ -406,7 +412,7 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送文件消息失败: " + responseBody);
-                throw new IOException("发送文件消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送文件消息", response, responseBody);
             }
             AppLog.d(TAG, "文件消息发送成功: " + responseBody);
         }
@@ -451,12 +457,207 @@ public class FeishuApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送视频消息失败: " + responseBody);
-                throw new IOException("发送视频消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送视频消息", response, responseBody);
             }
             AppLog.d(TAG, "视频消息发送成功: " + responseBody);
         }
     }
 
+    // ==================== 云文档分片上传 ====================
+
+    // 分片上传会话（upload_id）的续传有效期
+    private static final long DRIVE_UPLOAD_SESSION_TTL_MS = 24L * 60 * 60 * 1000;
+    // 同一文件同时上传的分片数
+    private static final int DRIVE_UPLOAD_PARALLEL_PARTS = 3;
+
+    /**
+     * 云文档分片上传协议（上传到应用云空间根文件夹）
+     * 分片大小由服务器在预上传时决定（4MB），每个分片带 Adler-32 校验值
+     */
+    public ChunkedUploadEngine.Protocol newDriveUploadProtocol() {
+        return new ChunkedUploadEngine.Protocol() {
+            @Override
+            public String getName() {
+                return "feishu-drive:" + config.getAppId();
+            }
+
+            @Override
+            public int getMaxParallelParts() {
+                return DRIVE_UPLOAD_PARALLEL_PARTS;
+            }
+
+            @Override
+            public long getSessionTtlMs() {
+                return DRIVE_UPLOAD_SESSION_TTL_MS;
+            }
+
+            @Override
+            public ChunkedUploadEngine.Session prepare(File file) throws IOException {
+                return prepareDriveUpload(file.getName(), getRootFolderToken(), file.length());
+            }
+
+            @Override
+            public void uploadPart(ChunkedUploadEngine.Session session, ChunkedUploadEngine.Part part)
+                    throws IOException {
+                uploadDrivePart(session.uploadId, part);
+            }
+
+            @Override
+            public String finish(ChunkedUploadEngine.Session session) throws IOException {
+                return finishDriveUpload(session.uploadId, session.partCount);
+            }
+        };
+    }
+
+    /**
+     * 获取应用云空间根文件夹 token（分片上传的目标文件夹）
+     */
+    public String getRootFolderToken() throws IOException {
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/drive/explorer/v2/root_folder/meta")
+                .header("Authorization", "Bearer " + getTenantAccessToken())
+                .get()
+                .build();
+        return executeForData(request, "获取根文件夹").get("token").getAsString();
+    }
+
+    /**
+     * 分片上传 - 预上传
+     * @param parentNode 目标文件夹 token
+     * @return 上传会话（upload_id、分片大小、分片数）
+     */
+    public ChunkedUploadEngine.Session prepareDriveUpload(String fileName, String parentNode, long size)
+            throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("file_name", fileName);
+        body.addProperty("parent_type", "explorer");
+        body.addProperty("parent_node", parentNode);
+        body.addProperty("size", size);
+
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/drive/v1/files/upload_prepare")
+                .header("Authorization", "Bearer " + getTenantAccessToken())
+                .post(RequestBody.create(MediaType.parse("application/json"), gson.toJson(body)))
+                .build();
+        JsonObject data = executeForData(request, "分片预上传");
+        return new ChunkedUploadEngine.Session(data.get("upload_id").getAsString(),
+                data.get("block_size").getAsLong(), data.get("block_num").getAsInt());
+    }
+
+    /**
+     * 分片上传 - 上传分片（服务器按 Adler-32 校验分片数据）
+     */
+    public void uploadDrivePart(String uploadId, ChunkedUploadEngine.Part part) throws IOException {
+        RequestBody partBody = new ScheduledFileBody(part.file, part.offset, part.length,
+                MediaType.parse("application/octet-stream"));
+
+        MultipartBody requestBody = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("upload_id", uploadId)
+                .addFormDataPart("seq", String.valueOf(part.seq))
+                .addFormDataPart("size", String.valueOf(part.length))
+                .addFormDataPart("checksum", String.valueOf(part.checksum))
+                .addFormDataPart("file", part.file.getName(), partBody)
+                .build();
+
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/drive/v1/files/upload_part")
+                .header("Authorization", "Bearer " + getTenantAccessToken())
+                .post(requestBody)
+                .build();
+        executeForData(request, "上传分片");
+    }
+
+    /**
+     * 分片上传 - 完成上传
+     * @return file_token
+     */
+    public String finishDriveUpload(String uploadId, int blockNum) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("upload_id", uploadId);
+        body.addProperty("block_num", blockNum);
+
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/drive/v1/files/upload_finish")
+                .header("Authorization", "Bearer " + getTenantAccessToken())
+                .post(RequestBody.create(MediaType.parse("application/json"), gson.toJson(body)))
+                .build();
+        return executeForData(request, "完成分片上传").get("file_token").getAsString();
+    }
+
+    /**
+     * 授予会话成员查看云文档文件的权限
+     */
+    public void shareDriveFileWithChat(String fileToken, String chatId) throws IOException {
+        JsonObject body = new JsonObject();
+        body.addProperty("member_type", "openchat");
+        body.addProperty("member_id", chatId);
+        body.addProperty("perm", "view");
+
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/drive/v1/permissions/" + fileToken + "/members?type=file&need_notification=false")
+                .header("Authorization", "Bearer " + getTenantAccessToken())
+                .post(RequestBody.create(MediaType.parse("application/json"), gson.toJson(body)))
+                .build();
+        executeForData(request, "共享文件");
+    }
+
+    /**
+     * 获取云文档文件的访问链接
+     */
+    public String getDriveFileUrl(String fileToken) throws IOException {
+        JsonObject doc = new JsonObject();
+        doc.addProperty("doc_token", fileToken);
+        doc.addProperty("doc_type", "file");
+        JsonArray docs = new JsonArray();
+        docs.add(doc);
+        JsonObject body = new JsonObject();
+        body.add("request_docs", docs);
+        body.addProperty("with_url", true);
+
+        Request request = new Request.Builder()
+                .url(BASE_URL + "/drive/v1/metas/batch_query")
+                .header("Authorization", "Bearer " + getTenantAccessToken())
+                .post(RequestBody.create(MediaType.parse("application/json"), gson.toJson(body)))
+                .build();
+        JsonArray metas = executeForData(request, "获取文件链接").getAsJsonArray("metas");
+        if (metas == null || metas.size() == 0) {
+            throw RemoteApiException.rejected("获取文件链接失败: 响应中没有文件信息");
+        }
+        return metas.get(0).getAsJsonObject().get("url").getAsString();
+    }
+
+    /**
+     * 执行请求并检查 HTTP 状态和业务错误码
+     * @return 响应中的 data 对象
+     */
+    private JsonObject executeForData(Request request, String action) throws IOException {
+        try (Response response = httpClient.newCall(request).execute()) {
+            String responseBody = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                AppLog.e(TAG, action + "失败: " + responseBody);
+                throw RemoteApiException.fromResponse(action, response, responseBody);
+            }
+            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
+            int code = jsonResponse.has("code") ? jsonResponse.get("code").getAsInt() : -1;
+            if (code != 0) {
+                String msg = jsonResponse.has("msg") ? jsonResponse.get("msg").getAsString() : "Unknown error";
+                throw businessError(action, code, msg);
+            }
+            JsonObject data = jsonResponse.getAsJsonObject("data");
+            return data != null ? data : new JsonObject();
+        }
+    }
+
+    /**
+     * 业务错误码（HTTP 200）：频率限制可以重试，其他错误重试无意义
+     */
+    private static RemoteApiException businessError(String action, int code, String msg) {
+        String message = action + "失败: code=" + code + ", msg=" + msg;
+        return code == RATE_LIMIT_CODE
+                ? RemoteApiException.rateLimited(message) : RemoteApiException.rejected(message);
+    }
+
     /**
      * WebSocket 连接信息
      */
@@ -1,6 +1,8 @@
 package com.kooo.evcam.feishu;
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemotePlatform;
+import com.kooo.evcam.remote.upload.UploadScheduler;
 
 import android.content.Context;
 
@@ -11,6 +13,7 @@ import java.util.List;
 /**
  * 飞书图片上传服务
  * 负责将拍摄的照片上传到飞书
+ * 上传由 {@link UploadScheduler} 调度：图片并发上传，图片消息按顺序发送
  */
 public class FeishuPhotoUploadService {
     private static final String TAG = "FeishuPhotoUpload";
@@ -36,95 +39,92 @@ public class FeishuPhotoUploadService {
      * @param callback 上传回调
      */
     public void uploadPhotos(List<File> photoFiles, String chatId, UploadCallback callback) {
-        new Thread(() -> {
-            try {
-                if (photoFiles == null || photoFiles.isEmpty()) {
-                    callback.onError("没有图片文件可上传");
-                    return;
-                }
+        if (photoFiles == null || photoFiles.isEmpty()) {
+            callback.onError("没有图片文件可上传");
+            return;
+        }
 
-                callback.onProgress("开始上传 " + photoFiles.size() + " 张照片...");
-
-                List<String> uploadedFiles = new ArrayList<>();
-                List<String> failedFiles = new ArrayList<>();
-
-                for (int i = 0; i < photoFiles.size(); i++) {
-                    File photoFile = photoFiles.get(i);
+        List<File> files = new ArrayList<>();
+        List<String> missingFiles = new ArrayList<>();
+        for (File photoFile : photoFiles) {
+            if (photoFile.exists()) {
+                files.add(photoFile);
+            } else {
+                AppLog.w(TAG, "图片文件不存在: " + photoFile.getPath());
+                missingFiles.add(photoFile.getName() + " (文件不存在)");
+            }
+        }
 
-                    if (!photoFile.exists()) {
-                        AppLog.w(TAG, "图片文件不存在: " + photoFile.getPath());
-                        failedFiles.add(photoFile.getName() + " (文件不存在)");
-                        continue;
-                    }
+        callback.onProgress("开始上传 " + files.size() + " 张照片...");
 
-                    callback.onProgress("正在上传 (" + (i + 1) + "/" + photoFiles.size() + "): " + photoFile.getName());
+        UploadScheduler.FileUploader<Void, String> uploader = new UploadScheduler.FileUploader<Void, String>() {
+            @Override
+            public Void prepare(File photoFile, int index) {
+                return null;
+            }
 
-                    // 重试上传（最多2次）
-                    boolean uploadSuccess = false;
-                    int retryCount = 0;
-                    int maxRetries = 2;
-                    String lastError = "";
+            @Override
+            public String upload(File photoFile, Void prepared, int index,
+                                 UploadScheduler.TokenBucket limiter) throws Exception {
+                // 1. 上传图片获取 image_key
+                limiter.acquire();
+                return apiClient.uploadImage(photoFile);
+            }
 
-                    while (!uploadSuccess && retryCount < maxRetries) {
-                        try {
-                            if (retryCount > 0) {
-                                callback.onProgress("重试第 " + retryCount + " 次: " + photoFile.getName());
-                                Thread.sleep(1500);
-                            }
+            @Override
+            public void deliver(File photoFile, String imageKey, int index,
+                                UploadScheduler.TokenBucket limiter) throws Exception {
+                // 2. 发送图片消息
+                limiter.acquire();
+                apiClient.sendImageMessage("chat_id", chatId, imageKey);
+            }
 
-                            // 1. 上传图片获取 image_key
-                            String imageKey = apiClient.uploadImage(photoFile);
+            @Override
+            public void cleanup(Void prepared) {
+            }
+        };
 
-                            // 2. 发送图片消息
-                            apiClient.sendImageMessage("chat_id", chatId, imageKey);
+        boolean submitted = UploadScheduler.getInstance().submit(RemotePlatform.FEISHU, files, uploader,
+                new UploadScheduler.BatchListener() {
+                    @Override
+                    public void onProgress(String message) {
+                        callback.onProgress(message);
+                    }
 
-                            uploadedFiles.add(photoFile.getName());
-                            AppLog.d(TAG, "图片上传成功: " + photoFile.getName());
-                            uploadSuccess = true;
+                    @Override
+                    public void onComplete(List<String> uploaded, List<String> failed,
+                                           UploadScheduler.TokenBucket limiter) {
+                        List<String> failedFiles = new ArrayList<>(missingFiles);
+                        failedFiles.addAll(failed);
+
+                        // 统一处理上传结果
+                        String message;
+                        if (uploaded.isEmpty()) {
+                            message = "❌ 所有图片上传失败\n失败列表:\n" + String.join("\n", failedFiles);
+                            callback.onError(message);
+                        } else if (failedFiles.isEmpty()) {
+                            message = "✅ 图片上传完成！共上传 " + uploaded.size() + " 张照片";
+                            callback.onSuccess(message);
+                        } else {
+                            message = "⚠️ 上传完成（部分失败）\n" +
+                                    "成功: " + uploaded.size() + " 张\n" +
+                                    "失败: " + failedFiles.size() + " 张\n\n" +
+                                    "失败列表:\n" + String.join("\n", failedFiles);
+                            callback.onSuccess(message);
+                        }
 
+                        // 图片消息已按顺序发送并由服务器接受，汇总消息排在其后
+                        try {
+                            limiter.acquire();
+                            apiClient.sendTextMessage("chat_id", chatId, message);
                         } catch (Exception e) {
-                            retryCount++;
-                            lastError = e.getMessage();
-                            AppLog.e(TAG, "上传图片失败 (尝试 " + retryCount + "/" + maxRetries + "): " + photoFile.getName(), e);
-
-                            if (retryCount >= maxRetries) {
-                                failedFiles.add(photoFile.getName() + " (" + (lastError != null ? lastError : "未知错误") + ")");
-                                break;
-                            }
+                            AppLog.e(TAG, "发送汇总消息失败", e);
                         }
                     }
-
-                    // 延迟500ms后再上传下一张照片
-                    if (i < photoFiles.size() - 1) {
-                        Thread.sleep(500);
-                    }
-                }
-
-                // 统一处理上传结果
-                if (uploadedFiles.isEmpty()) {
-                    String errorMsg = "❌ 所有图片上传失败\n失败列表:\n" + String.join("\n", failedFiles);
-                    callback.onError(errorMsg);
-                    apiClient.sendTextMessage("chat_id", chatId, errorMsg);
-                } else if (failedFiles.isEmpty()) {
-                    String successMessage = "✅ 图片上传完成！共上传 " + uploadedFiles.size() + " 张照片";
-                    callback.onSuccess(successMessage);
-                    Thread.sleep(2000);
-                    apiClient.sendTextMessage("chat_id", chatId, successMessage);
-                } else {
-                    String mixedMessage = "⚠️ 上传完成（部分失败）\n" +
-                            "成功: " + uploadedFiles.size() + " 张\n" +
-                            "失败: " + failedFiles.size() + " 张\n\n" +
-                            "失败列表:\n" + String.join("\n", failedFiles);
-                    callback.onSuccess(mixedMessage);
-                    Thread.sleep(2000);
-                    apiClient.sendTextMessage("chat_id", chatId, mixedMessage);
-                }
-
-            } catch (Exception e) {
-                AppLog.e(TAG, "上传过程出错", e);
-                callback.onError("上传过程出错: " + e.getMessage());
-            }
-        }).start();
+                });
+        if (!submitted) {
+            callback.onError("上传队列已满，请稍后重试");
+        }
     }
 
     /**
@@ -2,6 +2,10 @@ package com.kooo.evcam.feishu;
 
 import com.kooo.evcam.AppLog;
 import com.kooo.evcam.dingtalk.VideoThumbnailExtractor;
+import com.kooo.evcam.remote.core.RemotePlatform;
+import com.kooo.evcam.remote.upload.ChunkedUploadEngine;
+import com.kooo.evcam.remote.upload.UploadScheduler;
+import com.kooo.evcam.remote.upload.VideoSegmenter;
 
 import android.content.Context;
 
@@ -12,10 +16,16 @@ import java.util.List;
 /**
  * 飞书视频上传服务
  * 负责将录制的视频上传到飞书
+ * 上传由 {@link UploadScheduler} 调度：封面提取与上一个视频的上传并行，视频和封面并发上传，视频消息按顺序发送
+ * 超过消息文件上限的视频按关键帧无损分段（{@link VideoSegmenter}），每段作为视频消息发送；
+ * 无法按关键帧分段时通过云文档分片上传（{@link ChunkedUploadEngine}，可续传）到应用云空间，共享给会话后发送链接
  */
 public class FeishuVideoUploadService {
     private static final String TAG = "FeishuVideoUpload";
 
+    // 消息文件上传上限 30MB
+    private static final long MAX_MESSAGE_FILE_BYTES = 30L * 1024 * 1024;
+
     private final Context context;
     private final FeishuApiClient apiClient;
 
@@ -30,6 +40,39 @@ public class FeishuVideoUploadService {
         this.apiClient = apiClient;
     }
 
+    /**
+     * 视频的准备结果
+     */
+    private static final class PreparedVideo {
+        final File thumbnailFile;
+        final int durationMs;
+        // 按关键帧分段的结果，未超过上限或无法分段时为 null
+        final List<VideoSegmenter.Segment> segments;
+        // 已上传的段（重试时跳过）
+        final List<UploadedVideo> uploadedSegments = new ArrayList<>();
+
+        PreparedVideo(File thumbnailFile, int durationMs, List<VideoSegmenter.Segment> segments) {
+            this.thumbnailFile = thumbnailFile;
+            this.durationMs = durationMs;
+            this.segments = segments;
+        }
+    }
+
+    /**
+     * 视频的 file_key 和封面的 image_key（可能为 null）；分片上传到云空间的视频为 drive_token
+     */
+    private static final class UploadedVideo {
+        final String fileKey;
+        final String imageKey;
+        final String driveToken;
+
+        UploadedVideo(String fileKey, String imageKey, String driveToken) {
+            this.fileKey = fileKey;
+            this.imageKey = imageKey;
+            this.driveToken = driveToken;
+        }
+    }
+
     /**
      * 上传视频文件到飞书
      * @param videoFiles 视频文件列表
@@ -37,110 +80,185 @@ public class FeishuVideoUploadService {
      * @param callback 上传回调
      */
     public void uploadVideos(List<File> videoFiles, String chatId, UploadCallback callback) {
-        new Thread(() -> {
-            try {
-                if (videoFiles == null || videoFiles.isEmpty()) {
-                    callback.onError("没有视频文件可上传");
-                    return;
-                }
+        if (videoFiles == null || videoFiles.isEmpty()) {
+            callback.onError("没有视频文件可上传");
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        List<String> missingFiles = new ArrayList<>();
+        for (File videoFile : videoFiles) {
+            if (videoFile.exists()) {
+                files.add(videoFile);
+            } else {
+                AppLog.w(TAG, "视频文件不存在: " + videoFile.getPath());
+                missingFiles.add(videoFile.getName() + " (文件不存在)");
+            }
+        }
+
+        callback.onProgress("开始上传 " + files.size() + " 个视频文件...");
+        int total = files.size();
 
-                callback.onProgress("开始上传 " + videoFiles.size() + " 个视频文件...");
+        UploadScheduler.FileUploader<PreparedVideo, List<UploadedVideo>> uploader =
+                new UploadScheduler.FileUploader<PreparedVideo, List<UploadedVideo>>() {
+            @Override
+            public PreparedVideo prepare(File videoFile, int index) {
+                // 1. 提取视频封面缩略图和获取时长
+                File thumbnailFile = new File(videoFile.getParent(),
+                        videoFile.getName().replace(".mp4", "_thumb.jpg"));
+                if (!VideoThumbnailExtractor.extractThumbnail(videoFile, thumbnailFile)) {
+                    AppLog.w(TAG, "无法提取视频缩略图，将不显示封面");
+                    thumbnailFile = null;
+                }
 
-                List<String> uploadedFiles = new ArrayList<>();
-                List<String> failedFiles = new ArrayList<>();
+                // 获取视频时长（毫秒）
+                int durationMs = (int) VideoThumbnailExtractor.getVideoDurationMs(videoFile);
+                AppLog.d(TAG, "视频时长: " + durationMs + " 毫秒");
 
-                for (int i = 0; i < videoFiles.size(); i++) {
-                    File videoFile = videoFiles.get(i);
+                // 超过消息文件上限：按关键帧分段
+                List<VideoSegmenter.Segment> segments = null;
+                if (videoFile.length() > MAX_MESSAGE_FILE_BYTES) {
+                    callback.onProgress("视频超过 30MB，正在分段 (" + (index + 1) + "/" + total + ")...");
+                    segments = VideoSegmenter.split(context, videoFile, MAX_MESSAGE_FILE_BYTES);
+                }
+                return new PreparedVideo(thumbnailFile, durationMs, segments);
+            }
 
-                    if (!videoFile.exists()) {
-                        AppLog.w(TAG, "视频文件不存在: " + videoFile.getPath());
-                        failedFiles.add(videoFile.getName() + " (文件不存在)");
-                        continue;
+            @Override
+            public List<UploadedVideo> upload(File videoFile, PreparedVideo prepared, int index,
+                                              UploadScheduler.TokenBucket limiter) throws Exception {
+                List<UploadedVideo> uploaded = new ArrayList<>();
+                if (prepared.segments != null) {
+                    // 逐段上传（每段都是可播放的视频），已上传的段重试时跳过
+                    for (int i = prepared.uploadedSegments.size(); i < prepared.segments.size(); i++) {
+                        VideoSegmenter.Segment segment = prepared.segments.get(i);
+                        callback.onProgress("正在上传视频 (" + (index + 1) + "/" + total + ") 第 "
+                                + segment.number + "/" + segment.count + " 段...");
+                        prepared.uploadedSegments.add(uploadVideo(segment.file, segment.thumbnailFile,
+                                segment.durationMs, limiter));
                     }
+                    uploaded.addAll(prepared.uploadedSegments);
+                    return uploaded;
+                }
+                if (videoFile.length() > MAX_MESSAGE_FILE_BYTES) {
+                    // 无法按关键帧分段：分片上传到云空间（网络中断后从未完成的分片继续）
+                    callback.onProgress("正在分片上传视频 (" + (index + 1) + "/" + total + ")...");
+                    String driveToken = ChunkedUploadEngine.getInstance(context).upload(videoFile, chatId,
+                            apiClient.newDriveUploadProtocol(), limiter,
+                            (done, parts) -> callback.onProgress(videoFile.getName() + " 已上传 " + done + "/" + parts + " 个分片"));
+                    uploaded.add(new UploadedVideo(null, null, driveToken));
+                    return uploaded;
+                }
 
-                    callback.onProgress("正在处理 (" + (i + 1) + "/" + videoFiles.size() + "): " + videoFile.getName());
-
-                    File thumbnailFile = null;
-                    try {
-                        // 1. 提取视频封面缩略图和获取时长
-                        callback.onProgress("正在提取视频信息 (" + (i + 1) + "/" + videoFiles.size() + ")...");
-                        thumbnailFile = new File(videoFile.getParent(),
-                                videoFile.getName().replace(".mp4", "_thumb.jpg"));
-                        boolean thumbnailExtracted = VideoThumbnailExtractor.extractThumbnail(videoFile, thumbnailFile);
-                        if (!thumbnailExtracted) {
-                            AppLog.w(TAG, "无法提取视频缩略图，将不显示封面");
-                            thumbnailFile = null;
-                        }
+                callback.onProgress("正在上传视频 (" + (index + 1) + "/" + total + ")...");
+                uploaded.add(uploadVideo(videoFile, prepared.thumbnailFile, prepared.durationMs, limiter));
+                return uploaded;
+            }
 
-                        // 获取视频时长（秒），转换为毫秒
-                        int durationSec = VideoThumbnailExtractor.getVideoDuration(videoFile);
-                        int durationMs = durationSec * 1000;
-                        AppLog.d(TAG, "视频时长: " + durationSec + " 秒 (" + durationMs + " 毫秒)");
-
-                        // 2. 上传视频文件获取 file_key（带时长参数）
-                        callback.onProgress("正在上传视频 (" + (i + 1) + "/" + videoFiles.size() + ")...");
-                        String fileKey = apiClient.uploadFile(videoFile, "mp4", durationMs);
-
-                        // 3. 上传封面图片获取 image_key（如果有）
-                        String imageKey = null;
-                        if (thumbnailFile != null && thumbnailFile.exists()) {
-                            callback.onProgress("正在上传视频封面...");
-                            try {
-                                imageKey = apiClient.uploadImage(thumbnailFile);
-                                AppLog.d(TAG, "封面上传成功: " + imageKey);
-                            } catch (Exception e) {
-                                AppLog.w(TAG, "封面上传失败，视频将没有封面", e);
-                            }
-                        }
+            @Override
+            public void deliver(File videoFile, List<UploadedVideo> uploadedList, int index,
+                                UploadScheduler.TokenBucket limiter) throws Exception {
+                UploadedVideo uploaded = uploadedList.get(0);
+                if (uploaded.driveToken != null) {
+                    // 云空间文件：共享给会话后发送链接
+                    limiter.acquire();
+                    apiClient.shareDriveFileWithChat(uploaded.driveToken, chatId);
+                    limiter.acquire();
+                    String url = apiClient.getDriveFileUrl(uploaded.driveToken);
+                    limiter.acquire();
+                    apiClient.sendTextMessage("chat_id", chatId, "视频 " + (index + 1) + "/" + total + "："
+                            + videoFile.getName() + "（" + (videoFile.length() / (1024 * 1024))
+                            + "MB，超过消息文件上限，已上传到云空间）\n" + url);
+                    return;
+                }
 
-                        // 4. 发送视频消息（带封面）
-                        apiClient.sendVideoMessage("chat_id", chatId, fileKey, imageKey);
+                // 4. 发送视频消息（带封面；已发送的段从列表移除，重试时不重复发送）
+                while (!uploadedList.isEmpty()) {
+                    UploadedVideo video = uploadedList.get(0);
+                    limiter.acquire();
+                    apiClient.sendVideoMessage("chat_id", chatId, video.fileKey, video.imageKey);
+                    uploadedList.remove(0);
+                }
+            }
 
-                        uploadedFiles.add(videoFile.getName());
-                        AppLog.d(TAG, "视频上传成功: " + videoFile.getName());
+            @Override
+            public void cleanup(PreparedVideo prepared) {
+                // 清理临时缩略图文件和分段
+                if (prepared != null && prepared.thumbnailFile != null && prepared.thumbnailFile.exists()) {
+                    prepared.thumbnailFile.delete();
+                }
+                if (prepared != null) {
+                    VideoSegmenter.delete(prepared.segments);
+                }
+            }
+        };
+
+        boolean submitted = UploadScheduler.getInstance().submit(RemotePlatform.FEISHU, files, uploader,
+                new UploadScheduler.BatchListener() {
+                    @Override
+                    public void onProgress(String message) {
+                        callback.onProgress(message);
+                    }
 
-                        // 5. 延迟2秒后再上传下一个视频
-                        if (i < videoFiles.size() - 1) {
-                            callback.onProgress("等待2秒后上传下一个视频...");
-                            Thread.sleep(2000);
+                    @Override
+                    public void onComplete(List<String> uploaded, List<String> failed,
+                                           UploadScheduler.TokenBucket limiter) {
+                        List<String> failedFiles = new ArrayList<>(missingFiles);
+                        failedFiles.addAll(failed);
+
+                        // 统一处理上传结果
+                        String message;
+                        if (uploaded.isEmpty()) {
+                            message = "❌ 所有视频上传失败\n失败列表:\n" + String.join("\n", failedFiles);
+                            callback.onError(message);
+                        } else if (failedFiles.isEmpty()) {
+                            message = "✅ 视频上传完成！共上传 " + uploaded.size() + " 个文件";
+                            callback.onSuccess(message);
+                        } else {
+                            message = "⚠️ 上传完成（部分失败）\n" +
+                                    "成功: " + uploaded.size() + " 个\n" +
+                                    "失败: " + failedFiles.size() + " 个\n\n" +
+                                    "失败列表:\n" + String.join("\n", failedFiles);
+                            callback.onSuccess(message);
                         }
 
-                    } catch (Exception e) {
-                        AppLog.e(TAG, "上传视频失败: " + videoFile.getName(), e);
-                        failedFiles.add(videoFile.getName() + " (" + e.getMessage() + ")");
-                    } finally {
-                        // 清理临时缩略图文件
-                        if (thumbnailFile != null && thumbnailFile.exists()) {
-                            thumbnailFile.delete();
+                        // 视频消息已按顺序发送并由服务器接受，汇总消息排在其后
+                        try {
+                            limiter.acquire();
+                            apiClient.sendTextMessage("chat_id", chatId, message);
+                        } catch (Exception e) {
+                            AppLog.e(TAG, "发送汇总消息失败", e);
                         }
                     }
-                }
+                });
+        if (!submitted) {
+            callback.onError("上传队列已满，请稍后重试");
+        }
+    }
 
-                // 统一处理上传结果
-                if (uploadedFiles.isEmpty()) {
-                    String errorMsg = "❌ 所有视频上传失败\n失败列表:\n" + String.join("\n", failedFiles);
-                    callback.onError(errorMsg);
-                    apiClient.sendTextMessage("chat_id", chatId, errorMsg);
-                } else if (failedFiles.isEmpty()) {
-                    String successMessage = "✅ 视频上传完成！共上传 " + uploadedFiles.size() + " 个文件";
-                    callback.onSuccess(successMessage);
-                    Thread.sleep(3000);
-                    apiClient.sendTextMessage("chat_id", chatId, successMessage);
-                } else {
-                    String mixedMessage = "⚠️ 上传完成（部分失败）\n" +
-                            "成功: " + uploadedFiles.size() + " 个\n" +
-                            "失败: " + failedFiles.size() + " 个\n\n" +
-                            "失败列表:\n" + String.join("\n", failedFiles);
-                    callback.onSuccess(mixedMessage);
-                    Thread.sleep(3000);
-                    apiClient.sendTextMessage("chat_id", chatId, mixedMessage);
-                }
+    /**
+     * 上传视频文件和封面，获取 file_key 和 image_key
+     */
+    private UploadedVideo uploadVideo(File videoFile, File thumbnailFile, int durationMs,
+                                      UploadScheduler.TokenBucket limiter) throws Exception {
+        // 2. 上传视频文件获取 file_key（带时长参数）
+        limiter.acquire();
+        String fileKey = apiClient.uploadFile(videoFile, "mp4", durationMs);
 
+        // 3. 上传封面图片获取 image_key（如果有）
+        String imageKey = null;
+        if (thumbnailFile != null && thumbnailFile.exists()) {
+            try {
+                limiter.acquire();
+                imageKey = apiClient.uploadImage(thumbnailFile);
+                AppLog.d(TAG, "封面上传成功: " + imageKey);
+            } catch (InterruptedException e) {
+                throw e;
             } catch (Exception e) {
-                AppLog.e(TAG, "上传过程出错", e);
-                callback.onError("上传过程出错: " + e.getMessage());
+                AppLog.w(TAG, "封面上传失败，视频将没有封面", e);
             }
-        }).start();
+        }
+        return new UploadedVideo(fileKey, imageKey, null);
     }
 
     /**
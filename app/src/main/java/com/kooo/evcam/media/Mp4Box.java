@@ -0,0 +1,190 @@
+package com.kooo.evcam.media;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MP4 box（ISO/IEC 14496-12）位置信息和读取工具
+ * 顶层 box 从文件读取；moov 整体读入内存后，子 box 的位置是相对缓冲区的偏移
+ */
+final class Mp4Box {
+
+    static final int FTYP = fourcc("ftyp");
+    static final int MOOV = fourcc("moov");
+    static final int MDAT = fourcc("mdat");
+    static final int MVHD = fourcc("mvhd");
+    static final int MVEX = fourcc("mvex");
+    static final int TRAK = fourcc("trak");
+    static final int TKHD = fourcc("tkhd");
+    static final int EDTS = fourcc("edts");
+    static final int ELST = fourcc("elst");
+    static final int MDIA = fourcc("mdia");
+    static final int MDHD = fourcc("mdhd");
+    static final int HDLR = fourcc("hdlr");
+    static final int MINF = fourcc("minf");
+    static final int DINF = fourcc("dinf");
+    static final int STBL = fourcc("stbl");
+    static final int STSD = fourcc("stsd");
+    static final int STTS = fourcc("stts");
+    static final int CTTS = fourcc("ctts");
+    static final int STSS = fourcc("stss");
+    static final int STSZ = fourcc("stsz");
+    static final int STZ2 = fourcc("stz2");
+    static final int STSC = fourcc("stsc");
+    static final int STCO = fourcc("stco");
+    static final int CO64 = fourcc("co64");
+
+    // hdlr 中的轨道类型
+    static final int HANDLER_VIDEO = fourcc("vide");
+    static final int HANDLER_SOUND = fourcc("soun");
+
+    final int type;
+    final long offset;      // box 起始位置（含头部）
+    final int headerSize;   // 8，或 16（64 位长度）
+    final long size;        // box 总长度（含头部）
+
+    Mp4Box(int type, long offset, int headerSize, long size) {
+        this.type = type;
+        this.offset = offset;
+        this.headerSize = headerSize;
+        this.size = size;
+    }
+
+    long dataOffset() {
+        return offset + headerSize;
+    }
+
+    long dataSize() {
+        return size - headerSize;
+    }
+
+    long end() {
+        return offset + size;
+    }
+
+    static int fourcc(String name) {
+        byte[] b = name.getBytes(StandardCharsets.US_ASCII);
+        return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+    }
+
+    static String name(int type) {
+        byte[] b = {(byte) (type >>> 24), (byte) (type >>> 16), (byte) (type >>> 8), (byte) type};
+        return new String(b, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 读取文件的顶层 box
+     * 长度为 0 的 box 延伸到文件末尾；越过文件末尾的 box（录制中断）视为文件损坏
+     */
+    static List<Mp4Box> readTopLevel(FileChannel channel) throws IOException {
+        List<Mp4Box> boxes = new ArrayList<>();
+        long fileSize = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long position = 0;
+        while (position + 8 <= fileSize) {
+            header.clear();
+            header.limit(8);
+            readFully(channel, header, position);
+            long size = header.getInt(0) & 0xffffffffL;
+            int type = header.getInt(4);
+            int headerSize = 8;
+            if (size == 1) {
+                header.clear();
+                header.limit(8);
+                readFully(channel, header, position + 8);
+                size = header.getLong(0);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = fileSize - position;
+            }
+            if (size < headerSize || position + size > fileSize) {
+                throw new IOException("Truncated box '" + name(type) + "' at " + position);
+            }
+            boxes.add(new Mp4Box(type, position, headerSize, size));
+            position += size;
+        }
+        return boxes;
+    }
+
+    /**
+     * 解析缓冲区 [start, end) 范围内的子 box
+     */
+    static List<Mp4Box> children(ByteBuffer buffer, long start, long end) throws IOException {
+        List<Mp4Box> boxes = new ArrayList<>();
+        long position = start;
+        while (position + 8 <= end) {
+            int p = (int) position;
+            long size = buffer.getInt(p) & 0xffffffffL;
+            int type = buffer.getInt(p + 4);
+            int headerSize = 8;
+            if (size == 1) {
+                if (position + 16 > end) {
+                    break;
+                }
+                size = buffer.getLong(p + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerSize || position + size > end) {
+                throw new IOException("Corrupt box '" + name(type) + "' at moov offset " + position);
+            }
+            boxes.add(new Mp4Box(type, position, headerSize, size));
+            position += size;
+        }
+        return boxes;
+    }
+
+    /**
+     * 查找第一个指定类型的 box，没有时返回 null
+     */
+    static Mp4Box find(List<Mp4Box> boxes, int type) {
+        for (Mp4Box box : boxes) {
+            if (box.type == type) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查找必需的 box，没有时抛出异常
+     */
+    static Mp4Box require(List<Mp4Box> boxes, int type) throws IOException {
+        Mp4Box box = find(boxes, type);
+        if (box == null) {
+            throw new IOException("Missing box '" + name(type) + "'");
+        }
+        return box;
+    }
+
+    /**
+     * 复制缓冲区中整个 box 的原始字节
+     */
+    static byte[] copyOf(ByteBuffer buffer, Mp4Box box) {
+        byte[] bytes = new byte[(int) box.size];
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) box.offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 从 position 开始读满缓冲区剩余空间
+     */
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+}
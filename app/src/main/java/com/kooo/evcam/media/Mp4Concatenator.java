@@ -0,0 +1,200 @@
+package com.kooo.evcam.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * MP4 无损拼接
+ * 把编码参数相同的多个片段依次拼成一个文件（如同一摄像头 Watchdog 重建前后的录像、事件前的循环录像 + 实时录像）：
+ * 合并各片段的样本表，样本数据用 transferTo 直接复制（{@link Mp4Writer}），不解码、不重新编码
+ *
+ * 各轨道共用一条电影时间轴：每个片段的时长取各轨道编辑后时长（换算到电影时间刻度）的最大值，
+ * 下一个片段的所有轨道都从累计的片段时长处开始（换算到各自的时间刻度）。
+ * 音频样本时长与视频帧不对齐，若各轨道各自顺延，每个片段的差值会逐段累积成音画不同步
+ *
+ * 各片段的轨道数、轨道类型、时间刻度和样本描述（stsd，含 SPS/PPS）必须完全相同，否则抛出 IOException，
+ * 调用方应分别处理各片段
+ *
+ * 内存占用与样本总数成正比（各片段的样本表），与文件大小无关
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class Mp4Concatenator {
+
+    /**
+     * 一个片段：文件中 [startUs, endUs) 的部分，起点向前对齐到关键帧
+     */
+    public static final class Clip {
+        public final File file;
+        public final long startUs;
+        public final long endUs;
+
+        public Clip(File file, long startUs, long endUs) {
+            this.file = file;
+            this.startUs = startUs;
+            this.endUs = endUs;
+        }
+
+        /**
+         * 整个文件
+         */
+        public static Clip of(File file) {
+            return new Clip(file, 0, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 拼接结果
+     */
+    public static final class Result {
+        public final File output;
+        public final int clips;
+        public final long durationUs;
+        public final long bytes;        // 写入的字节数
+        public final long elapsedMs;
+
+        Result(File output, int clips, long durationUs, long bytes, long elapsedMs) {
+            this.output = output;
+            this.clips = clips;
+            this.durationUs = durationUs;
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * 拼接速度（解析 + 写入），字节/秒
+         */
+        public double getBytesPerSec() {
+            return bytes * 1000.0 / Math.max(1, elapsedMs);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d clips -> %.1f MB, %.1f s in %d ms (%.1f MB/s)",
+                    clips, bytes / 1048576.0, durationUs / 1e6, elapsedMs, getBytesPerSec() / 1048576.0);
+        }
+    }
+
+    private Mp4Concatenator() {
+    }
+
+    /**
+     * 拼接整个文件
+     */
+    public static Result concat(List<File> inputs, File dst) throws IOException {
+        List<Clip> clips = new ArrayList<>(inputs.size());
+        for (File input : inputs) {
+            clips.add(Clip.of(input));
+        }
+        return concatClips(clips, dst);
+    }
+
+    /**
+     * 拼接片段（可以只取文件的一部分，如事件前循环录像的最后几秒）
+     * @throws IOException 片段无法解析、编码参数不同或写入失败（失败时删除输出文件）
+     */
+    public static Result concatClips(List<Clip> clips, File dst) throws IOException {
+        if (clips.isEmpty()) {
+            throw new IllegalArgumentException("No clips");
+        }
+        long startMs = System.currentTimeMillis();
+        List<Mp4Movie> movies = new ArrayList<>(clips.size());
+        for (Clip clip : clips) {
+            movies.add(Mp4Movie.parse(clip.file));
+        }
+        Mp4Movie first = movies.get(0);
+        List<Mp4Movie.Track> templates = first.getTracks();
+        for (Mp4Movie movie : movies) {
+            checkCompatible(first, movie);
+        }
+
+        List<List<Mp4Writer.TrackRange>> pieces = new ArrayList<>();
+        for (int t = 0; t < templates.size(); t++) {
+            pieces.add(new ArrayList<>());
+        }
+        // 输出轨道的编辑起点（第一个非空范围的编辑起点），后续片段按它换算显示时间
+        long[] outputShifts = new long[templates.size()];
+        Arrays.fill(outputShifts, -1);
+        // 当前片段在电影时间轴上的起点（电影时间刻度）
+        long movieOffset = 0;
+        long movieTimescale = first.timescale;
+        for (int i = 0; i < clips.size(); i++) {
+            Clip clip = clips.get(i);
+            List<Mp4Movie.Track> tracks = movies.get(i).getTracks();
+            Mp4Movie.Track primary = Mp4Splitter.primaryTrack(movies.get(i));
+            int from = 0;
+            int to = primary.getSampleCount();
+            if (clip.startUs > 0 || clip.endUs != Long.MAX_VALUE) {
+                int[] range = Mp4Splitter.sampleRange(primary, clip.startUs, clip.endUs);
+                from = range[0];
+                to = range[1];
+            }
+            long clipDuration = 0;
+            for (int t = 0; t < tracks.size(); t++) {
+                Mp4Movie.Track track = tracks.get(t);
+                int trackFrom = track == primary ? from : Mp4Splitter.alignedSample(primary, from, track);
+                int trackTo = track == primary ? to : Mp4Splitter.alignedSample(primary, to, track);
+                if (trackTo <= trackFrom) {
+                    continue;
+                }
+                Mp4Writer.TrackRange range = new Mp4Writer.TrackRange(track, trackFrom, trackTo);
+                long shift = Mp4Writer.editShift(range);
+                if (outputShifts[t] < 0) {
+                    outputShifts[t] = shift;
+                }
+                // 编辑后的内容从片段起点开始显示：起始解码时间 = 片段起点 + 输出编辑起点 - 本范围编辑起点
+                long start = movieOffset * track.timescale / movieTimescale + outputShifts[t] - shift;
+                pieces.get(t).add(new Mp4Writer.TrackRange(track, trackFrom, trackTo, Math.max(0, start)));
+                // 向上取整，保证时长最长的轨道不与下一个片段重叠
+                clipDuration = Math.max(clipDuration, (Mp4Writer.editedDuration(range) * movieTimescale
+                        + track.timescale - 1) / track.timescale);
+            }
+            movieOffset += clipDuration;
+        }
+
+        List<Mp4Writer.OutputTrack> outputs = new ArrayList<>();
+        for (List<Mp4Writer.TrackRange> trackPieces : pieces) {
+            if (!trackPieces.isEmpty()) {
+                outputs.add(new Mp4Writer.OutputTrack(trackPieces));
+            }
+        }
+        long durationUs = Mp4Movie.toUs(movieOffset, movieTimescale);
+
+        long bytes;
+        try {
+            bytes = Mp4Writer.write(first, outputs, dst);
+        } catch (IOException | RuntimeException e) {
+            dst.delete();
+            throw e;
+        }
+        return new Result(dst, clips.size(), durationUs, bytes, System.currentTimeMillis() - startMs);
+    }
+
+    /**
+     * 检查两个文件能否拼接：轨道一一对应，类型、时间刻度和样本描述相同
+     */
+    private static void checkCompatible(Mp4Movie first, Mp4Movie movie) throws IOException {
+        List<Mp4Movie.Track> expected = first.getTracks();
+        List<Mp4Movie.Track> actual = movie.getTracks();
+        if (expected.size() != actual.size()) {
+            throw new IOException("Incompatible " + movie.file.getName() + ": " + actual.size()
+                    + " tracks, expected " + expected.size());
+        }
+        for (int t = 0; t < expected.size(); t++) {
+            Mp4Movie.Track a = expected.get(t);
+            Mp4Movie.Track b = actual.get(t);
+            if (a.handlerType != b.handlerType || a.timescale != b.timescale) {
+                throw new IOException("Incompatible " + movie.file.getName() + ": track " + b.trackId
+                        + " type or timescale differs");
+            }
+            if (!Arrays.equals(a.stsd, b.stsd)) {
+                throw new IOException("Incompatible " + movie.file.getName() + ": track " + b.trackId
+                        + " codec configuration differs");
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.kooo.evcam.media;
+
+import com.kooo.evcam.storage.IoScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * MP4 元数据（时长、分辨率、编码格式、帧数、关键帧时间）
+ * 只定位读取 ftyp / moov，解析 mvhd、tkhd、mdhd、stsd、stsz、stss（关键帧时间另需 stts / ctts / elst），
+ * 不展开整个样本表，也不创建解码器，比 MediaMetadataRetriever 轻得多
+ *
+ * {@link #get} 带 LRU 缓存（按路径，文件大小或修改时间变化后重新解析），
+ * 同一文件的多次查询（上传时的时长、封面、分段）只读一次 moov
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class Mp4Info {
+
+    // 缓存的文件数
+    private static final int CACHE_SIZE = 64;
+    // moov 大小上限（与 Mp4Movie 相同）
+    private static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+
+    private static final Map<String, Mp4Info> cache = new LinkedHashMap<String, Mp4Info>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Mp4Info> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public final File file;
+    public final long fileSize;
+    public final long lastModified;
+    public final long durationUs;
+    // 以下为视频轨道的信息，没有视频轨道时为 0 / null / 空数组
+    public final int width;
+    public final int height;
+    public final String videoCodec;     // 样本描述类型，如 avc1 / hvc1
+    public final int frameCount;
+    public final long[] keyframeTimesUs;    // 关键帧的显示时间（升序）
+    public final String audioCodec;     // 如 mp4a，没有音频轨道时为 null
+
+    private Mp4Info(File file, long fileSize, long lastModified, long durationUs, int width, int height,
+                    String videoCodec, int frameCount, long[] keyframeTimesUs, String audioCodec) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.durationUs = durationUs;
+        this.width = width;
+        this.height = height;
+        this.videoCodec = videoCodec;
+        this.frameCount = frameCount;
+        this.keyframeTimesUs = keyframeTimesUs;
+        this.audioCodec = audioCodec;
+    }
+
+    public boolean hasVideo() {
+        return videoCodec != null;
+    }
+
+    public long getDurationMs() {
+        return durationUs / 1000;
+    }
+
+    /**
+     * 平均帧率，没有视频或时长为 0 时返回 0
+     */
+    public double getFrameRate() {
+        return durationUs > 0 ? frameCount * 1e6 / durationUs : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %.3f s, %s %dx%d, %d frames (%.2f fps), %d keyframes, audio %s",
+                file.getName(), durationUs / 1e6, videoCodec, width, height, frameCount, getFrameRate(),
+                keyframeTimesUs.length, audioCodec);
+    }
+
+    /**
+     * 获取元数据（优先使用缓存）
+     * @throws IOException 文件无法解析（如录制中断没有 moov）
+     */
+    public static Mp4Info get(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        synchronized (cache) {
+            Mp4Info cached = cache.get(key);
+            if (cached != null && cached.fileSize == size && cached.lastModified == lastModified) {
+                return cached;
+            }
+        }
+        Mp4Info info = read(file);
+        synchronized (cache) {
+            cache.put(key, info);
+        }
+        return info;
+    }
+
+    /**
+     * 清除缓存
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 解析元数据（不使用缓存）
+     */
+    public static Mp4Info read(File file) throws IOException {
+        long lastModified = file.lastModified();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long fileSize = channel.size();
+            Mp4Box moovBox = Mp4Box.find(Mp4Box.readTopLevel(channel), Mp4Box.MOOV);
+            if (moovBox == null) {
+                throw new IOException("Missing moov: " + file.getName());
+            }
+            if (moovBox.size > MAX_MOOV_SIZE) {
+                throw new IOException("moov too large: " + moovBox.size);
+            }
+            IoScheduler.getInstance().acquire(IoScheduler.IoClass.READ, moovBox.size);
+            ByteBuffer moov = ByteBuffer.allocate((int) moovBox.size);
+            Mp4Box.readFully(channel, moov, moovBox.offset);
+            try {
+                return parseMoov(file, fileSize, lastModified, moov, moovBox);
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt moov: " + file.getName(), e);
+            }
+        }
+    }
+
+    private static Mp4Info parseMoov(File file, long fileSize, long lastModified, ByteBuffer moov, Mp4Box moovBox)
+            throws IOException {
+        List<Mp4Box> moovChildren = Mp4Box.children(moov, moovBox.headerSize, moovBox.size);
+        int mvhd = (int) Mp4Box.require(moovChildren, Mp4Box.MVHD).dataOffset();
+        long durationUs = moov.get(mvhd) == 1
+                ? Mp4Movie.toUs(moov.getLong(mvhd + 24), moov.getInt(mvhd + 20) & 0xffffffffL)
+                : Mp4Movie.toUs(moov.getInt(mvhd + 16) & 0xffffffffL, moov.getInt(mvhd + 12) & 0xffffffffL);
+
+        int width = 0;
+        int height = 0;
+        String videoCodec = null;
+        int frameCount = 0;
+        long[] keyframeTimesUs = new long[0];
+        String audioCodec = null;
+        long longestTrackUs = 0;
+        for (Mp4Box trak : moovChildren) {
+            if (trak.type != Mp4Box.TRAK) {
+                continue;
+            }
+            List<Mp4Box> trakChildren = Mp4Box.children(moov, trak.dataOffset(), trak.end());
+            Mp4Box mdia = Mp4Box.require(trakChildren, Mp4Box.MDIA);
+            List<Mp4Box> mdiaChildren = Mp4Box.children(moov, mdia.dataOffset(), mdia.end());
+            int handlerType = moov.getInt((int) Mp4Box.require(mdiaChildren, Mp4Box.HDLR).dataOffset() + 8);
+            int mdhd = (int) Mp4Box.require(mdiaChildren, Mp4Box.MDHD).dataOffset();
+            long timescale = moov.get(mdhd) == 1
+                    ? moov.getInt(mdhd + 20) & 0xffffffffL
+                    : moov.getInt(mdhd + 12) & 0xffffffffL;
+            long mediaDuration = moov.get(mdhd) == 1 ? moov.getLong(mdhd + 24) : moov.getInt(mdhd + 16) & 0xffffffffL;
+            longestTrackUs = Math.max(longestTrackUs, Mp4Movie.toUs(mediaDuration, timescale));
+
+            Mp4Box minf = Mp4Box.require(mdiaChildren, Mp4Box.MINF);
+            List<Mp4Box> minfChildren = Mp4Box.children(moov, minf.dataOffset(), minf.end());
+            Mp4Box stbl = Mp4Box.require(minfChildren, Mp4Box.STBL);
+            List<Mp4Box> stblChildren = Mp4Box.children(moov, stbl.dataOffset(), stbl.end());
+            String codec = Mp4Box.name(moov.getInt((int) Mp4Box.require(stblChildren, Mp4Box.STSD).dataOffset() + 12));
+
+            if (handlerType == Mp4Box.HANDLER_VIDEO && videoCodec == null) {
+                int tkhd = (int) Mp4Box.require(trakChildren, Mp4Box.TKHD).dataOffset();
+                int size = moov.get(tkhd) == 1 ? tkhd + 88 : tkhd + 76;
+                width = moov.getInt(size) >>> 16;
+                height = moov.getInt(size + 4) >>> 16;
+                videoCodec = codec;
+                Mp4Box stsz = Mp4Box.find(stblChildren, Mp4Box.STSZ);
+                if (stsz == null) {
+                    stsz = Mp4Box.require(stblChildren, Mp4Box.STZ2);
+                }
+                frameCount = moov.getInt((int) stsz.dataOffset() + 8);
+                Mp4Box edts = Mp4Box.find(trakChildren, Mp4Box.EDTS);
+                Mp4Box elst = edts != null
+                        ? Mp4Box.find(Mp4Box.children(moov, edts.dataOffset(), edts.end()), Mp4Box.ELST) : null;
+                long editMediaTime = elst != null ? Mp4Movie.parseEditMediaTime(moov, elst) : 0;
+                keyframeTimesUs = parseKeyframeTimes(moov, stblChildren, frameCount, timescale, editMediaTime);
+            } else if (handlerType == Mp4Box.HANDLER_SOUND && audioCodec == null) {
+                audioCodec = codec;
+            }
+        }
+        if (durationUs <= 0) {
+            // 分片 MP4 等 mvhd 中没有时长时，取最长的轨道
+            durationUs = longestTrackUs;
+        }
+        return new Mp4Info(file, fileSize, lastModified, durationUs, width, height, videoCodec, frameCount,
+                keyframeTimesUs, audioCodec);
+    }
+
+    /**
+     * 关键帧的显示时间：stss 给出的样本（没有 stss 时所有样本都是关键帧）按 stts / ctts 换算，减去编辑列表的起点
+     */
+    private static long[] parseKeyframeTimes(ByteBuffer moov, List<Mp4Box> stbl, int frameCount, long timescale,
+                                             long editMediaTime) throws IOException {
+        if (frameCount <= 0) {
+            return new long[0];
+        }
+        int[] samples;
+        Mp4Box stss = Mp4Box.find(stbl, Mp4Box.STSS);
+        if (stss != null) {
+            int p = (int) stss.dataOffset();
+            int entries = moov.getInt(p + 4);
+            checkCount(entries, stss, 4);
+            samples = new int[entries];
+            for (int i = 0; i < entries; i++) {
+                samples[i] = moov.getInt(p + 8 + i * 4) - 1;
+            }
+        } else {
+            samples = new int[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                samples[i] = i;
+            }
+        }
+
+        // stts / ctts 都是游程编码，关键帧按升序排列，一次遍历即可
+        long[] times = new long[samples.length];
+        Mp4Box stts = Mp4Box.require(stbl, Mp4Box.STTS);
+        int p = (int) stts.dataOffset();
+        int entries = moov.getInt(p + 4);
+        checkCount(entries, stts, 8);
+        long first = 0;
+        long time = 0;
+        int k = 0;
+        p += 8;
+        for (int i = 0; i < entries && k < samples.length; i++, p += 8) {
+            long count = moov.getInt(p) & 0xffffffffL;
+            long delta = moov.getInt(p + 4) & 0xffffffffL;
+            while (k < samples.length && samples[k] < first + count) {
+                times[k] = time + (samples[k] - first) * delta;
+                k++;
+            }
+            first += count;
+            time += count * delta;
+        }
+        if (k < samples.length) {
+            throw new IOException("stts covers " + first + " samples, keyframe " + samples[k] + " beyond");
+        }
+
+        Mp4Box ctts = Mp4Box.find(stbl, Mp4Box.CTTS);
+        if (ctts != null) {
+            p = (int) ctts.dataOffset();
+            entries = moov.getInt(p + 4);
+            checkCount(entries, ctts, 8);
+            first = 0;
+            k = 0;
+            p += 8;
+            for (int i = 0; i < entries && k < samples.length; i++, p += 8) {
+                long count = moov.getInt(p) & 0xffffffffL;
+                int offset = moov.getInt(p + 4);
+                while (k < samples.length && samples[k] < first + count) {
+                    times[k++] += offset;
+                }
+                first += count;
+            }
+        }
+
+        for (int i = 0; i < times.length; i++) {
+            times[i] = Mp4Movie.toUs(Math.max(0, times[i] - editMediaTime), timescale);
+        }
+        return times;
+    }
+
+    private static void checkCount(int entries, Mp4Box box, int entryBytes) throws IOException {
+        if (entries < 0 || (long) entries * entryBytes + 8 > box.dataSize()) {
+            throw new IOException("Corrupt '" + Mp4Box.name(box.type) + "': " + entries + " entries");
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package com.kooo.evcam.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * MP4 文件结构（moov 中的轨道和样本表）
+ * 解析 moov/trak/mdia/minf/stbl，把各轨道的样本表展开为每个样本的位置、大小、解码时间、
+ * 合成时间偏移和关键帧标记，供 {@link Mp4Splitter} 无损剪切（只复制 mdat 中的样本数据，重写样本表）
+ *
+ * 只支持非分片 MP4（MediaMuxer / MediaRecorder 输出的格式），每个轨道只有一个样本描述
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class Mp4Movie {
+
+    // moov 大小上限（正常录像的 moov 只有几百 KB）
+    private static final long MAX_MOOV_SIZE = 64L * 1024 * 1024;
+
+    public final File file;
+    public final long fileSize;
+    // 电影时间刻度（mvhd）
+    public final long timescale;
+
+    final byte[] ftyp;                  // 原始 ftyp box，没有时为 null
+    final byte[] mvhd;                  // 原始 mvhd box
+    final List<byte[]> otherMoovBoxes;  // moov 下的 udta、meta 等，原样复制
+    private final List<Track> tracks;
+
+    private Mp4Movie(File file, long fileSize, long timescale, byte[] ftyp, byte[] mvhd,
+                     List<byte[]> otherMoovBoxes, List<Track> tracks) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.timescale = timescale;
+        this.ftyp = ftyp;
+        this.mvhd = mvhd;
+        this.otherMoovBoxes = otherMoovBoxes;
+        this.tracks = tracks;
+    }
+
+    /**
+     * 轨道及其展开后的样本表
+     */
+    public static final class Track {
+        public final File file;     // 样本数据所在的文件
+        public final int trackId;
+        public final int handlerType;
+        // 媒体时间刻度（mdhd）
+        public final long timescale;
+
+        // 原样复制的 box
+        final byte[] tkhd;
+        final byte[] mdhd;
+        final byte[] hdlr;
+        final byte[] mediaHeader;   // vmhd / smhd / nmhd 等
+        final byte[] dinf;
+        final byte[] stsd;
+
+        // 样本表（下标为样本序号，从 0 开始）
+        final long[] offsets;       // 样本在文件中的位置
+        final int[] sizes;          // 样本大小
+        final long[] decodeTimes;   // 解码时间，长度为样本数 + 1，最后一项为轨道总时长
+        final int[] ctsOffsets;     // 合成时间偏移，没有 ctts 时为 null
+        final int cttsVersion;
+        final int[] syncSamples;    // 关键帧序号（升序），没有 stss 时为 null（全部是关键帧）
+        final long editMediaTime;   // 编辑列表的起始媒体时间，没有时为 0
+
+        Track(File file, int trackId, int handlerType, long timescale, byte[] tkhd, byte[] mdhd, byte[] hdlr,
+              byte[] mediaHeader, byte[] dinf, byte[] stsd, long[] offsets, int[] sizes, long[] decodeTimes,
+              int[] ctsOffsets, int cttsVersion, int[] syncSamples, long editMediaTime) {
+            this.file = file;
+            this.trackId = trackId;
+            this.handlerType = handlerType;
+            this.timescale = timescale;
+            this.tkhd = tkhd;
+            this.mdhd = mdhd;
+            this.hdlr = hdlr;
+            this.mediaHeader = mediaHeader;
+            this.dinf = dinf;
+            this.stsd = stsd;
+            this.offsets = offsets;
+            this.sizes = sizes;
+            this.decodeTimes = decodeTimes;
+            this.ctsOffsets = ctsOffsets;
+            this.cttsVersion = cttsVersion;
+            this.syncSamples = syncSamples;
+            this.editMediaTime = editMediaTime;
+        }
+
+        public boolean isVideo() {
+            return handlerType == Mp4Box.HANDLER_VIDEO;
+        }
+
+        public boolean isAudio() {
+            return handlerType == Mp4Box.HANDLER_SOUND;
+        }
+
+        public int getSampleCount() {
+            return sizes.length;
+        }
+
+        /**
+         * 轨道时长（媒体时间刻度）
+         */
+        public long getMediaDuration() {
+            return decodeTimes[sizes.length];
+        }
+
+        public long getDurationUs() {
+            return toUs(Math.max(0, getMediaDuration() - editMediaTime), timescale);
+        }
+
+        public long getDecodeTime(int sample) {
+            return decodeTimes[sample];
+        }
+
+        public boolean isSync(int sample) {
+            return syncSamples == null || Arrays.binarySearch(syncSamples, sample) >= 0;
+        }
+
+        /**
+         * 不晚于 sample 的最近关键帧（没有时返回 0）
+         */
+        public int syncSampleAtOrBefore(int sample) {
+            if (syncSamples == null) {
+                return sample;
+            }
+            int i = Arrays.binarySearch(syncSamples, sample);
+            if (i >= 0) {
+                return syncSamples[i];
+            }
+            int insertion = -i - 1;
+            return insertion == 0 ? 0 : syncSamples[insertion - 1];
+        }
+
+        /**
+         * 第一个解码时间不早于 mediaTime 的样本（都早于时返回样本数）
+         */
+        public int sampleAtTime(long mediaTime) {
+            int low = 0;
+            int high = sizes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (decodeTimes[mid] < mediaTime) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 样本 [from, to) 的数据总大小
+         */
+        public long getSampleBytes(int from, int to) {
+            long total = 0;
+            for (int i = from; i < to; i++) {
+                total += sizes[i];
+            }
+            return total;
+        }
+    }
+
+    public List<Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * 第一个视频轨道，没有时返回 null
+     */
+    public Track getVideoTrack() {
+        for (Track track : tracks) {
+            if (track.isVideo()) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 电影时长（最长轨道）
+     */
+    public long getDurationUs() {
+        long duration = 0;
+        for (Track track : tracks) {
+            duration = Math.max(duration, track.getDurationUs());
+        }
+        return duration;
+    }
+
+    static long toUs(long mediaTime, long timescale) {
+        return timescale <= 0 ? 0 : mediaTime * 1_000_000L / timescale;
+    }
+
+    /**
+     * 解析 MP4 文件
+     * @throws IOException 不是 MP4、moov 缺失（录制中断）或样本表不一致
+     */
+    public static Mp4Movie parse(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long fileSize = channel.size();
+            List<Mp4Box> topLevel = Mp4Box.readTopLevel(channel);
+
+            byte[] ftyp = null;
+            Mp4Box ftypBox = Mp4Box.find(topLevel, Mp4Box.FTYP);
+            if (ftypBox != null && ftypBox.size <= 4096) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) ftypBox.size);
+                Mp4Box.readFully(channel, buffer, ftypBox.offset);
+                ftyp = buffer.array();
+            }
+
+            Mp4Box moovBox = Mp4Box.find(topLevel, Mp4Box.MOOV);
+            if (moovBox == null) {
+                throw new IOException("Missing moov: " + file.getName());
+            }
+            if (moovBox.size > MAX_MOOV_SIZE) {
+                throw new IOException("moov too large: " + moovBox.size);
+            }
+            ByteBuffer moov = ByteBuffer.allocate((int) moovBox.size);
+            Mp4Box.readFully(channel, moov, moovBox.offset);
+
+            List<Mp4Box> moovChildren = Mp4Box.children(moov, moovBox.headerSize, moovBox.size);
+            if (Mp4Box.find(moovChildren, Mp4Box.MVEX) != null) {
+                throw new IOException("Fragmented MP4 is not supported");
+            }
+            Mp4Box mvhdBox = Mp4Box.require(moovChildren, Mp4Box.MVHD);
+            int mvhdData = (int) mvhdBox.dataOffset();
+            long timescale = moov.get(mvhdData) == 1
+                    ? moov.getInt(mvhdData + 20) & 0xffffffffL
+                    : moov.getInt(mvhdData + 12) & 0xffffffffL;
+
+            List<Track> tracks = new ArrayList<>();
+            List<byte[]> otherBoxes = new ArrayList<>();
+            for (Mp4Box box : moovChildren) {
+                if (box.type == Mp4Box.TRAK) {
+                    tracks.add(parseTrack(file, moov, box, fileSize));
+                } else if (box.type != Mp4Box.MVHD) {
+                    otherBoxes.add(Mp4Box.copyOf(moov, box));
+                }
+            }
+            if (tracks.isEmpty()) {
+                throw new IOException("No tracks: " + file.getName());
+            }
+            return new Mp4Movie(file, fileSize, timescale, ftyp, Mp4Box.copyOf(moov, mvhdBox), otherBoxes, tracks);
+        }
+    }
+
+    private static Track parseTrack(File file, ByteBuffer moov, Mp4Box trak, long fileSize) throws IOException {
+        List<Mp4Box> trakChildren = Mp4Box.children(moov, trak.dataOffset(), trak.end());
+        Mp4Box tkhd = Mp4Box.require(trakChildren, Mp4Box.TKHD);
+        Mp4Box mdia = Mp4Box.require(trakChildren, Mp4Box.MDIA);
+        List<Mp4Box> mdiaChildren = Mp4Box.children(moov, mdia.dataOffset(), mdia.end());
+        Mp4Box mdhd = Mp4Box.require(mdiaChildren, Mp4Box.MDHD);
+        Mp4Box hdlr = Mp4Box.require(mdiaChildren, Mp4Box.HDLR);
+        Mp4Box minf = Mp4Box.require(mdiaChildren, Mp4Box.MINF);
+        List<Mp4Box> minfChildren = Mp4Box.children(moov, minf.dataOffset(), minf.end());
+        Mp4Box stbl = Mp4Box.require(minfChildren, Mp4Box.STBL);
+        Mp4Box dinf = Mp4Box.find(minfChildren, Mp4Box.DINF);
+        Mp4Box mediaHeader = null;
+        for (Mp4Box box : minfChildren) {
+            if (box.type != Mp4Box.STBL && box.type != Mp4Box.DINF) {
+                mediaHeader = box;
+                break;
+            }
+        }
+
+        int tkhdData = (int) tkhd.dataOffset();
+        int trackId = moov.get(tkhdData) == 1 ? moov.getInt(tkhdData + 20) : moov.getInt(tkhdData + 12);
+        int mdhdData = (int) mdhd.dataOffset();
+        long timescale = moov.get(mdhdData) == 1
+                ? moov.getInt(mdhdData + 20) & 0xffffffffL
+                : moov.getInt(mdhdData + 12) & 0xffffffffL;
+        int handlerType = moov.getInt((int) hdlr.dataOffset() + 8);
+
+        List<Mp4Box> stblChildren = Mp4Box.children(moov, stbl.dataOffset(), stbl.end());
+        Mp4Box stsd = Mp4Box.require(stblChildren, Mp4Box.STSD);
+        if (moov.getInt((int) stsd.dataOffset() + 4) != 1) {
+            throw new IOException("Multiple sample descriptions in track " + trackId);
+        }
+
+        int[] sizes = parseSampleSizes(moov, stblChildren);
+        int count = sizes.length;
+        long[] decodeTimes = parseDecodeTimes(moov, Mp4Box.require(stblChildren, Mp4Box.STTS), count);
+        long[] offsets = parseSampleOffsets(moov, stblChildren, sizes, fileSize);
+
+        int[] ctsOffsets = null;
+        int cttsVersion = 0;
+        Mp4Box ctts = Mp4Box.find(stblChildren, Mp4Box.CTTS);
+        if (ctts != null) {
+            int p = (int) ctts.dataOffset();
+            cttsVersion = moov.get(p);
+            int entries = moov.getInt(p + 4);
+            checkCount(entries, ctts, 8, 8);
+            ctsOffsets = new int[count];
+            int sample = 0;
+            p += 8;
+            for (int i = 0; i < entries && sample < count; i++, p += 8) {
+                int runLength = moov.getInt(p);
+                int offset = moov.getInt(p + 4);
+                for (int j = 0; j < runLength && sample < count; j++) {
+                    ctsOffsets[sample++] = offset;
+                }
+            }
+        }
+
+        int[] syncSamples = null;
+        Mp4Box stss = Mp4Box.find(stblChildren, Mp4Box.STSS);
+        if (stss != null) {
+            int p = (int) stss.dataOffset();
+            int entries = moov.getInt(p + 4);
+            checkCount(entries, stss, 8, 4);
+            syncSamples = new int[entries];
+            p += 8;
+            for (int i = 0; i < entries; i++, p += 4) {
+                syncSamples[i] = moov.getInt(p) - 1;
+                if (syncSamples[i] < 0 || syncSamples[i] >= count) {
+                    throw new IOException("Corrupt 'stss': sample " + (syncSamples[i] + 1) + " of " + count);
+                }
+            }
+            Arrays.sort(syncSamples);
+        }
+
+        long editMediaTime = 0;
+        Mp4Box edts = Mp4Box.find(trakChildren, Mp4Box.EDTS);
+        if (edts != null) {
+            Mp4Box elst = Mp4Box.find(Mp4Box.children(moov, edts.dataOffset(), edts.end()), Mp4Box.ELST);
+            if (elst != null) {
+                editMediaTime = parseEditMediaTime(moov, elst);
+            }
+        }
+
+        return new Track(file, trackId, handlerType, timescale, Mp4Box.copyOf(moov, tkhd), Mp4Box.copyOf(moov, mdhd),
+                Mp4Box.copyOf(moov, hdlr), mediaHeader != null ? Mp4Box.copyOf(moov, mediaHeader) : null,
+                dinf != null ? Mp4Box.copyOf(moov, dinf) : null, Mp4Box.copyOf(moov, stsd),
+                offsets, sizes, decodeTimes, ctsOffsets, cttsVersion, syncSamples, editMediaTime);
+    }
+
+    private static int[] parseSampleSizes(ByteBuffer moov, List<Mp4Box> stbl) throws IOException {
+        Mp4Box stsz = Mp4Box.find(stbl, Mp4Box.STSZ);
+        if (stsz != null) {
+            int p = (int) stsz.dataOffset();
+            int uniformSize = moov.getInt(p + 4);
+            int count = moov.getInt(p + 8);
+            checkCount(count, stsz, 12, uniformSize == 0 ? 4 : 0);
+            int[] sizes = new int[count];
+            if (uniformSize != 0) {
+                Arrays.fill(sizes, uniformSize);
+            } else {
+                p += 12;
+                for (int i = 0; i < count; i++, p += 4) {
+                    sizes[i] = moov.getInt(p);
+                }
+            }
+            return sizes;
+        }
+        Mp4Box stz2 = Mp4Box.require(stbl, Mp4Box.STZ2);
+        int p = (int) stz2.dataOffset();
+        int fieldSize = moov.get(p + 7) & 0xff;
+        int count = moov.getInt(p + 8);
+        if (count < 0 || (long) count * fieldSize > (stz2.dataSize() - 12) * 8) {
+            throw new IOException("Corrupt 'stz2': " + count + " entries");
+        }
+        int[] sizes = new int[count];
+        p += 12;
+        for (int i = 0; i < count; i++) {
+            switch (fieldSize) {
+                case 4:
+                    int packed = moov.get(p + i / 2) & 0xff;
+                    sizes[i] = (i & 1) == 0 ? packed >>> 4 : packed & 0x0f;
+                    break;
+                case 8:
+                    sizes[i] = moov.get(p + i) & 0xff;
+                    break;
+                case 16:
+                    sizes[i] = moov.getShort(p + i * 2) & 0xffff;
+                    break;
+                default:
+                    throw new IOException("Invalid stz2 field size: " + fieldSize);
+            }
+        }
+        return sizes;
+    }
+
+    private static long[] parseDecodeTimes(ByteBuffer moov, Mp4Box stts, int count) throws IOException {
+        int p = (int) stts.dataOffset();
+        int entries = moov.getInt(p + 4);
+        checkCount(entries, stts, 8, 8);
+        long[] decodeTimes = new long[count + 1];
+        int sample = 0;
+        long time = 0;
+        p += 8;
+        for (int i = 0; i < entries && sample < count; i++, p += 8) {
+            long runLength = moov.getInt(p) & 0xffffffffL;
+            long delta = moov.getInt(p + 4) & 0xffffffffL;
+            for (long j = 0; j < runLength && sample < count; j++) {
+                decodeTimes[sample++] = time;
+                time += delta;
+            }
+        }
+        if (sample != count) {
+            throw new IOException("stts covers " + sample + " of " + count + " samples");
+        }
+        decodeTimes[count] = time;
+        return decodeTimes;
+    }
+
+    private static long[] parseSampleOffsets(ByteBuffer moov, List<Mp4Box> stbl, int[] sizes, long fileSize)
+            throws IOException {
+        long[] chunkOffsets;
+        Mp4Box stco = Mp4Box.find(stbl, Mp4Box.STCO);
+        if (stco != null) {
+            int p = (int) stco.dataOffset();
+            int entries = moov.getInt(p + 4);
+            checkCount(entries, stco, 8, 4);
+            chunkOffsets = new long[entries];
+            p += 8;
+            for (int i = 0; i < entries; i++, p += 4) {
+                chunkOffsets[i] = moov.getInt(p) & 0xffffffffL;
+            }
+        } else {
+            Mp4Box co64 = Mp4Box.require(stbl, Mp4Box.CO64);
+            int p = (int) co64.dataOffset();
+            int entries = moov.getInt(p + 4);
+            checkCount(entries, co64, 8, 8);
+            chunkOffsets = new long[entries];
+            p += 8;
+            for (int i = 0; i < entries; i++, p += 8) {
+                chunkOffsets[i] = moov.getLong(p);
+            }
+        }
+
+        Mp4Box stsc = Mp4Box.require(stbl, Mp4Box.STSC);
+        int p = (int) stsc.dataOffset();
+        int entries = moov.getInt(p + 4);
+        checkCount(entries, stsc, 8, 12);
+        p += 8;
+
+        int count = sizes.length;
+        long[] offsets = new long[count];
+        int sample = 0;
+        for (int i = 0; i < entries; i++) {
+            int firstChunk = moov.getInt(p + i * 12) - 1;
+            int samplesPerChunk = moov.getInt(p + i * 12 + 4);
+            if (firstChunk < 0 || samplesPerChunk < 0) {
+                throw new IOException("Corrupt 'stsc' entry " + i);
+            }
+            int lastChunk = i + 1 < entries ? moov.getInt(p + (i + 1) * 12) - 1 : chunkOffsets.length;
+            for (int chunk = firstChunk; chunk < lastChunk && chunk < chunkOffsets.length; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int j = 0; j < samplesPerChunk && sample < count; j++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        if (sample != count) {
+            throw new IOException("stsc covers " + sample + " of " + count + " samples");
+        }
+        for (int i = 0; i < count; i++) {
+            if (offsets[i] < 0 || offsets[i] + sizes[i] > fileSize) {
+                throw new IOException("Sample " + i + " outside file (truncated mdat?)");
+            }
+        }
+        return offsets;
+    }
+
+    static long parseEditMediaTime(ByteBuffer moov, Mp4Box elst) throws IOException {
+        int p = (int) elst.dataOffset();
+        int version = moov.get(p);
+        int entries = moov.getInt(p + 4);
+        checkCount(entries, elst, 8, version == 1 ? 20 : 12);
+        p += 8;
+        for (int i = 0; i < entries; i++) {
+            long mediaTime;
+            if (version == 1) {
+                mediaTime = moov.getLong(p + 8);
+                p += 20;
+            } else {
+                mediaTime = moov.getInt(p + 4);
+                p += 12;
+            }
+            // 跳过空编辑（media_time = -1，表示开头的空白）
+            if (mediaTime >= 0) {
+                return mediaTime;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 检查表项数与 box 大小是否一致（防止损坏的计数导致越界或超大分配）
+     */
+    private static void checkCount(int entries, Mp4Box box, int headerBytes, int entryBytes) throws IOException {
+        if (box.dataSize() < headerBytes || entries < 0 || (long) entries * entryBytes + headerBytes > box.dataSize()) {
+            throw new IOException("Corrupt '" + Mp4Box.name(box.type) + "': " + entries + " entries");
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.kooo.evcam.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * MP4 无损剪切 / 分段
+ * 在关键帧处切分，样本数据直接从源文件复制（{@link Mp4Writer}），不解码、不重新编码，
+ * 每一段都是独立可播放的 MP4：
+ * - {@link #split}：按大小分段，每段不超过指定字节数（单个 GOP 超过上限时该段会超出，见 {@link Result#getLargestPartBytes()}）
+ * - {@link #trim}：按时间范围剪切，起点向前对齐到关键帧
+ *
+ * 以视频轨道（没有时为第一个轨道）的关键帧为切分点，其他轨道按时间对齐
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class Mp4Splitter {
+
+    /**
+     * 剪切 / 分段结果
+     */
+    public static final class Result {
+        public final List<File> parts;
+        public final long[] partDurationsUs;
+        public final long bytes;        // 写入的总字节数
+        public final long elapsedMs;
+
+        Result(List<File> parts, long[] partDurationsUs, long bytes, long elapsedMs) {
+            this.parts = Collections.unmodifiableList(parts);
+            this.partDurationsUs = partDurationsUs;
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+        }
+
+        /**
+         * 重新封装速度（解析 + 写入），字节/秒
+         */
+        public double getBytesPerSec() {
+            return bytes * 1000.0 / Math.max(1, elapsedMs);
+        }
+
+        public long getLargestPartBytes() {
+            long largest = 0;
+            for (File part : parts) {
+                largest = Math.max(largest, part.length());
+            }
+            return largest;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d parts, %.1f MB in %d ms (%.1f MB/s), largest %.1f MB",
+                    parts.size(), bytes / 1048576.0, elapsedMs, getBytesPerSec() / 1048576.0,
+                    getLargestPartBytes() / 1048576.0);
+        }
+    }
+
+    private Mp4Splitter() {
+    }
+
+    /**
+     * 按大小分段
+     * @param outDir 输出目录，分段文件名见 {@link #partName}
+     * @param maxPartBytes 每段大小上限
+     * @throws IOException 源文件无法解析（如录制中断没有 moov）或写入失败；已写出的分段会被删除
+     */
+    public static Result split(File src, File outDir, long maxPartBytes) throws IOException {
+        long startMs = System.currentTimeMillis();
+        Mp4Movie movie = Mp4Movie.parse(src);
+        Mp4Movie.Track primary = primaryTrack(movie);
+        int sampleCount = primary.getSampleCount();
+
+        // 以关键帧为切分点（第一个关键帧之前的样本归入第一段）
+        List<Integer> gopStarts = new ArrayList<>();
+        gopStarts.add(0);
+        if (primary.syncSamples != null) {
+            for (int sync : primary.syncSamples) {
+                if (sync > 0 && sync < sampleCount) {
+                    gopStarts.add(sync);
+                }
+            }
+        } else {
+            for (int i = 1; i < sampleCount; i++) {
+                gopStarts.add(i);
+            }
+        }
+
+        // 贪心合并 GOP：加入下一个 GOP 会超过上限时在此切分
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        int start = 0;
+        int lastEnd = 0;
+        for (int g = 1; g <= gopStarts.size(); g++) {
+            int end = g < gopStarts.size() ? gopStarts.get(g) : sampleCount;
+            if (lastEnd > start && Mp4Writer.estimateSize(movie, ranges(movie, primary, start, end)) > maxPartBytes) {
+                cuts.add(lastEnd);
+                start = lastEnd;
+            }
+            lastEnd = end;
+        }
+        cuts.add(sampleCount);
+
+        int count = cuts.size() - 1;
+        List<File> parts = new ArrayList<>();
+        long[] durations = new long[count];
+        long bytes = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                File part = new File(outDir, partName(src, i + 1, count));
+                parts.add(part);
+                bytes += Mp4Writer.write(movie, ranges(movie, primary, cuts.get(i), cuts.get(i + 1)), part);
+                durations[i] = Mp4Movie.toUs(primary.decodeTimes[cuts.get(i + 1)] - primary.decodeTimes[cuts.get(i)],
+                        primary.timescale);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteAll(parts);
+            throw e;
+        }
+        return new Result(parts, durations, bytes, System.currentTimeMillis() - startMs);
+    }
+
+    /**
+     * 按时间范围剪切
+     * @param startUs 起始时间，向前对齐到关键帧
+     * @param endUs 结束时间（不含），超过时长时到文件末尾
+     */
+    public static Result trim(File src, File dst, long startUs, long endUs) throws IOException {
+        if (startUs < 0 || endUs <= startUs) {
+            throw new IllegalArgumentException("Invalid range: " + startUs + " - " + endUs);
+        }
+        long startMs = System.currentTimeMillis();
+        Mp4Movie movie = Mp4Movie.parse(src);
+        Mp4Movie.Track primary = primaryTrack(movie);
+        int[] range = sampleRange(primary, startUs, endUs);
+        int from = range[0];
+        int to = range[1];
+
+        long bytes;
+        try {
+            bytes = Mp4Writer.write(movie, ranges(movie, primary, from, to), dst);
+        } catch (IOException | RuntimeException e) {
+            dst.delete();
+            throw e;
+        }
+        long duration = Mp4Movie.toUs(primary.decodeTimes[to] - primary.decodeTimes[from], primary.timescale);
+        List<File> parts = new ArrayList<>();
+        parts.add(dst);
+        return new Result(parts, new long[]{duration}, bytes, System.currentTimeMillis() - startMs);
+    }
+
+    /**
+     * 分段文件名：原文件名_1of3.mp4
+     */
+    public static String partName(File src, int number, int count) {
+        String name = src.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return base + "_" + number + "of" + count + ".mp4";
+    }
+
+    /**
+     * 时间范围 [startUs, endUs) 对应的主轨道样本范围 {from, to}，起点向前对齐到关键帧
+     */
+    static int[] sampleRange(Mp4Movie.Track primary, long startUs, long endUs) throws IOException {
+        int sampleCount = primary.getSampleCount();
+        long startTime = startUs * primary.timescale / 1_000_000L + primary.editMediaTime;
+        long endTime = endUs >= Long.MAX_VALUE / primary.timescale
+                ? Long.MAX_VALUE : endUs * primary.timescale / 1_000_000L + primary.editMediaTime;
+        int from = primary.syncSampleAtOrBefore(Math.max(0, primary.sampleAtTime(startTime + 1) - 1));
+        if (from >= sampleCount) {
+            throw new IOException("Start " + startUs + "us beyond end of " + primary.file.getName());
+        }
+        int to = Math.min(Math.max(from + 1, primary.sampleAtTime(endTime)), sampleCount);
+        return new int[]{from, to};
+    }
+
+    static Mp4Movie.Track primaryTrack(Mp4Movie movie) throws IOException {
+        Mp4Movie.Track video = movie.getVideoTrack();
+        if (video != null && video.getSampleCount() > 0) {
+            return video;
+        }
+        for (Mp4Movie.Track track : movie.getTracks()) {
+            if (track.getSampleCount() > 0) {
+                return track;
+            }
+        }
+        throw new IOException("No samples: " + movie.file.getName());
+    }
+
+    /**
+     * 主轨道样本 [from, to) 对应的各轨道范围（其他轨道按主轨道的解码时间对齐）
+     */
+    private static List<Mp4Writer.OutputTrack> ranges(Mp4Movie movie, Mp4Movie.Track primary, int from, int to) {
+        List<Mp4Writer.OutputTrack> ranges = new ArrayList<>();
+        for (Mp4Movie.Track track : movie.getTracks()) {
+            if (track == primary) {
+                ranges.add(Mp4Writer.OutputTrack.of(new Mp4Writer.TrackRange(track, from, to)));
+            } else {
+                ranges.add(Mp4Writer.OutputTrack.of(new Mp4Writer.TrackRange(track,
+                        alignedSample(primary, from, track), alignedSample(primary, to, track))));
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * 主轨道第 sample 个样本的解码时间在 track 中对应的样本（两端分别对齐到轨道开头和末尾）
+     */
+    static int alignedSample(Mp4Movie.Track primary, int sample, Mp4Movie.Track track) {
+        if (sample <= 0) {
+            return 0;
+        }
+        if (sample >= primary.getSampleCount()) {
+            return track.getSampleCount();
+        }
+        long time = primary.decodeTimes[sample];
+        // 向上取整换算到 track 的时间刻度
+        long trackTime = (time * track.timescale + primary.timescale - 1) / primary.timescale;
+        return track.sampleAtTime(trackTime);
+    }
+
+    private static void deleteAll(List<File> files) {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+}
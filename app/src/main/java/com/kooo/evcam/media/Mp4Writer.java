@@ -0,0 +1,699 @@
+package com.kooo.evcam.media;
+
+import com.kooo.evcam.storage.IoScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MP4 重新封装
+ * 把源文件中指定范围的样本写成新的 MP4：样本数据用 FileChannel.transferTo 从源文件 mdat 直接复制
+ * （不解码、不重新编码），moov 按新的样本范围重写样本表，放在 mdat 之前（便于边下载边播放）
+ *
+ * 每个输出轨道由一个或多个样本范围依次拼接而成（剪切时一个，拼接时每个源文件一个），
+ * 解码时间从 0 开始连续；范围指定了起始时间时，拉长或缩短前一个范围最后一个样本的时长使其从该时间开始
+ * （拼接时各轨道按同一电影时间轴对齐）。有合成时间偏移（B 帧）时写入编辑列表，使第一帧的显示时间为 0。
+ * 各轨道按解码时间交错分块（每块不超过 {@link #CHUNK_DURATION_US}）
+ *
+ * 内存占用与样本数成正比（样本表），与文件大小无关
+ */
+final class Mp4Writer {
+
+    // 交错写入时每块的最大时长
+    private static final long CHUNK_DURATION_US = 500_000;
+    // 复制样本数据时每次申请 I/O 预算的大小
+    private static final long COPY_BLOCK_BYTES = 1024 * 1024;
+    // 样本表中每个样本最多占用的字节数（stsz 4 + stts 8 + ctts 8 + stss 4 + stsc 12 + co64 8）
+    private static final int MAX_TABLE_BYTES_PER_SAMPLE = 44;
+    // 每个轨道除原样复制的 box 外，容器和表头最多占用的字节数
+    private static final int MAX_TRACK_OVERHEAD_BYTES = 512;
+
+    private static final byte[] DEFAULT_FTYP = {
+            0, 0, 0, 28, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm', 0, 0, 2, 0,
+            'i', 's', 'o', 'm', 'i', 's', 'o', '2', 'm', 'p', '4', '1'
+    };
+
+    /**
+     * 一个轨道中的样本范围 [from, to)
+     */
+    static final class TrackRange {
+        final Mp4Movie.Track track;
+        final int from;
+        final int to;
+        // 在输出轨道中的起始解码时间（轨道时间刻度），-1 表示紧接前一个范围
+        final long startTime;
+
+        TrackRange(Mp4Movie.Track track, int from, int to) {
+            this(track, from, to, -1);
+        }
+
+        TrackRange(Mp4Movie.Track track, int from, int to, long startTime) {
+            this.track = track;
+            this.from = from;
+            this.to = to;
+            this.startTime = startTime;
+        }
+
+        int count() {
+            return to - from;
+        }
+
+        long mediaDuration() {
+            return track.decodeTimes[to] - track.decodeTimes[from];
+        }
+    }
+
+    /**
+     * 输出轨道：依次拼接的样本范围（时间刻度和样本描述相同），第一个范围的轨道提供 tkhd、mdhd、stsd 等
+     */
+    static final class OutputTrack {
+        final List<TrackRange> pieces;
+        final Mp4Movie.Track template;
+        // 各范围在输出轨道中的起始解码时间
+        final long[] starts;
+
+        OutputTrack(List<TrackRange> pieces) {
+            this.pieces = pieces;
+            this.template = pieces.get(0).track;
+            this.starts = new long[pieces.size()];
+            for (int i = 1; i < pieces.size(); i++) {
+                TrackRange previous = pieces.get(i - 1);
+                long end = starts[i - 1] + previous.mediaDuration();
+                long start = pieces.get(i).startTime;
+                if (start < 0 || previous.count() == 0) {
+                    starts[i] = end;
+                } else {
+                    // 前一个范围的最后一个样本至少保留 1 个时间单位
+                    long lastSample = end - (previous.track.decodeTimes[previous.to]
+                            - previous.track.decodeTimes[previous.to - 1]);
+                    starts[i] = Math.max(start, lastSample + 1);
+                }
+            }
+        }
+
+        static OutputTrack of(TrackRange range) {
+            return new OutputTrack(Collections.singletonList(range));
+        }
+
+        int sampleCount() {
+            int count = 0;
+            for (TrackRange piece : pieces) {
+                count += piece.count();
+            }
+            return count;
+        }
+
+        long mediaDuration() {
+            int last = pieces.size() - 1;
+            return starts[last] + pieces.get(last).mediaDuration();
+        }
+
+        /**
+         * 第 piece 个范围最后一个样本在输出中的时长（延伸到下一个范围的起点）
+         */
+        long lastSampleDuration(int piece) {
+            TrackRange range = pieces.get(piece);
+            long[] decodeTimes = range.track.decodeTimes;
+            if (piece + 1 >= pieces.size()) {
+                return decodeTimes[range.to] - decodeTimes[range.to - 1];
+            }
+            return starts[piece + 1] - starts[piece] - (decodeTimes[range.to - 1] - decodeTimes[range.from]);
+        }
+    }
+
+    /**
+     * 一个块：同一范围中连续的样本
+     */
+    private static final class Chunk {
+        final int track;
+        final int piece;
+        final int first;
+        final int count;
+        long dataOffset;    // 相对 mdat 数据起点
+
+        Chunk(int track, int piece, int first, int count) {
+            this.track = track;
+            this.piece = piece;
+            this.first = first;
+            this.count = count;
+        }
+
+        TrackRange range(List<OutputTrack> tracks) {
+            return tracks.get(track).pieces.get(piece);
+        }
+    }
+
+    private Mp4Writer() {
+    }
+
+    /**
+     * 输出文件大小的上限（用于分段时估算，不需要构建 moov）
+     * @param movie 提供 ftyp、mvhd 等文件级 box 的源文件
+     */
+    static long estimateSize(Mp4Movie movie, List<OutputTrack> tracks) {
+        long size = (movie.ftyp != null ? movie.ftyp.length : DEFAULT_FTYP.length) + 16 + 8 + movie.mvhd.length;
+        for (byte[] box : movie.otherMoovBoxes) {
+            size += box.length;
+        }
+        for (OutputTrack output : tracks) {
+            int count = output.sampleCount();
+            if (count <= 0) {
+                continue;
+            }
+            Mp4Movie.Track track = output.template;
+            size += MAX_TRACK_OVERHEAD_BYTES + track.tkhd.length + track.mdhd.length + track.hdlr.length
+                    + track.stsd.length + (track.mediaHeader != null ? track.mediaHeader.length : 0)
+                    + (track.dinf != null ? track.dinf.length : 0);
+            size += (long) count * MAX_TABLE_BYTES_PER_SAMPLE;
+            for (TrackRange piece : output.pieces) {
+                size += piece.track.getSampleBytes(piece.from, piece.to);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 写出 MP4
+     * @param movie 提供 ftyp、mvhd、udta 等文件级 box 的源文件
+     * @return 写入的字节数
+     */
+    static long write(Mp4Movie movie, List<OutputTrack> outputs, File dst) throws IOException {
+        List<OutputTrack> tracks = new ArrayList<>();
+        for (OutputTrack output : outputs) {
+            List<TrackRange> pieces = new ArrayList<>();
+            for (TrackRange piece : output.pieces) {
+                if (piece.count() > 0) {
+                    pieces.add(piece);
+                }
+            }
+            if (!pieces.isEmpty()) {
+                tracks.add(new OutputTrack(pieces));
+            }
+        }
+        if (tracks.isEmpty()) {
+            throw new IOException("No samples to write");
+        }
+
+        List<Chunk> chunks = planChunks(tracks);
+        long payload = 0;
+        for (Chunk chunk : chunks) {
+            chunk.dataOffset = payload;
+            payload += chunk.range(tracks).track.getSampleBytes(chunk.first, chunk.first + chunk.count);
+        }
+
+        byte[] ftyp = movie.ftyp != null ? movie.ftyp : DEFAULT_FTYP;
+        boolean largeMdat = payload + 8 > 0xffffffffL;
+        int mdatHeaderSize = largeMdat ? 16 : 8;
+        // moov 的长度与块偏移的取值无关：先按 0 偏移构建得到长度，再按实际偏移构建
+        boolean co64 = useCo64(ftyp.length, 0, payload);
+        ByteBuffer probe = buildMoov(movie, tracks, chunks, 0, co64);
+        if (!co64 && useCo64(ftyp.length, probe.remaining(), payload)) {
+            co64 = true;
+            probe = buildMoov(movie, tracks, chunks, 0, true);
+        }
+        long dataStart = ftyp.length + probe.remaining() + mdatHeaderSize;
+        ByteBuffer moov = buildMoov(movie, tracks, chunks, dataStart, co64);
+
+        ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+        if (largeMdat) {
+            mdatHeader.putInt(1).putInt(Mp4Box.MDAT).putLong(payload + 16);
+        } else {
+            mdatHeader.putInt((int) (payload + 8)).putInt(Mp4Box.MDAT);
+        }
+        mdatHeader.flip();
+
+        Map<File, RandomAccessFile> sources = new HashMap<>();
+        try (RandomAccessFile out = new RandomAccessFile(dst, "rw")) {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+            writeFully(outChannel, ByteBuffer.wrap(ftyp));
+            writeFully(outChannel, moov);
+            writeFully(outChannel, mdatHeader);
+            for (Chunk chunk : chunks) {
+                Mp4Movie.Track track = chunk.range(tracks).track;
+                RandomAccessFile source = sources.get(track.file);
+                if (source == null) {
+                    source = new RandomAccessFile(track.file, "r");
+                    sources.put(track.file, source);
+                }
+                FileChannel in = source.getChannel();
+                int sample = chunk.first;
+                int end = chunk.first + chunk.count;
+                while (sample < end) {
+                    // 合并源文件中连续的样本，一次复制
+                    long runStart = track.offsets[sample];
+                    long runLength = track.sizes[sample];
+                    sample++;
+                    while (sample < end && track.offsets[sample] == runStart + runLength) {
+                        runLength += track.sizes[sample];
+                        sample++;
+                    }
+                    copyRange(in, runStart, runLength, outChannel);
+                }
+            }
+            long written = outChannel.position();
+            if (written != dataStart + payload) {
+                throw new IOException("Size mismatch: wrote " + written + ", expected " + (dataStart + payload));
+            }
+            return written;
+        } finally {
+            for (RandomAccessFile source : sources.values()) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    // 忽略
+                }
+            }
+        }
+    }
+
+    private static boolean useCo64(long ftypSize, long moovSize, long payload) {
+        // 预留 64KB 余量：stco 换成 co64 后 moov 变大
+        return ftypSize + moovSize + 16 + payload + 64 * 1024 > 0xffffffffL;
+    }
+
+    /**
+     * 按解码时间交错分块：每次从下一个样本最早的轨道取不超过 CHUNK_DURATION_US 的连续样本（块不跨范围）
+     */
+    private static List<Chunk> planChunks(List<OutputTrack> tracks) {
+        List<Chunk> chunks = new ArrayList<>();
+        int n = tracks.size();
+        int[] piece = new int[n];
+        int[] next = new int[n];
+        long[] chunkDuration = new long[n];
+        for (int t = 0; t < n; t++) {
+            OutputTrack track = tracks.get(t);
+            next[t] = track.pieces.get(0).from;
+            chunkDuration[t] = Math.max(1, CHUNK_DURATION_US * track.template.timescale / 1_000_000L);
+        }
+        while (true) {
+            int pick = -1;
+            long pickUs = Long.MAX_VALUE;
+            for (int t = 0; t < n; t++) {
+                OutputTrack track = tracks.get(t);
+                if (piece[t] >= track.pieces.size()) {
+                    continue;
+                }
+                TrackRange range = track.pieces.get(piece[t]);
+                long time = track.starts[piece[t]] + range.track.decodeTimes[next[t]]
+                        - range.track.decodeTimes[range.from];
+                long us = Mp4Movie.toUs(time, track.template.timescale);
+                if (us < pickUs) {
+                    pickUs = us;
+                    pick = t;
+                }
+            }
+            if (pick < 0) {
+                return chunks;
+            }
+            OutputTrack track = tracks.get(pick);
+            TrackRange range = track.pieces.get(piece[pick]);
+            long[] decodeTimes = range.track.decodeTimes;
+            int first = next[pick];
+            int end = first + 1;
+            while (end < range.to && decodeTimes[end] - decodeTimes[first] < chunkDuration[pick]) {
+                end++;
+            }
+            chunks.add(new Chunk(pick, piece[pick], first, end - first));
+            next[pick] = end;
+            if (end >= range.to) {
+                piece[pick]++;
+                if (piece[pick] < track.pieces.size()) {
+                    next[pick] = track.pieces.get(piece[pick]).from;
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer buildMoov(Mp4Movie movie, List<OutputTrack> tracks, List<Chunk> chunks,
+                                        long dataStart, boolean co64) {
+        BoxBuffer out = new BoxBuffer();
+        out.start(Mp4Box.MOOV);
+
+        long movieDuration = 0;
+        long[] trackDurations = new long[tracks.size()];
+        long[] editShifts = new long[tracks.size()];
+        for (int i = 0; i < tracks.size(); i++) {
+            OutputTrack track = tracks.get(i);
+            editShifts[i] = editShift(track.pieces.get(0));
+            trackDurations[i] = Math.max(0, track.mediaDuration() - editShifts[i]) * movie.timescale
+                    / track.template.timescale;
+            movieDuration = Math.max(movieDuration, trackDurations[i]);
+        }
+
+        out.put(withDuration(movie.mvhd, 16, 24, movieDuration));
+        for (int i = 0; i < tracks.size(); i++) {
+            writeTrack(out, tracks.get(i), i, chunks, dataStart, co64, trackDurations[i], editShifts[i]);
+        }
+        for (byte[] box : movie.otherMoovBoxes) {
+            out.put(box);
+        }
+        out.end();
+        return out.toBuffer();
+    }
+
+    /**
+     * 编辑列表的起始媒体时间：使第一个范围内最早显示的样本从 0 开始显示
+     */
+    static long editShift(TrackRange range) {
+        Mp4Movie.Track track = range.track;
+        if (track.ctsOffsets == null) {
+            // 没有 B 帧：从文件开头开始时保留原编辑（如音频编码器延迟），否则从第一个样本开始
+            return range.from == 0 ? track.editMediaTime : 0;
+        }
+        long base = track.decodeTimes[range.from];
+        long min = Long.MAX_VALUE;
+        for (int i = range.from; i < range.to; i++) {
+            min = Math.min(min, track.decodeTimes[i] - base + track.ctsOffsets[i]);
+        }
+        return Math.max(0, min);
+    }
+
+    /**
+     * 范围经编辑后的显示时长（媒体时间刻度）：从编辑起点到最晚显示的样本结束
+     * 有 B 帧时合成偏移只推迟显示，时长与解码时长相同；没有时减去编辑跳过的部分（如音频编码器延迟）
+     */
+    static long editedDuration(TrackRange range) {
+        Mp4Movie.Track track = range.track;
+        long base = track.decodeTimes[range.from];
+        long end = track.decodeTimes[range.to] - base;
+        if (track.ctsOffsets != null) {
+            for (int i = range.from; i < range.to; i++) {
+                end = Math.max(end, track.decodeTimes[i + 1] - base + track.ctsOffsets[i]);
+            }
+        }
+        return Math.max(0, end - editShift(range));
+    }
+
+    private static void writeTrack(BoxBuffer out, OutputTrack output, int trackIndex, List<Chunk> chunks,
+                                   long dataStart, boolean co64, long duration, long editShift) {
+        Mp4Movie.Track track = output.template;
+        out.start(Mp4Box.TRAK);
+        out.put(withDuration(track.tkhd, 20, 28, duration));
+        if (editShift > 0) {
+            boolean wide = duration > 0xffffffffL || editShift > Integer.MAX_VALUE;
+            out.start(Mp4Box.EDTS);
+            out.startFull(Mp4Box.ELST, wide ? 1 : 0, 0);
+            out.putInt(1);
+            if (wide) {
+                out.putLong(duration);
+                out.putLong(editShift);
+            } else {
+                out.putInt((int) duration);
+                out.putInt((int) editShift);
+            }
+            out.putInt(0x00010000);   // media_rate 1.0
+            out.end();
+            out.end();
+        }
+        out.start(Mp4Box.MDIA);
+        out.put(withDuration(track.mdhd, 16, 24, output.mediaDuration()));
+        out.put(track.hdlr);
+        out.start(Mp4Box.MINF);
+        if (track.mediaHeader != null) {
+            out.put(track.mediaHeader);
+        }
+        if (track.dinf != null) {
+            out.put(track.dinf);
+        }
+        out.start(Mp4Box.STBL);
+        out.put(track.stsd);
+        writeSampleTables(out, output, trackIndex, chunks, dataStart, co64);
+        out.end();  // stbl
+        out.end();  // minf
+        out.end();  // mdia
+        out.end();  // trak
+    }
+
+    private static void writeSampleTables(BoxBuffer out, OutputTrack output, int trackIndex, List<Chunk> chunks,
+                                          long dataStart, boolean co64) {
+        boolean hasCts = false;
+        boolean hasSync = false;
+        int cttsVersion = 0;
+        int firstSize = output.pieces.get(0).track.sizes[output.pieces.get(0).from];
+        boolean uniformSize = true;
+        for (TrackRange piece : output.pieces) {
+            Mp4Movie.Track track = piece.track;
+            hasCts |= track.ctsOffsets != null;
+            hasSync |= track.syncSamples != null;
+            cttsVersion = Math.max(cttsVersion, track.cttsVersion);
+            for (int i = piece.from; i < piece.to && uniformSize; i++) {
+                uniformSize = track.sizes[i] == firstSize;
+            }
+        }
+
+        // stts：解码时间增量（游程编码；范围的最后一个样本延伸到下一个范围的起点）
+        out.startFull(Mp4Box.STTS, 0, 0);
+        RunWriter runs = new RunWriter(out);
+        for (int p = 0; p < output.pieces.size(); p++) {
+            TrackRange piece = output.pieces.get(p);
+            long[] decodeTimes = piece.track.decodeTimes;
+            for (int i = piece.from; i < piece.to - 1; i++) {
+                runs.add(decodeTimes[i + 1] - decodeTimes[i]);
+            }
+            runs.add(output.lastSampleDuration(p));
+        }
+        runs.finish();
+        out.end();
+
+        // ctts：合成时间偏移（游程编码；拼接时没有 ctts 的范围按 0 处理）
+        if (hasCts) {
+            out.startFull(Mp4Box.CTTS, cttsVersion, 0);
+            runs = new RunWriter(out);
+            for (TrackRange piece : output.pieces) {
+                int[] ctsOffsets = piece.track.ctsOffsets;
+                for (int i = piece.from; i < piece.to; i++) {
+                    runs.add(ctsOffsets != null ? ctsOffsets[i] : 0);
+                }
+            }
+            runs.finish();
+            out.end();
+        }
+
+        // stss：关键帧（源文件没有 stss 表示全部是关键帧）
+        if (hasSync) {
+            out.startFull(Mp4Box.STSS, 0, 0);
+            int countPosition = out.reserveInt();
+            int entries = 0;
+            int base = 1;
+            for (TrackRange piece : output.pieces) {
+                int[] syncSamples = piece.track.syncSamples;
+                if (syncSamples == null) {
+                    for (int i = piece.from; i < piece.to; i++) {
+                        out.putInt(base + i - piece.from);
+                        entries++;
+                    }
+                } else {
+                    for (int sample : syncSamples) {
+                        if (sample >= piece.from && sample < piece.to) {
+                            out.putInt(base + sample - piece.from);
+                            entries++;
+                        }
+                    }
+                }
+                base += piece.count();
+            }
+            out.patchInt(countPosition, entries);
+            out.end();
+        }
+
+        // stsz：样本大小
+        out.startFull(Mp4Box.STSZ, 0, 0);
+        out.putInt(uniformSize ? firstSize : 0);
+        out.putInt(output.sampleCount());
+        if (!uniformSize) {
+            for (TrackRange piece : output.pieces) {
+                for (int i = piece.from; i < piece.to; i++) {
+                    out.putInt(piece.track.sizes[i]);
+                }
+            }
+        }
+        out.end();
+
+        // stsc：每块样本数（游程编码），stco / co64：块位置
+        List<Chunk> trackChunks = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            if (chunk.track == trackIndex) {
+                trackChunks.add(chunk);
+            }
+        }
+        out.startFull(Mp4Box.STSC, 0, 0);
+        int countPosition = out.reserveInt();
+        int entries = 0;
+        int previousCount = -1;
+        for (int i = 0; i < trackChunks.size(); i++) {
+            int count = trackChunks.get(i).count;
+            if (count != previousCount) {
+                out.putInt(i + 1);
+                out.putInt(count);
+                out.putInt(1);
+                entries++;
+                previousCount = count;
+            }
+        }
+        out.patchInt(countPosition, entries);
+        out.end();
+
+        out.startFull(co64 ? Mp4Box.CO64 : Mp4Box.STCO, 0, 0);
+        out.putInt(trackChunks.size());
+        for (Chunk chunk : trackChunks) {
+            long offset = dataStart + chunk.dataOffset;
+            if (co64) {
+                out.putLong(offset);
+            } else {
+                out.putInt((int) offset);
+            }
+        }
+        out.end();
+    }
+
+    /**
+     * 复制 mvhd / tkhd / mdhd 并改写其中的时长字段
+     * @param offsetV0 版本 0 时时长字段相对数据起点的偏移（32 位）
+     * @param offsetV1 版本 1 时时长字段相对数据起点的偏移（64 位）
+     */
+    private static byte[] withDuration(byte[] box, int offsetV0, int offsetV1, long duration) {
+        byte[] copy = box.clone();
+        ByteBuffer buffer = ByteBuffer.wrap(copy);
+        int data = buffer.getInt(0) == 1 ? 16 : 8;
+        if (buffer.get(data) == 1) {
+            buffer.putLong(data + offsetV1, duration);
+        } else {
+            buffer.putInt(data + offsetV0, (int) Math.min(duration, 0xffffffffL));
+        }
+        return copy;
+    }
+
+    private static void copyRange(FileChannel in, long position, long length, FileChannel out) throws IOException {
+        IoScheduler scheduler = IoScheduler.getInstance();
+        while (length > 0) {
+            long block = Math.min(length, COPY_BLOCK_BYTES);
+            scheduler.acquire(IoScheduler.IoClass.COPY, block);
+            long transferred = in.transferTo(position, block, out);
+            if (transferred <= 0) {
+                throw new IOException("Source ended at " + position);
+            }
+            position += transferred;
+            length -= transferred;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * 游程编码表（stts / ctts）：表项数在 finish 时回填
+     */
+    private static final class RunWriter {
+        private final BoxBuffer out;
+        private final int countPosition;
+        private int entries;
+        private long value;
+        private int run;
+
+        RunWriter(BoxBuffer out) {
+            this.out = out;
+            this.countPosition = out.reserveInt();
+        }
+
+        void add(long v) {
+            if (run > 0 && v == value) {
+                run++;
+                return;
+            }
+            flush();
+            value = v;
+            run = 1;
+        }
+
+        void finish() {
+            flush();
+            out.patchInt(countPosition, entries);
+        }
+
+        private void flush() {
+            if (run > 0) {
+                out.putInt(run);
+                out.putInt((int) value);
+                entries++;
+            }
+        }
+    }
+
+    /**
+     * 可增长的 box 缓冲区，start / end 成对调用，end 时回填 box 长度
+     */
+    private static final class BoxBuffer {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private final ArrayDeque<Integer> open = new ArrayDeque<>();
+
+        void start(int type) {
+            ensure(8);
+            open.push(buffer.position());
+            buffer.putInt(0);
+            buffer.putInt(type);
+        }
+
+        void startFull(int type, int version, int flags) {
+            start(type);
+            putInt(version << 24 | (flags & 0xffffff));
+        }
+
+        void end() {
+            int start = open.pop();
+            buffer.putInt(start, buffer.position() - start);
+        }
+
+        void put(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        int reserveInt() {
+            int position = buffer.position();
+            putInt(0);
+            return position;
+        }
+
+        void patchInt(int position, int value) {
+            buffer.putInt(position, value);
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer result = buffer.duplicate();
+            result.flip();
+            return result;
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                grown.put(buffer);
+                buffer = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.kooo.evcam.remote.core;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Response;
+
+/**
+ * 远程平台 API 调用失败
+ * 由 Telegram / 钉钉 / 飞书的 API 客户端抛出，携带 HTTP 状态码和服务器要求的等待时间，
+ * 上传调度器据此决定是否重试，不再解析异常信息
+ * 没有 HTTP 响应的网络错误（超时、连接重置）仍以普通 IOException 抛出
+ */
+public class RemoteApiException extends IOException {
+
+    // 不是 HTTP 错误状态（业务错误码、响应内容不符合预期）
+    public static final int NO_HTTP_CODE = -1;
+
+    // Telegram 429 响应体中的建议等待秒数：{"parameters":{"retry_after":5}}
+    private static final Pattern RETRY_AFTER_PATTERN = Pattern.compile("\"retry_after\"\\s*:\\s*(\\d{1,9})");
+
+    private final int httpCode;
+    private final long retryAfterMs;
+    private final boolean retryable;
+
+    public RemoteApiException(String message, int httpCode, long retryAfterMs, boolean retryable) {
+        super(message);
+        this.httpCode = httpCode;
+        this.retryAfterMs = retryAfterMs;
+        this.retryable = retryable;
+    }
+
+    /**
+     * HTTP 错误响应：429 和 5xx 可以重试，等待时间取 Retry-After 头或响应体中的 retry_after
+     * 钉钉新版接口的频率限制以 403 + QpsLimit 错误码返回，同样可以重试
+     * @param action 操作名称（用于错误信息，如 "上传文件"）
+     * @param body 已读取的响应体
+     */
+    public static RemoteApiException fromResponse(String action, Response response, String body) {
+        int code = response.code();
+        boolean retryable = code == 429 || code >= 500 || (body != null && body.contains("QpsLimit"));
+        return new RemoteApiException(action + "失败: " + code + ", " + body, code,
+                parseRetryAfterMs(response.header("Retry-After"), body), retryable);
+    }
+
+    /**
+     * 平台以业务错误码返回的频率限制（HTTP 200），可以重试
+     */
+    public static RemoteApiException rateLimited(String message) {
+        return new RemoteApiException(message, NO_HTTP_CODE, 0, true);
+    }
+
+    /**
+     * 请求被拒绝或响应内容不符合预期，重试无意义
+     */
+    public static RemoteApiException rejected(String message) {
+        return new RemoteApiException(message, NO_HTTP_CODE, 0, false);
+    }
+
+    /**
+     * @return HTTP 状态码，不是 HTTP 错误时为 {@link #NO_HTTP_CODE}
+     */
+    public int getHttpCode() {
+        return httpCode;
+    }
+
+    /**
+     * @return 服务器要求的等待时间（毫秒），未给出时为 0
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * 解析等待时间：优先使用 Retry-After 头（秒数），其次为响应体中的 retry_after
+     */
+    static long parseRetryAfterMs(String header, String body) {
+        if (header != null) {
+            try {
+                return Math.max(0, Integer.parseInt(header.trim())) * 1000L;
+            } catch (NumberFormatException e) {
+                // HTTP 日期格式，忽略
+            }
+        }
+        if (body != null) {
+            Matcher matcher = RETRY_AFTER_PATTERN.matcher(body);
+            if (matcher.find()) {
+                return Long.parseLong(matcher.group(1)) * 1000;
+            }
+        }
+        return 0;
+    }
+}
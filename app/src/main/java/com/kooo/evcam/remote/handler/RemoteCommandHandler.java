@@ -15,6 +15,8 @@ import com.kooo.evcam.remote.core.RemotePlatform;
 import com.kooo.evcam.remote.core.RemoteUploadCallback;
 import com.kooo.evcam.remote.upload.MediaFileFinder;
 import com.kooo.evcam.remote.upload.MediaUploadService;
+import com.kooo.evcam.remote.upload.VideoMerger;
+import com.kooo.evcam.storage.MediaCatalog;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -388,9 +390,35 @@ public abstract class RemoteCommandHandler {
         
         AppLog.d(TAG, "找到 " + videoFiles.size() + " 个视频文件，开始上传到" + platformName);
         
+        // 远程录制的视频标记为事件录像，避免被当作循环录像优先清理
+        markAsEvent(videoFiles);
+        
+        // Watchdog 重建过录制时，同一摄像头的多个片段先拼接成一个视频（在后台线程拼接）
+        if (allTimestamps.size() > 1) {
+            new Thread(() -> {
+                VideoMerger.Result merged = VideoMerger.mergeByCamera(context, videoFiles);
+                mainHandler.post(() -> startVideoUpload(chatId, videoFiles, merged));
+            }, "EVCam-VideoMerge").start();
+        } else {
+            startVideoUpload(chatId, videoFiles, null);
+        }
+    }
+    
+    /**
+     * 上传视频
+     * @param videoFiles 录制的原文件（上传结束后转存到最终目录）
+     * @param merged 拼接结果，为 null 时直接上传原文件
+     */
+    private void startVideoUpload(ChatIdentifier chatId, List<File> videoFiles, VideoMerger.Result merged) {
+        String platformName = getPlatformName();
+        List<File> uploadFiles = merged != null ? merged.files : videoFiles;
+        if (uploadFiles.size() != videoFiles.size()) {
+            AppLog.d(TAG, videoFiles.size() + " 个视频片段已拼接为 " + uploadFiles.size() + " 个视频");
+        }
+        
         // 创建上传服务并上传
         MediaUploadService uploadService = createVideoUploadService();
-        uploadService.uploadVideos(videoFiles, chatId, new RemoteUploadCallback() {
+        uploadService.uploadVideos(uploadFiles, chatId, new RemoteUploadCallback() {
             @Override
             public void onProgress(String message) {
                 AppLog.d(TAG, platformName + " 视频上传进度: " + message);
@@ -399,6 +427,7 @@ public abstract class RemoteCommandHandler {
             @Override
             public void onSuccess(String message) {
                 AppLog.d(TAG, platformName + " 视频上传成功: " + message);
+                VideoMerger.delete(merged);
                 
                 // 传输临时文件到最终目录
                 mediaFileFinder.transferToFinalDir(videoFiles);
@@ -409,6 +438,7 @@ public abstract class RemoteCommandHandler {
             @Override
             public void onError(String error) {
                 AppLog.e(TAG, platformName + " 视频上传失败: " + error);
+                VideoMerger.delete(merged);
                 
                 // 即使上传失败，也要传输文件到最终存储位置（保留视频）
                 mediaFileFinder.transferToFinalDir(videoFiles);
@@ -444,6 +474,7 @@ public abstract class RemoteCommandHandler {
         }
         
         AppLog.d(TAG, "找到 " + photoFiles.size() + " 张照片，开始上传到" + platformName);
+        markAsEvent(photoFiles);
         
         // 创建上传服务并上传
         MediaUploadService uploadService = createPhotoUploadService();
@@ -467,6 +498,26 @@ public abstract class RemoteCommandHandler {
         });
     }
     
+    // ==================== 事件标记 ====================
+    
+    /**
+     * 将远程命令产生的文件标记为事件录像（已锁定的文件保持锁定）
+     */
+    private void markAsEvent(List<File> files) {
+        MediaCatalog catalog = MediaCatalog.getInstance(context);
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            MediaCatalog.Entry entry = catalog.get(path);
+            if (entry == null) {
+                catalog.onMediaFileClosed(file, MediaCatalog.guessType(file.getName()));
+                entry = catalog.get(path);
+            }
+            if (entry != null && !entry.isLocked()) {
+                catalog.setTier(path, MediaCatalog.TIER_EVENT);
+            }
+        }
+    }
+    
     // ==================== 辅助方法 ====================
     
     /**
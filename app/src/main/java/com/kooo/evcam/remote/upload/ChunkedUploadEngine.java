@@ -0,0 +1,303 @@
+package com.kooo.evcam.remote.upload;
+
+import android.content.Context;
+
+import com.kooo.evcam.AppLog;
+import com.kooo.evcam.storage.IoScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+
+/**
+ * 可续传的分片上传引擎
+ * 大文件按分片上传，每个分片单独校验、单独重试，已确认的分片记录在 {@link UploadJournal} 中：
+ * 网络中断后只重传未完成的分片；进程重启后再次上传同一文件（同一协议、同一目标）时从日志继续
+ *
+ * 具体的分片协议由 {@link Protocol} 实现：
+ * - 飞书：云文档分片上传（upload_prepare / upload_part / upload_finish），服务器按 Adler-32 校验每个分片
+ * - Telegram / 钉钉：没有分片上传接口，按单次请求大小上限把文件切成若干段，每段作为一个文件发送（{@link SplitUploadProtocol}）
+ *
+ * 同一文件的分片并发上传（并发数由协议决定），所有上传共用一个有界的分片线程池
+ */
+public final class ChunkedUploadEngine {
+    private static final String TAG = "ChunkedUpload";
+
+    // 分片线程池大小（所有上传共用）
+    private static final int PART_THREADS = 4;
+    // 单个分片最多尝试次数（含首次）
+    private static final int PART_ATTEMPTS = 5;
+    private static final long PART_BACKOFF_BASE_MS = 1000;
+    private static final long PART_BACKOFF_MAX_MS = 16000;
+    // 计算校验值时每次读取的大小
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 分片上传会话
+     */
+    public static final class Session {
+        public final String uploadId;
+        public final long partSize;
+        public final int partCount;
+
+        public Session(String uploadId, long partSize, int partCount) {
+            this.uploadId = uploadId;
+            this.partSize = partSize;
+            this.partCount = partCount;
+        }
+    }
+
+    /**
+     * 一个分片：文件中 [offset, offset + length) 的数据
+     */
+    public static final class Part {
+        public final File file;
+        public final int seq;
+        public final long offset;
+        public final long length;
+        // 分片数据的 Adler-32 校验值
+        public final long checksum;
+
+        Part(File file, int seq, long offset, long length, long checksum) {
+            this.file = file;
+            this.seq = seq;
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * 分片协议
+     */
+    public interface Protocol {
+        /**
+         * 协议名（用于区分上传日志）
+         */
+        String getName();
+
+        /**
+         * 同一文件同时上传的分片数
+         */
+        int getMaxParallelParts();
+
+        /**
+         * 上传会话有效期（毫秒），超过后不再续传
+         */
+        long getSessionTtlMs();
+
+        /**
+         * 开始一次分片上传
+         */
+        Session prepare(File file) throws IOException;
+
+        /**
+         * 上传一个分片；服务器校验失败时抛出异常
+         */
+        void uploadPart(Session session, Part part) throws IOException;
+
+        /**
+         * 所有分片确认后完成上传
+         * @return 上传结果（文件 token 等）
+         */
+        String finish(Session session) throws IOException;
+    }
+
+    /**
+     * 上传进度（在分片线程调用）
+     */
+    public interface ProgressListener {
+        void onPartUploaded(int doneParts, int totalParts);
+    }
+
+    private static ChunkedUploadEngine instance;
+
+    private final File journalDir;
+    private final ExecutorService partExecutor;
+
+    ChunkedUploadEngine(File journalDir) {
+        this.journalDir = journalDir;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(PART_THREADS,
+                r -> new Thread(r, "EVCam-UploadPart-" + threadIndex.incrementAndGet()));
+    }
+
+    public static synchronized ChunkedUploadEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChunkedUploadEngine(new File(context.getApplicationContext().getFilesDir(), "upload_journal"));
+        }
+        return instance;
+    }
+
+    /**
+     * 分片上传文件（阻塞，在上传线程调用）
+     * @param target 上传目标（会话 ID 等），与协议名、文件一起确定续传日志
+     * @param limiter 平台请求配额，每个分片请求前申请；可为 null
+     * @return 协议 finish 的结果
+     * @throws IOException 分片多次重试仍失败；网络类错误保留日志，下次上传同一文件时续传
+     */
+    public String upload(File file, String target, Protocol protocol, UploadScheduler.TokenBucket limiter,
+                         ProgressListener listener) throws IOException, InterruptedException {
+        File journalFile = UploadJournal.fileFor(journalDir, protocol.getName(), target, file);
+        UploadJournal journal = UploadJournal.load(journalFile, protocol.getName(), target, file,
+                protocol.getSessionTtlMs());
+        Session session;
+        if (journal != null) {
+            session = new Session(journal.uploadId, journal.partSize, journal.partCount);
+            AppLog.d(TAG, "续传 " + file.getName() + ": 已完成 " + journal.getDoneCount() + "/" + journal.partCount + " 个分片");
+        } else {
+            if (limiter != null) {
+                limiter.acquire();
+            }
+            session = protocol.prepare(file);
+            journal = UploadJournal.create(journalFile, protocol.getName(), target, file,
+                    session.uploadId, session.partSize, session.partCount);
+            AppLog.d(TAG, "开始分片上传 " + file.getName() + ": " + session.partCount + " 个分片，每片 "
+                    + session.partSize + " 字节");
+        }
+
+        try {
+            uploadParts(file, protocol, session, journal, limiter, listener);
+            if (limiter != null) {
+                limiter.acquire();
+            }
+            String result = protocol.finish(session);
+            journal.delete();
+            AppLog.d(TAG, "分片上传完成: " + file.getName());
+            return result;
+        } catch (IOException e) {
+            if (UploadScheduler.isRetryable(e)) {
+                // 网络中断：保留日志，下次从未完成的分片继续
+                journal.close();
+            } else {
+                // 服务器拒绝（校验失败、会话失效等）：作废日志，下次重新开始
+                journal.delete();
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            journal.close();
+            throw e;
+        }
+    }
+
+    private void uploadParts(File file, Protocol protocol, Session session, UploadJournal journal,
+                             UploadScheduler.TokenBucket limiter, ProgressListener listener)
+            throws IOException, InterruptedException {
+        List<Integer> pending = new ArrayList<>();
+        for (int seq = 0; seq < session.partCount; seq++) {
+            if (!journal.isPartDone(seq)) {
+                pending.add(seq);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(partExecutor);
+        List<Future<Integer>> futures = new ArrayList<>();
+        int parallel = Math.max(1, Math.min(protocol.getMaxParallelParts(), PART_THREADS));
+        int next = 0;
+        int inFlight = 0;
+        try {
+            while (next < pending.size() || inFlight > 0) {
+                while (inFlight < parallel && next < pending.size()) {
+                    int seq = pending.get(next++);
+                    futures.add(completion.submit(() -> uploadPart(file, protocol, session, seq, journal, limiter)));
+                    inFlight++;
+                }
+                Future<Integer> done = completion.take();
+                inFlight--;
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof InterruptedException) {
+                        throw (InterruptedException) cause;
+                    }
+                    throw new IOException("分片上传失败: " + cause, cause);
+                }
+                if (listener != null) {
+                    listener.onPartUploaded(journal.getDoneCount(), session.partCount);
+                }
+            }
+        } finally {
+            // 失败或中断时取消其余分片（已确认的分片保留在日志中）
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 上传一个分片：计算校验值、申请配额、上传，可重试的错误按退避重试
+     */
+    private Integer uploadPart(File file, Protocol protocol, Session session, int seq, UploadJournal journal,
+                               UploadScheduler.TokenBucket limiter) throws IOException, InterruptedException {
+        long offset = seq * session.partSize;
+        long length = Math.min(session.partSize, file.length() - offset);
+        if (length <= 0) {
+            throw new IOException("分片超出文件范围: " + seq + "/" + session.partCount);
+        }
+        Part part = new Part(file, seq, offset, length, checksum(file, offset, length));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                protocol.uploadPart(session, part);
+                journal.markPartDone(seq, part.checksum);
+                return seq;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("分片上传被取消");
+                }
+                if (attempt >= PART_ATTEMPTS || !UploadScheduler.isRetryable(e)) {
+                    throw e;
+                }
+                long ceiling = Math.min(PART_BACKOFF_MAX_MS, PART_BACKOFF_BASE_MS << (attempt - 1));
+                long delayMs = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+                AppLog.w(TAG, "分片 " + seq + " 上传失败，" + delayMs + "ms 后重试 (" + attempt + "/"
+                        + (PART_ATTEMPTS - 1) + "): " + e.getMessage());
+                Thread.sleep(delayMs);
+            }
+        }
+    }
+
+    /**
+     * 计算文件区间的 Adler-32 校验值（按块读取，经 I/O 调度）
+     */
+    static long checksum(File file, long offset, long length) throws IOException {
+        Adler32 adler = new Adler32();
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+        IoScheduler scheduler = IoScheduler.getInstance();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                int toRead = (int) Math.min(buffer.length, remaining);
+                scheduler.acquire(IoScheduler.IoClass.UPLOAD, toRead);
+                int read = raf.read(buffer, 0, toRead);
+                if (read < 0) {
+                    throw new IOException("文件在上传过程中被截断: " + file.getName());
+                }
+                adler.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return adler.getValue();
+    }
+}
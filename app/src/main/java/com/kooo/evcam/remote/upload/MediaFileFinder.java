@@ -5,23 +5,30 @@ import android.content.Context;
 import com.kooo.evcam.AppLog;
 import com.kooo.evcam.FileTransferManager;
 import com.kooo.evcam.StorageHelper;
+import com.kooo.evcam.storage.MediaDirectoryWatcher;
+import com.kooo.evcam.storage.MediaFileIndex;
+import com.kooo.evcam.storage.MediaLayout;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 媒体文件查找工具
  * 统一处理视频/照片文件的查找逻辑
+ * 查找基于 {@link MediaDirectoryWatcher} 维护的文件名索引，不再列出目录
  */
 public class MediaFileFinder {
     private static final String TAG = "MediaFileFinder";
     
     private final Context context;
+    private final MediaDirectoryWatcher watcher;
     
     public MediaFileFinder(Context context) {
         this.context = context;
+        this.watcher = MediaDirectoryWatcher.getInstance(context);
     }
     
     /**
@@ -38,18 +45,10 @@ public class MediaFileFinder {
         }
         
         // 1. 优先从临时目录查找
-        File tempDir = new File(context.getCacheDir(), FileTransferManager.TEMP_VIDEO_DIR);
-        if (tempDir.exists() && tempDir.isDirectory()) {
-            File[] tempFiles = tempDir.listFiles((dir, name) -> 
-                name.endsWith(".mp4") && 
-                name.startsWith(timestamp + "_") && 
-                new File(dir, name).length() > 0
-            );
-            
-            if (tempFiles != null && tempFiles.length > 0) {
-                AppLog.d(TAG, "从临时目录找到 " + tempFiles.length + " 个视频文件");
-                return new ArrayList<>(Arrays.asList(tempFiles));
-            }
+        List<File> tempFiles = nonEmpty(watcher.getTempVideoIndex().findByTimestamp(timestamp));
+        if (!tempFiles.isEmpty()) {
+            AppLog.d(TAG, "从临时目录找到 " + tempFiles.size() + " 个视频文件");
+            return tempFiles;
         }
         
         // 2. 从最终目录查找
@@ -59,17 +58,14 @@ public class MediaFileFinder {
             return new ArrayList<>();
         }
         
-        File[] files = videoDir.listFiles((dir, name) -> 
-            name.startsWith(timestamp) && name.endsWith(".mp4")
-        );
-        
-        if (files == null || files.length == 0) {
+        List<File> files = watcher.getVideoIndex().findByTimestamp(timestamp);
+        if (files.isEmpty()) {
             AppLog.e(TAG, "未找到录制的视频文件，时间戳: " + timestamp);
             return new ArrayList<>();
         }
         
-        AppLog.d(TAG, "从最终目录找到 " + files.length + " 个视频文件");
-        return new ArrayList<>(Arrays.asList(files));
+        AppLog.d(TAG, "从最终目录找到 " + files.size() + " 个视频文件");
+        return files;
     }
     
     /**
@@ -85,59 +81,23 @@ public class MediaFileFinder {
             return new ArrayList<>();
         }
         
-        List<File> allFiles = new ArrayList<>();
-        
-        // 1. 从临时目录查找所有时间戳对应的文件
-        File tempDir = new File(context.getCacheDir(), FileTransferManager.TEMP_VIDEO_DIR);
-        if (tempDir.exists() && tempDir.isDirectory()) {
-            File[] tempFiles = tempDir.listFiles((dir, name) -> {
-                if (!name.endsWith(".mp4") || new File(dir, name).length() == 0) {
-                    return false;
-                }
-                for (String ts : timestamps) {
-                    if (name.startsWith(ts + "_")) {
-                        return true;
-                    }
-                }
-                return false;
-            });
-            
-            if (tempFiles != null && tempFiles.length > 0) {
-                allFiles.addAll(Arrays.asList(tempFiles));
-                AppLog.d(TAG, "从临时目录找到 " + tempFiles.length + " 个视频文件");
+        // 按文件名去重（临时目录和最终目录可能有同名文件，优先临时目录）
+        Map<String, File> allFiles = new LinkedHashMap<>();
+        MediaFileIndex tempIndex = watcher.getTempVideoIndex();
+        MediaFileIndex videoIndex = watcher.getVideoIndex();
+        int tempCount = 0;
+        for (String ts : timestamps) {
+            for (File f : nonEmpty(tempIndex.findByTimestamp(ts))) {
+                allFiles.put(f.getName(), f);
+                tempCount++;
             }
         }
-        
-        // 2. 从最终目录查找所有时间戳对应的文件
-        File videoDir = StorageHelper.getVideoDir(context);
-        if (videoDir != null && videoDir.exists()) {
-            File[] files = videoDir.listFiles((dir, name) -> {
-                if (!name.endsWith(".mp4")) {
-                    return false;
-                }
-                for (String ts : timestamps) {
-                    if (name.startsWith(ts)) {
-                        return true;
-                    }
-                }
-                return false;
-            });
-            
-            if (files != null && files.length > 0) {
-                // 避免重复添加（临时目录和最终目录可能有同名文件）
-                for (File f : files) {
-                    boolean exists = false;
-                    for (File existing : allFiles) {
-                        if (existing.getName().equals(f.getName())) {
-                            exists = true;
-                            break;
-                        }
-                    }
-                    if (!exists) {
-                        allFiles.add(f);
-                    }
-                }
-                AppLog.d(TAG, "从最终目录额外找到视频文件");
+        if (tempCount > 0) {
+            AppLog.d(TAG, "从临时目录找到 " + tempCount + " 个视频文件");
+        }
+        for (String ts : timestamps) {
+            for (File f : videoIndex.findByTimestamp(ts)) {
+                allFiles.putIfAbsent(f.getName(), f);
             }
         }
         
@@ -147,7 +107,7 @@ public class MediaFileFinder {
             AppLog.d(TAG, "总共找到 " + allFiles.size() + " 个视频文件（时间戳数: " + timestamps.size() + "）");
         }
         
-        return allFiles;
+        return new ArrayList<>(allFiles.values());
     }
     
     /**
@@ -168,18 +128,27 @@ public class MediaFileFinder {
             return new ArrayList<>();
         }
         
-        File[] files = photoDir.listFiles((dir, name) -> 
-            name.startsWith(timestamp) && 
-            (name.endsWith(".jpg") || name.endsWith(".jpeg"))
-        );
-        
-        if (files == null || files.length == 0) {
+        List<File> files = watcher.getPhotoIndex().findByTimestamp(timestamp);
+        if (files.isEmpty()) {
             AppLog.e(TAG, "未找到拍摄的照片，时间戳: " + timestamp);
             return new ArrayList<>();
         }
         
-        AppLog.d(TAG, "找到 " + files.length + " 张照片");
-        return new ArrayList<>(Arrays.asList(files));
+        AppLog.d(TAG, "找到 " + files.size() + " 张照片");
+        return files;
+    }
+    
+    /**
+     * 过滤掉空文件（临时目录中刚创建、尚未写入数据的分段）
+     */
+    private static List<File> nonEmpty(List<File> files) {
+        List<File> result = new ArrayList<>(files.size());
+        for (File f : files) {
+            if (f.length() > 0) {
+                result.add(f);
+            }
+        }
+        return result;
     }
     
     /**
@@ -203,7 +172,7 @@ public class MediaFileFinder {
         for (File tempFile : tempFiles) {
             if (tempFile.exists()) {
                 // 构造目标文件路径
-                File targetFile = new File(videoDir, tempFile.getName());
+                File targetFile = MediaLayout.resolve(videoDir, tempFile.getName());
                 
                 transferManager.addTransferTask(tempFile, targetFile, new FileTransferManager.TransferCallback() {
                     @Override
@@ -0,0 +1,79 @@
+package com.kooo.evcam.remote.upload;
+
+import com.kooo.evcam.storage.IoScheduler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * 文件请求体（经 I/O 调度）
+ * 与 RequestBody.create(MediaType, File) 相同，但按块读取文件，每块读取前向 {@link IoScheduler} 申请预算，
+ * 录制写入延迟升高时上传读取会让出存储设备
+ * 也可以只发送文件的一个区间（分片上传）
+ */
+public class ScheduledFileBody extends RequestBody {
+
+    // 每次读取的块大小
+    private static final long CHUNK_SIZE = 256 * 1024;
+
+    private final File file;
+    private final long offset;
+    // -1 表示到文件末尾
+    private final long length;
+    private final MediaType contentType;
+
+    public ScheduledFileBody(File file, MediaType contentType) {
+        this(file, 0, -1, contentType);
+    }
+
+    /**
+     * 文件区间 [offset, offset + length) 作为请求体
+     */
+    public ScheduledFileBody(File file, long offset, long length, MediaType contentType) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return length >= 0 ? length : file.length() - offset;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        IoScheduler scheduler = IoScheduler.getInstance();
+        Buffer buffer = new Buffer();
+        long remaining = contentLength();
+        try (FileInputStream in = new FileInputStream(file)) {
+            if (offset > 0) {
+                in.getChannel().position(offset);
+            }
+            Source source = Okio.source(in);
+            while (remaining > 0) {
+                long toRead = Math.min(CHUNK_SIZE, remaining);
+                scheduler.acquire(IoScheduler.IoClass.UPLOAD, toRead);
+                long read = source.read(buffer, toRead);
+                if (read < 0) {
+                    throw new IOException("文件在上传过程中被截断: " + file.getName());
+                }
+                sink.write(buffer, read);
+                remaining -= read;
+            }
+        }
+    }
+}
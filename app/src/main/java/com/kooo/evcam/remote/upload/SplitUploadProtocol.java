@@ -0,0 +1,92 @@
+package com.kooo.evcam.remote.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * 分段发送协议
+ * 用于没有分片上传接口的平台（Telegram、钉钉）：把超过单次上传上限的文件按固定大小切成若干段，
+ * 每段作为一个独立文件（"原文件名.001"、".002"...）发送，全部发送后发一条合并说明
+ *
+ * 段按顺序发送（并发数为 1），聊天中的顺序与文件顺序一致；已发送的段记录在续传日志中，中断后不会重复发送
+ */
+public abstract class SplitUploadProtocol implements ChunkedUploadEngine.Protocol {
+
+    // 分段发送没有服务器会话，日志只用于避免重复发送，保留较长时间
+    private static final long SESSION_TTL_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private final String name;
+    private final long segmentSize;
+
+    /**
+     * @param name 协议名（平台）
+     * @param segmentSize 每段大小（不超过平台单次上传上限）
+     */
+    protected SplitUploadProtocol(String name, long segmentSize) {
+        this.name = name;
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getMaxParallelParts() {
+        return 1;
+    }
+
+    @Override
+    public long getSessionTtlMs() {
+        return SESSION_TTL_MS;
+    }
+
+    @Override
+    public ChunkedUploadEngine.Session prepare(File file) {
+        int count = (int) ((file.length() + segmentSize - 1) / segmentSize);
+        return new ChunkedUploadEngine.Session(UUID.randomUUID().toString(), segmentSize, Math.max(1, count));
+    }
+
+    @Override
+    public void uploadPart(ChunkedUploadEngine.Session session, ChunkedUploadEngine.Part part) throws IOException {
+        sendSegment(part, segmentName(part.file, part.seq, session.partCount), part.seq + 1, session.partCount);
+    }
+
+    @Override
+    public String finish(ChunkedUploadEngine.Session session) throws IOException {
+        return null;
+    }
+
+    /**
+     * 第 seq 段的文件名
+     */
+    public static String segmentName(File file, int seq, int count) {
+        int digits = Math.max(3, String.valueOf(count).length());
+        return file.getName() + "." + String.format(Locale.US, "%0" + digits + "d", seq + 1);
+    }
+
+    /**
+     * 合并说明
+     */
+    public static String joinHint(File file, int count) {
+        String first = segmentName(file, 0, count);
+        String last = segmentName(file, count - 1, count);
+        return file.getName() + " 超过单个文件上限，已分为 " + count + " 段发送（" + first + " ~ " + last + "）\n"
+                + "合并方法：\n"
+                + "Windows: copy /b " + file.getName() + ".0* " + file.getName() + "\n"
+                + "macOS / Linux: cat " + file.getName() + ".0* > " + file.getName();
+    }
+
+    /**
+     * 发送一段（文件区间 [part.offset, part.offset + part.length)）
+     * 平台返回的大小与分段长度不一致时应抛出异常
+     * @param segmentName 该段的文件名
+     * @param number 段序号（从 1 开始）
+     * @param count 总段数
+     */
+    protected abstract void sendSegment(ChunkedUploadEngine.Part part, String segmentName, int number, int count)
+            throws IOException;
+}
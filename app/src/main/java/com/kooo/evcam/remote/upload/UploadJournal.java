@@ -0,0 +1,215 @@
+package com.kooo.evcam.remote.upload;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * 分片上传日志
+ * 每次分片上传对应一个日志文件，记录上传会话和已确认的分片，网络中断或进程重启后再次上传同一文件时从未完成的分片继续
+ *
+ * 格式：头部（写入后 fsync）+ 追加的分片记录
+ * - 头部：魔数、版本、协议名、上传目标、文件路径、文件长度、修改时间、上传 ID、分片大小、分片数、创建时间
+ * - 分片记录：序号(int) + Adler-32 校验值(long)，只 flush 不 fsync（丢失记录只会导致该分片重传）
+ *
+ * 文件被修改（长度或修改时间变化）、会话超过有效期时日志作废
+ */
+final class UploadJournal {
+    private static final String TAG = "UploadJournal";
+
+    private static final int MAGIC = 0x45565550; // "EVUP"
+    private static final int VERSION = 1;
+    // 分片记录长度：序号(int) + 校验值(long)
+    private static final int RECORD_SIZE = 12;
+
+    final String uploadId;
+    final long partSize;
+    final int partCount;
+    final long createdAtMs;
+
+    private final File journalFile;
+    private final BitSet doneParts;
+    private final long[] checksums;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+
+    private UploadJournal(File journalFile, String uploadId, long partSize, int partCount, long createdAtMs) {
+        this.journalFile = journalFile;
+        this.uploadId = uploadId;
+        this.partSize = partSize;
+        this.partCount = partCount;
+        this.createdAtMs = createdAtMs;
+        this.doneParts = new BitSet(partCount);
+        this.checksums = new long[partCount];
+    }
+
+    /**
+     * 日志文件路径：由协议、目标和文件（路径、长度、修改时间）确定
+     */
+    static File fileFor(File dir, String protocol, String target, File file) {
+        String key = protocol + '|' + target + '|' + file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified();
+        // FNV-1a 64 位哈希
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return new File(dir, String.format(Locale.US, "%016x.journal", hash));
+    }
+
+    /**
+     * 创建新的上传日志（头部写入后 fsync）
+     */
+    static UploadJournal create(File journalFile, String protocol, String target, File file,
+                                String uploadId, long partSize, int partCount) throws IOException {
+        File dir = journalFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建上传日志目录: " + dir.getAbsolutePath());
+        }
+        UploadJournal journal = new UploadJournal(journalFile, uploadId, partSize, partCount,
+                System.currentTimeMillis());
+        journal.fileOut = new FileOutputStream(journalFile, false);
+        journal.out = new DataOutputStream(journal.fileOut);
+        DataOutputStream o = journal.out;
+        o.writeInt(MAGIC);
+        o.writeInt(VERSION);
+        o.writeUTF(protocol);
+        o.writeUTF(target);
+        o.writeUTF(file.getAbsolutePath());
+        o.writeLong(file.length());
+        o.writeLong(file.lastModified());
+        o.writeUTF(uploadId);
+        o.writeLong(partSize);
+        o.writeInt(partCount);
+        o.writeLong(journal.createdAtMs);
+        o.flush();
+        journal.fileOut.getFD().sync();
+        return journal;
+    }
+
+    /**
+     * 读取已有的上传日志
+     * @param ttlMs 会话有效期，超过后日志作废
+     * @return 日志，不存在、不匹配或已过期时返回 null（并删除无效日志）
+     */
+    static UploadJournal load(File journalFile, String protocol, String target, File file, long ttlMs) {
+        if (!journalFile.exists()) {
+            return null;
+        }
+        UploadJournal journal = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("日志格式不匹配");
+            }
+            // 用 & 而不是 &&：无论是否匹配都要按顺序读完头部字段
+            boolean matches = in.readUTF().equals(protocol)
+                    & in.readUTF().equals(target)
+                    & in.readUTF().equals(file.getAbsolutePath())
+                    & in.readLong() == file.length()
+                    & in.readLong() == file.lastModified();
+            String uploadId = in.readUTF();
+            long partSize = in.readLong();
+            int partCount = in.readInt();
+            long createdAtMs = in.readLong();
+            if (!matches || partCount <= 0 || partSize <= 0) {
+                throw new IOException("日志与文件不匹配");
+            }
+            if (System.currentTimeMillis() - createdAtMs > ttlMs) {
+                throw new IOException("上传会话已过期");
+            }
+            journal = new UploadJournal(journalFile, uploadId, partSize, partCount, createdAtMs);
+            long validLength = journalFile.length() - in.available();
+            while (true) {
+                int seq;
+                long checksum;
+                try {
+                    seq = in.readInt();
+                    checksum = in.readLong();
+                } catch (EOFException eof) {
+                    break;
+                }
+                if (seq >= 0 && seq < partCount) {
+                    journal.doneParts.set(seq);
+                    journal.checksums[seq] = checksum;
+                }
+                validLength += RECORD_SIZE;
+            }
+            if (journalFile.length() > validLength) {
+                // 尾部记录不完整（写入时进程被杀）：截断，该分片重传
+                try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                    raf.setLength(validLength);
+                }
+            }
+        } catch (IOException e) {
+            AppLog.w(TAG, "上传日志无效，重新上传: " + file.getName() + " - " + e.getMessage());
+            journalFile.delete();
+            return null;
+        }
+        return journal;
+    }
+
+    synchronized boolean isPartDone(int seq) {
+        return doneParts.get(seq);
+    }
+
+    synchronized int getDoneCount() {
+        return doneParts.cardinality();
+    }
+
+    synchronized long getChecksum(int seq) {
+        return checksums[seq];
+    }
+
+    /**
+     * 记录分片已被服务器确认
+     */
+    synchronized void markPartDone(int seq, long checksum) {
+        doneParts.set(seq);
+        checksums[seq] = checksum;
+        try {
+            if (out == null) {
+                fileOut = new FileOutputStream(journalFile, true);
+                out = new DataOutputStream(fileOut);
+            }
+            out.writeInt(seq);
+            out.writeLong(checksum);
+            out.flush();
+        } catch (IOException e) {
+            AppLog.e(TAG, "记录分片进度失败: " + journalFile.getName(), e);
+            close();
+        }
+    }
+
+    synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    /**
+     * 上传完成或会话作废：删除日志
+     */
+    synchronized void delete() {
+        close();
+        if (journalFile.exists() && !journalFile.delete()) {
+            AppLog.w(TAG, "删除上传日志失败: " + journalFile.getName());
+        }
+    }
+}
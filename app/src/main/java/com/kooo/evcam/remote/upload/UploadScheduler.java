@@ -0,0 +1,476 @@
+package com.kooo.evcam.remote.upload;
+
+import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemoteApiException;
+import com.kooo.evcam.remote.core.RemotePlatform;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 远程上传调度器
+ * Telegram / 钉钉 / 飞书的视频和照片上传共用一个有界线程池，替代每次上传新建线程、文件之间固定 sleep 的做法：
+ * - 每个平台一条通道：限制同时上传的文件数，超出的文件在通道内排队（排队数有上限）
+ * - 每个平台一个令牌桶，按平台 API 的频率限制发放请求配额，每次 API 调用前申请
+ * - 429 / 5xx / 网络错误按带随机抖动的指数退避重试，服务器给出 Retry-After 时按其等待并暂停整个平台的配额
+ * - 缩略图提取等准备工作在单独的准备线程按顺序执行，与上一个文件的上传并行
+ * - 上传可以并发完成，但发送消息（{@link FileUploader#deliver}）按文件顺序执行，聊天中的消息顺序与文件顺序一致
+ */
+public final class UploadScheduler {
+    private static final String TAG = "UploadScheduler";
+
+    // 每个平台排队等待上传的文件数上限
+    private static final int MAX_PENDING_FILES = 32;
+    // 单个文件最多尝试次数（含首次）
+    private static final int MAX_ATTEMPTS = 4;
+    // 退避基准和上限（毫秒）
+    private static final long BACKOFF_BASE_MS = 1000;
+    private static final long BACKOFF_MAX_MS = 30000;
+
+    /**
+     * 平台限制
+     * 令牌桶速率取各平台公开的频率限制并留有余量：
+     * - Telegram：同一会话约 1 条/秒（群组 20 条/分钟），短时间允许少量突发
+     * - 钉钉：企业内部应用接口 20 次/秒，机器人消息 20 条/分钟；按每个文件 3 次调用计算
+     * - 飞书：上传和发送消息接口 5 次/秒
+     */
+    private enum PlatformLimits {
+        TELEGRAM(2, 1.0, 3),
+        DINGTALK(2, 5.0, 5),
+        FEISHU(2, 5.0, 5);
+
+        final int maxConcurrent;
+        final double requestsPerSecond;
+        final int burst;
+
+        PlatformLimits(int maxConcurrent, double requestsPerSecond, int burst) {
+            this.maxConcurrent = maxConcurrent;
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+        }
+
+        static PlatformLimits of(RemotePlatform platform) {
+            return valueOf(platform.name());
+        }
+    }
+
+    /**
+     * 单个文件的上传步骤（由各平台的上传服务实现）
+     * @param <P> 准备结果（缩略图、时长等），不需要准备时为 Void
+     * @param <R> 上传结果（媒体 ID 等），传给 deliver
+     */
+    public interface FileUploader<P, R> {
+        /**
+         * 上传前的准备（在准备线程按文件顺序执行，与其他文件的上传并行）
+         */
+        P prepare(File file, int index) throws Exception;
+
+        /**
+         * 上传文件（在上传线程执行，同一平台最多并发 maxConcurrent 个）
+         * 每次 API 调用前调用 limiter.acquire()；抛出的异常为 429 / 5xx / 网络错误时由调度器重试
+         */
+        R upload(File file, P prepared, int index, TokenBucket limiter) throws Exception;
+
+        /**
+         * 发送消息（按文件顺序执行；上传失败的文件跳过）
+         * Telegram 等上传即发送的平台可以不做任何事
+         */
+        void deliver(File file, R uploaded, int index, TokenBucket limiter) throws Exception;
+
+        /**
+         * 清理准备产物（临时缩略图等），无论成功与否都会调用
+         */
+        void cleanup(P prepared);
+    }
+
+    /**
+     * 批量上传回调
+     */
+    public interface BatchListener {
+        void onProgress(String message);
+
+        /**
+         * 全部文件处理完毕（在最后完成的上传线程调用）
+         * @param uploaded 成功的文件名（按文件顺序）
+         * @param failed 失败的文件及原因（"文件名 (原因)"，按文件顺序）
+         * @param limiter 平台配额，发送汇总消息前申请
+         */
+        void onComplete(List<String> uploaded, List<String> failed, TokenBucket limiter);
+    }
+
+    private static UploadScheduler instance;
+
+    private final ThreadPoolExecutor uploadExecutor;
+    private final ExecutorService prepareExecutor;
+    private final Map<RemotePlatform, Lane> lanes = new EnumMap<>(RemotePlatform.class);
+
+    private UploadScheduler() {
+        int threads = 0;
+        for (RemotePlatform platform : RemotePlatform.values()) {
+            PlatformLimits limits = PlatformLimits.of(platform);
+            lanes.put(platform, new Lane(platform, limits));
+            threads += limits.maxConcurrent;
+        }
+        // 通道保证同时提交的任务数不超过各平台并发数之和，线程池不会排队
+        AtomicInteger threadIndex = new AtomicInteger();
+        uploadExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(threads),
+                r -> new Thread(r, "EVCam-Upload-" + threadIndex.incrementAndGet()));
+        uploadExecutor.allowCoreThreadTimeOut(true);
+        prepareExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "EVCam-UploadPrepare"));
+    }
+
+    public static synchronized UploadScheduler getInstance() {
+        if (instance == null) {
+            instance = new UploadScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * 提交一批文件上传
+     * 文件按顺序准备、并发上传、按顺序发送，全部结束后调用 listener.onComplete
+     * @return false 表示该平台排队的文件过多，本批未提交
+     */
+    public <P, R> boolean submit(RemotePlatform platform, List<File> files, FileUploader<P, R> uploader,
+                                 BatchListener listener) {
+        Lane lane = lanes.get(platform);
+        Batch<P, R> batch = new Batch<>(lane, files, uploader, listener);
+        if (!lane.reserve(files.size())) {
+            AppLog.w(TAG, platform.getDisplayName() + " 上传排队已满，拒绝 " + files.size() + " 个文件");
+            return false;
+        }
+        if (files.isEmpty()) {
+            batch.finish();
+            return true;
+        }
+        // 准备任务按顺序提交：准备线程处理第 i+1 个文件时，第 i 个文件已经在上传
+        for (int i = 0; i < files.size(); i++) {
+            final int index = i;
+            batch.prepared.add(prepareExecutor.submit(() -> uploader.prepare(files.get(index), index)));
+        }
+        for (int i = 0; i < files.size(); i++) {
+            final int index = i;
+            lane.execute(() -> batch.runFile(index));
+        }
+        return true;
+    }
+
+    // ==================== 令牌桶 ====================
+
+    /**
+     * 请求令牌桶（按请求数限速）
+     * 令牌按固定速率补充，桶容量为允许的突发请求数；令牌不足时预留并睡眠到令牌补足
+     */
+    public static final class TokenBucket {
+        private final double ratePerSec;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        TokenBucket(double ratePerSec, int burst) {
+            this.ratePerSec = ratePerSec;
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * 申请一次请求配额，不足时阻塞
+         * @return 等待的毫秒数
+         */
+        public long acquire() throws InterruptedException {
+            long waitMs;
+            synchronized (this) {
+                refill();
+                tokens -= 1;
+                if (tokens >= 0) {
+                    return 0;
+                }
+                waitMs = (long) Math.ceil(-tokens * 1000 / ratePerSec);
+            }
+            Thread.sleep(waitMs);
+            return waitMs;
+        }
+
+        /**
+         * 服务器要求等待（429 Retry-After）：清空配额，之后的请求至少等待 delayMs
+         */
+        synchronized void pause(long delayMs) {
+            refill();
+            tokens = Math.min(tokens, -delayMs * ratePerSec / 1000);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerSec / 1e9);
+            lastRefillNanos = now;
+        }
+    }
+
+    // ==================== 通道 ====================
+
+    /**
+     * 平台通道：限制并发上传数，超出的文件任务排队
+     */
+    private final class Lane {
+        final RemotePlatform platform;
+        final int maxConcurrent;
+        final TokenBucket limiter;
+        // 以下字段由 this 保护
+        private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+        private int active;
+        private int reserved;
+
+        Lane(RemotePlatform platform, PlatformLimits limits) {
+            this.platform = platform;
+            this.maxConcurrent = limits.maxConcurrent;
+            this.limiter = new TokenBucket(limits.requestsPerSecond, limits.burst);
+        }
+
+        synchronized boolean reserve(int count) {
+            if (reserved + count > MAX_PENDING_FILES && reserved > 0) {
+                return false;
+            }
+            reserved += count;
+            return true;
+        }
+
+        void execute(Runnable task) {
+            synchronized (this) {
+                if (active >= maxConcurrent) {
+                    waiting.add(task);
+                    return;
+                }
+                active++;
+            }
+            uploadExecutor.execute(() -> run(task));
+        }
+
+        private void run(Runnable task) {
+            Runnable next = task;
+            while (next != null) {
+                try {
+                    next.run();
+                } catch (Throwable t) {
+                    AppLog.e(TAG, platform.getDisplayName() + " 上传任务异常", t);
+                }
+                synchronized (this) {
+                    reserved--;
+                    next = waiting.poll();
+                    if (next == null) {
+                        active--;
+                    }
+                }
+            }
+        }
+    }
+
+    // ==================== 批次 ====================
+
+    private final class Batch<P, R> {
+        final Lane lane;
+        final List<File> files;
+        final FileUploader<P, R> uploader;
+        final BatchListener listener;
+        final List<Future<P>> prepared;
+        final AtomicInteger remaining;
+
+        // 以下字段由 this 保护
+        private final Object[] results;
+        private final String[] failures;
+        private final boolean[] done;
+        private int nextDeliver;
+        private boolean delivering;
+
+        Batch(Lane lane, List<File> files, FileUploader<P, R> uploader, BatchListener listener) {
+            this.lane = lane;
+            this.files = files;
+            this.uploader = uploader;
+            this.listener = listener;
+            this.prepared = new ArrayList<>(files.size());
+            this.remaining = new AtomicInteger(files.size());
+            this.results = new Object[files.size()];
+            this.failures = new String[files.size()];
+            this.done = new boolean[files.size()];
+        }
+
+        void runFile(int index) {
+            File file = files.get(index);
+            int total = files.size();
+            P prep = null;
+            R result = null;
+            String failure = null;
+            try {
+                prep = prepared.get(index).get();
+                listener.onProgress("正在上传 (" + (index + 1) + "/" + total + "): " + file.getName());
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        result = uploader.upload(file, prep, index, lane.limiter);
+                        break;
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                            throw e;
+                        }
+                        long delayMs = backoffDelay(e, attempt);
+                        AppLog.w(TAG, lane.platform.getDisplayName() + " 上传失败，" + delayMs + "ms 后重试 ("
+                                + attempt + "/" + (MAX_ATTEMPTS - 1) + "): " + file.getName() + " - " + e.getMessage());
+                        listener.onProgress("重试第 " + attempt + " 次: " + file.getName());
+                        Thread.sleep(delayMs);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = "上传被中断";
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                AppLog.e(TAG, "上传准备失败: " + file.getName(), cause);
+                failure = String.valueOf(cause.getMessage());
+            } catch (Exception e) {
+                AppLog.e(TAG, lane.platform.getDisplayName() + " 上传失败: " + file.getName(), e);
+                failure = e.getMessage() != null ? e.getMessage() : "未知错误";
+            }
+            if (failure != null) {
+                listener.onProgress("上传失败: " + file.getName() + " - " + failure);
+            }
+            onUploaded(index, result, failure, prep);
+        }
+
+        /**
+         * 记录第 index 个文件的上传结果，并按顺序发送已就绪的文件
+         * 同一时刻只有一个线程在发送，其他线程只登记结果后返回
+         */
+        private void onUploaded(int index, R result, String failure, P prep) {
+            synchronized (this) {
+                results[index] = result;
+                failures[index] = failure;
+                done[index] = true;
+                if (delivering) {
+                    return;
+                }
+                delivering = true;
+            }
+            while (true) {
+                int current;
+                synchronized (this) {
+                    if (nextDeliver >= files.size() || !done[nextDeliver]) {
+                        delivering = false;
+                        return;
+                    }
+                    current = nextDeliver++;
+                }
+                deliver(current);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliver(int index) {
+            File file = files.get(index);
+            R result;
+            synchronized (this) {
+                result = (R) results[index];
+            }
+            if (failures[index] == null) {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        uploader.deliver(file, result, index, lane.limiter);
+                        AppLog.d(TAG, lane.platform.getDisplayName() + " 上传成功: " + file.getName());
+                        break;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failures[index] = "发送被中断";
+                        break;
+                    } catch (Exception e) {
+                        if (attempt < MAX_ATTEMPTS && isRetryable(e)) {
+                            try {
+                                Thread.sleep(backoffDelay(e, attempt));
+                                continue;
+                            } catch (InterruptedException ie) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        AppLog.e(TAG, lane.platform.getDisplayName() + " 发送消息失败: " + file.getName(), e);
+                        failures[index] = e.getMessage() != null ? e.getMessage() : "未知错误";
+                        break;
+                    }
+                }
+            }
+            cleanupQuietly(index);
+            if (remaining.decrementAndGet() == 0) {
+                finish();
+            }
+        }
+
+        private void cleanupQuietly(int index) {
+            try {
+                uploader.cleanup(prepared.get(index).get());
+            } catch (Exception e) {
+                // 准备失败时没有需要清理的产物
+            }
+        }
+
+        void finish() {
+            List<String> uploaded = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                if (failures[i] == null) {
+                    uploaded.add(files.get(i).getName());
+                } else {
+                    failed.add(files.get(i).getName() + " (" + failures[i] + ")");
+                }
+            }
+            listener.onComplete(Collections.unmodifiableList(uploaded), Collections.unmodifiableList(failed),
+                    lane.limiter);
+        }
+
+        /**
+         * 退避时间：服务器给出 Retry-After 时暂停平台配额，否则为带随机抖动的指数退避
+         */
+        private long backoffDelay(Exception e, int attempt) {
+            long retryAfterMs = retryAfterMs(e);
+            if (retryAfterMs > 0) {
+                // 等待由令牌桶完成：重试前的 acquire() 会睡眠到 Retry-After 之后
+                lane.limiter.pause(retryAfterMs);
+                return 0;
+            }
+            long ceiling = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << (attempt - 1));
+            return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        }
+    }
+
+    // ==================== 错误分类 ====================
+
+    /**
+     * 是否值得重试：API 客户端抛出的 {@link RemoteApiException} 由其判断（429、5xx、频率限制错误码），
+     * 其他 IOException 为没有 HTTP 响应的网络错误（超时、连接重置），同样重试
+     */
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof RemoteApiException) {
+            return ((RemoteApiException) e).isRetryable();
+        }
+        return e instanceof IOException;
+    }
+
+    private static long retryAfterMs(Throwable e) {
+        if (!(e instanceof RemoteApiException)) {
+            return 0;
+        }
+        return Math.min(BACKOFF_MAX_MS * 2, ((RemoteApiException) e).getRetryAfterMs());
+    }
+}
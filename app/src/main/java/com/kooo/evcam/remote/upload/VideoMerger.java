@@ -0,0 +1,152 @@
+package com.kooo.evcam.remote.upload;
+
+import android.content.Context;
+
+import com.kooo.evcam.AppLog;
+import com.kooo.evcam.media.Mp4Concatenator;
+import com.kooo.evcam.storage.MediaCatalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 同一摄像头的多个录像片段（Watchdog 重建录制前后的文件）无损拼接成一个视频再上传（{@link Mp4Concatenator}），
+ * 接收方只看到一段连续的录像
+ *
+ * 拼接结果写在缓存目录，上传结束后由调用方 {@link #delete} 删除；原文件不变（仍按原文件转存到最终目录）。
+ * 编码参数不同（如重建后分辨率变化）或拼接失败时，该摄像头的片段按原文件分别上传
+ */
+public final class VideoMerger {
+    private static final String TAG = "VideoMerger";
+
+    // 遗留拼接目录的保留时间
+    private static final long STALE_DIR_AGE_MS = 24L * 60 * 60 * 1000;
+    // 缓存目录至少保留的空闲空间（除拼接结果外）
+    private static final long MIN_FREE_BYTES = 50L * 1024 * 1024;
+
+    /**
+     * 拼接结果
+     */
+    public static final class Result {
+        public final List<File> files;          // 要上传的文件（拼接结果和未拼接的原文件）
+        public final List<File> mergedFiles;   // 拼接生成的临时文件
+
+        Result(List<File> files, List<File> mergedFiles) {
+            this.files = Collections.unmodifiableList(files);
+            this.mergedFiles = Collections.unmodifiableList(mergedFiles);
+        }
+    }
+
+    private VideoMerger() {
+    }
+
+    /**
+     * 按摄像头拼接（阻塞，不要在主线程调用）
+     * @param videoFiles 录像文件（文件名为 时间戳_摄像头.mp4）
+     * @return 拼接结果；摄像头的顺序与原列表中首次出现的顺序一致
+     */
+    public static Result mergeByCamera(Context context, List<File> videoFiles) {
+        Map<String, List<File>> groups = new LinkedHashMap<>();
+        for (File file : videoFiles) {
+            String camera = MediaCatalog.parseCamera(file.getName());
+            List<File> group = groups.get(camera);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(camera, group);
+            }
+            group.add(file);
+        }
+
+        List<File> files = new ArrayList<>();
+        List<File> mergedFiles = new ArrayList<>();
+        File root = new File(context.getCacheDir(), "upload_merged");
+        purgeStale(root);
+        for (List<File> group : groups.values()) {
+            File merged = group.size() > 1 ? merge(root, group) : null;
+            if (merged != null) {
+                files.add(merged);
+                mergedFiles.add(merged);
+            } else {
+                files.addAll(group);
+            }
+        }
+        return new Result(files, mergedFiles);
+    }
+
+    /**
+     * 拼接一个摄像头的片段（按文件名即时间顺序）
+     * @return 拼接后的文件（与第一个片段同名），失败返回 null
+     */
+    private static File merge(File root, List<File> group) {
+        List<File> inputs = new ArrayList<>(group);
+        Collections.sort(inputs, (a, b) -> a.getName().compareTo(b.getName()));
+        long totalBytes = 0;
+        for (File input : inputs) {
+            totalBytes += input.length();
+        }
+        File dir = new File(root, Long.toString(System.nanoTime(), 36));
+        if (!dir.mkdirs()) {
+            AppLog.w(TAG, "无法创建拼接目录: " + dir.getAbsolutePath());
+            return null;
+        }
+        if (dir.getUsableSpace() < totalBytes + MIN_FREE_BYTES) {
+            AppLog.w(TAG, "缓存空间不足，无法拼接: " + inputs.get(0).getName());
+            deleteDir(dir);
+            return null;
+        }
+
+        File output = new File(dir, inputs.get(0).getName());
+        try {
+            Mp4Concatenator.Result result = Mp4Concatenator.concat(inputs, output);
+            AppLog.d(TAG, "视频拼接完成: " + output.getName() + " - " + result);
+            return output;
+        } catch (IOException | RuntimeException e) {
+            AppLog.w(TAG, "视频拼接失败，分别上传: " + output.getName() + " - " + e.getMessage());
+            deleteDir(dir);
+            return null;
+        }
+    }
+
+    /**
+     * 删除拼接生成的临时文件（上传结束后调用）
+     */
+    public static void delete(Result result) {
+        if (result == null) {
+            return;
+        }
+        for (File merged : result.mergedFiles) {
+            deleteDir(merged.getParentFile());
+        }
+    }
+
+    private static void purgeStale(File root) {
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File dir : dirs) {
+            if (now - dir.lastModified() > STALE_DIR_AGE_MS) {
+                deleteDir(dir);
+            }
+        }
+    }
+
+    private static void deleteDir(File dir) {
+        if (dir == null) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
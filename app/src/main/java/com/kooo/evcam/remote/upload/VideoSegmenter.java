@@ -0,0 +1,133 @@
+package com.kooo.evcam.remote.upload;
+
+import android.content.Context;
+
+import com.kooo.evcam.AppLog;
+import com.kooo.evcam.dingtalk.VideoThumbnailExtractor;
+import com.kooo.evcam.media.Mp4Splitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 超过平台上传上限的视频按关键帧无损分段（{@link Mp4Splitter}），每段都是可直接播放的 MP4，
+ * 可以作为普通视频消息发送（不需要接收方合并）
+ *
+ * 分段写在缓存目录（每次分段一个子目录），上传结束后由调用方 {@link #delete} 删除；
+ * 进程被杀后遗留的目录在下次分段时清理
+ */
+public final class VideoSegmenter {
+    private static final String TAG = "VideoSegmenter";
+
+    // 遗留分段目录的保留时间
+    private static final long STALE_DIR_AGE_MS = 24L * 60 * 60 * 1000;
+    // 缓存目录至少保留的空闲空间（除分段本身外）
+    private static final long MIN_FREE_BYTES = 50L * 1024 * 1024;
+
+    /**
+     * 一段视频
+     */
+    public static final class Segment {
+        public final File file;
+        public final int durationMs;
+        public final File thumbnailFile;    // 封面，提取失败时为 null
+        public final int number;            // 段序号（从 1 开始）
+        public final int count;             // 总段数
+
+        Segment(File file, int durationMs, File thumbnailFile, int number, int count) {
+            this.file = file;
+            this.durationMs = durationMs;
+            this.thumbnailFile = thumbnailFile;
+            this.number = number;
+            this.count = count;
+        }
+    }
+
+    private VideoSegmenter() {
+    }
+
+    /**
+     * 按关键帧分段（阻塞，在上传准备线程调用）
+     * @param maxBytes 每段大小上限
+     * @return 分段列表；无法分段（文件损坏、单个 GOP 超过上限、缓存空间不足）时返回 null，调用方退回按字节分段发送
+     */
+    public static List<Segment> split(Context context, File videoFile, long maxBytes) {
+        File root = new File(context.getCacheDir(), "upload_parts");
+        purgeStale(root);
+        if (root.exists() && root.getUsableSpace() < videoFile.length() + MIN_FREE_BYTES) {
+            AppLog.w(TAG, "缓存空间不足，无法分段: " + videoFile.getName());
+            return null;
+        }
+        File dir = new File(root, Long.toString(System.nanoTime(), 36));
+        if (!dir.mkdirs()) {
+            AppLog.w(TAG, "无法创建分段目录: " + dir.getAbsolutePath());
+            return null;
+        }
+
+        Mp4Splitter.Result result;
+        try {
+            result = Mp4Splitter.split(videoFile, dir, maxBytes);
+        } catch (IOException | RuntimeException e) {
+            AppLog.w(TAG, "视频分段失败: " + videoFile.getName() + " - " + e.getMessage());
+            deleteDir(dir);
+            return null;
+        }
+        if (result.getLargestPartBytes() > maxBytes) {
+            AppLog.w(TAG, "关键帧间隔过大，分段仍超过上限: " + videoFile.getName() + " - " + result);
+            deleteDir(dir);
+            return null;
+        }
+        AppLog.d(TAG, "视频分段完成: " + videoFile.getName() + " - " + result);
+
+        int count = result.parts.size();
+        List<Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            File part = result.parts.get(i);
+            File thumbnailFile = new File(dir, part.getName().replace(".mp4", "_thumb.jpg"));
+            if (!VideoThumbnailExtractor.extractThumbnail(part, thumbnailFile)) {
+                thumbnailFile = null;
+            }
+            segments.add(new Segment(part, (int) (result.partDurationsUs[i] / 1000), thumbnailFile, i + 1, count));
+        }
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * 删除分段文件（上传结束后调用）
+     */
+    public static void delete(List<Segment> segments) {
+        if (segments == null || segments.isEmpty()) {
+            return;
+        }
+        deleteDir(segments.get(0).file.getParentFile());
+    }
+
+    private static void purgeStale(File root) {
+        File[] dirs = root.listFiles();
+        if (dirs == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File dir : dirs) {
+            if (now - dir.lastModified() > STALE_DIR_AGE_MS) {
+                deleteDir(dir);
+            }
+        }
+    }
+
+    private static void deleteDir(File dir) {
+        if (dir == null) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,101 @@
+package com.kooo.evcam.storage;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C（Castagnoli 多项式）校验
+ * java.util.zip.CRC32C 从 API 34 才提供，车机系统多为 API 28-33，这里用查表法（slicing-by-8）实现，
+ * 结果与 java.util.zip.CRC32C 相同，传输日志、媒体目录中已记录的校验值仍然有效
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class Crc32c implements Checksum {
+
+    // Castagnoli 多项式（反转表示）
+    private static final int POLYNOMIAL = 0x82F63B78;
+
+    // TABLE[k][b]：字节 b 后面再跟 k 个零字节的 CRC，用于一次处理 8 个字节
+    private static final int[][] TABLE = new int[8][256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int crc = b;
+            for (int i = 0; i < 8; i++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[0][b] = crc;
+        }
+        for (int b = 0; b < 256; b++) {
+            for (int k = 1; k < 8; k++) {
+                TABLE[k][b] = (TABLE[k - 1][b] >>> 8) ^ TABLE[0][TABLE[k - 1][b] & 0xFF];
+            }
+        }
+    }
+
+    // 直接内存缓冲区没有底层数组时，分批复制到这里计算
+    private static final int SCRATCH_SIZE = 8 * 1024;
+
+    private int crc = 0xFFFFFFFF;
+    private byte[] scratch;
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[0][(crc ^ b) & 0xFF];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+        int c = crc;
+        int end = off + len;
+        int i = off;
+        for (; i + 8 <= end; i += 8) {
+            int lo = c ^ ((b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24);
+            c = TABLE[7][lo & 0xFF] ^ TABLE[6][(lo >>> 8) & 0xFF]
+                    ^ TABLE[5][(lo >>> 16) & 0xFF] ^ TABLE[4][lo >>> 24]
+                    ^ TABLE[3][b[i + 4] & 0xFF] ^ TABLE[2][b[i + 5] & 0xFF]
+                    ^ TABLE[1][b[i + 6] & 0xFF] ^ TABLE[0][b[i + 7] & 0xFF];
+        }
+        for (; i < end; i++) {
+            c = (c >>> 8) ^ TABLE[0][(c ^ b[i]) & 0xFF];
+        }
+        crc = c;
+    }
+
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    /**
+     * 累加缓冲区 position 到 limit 之间的数据，完成后 position 等于 limit
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            int length = buffer.remaining();
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+            return;
+        }
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+        }
+        while (buffer.hasRemaining()) {
+            int length = Math.min(scratch.length, buffer.remaining());
+            buffer.get(scratch, 0, length);
+            update(scratch, 0, length);
+        }
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+}
@@ -0,0 +1,207 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 后台 I/O 调度器
+ * 录制写入（MediaMuxer / MediaRecorder）与删除、中转复制、缩略图 / 元数据读取、上传共用同一个存储设备，
+ * 后台 I/O 在执行每个单元（删除一个文件、复制一块、读取一个文件、上传一块）之前向调度器申请预算：
+ * - 录制写入延迟正常时直接放行
+ * - 写入延迟超过限流阈值时，后台 I/O 按类别共享一个较低的速率预算
+ * - 写入延迟超过暂停阈值时，后台 I/O 暂停，直到延迟恢复（最长暂停一段时间，避免饿死）
+ *
+ * 写入延迟由 {@link WriteLatencyProbe} 在录制期间测量录制目录的同步写入耗时，通过 {@link #reportWriteLatency(long)} 上报，
+ * 超过一定时间没有上报（未在录制）视为正常
+ * 各类别的等待队列深度、限流和暂停次数可通过 {@link #getStats()} 获取
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public class IoScheduler {
+    private static final String TAG = "IoScheduler";
+
+    /**
+     * 后台 I/O 类别
+     */
+    public enum IoClass {
+        DELETE("删除", 64),     // 删除文件（FAT 上删除大文件需要遍历簇链，按文件大小的 1/64 计入预算）
+        COPY("复制", 1),        // 中转复制
+        READ("读取", 1),        // 缩略图、元数据读取
+        UPLOAD("上传", 1);      // 上传读取
+
+        final String label;
+        // 预算折算：字节数除以此值
+        final int costDivisor;
+
+        IoClass(String label, int costDivisor) {
+            this.label = label;
+            this.costDivisor = costDivisor;
+        }
+    }
+
+    // 写入延迟超过此值时限流（纳秒）
+    private static final long THROTTLE_LATENCY_NS = 50_000_000L;
+    // 写入延迟超过此值时暂停后台 I/O（纳秒）
+    private static final long PAUSE_LATENCY_NS = 200_000_000L;
+    // 限流时后台 I/O 的总速率预算（字节/秒）
+    private static final long THROTTLED_BYTES_PER_SEC = 4L * 1024 * 1024;
+    // 单次最长暂停时间，之后即使延迟仍高也放行一个单元
+    private static final long MAX_PAUSE_MS = 5000;
+    // 超过此时间没有写入延迟上报，视为未在录制
+    private static final long LATENCY_STALE_MS = 2000;
+    // 写入延迟的指数移动平均系数
+    private static final double LATENCY_EWMA_ALPHA = 0.1;
+
+    private static IoScheduler instance;
+
+    private final Object lock = new Object();
+    private final RelayCopier.RateLimiter throttledBudget = new RelayCopier.RateLimiter();
+    private final AtomicInteger[] queueDepths = new AtomicInteger[IoClass.values().length];
+    private final AtomicLong[] throttleEvents = new AtomicLong[IoClass.values().length];
+    private final AtomicLong[] pauseEvents = new AtomicLong[IoClass.values().length];
+
+    // 以下字段由 lock 保护
+    private double latencyEwmaNs;
+    private long lastReportMs;
+
+    private IoScheduler() {
+        for (int i = 0; i < queueDepths.length; i++) {
+            queueDepths[i] = new AtomicInteger();
+            throttleEvents[i] = new AtomicLong();
+            pauseEvents[i] = new AtomicLong();
+        }
+        throttledBudget.setRate(THROTTLED_BYTES_PER_SEC);
+    }
+
+    public static synchronized IoScheduler getInstance() {
+        if (instance == null) {
+            instance = new IoScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * 上报一次录制存储的同步写入耗时
+     */
+    public void reportWriteLatency(long latencyNs) {
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            boolean wasPaused = isPausedLocked(now);
+            if (now - lastReportMs > LATENCY_STALE_MS) {
+                latencyEwmaNs = latencyNs;
+            } else {
+                latencyEwmaNs += LATENCY_EWMA_ALPHA * (latencyNs - latencyEwmaNs);
+            }
+            lastReportMs = now;
+            if (wasPaused && !isPausedLocked(now)) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 执行一个后台 I/O 单元之前调用，按当前录制写入延迟放行、限流或暂停
+     * @param ioClass I/O 类别
+     * @param bytes 本单元涉及的字节数
+     * @return 等待的毫秒数
+     */
+    public long acquire(IoClass ioClass, long bytes) {
+        long latencyNs = getWriteLatencyNs();
+        if (latencyNs < THROTTLE_LATENCY_NS) {
+            return 0;
+        }
+
+        int index = ioClass.ordinal();
+        queueDepths[index].incrementAndGet();
+        long startMs = System.currentTimeMillis();
+        try {
+            if (latencyNs >= PAUSE_LATENCY_NS) {
+                pauseEvents[index].incrementAndGet();
+                waitForResume(startMs);
+            }
+            if (getWriteLatencyNs() >= THROTTLE_LATENCY_NS) {
+                throttleEvents[index].incrementAndGet();
+                throttledBudget.acquire(Math.max(1, bytes / ioClass.costDivisor));
+            }
+        } catch (IOException e) {
+            // 等待被中断：保留中断状态，交给调用方处理
+        } finally {
+            queueDepths[index].decrementAndGet();
+        }
+        return System.currentTimeMillis() - startMs;
+    }
+
+    /**
+     * 当前录制写入延迟（指数移动平均），未在录制时为 0
+     */
+    public long getWriteLatencyNs() {
+        synchronized (lock) {
+            if (System.currentTimeMillis() - lastReportMs > LATENCY_STALE_MS) {
+                return 0;
+            }
+            return (long) latencyEwmaNs;
+        }
+    }
+
+    public int getQueueDepth(IoClass ioClass) {
+        return queueDepths[ioClass.ordinal()].get();
+    }
+
+    public long getThrottleEvents(IoClass ioClass) {
+        return throttleEvents[ioClass.ordinal()].get();
+    }
+
+    public long getPauseEvents(IoClass ioClass) {
+        return pauseEvents[ioClass.ordinal()].get();
+    }
+
+    /**
+     * 调度统计信息（用于调试和状态上报）
+     */
+    public String getStats() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "写入延迟 %.1fms", getWriteLatencyNs() / 1e6));
+        for (IoClass ioClass : IoClass.values()) {
+            sb.append("，").append(ioClass.label)
+                    .append(" 排队 ").append(getQueueDepth(ioClass))
+                    .append(" 限流 ").append(getThrottleEvents(ioClass))
+                    .append(" 暂停 ").append(getPauseEvents(ioClass));
+        }
+        return sb.toString();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private boolean isPausedLocked(long now) {
+        return now - lastReportMs <= LATENCY_STALE_MS && latencyEwmaNs >= PAUSE_LATENCY_NS;
+    }
+
+    private void waitForResume(long startMs) throws IOException {
+        synchronized (lock) {
+            boolean logged = false;
+            while (true) {
+                long now = System.currentTimeMillis();
+                long remaining = startMs + MAX_PAUSE_MS - now;
+                if (!isPausedLocked(now) || remaining <= 0) {
+                    return;
+                }
+                if (!logged) {
+                    AppLog.w(TAG, String.format(Locale.US,
+                            "Recording write latency %.1fms, pausing background I/O", latencyEwmaNs / 1e6));
+                    logged = true;
+                }
+                try {
+                    // 延迟上报停止（录制结束）时不会收到通知，定期重新检查
+                    lock.wait(Math.min(remaining, LATENCY_STALE_MS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Background I/O interrupted");
+                }
+            }
+        }
+    }
+}
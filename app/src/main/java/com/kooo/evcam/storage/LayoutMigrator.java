@@ -0,0 +1,119 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分区布局迁移
+ * 将旧版本平铺在根目录下的媒体文件逐批移动到 {@link MediaLayout} 的分区目录，同步更新 {@link MediaCatalog}
+ *
+ * 根目录只在首次迁移时列出一次，之后按批处理，调用方在每批之间让出时间，避免长时间占用存储 I/O 影响录制
+ * 同一存储卷内移动只是改名，不复制数据；最近修改过的文件（可能正在写入）放回队尾，稍后再迁移
+ * 改名失败或目标已存在的文件重试有限次数，放弃后根目录不标记完成，下次调用时重新列出
+ *
+ * 线程模型：本类不自带线程，由调用方（StorageCleanupManager）在后台线程调用
+ */
+public class LayoutMigrator {
+    private static final String TAG = "LayoutMigrator";
+    // 同一文件改名失败或目标已存在时的最多尝试次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final MediaCatalog catalog;
+    // 待迁移的文件（按根目录 + 类型）
+    private final Map<String, ArrayDeque<File>> pending = new HashMap<>();
+    // 已完成迁移的根目录 + 类型
+    private final Set<String> completed = new HashSet<>();
+    // 迁移失败的次数（按文件路径）
+    private final Map<String, Integer> failedAttempts = new HashMap<>();
+    // 有文件放弃迁移的根目录 + 类型
+    private final Set<String> leftBehind = new HashSet<>();
+
+    public LayoutMigrator(MediaCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * 迁移一批文件
+     * @param root 布局根目录
+     * @param type 媒体类型
+     * @param maxFiles 本批最多移动的文件数
+     * @param minAgeMs 最近修改时间距今小于此值的文件跳过（可能正在录制）
+     * @return 剩余待迁移的文件数
+     */
+    public synchronized int migrateBatch(File root, int type, int maxFiles, long minAgeMs) {
+        if (root == null || !root.isDirectory()) {
+            return 0;
+        }
+        String key = root.getAbsolutePath() + "#" + type;
+        if (completed.contains(key)) {
+            return 0;
+        }
+
+        ArrayDeque<File> queue = pending.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<>(MediaLayout.listFlatFiles(root,
+                    (dir, name) -> MediaCatalog.guessType(name) == type));
+            pending.put(key, queue);
+            if (!queue.isEmpty()) {
+                AppLog.d(TAG, "Found " + queue.size() + " flat file(s) to migrate in " + root.getAbsolutePath());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        int moved = 0;
+        int skipped = 0;
+        // 只处理本批开始时已在队列中的文件，放回队尾的文件留到下一批
+        int budget = queue.size();
+        while (moved < maxFiles && budget-- > 0) {
+            File source = queue.pollFirst();
+            if (!source.exists()) {
+                continue;
+            }
+            if (now - source.lastModified() < minAgeMs) {
+                // 可能正在写入，稍后再迁移
+                queue.addLast(source);
+                skipped++;
+                continue;
+            }
+            File target = MediaLayout.resolveAndCreate(root, source.getName());
+            if (target.exists()) {
+                AppLog.w(TAG, "Migration target already exists, skipped: " + target.getAbsolutePath());
+            } else if (source.renameTo(target)) {
+                catalog.onMediaFileMoved(source, target);
+                failedAttempts.remove(source.getAbsolutePath());
+                moved++;
+                continue;
+            } else {
+                AppLog.w(TAG, "Failed to migrate: " + source.getName());
+            }
+            skipped++;
+            if (failedAttempts.merge(source.getAbsolutePath(), 1, Integer::sum) < MAX_ATTEMPTS) {
+                queue.addLast(source);
+            } else {
+                failedAttempts.remove(source.getAbsolutePath());
+                leftBehind.add(key);
+                AppLog.w(TAG, "Giving up migrating " + source.getName() + " after " + MAX_ATTEMPTS + " attempts");
+            }
+        }
+
+        if (moved > 0 || skipped > 0) {
+            AppLog.d(TAG, "Migrated " + moved + " file(s), skipped " + skipped + ", remaining " + queue.size());
+        }
+        if (queue.isEmpty()) {
+            pending.remove(key);
+            if (leftBehind.remove(key)) {
+                // 有文件仍留在平铺目录：不标记完成，下次调用时重新列出根目录
+                AppLog.w(TAG, "Flat files left in " + root.getAbsolutePath() + ", will rescan on next migration");
+            } else {
+                completed.add(key);
+            }
+        }
+        return queue.size();
+    }
+}
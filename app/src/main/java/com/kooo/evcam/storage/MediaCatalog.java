@@ -0,0 +1,1192 @@
+package com.kooo.evcam.storage;
+
+import android.content.Context;
+
+import com.kooo.evcam.AppLog;
+import com.kooo.evcam.media.Mp4Info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 媒体文件目录（持久化索引）
+ * 记录所有录像分段和照片的元数据，避免在包含数万个文件的目录上反复 listFiles() + lastModified()
+ *
+ * 存储方式：
+ * - catalog.snapshot：压缩后的全量快照
+ * - catalog.journal：追加写入的变更日志（PUT/REMOVE），启动时在快照基础上重放
+ * - 日志条数超过阈值后自动压缩为新快照
+ *
+ * 内存索引：
+ * - 按路径的 HashMap（O(1) 查找）
+ * - 按开始时间排序的 TreeSet（时间范围查询 O(log n + k)）
+ * - 按摄像头分组的 TreeSet
+ * - 按媒体类型 / 存储卷维护的容量累计（O(1) 查询总大小）
+ * - 按（类型, 存储卷, 保留层级, 摄像头）分组的淘汰索引，配合 {@link RetentionPolicy} 选出淘汰顺序
+ *
+ * 维护时机：录制分段关闭、照片保存、文件中转移动、清理删除时增量更新；启动时执行一次目录对账
+ *
+ * 加载：{@link #getInstance} 在后台线程读取快照和日志（十万条约 1 秒），不阻塞主线程；
+ * 加载完成前调用读写接口会等待加载完成，主线程应先用 {@link #isReady()} / {@link #whenReady} 判断
+ *
+ * 经过中转复制的文件会记录 CRC32C 校验值，之后可以用 {@link RelayCopier#checksum(File)} 检测U盘静默损坏
+ */
+public class MediaCatalog {
+    private static final String TAG = "MediaCatalog";
+
+    // 媒体类型
+    public static final int TYPE_VIDEO = 0;
+    public static final int TYPE_PHOTO = 1;
+    private static final int TYPE_COUNT = 2;
+
+    // 保留层级（取值与旧版本的 locked 布尔字段兼容：0=未锁定，1=锁定）
+    public static final int TIER_LOOP = 0;    // 循环录像
+    public static final int TIER_LOCKED = 1;  // 锁定（不参与自动清理）
+    public static final int TIER_EVENT = 2;   // 事件录像（远程命令等触发，保留指定天数）
+    private static final int TIER_COUNT = 3;
+
+    // 文件名与格式
+    private static final String CATALOG_DIR_NAME = "media_catalog";
+    private static final String SNAPSHOT_FILE = "catalog.snapshot";
+    private static final String JOURNAL_FILE = "catalog.journal";
+    private static final int SNAPSHOT_MAGIC = 0x4556_4D43;  // "EVMC"
+    private static final int FORMAT_VERSION = 2;          // 版本2：条目增加校验值
+    private static final int FORMAT_VERSION_NO_CHECKSUM = 1;
+
+    // 日志操作类型
+    private static final byte OP_PUT = 1;                // 旧版本条目（无校验值），只读
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_PUT_V2 = 3;
+
+    // 未知校验值
+    public static final long CHECKSUM_NONE = -1;
+
+    // 日志压缩阈值：至少 1000 条，且超过当前条目数
+    private static final int MIN_COMPACT_JOURNAL_OPS = 1000;
+
+    // 照片扩展名（拍照保存 .jpg；回放界面同时列出 .jpeg / .png）
+    public static final String[] PHOTO_EXTENSIONS = {".jpg", ".jpeg", ".png"};
+
+    /**
+     * 目录条目（不可变，更新时整体替换）
+     */
+    public static final class Entry {
+        public final String path;        // 文件绝对路径
+        public final int type;           // 媒体类型（TYPE_VIDEO / TYPE_PHOTO）
+        public final String camera;      // 摄像头位置（front/back/left/right）
+        public final long startTimeMs;   // 开始时间（由文件名解析，失败时使用修改时间）
+        public final long durationMs;    // 时长（照片为 0）
+        public final long size;          // 文件大小（字节）
+        public final String codec;       // 编码格式（h264 / h265 / jpeg / png）
+        public final int tier;           // 保留层级（TIER_LOOP / TIER_LOCKED / TIER_EVENT）
+        public final String volume;      // 所在存储卷（根目录路径）
+        public final long checksum;      // CRC32C 校验值（CHECKSUM_NONE 表示未知）
+
+        public Entry(String path, int type, String camera, long startTimeMs, long durationMs,
+                     long size, String codec, int tier, String volume) {
+            this(path, type, camera, startTimeMs, durationMs, size, codec, tier, volume, CHECKSUM_NONE);
+        }
+
+        public Entry(String path, int type, String camera, long startTimeMs, long durationMs,
+                     long size, String codec, int tier, String volume, long checksum) {
+            this.path = path;
+            this.type = type;
+            this.camera = camera != null ? camera : "";
+            this.startTimeMs = startTimeMs;
+            this.durationMs = durationMs;
+            this.size = size;
+            this.codec = codec != null ? codec : "";
+            this.tier = tier;
+            this.volume = volume != null ? volume : "";
+            this.checksum = checksum;
+        }
+
+        public File getFile() {
+            return new File(path);
+        }
+
+        public long getEndTimeMs() {
+            return startTimeMs + durationMs;
+        }
+
+        public boolean isLocked() {
+            return tier == TIER_LOCKED;
+        }
+
+        public boolean hasChecksum() {
+            return checksum != CHECKSUM_NONE;
+        }
+
+        Entry withPath(String newPath, String newVolume, long newChecksum) {
+            return new Entry(newPath, type, camera, startTimeMs, durationMs, size, codec, tier, newVolume, newChecksum);
+        }
+
+        Entry withTier(int newTier) {
+            return new Entry(path, type, camera, startTimeMs, durationMs, size, codec, newTier, volume, checksum);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + path + ", camera=" + camera + ", start=" + startTimeMs +
+                    ", size=" + size + ", tier=" + tier + "}";
+        }
+    }
+
+    /**
+     * 目录变更监听器
+     * 回调在修改目录的线程上、释放目录锁之后执行，实现方不应长时间阻塞（会拖慢录制线程的分段关闭）
+     */
+    public interface ChangeListener {
+        /**
+         * 新增了条目（分段关闭、照片保存、文件移动到另一个存储卷），同一文件在同一存储卷上只通知一次
+         */
+        void onEntryAdded(Entry entry);
+
+        /**
+         * 已有条目被更新（补充录像元数据、修改保留层级、在同一存储卷内移动）
+         */
+        default void onEntryUpdated(Entry entry) {
+        }
+    }
+
+    // 按开始时间排序（相同时间按路径区分）
+    private static final Comparator<Entry> TIME_ORDER = (a, b) -> {
+        int c = Long.compare(a.startTimeMs, b.startTimeMs);
+        return c != 0 ? c : a.path.compareTo(b.path);
+    };
+
+    private static MediaCatalog instance;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Object lock = new Object();
+
+    private final Map<String, Entry> byPath = new HashMap<>();
+    private final List<NavigableSet<Entry>> byTime = new ArrayList<>();  // 按媒体类型分组
+    private final Map<String, NavigableSet<Entry>> byCamera = new HashMap<>();  // key = type + "/" + camera
+    private final long[] totalSizeByType = new long[TYPE_COUNT];
+    private final Map<String, long[]> totalSizeByVolume = new HashMap<>();
+    private final Map<String, long[]> lockedSizeByVolume = new HashMap<>();
+    // 淘汰索引：key = type/volume/tier，value = 摄像头 -> 按时间排序的条目
+    private final Map<String, Map<String, NavigableSet<Entry>>> evictionIndex = new HashMap<>();
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // 持锁时新增 / 更新的条目，释放锁后通知监听器
+    private final List<Change> pendingChanges = new ArrayList<>();
+
+    // 加载完成信号与等待加载的回调
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final List<Runnable> readyCallbacks = new ArrayList<>();
+    // 后台线程（加载目录、读取 MP4 元数据）
+    private final Executor background;
+
+    private DataOutputStream journalOut;
+    private int journalOps = 0;
+    private final Calendar parseCalendar = Calendar.getInstance();
+
+    /**
+     * 获取单例实例（目录文件存放在应用私有目录）
+     * 立即返回，目录在后台线程加载
+     */
+    public static synchronized MediaCatalog getInstance(Context context) {
+        if (instance == null) {
+            Executor background = Executors.newSingleThreadExecutor(r -> new Thread(r, "EVCam-MediaCatalog"));
+            instance = new MediaCatalog(new File(context.getApplicationContext().getFilesDir(), CATALOG_DIR_NAME),
+                    background);
+        }
+        return instance;
+    }
+
+    /**
+     * 创建目录实例并在当前线程从磁盘加载
+     * @param catalogDir 快照和日志文件所在目录
+     */
+    public MediaCatalog(File catalogDir) {
+        this(catalogDir, Runnable::run);
+    }
+
+    /**
+     * 创建目录实例并在指定线程上从磁盘加载
+     * @param catalogDir 快照和日志文件所在目录
+     * @param background 执行加载和读取 MP4 元数据的线程
+     */
+    MediaCatalog(File catalogDir, Executor background) {
+        if (!catalogDir.exists() && !catalogDir.mkdirs()) {
+            AppLog.e(TAG, "Failed to create catalog dir: " + catalogDir.getAbsolutePath());
+        }
+        this.snapshotFile = new File(catalogDir, SNAPSHOT_FILE);
+        this.journalFile = new File(catalogDir, JOURNAL_FILE);
+        this.background = background;
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            byTime.add(new TreeSet<>(TIME_ORDER));
+        }
+        background.execute(() -> {
+            try {
+                synchronized (lock) {
+                    load();
+                }
+            } finally {
+                markLoaded();
+            }
+        });
+    }
+
+    /**
+     * 目录是否已加载完成（完成后读写接口不会再因加载而等待）
+     */
+    public boolean isReady() {
+        return loaded.getCount() == 0;
+    }
+
+    /**
+     * 加载完成后执行回调：已加载时在当前线程立即执行，否则在加载线程上执行（需要更新界面时自行切回主线程）
+     */
+    public void whenReady(Runnable callback) {
+        synchronized (readyCallbacks) {
+            if (!isReady()) {
+                readyCallbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    private void markLoaded() {
+        List<Runnable> callbacks;
+        synchronized (readyCallbacks) {
+            loaded.countDown();
+            callbacks = new ArrayList<>(readyCallbacks);
+            readyCallbacks.clear();
+        }
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                AppLog.e(TAG, "Catalog ready callback failed", e);
+            }
+        }
+    }
+
+    /**
+     * 等待加载完成（不响应中断，保留中断状态）
+     */
+    private void awaitLoaded() {
+        if (isReady()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                loaded.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    // ==================== 写入接口 ====================
+
+    /**
+     * 录制分段关闭 / 照片保存完成后调用，加入或更新目录
+     * 视频先按文件名和修改时间估算时长记录，moov 中的实际时长和编码格式在后台线程补充（不阻塞录制线程和主线程）
+     * @param file 已关闭的媒体文件
+     * @param type 媒体类型
+     */
+    public void onMediaFileClosed(File file, int type) {
+        if (file == null || type < 0 || type >= TYPE_COUNT || !file.exists()) {
+            return;
+        }
+        Entry entry = buildEntry(file, type, file.length(), file.lastModified());
+        put(entry);
+        if (type == TYPE_VIDEO) {
+            background.execute(() -> fillVideoInfo(entry));
+        }
+    }
+
+    /**
+     * 用 moov 中的实际时长和编码格式替换估算值（只读取 moov，解析失败时保留估算值）
+     * 结果进入 {@link Mp4Info} 缓存，随后上传时的时长 / 封面查询不必再解析
+     */
+    private void fillVideoInfo(Entry estimated) {
+        File file = estimated.getFile();
+        Mp4Info info;
+        try {
+            info = Mp4Info.get(file);
+        } catch (IOException e) {
+            AppLog.w(TAG, "Cannot read MP4 metadata of " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+        String codec = null;
+        if ("avc1".equals(info.videoCodec) || "avc3".equals(info.videoCodec)) {
+            codec = "h264";
+        } else if ("hvc1".equals(info.videoCodec) || "hev1".equals(info.videoCodec)) {
+            codec = "h265";
+        }
+        synchronized (lock) {
+            // 期间文件可能已被移动、删除或重写，只更新仍是同一文件的条目（保留期间修改的层级等）
+            Entry current = byPath.get(estimated.path);
+            if (current == null || current.size != info.fileSize) {
+                return;
+            }
+            long duration = info.durationUs > 0 ? info.getDurationMs() : current.durationMs;
+            String newCodec = codec != null ? codec : current.codec;
+            if (duration == current.durationMs && newCodec.equals(current.codec)) {
+                return;
+            }
+            putLocked(new Entry(current.path, current.type, current.camera, current.startTimeMs, duration,
+                    current.size, newCodec, current.tier, current.volume, current.checksum));
+        }
+        dispatchChanges();
+    }
+
+    /**
+     * 文件被移动（如中转写入完成）后调用，保留原有元数据
+     */
+    public void onMediaFileMoved(File source, File target) {
+        onMediaFileMoved(source, target, CHECKSUM_NONE);
+    }
+
+    /**
+     * 文件被复制到新位置并校验后调用，保留原有元数据并记录校验值
+     * @param checksum 目标文件的 CRC32C 校验值（CHECKSUM_NONE 表示沿用原有值）
+     */
+    public void onMediaFileMoved(File source, File target, long checksum) {
+        awaitLoaded();
+        Entry old;
+        synchronized (lock) {
+            old = byPath.get(source.getAbsolutePath());
+            if (old != null) {
+                String volume = volumeOf(target.getAbsolutePath());
+                removeLocked(old.path);
+                // 移动到另一个存储卷才算新增（数据写入了新的存储卷），同一存储卷内改名只是更新
+                putLocked(old.withPath(target.getAbsolutePath(), volume,
+                        checksum != CHECKSUM_NONE ? checksum : old.checksum), !volume.equals(old.volume));
+            }
+        }
+        if (old == null) {
+            // 之前未记录（如旧版本遗留文件），在锁外读取文件属性后按新位置建立条目
+            int type = guessType(target.getName());
+            if (type >= 0 && target.exists()) {
+                Entry entry = buildEntry(target, type, target.length(), target.lastModified());
+                put(entry.withPath(entry.path, entry.volume, checksum));
+            }
+            return;
+        }
+        dispatchChanges();
+    }
+
+    /**
+     * 文件被删除后调用
+     */
+    public void onMediaFileDeleted(File file) {
+        if (file == null) {
+            return;
+        }
+        awaitLoaded();
+        synchronized (lock) {
+            removeLocked(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 设置文件保留层级
+     * @return true 如果条目存在
+     */
+    public boolean setTier(String path, int tier) {
+        if (tier < 0 || tier >= TIER_COUNT) {
+            return false;
+        }
+        awaitLoaded();
+        synchronized (lock) {
+            Entry old = byPath.get(path);
+            if (old == null) {
+                return false;
+            }
+            if (old.tier == tier) {
+                return true;
+            }
+            removeLocked(path);
+            putLocked(old.withTier(tier), false);
+        }
+        dispatchChanges();
+        return true;
+    }
+
+    /**
+     * 锁定 / 解锁文件（解锁后回到循环录像层级）
+     * @return true 如果条目存在
+     */
+    public boolean setLocked(String path, boolean locked) {
+        return setTier(path, locked ? TIER_LOCKED : TIER_LOOP);
+    }
+
+    /**
+     * 加入或替换条目
+     */
+    public void put(Entry entry) {
+        awaitLoaded();
+        synchronized (lock) {
+            putLocked(entry);
+        }
+        dispatchChanges();
+    }
+
+    // ==================== 查询接口 ====================
+
+    public Entry get(String path) {
+        awaitLoaded();
+        synchronized (lock) {
+            return byPath.get(path);
+        }
+    }
+
+    public int size() {
+        awaitLoaded();
+        synchronized (lock) {
+            return byPath.size();
+        }
+    }
+
+    /**
+     * 获取指定类型的总大小（O(1)）
+     */
+    public long getTotalSize(int type) {
+        awaitLoaded();
+        synchronized (lock) {
+            return totalSizeByType[type];
+        }
+    }
+
+    /**
+     * 获取指定存储卷上指定类型的总大小（O(1)）
+     */
+    public long getTotalSize(int type, String volume) {
+        awaitLoaded();
+        synchronized (lock) {
+            long[] totals = totalSizeByVolume.get(volume);
+            return totals != null ? totals[type] : 0;
+        }
+    }
+
+    /**
+     * 按时间范围查询（开始时间在 [fromMs, toMs] 内），结果按开始时间升序
+     * @param camera 摄像头位置，为 null 时查询所有摄像头
+     */
+    public List<Entry> query(int type, String camera, long fromMs, long toMs) {
+        awaitLoaded();
+        synchronized (lock) {
+            NavigableSet<Entry> set = camera == null ? byTime.get(type) : byCamera.get(type + "/" + camera);
+            List<Entry> result = new ArrayList<>();
+            if (set == null || fromMs > toMs) {
+                return result;
+            }
+            result.addAll(set.subSet(lowerBound(fromMs), true, upperBound(toMs), true));
+            return result;
+        }
+    }
+
+    /**
+     * 查询与 [fromMs, toMs] 有重叠的文件（考虑时长），结果按开始时间升序
+     */
+    public List<Entry> queryOverlapping(int type, String camera, long fromMs, long toMs, long maxDurationMs) {
+        List<Entry> candidates = query(type, camera, fromMs - maxDurationMs, toMs);
+        List<Entry> result = new ArrayList<>();
+        for (Entry e : candidates) {
+            if (e.getEndTimeMs() >= fromMs) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取指定目录下的文件（含 {@link MediaLayout} 分区目录），按开始时间倒序（最新的在前）
+     * 用于回看列表
+     */
+    public List<Entry> listNewestFirst(int type, File directory) {
+        String dirPath = directory.getAbsolutePath();
+        awaitLoaded();
+        synchronized (lock) {
+            List<Entry> result = new ArrayList<>();
+            for (Entry e : byTime.get(type).descendingSet()) {
+                if (MediaLayout.isInLayout(e.path, dirPath)) {
+                    result.add(e);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 获取锁定文件的总大小（O(1)）
+     */
+    public long getLockedSize(int type, String volume) {
+        awaitLoaded();
+        synchronized (lock) {
+            long[] totals = lockedSizeByVolume.get(volume);
+            return totals != null ? totals[type] : 0;
+        }
+    }
+
+    /**
+     * 按保留策略选出淘汰候选（按淘汰优先级排序，锁定文件除外）
+     * 第一轮：循环录像 + 已过保留期的事件录像；第二轮：未过期的事件录像
+     * 每轮内按加权年龄从大到小多路归并各摄像头的有序索引，复杂度 O(k log c)（c 为摄像头数）
+     *
+     * @param type 媒体类型
+     * @param volume 存储卷
+     * @param policy 保留策略
+     * @param nowMs 当前时间
+     * @param maxCount 最多返回数量
+     */
+    public List<Entry> selectEvictionCandidates(int type, String volume, RetentionPolicy policy,
+                                                long nowMs, int maxCount) {
+        awaitLoaded();
+        synchronized (lock) {
+            List<Entry> result = new ArrayList<>();
+            Entry eventBound = lowerBound(nowMs - policy.getEventRetentionMs());
+
+            List<Iterator<Entry>> firstPass = new ArrayList<>();
+            List<String> firstPassCameras = new ArrayList<>();
+            Map<String, NavigableSet<Entry>> loop = evictionIndex.get(evictionKey(type, volume, TIER_LOOP));
+            if (loop != null) {
+                for (Map.Entry<String, NavigableSet<Entry>> e : loop.entrySet()) {
+                    firstPass.add(e.getValue().iterator());
+                    firstPassCameras.add(e.getKey());
+                }
+            }
+            Map<String, NavigableSet<Entry>> event = evictionIndex.get(evictionKey(type, volume, TIER_EVENT));
+            if (event != null) {
+                for (Map.Entry<String, NavigableSet<Entry>> e : event.entrySet()) {
+                    firstPass.add(e.getValue().headSet(eventBound, false).iterator());
+                    firstPassCameras.add(e.getKey());
+                }
+            }
+            mergeByWeightedAge(firstPass, firstPassCameras, policy, nowMs, maxCount, result);
+
+            if (result.size() < maxCount && event != null) {
+                List<Iterator<Entry>> secondPass = new ArrayList<>();
+                List<String> secondPassCameras = new ArrayList<>();
+                for (Map.Entry<String, NavigableSet<Entry>> e : event.entrySet()) {
+                    secondPass.add(e.getValue().tailSet(eventBound, true).iterator());
+                    secondPassCameras.add(e.getKey());
+                }
+                mergeByWeightedAge(secondPass, secondPassCameras, policy, nowMs, maxCount, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 获取最旧的若干个锁定文件（用于锁定文件超过上限时的淘汰）
+     */
+    public List<Entry> getOldestLocked(int type, String volume, int maxCount) {
+        awaitLoaded();
+        synchronized (lock) {
+            List<Entry> result = new ArrayList<>();
+            Map<String, NavigableSet<Entry>> locked = evictionIndex.get(evictionKey(type, volume, TIER_LOCKED));
+            if (locked == null) {
+                return result;
+            }
+            List<Iterator<Entry>> iterators = new ArrayList<>();
+            List<String> cameras = new ArrayList<>();
+            for (Map.Entry<String, NavigableSet<Entry>> e : locked.entrySet()) {
+                iterators.add(e.getValue().iterator());
+                cameras.add(e.getKey());
+            }
+            // 锁定文件不考虑摄像头权重，严格按时间从旧到新（nowMs 取 0 时加权年龄即 -startTimeMs）
+            mergeByWeightedAge(iterators, cameras, RetentionPolicy.DEFAULT, 0, maxCount, result);
+            return result;
+        }
+    }
+
+    /**
+     * 多路归并：每次取加权年龄最大的摄像头索引头部
+     */
+    private static void mergeByWeightedAge(List<Iterator<Entry>> iterators, List<String> cameras,
+                                           RetentionPolicy policy, long nowMs, int maxCount, List<Entry> out) {
+        PriorityQueue<MergeCursor> queue = new PriorityQueue<>(Math.max(1, iterators.size()),
+                (a, b) -> Double.compare(b.weightedAge, a.weightedAge));
+        for (int i = 0; i < iterators.size(); i++) {
+            MergeCursor cursor = new MergeCursor(iterators.get(i), policy.getCameraWeight(cameras.get(i)));
+            if (cursor.advance(nowMs)) {
+                queue.add(cursor);
+            }
+        }
+        while (out.size() < maxCount && !queue.isEmpty()) {
+            MergeCursor cursor = queue.poll();
+            out.add(cursor.head);
+            if (cursor.advance(nowMs)) {
+                queue.add(cursor);
+            }
+        }
+    }
+
+    private static final class MergeCursor {
+        final Iterator<Entry> iterator;
+        final double weight;
+        Entry head;
+        double weightedAge;
+
+        MergeCursor(Iterator<Entry> iterator, double weight) {
+            this.iterator = iterator;
+            this.weight = weight;
+        }
+
+        boolean advance(long nowMs) {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            weightedAge = ((double) nowMs - head.startTimeMs) / weight;
+            return true;
+        }
+    }
+
+    // ==================== 对账与维护 ====================
+
+    /**
+     * 目录对账：扫描一次目录（含分区目录），补充缺失条目、移除已不存在的条目、修正大小变化
+     * 应在后台线程启动时调用一次
+     * @param directory 媒体目录
+     * @param type 媒体类型
+     */
+    public void reconcile(File directory, int type) {
+        if (directory == null || !directory.isDirectory()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<File> files = MediaLayout.listFiles(directory, null);
+
+        // 文件属性在锁外读取：大目录（尤其U盘）的 stat 可能耗时数秒，期间不能阻塞录制线程的目录更新
+        List<File> matched = new ArrayList<>();
+        List<long[]> stats = new ArrayList<>();  // {length, lastModified}
+        for (File file : files) {
+            if (guessType(file.getName()) == type) {
+                matched.add(file);
+                stats.add(new long[]{file.length(), file.lastModified()});
+            }
+        }
+
+        awaitLoaded();
+        String dirPath = directory.getAbsolutePath();
+        Set<String> present = new HashSet<>();
+        List<String> missing = new ArrayList<>();
+        int added = 0;
+        synchronized (lock) {
+            for (int i = 0; i < matched.size(); i++) {
+                File file = matched.get(i);
+                long length = stats.get(i)[0];
+                String path = file.getAbsolutePath();
+                present.add(path);
+                Entry existing = byPath.get(path);
+                if (existing == null) {
+                    putLocked(buildEntry(file, type, length, stats.get(i)[1]));
+                    added++;
+                } else if (existing.size != length) {
+                    putLocked(new Entry(path, type, existing.camera, existing.startTimeMs, existing.durationMs,
+                            length, existing.codec, existing.tier, existing.volume));
+                }
+            }
+            for (Entry e : byTime.get(type)) {
+                if (MediaLayout.isInLayout(e.path, dirPath) && !present.contains(e.path)) {
+                    missing.add(e.path);
+                }
+            }
+        }
+        dispatchChanges();
+
+        // 扫描之后才写入的文件（如刚关闭的分段）也不在扫描结果中，锁外确认文件确实不存在后再移除
+        List<String> stale = new ArrayList<>();
+        for (String path : missing) {
+            if (!new File(path).exists()) {
+                stale.add(path);
+            }
+        }
+        synchronized (lock) {
+            for (String path : stale) {
+                removeLocked(path);
+            }
+            if (journalOps > MIN_COMPACT_JOURNAL_OPS) {
+                compactLocked();
+            }
+        }
+        AppLog.d(TAG, "Reconciled " + dirPath + ": " + files.size() + " files, added=" + added +
+                ", removed=" + stale.size() + ", took " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * 将日志压缩为快照
+     */
+    public void compact() {
+        awaitLoaded();
+        synchronized (lock) {
+            compactLocked();
+        }
+    }
+
+    // ==================== 内部实现 ====================
+
+    /**
+     * 加入或替换条目（路径已存在时按更新通知）
+     */
+    private void putLocked(Entry entry) {
+        putLocked(entry, !byPath.containsKey(entry.path));
+    }
+
+    private void putLocked(Entry entry, boolean added) {
+        Entry old = byPath.get(entry.path);
+        if (old != null) {
+            unindex(old);
+        }
+        index(entry);
+        appendJournal(OP_PUT_V2, entry, entry.path);
+        if (!listeners.isEmpty()) {
+            pendingChanges.add(new Change(entry, added));
+        }
+    }
+
+    /**
+     * 待通知的变更
+     */
+    private static final class Change {
+        final Entry entry;
+        final boolean added;
+
+        Change(Entry entry, boolean added) {
+            this.entry = entry;
+            this.added = added;
+        }
+    }
+
+    /**
+     * 释放目录锁后通知监听器（监听器可能再次查询目录或投递任务，不能在锁内调用）
+     */
+    private void dispatchChanges() {
+        List<Change> changes;
+        synchronized (lock) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            changes = new ArrayList<>(pendingChanges);
+            pendingChanges.clear();
+        }
+        for (Change change : changes) {
+            for (ChangeListener listener : listeners) {
+                if (change.added) {
+                    listener.onEntryAdded(change.entry);
+                } else {
+                    listener.onEntryUpdated(change.entry);
+                }
+            }
+        }
+    }
+
+    private void removeLocked(String path) {
+        Entry old = byPath.get(path);
+        if (old == null) {
+            return;
+        }
+        unindex(old);
+        appendJournal(OP_REMOVE, null, path);
+    }
+
+    private void index(Entry entry) {
+        byPath.put(entry.path, entry);
+        byTime.get(entry.type).add(entry);
+        String cameraKey = entry.type + "/" + entry.camera;
+        NavigableSet<Entry> cameraSet = byCamera.get(cameraKey);
+        if (cameraSet == null) {
+            cameraSet = new TreeSet<>(TIME_ORDER);
+            byCamera.put(cameraKey, cameraSet);
+        }
+        cameraSet.add(entry);
+        totalSizeByType[entry.type] += entry.size;
+        long[] volumeTotals = totalSizeByVolume.get(entry.volume);
+        if (volumeTotals == null) {
+            volumeTotals = new long[TYPE_COUNT];
+            totalSizeByVolume.put(entry.volume, volumeTotals);
+        }
+        volumeTotals[entry.type] += entry.size;
+        if (entry.tier == TIER_LOCKED) {
+            long[] lockedTotals = lockedSizeByVolume.get(entry.volume);
+            if (lockedTotals == null) {
+                lockedTotals = new long[TYPE_COUNT];
+                lockedSizeByVolume.put(entry.volume, lockedTotals);
+            }
+            lockedTotals[entry.type] += entry.size;
+        }
+        String tierKey = evictionKey(entry.type, entry.volume, entry.tier);
+        Map<String, NavigableSet<Entry>> tierSets = evictionIndex.get(tierKey);
+        if (tierSets == null) {
+            tierSets = new HashMap<>();
+            evictionIndex.put(tierKey, tierSets);
+        }
+        NavigableSet<Entry> tierCameraSet = tierSets.get(entry.camera);
+        if (tierCameraSet == null) {
+            tierCameraSet = new TreeSet<>(TIME_ORDER);
+            tierSets.put(entry.camera, tierCameraSet);
+        }
+        tierCameraSet.add(entry);
+    }
+
+    private void unindex(Entry entry) {
+        byPath.remove(entry.path);
+        byTime.get(entry.type).remove(entry);
+        NavigableSet<Entry> cameraSet = byCamera.get(entry.type + "/" + entry.camera);
+        if (cameraSet != null) {
+            cameraSet.remove(entry);
+        }
+        totalSizeByType[entry.type] -= entry.size;
+        long[] volumeTotals = totalSizeByVolume.get(entry.volume);
+        if (volumeTotals != null) {
+            volumeTotals[entry.type] -= entry.size;
+        }
+        if (entry.tier == TIER_LOCKED) {
+            long[] lockedTotals = lockedSizeByVolume.get(entry.volume);
+            if (lockedTotals != null) {
+                lockedTotals[entry.type] -= entry.size;
+            }
+        }
+        Map<String, NavigableSet<Entry>> tierSets = evictionIndex.get(evictionKey(entry.type, entry.volume, entry.tier));
+        if (tierSets != null) {
+            NavigableSet<Entry> tierCameraSet = tierSets.get(entry.camera);
+            if (tierCameraSet != null) {
+                tierCameraSet.remove(entry);
+            }
+        }
+    }
+
+    private void appendJournal(byte op, Entry entry, String path) {
+        try {
+            if (journalOut == null) {
+                journalOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+            }
+            journalOut.writeByte(op);
+            if (op == OP_PUT_V2) {
+                writeEntry(journalOut, entry);
+            } else {
+                journalOut.writeUTF(path);
+            }
+            // 每条记录写入后 flush 到系统缓存，进程被杀时不丢失（无需 fsync）
+            journalOut.flush();
+            journalOps++;
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to append catalog journal", e);
+            closeJournal();
+        }
+        if (journalOps > MIN_COMPACT_JOURNAL_OPS && journalOps > byPath.size()) {
+            compactLocked();
+        }
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        if (snapshotFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Unsupported snapshot format");
+                }
+                int version = in.readInt();
+                if (version != FORMAT_VERSION && version != FORMAT_VERSION_NO_CHECKSUM) {
+                    throw new IOException("Unsupported snapshot version: " + version);
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    index(readEntry(in, version == FORMAT_VERSION));
+                }
+            } catch (IOException e) {
+                // 快照损坏：丢弃，依赖启动对账重建
+                AppLog.e(TAG, "Failed to load catalog snapshot, will rebuild by reconciliation", e);
+                clearIndexes();
+            }
+        }
+
+        if (journalFile.exists()) {
+            long validLength = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                while (true) {
+                    byte op;
+                    try {
+                        op = in.readByte();
+                    } catch (EOFException eof) {
+                        break;
+                    }
+                    if (op == OP_PUT || op == OP_PUT_V2) {
+                        Entry entry = readEntry(in, op == OP_PUT_V2);
+                        Entry old = byPath.get(entry.path);
+                        if (old != null) {
+                            unindex(old);
+                        }
+                        index(entry);
+                    } else if (op == OP_REMOVE) {
+                        Entry old = byPath.get(in.readUTF());
+                        if (old != null) {
+                            unindex(old);
+                        }
+                    } else {
+                        throw new IOException("Unknown journal op: " + op);
+                    }
+                    journalOps++;
+                    validLength = journalFile.length() - in.available();
+                }
+            } catch (IOException e) {
+                // 日志尾部不完整（写入时进程被杀），截断到最后一条完整记录
+                AppLog.w(TAG, "Catalog journal truncated at " + validLength + " bytes: " + e.getMessage());
+                truncateJournal(validLength);
+            }
+        }
+
+        AppLog.d(TAG, "Catalog loaded: " + byPath.size() + " entries, " + journalOps + " journal ops, took " +
+                (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void compactLocked() {
+        closeJournal();
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(byPath.size());
+            for (Entry entry : byPath.values()) {
+                writeEntry(out, entry);
+            }
+            // 新快照落盘后才能替换旧快照，否则断电后可能留下空文件而日志已被删除
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to write catalog snapshot", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            AppLog.e(TAG, "Failed to replace catalog snapshot");
+            tmp.delete();
+            return;
+        }
+        // 重命名落盘后再删除日志；目录无法同步时（部分文件系统不支持）仍保留日志，重放日志是幂等的
+        if (!syncDirectory(snapshotFile.getParentFile())) {
+            AppLog.w(TAG, "Catalog dir not synced, keeping journal until next compaction");
+            journalOps = 0;
+            return;
+        }
+        if (journalFile.exists() && !journalFile.delete()) {
+            AppLog.w(TAG, "Failed to delete catalog journal after compaction");
+        }
+        AppLog.d(TAG, "Catalog compacted: " + byPath.size() + " entries (" + journalOps + " journal ops merged)");
+        journalOps = 0;
+    }
+
+    /**
+     * 同步目录项（使重命名落盘）
+     * @return false 如果文件系统不支持或同步失败
+     */
+    private static boolean syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            AppLog.d(TAG, "Cannot sync directory " + dir.getAbsolutePath() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void truncateJournal(long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to truncate catalog journal", e);
+        }
+    }
+
+    private void closeJournal() {
+        if (journalOut != null) {
+            try {
+                journalOut.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            journalOut = null;
+        }
+    }
+
+    private void clearIndexes() {
+        byPath.clear();
+        for (NavigableSet<Entry> set : byTime) {
+            set.clear();
+        }
+        byCamera.clear();
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            totalSizeByType[i] = 0;
+        }
+        totalSizeByVolume.clear();
+        lockedSizeByVolume.clear();
+        evictionIndex.clear();
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry e) throws IOException {
+        out.writeUTF(e.path);
+        out.writeByte(e.type);
+        out.writeUTF(e.camera);
+        out.writeLong(e.startTimeMs);
+        out.writeLong(e.durationMs);
+        out.writeLong(e.size);
+        out.writeUTF(e.codec);
+        out.writeByte(e.tier);
+        out.writeUTF(e.volume);
+        out.writeLong(e.checksum);
+    }
+
+    private static Entry readEntry(DataInputStream in, boolean hasChecksum) throws IOException {
+        String path = in.readUTF();
+        int type = in.readByte();
+        if (type < 0 || type >= TYPE_COUNT) {
+            throw new IOException("Invalid media type: " + type);
+        }
+        String camera = in.readUTF();
+        long startTimeMs = in.readLong();
+        long durationMs = in.readLong();
+        long size = in.readLong();
+        String codec = in.readUTF();
+        int tier = in.readByte();
+        if (tier < 0 || tier >= TIER_COUNT) {
+            throw new IOException("Invalid retention tier: " + tier);
+        }
+        String volume = in.readUTF();
+        long checksum = hasChecksum ? in.readLong() : CHECKSUM_NONE;
+        return new Entry(path, type, camera, startTimeMs, durationMs, size, codec, tier, volume, checksum);
+    }
+
+    private Entry buildEntry(File file, int type, long size, long lastModified) {
+        String name = file.getName();
+        long startTime = parseTimestamp(name);
+        if (startTime <= 0) {
+            startTime = lastModified;
+        }
+        long duration = type == TYPE_VIDEO ? Math.max(0, lastModified - startTime) : 0;
+        String path = file.getAbsolutePath();
+        String codec = type == TYPE_VIDEO ? "h264" : name.toLowerCase().endsWith(".png") ? "png" : "jpeg";
+        return new Entry(path, type, parseCamera(name), startTime, duration, size, codec, TIER_LOOP, volumeOf(path));
+    }
+
+    /**
+     * 从文件名解析开始时间（格式：yyyyMMdd_HHmmss_摄像头位置.扩展名）
+     * @return 毫秒时间戳，解析失败返回 -1
+     */
+    long parseTimestamp(String name) {
+        if (name.length() < 15 || name.charAt(8) != '_') {
+            return -1;
+        }
+        for (int i = 0; i < 15; i++) {
+            if (i != 8 && !Character.isDigit(name.charAt(i))) {
+                return -1;
+            }
+        }
+        synchronized (parseCalendar) {
+            parseCalendar.clear();
+            parseCalendar.set(
+                    Integer.parseInt(name.substring(0, 4)),
+                    Integer.parseInt(name.substring(4, 6)) - 1,
+                    Integer.parseInt(name.substring(6, 8)),
+                    Integer.parseInt(name.substring(9, 11)),
+                    Integer.parseInt(name.substring(11, 13)),
+                    Integer.parseInt(name.substring(13, 15)));
+            return parseCalendar.getTimeInMillis();
+        }
+    }
+
+    /**
+     * 从文件名解析摄像头位置（最后一个下划线与扩展名之间的部分）
+     */
+    public static String parseCamera(String name) {
+        int dot = name.lastIndexOf('.');
+        int underscore = name.lastIndexOf('_');
+        if (dot > underscore && underscore >= 15) {
+            return name.substring(underscore + 1, dot);
+        }
+        return "";
+    }
+
+    /**
+     * 根据扩展名判断媒体类型
+     * @return TYPE_VIDEO / TYPE_PHOTO，无法识别返回 -1
+     */
+    public static int guessType(String name) {
+        String lower = name.toLowerCase();
+        if (lower.endsWith(".mp4")) {
+            return TYPE_VIDEO;
+        }
+        for (String extension : PHOTO_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return TYPE_PHOTO;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 计算文件所在的存储卷（/storage/emulated/N 或 /storage/XXXX-XXXX，其余归为应用内部存储）
+     */
+    public static String volumeOf(String path) {
+        if (path.startsWith("/storage/emulated/")) {
+            int end = path.indexOf('/', "/storage/emulated/".length());
+            return end > 0 ? path.substring(0, end) : path;
+        }
+        if (path.startsWith("/storage/")) {
+            int end = path.indexOf('/', "/storage/".length());
+            return end > 0 ? path.substring(0, end) : path;
+        }
+        return "internal";
+    }
+
+    private static String evictionKey(int type, String volume, int tier) {
+        return type + "/" + volume + "/" + tier;
+    }
+
+    private static Entry lowerBound(long timeMs) {
+        return new Entry("", 0, "", timeMs, 0, 0, "", TIER_LOOP, "");
+    }
+
+    private static Entry upperBound(long timeMs) {
+        return new Entry("\uffff", 0, "", timeMs, 0, 0, "", TIER_LOOP, "");
+    }
+}
@@ -0,0 +1,236 @@
+package com.kooo.evcam.storage;
+
+import android.content.Context;
+import android.os.FileObserver;
+
+import com.kooo.evcam.AppLog;
+import com.kooo.evcam.FileTransferManager;
+import com.kooo.evcam.StorageHelper;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 媒体目录监听器
+ * 首次使用时扫描一次临时目录、视频目录和照片目录建立 {@link MediaFileIndex}，
+ * 之后通过 FileObserver（inotify）监听文件的创建、移入、删除和移出，保持索引与文件系统一致，
+ * 查找文件时不再需要 listFiles
+ *
+ * FileObserver 不递归，因此对根目录、每个日期目录和每个小时目录分别监听；
+ * 新建的分区目录在创建事件中加入监听，目录被删除时停止监听
+ * 存储位置切换（内部存储 / U盘）、存储卷挂载或拔出、目录不存在时，下次访问索引会重新扫描
+ */
+public class MediaDirectoryWatcher {
+    private static final String TAG = "MediaDirectoryWatcher";
+
+    private static final int EVENT_MASK = FileObserver.CREATE | FileObserver.MOVED_TO
+            | FileObserver.DELETE | FileObserver.MOVED_FROM
+            | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    // 目录层级
+    private static final int LEVEL_ROOT = 0;
+    private static final int LEVEL_DATE = 1;
+    private static final int LEVEL_HOUR = 2;
+    // 平铺目录（中转临时目录），不监听子目录
+    private static final int LEVEL_FLAT = 3;
+
+    private static MediaDirectoryWatcher instance;
+
+    private final Context context;
+    private final MediaFileIndex tempIndex = new MediaFileIndex(".mp4");
+    private final MediaFileIndex videoIndex = new MediaFileIndex(".mp4");
+    private final MediaFileIndex photoIndex = new MediaFileIndex(MediaCatalog.PHOTO_EXTENSIONS);
+    // 目录路径 -> 监听器（必须持有引用，否则被回收后停止监听）
+    private final Map<String, DirectoryObserver> observers = new HashMap<>();
+    private String watchedKey;
+
+    private MediaDirectoryWatcher(Context context) {
+        this.context = context.getApplicationContext();
+        // 存储卷挂载或拔出后目录可能整体变化，下次访问时重新扫描
+        StorageVolumeMonitor.getInstance().addListener((volume, available) -> stop());
+    }
+
+    public static synchronized MediaDirectoryWatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaDirectoryWatcher(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 中转临时目录的录像索引
+     */
+    public MediaFileIndex getTempVideoIndex() {
+        ensureWatching();
+        return tempIndex;
+    }
+
+    /**
+     * 视频目录的录像索引
+     */
+    public MediaFileIndex getVideoIndex() {
+        ensureWatching();
+        return videoIndex;
+    }
+
+    /**
+     * 照片目录的索引
+     */
+    public MediaFileIndex getPhotoIndex() {
+        ensureWatching();
+        return photoIndex;
+    }
+
+    /**
+     * 停止所有监听并清空索引
+     */
+    public synchronized void stop() {
+        for (DirectoryObserver observer : observers.values()) {
+            observer.stopWatching();
+        }
+        observers.clear();
+        tempIndex.clear();
+        videoIndex.clear();
+        photoIndex.clear();
+        watchedKey = null;
+    }
+
+    /**
+     * 确保当前的存储目录已被监听；目录变化（切换存储位置、U盘挂载）时重新扫描
+     */
+    private synchronized void ensureWatching() {
+        File tempDir = new File(context.getCacheDir(), FileTransferManager.TEMP_VIDEO_DIR);
+        File videoDir = StorageHelper.getVideoDir(context);
+        File photoDir = StorageHelper.getPhotoDir(context);
+        String key = keyOf(tempDir) + "|" + keyOf(videoDir) + "|" + keyOf(photoDir);
+        if (key.equals(watchedKey)) {
+            return;
+        }
+
+        stop();
+        long startMs = System.currentTimeMillis();
+        watchDirectory(tempDir, LEVEL_FLAT, tempIndex);
+        watchDirectory(videoDir, LEVEL_ROOT, videoIndex);
+        watchDirectory(photoDir, LEVEL_ROOT, photoIndex);
+        watchedKey = key;
+        AppLog.d(TAG, "媒体索引已建立: 临时 " + tempIndex.size() + "，视频 " + videoIndex.size()
+                + "，照片 " + photoIndex.size() + "，监听目录 " + observers.size()
+                + "，耗时 " + (System.currentTimeMillis() - startMs) + "ms");
+    }
+
+    private static String keyOf(File dir) {
+        if (dir == null) {
+            return "";
+        }
+        // 目录不存在时无法监听，标记后下次访问重试
+        return dir.getAbsolutePath() + (dir.isDirectory() ? "" : "!");
+    }
+
+    /**
+     * 监听目录并索引其中的文件（先开始监听再列出，避免遗漏期间创建的文件）
+     */
+    private synchronized void watchDirectory(File dir, int level, MediaFileIndex index) {
+        if (dir == null || !dir.isDirectory() || observers.containsKey(dir.getAbsolutePath())) {
+            return;
+        }
+        DirectoryObserver observer = new DirectoryObserver(dir, level, index);
+        observers.put(dir.getAbsolutePath(), observer);
+        observer.startWatching();
+
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            onEntryAdded(entry, level, index);
+        }
+    }
+
+    private void onEntryAdded(File entry, int level, MediaFileIndex index) {
+        int childLevel = childLevelOf(entry.getName(), level);
+        if (childLevel >= 0) {
+            if (entry.isDirectory()) {
+                watchDirectory(entry, childLevel, index);
+            }
+        } else if (level != LEVEL_DATE) {
+            index.add(entry);
+        }
+    }
+
+    private synchronized void onDirectoryRemoved(File dir, MediaFileIndex index) {
+        String prefix = dir.getAbsolutePath();
+        observers.entrySet().removeIf(e -> {
+            if (e.getKey().equals(prefix) || e.getKey().startsWith(prefix + File.separator)) {
+                e.getValue().stopWatching();
+                return true;
+            }
+            return false;
+        });
+        index.removeUnder(dir);
+    }
+
+    /**
+     * 子目录名在当前层级下对应的分区层级
+     * @return 分区层级，不是分区目录名时返回 -1
+     */
+    private static int childLevelOf(String name, int level) {
+        if (level == LEVEL_ROOT && MediaLayout.isDateDirName(name)) {
+            return LEVEL_DATE;
+        }
+        if (level == LEVEL_DATE && MediaLayout.isHourDirName(name)) {
+            return LEVEL_HOUR;
+        }
+        return -1;
+    }
+
+    private class DirectoryObserver extends FileObserver {
+        private final File dir;
+        private final int level;
+        private final MediaFileIndex index;
+
+        @SuppressWarnings("deprecation")
+        DirectoryObserver(File dir, int level, MediaFileIndex index) {
+            // FileObserver(File) 需要 API 29，minSdk 28 使用路径构造
+            super(dir.getAbsolutePath(), EVENT_MASK);
+            this.dir = dir;
+            this.level = level;
+            this.index = index;
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            switch (event & FileObserver.ALL_EVENTS) {
+                case FileObserver.CREATE:
+                case FileObserver.MOVED_TO:
+                    if (path != null) {
+                        onEntryAdded(new File(dir, path), level, index);
+                    }
+                    break;
+                case FileObserver.DELETE:
+                case FileObserver.MOVED_FROM:
+                    if (path != null) {
+                        File entry = new File(dir, path);
+                        if (childLevelOf(path, level) >= 0) {
+                            onDirectoryRemoved(entry, index);
+                        } else {
+                            index.remove(entry);
+                        }
+                    }
+                    break;
+                case FileObserver.DELETE_SELF:
+                case FileObserver.MOVE_SELF:
+                    onDirectoryRemoved(dir, index);
+                    if (level == LEVEL_ROOT || level == LEVEL_FLAT) {
+                        // 根目录本身不存在了（如U盘拔出），下次访问时重新扫描
+                        synchronized (MediaDirectoryWatcher.this) {
+                            watchedKey = null;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
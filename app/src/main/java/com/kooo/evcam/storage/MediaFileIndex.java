@@ -0,0 +1,132 @@
+package com.kooo.evcam.storage;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 媒体文件名索引
+ * 以文件名（yyyyMMdd_HHmmss_摄像头位置.扩展名）为键的有序映射：时间戳前缀定宽，
+ * 字典序即时间顺序，按时间戳或时间范围查找都是一次子映射查询（O(log n + k)）
+ *
+ * 同名文件只保留最后加入的路径（如中转写入时临时目录与最终目录中的同一分段），
+ * 删除时只有路径一致才移除，避免临时文件删除事件误删最终文件的记录
+ *
+ * 纯 Java 实现，由 {@link MediaDirectoryWatcher} 根据文件系统事件维护
+ */
+public class MediaFileIndex {
+
+    private static final String KEY_UPPER_SUFFIX = "_\uffff";
+
+    private final String[] extensions;
+    private final TreeMap<String, File> byName = new TreeMap<>();
+    private final SimpleDateFormat keyFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+
+    /**
+     * @param extensions 索引的文件扩展名（小写，含点号，如 ".mp4"）
+     */
+    public MediaFileIndex(String... extensions) {
+        this.extensions = extensions;
+    }
+
+    /**
+     * 文件名是否属于本索引（时间戳格式正确且扩展名匹配）
+     */
+    public boolean accepts(String name) {
+        if (MediaLayout.dateDirName(name) == null) {
+            return false;
+        }
+        String lower = name.toLowerCase(Locale.US);
+        for (String ext : extensions) {
+            if (lower.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void add(File file) {
+        if (accepts(file.getName())) {
+            byName.put(file.getName(), file);
+        }
+    }
+
+    public synchronized void addAll(List<File> files) {
+        for (File file : files) {
+            add(file);
+        }
+    }
+
+    /**
+     * 移除文件（仅当索引中记录的正是该路径时）
+     */
+    public synchronized void remove(File file) {
+        File current = byName.get(file.getName());
+        if (current != null && current.getPath().equals(file.getPath())) {
+            byName.remove(file.getName());
+        }
+    }
+
+    /**
+     * 移除指定目录下的所有文件（目录被删除或移走时调用）
+     */
+    public synchronized void removeUnder(File dir) {
+        String prefix = dir.getPath() + File.separator;
+        byName.values().removeIf(file -> file.getPath().startsWith(prefix));
+    }
+
+    public synchronized void clear() {
+        byName.clear();
+    }
+
+    public synchronized int size() {
+        return byName.size();
+    }
+
+    /**
+     * 按时间戳精确查找（同一时间戳的各摄像头文件）
+     * @param timestamp yyyyMMdd_HHmmss
+     */
+    public synchronized List<File> findByTimestamp(String timestamp) {
+        return new ArrayList<>(byName.subMap(timestamp + "_", true, timestamp + KEY_UPPER_SUFFIX, true).values());
+    }
+
+    /**
+     * 查找开始时间在 [fromMs, toMs] 内的文件（秒级精度），按时间顺序
+     */
+    public synchronized List<File> findInRange(long fromMs, long toMs) {
+        if (toMs < fromMs) {
+            return new ArrayList<>();
+        }
+        NavigableMap<String, File> range = byName.subMap(keyOf(fromMs), true, keyOf(toMs) + KEY_UPPER_SUFFIX, true);
+        return new ArrayList<>(range.values());
+    }
+
+    /**
+     * 查找与 [fromMs, toMs] 有重叠的文件
+     * 开始时间在区间内的直接命中；开始时间早于 fromMs 但在 maxDurationMs 以内的，
+     * 以最后修改时间（分段关闭时间）作为结束时间判断是否重叠
+     * @param maxDurationMs 单个文件的最大时长（如分段时长）
+     */
+    public List<File> findOverlapping(long fromMs, long toMs, long maxDurationMs) {
+        List<File> candidates = findInRange(fromMs - Math.max(0, maxDurationMs), toMs);
+        List<File> result = new ArrayList<>(candidates.size());
+        // 秒级时间戳：开始时间不早于 fromMs 所在秒的文件直接命中
+        String fromKey = keyOf(fromMs);
+        for (File file : candidates) {
+            if (file.getName().compareTo(fromKey) >= 0 || file.lastModified() >= fromMs) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private synchronized String keyOf(long timeMs) {
+        return keyFormat.format(new Date(timeMs));
+    }
+}
@@ -0,0 +1,201 @@
+package com.kooo.evcam.storage;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 媒体目录分区布局
+ * 录像和照片按文件名中的时间戳分区存放：根目录/yyyy-MM-dd/HH/yyyyMMdd_HHmmss_摄像头位置.扩展名
+ * 每个小时目录只有几十到几百个文件，避免 FAT/exFAT 上单个目录包含数万个文件时 listFiles 需要数秒
+ *
+ * 兼容旧的平铺布局：根目录下直接存放的文件仍然可以被列出和查找，由 {@link LayoutMigrator} 在后台逐步迁移
+ * 中转写入的临时目录保持平铺（文件很少）
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class MediaLayout {
+
+    private MediaLayout() {
+    }
+
+    /**
+     * 根据文件名中的时间戳计算分区目录
+     * @return 分区目录，文件名不含有效时间戳时返回 null
+     */
+    public static File partitionDirFor(File root, String fileNameOrTimestamp) {
+        String dateDir = dateDirName(fileNameOrTimestamp);
+        if (dateDir == null) {
+            return null;
+        }
+        return new File(new File(root, dateDir), fileNameOrTimestamp.substring(9, 11));
+    }
+
+    /**
+     * 计算文件在分区布局中的位置（不创建目录）
+     * 文件名不含有效时间戳时放在根目录下
+     */
+    public static File resolve(File root, String fileName) {
+        File dir = partitionDirFor(root, fileName);
+        return new File(dir != null ? dir : root, fileName);
+    }
+
+    /**
+     * 计算文件在分区布局中的位置，并确保分区目录存在
+     */
+    public static File resolveAndCreate(File root, String fileName) {
+        File file = resolve(root, fileName);
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        return file;
+    }
+
+    /**
+     * 查找文件：先查分区目录，再查根目录（未迁移的旧文件）
+     * @return 存在的文件，都不存在时返回 null
+     */
+    public static File find(File root, String fileName) {
+        File partitioned = resolve(root, fileName);
+        if (partitioned.exists()) {
+            return partitioned;
+        }
+        File flat = new File(root, fileName);
+        return flat.exists() ? flat : null;
+    }
+
+    /**
+     * 获取文件所在的布局根目录（文件位于分区目录时为分区的上两级目录）
+     */
+    public static File rootOf(File file) {
+        File parent = file.getParentFile();
+        if (isPartitioned(file)) {
+            return parent.getParentFile().getParentFile();
+        }
+        return parent;
+    }
+
+    /**
+     * 文件是否位于分区目录（yyyy-MM-dd/HH）中
+     */
+    public static boolean isPartitioned(File file) {
+        File hourDir = file.getParentFile();
+        if (hourDir == null || !isHourDirName(hourDir.getName())) {
+            return false;
+        }
+        File dateDir = hourDir.getParentFile();
+        return dateDir != null && isDateDirName(dateDir.getName()) && dateDir.getParentFile() != null;
+    }
+
+    /**
+     * 路径是否属于指定根目录的布局（根目录下的平铺文件，或分区目录中的文件）
+     */
+    public static boolean isInLayout(String path, String rootPath) {
+        int start = rootPath.length() + 1;
+        if (path.length() <= start || !path.startsWith(rootPath) || path.charAt(rootPath.length()) != '/') {
+            return false;
+        }
+        int slash = path.indexOf('/', start);
+        if (slash < 0) {
+            return true;  // 平铺
+        }
+        // yyyy-MM-dd/HH/文件名
+        return slash - start == 10
+                && isDateDirName(path.substring(start, slash))
+                && path.length() > slash + 4
+                && path.charAt(slash + 3) == '/'
+                && isHourDirName(path.substring(slash + 1, slash + 3))
+                && path.indexOf('/', slash + 4) < 0;
+    }
+
+    /**
+     * 列出布局中的所有文件（根目录下的平铺文件 + 所有分区中的文件）
+     * @param filter 文件名过滤（可为 null）
+     */
+    public static List<File> listFiles(File root, FilenameFilter filter) {
+        List<File> result = new ArrayList<>();
+        File[] entries = root.listFiles();
+        if (entries == null) {
+            return result;
+        }
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (entry.isDirectory()) {
+                if (isDateDirName(name)) {
+                    for (File hourDir : listHourDirs(entry)) {
+                        File[] files = filter != null ? hourDir.listFiles(filter) : hourDir.listFiles(File::isFile);
+                        if (files != null) {
+                            result.addAll(Arrays.asList(files));
+                        }
+                    }
+                }
+            } else if (filter == null || filter.accept(root, name)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 列出根目录下平铺存放（尚未迁移）的文件
+     */
+    public static List<File> listFlatFiles(File root, FilenameFilter filter) {
+        File[] files = root.listFiles((dir, name) ->
+                dateDirName(name) != null && (filter == null || filter.accept(dir, name)));
+        return files != null ? new ArrayList<>(Arrays.asList(files)) : new ArrayList<>();
+    }
+
+    /**
+     * 删除文件后调用：所在分区目录已空时删除该目录（及空的日期目录）
+     * 直接尝试 rmdir，目录非空时系统调用失败，无需列出目录内容
+     */
+    public static void pruneEmptyPartition(File deletedFile) {
+        if (!isPartitioned(deletedFile)) {
+            return;
+        }
+        File hourDir = deletedFile.getParentFile();
+        if (hourDir.delete()) {
+            hourDir.getParentFile().delete();
+        }
+    }
+
+    /**
+     * 由文件名（或时间戳）前缀 yyyyMMdd_HHmmss 得到日期目录名 yyyy-MM-dd
+     * @return 日期目录名，格式不符时返回 null
+     */
+    static String dateDirName(String name) {
+        if (name == null || name.length() < 15 || name.charAt(8) != '_') {
+            return null;
+        }
+        for (int i = 0; i < 15; i++) {
+            if (i != 8 && !Character.isDigit(name.charAt(i))) {
+                return null;
+            }
+        }
+        return name.substring(0, 4) + '-' + name.substring(4, 6) + '-' + name.substring(6, 8);
+    }
+
+    static boolean isDateDirName(String name) {
+        if (name.length() != 10 || name.charAt(4) != '-' || name.charAt(7) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 7 && !Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isHourDirName(String name) {
+        return name.length() == 2 && Character.isDigit(name.charAt(0)) && Character.isDigit(name.charAt(1));
+    }
+
+    private static List<File> listHourDirs(File dateDir) {
+        File[] dirs = dateDir.listFiles(f -> f.isDirectory() && isHourDirName(f.getName()));
+        return dirs != null ? Arrays.asList(dirs) : new ArrayList<>();
+    }
+}
@@ -0,0 +1,190 @@
+package com.kooo.evcam.storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 挂载表解析（/proc/mounts）
+ * 每行格式：设备 挂载点 文件系统类型 挂载选项 0 0，字段中的空格等字符以八进制转义（如 \040）
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public final class MountTable {
+
+    public static final String PROC_MOUNTS = "/proc/mounts";
+
+    private static final String STORAGE_PREFIX = "/storage/";
+
+    /**
+     * 挂载项
+     */
+    public static final class Mount {
+        public final String device;
+        public final String mountPoint;
+        public final String fsType;
+        public final String options;
+
+        Mount(String device, String mountPoint, String fsType, String options) {
+            this.device = device;
+            this.mountPoint = mountPoint;
+            this.fsType = fsType;
+            this.options = options;
+        }
+
+        public boolean isReadOnly() {
+            return options.equals("ro") || options.startsWith("ro,");
+        }
+
+        /**
+         * 是否为可移动存储卷（U盘 / SD 卡，挂载在 /storage/XXXX-XXXX）
+         */
+        public boolean isRemovableVolume() {
+            return isRemovableVolumePath(mountPoint);
+        }
+
+        @Override
+        public String toString() {
+            return device + " " + mountPoint + " " + fsType + " " + options;
+        }
+    }
+
+    private MountTable() {
+    }
+
+    /**
+     * 读取并解析 /proc/mounts
+     * @return 挂载项列表，读取失败时返回空列表
+     */
+    public static List<Mount> read() {
+        try (Reader reader = new FileReader(PROC_MOUNTS)) {
+            return parse(reader);
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 解析挂载表内容，格式不完整的行跳过
+     */
+    public static List<Mount> parse(Reader reader) throws IOException {
+        List<Mount> mounts = new ArrayList<>();
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        String[] fields = new String[4];
+        while ((line = in.readLine()) != null) {
+            if (split(line, fields)) {
+                mounts.add(new Mount(unescape(fields[0]), unescape(fields[1]), fields[2], fields[3]));
+            }
+        }
+        return mounts;
+    }
+
+    /**
+     * 列出可移动存储卷的挂载点（按挂载表顺序，去重）
+     */
+    public static List<File> removableVolumes(List<Mount> mounts) {
+        List<File> result = new ArrayList<>();
+        List<String> seen = new ArrayList<>();
+        for (Mount mount : mounts) {
+            if (mount.isRemovableVolume() && !seen.contains(mount.mountPoint)) {
+                seen.add(mount.mountPoint);
+                result.add(new File(mount.mountPoint));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 路径是否为可移动存储卷的挂载点：/storage/ 后跟 XXXX-XXXX（十六进制卷序列号）
+     */
+    public static boolean isRemovableVolumePath(String path) {
+        if (path == null || path.length() != STORAGE_PREFIX.length() + 9 || !path.startsWith(STORAGE_PREFIX)) {
+            return false;
+        }
+        int start = STORAGE_PREFIX.length();
+        for (int i = 0; i < 9; i++) {
+            char c = path.charAt(start + i);
+            if (i == 4 ? c != '-' : Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 查找路径所在的挂载项（挂载点为路径最长前缀的一项）
+     * @return 挂载项，找不到时返回 null
+     */
+    public static Mount findMountFor(List<Mount> mounts, String path) {
+        Mount best = null;
+        for (Mount mount : mounts) {
+            String mp = mount.mountPoint;
+            boolean contains = path.equals(mp)
+                    || (path.startsWith(mp) && (mp.endsWith("/") || path.charAt(mp.length()) == '/'));
+            if (contains && (best == null || mp.length() >= best.mountPoint.length())) {
+                best = mount;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按空白切分前 4 个字段
+     */
+    private static boolean split(String line, String[] fields) {
+        int pos = 0;
+        int len = line.length();
+        for (int f = 0; f < fields.length; f++) {
+            while (pos < len && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            int start = pos;
+            while (pos < len && !Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                return false;
+            }
+            fields[f] = line.substring(start, pos);
+        }
+        return true;
+    }
+
+    /**
+     * 还原八进制转义（\040 空格、\011 制表符、\012 换行、\134 反斜杠）
+     */
+    static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder sb = new StringBuilder(field.length());
+        int i = 0;
+        while (i < field.length()) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length() && isOctal(field, i + 1)) {
+                sb.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 4;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isOctal(String s, int from) {
+        for (int i = from; i < from + 3; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '7') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
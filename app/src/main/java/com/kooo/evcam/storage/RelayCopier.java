@@ -0,0 +1,273 @@
+package com.kooo.evcam.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 中转复制器
+ * 将临时目录中的文件按大块（4KB 对齐）复制到目标存储：
+ * - 每个工作线程复用一块直接内存缓冲区，避免每个文件重新分配
+ * - 可选限速（按存储卷共享的令牌桶），避免复制占满U盘带宽影响录制写入；
+ *   录制写入延迟升高时由 {@link IoScheduler} 进一步限流或暂停
+ * - 每写入一定字节执行一次 force()，限制脏页堆积，避免集中回写时阻塞录制；
+ *   文件末尾再执行一次 force(true)，保证删除源文件前数据已落盘
+ * - 复制时计算 CRC32C（{@link Crc32c}），每次 force() 后回调检查点，中断后可以校验已复制部分并续传；
+ *   复制完成时回读校验一次，源文件删除后中断的任务由调用方用 {@link #verify(File, long, long)} 校验目标文件
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public class RelayCopier {
+
+    // 复制块大小（4KB 对齐）
+    public static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    // 每写入多少字节执行一次 force()
+    static final long FORCE_INTERVAL_BYTES = 32L * 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+    };
+
+    /**
+     * 复制结果
+     */
+    public static final class Result {
+        public final long bytes;        // 复制的字节数
+        public final long elapsedMs;    // 总耗时
+        public final long throttledMs;  // 限速等待耗时
+        public final long checksum;     // 文件的 CRC32C
+        public final long resumedFrom;  // 续传起点（0 表示从头复制）
+
+        Result(long bytes, long elapsedMs, long throttledMs, long checksum, long resumedFrom) {
+            this.bytes = bytes;
+            this.elapsedMs = elapsedMs;
+            this.throttledMs = throttledMs;
+            this.checksum = checksum;
+            this.resumedFrom = resumedFrom;
+        }
+
+        /**
+         * 实际 I/O 速率（本次复制的字节数，不含限速等待），字节/秒
+         */
+        public double getIoBytesPerSec() {
+            long ioMs = Math.max(1, elapsedMs - throttledMs);
+            return (bytes - resumedFrom) * 1000.0 / ioMs;
+        }
+    }
+
+    /**
+     * 令牌桶限速器（线程安全，同一存储卷的复制共享）
+     */
+    public static final class RateLimiter {
+        private long bytesPerSec;     // 0 表示不限速
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        /**
+         * @param bytesPerSec 速率上限（字节/秒），&lt;= 0 表示不限速
+         */
+        public synchronized void setRate(long bytesPerSec) {
+            if (this.bytesPerSec != bytesPerSec) {
+                this.bytesPerSec = Math.max(0, bytesPerSec);
+                this.tokens = 0;
+                this.lastRefillNanos = System.nanoTime();
+            }
+        }
+
+        public synchronized long getRate() {
+            return bytesPerSec;
+        }
+
+        /**
+         * 申请写入指定字节数，超出速率时阻塞等待
+         * @return 等待的毫秒数
+         */
+        public long acquire(long bytes) throws IOException {
+            long waitMs;
+            synchronized (this) {
+                if (bytesPerSec <= 0) {
+                    return 0;
+                }
+                long now = System.nanoTime();
+                // 桶容量为 1 秒的配额
+                tokens = Math.min(bytesPerSec, tokens + (now - lastRefillNanos) * bytesPerSec / 1e9);
+                lastRefillNanos = now;
+                tokens -= bytes;
+                if (tokens >= 0) {
+                    return 0;
+                }
+                waitMs = (long) Math.ceil(-tokens * 1000 / bytesPerSec);
+            }
+            try {
+                Thread.sleep(waitMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Copy interrupted");
+            }
+            return waitMs;
+        }
+    }
+
+    /**
+     * 复制检查点回调（在 force() 之后调用，此时目标文件前 offset 字节已落盘）
+     */
+    public interface CheckpointListener {
+        void onCheckpoint(long offset, long checksum);
+    }
+
+    /**
+     * 校验失败（目标文件与源文件不一致），目标文件不可续传，应删除后从头复制
+     */
+    public static class ChecksumMismatchException extends IOException {
+        public ChecksumMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 复制文件（从头开始）
+     * @see #copy(File, File, RateLimiter, long, long, CheckpointListener)
+     */
+    public static Result copy(File source, File target, RateLimiter limiter) throws IOException {
+        return copy(source, target, limiter, 0, 0, null);
+    }
+
+    /**
+     * 复制文件，同时计算 CRC32C
+     * 数据经过缓冲区时累加校验值，不额外读取源文件；完成后回读目标文件（通常命中页缓存）
+     * 校验一致才返回成功，调用方据此删除源文件
+     *
+     * 续传：目标文件已有 resumeOffset 字节且其 CRC32C 等于 resumeChecksum 时，从该位置继续复制；
+     * 否则从头复制
+     *
+     * @param source 源文件
+     * @param target 目标文件
+     * @param limiter 限速器（可为 null）
+     * @param resumeOffset 续传位置（0 表示从头复制）
+     * @param resumeChecksum 目标文件前 resumeOffset 字节的 CRC32C
+     * @param listener 检查点回调（可为 null）
+     * @return 复制结果
+     * @throws ChecksumMismatchException 回读校验不一致
+     * @throws IOException 复制失败（目标文件保留已复制部分，可按最近的检查点续传）
+     */
+    public static Result copy(File source, File target, RateLimiter limiter,
+                              long resumeOffset, long resumeChecksum, CheckpointListener listener) throws IOException {
+        long startMs = System.currentTimeMillis();
+        long throttledMs = 0;
+        ByteBuffer buffer = BUFFER.get();
+        Crc32c crc = new Crc32c();
+
+        long checksum;
+        long size;
+        long resumedFrom = 0;
+        try (RandomAccessFile in = new RandomAccessFile(source, "r");
+             RandomAccessFile out = new RandomAccessFile(target, "rw")) {
+            FileChannel src = in.getChannel();
+            FileChannel dst = out.getChannel();
+            size = src.size();
+
+            long position = 0;
+            if (resumeOffset > 0 && resumeOffset <= size && dst.size() >= resumeOffset) {
+                // 续传前校验目标文件已有部分，同时得到续传所需的校验状态
+                if (update(crc, dst, 0, resumeOffset, buffer) == resumeChecksum) {
+                    position = resumeOffset;
+                    resumedFrom = resumeOffset;
+                } else {
+                    crc.reset();
+                }
+            }
+            dst.truncate(position);
+
+            long unforced = 0;
+            while (position < size) {
+                buffer.clear();
+                buffer.limit((int) Math.min(CHUNK_SIZE, size - position));
+                while (buffer.hasRemaining()) {
+                    if (src.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Source truncated at " + (position + buffer.position()) + "/" + size);
+                    }
+                }
+                buffer.flip();
+                int chunk = buffer.remaining();
+                crc.update(buffer);
+                buffer.flip();
+                if (limiter != null) {
+                    throttledMs += limiter.acquire(chunk);
+                }
+                throttledMs += IoScheduler.getInstance().acquire(IoScheduler.IoClass.COPY, chunk);
+                while (buffer.hasRemaining()) {
+                    dst.write(buffer, position + (chunk - buffer.remaining()));
+                }
+                position += chunk;
+                unforced += chunk;
+                if (unforced >= FORCE_INTERVAL_BYTES) {
+                    dst.force(false);
+                    unforced = 0;
+                    if (listener != null) {
+                        listener.onCheckpoint(position, crc.getValue());
+                    }
+                }
+            }
+            dst.force(true);
+            checksum = crc.getValue();
+
+            // 回读目标文件，校验与复制时计算的值一致
+            verify(dst, size, checksum, buffer);
+        }
+        return new Result(size, System.currentTimeMillis() - startMs, throttledMs, checksum, resumedFrom);
+    }
+
+    /**
+     * 计算文件的 CRC32C（用于之后检测存储介质上的静默损坏）
+     */
+    public static long checksum(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            return update(new Crc32c(), channel, 0, channel.size(), BUFFER.get());
+        }
+    }
+
+    /**
+     * 校验文件（恢复中断的任务时已存在的目标文件）与复制时记录的大小和 CRC32C 一致
+     * @throws ChecksumMismatchException 不一致
+     */
+    public static void verify(File file, long size, long checksum) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            verify(in.getChannel(), size, checksum, BUFFER.get());
+        }
+    }
+
+    private static void verify(FileChannel channel, long size, long checksum, ByteBuffer buffer) throws IOException {
+        if (channel.size() != size) {
+            throw new ChecksumMismatchException("Target size " + channel.size() + " != source size " + size);
+        }
+        long actual = update(new Crc32c(), channel, 0, size, buffer);
+        if (actual != checksum) {
+            throw new ChecksumMismatchException(String.format("CRC32C mismatch: source %08x, target %08x",
+                    checksum, actual));
+        }
+    }
+
+    private static long update(Crc32c crc, FileChannel channel, long from, long to, ByteBuffer buffer)
+            throws IOException {
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(CHUNK_SIZE, to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += read;
+        }
+        return crc.getValue();
+    }
+}
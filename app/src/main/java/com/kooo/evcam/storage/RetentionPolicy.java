@@ -0,0 +1,81 @@
+package com.kooo.evcam.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 保留策略
+ * 决定自动清理时各文件的淘汰顺序：
+ * - 循环录像（TIER_LOOP）最先淘汰
+ * - 事件录像（TIER_EVENT，如远程命令录制）保留指定天数，过期后与循环录像一起淘汰；
+ *   循环录像删完仍不够时才删除未过期的事件录像
+ * - 锁定文件（TIER_LOCKED）不参与自动清理，只有超过锁定文件上限时才删除最旧的锁定文件
+ *
+ * 同一层级内按“加权年龄”（实际年龄 / 摄像头权重）从大到小淘汰，
+ * 例如前摄像头权重为 2 时，其录像的保留时间约为其他摄像头的两倍
+ */
+public class RetentionPolicy {
+
+    // 默认事件录像保留天数
+    public static final int DEFAULT_EVENT_RETENTION_DAYS = 7;
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    public static final RetentionPolicy DEFAULT =
+            new RetentionPolicy(DEFAULT_EVENT_RETENTION_DAYS * DAY_MS, 0, new HashMap<>());
+
+    private final long eventRetentionMs;
+    private final long lockedCapBytes;
+    private final Map<String, Double> cameraWeights;
+
+    /**
+     * @param eventRetentionMs 事件录像保留时长
+     * @param lockedCapBytes 锁定文件总大小上限（&lt;= 0 表示不限制）
+     * @param cameraWeights 摄像头权重（未配置的摄像头权重为 1）
+     */
+    public RetentionPolicy(long eventRetentionMs, long lockedCapBytes, Map<String, Double> cameraWeights) {
+        this.eventRetentionMs = eventRetentionMs;
+        this.lockedCapBytes = lockedCapBytes;
+        this.cameraWeights = new HashMap<>(cameraWeights);
+    }
+
+    public long getEventRetentionMs() {
+        return eventRetentionMs;
+    }
+
+    public long getLockedCapBytes() {
+        return lockedCapBytes;
+    }
+
+    public double getCameraWeight(String camera) {
+        Double weight = cameraWeights.get(camera);
+        return weight != null && weight > 0 ? weight : 1.0;
+    }
+
+    /**
+     * 解析摄像头权重配置
+     * 格式："front:2,back:1.5"，无法解析的项会被忽略
+     */
+    public static Map<String, Double> parseCameraWeights(String spec) {
+        Map<String, Double> weights = new HashMap<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return weights;
+        }
+        for (String item : spec.split(",")) {
+            int colon = item.indexOf(':');
+            String camera = colon > 0 ? item.substring(0, colon).trim() : "";
+            if (camera.isEmpty()) {
+                continue;
+            }
+            try {
+                double weight = Double.parseDouble(item.substring(colon + 1).trim());
+                if (weight > 0) {
+                    weights.put(camera, weight);
+                }
+            } catch (NumberFormatException e) {
+                // 忽略无效项
+            }
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,192 @@
+package com.kooo.evcam.storage;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 预分配的录制分段文件
+ * 分段创建时按预计大小（码率 × 分段时长）一次性分配空间，录制时写入已分配的区域，
+ * 避免 FAT/exFAT 在写入热路径上逐簇扩展文件，也减少长期循环覆盖后的碎片
+ *
+ * 只使用 posix_fallocate（ext4 / f2fs 上分配为未写入的区段，不写数据）；
+ * FAT 系列文件系统没有未写入区段，fallocate 或 setLength 都会在创建时把整段空间写 0，
+ * 耗时随分段大小增长，崩溃后还会留下整段大小的文件，因此在 vfat / exFAT 及不支持 fallocate 的文件系统上不预分配
+ * 关闭时按 MP4 顶层 box 链找到实际数据末尾，截断多余的预分配空间
+ *
+ * 文件描述符交给 MediaMuxer(FileDescriptor, ...) 使用（MediaMuxer 内部会 dup，关闭本对象不影响已释放的 Muxer）
+ */
+public class SegmentFile implements Closeable {
+    private static final String TAG = "SegmentFile";
+
+    // 预计大小的余量（码率波动）
+    private static final double SIZE_MARGIN = 1.05;
+
+    // 没有未写入区段、预分配等同于写 0 的文件系统
+    private static final List<String> ZERO_FILL_FS_TYPES = Arrays.asList("vfat", "msdos", "exfat", "sdfat", "texfat");
+    // 可移动存储卷经这些文件系统转发时看不到底层类型（U盘 / SD 卡通常为 FAT / exFAT）
+    private static final List<String> PASSTHROUGH_FS_TYPES = Arrays.asList("fuse", "fuseblk", "sdcardfs");
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final long preallocatedBytes;
+
+    private SegmentFile(File file, RandomAccessFile raf, long preallocatedBytes) {
+        this.file = file;
+        this.raf = raf;
+        this.preallocatedBytes = preallocatedBytes;
+    }
+
+    /**
+     * 创建分段文件并预分配空间（文件系统不支持或预分配失败时仍返回可用的文件，只是不预分配）
+     * @param file 分段文件
+     * @param bitRate 码率（bps）
+     * @param durationMs 分段时长
+     * @param mounts 挂载表（传入 {@link StorageVolumeMonitor#getMounts()} 的缓存，不在录制线程上重新读取）
+     */
+    public static SegmentFile create(File file, int bitRate, long durationMs, List<MountTable.Mount> mounts)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        long expected = expectedSize(bitRate, durationMs);
+        long allocated = 0;
+        if (expected > 0 && supportsPreallocation(mounts, file.getAbsolutePath())) {
+            allocated = preallocate(raf, expected);
+        }
+        return new SegmentFile(file, raf, allocated);
+    }
+
+    /**
+     * 预计分段大小（字节）
+     */
+    public static long expectedSize(int bitRate, long durationMs) {
+        if (bitRate <= 0 || durationMs <= 0) {
+            return 0;
+        }
+        return (long) (bitRate / 8.0 * durationMs / 1000.0 * SIZE_MARGIN);
+    }
+
+    public FileDescriptor getFileDescriptor() throws IOException {
+        return raf.getFD();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 预分配的字节数（0 表示未预分配）
+     */
+    public long getPreallocatedBytes() {
+        return preallocatedBytes;
+    }
+
+    /**
+     * 截断预分配的多余空间并关闭文件（须在 MediaMuxer.stop() / release() 之后调用）
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (preallocatedBytes > 0) {
+                FileChannel channel = raf.getChannel();
+                long size = channel.size();
+                long end = findMp4End(channel);
+                if (end >= 0 && end < size) {
+                    channel.truncate(end);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 按 MP4 顶层 box 链计算数据末尾
+     * 预分配区域全为 0，遇到非法 box 类型即视为数据结束
+     * @return 数据末尾位置；box 声明延伸到文件末尾（size == 0）或超出文件时返回 -1（不截断）
+     */
+    static long findMp4End(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long offset = 0;
+        while (offset + 8 <= size) {
+            header.clear();
+            header.limit(16);
+            channel.read(header, offset);
+            header.flip();
+            if (header.remaining() < 8) {
+                break;
+            }
+            long boxSize = header.getInt(0) & 0xFFFFFFFFL;
+            if (!isBoxType(header, 4)) {
+                break;
+            }
+            if (boxSize == 1) {
+                if (header.remaining() < 16) {
+                    return -1;
+                }
+                boxSize = header.getLong(8);
+            } else if (boxSize == 0) {
+                return -1;
+            }
+            if (boxSize < 8 || offset + boxSize > size) {
+                return -1;
+            }
+            offset += boxSize;
+        }
+        return offset;
+    }
+
+    private static boolean isBoxType(ByteBuffer buffer, int index) {
+        for (int i = index; i < index + 4; i++) {
+            int c = buffer.get(i) & 0xFF;
+            if (c < 0x20 || c > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 路径所在的文件系统是否适合预分配
+     * FAT 系列返回 false；挂载在可移动存储卷上、经 FUSE / sdcardfs 转发的路径也按 FAT 处理；
+     * 找不到挂载项时返回 true（由 fallocate 自身的结果决定）
+     */
+    static boolean supportsPreallocation(List<MountTable.Mount> mounts, String path) {
+        MountTable.Mount mount = MountTable.findMountFor(mounts, path);
+        if (mount == null) {
+            return true;
+        }
+        if (ZERO_FILL_FS_TYPES.contains(mount.fsType)) {
+            return false;
+        }
+        return !(mount.isRemovableVolume() && PASSTHROUGH_FS_TYPES.contains(mount.fsType));
+    }
+
+    private static long preallocate(RandomAccessFile raf, long bytes) {
+        try {
+            Os.posix_fallocate(raf.getFD(), 0, bytes);
+            return bytes;
+        } catch (ErrnoException | IOException e) {
+            // 不支持 fallocate 时不再退回 setLength（会写 0 扩展文件），直接按普通文件录制
+            AppLog.w(TAG, "Preallocation skipped (" + bytes + " bytes): " + e.getMessage());
+            try {
+                // 部分失败可能已扩展了文件长度，恢复为空文件
+                raf.setLength(0);
+            } catch (IOException ignored) {
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.kooo.evcam.storage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 存储空间预测器
+ * 根据实际写入情况（分段关闭时的文件大小）统计每个存储卷的写入速率，预测剩余可用时间，
+ * 并计算需要预留的空间：每个正在录制的摄像头保留若干个未来分段，加上按删除速度推算的回收提前量
+ *
+ * 纯 Java 实现，时间由调用方传入，可以用模拟负载直接驱动
+ */
+public class SpaceForecaster {
+
+    // 写入速率统计窗口（10分钟）
+    static final long RATE_WINDOW_MS = 10 * 60 * 1000;
+
+    // 窗口内最短统计时长，避免启动初期速率被高估
+    private static final long MIN_RATE_SPAN_MS = 60 * 1000;
+
+    // 平滑系数（单个摄像头的分段大小、删除速度）
+    private static final double EWMA_ALPHA = 0.3;
+
+    // 默认为每个摄像头预留的分段数
+    public static final int DEFAULT_RESERVED_SEGMENTS = 2;
+
+    private static SpaceForecaster instance;
+
+    /**
+     * 预测结果
+     */
+    public static class Forecast {
+        public final long availableBytes;     // 当前可用空间
+        public final double writeBytesPerSec; // 写入速率（字节/秒）
+        public final long secondsToFull;      // 预计写满时间（秒），无写入时为 -1
+        public final int activeCameras;       // 窗口内有写入的摄像头数
+        public final long reserveBytes;       // 建议预留空间
+
+        Forecast(long availableBytes, double writeBytesPerSec, long secondsToFull,
+                 int activeCameras, long reserveBytes) {
+            this.availableBytes = availableBytes;
+            this.writeBytesPerSec = writeBytesPerSec;
+            this.secondsToFull = secondsToFull;
+            this.activeCameras = activeCameras;
+            this.reserveBytes = reserveBytes;
+        }
+    }
+
+    private static class WriteSample {
+        final long timeMs;   // 写入完成时间
+        final long startMs;  // 写入开始时间（完成时间 - 分段时长）
+        final long bytes;
+
+        WriteSample(long timeMs, long startMs, long bytes) {
+            this.timeMs = timeMs;
+            this.startMs = startMs;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class CameraStats {
+        double avgSegmentBytes;
+        long lastWriteMs;
+    }
+
+    private static class VolumeStats {
+        final ArrayDeque<WriteSample> samples = new ArrayDeque<>();
+        long windowBytes;
+        final Map<String, CameraStats> cameras = new HashMap<>();
+        double deleteBytesPerSec;  // 删除速度（0 表示尚未测量）
+    }
+
+    private final Map<String, VolumeStats> volumes = new HashMap<>();
+    private int reservedSegments = DEFAULT_RESERVED_SEGMENTS;
+
+    public static synchronized SpaceForecaster getInstance() {
+        if (instance == null) {
+            instance = new SpaceForecaster();
+        }
+        return instance;
+    }
+
+    /**
+     * 设置每个摄像头预留的分段数
+     */
+    public synchronized void setReservedSegments(int segments) {
+        this.reservedSegments = Math.max(0, segments);
+    }
+
+    /**
+     * 记录一次写入（分段关闭或文件落盘）
+     * @param volume 存储卷
+     * @param camera 摄像头位置
+     * @param bytes 写入字节数
+     * @param durationMs 这些字节的写入时长（分段时长）
+     * @param nowMs 当前时间
+     */
+    public synchronized void onBytesWritten(String volume, String camera, long bytes, long durationMs, long nowMs) {
+        if (bytes <= 0) {
+            return;
+        }
+        VolumeStats stats = getStats(volume);
+        stats.samples.addLast(new WriteSample(nowMs, nowMs - Math.max(0, durationMs), bytes));
+        stats.windowBytes += bytes;
+        trim(stats, nowMs);
+
+        CameraStats cam = stats.cameras.get(camera);
+        if (cam == null) {
+            cam = new CameraStats();
+            cam.avgSegmentBytes = bytes;
+            stats.cameras.put(camera, cam);
+        } else {
+            cam.avgSegmentBytes = EWMA_ALPHA * bytes + (1 - EWMA_ALPHA) * cam.avgSegmentBytes;
+        }
+        cam.lastWriteMs = nowMs;
+    }
+
+    /**
+     * 记录一次删除的耗时，用于估算回收空间所需的提前量
+     * @param volume 存储卷
+     * @param bytes 释放的字节数
+     * @param elapsedMs 删除耗时
+     */
+    public synchronized void onBytesEvicted(String volume, long bytes, long elapsedMs) {
+        if (bytes <= 0) {
+            return;
+        }
+        VolumeStats stats = getStats(volume);
+        double rate = bytes * 1000.0 / Math.max(1, elapsedMs);
+        stats.deleteBytesPerSec = stats.deleteBytesPerSec <= 0
+                ? rate : EWMA_ALPHA * rate + (1 - EWMA_ALPHA) * stats.deleteBytesPerSec;
+    }
+
+    /**
+     * 计算预测结果
+     * @param volume 存储卷
+     * @param availableBytes 当前可用空间
+     * @param nowMs 当前时间
+     */
+    public synchronized Forecast forecast(String volume, long availableBytes, long nowMs) {
+        VolumeStats stats = volumes.get(volume);
+        if (stats == null) {
+            return new Forecast(availableBytes, 0, -1, 0, 0);
+        }
+        trim(stats, nowMs);
+
+        double rate = 0;
+        if (!stats.samples.isEmpty()) {
+            // 统计区间从最早样本的开始时间算起（样本代表的是一段时长内的写入量）
+            long span = Math.min(RATE_WINDOW_MS + MIN_RATE_SPAN_MS, nowMs - stats.samples.peekFirst().startMs);
+            span = Math.max(MIN_RATE_SPAN_MS, span);
+            rate = stats.windowBytes * 1000.0 / span;
+        }
+
+        // 每个活跃摄像头预留 N 个分段
+        int active = 0;
+        long segmentReserve = 0;
+        for (CameraStats cam : stats.cameras.values()) {
+            if (nowMs - cam.lastWriteMs <= RATE_WINDOW_MS) {
+                active++;
+                segmentReserve += (long) (cam.avgSegmentBytes * reservedSegments);
+            }
+        }
+
+        // 删除速度有限时，回收这部分空间期间仍在写入，需要额外预留
+        long leadBytes = 0;
+        if (stats.deleteBytesPerSec > 0 && rate > 0) {
+            double reclaimSeconds = segmentReserve / stats.deleteBytesPerSec;
+            leadBytes = (long) (rate * reclaimSeconds);
+        }
+
+        long secondsToFull = rate > 0 ? (long) (Math.max(0, availableBytes) / rate) : -1;
+        return new Forecast(availableBytes, rate, secondsToFull, active, segmentReserve + leadBytes);
+    }
+
+    private VolumeStats getStats(String volume) {
+        VolumeStats stats = volumes.get(volume);
+        if (stats == null) {
+            stats = new VolumeStats();
+            volumes.put(volume, stats);
+        }
+        return stats;
+    }
+
+    private static void trim(VolumeStats stats, long nowMs) {
+        while (!stats.samples.isEmpty() && nowMs - stats.samples.peekFirst().timeMs > RATE_WINDOW_MS) {
+            stats.windowBytes -= stats.samples.pollFirst().bytes;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.kooo.evcam.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 存储写入测试
+ * 在目标目录中模拟录制：每个摄像头一个写入线程，同时顺序写入各自的文件，并定期 fsync；
+ * 写完后逐个删除测试文件。统计总写入速度、每块写入延迟、fsync 延迟和删除延迟，
+ * 据此给出可持续录制的最大总码率
+ *
+ * 纯 Java 实现，不依赖 Android API；可在 JVM 上对任意本地目录运行（见 StorageBenchmarkTest）
+ */
+public class StorageBenchmark {
+
+    // 每次写入的块大小（与编码器输出 + 复制块大小同一量级）
+    public static final int CHUNK_SIZE = 256 * 1024;
+    // 每写入多少块执行一次 fsync（模拟 Muxer / 复制的回写）
+    private static final int FSYNC_INTERVAL_CHUNKS = 16;
+    // 可用于录制的写入带宽比例（留出余量给复制、删除、碎片化后的降速）
+    private static final double SAFE_BANDWIDTH_RATIO = 0.5;
+    // 单块写入 p99 延迟超过此值时，录制容易丢帧或触发首次写入超时，可用码率再减半
+    private static final double MAX_SAFE_P99_WRITE_MS = 1000;
+
+    private static final String TEST_FILE_PREFIX = ".evcam_bench_";
+
+    /**
+     * 测试进度回调（在测试线程调用）
+     */
+    public interface ProgressListener {
+        void onProgress(int percent);
+    }
+
+    /**
+     * 测试结果
+     */
+    public static final class Result {
+        public final String path;
+        public final long timestamp;
+        public final int writers;
+        public final double aggregateBytesPerSec;   // 所有写入线程的总写入速度
+        public final double minWriterBytesPerSec;   // 最慢的写入线程速度
+        public final double writeP50Ms;
+        public final double writeP99Ms;
+        public final double writeMaxMs;
+        public final double fsyncP50Ms;
+        public final double fsyncP99Ms;
+        public final double deleteAvgMs;
+        public final double deleteMaxMs;
+
+        Result(String path, long timestamp, int writers, double aggregateBytesPerSec, double minWriterBytesPerSec,
+               double writeP50Ms, double writeP99Ms, double writeMaxMs,
+               double fsyncP50Ms, double fsyncP99Ms, double deleteAvgMs, double deleteMaxMs) {
+            this.path = path;
+            this.timestamp = timestamp;
+            this.writers = writers;
+            this.aggregateBytesPerSec = aggregateBytesPerSec;
+            this.minWriterBytesPerSec = minWriterBytesPerSec;
+            this.writeP50Ms = writeP50Ms;
+            this.writeP99Ms = writeP99Ms;
+            this.writeMaxMs = writeMaxMs;
+            this.fsyncP50Ms = fsyncP50Ms;
+            this.fsyncP99Ms = fsyncP99Ms;
+            this.deleteAvgMs = deleteAvgMs;
+            this.deleteMaxMs = deleteMaxMs;
+        }
+
+        /**
+         * 可持续录制的最大总码率（bps）
+         * 取总写入速度的一半；写入延迟过高（会触发首次写入超时 / 丢帧）时再减半
+         */
+        public long getMaxSafeAggregateBitrate() {
+            double bytesPerSec = aggregateBytesPerSec * SAFE_BANDWIDTH_RATIO;
+            if (writeP99Ms > MAX_SAFE_P99_WRITE_MS) {
+                bytesPerSec /= 2;
+            }
+            return (long) (bytesPerSec * 8);
+        }
+
+        /**
+         * 序列化（用于保存到配置）
+         */
+        public String serialize() {
+            return String.format(Locale.US, "1|%s|%d|%d|%.0f|%.0f|%.3f|%.3f|%.3f|%.3f|%.3f|%.3f|%.3f",
+                    path.replace("|", "/"), timestamp, writers, aggregateBytesPerSec, minWriterBytesPerSec,
+                    writeP50Ms, writeP99Ms, writeMaxMs, fsyncP50Ms, fsyncP99Ms, deleteAvgMs, deleteMaxMs);
+        }
+
+        /**
+         * 反序列化
+         * @return 结果，格式不符时返回 null
+         */
+        public static Result deserialize(String s) {
+            if (s == null || !s.startsWith("1|")) {
+                return null;
+            }
+            String[] f = s.split("\\|");
+            if (f.length != 13) {
+                return null;
+            }
+            try {
+                return new Result(f[1], Long.parseLong(f[2]), Integer.parseInt(f[3]),
+                        Double.parseDouble(f[4]), Double.parseDouble(f[5]),
+                        Double.parseDouble(f[6]), Double.parseDouble(f[7]), Double.parseDouble(f[8]),
+                        Double.parseDouble(f[9]), Double.parseDouble(f[10]),
+                        Double.parseDouble(f[11]), Double.parseDouble(f[12]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d 路写入: 总速度 %.1f MB/s（最慢 %.1f MB/s），写入延迟 p50 %.1fms / p99 %.1fms / 最大 %.0fms，"
+                            + "fsync p50 %.1fms / p99 %.1fms，删除平均 %.1fms / 最大 %.0fms",
+                    writers, aggregateBytesPerSec / (1024 * 1024), minWriterBytesPerSec / (1024 * 1024),
+                    writeP50Ms, writeP99Ms, writeMaxMs, fsyncP50Ms, fsyncP99Ms, deleteAvgMs, deleteMaxMs);
+        }
+    }
+
+    private final File dir;
+    private final int writers;
+    private final long bytesPerWriter;
+
+    /**
+     * @param dir 测试目录（位于要测试的存储卷上）
+     * @param writers 并发写入线程数（录制的摄像头数）
+     * @param bytesPerWriter 每个线程写入的字节数
+     */
+    public StorageBenchmark(File dir, int writers, long bytesPerWriter) {
+        this.dir = dir;
+        this.writers = Math.max(1, writers);
+        this.bytesPerWriter = Math.max(CHUNK_SIZE, bytesPerWriter / CHUNK_SIZE * CHUNK_SIZE);
+    }
+
+    /**
+     * 测试所需的空闲空间
+     */
+    public long getRequiredBytes() {
+        return writers * bytesPerWriter;
+    }
+
+    /**
+     * 运行测试（阻塞，耗时取决于存储速度）
+     * 测试文件在结束或失败时都会删除
+     */
+    public Result run(ProgressListener listener) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Benchmark directory not available: " + dir);
+        }
+        File[] files = new File[writers];
+        for (int i = 0; i < writers; i++) {
+            files[i] = new File(dir, TEST_FILE_PREFIX + i);
+        }
+
+        int chunksPerWriter = (int) (bytesPerWriter / CHUNK_SIZE);
+        int fsyncsPerWriter = chunksPerWriter / FSYNC_INTERVAL_CHUNKS + 1;
+        double[][] writeMs = new double[writers][chunksPerWriter];
+        double[][] fsyncMs = new double[writers][fsyncsPerWriter];
+        int[] fsyncCounts = new int[writers];
+        long[] writerNanos = new long[writers];
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(writers);
+
+        try {
+            for (int w = 0; w < writers; w++) {
+                final int index = w;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        long begin = System.nanoTime();
+                        fsyncCounts[index] = writeFile(files[index], chunksPerWriter, writeMs[index], fsyncMs[index],
+                                chunk -> {
+                                    if (index == 0 && listener != null) {
+                                        listener.onProgress(chunk * 90 / chunksPerWriter);
+                                    }
+                                });
+                        writerNanos[index] = System.nanoTime() - begin;
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (InterruptedException e) {
+                        failure.compareAndSet(null, new IOException("Benchmark interrupted"));
+                    } finally {
+                        done.countDown();
+                    }
+                }, "StorageBenchmark-" + w);
+                thread.start();
+            }
+
+            long begin = System.nanoTime();
+            start.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Benchmark interrupted");
+            }
+            long totalNanos = System.nanoTime() - begin;
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            // 删除延迟（大文件删除在 FAT 上需要释放整条簇链）
+            double[] deleteMs = new double[writers];
+            for (int i = 0; i < writers; i++) {
+                long t = System.nanoTime();
+                if (!files[i].delete()) {
+                    throw new IOException("Failed to delete benchmark file: " + files[i]);
+                }
+                deleteMs[i] = (System.nanoTime() - t) / 1e6;
+            }
+            if (listener != null) {
+                listener.onProgress(100);
+            }
+
+            double minWriter = Double.MAX_VALUE;
+            for (long nanos : writerNanos) {
+                minWriter = Math.min(minWriter, bytesPerWriter * 1e9 / Math.max(1, nanos));
+            }
+            double[] allWrites = flatten(writeMs, null);
+            double[] allFsyncs = flatten(fsyncMs, fsyncCounts);
+            return new Result(dir.getAbsolutePath(), System.currentTimeMillis(), writers,
+                    getRequiredBytes() * 1e9 / Math.max(1, totalNanos), minWriter,
+                    percentile(allWrites, 0.50), percentile(allWrites, 0.99), percentile(allWrites, 1.0),
+                    percentile(allFsyncs, 0.50), percentile(allFsyncs, 0.99),
+                    Arrays.stream(deleteMs).average().orElse(0), percentile(deleteMs, 1.0));
+        } finally {
+            for (File file : files) {
+                if (file.exists()) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private interface ChunkListener {
+        void onChunkWritten(int chunk);
+    }
+
+    /**
+     * 顺序写入一个文件
+     * @return fsync 次数
+     */
+    private static int writeFile(File file, int chunks, double[] writeMs, double[] fsyncMs, ChunkListener listener)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        // 随机数据，避免存储控制器对全零数据的压缩优化
+        byte[] random = new byte[CHUNK_SIZE];
+        new Random(file.getName().hashCode()).nextBytes(random);
+        buffer.put(random);
+
+        int fsyncs = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < chunks; i++) {
+                buffer.clear();
+                long t = System.nanoTime();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                writeMs[i] = (System.nanoTime() - t) / 1e6;
+                if ((i + 1) % FSYNC_INTERVAL_CHUNKS == 0 || i == chunks - 1) {
+                    t = System.nanoTime();
+                    channel.force(false);
+                    fsyncMs[fsyncs++] = (System.nanoTime() - t) / 1e6;
+                }
+                listener.onChunkWritten(i + 1);
+            }
+        }
+        return fsyncs;
+    }
+
+    private static double[] flatten(double[][] values, int[] counts) {
+        List<Double> list = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            int n = counts != null ? counts[i] : values[i].length;
+            for (int j = 0; j < n; j++) {
+                list.add(values[i][j]);
+            }
+        }
+        double[] result = new double[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static double percentile(double[] values, double p) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
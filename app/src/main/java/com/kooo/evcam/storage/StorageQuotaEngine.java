@@ -0,0 +1,204 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 存储配额引擎（增量式）
+ * 基于 {@link MediaCatalog} 维护的按类型/存储卷累计大小和淘汰索引执行淘汰，
+ * 不扫描目录，单次检查为 O(1)，淘汰为 O(k log n)（k 为删除的文件数）
+ * 淘汰顺序由 {@link RetentionPolicy} 决定（循环录像 → 事件录像，层级内按加权年龄），锁定文件除外
+ *
+ * 三类约束：
+ * - 容量上限：某类型在某存储卷上的总大小超过限制时执行淘汰，直到降到限制的 (1 - 额外删除比例)
+ * - 低水位：存储卷可用空间低于阈值时，按类型优先级执行淘汰，直到可用空间回到目标值
+ * - 锁定上限：锁定文件总大小超过策略中的上限时，删除最旧的锁定文件
+ *
+ * 线程模型：本类不自带线程，由调用方（StorageCleanupManager）在后台线程串行调用
+ */
+public class StorageQuotaEngine {
+    private static final String TAG = "StorageQuotaEngine";
+
+    // 每批从目录取出的候选文件数
+    private static final int EVICT_BATCH_SIZE = 32;
+
+    /**
+     * 可用空间探测（便于替换为模拟实现）
+     */
+    public interface SpaceProbe {
+        /**
+         * @return 可用空间（字节），失败返回 -1
+         */
+        long getAvailableBytes();
+    }
+
+    /**
+     * 淘汰结果
+     */
+    public static class Result {
+        public long originalSize = 0;  // 淘汰前大小
+        public long deletedSize = 0;   // 删除的大小
+        public long finalSize = 0;     // 淘汰后大小
+        public int deletedCount = 0;   // 删除的文件数
+    }
+
+    private final MediaCatalog catalog;
+    private volatile RetentionPolicy policy = RetentionPolicy.DEFAULT;
+
+    public StorageQuotaEngine(MediaCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    public void setRetentionPolicy(RetentionPolicy policy) {
+        this.policy = policy != null ? policy : RetentionPolicy.DEFAULT;
+    }
+
+    /**
+     * 检查容量上限，超过时删除最旧的未锁定文件
+     * @param type 媒体类型
+     * @param volume 存储卷
+     * @param limitBytes 限制大小（字节），&lt;= 0 表示不限制
+     * @param extraDeleteRatio 额外删除比例（避免频繁触发）
+     * @return 淘汰结果
+     */
+    public Result enforceLimit(int type, String volume, long limitBytes, double extraDeleteRatio) {
+        Result result = new Result();
+        long total = catalog.getTotalSize(type, volume);
+        result.originalSize = total;
+        result.finalSize = total;
+        if (limitBytes <= 0 || total <= limitBytes) {
+            return result;
+        }
+
+        long targetSize = (long) (limitBytes * (1 - extraDeleteRatio));
+        AppLog.d(TAG, "Quota exceeded on " + volume + " (type " + type + "): " + total + " > " + limitBytes +
+                ", evicting down to " + targetSize);
+        evict(evictableSource(type, volume), volume, result, () -> catalog.getTotalSize(type, volume) <= targetSize);
+        result.finalSize = catalog.getTotalSize(type, volume);
+        return result;
+    }
+
+    /**
+     * 检查锁定文件上限，超过时删除最旧的锁定文件
+     * @return 淘汰结果（大小为锁定文件的大小）
+     */
+    public Result enforceLockedCap(int type, String volume) {
+        Result result = new Result();
+        long capBytes = policy.getLockedCapBytes();
+        long lockedSize = catalog.getLockedSize(type, volume);
+        result.originalSize = lockedSize;
+        result.finalSize = lockedSize;
+        if (capBytes <= 0 || lockedSize <= capBytes) {
+            return result;
+        }
+
+        AppLog.d(TAG, "Locked files exceed cap on " + volume + " (type " + type + "): " + lockedSize + " > " + capBytes);
+        evict(count -> catalog.getOldestLocked(type, volume, count), volume, result,
+                () -> catalog.getLockedSize(type, volume) <= capBytes);
+        result.finalSize = catalog.getLockedSize(type, volume);
+        return result;
+    }
+
+    /**
+     * 检查低水位，可用空间不足时按顺序删除各类型最旧的未锁定文件
+     * @param types 参与淘汰的媒体类型（按优先级，靠前的先删）
+     * @param volume 存储卷
+     * @param probe 可用空间探测
+     * @param lowWatermarkBytes 低水位阈值，可用空间低于此值时触发
+     * @param targetFreeBytes 淘汰目标，删除到可用空间不低于此值为止
+     * @return 各类型的淘汰结果（与 types 一一对应）
+     */
+    public Result[] enforceFreeSpace(int[] types, String volume, SpaceProbe probe,
+                                     long lowWatermarkBytes, long targetFreeBytes) {
+        Result[] results = new Result[types.length];
+        for (int i = 0; i < types.length; i++) {
+            results[i] = new Result();
+            results[i].originalSize = catalog.getTotalSize(types[i], volume);
+            results[i].finalSize = results[i].originalSize;
+        }
+
+        long available = probe.getAvailableBytes();
+        if (available < 0 || available >= lowWatermarkBytes) {
+            return results;
+        }
+
+        AppLog.w(TAG, "Low space on " + volume + ": " + available + " bytes available, target " + targetFreeBytes);
+        // 删除时按已删除字节推算可用空间，避免每删一个文件都执行一次 statfs
+        final long startAvailable = available;
+        for (int i = 0; i < types.length; i++) {
+            final Result[] all = results;
+            evict(evictableSource(types[i], volume), volume, results[i],
+                    () -> startAvailable + sumDeleted(all) >= targetFreeBytes);
+            results[i].finalSize = catalog.getTotalSize(types[i], volume);
+            if (startAvailable + sumDeleted(results) >= targetFreeBytes) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    private interface StopCondition {
+        boolean reached();
+    }
+
+    private interface CandidateSource {
+        List<MediaCatalog.Entry> next(int count);
+    }
+
+    private CandidateSource evictableSource(int type, String volume) {
+        RetentionPolicy current = policy;
+        return count -> catalog.selectEvictionCandidates(type, volume, current, System.currentTimeMillis(), count);
+    }
+
+    /**
+     * 按候选顺序删除文件，直到满足停止条件或没有可删除的文件
+     */
+    private void evict(CandidateSource source, String volume, Result result, StopCondition done) {
+        Set<String> failed = new HashSet<>();
+        while (!done.reached()) {
+            List<MediaCatalog.Entry> candidates = source.next(EVICT_BATCH_SIZE + failed.size());
+            boolean progressed = false;
+            for (MediaCatalog.Entry entry : candidates) {
+                if (done.reached()) {
+                    return;
+                }
+                if (failed.contains(entry.path)) {
+                    continue;
+                }
+                File file = entry.getFile();
+                // 录制写入延迟升高时让出存储设备（FAT 上删除大文件会阻塞写入）
+                IoScheduler.getInstance().acquire(IoScheduler.IoClass.DELETE, entry.size);
+                if (file.delete() || !file.exists()) {
+                    // 文件已不存在时同样从目录移除（目录与磁盘不一致）
+                    catalog.onMediaFileDeleted(file);
+                    // 分区中最后一个文件被删除时，整个分区目录一并删除
+                    MediaLayout.pruneEmptyPartition(file);
+                    result.deletedSize += entry.size;
+                    result.deletedCount++;
+                    progressed = true;
+                    AppLog.d(TAG, "Evicted: " + file.getName() + " (" + entry.size + " bytes)");
+                } else {
+                    failed.add(entry.path);
+                    AppLog.w(TAG, "Failed to evict: " + file.getName());
+                }
+            }
+            if (!progressed) {
+                // 没有可删除的文件（全部锁定或删除失败）
+                AppLog.w(TAG, "No more evictable files on " + volume);
+                return;
+            }
+        }
+    }
+
+    private static long sumDeleted(Result[] results) {
+        long sum = 0;
+        for (Result r : results) {
+            sum += r.deletedSize;
+        }
+        return sum;
+    }
+}
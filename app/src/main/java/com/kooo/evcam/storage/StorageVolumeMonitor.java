@@ -0,0 +1,253 @@
+package com.kooo.evcam.storage;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+import android.os.StatFs;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 存储卷监视器
+ * - 缓存挂载表（{@link MountTable}）和各路径的空间统计（StatFs），在短时间内重复查询时直接返回缓存
+ * - 监听存储卷挂载 / 卸载 / 弹出广播，立即清空缓存并通知监听者，
+ *   录制可以在U盘被拔出、写入失败之前停止或切换到内部存储
+ *
+ * 缓存不依赖 Context，未调用 {@link #start(Context)} 时仍可使用（仅按 TTL 过期）
+ */
+public class StorageVolumeMonitor {
+    private static final String TAG = "StorageVolumeMonitor";
+
+    // 挂载表缓存有效期
+    private static final long MOUNTS_TTL_MS = 5000;
+    // 空间统计缓存有效期
+    private static final long SPACE_TTL_MS = 2000;
+
+    /**
+     * 存储卷变化监听
+     * 在主线程回调
+     */
+    public interface VolumeListener {
+        /**
+         * @param volume 存储卷根目录
+         * @param available 存储卷是否可用（挂载为 true；卸载、弹出、移除为 false）
+         */
+        void onVolumeChanged(File volume, boolean available);
+    }
+
+    private static final class SpaceInfo {
+        final long available;
+        final long total;
+        final long timestamp;
+
+        SpaceInfo(long available, long total, long timestamp) {
+            this.available = available;
+            this.total = total;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static StorageVolumeMonitor instance;
+
+    private final List<VolumeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, SpaceInfo> spaceCache = new HashMap<>();
+    // 已发出弹出请求、尚未卸载完成的存储卷（此时目录仍可访问，但不应再开始写入）
+    private final Set<String> ejectingVolumes = new HashSet<>();
+    private List<MountTable.Mount> mounts;
+    private long mountsLoadedAt;
+
+    private Context context;
+    private BroadcastReceiver mediaReceiver;
+
+    private StorageVolumeMonitor() {
+    }
+
+    public static synchronized StorageVolumeMonitor getInstance() {
+        if (instance == null) {
+            instance = new StorageVolumeMonitor();
+        }
+        return instance;
+    }
+
+    /**
+     * 开始监听存储卷广播（重复调用无影响）
+     */
+    public synchronized void start(Context context) {
+        if (mediaReceiver != null) {
+            return;
+        }
+        this.context = context.getApplicationContext();
+        mediaReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onMediaEvent(intent);
+            }
+        };
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_MEDIA_MOUNTED);
+        filter.addAction(Intent.ACTION_MEDIA_UNMOUNTED);
+        filter.addAction(Intent.ACTION_MEDIA_EJECT);
+        filter.addAction(Intent.ACTION_MEDIA_REMOVED);
+        filter.addAction(Intent.ACTION_MEDIA_BAD_REMOVAL);
+        filter.addDataScheme("file");
+        this.context.registerReceiver(mediaReceiver, filter);
+        AppLog.d(TAG, "存储卷广播接收器已注册");
+    }
+
+    public synchronized void stop() {
+        if (mediaReceiver == null) {
+            return;
+        }
+        try {
+            context.unregisterReceiver(mediaReceiver);
+        } catch (Exception e) {
+            AppLog.w(TAG, "注销存储卷广播接收器时出错: " + e.getMessage());
+        }
+        mediaReceiver = null;
+    }
+
+    public void addListener(VolumeListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(VolumeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 获取挂载表（缓存）
+     */
+    public synchronized List<MountTable.Mount> getMounts() {
+        long now = System.currentTimeMillis();
+        if (mounts == null || now - mountsLoadedAt > MOUNTS_TTL_MS) {
+            mounts = MountTable.read();
+            mountsLoadedAt = now;
+        }
+        return mounts;
+    }
+
+    /**
+     * 获取当前挂载的可移动存储卷（U盘 / SD 卡），不含正在弹出的
+     */
+    public synchronized List<File> getRemovableVolumes() {
+        List<File> volumes = MountTable.removableVolumes(getMounts());
+        volumes.removeIf(v -> ejectingVolumes.contains(v.getAbsolutePath()));
+        return volumes;
+    }
+
+    /**
+     * 路径是否位于正在弹出或已移除的存储卷上
+     */
+    public synchronized boolean isEjecting(File path) {
+        if (path == null || ejectingVolumes.isEmpty()) {
+            return false;
+        }
+        String p = path.getAbsolutePath();
+        for (String volume : ejectingVolumes) {
+            if (p.equals(volume) || p.startsWith(volume + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取可用空间（缓存）
+     * @return 可用空间（字节），获取失败返回 -1
+     */
+    public long getAvailableSpace(File path) {
+        SpaceInfo info = getSpaceInfo(path);
+        return info != null ? info.available : -1;
+    }
+
+    /**
+     * 获取总空间（缓存）
+     * @return 总空间（字节），获取失败返回 -1
+     */
+    public long getTotalSpace(File path) {
+        SpaceInfo info = getSpaceInfo(path);
+        return info != null ? info.total : -1;
+    }
+
+    /**
+     * 清空所有缓存（存储卷变化、或刚写入 / 删除大量数据需要准确数值时调用）
+     */
+    public synchronized void invalidate() {
+        mounts = null;
+        spaceCache.clear();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private SpaceInfo getSpaceInfo(File path) {
+        if (path == null) {
+            return null;
+        }
+        String key = path.getAbsolutePath();
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            SpaceInfo cached = spaceCache.get(key);
+            if (cached != null && now - cached.timestamp <= SPACE_TTL_MS) {
+                return cached;
+            }
+        }
+        if (!path.exists()) {
+            return null;
+        }
+
+        // StatFs 在锁外执行（U盘上可能较慢）
+        SpaceInfo info;
+        try {
+            StatFs stat = new StatFs(key);
+            long blockSize = stat.getBlockSizeLong();
+            info = new SpaceInfo(stat.getAvailableBlocksLong() * blockSize, stat.getBlockCountLong() * blockSize, now);
+        } catch (Exception e) {
+            AppLog.e(TAG, "获取存储空间信息失败: " + key, e);
+            return null;
+        }
+        synchronized (this) {
+            spaceCache.put(key, info);
+        }
+        return info;
+    }
+
+    private void onMediaEvent(Intent intent) {
+        String action = intent.getAction();
+        Uri data = intent.getData();
+        if (action == null || data == null || data.getPath() == null) {
+            return;
+        }
+        File volume = new File(data.getPath());
+        boolean available = Intent.ACTION_MEDIA_MOUNTED.equals(action);
+        synchronized (this) {
+            if (available) {
+                ejectingVolumes.remove(volume.getAbsolutePath());
+            } else {
+                ejectingVolumes.add(volume.getAbsolutePath());
+            }
+            invalidate();
+        }
+        AppLog.d(TAG, "存储卷" + (available ? "已挂载" : "不可用") + ": " + volume.getAbsolutePath() + " (" + action + ")");
+
+        for (VolumeListener listener : listeners) {
+            try {
+                listener.onVolumeChanged(volume, available);
+            } catch (Exception e) {
+                AppLog.e(TAG, "存储卷监听回调出错", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 中转传输日志
+ * 以追加方式记录每个传输任务的状态变化（待传输 → 传输中 → 完成/失败），
+ * 进程被杀或断电重启后可以从日志恢复未完成的任务
+ *
+ * 记录格式：op(byte) + id(long) + 附加字段
+ * - ENQUEUE：源路径、目标路径（写入后 fsync）
+ * - START：无
+ * - CHECKPOINT：已复制并落盘的字节数、这部分数据的 CRC32C（复制中断后从此处续传）
+ * - DONE / FAILED：无（写入后 fsync）
+ *
+ * 所有任务完成时日志被清空；否则变更条数过多时重写为只包含未完成任务的精简日志
+ */
+public class TransferJournal {
+    private static final String TAG = "TransferJournal";
+
+    private static final byte OP_ENQUEUE = 1;
+    private static final byte OP_START = 2;
+    private static final byte OP_DONE = 3;
+    private static final byte OP_FAILED = 4;
+    private static final byte OP_CHECKPOINT = 5;
+
+    // 日志记录数超过此值（且明显多于未完成任务所需）时重写
+    private static final int MAX_JOURNAL_OPS = 500;
+
+    /**
+     * 任务状态
+     */
+    public enum State {
+        PENDING,    // 待传输
+        IN_FLIGHT   // 传输中（重启后需要重新传输）
+    }
+
+    /**
+     * 复制检查点：目标文件前 offset 字节已落盘，其 CRC32C 为 checksum
+     */
+    public static final class Checkpoint {
+        public final long offset;
+        public final long checksum;
+
+        public Checkpoint(long offset, long checksum) {
+            this.offset = offset;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * 未完成的传输记录
+     */
+    public static final class Record {
+        public final long id;
+        public final String sourcePath;
+        public final String targetPath;
+        State state;
+        Checkpoint checkpoint;
+
+        Record(long id, String sourcePath, String targetPath) {
+            this.id = id;
+            this.sourcePath = sourcePath;
+            this.targetPath = targetPath;
+            this.state = State.PENDING;
+        }
+
+        public State getState() {
+            return state;
+        }
+    }
+
+    private final File journalFile;
+    private final Map<Long, Record> active = new LinkedHashMap<>();
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long nextId = 1;
+    private int journalOps = 0;
+
+    public TransferJournal(File journalFile) {
+        this.journalFile = journalFile;
+        File dir = journalFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            AppLog.e(TAG, "Failed to create journal dir: " + dir.getAbsolutePath());
+        }
+        load();
+    }
+
+    /**
+     * 记录新任务
+     * @return 任务ID
+     */
+    public synchronized long enqueue(String sourcePath, String targetPath) {
+        long id = nextId++;
+        active.put(id, new Record(id, sourcePath, targetPath));
+        try {
+            DataOutputStream o = output();
+            o.writeByte(OP_ENQUEUE);
+            o.writeLong(id);
+            o.writeUTF(sourcePath);
+            o.writeUTF(targetPath);
+            sync();
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to journal enqueue: " + sourcePath, e);
+            closeOutput();
+        }
+        return id;
+    }
+
+    /**
+     * 标记任务开始传输
+     */
+    public synchronized void markStarted(long id) {
+        Record record = active.get(id);
+        if (record == null) {
+            return;
+        }
+        record.state = State.IN_FLIGHT;
+        append(OP_START, id, false);
+    }
+
+    /**
+     * 记录复制检查点（仅 flush，不 fsync：丢失检查点只会导致从头复制）
+     * 调用方须保证目标文件的这部分数据已经落盘
+     */
+    public synchronized void checkpoint(long id, long offset, long checksum) {
+        Record record = active.get(id);
+        if (record == null) {
+            return;
+        }
+        record.checkpoint = new Checkpoint(offset, checksum);
+        try {
+            DataOutputStream o = output();
+            o.writeByte(OP_CHECKPOINT);
+            o.writeLong(id);
+            o.writeLong(offset);
+            o.writeLong(checksum);
+            o.flush();
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to append transfer checkpoint", e);
+            closeOutput();
+        }
+        maybeRewrite();
+    }
+
+    /**
+     * 获取任务的最近检查点
+     * @return 检查点，没有时返回 null
+     */
+    public synchronized Checkpoint getCheckpoint(long id) {
+        Record record = active.get(id);
+        return record != null ? record.checkpoint : null;
+    }
+
+    /**
+     * 清除任务的检查点（目标文件校验失败、需要从头复制时调用）
+     */
+    public synchronized void clearCheckpoint(long id) {
+        Record record = active.get(id);
+        if (record != null && record.checkpoint != null) {
+            checkpoint(id, 0, 0);
+            record.checkpoint = null;
+        }
+    }
+
+    /**
+     * 标记任务完成
+     */
+    public synchronized void markDone(long id) {
+        finish(id, OP_DONE);
+    }
+
+    /**
+     * 标记任务失败（放弃重试）
+     */
+    public synchronized void markFailed(long id) {
+        finish(id, OP_FAILED);
+    }
+
+    /**
+     * 获取所有未完成的任务（按加入顺序）
+     */
+    public synchronized List<Record> getActiveRecords() {
+        return new ArrayList<>(active.values());
+    }
+
+    /**
+     * 是否有未完成任务的源文件为指定路径
+     */
+    public synchronized boolean isActiveSource(String sourcePath) {
+        for (Record record : active.values()) {
+            if (record.sourcePath.equals(sourcePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int getActiveCount() {
+        return active.size();
+    }
+
+    public synchronized void close() {
+        closeOutput();
+    }
+
+    // ==================== 内部实现 ====================
+
+    private void finish(long id, byte op) {
+        if (active.remove(id) == null) {
+            return;
+        }
+        if (active.isEmpty()) {
+            // 全部完成：清空日志
+            closeOutput();
+            if (journalFile.exists() && !journalFile.delete()) {
+                AppLog.w(TAG, "Failed to delete transfer journal");
+            }
+            journalOps = 0;
+            return;
+        }
+        append(op, id, true);
+        maybeRewrite();
+    }
+
+    private void maybeRewrite() {
+        // 每个未完成任务最多对应 3 条记录（ENQUEUE、START、CHECKPOINT）
+        if (journalOps > MAX_JOURNAL_OPS && journalOps > active.size() * 3) {
+            rewrite();
+        }
+    }
+
+    private void append(byte op, long id, boolean durable) {
+        try {
+            DataOutputStream o = output();
+            o.writeByte(op);
+            o.writeLong(id);
+            if (durable) {
+                sync();
+            } else {
+                o.flush();
+            }
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to append transfer journal", e);
+            closeOutput();
+        }
+    }
+
+    private DataOutputStream output() throws IOException {
+        if (out == null) {
+            fileOut = new FileOutputStream(journalFile, true);
+            out = new DataOutputStream(fileOut);
+        }
+        journalOps++;
+        return out;
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    private void closeOutput() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    private void load() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException eof) {
+                    break;
+                }
+                long id = in.readLong();
+                switch (op) {
+                    case OP_ENQUEUE:
+                        active.put(id, new Record(id, in.readUTF(), in.readUTF()));
+                        break;
+                    case OP_START: {
+                        Record record = active.get(id);
+                        if (record != null) {
+                            record.state = State.IN_FLIGHT;
+                        }
+                        break;
+                    }
+                    case OP_CHECKPOINT: {
+                        long offset = in.readLong();
+                        long checksum = in.readLong();
+                        Record record = active.get(id);
+                        if (record != null) {
+                            record.checkpoint = offset > 0 ? new Checkpoint(offset, checksum) : null;
+                        }
+                        break;
+                    }
+                    case OP_DONE:
+                    case OP_FAILED:
+                        active.remove(id);
+                        break;
+                    default:
+                        throw new IOException("Unknown transfer journal op: " + op);
+                }
+                nextId = Math.max(nextId, id + 1);
+                journalOps++;
+                validLength = journalFile.length() - in.available();
+            }
+        } catch (IOException e) {
+            // 尾部记录不完整（写入时断电），截断到最后一条完整记录
+            AppLog.w(TAG, "Transfer journal truncated at " + validLength + " bytes: " + e.getMessage());
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                raf.setLength(validLength);
+            } catch (IOException ex) {
+                AppLog.e(TAG, "Failed to truncate transfer journal", ex);
+            }
+        }
+        AppLog.d(TAG, "Transfer journal loaded: " + active.size() + " unfinished task(s)");
+    }
+
+    /**
+     * 重写日志，只保留未完成的任务
+     */
+    private void rewrite() {
+        closeOutput();
+        File tmp = new File(journalFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream o = new DataOutputStream(fos)) {
+            for (Record record : active.values()) {
+                o.writeByte(OP_ENQUEUE);
+                o.writeLong(record.id);
+                o.writeUTF(record.sourcePath);
+                o.writeUTF(record.targetPath);
+                if (record.state == State.IN_FLIGHT) {
+                    o.writeByte(OP_START);
+                    o.writeLong(record.id);
+                }
+                if (record.checkpoint != null) {
+                    o.writeByte(OP_CHECKPOINT);
+                    o.writeLong(record.id);
+                    o.writeLong(record.checkpoint.offset);
+                    o.writeLong(record.checkpoint.checksum);
+                }
+            }
+            o.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            AppLog.e(TAG, "Failed to rewrite transfer journal", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(journalFile)) {
+            AppLog.e(TAG, "Failed to replace transfer journal");
+            tmp.delete();
+            return;
+        }
+        journalOps = 0;
+        for (Record record : active.values()) {
+            journalOps += 1 + (record.state == State.IN_FLIGHT ? 1 : 0) + (record.checkpoint != null ? 1 : 0);
+        }
+    }
+}
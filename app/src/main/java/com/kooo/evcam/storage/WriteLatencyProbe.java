@@ -0,0 +1,215 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.AppLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 录制存储写入延迟探测
+ * MediaMuxer.writeSampleData 只是写入缓冲区，MediaRecorder 的写入在系统进程中完成、应用无法测量，
+ * 两者的调用耗时都不能反映存储设备的实际写入延迟
+ * 录制期间在录制目录中定期写入一小块数据并 force()，把同步写入耗时上报给 {@link IoScheduler}：
+ * 存储设备回写积压或降速时，同步写入耗时随之升高
+ *
+ * 探测文件循环覆盖 64KB，每次写入 4KB，对录制写入的影响可以忽略
+ * 探测卡住（force() 长时间不返回）时，按已等待的时间持续上报，避免调度器把停止上报当作未在录制
+ * 按目录引用计数：多次 start 同一目录只探测一次
+ *
+ * 纯 Java 实现，不依赖 Android API
+ */
+public class WriteLatencyProbe {
+    private static final String TAG = "WriteLatencyProbe";
+
+    // 探测文件名（隐藏文件：媒体目录对账按扩展名忽略，接管中转临时文件时跳过）
+    static final String PROBE_FILE_NAME = ".write_probe";
+    // 每次写入的字节数
+    private static final int BLOCK_SIZE = 4 * 1024;
+    // 探测文件大小（循环覆盖）
+    private static final int FILE_SIZE = 64 * 1024;
+    // 探测间隔，须小于 IoScheduler 判断未在录制的时间
+    private static final long PROBE_INTERVAL_MS = 500;
+
+    private static WriteLatencyProbe instance;
+
+    private final IoScheduler scheduler;
+    private final long intervalMs;
+    // 以下字段由 this 保护
+    private final Map<String, Target> targets = new HashMap<>();
+    private ScheduledExecutorService ticker;
+    private ExecutorService prober;
+
+    /**
+     * 探测目标（一个录制目录）
+     */
+    private static final class Target {
+        final File file;
+        int refCount;
+        RandomAccessFile raf;
+        long position;
+        // 正在进行的探测的开始时间（0 表示空闲），由探测线程写入、定时线程读取
+        volatile long probeStartNs;
+
+        Target(File file) {
+            this.file = file;
+        }
+    }
+
+    WriteLatencyProbe(IoScheduler scheduler, long intervalMs) {
+        this.scheduler = scheduler;
+        this.intervalMs = intervalMs;
+    }
+
+    public static synchronized WriteLatencyProbe getInstance() {
+        if (instance == null) {
+            instance = new WriteLatencyProbe(IoScheduler.getInstance(), PROBE_INTERVAL_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * 开始探测录制目录（录制开始时调用）
+     */
+    public synchronized void start(File dir) {
+        if (dir == null) {
+            return;
+        }
+        String key = dir.getAbsolutePath();
+        Target target = targets.get(key);
+        if (target == null) {
+            target = new Target(new File(dir, PROBE_FILE_NAME));
+            targets.put(key, target);
+        }
+        target.refCount++;
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "EVCam-WriteProbe-tick");
+                thread.setDaemon(true);
+                return thread;
+            });
+            prober = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "EVCam-WriteProbe");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleWithFixedDelay(this::tick, 0, intervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 停止探测录制目录（录制停止时调用，与 start 成对）
+     */
+    public synchronized void stop(File dir) {
+        if (dir == null) {
+            return;
+        }
+        Target target = targets.get(dir.getAbsolutePath());
+        if (target == null || --target.refCount > 0) {
+            return;
+        }
+        targets.remove(dir.getAbsolutePath());
+        // 在探测线程上关闭，不与正在进行的探测并发
+        ExecutorService current = prober;
+        if (current != null) {
+            current.execute(() -> close(target));
+        }
+        if (targets.isEmpty()) {
+            ticker.shutdownNow();
+            ticker = null;
+            prober.shutdown();
+            prober = null;
+        }
+    }
+
+    public synchronized boolean isProbing(File dir) {
+        return dir != null && targets.containsKey(dir.getAbsolutePath());
+    }
+
+    /**
+     * 定时线程：上一次探测仍未完成时上报已等待的时间，否则发起下一次探测
+     */
+    private void tick() {
+        Target[] snapshot;
+        ExecutorService current;
+        synchronized (this) {
+            snapshot = targets.values().toArray(new Target[0]);
+            current = prober;
+        }
+        if (current == null) {
+            return;
+        }
+        boolean busy = false;
+        for (Target target : snapshot) {
+            long startNs = target.probeStartNs;
+            if (startNs != 0) {
+                scheduler.reportWriteLatency(System.nanoTime() - startNs);
+                busy = true;
+            }
+        }
+        if (!busy) {
+            try {
+                current.execute(() -> {
+                    for (Target target : snapshot) {
+                        probe(target);
+                    }
+                });
+            } catch (Exception e) {
+                // 已停止
+            }
+        }
+    }
+
+    /**
+     * 写入一块数据并 force()，上报耗时（探测线程）
+     */
+    private void probe(Target target) {
+        synchronized (this) {
+            if (targets.get(target.file.getParentFile().getAbsolutePath()) != target) {
+                return;
+            }
+        }
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        long startNs = System.nanoTime();
+        block.putLong(0, startNs);
+        target.probeStartNs = startNs;
+        try {
+            if (target.raf == null) {
+                target.raf = new RandomAccessFile(target.file, "rw");
+            }
+            FileChannel channel = target.raf.getChannel();
+            while (block.hasRemaining()) {
+                channel.write(block, target.position + block.position());
+            }
+            channel.force(false);
+            target.position = (target.position + BLOCK_SIZE) % FILE_SIZE;
+            scheduler.reportWriteLatency(System.nanoTime() - startNs);
+        } catch (IOException e) {
+            // 录制目录不可写（存储被移除等）：关闭后下次重新打开，不上报
+            AppLog.w(TAG, "Write probe failed in " + target.file.getParent() + ": " + e.getMessage());
+            close(target);
+        } finally {
+            target.probeStartNs = 0;
+        }
+    }
+
+    private static void close(Target target) {
+        if (target.raf != null) {
+            try {
+                target.raf.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            target.raf = null;
+        }
+        target.file.delete();
+    }
+}
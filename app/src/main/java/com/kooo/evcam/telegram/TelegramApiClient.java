@@ -1,6 +1,8 @@
 package com.kooo.evcam.telegram;
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemoteApiException;
+import com.kooo.evcam.remote.upload.ScheduledFileBody;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
@@ -62,12 +64,12 @@ public class TelegramApiClient {
             AppLog.d(TAG, "getMe 响应: " + responseBody);
 
             if (!response.isSuccessful()) {
-                throw new IOException("getMe 失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("getMe ", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
             if (!jsonResponse.get("ok").getAsBoolean()) {
-                throw new IOException("getMe 失败: " + responseBody);
+                throw RemoteApiException.rejected("getMe 失败: " + responseBody);
             }
 
             return jsonResponse.getAsJsonObject("result");
@@ -101,12 +103,12 @@ public class TelegramApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
 
             if (!response.isSuccessful()) {
-                throw new IOException("getUpdates 失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("getUpdates ", response, responseBody);
             }
 
             JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
             if (!jsonResponse.get("ok").getAsBoolean()) {
-                throw new IOException("getUpdates 失败: " + responseBody);
+                throw RemoteApiException.rejected("getUpdates 失败: " + responseBody);
             }
 
             return jsonResponse.getAsJsonArray("result");
@@ -139,7 +141,7 @@ public class TelegramApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送消息失败，响应: " + responseBody);
-                throw new IOException("发送消息失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送消息", response, responseBody);
             }
             AppLog.d(TAG, "消息发送成功");
         }
@@ -158,9 +160,9 @@ public class TelegramApiClient {
     public void sendPhoto(long chatId, File photoFile, String caption) throws IOException {
         String url = buildUrl("sendPhoto");
 
-        RequestBody fileBody = RequestBody.create(
-                MediaType.parse("image/jpeg"),
-                photoFile
+        RequestBody fileBody = new ScheduledFileBody(
+                photoFile,
+                MediaType.parse("image/jpeg")
         );
 
         MultipartBody.Builder builder = new MultipartBody.Builder()
@@ -181,7 +183,7 @@ public class TelegramApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送图片失败，响应: " + responseBody);
-                throw new IOException("发送图片失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送图片", response, responseBody);
             }
             AppLog.d(TAG, "图片发送成功: " + photoFile.getName());
         }
@@ -200,9 +202,9 @@ public class TelegramApiClient {
     public void sendVideo(long chatId, File videoFile, File thumbnailFile, int duration, String caption) throws IOException {
         String url = buildUrl("sendVideo");
 
-        RequestBody videoBody = RequestBody.create(
-                MediaType.parse("video/mp4"),
-                videoFile
+        RequestBody videoBody = new ScheduledFileBody(
+                videoFile,
+                MediaType.parse("video/mp4")
         );
 
         MultipartBody.Builder builder = new MultipartBody.Builder()
@@ -213,9 +215,9 @@ public class TelegramApiClient {
                 .addFormDataPart("supports_streaming", "true");
 
         if (thumbnailFile != null && thumbnailFile.exists()) {
-            RequestBody thumbBody = RequestBody.create(
-                    MediaType.parse("image/jpeg"),
-                    thumbnailFile
+            RequestBody thumbBody = new ScheduledFileBody(
+                    thumbnailFile,
+                    MediaType.parse("image/jpeg")
             );
             builder.addFormDataPart("thumbnail", thumbnailFile.getName(), thumbBody);
         }
@@ -233,7 +235,7 @@ public class TelegramApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送视频失败，响应: " + responseBody);
-                throw new IOException("发送视频失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送视频", response, responseBody);
             }
             AppLog.d(TAG, "视频发送成功: " + videoFile.getName());
         }
@@ -252,9 +254,9 @@ public class TelegramApiClient {
     public void sendDocument(long chatId, File file, String caption) throws IOException {
         String url = buildUrl("sendDocument");
 
-        RequestBody fileBody = RequestBody.create(
-                MediaType.parse("application/octet-stream"),
-                file
+        RequestBody fileBody = new ScheduledFileBody(
+                file,
+                MediaType.parse("application/octet-stream")
         );
 
         MultipartBody.Builder builder = new MultipartBody.Builder()
@@ -275,12 +277,56 @@ public class TelegramApiClient {
             String responseBody = response.body() != null ? response.body().string() : "";
             if (!response.isSuccessful()) {
                 AppLog.e(TAG, "发送文件失败，响应: " + responseBody);
-                throw new IOException("发送文件失败: " + response.code() + ", " + responseBody);
+                throw RemoteApiException.fromResponse("发送文件", response, responseBody);
             }
             AppLog.d(TAG, "文件发送成功: " + file.getName());
         }
     }
 
+    /**
+     * 发送文件的一段（分段发送超过上限的文件）
+     * 按 Telegram 返回的文件大小校验该段是否完整
+     * @param fileName 该段的文件名
+     */
+    public void sendDocumentSegment(long chatId, File file, long offset, long length, String fileName,
+                                    String caption) throws IOException {
+        String url = buildUrl("sendDocument");
+
+        RequestBody segmentBody = new ScheduledFileBody(file, offset, length,
+                MediaType.parse("application/octet-stream"));
+
+        MultipartBody.Builder builder = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("chat_id", String.valueOf(chatId))
+                .addFormDataPart("document", fileName, segmentBody);
+
+        if (caption != null && !caption.isEmpty()) {
+            builder.addFormDataPart("caption", caption);
+        }
+
+        Request request = new Request.Builder()
+                .url(url)
+                .post(builder.build())
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            String responseBody = response.body() != null ? response.body().string() : "";
+            if (!response.isSuccessful()) {
+                AppLog.e(TAG, "发送文件失败，响应: " + responseBody);
+                throw RemoteApiException.fromResponse("发送文件", response, responseBody);
+            }
+            JsonObject result = gson.fromJson(responseBody, JsonObject.class).getAsJsonObject("result");
+            JsonObject document = result != null ? result.getAsJsonObject("document") : null;
+            if (document != null && document.has("file_size")
+                    && document.get("file_size").getAsLong() != length) {
+                // 该段在传输中被截断，重新发送
+                throw new RemoteApiException("发送文件失败: 大小不一致 " + document.get("file_size").getAsLong()
+                        + " != " + length, RemoteApiException.NO_HTTP_CODE, 0, true);
+            }
+            AppLog.d(TAG, "文件段发送成功: " + fileName);
+        }
+    }
+
     /**
      * 发送聊天操作（如"正在输入..."、"正在上传视频..."）
      * @param action typing, upload_photo, upload_video, upload_document 等
@@ -1,6 +1,8 @@
 package com.kooo.evcam.telegram;
 
 import com.kooo.evcam.AppLog;
+import com.kooo.evcam.remote.core.RemotePlatform;
+import com.kooo.evcam.remote.upload.UploadScheduler;
 
 import android.content.Context;
 
@@ -11,6 +13,7 @@ import java.util.List;
 /**
  * Telegram 图片上传服务
  * 负责将拍摄的照片上传到 Telegram
+ * 上传由 {@link UploadScheduler} 调度（并发上传、按 Telegram 频率限制发送、失败按退避重试）
  */
 public class TelegramPhotoUploadService {
     private static final String TAG = "TelegramPhotoUpload";
@@ -36,109 +39,99 @@ public class TelegramPhotoUploadService {
      * @param callback 上传回调
      */
     public void uploadPhotos(List<File> photoFiles, long chatId, UploadCallback callback) {
-        new Thread(() -> {
-            try {
-                if (photoFiles == null || photoFiles.isEmpty()) {
-                    callback.onError("没有图片文件可上传");
-                    return;
-                }
+        if (photoFiles == null || photoFiles.isEmpty()) {
+            callback.onError("没有图片文件可上传");
+            return;
+        }
 
-                callback.onProgress("开始上传 " + photoFiles.size() + " 张照片...");
-
-                // 发送 "正在上传照片" 状态
-                apiClient.sendChatAction(chatId, "upload_photo");
+        List<File> files = new ArrayList<>();
+        List<String> missingFiles = new ArrayList<>();
+        for (File photoFile : photoFiles) {
+            if (photoFile.exists()) {
+                files.add(photoFile);
+            } else {
+                AppLog.w(TAG, "图片文件不存在: " + photoFile.getPath());
+                missingFiles.add(photoFile.getName() + " (文件不存在)");
+            }
+        }
 
-                List<String> uploadedFiles = new ArrayList<>();
-                List<String> failedFiles = new ArrayList<>();
+        callback.onProgress("开始上传 " + files.size() + " 张照片...");
 
-                for (int i = 0; i < photoFiles.size(); i++) {
-                    File photoFile = photoFiles.get(i);
+        int total = files.size();
 
-                    if (!photoFile.exists()) {
-                        AppLog.w(TAG, "图片文件不存在: " + photoFile.getPath());
-                        failedFiles.add(photoFile.getName() + " (文件不存在)");
-                        continue;
-                    }
+        UploadScheduler.FileUploader<Void, Void> uploader = new UploadScheduler.FileUploader<Void, Void>() {
+            @Override
+            public Void prepare(File photoFile, int index) {
+                return null;
+            }
 
-                    callback.onProgress("正在上传 (" + (i + 1) + "/" + photoFiles.size() + "): " + photoFile.getName());
+            @Override
+            public Void upload(File photoFile, Void prepared, int index,
+                               UploadScheduler.TokenBucket limiter) throws Exception {
+                // 发送 "正在上传照片" 状态
+                apiClient.sendChatAction(chatId, "upload_photo");
 
-                    // 重试上传（最多2次，减少等待时间）
-                    boolean uploadSuccess = false;
-                    int retryCount = 0;
-                    int maxRetries = 2;
-                    String lastError = "";
+                // 直接上传并发送图片
+                limiter.acquire();
+                String caption = "照片 " + (index + 1) + "/" + total;
+                apiClient.sendPhoto(chatId, photoFile, caption);
+                return null;
+            }
 
-                    while (!uploadSuccess && retryCount < maxRetries) {
-                        try {
-                            if (retryCount > 0) {
-                                callback.onProgress("重试第 " + retryCount + " 次: " + photoFile.getName());
-                                Thread.sleep(1500); // 重试前等待1.5秒
-                            }
+            @Override
+            public void deliver(File photoFile, Void uploaded, int index, UploadScheduler.TokenBucket limiter) {
+                // sendPhoto 已发送消息
+            }
 
-                            // 发送 "正在上传照片" 状态
-                            apiClient.sendChatAction(chatId, "upload_photo");
+            @Override
+            public void cleanup(Void prepared) {
+            }
+        };
 
-                            // 直接上传并发送图片
-                            String caption = "照片 " + (i + 1) + "/" + photoFiles.size();
-                            apiClient.sendPhoto(chatId, photoFile, caption);
+        boolean submitted = UploadScheduler.getInstance().submit(RemotePlatform.TELEGRAM, files, uploader,
+                new UploadScheduler.BatchListener() {
+                    @Override
+                    public void onProgress(String message) {
+                        callback.onProgress(message);
+                    }
 
-                            uploadedFiles.add(photoFile.getName());
-                            AppLog.d(TAG, "图片上传成功: " + photoFile.getName());
-                            uploadSuccess = true;
+                    @Override
+                    public void onComplete(List<String> uploaded, List<String> failed,
+                                           UploadScheduler.TokenBucket limiter) {
+                        List<String> failedFiles = new ArrayList<>(missingFiles);
+                        failedFiles.addAll(failed);
+
+                        // 统一处理上传结果
+                        String message;
+                        if (uploaded.isEmpty()) {
+                            // 所有文件都失败
+                            message = "❌ 所有图片上传失败\n失败列表:\n" + String.join("\n", failedFiles);
+                            callback.onError(message);
+                        } else if (failedFiles.isEmpty()) {
+                            // 全部成功
+                            message = "✅ 图片上传完成！共上传 " + uploaded.size() + " 张照片";
+                            callback.onSuccess(message);
+                        } else {
+                            // 部分成功，部分失败
+                            message = "⚠️ 上传完成（部分失败）\n" +
+                                    "成功: " + uploaded.size() + " 张\n" +
+                                    "失败: " + failedFiles.size() + " 张\n\n" +
+                                    "失败列表:\n" + String.join("\n", failedFiles);
+                            callback.onSuccess(message); // 仍然视为成功（至少有部分上传）
+                        }
 
+                        // 所有 sendPhoto 已返回，完成消息不会先于图片到达
+                        try {
+                            limiter.acquire();
+                            apiClient.sendMessage(chatId, message);
                         } catch (Exception e) {
-                            retryCount++;
-                            lastError = e.getMessage();
-                            AppLog.e(TAG, "上传图片失败 (尝试 " + retryCount + "/" + maxRetries + "): " + photoFile.getName(), e);
-
-                            if (retryCount >= maxRetries) {
-                                // 达到最大重试次数，记录到失败列表
-                                failedFiles.add(photoFile.getName() + " (" + (lastError != null ? lastError : "未知错误") + ")");
-                                break;
-                            }
+                            AppLog.e(TAG, "发送完成消息失败", e);
                         }
                     }
-
-                    // 延迟500ms后再上传下一张照片
-                    if (i < photoFiles.size() - 1) {
-                        Thread.sleep(500);
-                    }
-                }
-
-                // 统一处理上传结果
-                if (uploadedFiles.isEmpty()) {
-                    // 所有文件都失败
-                    String errorMsg = "❌ 所有图片上传失败\n失败列表:\n" + String.join("\n", failedFiles);
-                    callback.onError(errorMsg);
-                    apiClient.sendMessage(chatId, errorMsg);
-                } else if (failedFiles.isEmpty()) {
-                    // 全部成功
-                    String successMessage = "✅ 图片上传完成！共上传 " + uploadedFiles.size() + " 张照片";
-                    callback.onSuccess(successMessage);
-                    // 等待2秒，确保图片消息投递完成后再发送完成消息
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ignored) {}
-                    apiClient.sendMessage(chatId, successMessage);
-                } else {
-                    // 部分成功，部分失败
-                    String mixedMessage = "⚠️ 上传完成（部分失败）\n" +
-                            "成功: " + uploadedFiles.size() + " 张\n" +
-                            "失败: " + failedFiles.size() + " 张\n\n" +
-                            "失败列表:\n" + String.join("\n", failedFiles);
-                    callback.onSuccess(mixedMessage); // 仍然视为成功（至少有部分上传）
-                    // 等待2秒，确保图片消息投递完成后再发送完成消息
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ignored) {}
-                    apiClient.sendMessage(chatId, mixedMessage);
-                }
-
-            } catch (Exception e) {
-                AppLog.e(TAG, "上传过程出错", e);
-                callback.onError("上传过程出错: " + e.getMessage());
-            }
-        }).start();
+                });
+        if (!submitted) {
+            callback.onError("上传队列已满，请稍后重试");
+        }
     }
 
     /**
@@ -2,20 +2,34 @@ package com.kooo.evcam.telegram;
 
 import com.kooo.evcam.AppLog;
 import com.kooo.evcam.dingtalk.VideoThumbnailExtractor;
+import com.kooo.evcam.remote.core.RemotePlatform;
+import com.kooo.evcam.remote.upload.ChunkedUploadEngine;
+import com.kooo.evcam.remote.upload.SplitUploadProtocol;
+import com.kooo.evcam.remote.upload.UploadScheduler;
+import com.kooo.evcam.remote.upload.VideoSegmenter;
 
 import android.content.Context;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Telegram 视频上传服务
  * 负责将录制的视频上传到 Telegram
+ * 上传由 {@link UploadScheduler} 调度：缩略图提取与上一个视频的上传并行，多个视频并发上传并按 Telegram 频率限制发送
+ * 超过 Bot API 上传上限的视频按关键帧无损分段（{@link VideoSegmenter}），每段作为普通视频发送；
+ * 无法按关键帧分段时按 {@link SplitUploadProtocol} 分段作为文件发送，中断后从未发送的段继续
  */
 public class TelegramVideoUploadService {
     private static final String TAG = "TelegramVideoUpload";
 
+    // Bot API 上传上限 50MB（multipart 请求头占用少量空间）
+    private static final long MAX_UPLOAD_BYTES = 49L * 1024 * 1024;
+    // 分段发送时每段的大小
+    private static final long SEGMENT_BYTES = 45L * 1024 * 1024;
+
     private final Context context;
     private final TelegramApiClient apiClient;
 
@@ -30,6 +44,24 @@ public class TelegramVideoUploadService {
         this.apiClient = apiClient;
     }
 
+    /**
+     * 视频的准备结果
+     */
+    private static final class PreparedVideo {
+        final File thumbnailFile;
+        final int duration;
+        // 按关键帧分段的结果，未超过上限或无法分段时为 null
+        final List<VideoSegmenter.Segment> segments;
+        // 已发送的段数（重试时跳过）
+        int sentSegments;
+
+        PreparedVideo(File thumbnailFile, int duration, List<VideoSegmenter.Segment> segments) {
+            this.thumbnailFile = thumbnailFile;
+            this.duration = duration;
+            this.segments = segments;
+        }
+    }
+
     /**
      * 上传视频文件到 Telegram
      * @param videoFiles 视频文件列表
@@ -37,96 +69,158 @@ public class TelegramVideoUploadService {
      * @param callback 上传回调
      */
     public void uploadVideos(List<File> videoFiles, long chatId, UploadCallback callback) {
-        new Thread(() -> {
-            try {
-                if (videoFiles == null || videoFiles.isEmpty()) {
-                    callback.onError("没有视频文件可上传");
-                    return;
-                }
-
-                callback.onProgress("开始上传 " + videoFiles.size() + " 个视频文件...");
+        if (videoFiles == null || videoFiles.isEmpty()) {
+            callback.onError("没有视频文件可上传");
+            return;
+        }
 
-                // 发送 "正在上传视频" 状态
-                apiClient.sendChatAction(chatId, "upload_video");
+        List<File> files = new ArrayList<>();
+        for (File videoFile : videoFiles) {
+            if (videoFile.exists()) {
+                files.add(videoFile);
+            } else {
+                AppLog.w(TAG, "视频文件不存在: " + videoFile.getPath());
+            }
+        }
+        if (files.isEmpty()) {
+            callback.onError("所有视频上传失败");
+            return;
+        }
+
+        callback.onProgress("开始上传 " + files.size() + " 个视频文件...");
+        int total = files.size();
+
+        UploadScheduler.FileUploader<PreparedVideo, Boolean> uploader = new UploadScheduler.FileUploader<PreparedVideo, Boolean>() {
+            @Override
+            public PreparedVideo prepare(File videoFile, int index) {
+                // 1. 提取视频封面
+                File thumbnailFile = new File(videoFile.getParent(),
+                        videoFile.getName().replace(".mp4", "_thumb.jpg"));
+                if (!VideoThumbnailExtractor.extractThumbnail(videoFile, thumbnailFile)) {
+                    AppLog.w(TAG, "封面提取失败，将不使用缩略图");
+                    thumbnailFile = null;
+                }
 
-                List<String> uploadedFiles = new ArrayList<>();
+                // 2. 获取视频时长
+                int duration = VideoThumbnailExtractor.getVideoDuration(videoFile);
+                if (duration == 0) {
+                    duration = 60; // 默认 60 秒
+                }
 
-                for (int i = 0; i < videoFiles.size(); i++) {
-                    File videoFile = videoFiles.get(i);
+                // 3. 超过上传上限：按关键帧分段
+                List<VideoSegmenter.Segment> segments = null;
+                if (videoFile.length() > MAX_UPLOAD_BYTES) {
+                    callback.onProgress("视频超过 50MB，正在分段 (" + (index + 1) + "/" + total + ")...");
+                    segments = VideoSegmenter.split(context, videoFile, MAX_UPLOAD_BYTES);
+                }
+                return new PreparedVideo(thumbnailFile, duration, segments);
+            }
 
-                    if (!videoFile.exists()) {
-                        AppLog.w(TAG, "视频文件不存在: " + videoFile.getPath());
-                        continue;
+            @Override
+            public Boolean upload(File videoFile, PreparedVideo prepared, int index,
+                                  UploadScheduler.TokenBucket limiter) throws Exception {
+                String caption = "视频 " + (index + 1) + "/" + total;
+                if (prepared.segments != null) {
+                    // 按段发送（每段都是可播放的视频）
+                    for (int i = prepared.sentSegments; i < prepared.segments.size(); i++) {
+                        VideoSegmenter.Segment segment = prepared.segments.get(i);
+                        apiClient.sendChatAction(chatId, "upload_video");
+                        limiter.acquire();
+                        apiClient.sendVideo(chatId, segment.file, segment.thumbnailFile,
+                                Math.max(1, segment.durationMs / 1000),
+                                caption + "（第 " + segment.number + "/" + segment.count + " 段）");
+                        prepared.sentSegments = i + 1;
                     }
+                    return false;
+                }
+                if (videoFile.length() > MAX_UPLOAD_BYTES) {
+                    // 无法按关键帧分段：在 deliver 中按字节顺序分段发送
+                    return true;
+                }
 
-                    callback.onProgress("正在处理 (" + (i + 1) + "/" + videoFiles.size() + "): " + videoFile.getName());
-
-                    try {
-                        // 1. 提取视频封面
-                        File thumbnailFile = new File(videoFile.getParent(),
-                                videoFile.getName().replace(".mp4", "_thumb.jpg"));
-
-                        boolean thumbnailExtracted = VideoThumbnailExtractor.extractThumbnail(videoFile, thumbnailFile);
-                        if (!thumbnailExtracted) {
-                            AppLog.w(TAG, "封面提取失败，将不使用缩略图");
-                            thumbnailFile = null;
-                        }
-
-                        // 2. 获取视频时长
-                        int duration = VideoThumbnailExtractor.getVideoDuration(videoFile);
-                        if (duration == 0) {
-                            duration = 60; // 默认 60 秒
-                        }
+                // 4. 发送 "正在上传视频" 状态
+                apiClient.sendChatAction(chatId, "upload_video");
 
-                        // 3. 发送 "正在上传视频" 状态
-                        apiClient.sendChatAction(chatId, "upload_video");
+                // 5. 直接上传并发送视频（Telegram API 合并了这两步）
+                limiter.acquire();
+                apiClient.sendVideo(chatId, videoFile, prepared.thumbnailFile, prepared.duration, caption);
+                return false;
+            }
 
-                        // 4. 直接上传并发送视频（Telegram API 合并了这两步）
-                        callback.onProgress("正在上传视频 (" + (i + 1) + "/" + videoFiles.size() + ")...");
+            @Override
+            public void deliver(File videoFile, Boolean split, int index,
+                                UploadScheduler.TokenBucket limiter) throws Exception {
+                if (!split) {
+                    // sendVideo 已发送消息
+                    return;
+                }
+                String caption = "视频 " + (index + 1) + "/" + total;
+                SplitUploadProtocol protocol = new SplitUploadProtocol("telegram", SEGMENT_BYTES) {
+                    @Override
+                    protected void sendSegment(ChunkedUploadEngine.Part part, String segmentName, int number,
+                                               int count) throws IOException {
+                        callback.onProgress("正在发送 " + videoFile.getName() + " 第 " + number + "/" + count + " 段...");
+                        apiClient.sendChatAction(chatId, "upload_document");
+                        apiClient.sendDocumentSegment(chatId, part.file, part.offset, part.length, segmentName,
+                                caption + "（第 " + number + "/" + count + " 段）");
+                    }
+                };
+                ChunkedUploadEngine.getInstance(context).upload(videoFile, String.valueOf(chatId), protocol,
+                        limiter, null);
+                // 各段已发送完毕，合并说明发送失败不再重试（重试会重新发送所有段）
+                try {
+                    limiter.acquire();
+                    int count = (int) ((videoFile.length() + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+                    apiClient.sendMessage(chatId, SplitUploadProtocol.joinHint(videoFile, count));
+                } catch (IOException e) {
+                    AppLog.e(TAG, "发送合并说明失败", e);
+                }
+            }
 
-                        String caption = "视频 " + (i + 1) + "/" + videoFiles.size();
-                        apiClient.sendVideo(chatId, videoFile, thumbnailFile, duration, caption);
+            @Override
+            public void cleanup(PreparedVideo prepared) {
+                // 6. 清理临时封面文件和分段
+                if (prepared != null && prepared.thumbnailFile != null && prepared.thumbnailFile.exists()) {
+                    prepared.thumbnailFile.delete();
+                }
+                if (prepared != null) {
+                    VideoSegmenter.delete(prepared.segments);
+                }
+            }
+        };
 
-                        uploadedFiles.add(videoFile.getName());
-                        AppLog.d(TAG, "视频上传成功: " + videoFile.getName());
+        boolean submitted = UploadScheduler.getInstance().submit(RemotePlatform.TELEGRAM, files, uploader,
+                new UploadScheduler.BatchListener() {
+                    @Override
+                    public void onProgress(String message) {
+                        callback.onProgress(message);
+                    }
 
-                        // 5. 清理临时封面文件
-                        if (thumbnailFile != null && thumbnailFile.exists()) {
-                            thumbnailFile.delete();
+                    @Override
+                    public void onComplete(List<String> uploaded, List<String> failed,
+                                           UploadScheduler.TokenBucket limiter) {
+                        if (uploaded.isEmpty()) {
+                            callback.onError("所有视频上传失败\n失败列表:\n" + String.join("\n", failed));
+                            return;
                         }
-
-                        // 6. 延迟2秒后再上传下一个视频
-                        if (i < videoFiles.size() - 1) {
-                            callback.onProgress("等待2秒后上传下一个视频...");
-                            Thread.sleep(2000);
+                        String successMessage = failed.isEmpty()
+                                ? "✅ 视频上传完成！共上传 " + uploaded.size() + " 个文件"
+                                : "⚠️ 上传完成（部分失败）\n成功: " + uploaded.size() + " 个\n失败: " + failed.size()
+                                        + " 个\n\n失败列表:\n" + String.join("\n", failed);
+                        callback.onSuccess(successMessage);
+
+                        // 所有 sendVideo 已返回（消息已在服务器创建），完成消息不会先于视频到达
+                        try {
+                            limiter.acquire();
+                            apiClient.sendMessage(chatId, successMessage);
+                        } catch (Exception e) {
+                            AppLog.e(TAG, "发送完成消息失败", e);
                         }
-
-                    } catch (Exception e) {
-                        AppLog.e(TAG, "上传视频失败: " + videoFile.getName(), e);
-                        callback.onError("上传失败: " + videoFile.getName() + " - " + e.getMessage());
                     }
-                }
-
-                if (uploadedFiles.isEmpty()) {
-                    callback.onError("所有视频上传失败");
-                } else {
-                    String successMessage = "✅ 视频上传完成！共上传 " + uploadedFiles.size() + " 个文件";
-                    callback.onSuccess(successMessage);
-
-                    // 等待3秒，确保视频消息投递完成后再发送完成消息
-                    try {
-                        Thread.sleep(3000);
-                    } catch (InterruptedException ignored) {}
-
-                    // 发送完成消息
-                    apiClient.sendMessage(chatId, successMessage);
-                }
-
-            } catch (Exception e) {
-                AppLog.e(TAG, "上传过程出错", e);
-                callback.onError("上传过程出错: " + e.getMessage());
-            }
-        }).start();
+                });
+        if (!submitted) {
+            callback.onError("上传队列已满，请稍后重试");
+        }
     }
 
     /**
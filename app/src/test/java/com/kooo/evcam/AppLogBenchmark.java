@@ -0,0 +1,76 @@
+package com.kooo.evcam;
+
+import android.util.Log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每编码一帧的日志分配：CodecVideoRecorder 编码回调中的两条日志（帧计数、PTS），
+ * 旧写法先拼接字符串再交给 AppLog 判断级别，新写法使用参数化重载
+ * 每次调用模拟 FRAMES 帧，结果按帧计（gc.alloc.rate.norm 即每帧分配字节数）
+ * level=INFO 对应 logcat 和内存日志都不记录 DEBUG，level=DEBUG 对应默认的内存日志记录级别
+ * 运行：./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=AppLogBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppLogBenchmark {
+    private static final String TAG = "CodecVideoRecorder";
+    private static final int FRAMES = 1000;
+
+    @Param({"INFO", "DEBUG"})
+    public String level;
+
+    private final String cameraId = "0";
+    private long frameCount;
+
+    @Setup
+    public void setUp() {
+        int minLevel = "DEBUG".equals(level) ? Log.DEBUG : Log.INFO;
+        AppLog.setDefaultLevel(minLevel);
+        AppLog.setRecordLevel(minLevel);
+    }
+
+    @TearDown
+    public void tearDown() {
+        AppLog.setDefaultLevel(Log.DEBUG);
+        AppLog.setRecordLevel(Log.DEBUG);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void concatenated() {
+        for (int i = 0; i < FRAMES; i++) {
+            long ptsUs = ++frameCount * 33_333;
+            AppLog.d(TAG, "Camera " + cameraId + " Encoded frames: " + frameCount);
+            AppLog.d(TAG, "Camera " + cameraId + " Frame PTS: " + ptsUs + " us");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void parameterized() {
+        for (int i = 0; i < FRAMES; i++) {
+            long ptsUs = ++frameCount * 33_333;
+            AppLog.d(TAG, "Camera {} Encoded frames: {}", cameraId, frameCount);
+            AppLog.d(TAG, "Camera {} Frame PTS: {} us", cameraId, ptsUs);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.kooo.evcam;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行 JMH 基准测试（默认跳过，避免拖慢普通单元测试）
+ * ./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark            运行全部
+ * ./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=类名或正则  运行指定基准
+ * 同时启用 GC 分析器，输出每次操作的分配字节数（gc.alloc.rate.norm）
+ */
+public class BenchmarkRunnerTest {
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        String include = System.getProperty("evcam.benchmark", "");
+        Assume.assumeFalse("benchmarks run only with -Pbenchmark", include.isEmpty());
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,78 @@
+package com.kooo.evcam;
+
+import android.util.Log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程写入内存日志的吞吐量与分配：LogRingBuffer 与原 AppLog 实现
+ * （每条日志新建 SimpleDateFormat 格式化时间、拼接整行，在全局锁内追加到 ArrayList 并用 subList().clear() 裁剪）
+ * 4 个线程同时写入同一个缓冲区，模拟编码、相机、网络线程并发打日志；gc.alloc.rate.norm 为每条日志分配的字节数
+ * 运行：./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=LogRingBufferBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LogRingBufferBenchmark {
+    private static final int CAPACITY = 5000;
+    private static final String TAG = "CodecVideoRecorder";
+    private static final String MESSAGE = "Camera 0 Encoded frames: 1800";
+
+    private final LogRingBuffer ring = new LogRingBuffer(CAPACITY);
+    private final LegacyLogBuffer legacy = new LegacyLogBuffer(CAPACITY);
+
+    @Benchmark
+    public void ringBuffer() {
+        ring.append(System.currentTimeMillis(), Log.DEBUG, TAG, MESSAGE);
+    }
+
+    @Benchmark
+    public void legacyLockedList() {
+        legacy.append(Log.DEBUG, TAG, MESSAGE);
+    }
+
+    /**
+     * 原 AppLog.addToBuffer() 的实现
+     */
+    static final class LegacyLogBuffer {
+        private final Object lock = new Object();
+        private final List<String> buffer = new ArrayList<>();
+        private final int maxLines;
+
+        LegacyLogBuffer(int maxLines) {
+            this.maxLines = maxLines;
+        }
+
+        void append(int level, String tag, String message) {
+            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US).format(new Date());
+            String line = timestamp + " " + LogRingBuffer.levelToLabel(level) + "/" + tag + ": " + message;
+            synchronized (lock) {
+                buffer.add(line);
+                if (buffer.size() > maxLines) {
+                    int removeCount = buffer.size() - maxLines;
+                    buffer.subList(0, removeCount).clear();
+                }
+            }
+        }
+    }
+}
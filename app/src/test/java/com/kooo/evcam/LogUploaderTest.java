@@ -0,0 +1,204 @@
+package com.kooo.evcam;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LogUploader 单元测试：本地 HTTP 服务器模拟 Gotify 及拒绝压缩请求体的服务器
+ */
+public class LogUploaderTest {
+
+    /**
+     * 收到的请求
+     */
+    private static final class Request {
+        final String contentEncoding;
+        final String transferEncoding;
+        final String body;
+
+        Request(String contentEncoding, String transferEncoding, String body) {
+            this.contentEncoding = contentEncoding;
+            this.transferEncoding = transferEncoding;
+            this.body = body;
+        }
+    }
+
+    private HttpServer server;
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+    // 服务器对压缩请求体的响应：0 表示解压后接受
+    private volatile int gzipResponseCode;
+    private volatile String gzipResponseBody = "";
+    // 服务器对不压缩请求体的响应码
+    private volatile int plainResponseCode = 200;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/message", this::handle);
+        server.start();
+        // 每个用例使用不同的地址，避免“拒绝压缩”的记录互相影响
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/message?token=" + System.nanoTime();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        byte[] raw = readAll(exchange.getRequestBody());
+        int code;
+        String response;
+        if ("gzip".equals(encoding) && gzipResponseCode != 0) {
+            code = gzipResponseCode;
+            response = gzipResponseBody;
+            requests.add(new Request(encoding, exchange.getRequestHeaders().getFirst("Transfer-Encoding"), null));
+        } else {
+            byte[] body = "gzip".equals(encoding) ? readAll(new GZIPInputStream(new ByteArrayInputStream(raw))) : raw;
+            requests.add(new Request(encoding, exchange.getRequestHeaders().getFirst("Transfer-Encoding"),
+                    new String(body, StandardCharsets.UTF_8)));
+            code = plainResponseCode;
+            response = code == 200 ? "{\"id\":1}" : "{\"error\":\"Unauthorized\"}";
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void uncompressedUploadIsSentOnceAsChunkedJson() throws IOException {
+        List<LogRingBuffer.Record> records = records(3);
+        List<Integer> progress = new ArrayList<>();
+        int code = new LogUploader(url, false).upload("EVCam \"test\"", "头部\n",
+                Collections.singletonList(LogUploader.ofRecords(records)), 5, progress::add);
+
+        assertEquals(200, code);
+        assertEquals(1, requests.size());
+        Request request = requests.get(0);
+        assertNull(request.contentEncoding);
+        assertEquals("chunked", request.transferEncoding);
+        assertTrue(request.body.startsWith("{\"title\":\"EVCam \\\"test\\\"\",\"priority\":5,\"message\":\"头部\\n"));
+        assertTrue(request.body.contains("line 2 \\\"quoted\\\" \\\\ tab\\t"));
+        assertTrue(request.body.endsWith("\\n\"}"));
+        assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void gzipBodyIsSentWhenServerAcceptsIt() throws IOException {
+        new LogUploader(url, true).upload("t", "", Collections.singletonList(LogUploader.ofRecords(records(2))), 5, null);
+
+        assertEquals(1, requests.size());
+        assertEquals("gzip", requests.get(0).contentEncoding);
+        assertTrue(requests.get(0).body.contains("line 1"));
+    }
+
+    @Test
+    public void encodingRejectionIsRetriedOnceAndRemembered() throws IOException {
+        // Gotify 式的拒绝：JSON 解析器把 gzip 魔数当作非法字符
+        gzipResponseCode = 400;
+        gzipResponseBody = "{\"error\":\"Bad Request\",\"errorCode\":400,"
+                + "\"errorDescription\":\"invalid character '\\\\x1f' looking for beginning of value\"}";
+        List<LogUploader.Source> sources = Collections.singletonList(LogUploader.ofRecords(records(2)));
+
+        assertEquals(200, new LogUploader(url, true).upload("t", "", sources, 5, null));
+        assertEquals(2, requests.size());
+        assertEquals("gzip", requests.get(0).contentEncoding);
+        assertNull(requests.get(1).contentEncoding);
+
+        // 同一地址再次上传时直接不压缩
+        assertEquals(200, new LogUploader(url, true).upload("t", "", sources, 5, null));
+        assertEquals(3, requests.size());
+        assertNull(requests.get(2).contentEncoding);
+    }
+
+    @Test
+    public void unsupportedMediaTypeIsRetriedUncompressed() throws IOException {
+        gzipResponseCode = 415;
+        new LogUploader(url, true).upload("t", "", Collections.singletonList(LogUploader.ofRecords(records(1))), 5, null);
+        assertEquals(2, requests.size());
+        assertNull(requests.get(1).contentEncoding);
+    }
+
+    @Test
+    public void otherBadRequestIsNotRetried() {
+        gzipResponseCode = 400;
+        gzipResponseBody = "{\"error\":\"Bad Request\",\"errorDescription\":\"title too long\"}";
+        LogUploader.HttpException e = assertThrows(LogUploader.HttpException.class, () ->
+                new LogUploader(url, true).upload("t", "", Collections.singletonList(LogUploader.ofRecords(records(1))),
+                        5, null));
+        assertEquals(400, e.code);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void serverErrorOnPlainUploadIsReported() {
+        plainResponseCode = 401;
+        LogUploader.HttpException e = assertThrows(LogUploader.HttpException.class, () ->
+                new LogUploader(url, false).upload("t", "", Collections.singletonList(LogUploader.ofRecords(records(1))),
+                        5, null));
+        assertEquals(401, e.code);
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    public void fileSourceCountsLinesAndStreamsThem() throws IOException {
+        File file = File.createTempFile("previous_session", ".log");
+        try {
+            Files.write(file.toPath(), "第一行\nsecond\nthird".getBytes(StandardCharsets.UTF_8));
+            LogUploader.Source source = LogUploader.ofFile(file);
+            assertEquals(3, source.lineCount());
+
+            new LogUploader(url, false).upload("t", "", Arrays.asList(source, LogUploader.ofRecords(records(1))), 5,
+                    null);
+            assertTrue(requests.get(0).body.contains("\"message\":\"第一行\\nsecond\\nthird\\n"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static List<LogRingBuffer.Record> records(int count) {
+        LogRingBuffer buffer = new LogRingBuffer(16);
+        for (int i = 0; i < count; i++) {
+            buffer.append(System.currentTimeMillis(), 3, "Test", "line " + i + " \"quoted\" \\ tab\t");
+        }
+        return buffer.snapshot();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
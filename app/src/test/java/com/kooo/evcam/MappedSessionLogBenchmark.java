@@ -0,0 +1,80 @@
+package com.kooo.evcam;
+
+import android.util.Log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单条日志的写入耗时：只写内存环形缓冲区（LogRingBuffer）、只写 mmap 会话日志（MappedSessionLog），
+ * 以及 AppLog 实际的路径（两者都写）
+ * 会话日志与 AppLog 一样使用 2MB 环形区，测量期间会多次回绕
+ * 运行：./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=MappedSessionLogBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappedSessionLogBenchmark {
+    private static final int MAPPED_SIZE = 2 * 1024 * 1024;
+    private static final String TAG = "CodecVideoRecorder";
+
+    // 消息长度：典型的单行日志和较长的状态日志
+    @Param({"48", "256"})
+    public int messageChars;
+
+    private String message;
+    private File file;
+    private LogRingBuffer ring;
+    private MappedSessionLog mapped;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder(messageChars);
+        while (sb.length() < messageChars) {
+            sb.append("Camera 0 Encoded frames: 1800, ");
+        }
+        message = sb.substring(0, messageChars);
+        file = File.createTempFile("session", ".mmap");
+        ring = new LogRingBuffer(5000);
+        mapped = MappedSessionLog.create(file, MAPPED_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void inMemory() {
+        ring.append(System.currentTimeMillis(), Log.DEBUG, TAG, message);
+    }
+
+    @Benchmark
+    public void mappedFile() {
+        mapped.append(System.currentTimeMillis(), Log.DEBUG, TAG, message);
+    }
+
+    @Benchmark
+    public void inMemoryAndMappedFile() {
+        long now = System.currentTimeMillis();
+        ring.append(now, Log.DEBUG, TAG, message);
+        mapped.append(now, Log.DEBUG, TAG, message);
+    }
+}
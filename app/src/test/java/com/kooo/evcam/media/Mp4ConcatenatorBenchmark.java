@@ -0,0 +1,66 @@
+package com.kooo.evcam.media;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拼接耗时：clips 个 1 分钟片段（30fps 视频 + AAC 音频）拼成一个文件，
+ * 包括解析各片段、按共同时间轴重建样本表和复制样本数据
+ * 运行：./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=Mp4ConcatenatorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Mp4ConcatenatorBenchmark {
+
+    @Param({"4", "16"})
+    public int clips;
+
+    private File dir;
+    private final List<File> inputs = new ArrayList<>();
+    private File output;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mp4concat-bench").toFile();
+        for (int i = 0; i < clips; i++) {
+            inputs.add(Mp4Fixture.write(new File(dir, "clip" + i + ".mp4"), new int[]{15, 7},
+                    Mp4Fixture.video(1, 60 * 30, 30, 30), Mp4Fixture.audio(2, 60 * 47)));
+        }
+        output = new File(dir, "merged.mp4");
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File input : inputs) {
+            input.delete();
+        }
+        output.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public Mp4Concatenator.Result concat() throws IOException {
+        return Mp4Concatenator.concat(inputs, output);
+    }
+}
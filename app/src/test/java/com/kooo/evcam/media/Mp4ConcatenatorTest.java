@@ -0,0 +1,126 @@
+package com.kooo.evcam.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mp4Concatenator 单元测试：输出由 {@link Mp4Fixture#read} 独立解析，
+ * 核对样本顺序、数据，以及各片段的音频和视频在同一时间轴上对齐（不随片段数累积偏差）
+ */
+public class Mp4ConcatenatorTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mp4concat-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void clipsShareOneTimelineWithoutDrift() throws IOException {
+        // 每段 10 秒视频 + 10.027 秒音频：各轨道各自顺延时，8 段后音频比视频晚 0.2 秒
+        List<File> inputs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            inputs.add(Mp4Fixture.write(new File(dir, "in" + i + ".mp4"), new int[]{15, 7},
+                    Mp4Fixture.video(1, 300, 30, 30), Mp4Fixture.audio(2, 470)));
+        }
+        File dst = new File(dir, "out.mp4");
+        Mp4Concatenator.Result result = Mp4Concatenator.concat(inputs, dst);
+
+        Mp4Fixture.ReadMovie movie = Mp4Fixture.read(dst);
+        Mp4Fixture.ReadTrack video = movie.tracks.get(0);
+        Mp4Fixture.ReadTrack audio = movie.tracks.get(1);
+        assertEquals(8 * 300, video.samples.size());
+        assertEquals(8 * 470, audio.samples.size());
+
+        // 片段时长 = 最长轨道（音频）的时长，向上取整到电影时间刻度（毫秒）
+        long clipMs = 10_027;
+        assertEquals(8 * clipMs * 1000, result.durationUs);
+        for (int clip = 0; clip < 8; clip++) {
+            Mp4Fixture.Sample firstVideo = video.samples.get(clip * 300);
+            Mp4Fixture.Sample firstAudio = audio.samples.get(clip * 470);
+            assertEquals(0, firstVideo.index);
+            assertTrue(firstVideo.sync);
+            assertEquals(0, firstAudio.index);
+            // 视频的显示时间（解码时间 + 合成偏移 - 编辑起点）与音频都从片段起点开始
+            long videoUs = (firstVideo.decodeTime + firstVideo.compositionOffset - video.editMediaTime)
+                    * 1_000_000L / video.timescale;
+            long audioUs = firstAudio.decodeTime * 1_000_000L / audio.timescale;
+            assertEquals("clip " + clip, clip * clipMs * 1000, videoUs);
+            assertEquals("clip " + clip, clip * clipMs * 1000, audioUs);
+        }
+        for (int i = 0; i < video.samples.size(); i++) {
+            assertEquals(i % 300, video.samples.get(i).index);
+        }
+        // 只有片段的最后一帧被拉长（补足到音频的长度），其余帧保持原时长
+        assertEquals(3000, video.samples.get(1).decodeTime - video.samples.get(0).decodeTime);
+        assertEquals(3000 + 27 * 90, video.samples.get(300).decodeTime - video.samples.get(299).decodeTime);
+    }
+
+    @Test
+    public void trimmedClipsStartAtPreviousClipEnd() throws IOException {
+        File loop = Mp4Fixture.write(new File(dir, "loop.mp4"), new int[]{10},
+                Mp4Fixture.video(1, 300, 30, 30), Mp4Fixture.audio(2, 470));
+        File live = Mp4Fixture.write(new File(dir, "live.mp4"), new int[]{10},
+                Mp4Fixture.video(1, 150, 30, 30), Mp4Fixture.audio(2, 235));
+        File dst = new File(dir, "event.mp4");
+        // 循环录像的最后 3.5 秒（起点向前对齐到 6 秒处的关键帧）+ 实时录像
+        Mp4Concatenator.concatClips(Arrays.asList(new Mp4Concatenator.Clip(loop, 6_500_000, Long.MAX_VALUE),
+                Mp4Concatenator.Clip.of(live)), dst);
+
+        Mp4Fixture.ReadMovie movie = Mp4Fixture.read(dst);
+        List<Mp4Fixture.Sample> video = movie.tracks.get(0).samples;
+        assertEquals(180, video.get(0).index);
+        assertEquals(120 + 150, video.size());
+        Mp4Fixture.Sample liveStart = video.get(120);
+        assertEquals(0, liveStart.index);
+
+        List<Mp4Fixture.Sample> audio = movie.tracks.get(1).samples;
+        int liveAudio = -1;
+        for (int i = 1; i < audio.size(); i++) {
+            if (audio.get(i).index == 0) {
+                liveAudio = i;
+            }
+        }
+        assertTrue(liveAudio > 0);
+        // 两个轨道的第二个片段在同一时刻开始（误差小于电影时间刻度的 1 毫秒）
+        long videoUs = liveStart.decodeTime * 1_000_000L / 90000;
+        long audioUs = audio.get(liveAudio).decodeTime * 1_000_000L / 48000;
+        assertTrue(videoUs + " vs " + audioUs, Math.abs(videoUs - audioUs) <= 1000);
+    }
+
+    @Test
+    public void incompatibleCodecConfigurationIsRejected() throws IOException {
+        File a = Mp4Fixture.write(new File(dir, "a.mp4"), new int[]{10}, Mp4Fixture.video(1, 60, 30, 30));
+        Mp4Fixture.Track other = Mp4Fixture.video(1, 60, 30, 30);
+        other.codecConfig = new byte[]{1, 0x4d, 0, 0x1f};
+        File b = Mp4Fixture.write(new File(dir, "b.mp4"), new int[]{10}, other);
+        File dst = new File(dir, "out.mp4");
+
+        assertThrows(IOException.class, () -> Mp4Concatenator.concat(Arrays.asList(a, b), dst));
+        assertFalse(dst.exists());
+    }
+}
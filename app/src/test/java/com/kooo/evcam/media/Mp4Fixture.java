@@ -0,0 +1,560 @@
+package com.kooo.evcam.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 测试用 MP4 生成器与读取器
+ * 按 ISO/IEC 14496-12 逐个写出 box，与被测代码（Mp4Movie / Mp4Writer）无关；
+ * 每个样本的数据以（轨道号, 样本序号）开头，读取器据此逐样本核对输出文件的内容和时间戳
+ */
+public final class Mp4Fixture {
+
+    /**
+     * 轨道描述
+     */
+    static final class Track {
+        final boolean video;
+        final int trackId;
+        final long timescale;
+        final int[] sizes;
+        final int[] deltas;           // 每个样本的解码时长
+        int[] ctsOffsets;             // 合成时间偏移，null 表示没有 ctts
+        int[] syncSamples;            // 关键帧序号（从 0 开始），null 表示没有 stss
+        long editMediaTime = -1;      // 编辑列表起点，-1 表示没有 edts
+        boolean leadingEmptyEdit;     // 编辑列表前加一段空编辑
+        byte[] codecConfig = {1, 0x64, 0, 0x28};
+        int width = 1280;
+        int height = 720;
+
+        Track(boolean video, int trackId, long timescale, int[] sizes, int[] deltas) {
+            this.video = video;
+            this.trackId = trackId;
+            this.timescale = timescale;
+            this.sizes = sizes;
+            this.deltas = deltas;
+        }
+
+        long mediaDuration() {
+            long total = 0;
+            for (int delta : deltas) {
+                total += delta;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * 视频轨道：fps 帧/秒，每 gop 帧一个关键帧，带 B 帧式的合成时间偏移和编辑列表
+     */
+    static Track video(int trackId, int frames, int fps, int gop) {
+        long timescale = 90000;
+        int delta = (int) (timescale / fps);
+        int[] sizes = new int[frames];
+        int[] deltas = new int[frames];
+        int[] cts = new int[frames];
+        List<Integer> sync = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            sizes[i] = i % gop == 0 ? 3000 + i % 7 : 400 + i % 13;
+            deltas[i] = delta;
+            cts[i] = 2 * delta;
+            if (i % gop == 0) {
+                sync.add(i);
+            }
+        }
+        Track track = new Track(true, trackId, timescale, sizes, deltas);
+        track.ctsOffsets = cts;
+        track.syncSamples = sync.stream().mapToInt(Integer::intValue).toArray();
+        track.editMediaTime = 2L * delta;
+        return track;
+    }
+
+    /**
+     * AAC 音频轨道：48kHz，每帧 1024 个采样
+     */
+    static Track audio(int trackId, int frames) {
+        int[] sizes = new int[frames];
+        int[] deltas = new int[frames];
+        for (int i = 0; i < frames; i++) {
+            sizes[i] = 200 + i % 11;
+            deltas[i] = 1024;
+        }
+        Track track = new Track(false, trackId, 48000, sizes, deltas);
+        track.codecConfig = new byte[]{0x11, (byte) 0x90};
+        return track;
+    }
+
+    private Mp4Fixture() {
+    }
+
+    /**
+     * 只有视频轨道的录像（30 帧/秒，每秒一个关键帧），供其他包的测试使用
+     */
+    public static File writeVideo(File file, int frames) throws IOException {
+        return write(file, new int[]{15}, video(1, frames, 30, 30));
+    }
+
+    /**
+     * 样本数据：轨道号（1 字节）+ 样本序号（4 字节）+ 可重现的填充
+     */
+    static byte[] payload(int trackId, int sample, int size) {
+        byte[] data = new byte[size];
+        data[0] = (byte) trackId;
+        data[1] = (byte) (sample >>> 24);
+        data[2] = (byte) (sample >>> 16);
+        data[3] = (byte) (sample >>> 8);
+        data[4] = (byte) sample;
+        for (int i = 5; i < size; i++) {
+            data[i] = (byte) (trackId * 31 + sample * 7 + i);
+        }
+        return data;
+    }
+
+    /**
+     * 写出文件：ftyp + mdat（各轨道按块交错，块大小不固定）+ moov
+     * @param chunkSamples 每块的样本数（循环使用）
+     */
+    static File write(File file, int[] chunkSamples, Track... tracks) throws IOException {
+        List<List<long[]>> chunks = new ArrayList<>();   // 每个轨道的 {offset, firstSample, count}
+        ByteArrayOutputStream mdatData = new ByteArrayOutputStream();
+        byte[] ftyp = box("ftyp", concat(ascii("isom"), u32(512), ascii("isomiso2avc1mp41")));
+        long mdatStart = ftyp.length + 8;
+
+        int[] next = new int[tracks.length];
+        for (int t = 0; t < tracks.length; t++) {
+            chunks.add(new ArrayList<>());
+        }
+        int round = 0;
+        boolean remaining = true;
+        while (remaining) {
+            remaining = false;
+            for (int t = 0; t < tracks.length; t++) {
+                Track track = tracks[t];
+                if (next[t] >= track.sizes.length) {
+                    continue;
+                }
+                int count = Math.min(chunkSamples[round % chunkSamples.length], track.sizes.length - next[t]);
+                chunks.get(t).add(new long[]{mdatStart + mdatData.size(), next[t], count});
+                for (int i = next[t]; i < next[t] + count; i++) {
+                    mdatData.write(payload(track.trackId, i, track.sizes[i]));
+                }
+                next[t] += count;
+                remaining |= next[t] < track.sizes.length;
+            }
+            round++;
+        }
+
+        long movieTimescale = 1000;
+        long movieDuration = 0;
+        List<byte[]> traks = new ArrayList<>();
+        for (int t = 0; t < tracks.length; t++) {
+            Track track = tracks[t];
+            long edited = track.mediaDuration() - Math.max(0, track.editMediaTime);
+            long duration = edited * movieTimescale / track.timescale;
+            movieDuration = Math.max(movieDuration, duration);
+            traks.add(trak(track, chunks.get(t), duration));
+        }
+        byte[] mvhd = fullBox("mvhd", 0, 0, concat(u32(0), u32(0), u32(movieTimescale), u32(movieDuration),
+                u32(0x00010000), u16(0x0100), new byte[10], matrix(), new byte[24], u32(tracks.length + 1)));
+        List<byte[]> moovChildren = new ArrayList<>();
+        moovChildren.add(mvhd);
+        moovChildren.addAll(traks);
+        byte[] moov = box("moov", concat(moovChildren.toArray(new byte[0][])));
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(ftyp);
+            out.write(u32(mdatData.size() + 8));
+            out.write(ascii("mdat"));
+            mdatData.writeTo(out);
+            out.write(moov);
+        }
+        return file;
+    }
+
+    private static byte[] trak(Track track, List<long[]> chunks, long movieDuration) throws IOException {
+        byte[] tkhd = fullBox("tkhd", 0, 3, concat(u32(0), u32(0), u32(track.trackId), u32(0), u32(movieDuration),
+                new byte[8], u16(0), u16(0), u16(track.video ? 0 : 0x0100), u16(0), matrix(),
+                u32(track.video ? track.width << 16 : 0), u32(track.video ? track.height << 16 : 0)));
+        byte[] mdhd = fullBox("mdhd", 0, 0, concat(u32(0), u32(0), u32(track.timescale), u32(track.mediaDuration()),
+                u16(0x55c4), u16(0)));
+        byte[] hdlr = fullBox("hdlr", 0, 0, concat(u32(0), ascii(track.video ? "vide" : "soun"), new byte[12],
+                ascii(track.video ? "VideoHandle\0" : "SoundHandle\0")));
+        byte[] mediaHeader = track.video
+                ? fullBox("vmhd", 0, 1, new byte[8])
+                : fullBox("smhd", 0, 0, new byte[4]);
+        byte[] dinf = box("dinf", fullBox("dref", 0, 0, concat(u32(1), fullBox("url ", 0, 1, new byte[0]))));
+
+        List<byte[]> stbl = new ArrayList<>();
+        stbl.add(fullBox("stsd", 0, 0, concat(u32(1), sampleEntry(track))));
+        stbl.add(runLengthTable("stts", 0, track.deltas));
+        if (track.ctsOffsets != null) {
+            stbl.add(runLengthTable("ctts", 0, track.ctsOffsets));
+        }
+        if (track.syncSamples != null) {
+            ByteArrayOutputStream stss = new ByteArrayOutputStream();
+            stss.write(u32(track.syncSamples.length));
+            for (int sample : track.syncSamples) {
+                stss.write(u32(sample + 1));
+            }
+            stbl.add(fullBox("stss", 0, 0, stss.toByteArray()));
+        }
+        ByteArrayOutputStream stsc = new ByteArrayOutputStream();
+        ByteArrayOutputStream stco = new ByteArrayOutputStream();
+        int stscEntries = 0;
+        long lastCount = -1;
+        for (int i = 0; i < chunks.size(); i++) {
+            long[] chunk = chunks.get(i);
+            if (chunk[2] != lastCount) {
+                stsc.write(concat(u32(i + 1), u32(chunk[2]), u32(1)));
+                stscEntries++;
+                lastCount = chunk[2];
+            }
+            stco.write(u32(chunk[0]));
+        }
+        stbl.add(fullBox("stsc", 0, 0, concat(u32(stscEntries), stsc.toByteArray())));
+        ByteArrayOutputStream stsz = new ByteArrayOutputStream();
+        stsz.write(u32(0));
+        stsz.write(u32(track.sizes.length));
+        for (int size : track.sizes) {
+            stsz.write(u32(size));
+        }
+        stbl.add(fullBox("stsz", 0, 0, stsz.toByteArray()));
+        stbl.add(fullBox("stco", 0, 0, concat(u32(chunks.size()), stco.toByteArray())));
+
+        byte[] minf = box("minf", concat(mediaHeader, dinf, box("stbl", concat(stbl.toArray(new byte[0][])))));
+        byte[] mdia = box("mdia", concat(mdhd, hdlr, minf));
+        if (track.editMediaTime < 0) {
+            return box("trak", concat(tkhd, mdia));
+        }
+        ByteArrayOutputStream elst = new ByteArrayOutputStream();
+        int entries = 1;
+        if (track.leadingEmptyEdit) {
+            elst.write(concat(u32(100), u32(-1), u32(0x00010000)));
+            entries++;
+        }
+        elst.write(concat(u32(movieDuration), u32(track.editMediaTime), u32(0x00010000)));
+        byte[] edts = box("edts", fullBox("elst", 0, 0, concat(u32(entries), elst.toByteArray())));
+        return box("trak", concat(tkhd, edts, mdia));
+    }
+
+    private static byte[] sampleEntry(Track track) throws IOException {
+        if (track.video) {
+            byte[] compressor = new byte[32];
+            return box("avc1", concat(new byte[6], u16(1), new byte[16], u16(track.width), u16(track.height),
+                    u32(0x00480000), u32(0x00480000), u32(0), u16(1), compressor, u16(0x18), u16(0xffff),
+                    box("avcC", track.codecConfig)));
+        }
+        return box("mp4a", concat(new byte[6], u16(1), new byte[8], u16(2), u16(16), u16(0), u16(0),
+                u32(track.timescale << 16), box("esds", track.codecConfig)));
+    }
+
+    private static byte[] runLengthTable(String type, int version, int[] values) throws IOException {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        int entries = 0;
+        int i = 0;
+        while (i < values.length) {
+            int j = i;
+            while (j < values.length && values[j] == values[i]) {
+                j++;
+            }
+            table.write(u32(j - i));
+            table.write(u32(values[i]));
+            entries++;
+            i = j;
+        }
+        return fullBox(type, version, 0, concat(u32(entries), table.toByteArray()));
+    }
+
+    // ==================== 读取（核对输出文件） ====================
+
+    /**
+     * 读取出的样本
+     */
+    static final class Sample {
+        final int trackId;          // 数据中记录的原轨道号
+        final int index;            // 数据中记录的原样本序号
+        final int size;
+        final long decodeTime;
+        final long compositionOffset;
+        final boolean sync;
+
+        Sample(int trackId, int index, int size, long decodeTime, long compositionOffset, boolean sync) {
+            this.trackId = trackId;
+            this.index = index;
+            this.size = size;
+            this.decodeTime = decodeTime;
+            this.compositionOffset = compositionOffset;
+            this.sync = sync;
+        }
+    }
+
+    /**
+     * 读取出的轨道
+     */
+    static final class ReadTrack {
+        String handler;
+        long timescale;
+        long mediaDuration;         // 样本解码时长之和
+        long editMediaTime;
+        long editDuration;          // 编辑列表时长（电影时间刻度），没有时为 -1
+        byte[] sampleEntry;
+        final List<Sample> samples = new ArrayList<>();
+    }
+
+    /**
+     * 读取出的文件
+     */
+    static final class ReadMovie {
+        long timescale;
+        long duration;
+        final List<ReadTrack> tracks = new ArrayList<>();
+    }
+
+    /**
+     * 读取文件并核对每个样本的数据与生成时的内容一致
+     */
+    static ReadMovie read(File file) throws IOException {
+        byte[] data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            data = new byte[(int) raf.length()];
+            raf.readFully(data);
+        }
+        ReadMovie movie = new ReadMovie();
+        int[] moov = findBox(data, 0, data.length, "moov");
+        if (moov == null) {
+            throw new IOException("No moov");
+        }
+        int[] mvhd = findBox(data, moov[0] + 8, moov[1], "mvhd");
+        movie.timescale = u32(data, mvhd[0] + 20);
+        movie.duration = u32(data, mvhd[0] + 24);
+        int pos = moov[0] + 8;
+        while (pos < moov[1]) {
+            int size = (int) u32(data, pos);
+            if (type(data, pos).equals("trak")) {
+                movie.tracks.add(readTrack(data, pos + 8, pos + size));
+            }
+            pos += size;
+        }
+        return movie;
+    }
+
+    private static ReadTrack readTrack(byte[] data, int start, int end) throws IOException {
+        ReadTrack track = new ReadTrack();
+        int[] mdia = findBox(data, start, end, "mdia");
+        int[] mdhd = findBox(data, mdia[0] + 8, mdia[1], "mdhd");
+        track.timescale = u32(data, mdhd[0] + 20);
+        int[] hdlr = findBox(data, mdia[0] + 8, mdia[1], "hdlr");
+        track.handler = new String(data, hdlr[0] + 16, 4, StandardCharsets.US_ASCII);
+        track.editDuration = -1;
+        int[] edts = findBox(data, start, end, "edts");
+        if (edts != null) {
+            int[] elst = findBox(data, edts[0] + 8, edts[1], "elst");
+            int entries = (int) u32(data, elst[0] + 12);
+            for (int i = 0; i < entries; i++) {
+                int p = elst[0] + 16 + i * 12;
+                int mediaTime = (int) u32(data, p + 4);
+                if (mediaTime >= 0) {
+                    track.editMediaTime = mediaTime;
+                    track.editDuration = u32(data, p);
+                    break;
+                }
+            }
+        }
+        int[] minf = findBox(data, mdia[0] + 8, mdia[1], "minf");
+        int[] stbl = findBox(data, minf[0] + 8, minf[1], "stbl");
+        int s = stbl[0] + 8;
+        int e = stbl[1];
+        int[] stsd = findBox(data, s, e, "stsd");
+        track.sampleEntry = Arrays.copyOfRange(data, stsd[0] + 16, stsd[1]);
+
+        int[] stsz = findBox(data, s, e, "stsz");
+        int count = (int) u32(data, stsz[0] + 16);
+        int uniform = (int) u32(data, stsz[0] + 12);
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = uniform != 0 ? uniform : (int) u32(data, stsz[0] + 20 + i * 4);
+        }
+        long[] dts = expand(data, findBox(data, s, e, "stts"), count, true);
+        int[] cttsBox = findBox(data, s, e, "ctts");
+        long[] cts = cttsBox != null ? expand(data, cttsBox, count, false) : new long[count];
+        boolean[] sync = new boolean[count];
+        int[] stss = findBox(data, s, e, "stss");
+        if (stss == null) {
+            Arrays.fill(sync, true);
+        } else {
+            int entries = (int) u32(data, stss[0] + 12);
+            for (int i = 0; i < entries; i++) {
+                sync[(int) u32(data, stss[0] + 16 + i * 4) - 1] = true;
+            }
+        }
+
+        long[] chunkOffsets;
+        int[] stco = findBox(data, s, e, "stco");
+        if (stco != null) {
+            chunkOffsets = new long[(int) u32(data, stco[0] + 12)];
+            for (int i = 0; i < chunkOffsets.length; i++) {
+                chunkOffsets[i] = u32(data, stco[0] + 16 + i * 4);
+            }
+        } else {
+            int[] co64 = findBox(data, s, e, "co64");
+            chunkOffsets = new long[(int) u32(data, co64[0] + 12)];
+            for (int i = 0; i < chunkOffsets.length; i++) {
+                chunkOffsets[i] = (u32(data, co64[0] + 16 + i * 8) << 32) | u32(data, co64[0] + 20 + i * 8);
+            }
+        }
+        int[] stsc = findBox(data, s, e, "stsc");
+        int stscEntries = (int) u32(data, stsc[0] + 12);
+        int sample = 0;
+        for (int i = 0; i < stscEntries; i++) {
+            int p = stsc[0] + 16 + i * 12;
+            int firstChunk = (int) u32(data, p) - 1;
+            int perChunk = (int) u32(data, p + 4);
+            int lastChunk = i + 1 < stscEntries ? (int) u32(data, p + 12) - 1 : chunkOffsets.length;
+            for (int chunk = firstChunk; chunk < lastChunk; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int j = 0; j < perChunk && sample < count; j++, sample++) {
+                    int trackId = data[(int) offset];
+                    int index = (int) u32(data, (int) offset + 1);
+                    byte[] expected = payload(trackId, index, sizes[sample]);
+                    if (!Arrays.equals(expected, Arrays.copyOfRange(data, (int) offset, (int) offset + sizes[sample]))) {
+                        throw new IOException("Sample " + sample + " data does not match track " + trackId
+                                + " sample " + index);
+                    }
+                    track.samples.add(new Sample(trackId, index, sizes[sample], dts[sample], cts[sample], sync[sample]));
+                    offset += sizes[sample];
+                }
+            }
+        }
+        if (sample != count) {
+            throw new IOException("Chunks cover " + sample + " of " + count + " samples");
+        }
+        track.mediaDuration = dts[count];
+        return track;
+    }
+
+    /**
+     * 展开游程表；decodeTimes 为 true 时累加为解码时间（长度 count + 1）
+     */
+    private static long[] expand(byte[] data, int[] box, int count, boolean decodeTimes) {
+        long[] values = new long[count + 1];
+        int entries = (int) u32(data, box[0] + 12);
+        int sample = 0;
+        long time = 0;
+        for (int i = 0; i < entries; i++) {
+            long run = u32(data, box[0] + 16 + i * 8);
+            int value = (int) u32(data, box[0] + 20 + i * 8);
+            for (long j = 0; j < run && sample < count; j++) {
+                if (decodeTimes) {
+                    values[sample++] = time;
+                    time += value & 0xffffffffL;
+                } else {
+                    values[sample++] = value;
+                }
+            }
+        }
+        values[count] = time;
+        return values;
+    }
+
+    /**
+     * 在 [start, end) 中查找 box
+     * @return {起点, 终点}，没有时返回 null
+     */
+    private static int[] findBox(byte[] data, int start, int end, String type) {
+        int pos = start;
+        while (pos + 8 <= end) {
+            long size = u32(data, pos);
+            if (size == 1) {
+                size = (u32(data, pos + 8) << 32) | u32(data, pos + 12);
+            } else if (size == 0) {
+                size = end - pos;
+            }
+            if (type(data, pos).equals(type)) {
+                return new int[]{pos, (int) (pos + size)};
+            }
+            pos += (int) size;
+        }
+        return null;
+    }
+
+    private static String type(byte[] data, int pos) {
+        return new String(data, pos + 4, 4, StandardCharsets.US_ASCII);
+    }
+
+    private static long u32(byte[] data, int pos) {
+        return ((data[pos] & 0xffL) << 24) | ((data[pos + 1] & 0xffL) << 16) | ((data[pos + 2] & 0xffL) << 8)
+                | (data[pos + 3] & 0xffL);
+    }
+
+    // ==================== box 编码 ====================
+
+    static byte[] box(String type, byte[] payload) {
+        return concat(u32(payload.length + 8), ascii(type), payload);
+    }
+
+    static byte[] fullBox(String type, int version, int flags, byte[] payload) {
+        return box(type, concat(u32(((long) version << 24) | flags), payload));
+    }
+
+    private static byte[] matrix() {
+        return concat(u32(0x00010000), u32(0), u32(0), u32(0), u32(0x00010000), u32(0), u32(0), u32(0),
+                u32(0x40000000));
+    }
+
+    static byte[] u32(long value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static byte[] u16(int value) {
+        return new byte[]{(byte) (value >>> 8), (byte) value};
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 在文件中查找 box 类型（如 "stss"）的位置，供构造损坏文件
+     * @return box 起点，没有时返回 -1
+     */
+    static int indexOf(File file, String type) throws IOException {
+        byte[] data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            data = new byte[(int) raf.length()];
+            raf.readFully(data);
+        }
+        byte[] needle = ascii(type);
+        for (int i = 4; i + 4 <= data.length; i++) {
+            if (data[i] == needle[0] && data[i + 1] == needle[1] && data[i + 2] == needle[2]
+                    && data[i + 3] == needle[3]) {
+                return i - 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 覆盖文件中 offset 处的 4 字节
+     */
+    static void patchU32(File file, long offset, long value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(offset);
+            raf.write(u32(value));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.kooo.evcam.media;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 录像元数据读取耗时：只读 moov 头部（Mp4Info.read）、缓存命中（Mp4Info.get）与展开完整样本表（Mp4Movie.parse）
+ * MediaMetadataRetriever 只能在设备上运行，这里用完整样本表解析作为 JVM 上的对照
+ * 运行：./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=Mp4InfoBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Mp4InfoBenchmark {
+
+    // 录像时长（秒）：1 分钟和 5 分钟的分段
+    @Param({"60", "300"})
+    public int seconds;
+
+    private File dir;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mp4info-bench").toFile();
+        file = Mp4Fixture.write(new File(dir, "segment.mp4"), new int[]{15},
+                Mp4Fixture.video(1, seconds * 30, 30, 30), Mp4Fixture.audio(2, seconds * 47));
+        Mp4Info.clearCache();
+        Mp4Info.get(file);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public Mp4Info readMoov() throws IOException {
+        return Mp4Info.read(file);
+    }
+
+    @Benchmark
+    public Mp4Info cachedGet() throws IOException {
+        return Mp4Info.get(file);
+    }
+
+    @Benchmark
+    public Mp4Movie fullSampleTables() throws IOException {
+        return Mp4Movie.parse(file);
+    }
+}
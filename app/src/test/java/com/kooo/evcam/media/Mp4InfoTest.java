@@ -0,0 +1,110 @@
+package com.kooo.evcam.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Mp4Info 单元测试（样本文件由 {@link Mp4Fixture} 独立生成）
+ */
+public class Mp4InfoTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mp4info-test").toFile();
+        Mp4Info.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        Mp4Info.clearCache();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void readsDurationDimensionsAndCodecs() throws IOException {
+        Mp4Fixture.Track video = Mp4Fixture.video(1, 300, 30, 30);
+        video.width = 1920;
+        video.height = 1080;
+        // 470 帧 AAC = 10.027 秒，比视频（编辑后 9.933 秒）长
+        File file = Mp4Fixture.write(new File(dir, "a.mp4"), new int[]{15, 7}, video, Mp4Fixture.audio(2, 470));
+
+        Mp4Info info = Mp4Info.read(file);
+        assertEquals(10_026_000, info.durationUs);
+        assertEquals(1920, info.width);
+        assertEquals(1080, info.height);
+        assertEquals("avc1", info.videoCodec);
+        assertEquals("mp4a", info.audioCodec);
+        assertEquals(300, info.frameCount);
+        assertEquals(file.length(), info.fileSize);
+    }
+
+    @Test
+    public void keyframeTimesApplyCompositionOffsetAndEditList() throws IOException {
+        Mp4Fixture.Track video = Mp4Fixture.video(1, 95, 30, 30);
+        video.leadingEmptyEdit = true;
+        File file = Mp4Fixture.write(new File(dir, "k.mp4"), new int[]{10}, video);
+
+        // 关键帧 0 / 30 / 60 / 90：解码时间 + 2 帧合成偏移 - 2 帧编辑起点 = 帧序号 / 30 秒
+        assertArrayEquals(new long[]{0, 1_000_000, 2_000_000, 3_000_000}, Mp4Info.read(file).keyframeTimesUs);
+    }
+
+    @Test
+    public void videoWithoutSyncTableTreatsEveryFrameAsKeyframe() throws IOException {
+        Mp4Fixture.Track video = Mp4Fixture.video(1, 4, 25, 1);
+        video.syncSamples = null;
+        video.ctsOffsets = null;
+        video.editMediaTime = -1;
+        File file = Mp4Fixture.write(new File(dir, "i.mp4"), new int[]{4}, video);
+
+        Mp4Info info = Mp4Info.read(file);
+        assertArrayEquals(new long[]{0, 40_000, 80_000, 120_000}, info.keyframeTimesUs);
+        assertNull(info.audioCodec);
+    }
+
+    @Test
+    public void getCachesUntilFileChanges() throws IOException {
+        File file = Mp4Fixture.write(new File(dir, "c.mp4"), new int[]{10}, Mp4Fixture.video(1, 60, 30, 30));
+        Mp4Info first = Mp4Info.get(file);
+        assertSame(first, Mp4Info.get(file));
+
+        Mp4Fixture.write(file, new int[]{10}, Mp4Fixture.video(1, 90, 30, 30));
+        Mp4Info second = Mp4Info.get(file);
+        assertNotSame(first, second);
+        assertEquals(90, second.frameCount);
+    }
+
+    @Test
+    public void corruptSyncTableCountIsRejected() throws IOException {
+        File file = Mp4Fixture.write(new File(dir, "s.mp4"), new int[]{10}, Mp4Fixture.video(1, 60, 30, 30));
+        // stss 表项数改为远超 box 大小的值，应报告损坏而不是分配巨大数组
+        Mp4Fixture.patchU32(file, Mp4Fixture.indexOf(file, "stss") + 12, 0x7fffffff);
+        assertThrows(IOException.class, () -> Mp4Info.read(file));
+    }
+
+    @Test
+    public void fileWithoutMoovIsRejected() throws IOException {
+        File file = new File(dir, "interrupted.mp4");
+        Files.write(file.toPath(), Mp4Fixture.concat(Mp4Fixture.box("ftyp", new byte[8]),
+                Mp4Fixture.box("mdat", new byte[1000])));
+        assertThrows(IOException.class, () -> Mp4Info.read(file));
+    }
+}
@@ -0,0 +1,115 @@
+package com.kooo.evcam.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mp4Movie 单元测试：样本表展开，以及损坏的表项数在分配数组前被拒绝
+ */
+public class Mp4MovieTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mp4movie-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void expandsSampleTablesOfInterleavedTracks() throws IOException {
+        Mp4Fixture.Track videoSpec = Mp4Fixture.video(1, 95, 30, 30);
+        Mp4Fixture.Track audioSpec = Mp4Fixture.audio(2, 150);
+        File file = Mp4Fixture.write(new File(dir, "a.mp4"), new int[]{10, 3}, videoSpec, audioSpec);
+
+        Mp4Movie movie = Mp4Movie.parse(file);
+        assertEquals(1000, movie.timescale);
+        assertEquals(2, movie.getTracks().size());
+
+        Mp4Movie.Track video = movie.getVideoTrack();
+        assertEquals(1, video.trackId);
+        assertEquals(90000, video.timescale);
+        assertEquals(95, video.getSampleCount());
+        assertArrayEquals(videoSpec.sizes, video.sizes);
+        assertArrayEquals(new int[]{0, 30, 60, 90}, video.syncSamples);
+        assertEquals(6000, video.editMediaTime);
+        assertEquals(6000, video.ctsOffsets[94]);
+        assertEquals(3000L * 95, video.getMediaDuration());
+        assertEquals(0, video.syncSampleAtOrBefore(29));
+        assertEquals(30, video.syncSampleAtOrBefore(30));
+        assertEquals(30, video.sampleAtTime(90000));
+
+        Mp4Movie.Track audio = movie.getTracks().get(1);
+        assertTrue(audio.isAudio());
+        assertEquals(150, audio.getSampleCount());
+        assertEquals(1024L * 150, audio.getMediaDuration());
+        // 样本位置与 Mp4Fixture 写出的数据一致：每个样本以（轨道号, 样本序号）开头
+        byte[] data = Files.readAllBytes(file.toPath());
+        for (Mp4Movie.Track track : movie.getTracks()) {
+            for (int i = 0; i < track.getSampleCount(); i++) {
+                int offset = (int) track.offsets[i];
+                assertEquals(track.trackId, data[offset]);
+                assertEquals(i, ((data[offset + 3] & 0xff) << 8) | (data[offset + 4] & 0xff));
+            }
+        }
+    }
+
+    @Test
+    public void corruptTableCountsAreRejected() throws IOException {
+        // 各表的表项数改为远超 box 大小的值，应报告损坏而不是分配巨大数组或读到相邻的 box
+        for (String type : new String[]{"stsz", "stts", "stsc", "stco", "ctts", "stss", "elst"}) {
+            File file = Mp4Fixture.write(new File(dir, type + ".mp4"), new int[]{10},
+                    Mp4Fixture.video(1, 60, 30, 30));
+            int countOffset = Mp4Fixture.indexOf(file, type) + ("stsz".equals(type) ? 16 : 12);
+            Mp4Fixture.patchU32(file, countOffset, 0x7fffffff);
+            IOException e = assertThrows(type, IOException.class, () -> Mp4Movie.parse(file));
+            assertTrue(e.getMessage(), e.getMessage().contains(type));
+
+            // 表项数略大于实际（只多一项）同样被拒绝
+            Mp4Fixture.write(file, new int[]{10}, Mp4Fixture.video(1, 60, 30, 30));
+            long entries = readU32(file, countOffset);
+            Mp4Fixture.patchU32(file, countOffset, entries + 1);
+            assertThrows(type, IOException.class, () -> Mp4Movie.parse(file));
+        }
+    }
+
+    @Test
+    public void syncSampleOutsideTrackIsRejected() throws IOException {
+        File file = Mp4Fixture.write(new File(dir, "s.mp4"), new int[]{10}, Mp4Fixture.video(1, 60, 30, 30));
+        Mp4Fixture.patchU32(file, Mp4Fixture.indexOf(file, "stss") + 16, 61);
+        assertThrows(IOException.class, () -> Mp4Movie.parse(file));
+    }
+
+    @Test
+    public void truncatedMdatIsRejected() throws IOException {
+        File file = Mp4Fixture.write(new File(dir, "t.mp4"), new int[]{10}, Mp4Fixture.video(1, 60, 30, 30));
+        // 把第一块的位置移到文件末尾之后
+        Mp4Fixture.patchU32(file, Mp4Fixture.indexOf(file, "stco") + 16, file.length());
+        assertThrows(IOException.class, () -> Mp4Movie.parse(file));
+    }
+
+    private static long readU32(File file, long offset) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        int p = (int) offset;
+        return ((data[p] & 0xffL) << 24) | ((data[p + 1] & 0xff) << 16) | ((data[p + 2] & 0xff) << 8) | (data[p + 3] & 0xff);
+    }
+}
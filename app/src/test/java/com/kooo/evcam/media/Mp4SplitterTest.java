@@ -0,0 +1,151 @@
+package com.kooo.evcam.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mp4Splitter 单元测试：输出由 {@link Mp4Fixture#read} 独立解析，逐样本核对数据、顺序和时间戳
+ */
+public class Mp4SplitterTest {
+    private File dir;
+    private File outDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("mp4split-test").toFile();
+        outDir = new File(dir, "out");
+        assertTrue(outDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        for (File parent : new File[]{outDir, dir}) {
+            File[] files = parent.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void splitCutsAtKeyframesAndKeepsEverySample() throws IOException {
+        // 10 秒视频（每秒一个关键帧）+ 10.03 秒音频
+        File src = Mp4Fixture.write(new File(dir, "20240102_030405_front.mp4"), new int[]{15, 7},
+                Mp4Fixture.video(1, 300, 30, 30), Mp4Fixture.audio(2, 470));
+        long maxPartBytes = src.length() / 3;
+
+        Mp4Splitter.Result result = Mp4Splitter.split(src, outDir, maxPartBytes);
+        int count = result.parts.size();
+        // 每段有各自的 moov，上限为源文件的三分之一时至少分成 3 段
+        assertTrue("parts: " + count, count >= 3 && count <= 5);
+        assertEquals("20240102_030405_front_1of" + count + ".mp4", result.parts.get(0).getName());
+
+        int nextVideo = 0;
+        int nextAudio = 0;
+        long totalUs = 0;
+        for (int i = 0; i < count; i++) {
+            File part = result.parts.get(i);
+            assertTrue(part.getName(), part.length() <= maxPartBytes);
+            Mp4Fixture.ReadMovie movie = Mp4Fixture.read(part);
+            assertEquals(2, movie.tracks.size());
+
+            Mp4Fixture.ReadTrack video = movie.tracks.get(0);
+            assertEquals("vide", video.handler);
+            assertTrue("part starts at a keyframe", video.samples.get(0).sync);
+            assertEquals(0, video.samples.get(0).index % 30);
+            assertEquals(0, video.samples.get(0).decodeTime);
+            nextVideo = checkContiguous(video.samples, 1, nextVideo);
+
+            Mp4Fixture.ReadTrack audio = movie.tracks.get(1);
+            assertEquals("soun", audio.handler);
+            assertEquals(0, audio.samples.get(0).decodeTime);
+            nextAudio = checkContiguous(audio.samples, 2, nextAudio);
+
+            // 分段时长按视频样本计算，音频起点与视频起点对齐（误差小于一帧音频）
+            long videoStartUs = video.samples.get(0).index * 1_000_000L / 30;
+            long audioStartUs = audio.samples.get(0).index * 1024 * 1_000_000L / 48000;
+            assertTrue(Math.abs(audioStartUs - videoStartUs) < 1024 * 1_000_000L / 48000);
+            assertEquals(video.samples.size() * 1_000_000L / 30, result.partDurationsUs[i]);
+            totalUs += result.partDurationsUs[i];
+        }
+        assertEquals(300, nextVideo);
+        assertEquals(470, nextAudio);
+        assertEquals(10_000_000, totalUs);
+    }
+
+    @Test
+    public void trimAlignsStartToPrecedingKeyframe() throws IOException {
+        File src = Mp4Fixture.write(new File(dir, "src.mp4"), new int[]{15, 7},
+                Mp4Fixture.video(1, 300, 30, 30), Mp4Fixture.audio(2, 470));
+        File dst = new File(outDir, "trim.mp4");
+
+        Mp4Splitter.Result result = Mp4Splitter.trim(src, dst, 1_500_000, 3_200_000);
+        Mp4Fixture.ReadMovie movie = Mp4Fixture.read(dst);
+        List<Mp4Fixture.Sample> video = movie.tracks.get(0).samples;
+        // 1.5 秒向前对齐到 1 秒处的关键帧
+        assertEquals(30, video.get(0).index);
+        assertTrue(video.get(0).sync);
+        checkContiguous(video, 1, 30);
+        int lastVideo = video.get(video.size() - 1).index;
+        assertTrue("ends near 3.2s: " + lastVideo, lastVideo >= 95 && lastVideo <= 97);
+        assertEquals(video.size() * 1_000_000L / 30, result.partDurationsUs[0]);
+
+        // 合成时间偏移原样保留，编辑列表仍跳过开头的 2 帧偏移
+        assertEquals(6000, video.get(0).compositionOffset);
+        assertEquals(6000, movie.tracks.get(0).editMediaTime);
+
+        List<Mp4Fixture.Sample> audio = movie.tracks.get(1).samples;
+        long firstAudioUs = audio.get(0).index * 1024 * 1_000_000L / 48000;
+        assertTrue("audio starts near 1s: " + firstAudioUs, Math.abs(firstAudioUs - 1_000_000) < 21_334);
+    }
+
+    @Test
+    public void singleOversizedGopStaysInOnePart() throws IOException {
+        // 全部是关键帧之间的一个 GOP，无法在上限内切分
+        File src = Mp4Fixture.write(new File(dir, "gop.mp4"), new int[]{10}, Mp4Fixture.video(1, 60, 30, 60));
+        Mp4Splitter.Result result = Mp4Splitter.split(src, outDir, 1024);
+        assertEquals(1, result.parts.size());
+        assertTrue(result.getLargestPartBytes() > 1024);
+        assertEquals(60, Mp4Fixture.read(result.parts.get(0)).tracks.get(0).samples.size());
+    }
+
+    @Test
+    public void fileWithoutMoovLeavesNoParts() throws IOException {
+        File src = new File(dir, "interrupted.mp4");
+        Files.write(src.toPath(), Mp4Fixture.concat(Mp4Fixture.box("ftyp", new byte[8]),
+                Mp4Fixture.box("mdat", new byte[1000])));
+        assertThrows(IOException.class, () -> Mp4Splitter.split(src, outDir, 1024));
+        String[] left = outDir.list();
+        assertArrayEquals(new String[0], left);
+        assertFalse(new File(outDir, "interrupted_1of1.mp4").exists());
+    }
+
+    /**
+     * 核对样本来自 trackId，且原样本序号从 expectedFirst 开始连续
+     * @return 下一个期望的样本序号
+     */
+    static int checkContiguous(List<Mp4Fixture.Sample> samples, int trackId, int expectedFirst) {
+        int next = expectedFirst;
+        for (Mp4Fixture.Sample sample : samples) {
+            assertEquals(trackId, sample.trackId);
+            assertEquals(next, sample.index);
+            next++;
+        }
+        return next;
+    }
+}
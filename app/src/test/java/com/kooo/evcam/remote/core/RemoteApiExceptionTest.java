@@ -0,0 +1,37 @@
+package com.kooo.evcam.remote.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RemoteApiException 单元测试：等待时间解析与可重试判断
+ */
+public class RemoteApiExceptionTest {
+
+    @Test
+    public void retryAfterHeaderWinsOverBody() {
+        assertEquals(7000, RemoteApiException.parseRetryAfterMs(" 7 ", "{\"parameters\":{\"retry_after\":3}}"));
+        // Telegram 429：{"ok":false,"error_code":429,"parameters":{"retry_after":3}}
+        assertEquals(3000, RemoteApiException.parseRetryAfterMs(null,
+                "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 3\","
+                        + "\"parameters\":{\"retry_after\": 3}}"));
+        // HTTP 日期格式的 Retry-After 不解析
+        assertEquals(0, RemoteApiException.parseRetryAfterMs("Wed, 21 Oct 2026 07:28:00 GMT", "{}"));
+        assertEquals(0, RemoteApiException.parseRetryAfterMs(null, null));
+    }
+
+    @Test
+    public void factoriesSetRetryability() {
+        RemoteApiException limited = RemoteApiException.rateLimited("发送消息失败: code=99991400, msg=frequency limit");
+        assertTrue(limited.isRetryable());
+        assertEquals(RemoteApiException.NO_HTTP_CODE, limited.getHttpCode());
+
+        RemoteApiException rejected = RemoteApiException.rejected("响应中没有 media_id: {}");
+        assertFalse(rejected.isRetryable());
+        assertEquals(0, rejected.getRetryAfterMs());
+        assertEquals("响应中没有 media_id: {}", rejected.getMessage());
+    }
+}
@@ -0,0 +1,406 @@
+package com.kooo.evcam.remote.upload;
+
+import com.kooo.evcam.remote.core.RemoteApiException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Adler32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ChunkedUploadEngine 单元测试：本地 HTTP 服务器模拟飞书云文档分片上传（prepare / part / finish），
+ * 按分片注入断线（读到一半断开连接、503），验证分片重试、进程重启后续传和服务器校验失败时作废续传日志
+ */
+public class ChunkedUploadEngineTest {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int BLOCK_COUNT = 10;
+
+    private File dir;
+    private File journalDir;
+    private File video;
+    private byte[] content;
+    private MockDriveServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("chunked-upload-test").toFile();
+        journalDir = new File(dir, "journal");
+        video = new File(dir, "20240102_030405_front.mp4");
+        content = new byte[BLOCK_SIZE * (BLOCK_COUNT - 1) + 1234];
+        new Random(7).nextBytes(content);
+        Files.write(video.toPath(), content);
+        server = new MockDriveServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void disconnectedPartsAreRetriedUntilTheFileIsComplete() throws Exception {
+        // 分片 2 读到一半断线，分片 5 连续两次断线，分片 7 返回 503
+        server.failNext(2, MockDriveServer.DROP);
+        server.failNext(5, MockDriveServer.DROP, MockDriveServer.DROP);
+        server.failNext(7, 503);
+
+        ChunkedUploadEngine engine = new ChunkedUploadEngine(journalDir);
+        AtomicInteger progress = new AtomicInteger();
+        String token = engine.upload(video, "chat", server.protocol(3), null,
+                (done, total) -> progress.set(done));
+
+        assertArrayEquals(content, server.finished.get(token));
+        assertEquals(BLOCK_COUNT, progress.get());
+        assertEquals(1, server.prepareCalls.get());
+        assertEquals(2, server.partCalls(2));
+        assertEquals(3, server.partCalls(5));
+        assertEquals(2, server.partCalls(7));
+        assertEquals(1, server.partCalls(0));
+        // 完成后删除续传日志
+        assertJournalEmpty();
+    }
+
+    @Test
+    public void uploadResumesAfterProcessRestart() throws Exception {
+        // 分片 4 起服务器不再响应，此时中断上传线程：模拟上传途中进程被杀
+        // 逐片上传，保证卡住时分片 0-3 都已确认并写入日志
+        CountDownLatch stalled = new CountDownLatch(1);
+        server.stallFromSeq = 4;
+        server.stalled = stalled;
+        ChunkedUploadEngine first = new ChunkedUploadEngine(journalDir);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread uploader = new Thread(() -> {
+            try {
+                first.upload(video, "chat", server.protocol(1), null, null);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        uploader.start();
+        assertTrue(stalled.await(10, TimeUnit.SECONDS));
+        uploader.interrupt();
+        uploader.join(10_000);
+        assertTrue(error.get() instanceof InterruptedException);
+        server.stallFromSeq = Integer.MAX_VALUE;
+        assertEquals(4, server.acceptedParts.size());
+
+        // 新的引擎实例（进程重启）：不重新 prepare，已确认的分片不重传
+        ChunkedUploadEngine restarted = new ChunkedUploadEngine(journalDir);
+        String token = restarted.upload(video, "chat", server.protocol(3), null, null);
+        assertArrayEquals(content, server.finished.get(token));
+        assertEquals(1, server.prepareCalls.get());
+        for (int seq = 0; seq < 4; seq++) {
+            assertEquals("part " + seq + " re-sent", 1, server.partCalls(seq));
+        }
+        assertJournalEmpty();
+    }
+
+    @Test
+    public void networkFailureKeepsJournalAndServerRejectionDropsIt() throws Exception {
+        // 分片 3 一直断线：重试用尽后抛出可重试的错误，保留日志等待下次续传
+        server.failNext(3, MockDriveServer.DROP, MockDriveServer.DROP, MockDriveServer.DROP,
+                MockDriveServer.DROP, MockDriveServer.DROP);
+        ChunkedUploadEngine engine = new ChunkedUploadEngine(journalDir);
+        IOException networkError = assertThrows(IOException.class,
+                () -> engine.upload(video, "chat", server.protocol(3), null, null));
+        assertTrue(UploadScheduler.isRetryable(networkError));
+        assertFalse(journalFiles().length == 0);
+
+        // 下一次续传时服务器校验失败（数据损坏）：不重试，作废日志，下次从头开始
+        server.failNext(3, MockDriveServer.CORRUPT);
+        RemoteApiException rejected = assertThrows(RemoteApiException.class,
+                () -> engine.upload(video, "chat", server.protocol(3), null, null));
+        assertEquals(400, rejected.getHttpCode());
+        assertEquals(1, server.prepareCalls.get());
+        assertJournalEmpty();
+
+        String token = engine.upload(video, "chat", server.protocol(3), null, null);
+        assertArrayEquals(content, server.finished.get(token));
+        assertEquals(2, server.prepareCalls.get());
+    }
+
+    private File[] journalFiles() {
+        File[] files = journalDir.listFiles();
+        return files != null ? files : new File[0];
+    }
+
+    private void assertJournalEmpty() {
+        assertEquals(Arrays.toString(journalFiles()), 0, journalFiles().length);
+    }
+
+    /**
+     * 模拟飞书云文档分片上传接口
+     * 分片请求按 seq 注入故障：DROP 读到一半断开连接（不返回响应），CORRUPT 校验失败（400），其他值为 HTTP 状态码
+     */
+    private static final class MockDriveServer {
+        static final int DROP = -1;
+        static final int CORRUPT = -2;
+
+        final HttpServer http;
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final String baseUrl;
+        final Map<Integer, Queue<Integer>> failures = new ConcurrentHashMap<>();
+        final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        final Map<String, byte[]> finished = new ConcurrentHashMap<>();
+        final Set<Integer> acceptedParts = ConcurrentHashMap.newKeySet();
+        final AtomicInteger prepareCalls = new AtomicInteger();
+        final Map<String, byte[][]> sessions = new ConcurrentHashMap<>();
+        volatile int stallFromSeq = Integer.MAX_VALUE;
+        volatile CountDownLatch stalled;
+
+        MockDriveServer() throws IOException {
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/upload_prepare", this::prepare);
+            http.createContext("/upload_part", this::part);
+            http.createContext("/upload_finish", this::finish);
+            // 多个分片并发上传
+            http.setExecutor(executor);
+            http.start();
+            baseUrl = "http://127.0.0.1:" + http.getAddress().getPort();
+        }
+
+        void stop() {
+            http.stop(0);
+            // 中断仍卡住的分片请求
+            executor.shutdownNow();
+        }
+
+        /**
+         * 分片 seq 接下来的几次请求依次按 plan 失败
+         */
+        void failNext(int seq, int... plan) {
+            Queue<Integer> queue = new ConcurrentLinkedQueue<>();
+            for (int failure : plan) {
+                queue.add(failure);
+            }
+            failures.put(seq, queue);
+        }
+
+        int partCalls(int seq) {
+            AtomicInteger count = attempts.get(seq);
+            return count != null ? count.get() : 0;
+        }
+
+        private void prepare(HttpExchange exchange) throws IOException {
+            Map<String, String> query = query(exchange.getRequestURI());
+            long size = Long.parseLong(query.get("size"));
+            int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+            String uploadId = "upload-" + prepareCalls.incrementAndGet();
+            sessions.put(uploadId, new byte[blocks][]);
+            respond(exchange, 200, "{\"upload_id\":\"" + uploadId + "\",\"block_size\":" + BLOCK_SIZE
+                    + ",\"block_num\":" + blocks + "}");
+        }
+
+        private void part(HttpExchange exchange) throws IOException {
+            Map<String, String> query = query(exchange.getRequestURI());
+            int seq = Integer.parseInt(query.get("seq"));
+            attempts.computeIfAbsent(seq, k -> new AtomicInteger()).incrementAndGet();
+            if (seq >= stallFromSeq) {
+                // 不响应，直到客户端放弃（进程被杀）
+                stalled.countDown();
+                exchange.getRequestBody().read(new byte[1024]);
+                try {
+                    Thread.sleep(30_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+                return;
+            }
+            Queue<Integer> plan = failures.get(seq);
+            Integer next = plan != null ? plan.poll() : null;
+            int failure = next != null ? next : 0;
+            if (failure == DROP) {
+                // 读到一半断开连接
+                exchange.getRequestBody().read(new byte[BLOCK_SIZE / 2]);
+                throw new IOException("injected disconnect");
+            }
+            byte[] body = readAll(exchange.getRequestBody());
+            if (failure > 0) {
+                respond(exchange, failure, "{\"code\":" + failure + ",\"msg\":\"injected\"}");
+                return;
+            }
+            Adler32 adler = new Adler32();
+            adler.update(body, 0, body.length);
+            if (failure == CORRUPT || adler.getValue() != Long.parseLong(query.get("checksum"))) {
+                respond(exchange, 400, "{\"code\":1061002,\"msg\":\"checksum mismatch\"}");
+                return;
+            }
+            byte[][] blocks = sessions.get(query.get("upload_id"));
+            if (blocks == null) {
+                respond(exchange, 400, "{\"code\":1061045,\"msg\":\"upload_id not found\"}");
+                return;
+            }
+            blocks[seq] = body;
+            acceptedParts.add(seq);
+            respond(exchange, 200, "{\"code\":0}");
+        }
+
+        private void finish(HttpExchange exchange) throws IOException {
+            String uploadId = query(exchange.getRequestURI()).get("upload_id");
+            byte[][] blocks = sessions.get(uploadId);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] block : blocks) {
+                if (block == null) {
+                    respond(exchange, 400, "{\"code\":1061043,\"msg\":\"missing block\"}");
+                    return;
+                }
+                out.write(block);
+            }
+            String token = "file-" + uploadId;
+            finished.put(token, out.toByteArray());
+            respond(exchange, 200, "{\"file_token\":\"" + token + "\"}");
+        }
+
+        /**
+         * 与 FeishuApiClient.newDriveUploadProtocol() 相同的分片协议，通过 HttpURLConnection 访问模拟服务器
+         */
+        ChunkedUploadEngine.Protocol protocol(int maxParallelParts) {
+            return new ChunkedUploadEngine.Protocol() {
+                @Override
+                public String getName() {
+                    return "mock-drive";
+                }
+
+                @Override
+                public int getMaxParallelParts() {
+                    return maxParallelParts;
+                }
+
+                @Override
+                public long getSessionTtlMs() {
+                    return TimeUnit.HOURS.toMillis(24);
+                }
+
+                @Override
+                public ChunkedUploadEngine.Session prepare(File file) throws IOException {
+                    String json = post("/upload_prepare?size=" + file.length(), new byte[0]);
+                    return new ChunkedUploadEngine.Session(field(json, "upload_id"),
+                            Long.parseLong(field(json, "block_size")), Integer.parseInt(field(json, "block_num")));
+                }
+
+                @Override
+                public void uploadPart(ChunkedUploadEngine.Session session, ChunkedUploadEngine.Part part)
+                        throws IOException {
+                    byte[] data = new byte[(int) part.length];
+                    try (RandomAccessFile raf = new RandomAccessFile(part.file, "r")) {
+                        raf.seek(part.offset);
+                        raf.readFully(data);
+                    }
+                    post("/upload_part?upload_id=" + session.uploadId + "&seq=" + part.seq
+                            + "&checksum=" + part.checksum, data);
+                }
+
+                @Override
+                public String finish(ChunkedUploadEngine.Session session) throws IOException {
+                    return field(post("/upload_finish?upload_id=" + session.uploadId, new byte[0]), "file_token");
+                }
+            };
+        }
+
+        private String post(String path, byte[] body) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            try {
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setReadTimeout(5000);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+                int code = connection.getResponseCode();
+                InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+                String response = new String(readAll(in), StandardCharsets.UTF_8);
+                if (code != 200) {
+                    throw new RemoteApiException(path + " 失败: " + code + ", " + response, code, 0,
+                            code == 429 || code >= 500);
+                }
+                return response;
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        private static String field(String json, String name) {
+            int start = json.indexOf("\"" + name + "\":") + name.length() + 3;
+            int end = start;
+            while (end < json.length() && json.charAt(end) != ',' && json.charAt(end) != '}') {
+                end++;
+            }
+            return json.substring(start, end).replace("\"", "");
+        }
+
+        private static Map<String, String> query(URI uri) {
+            Map<String, String> params = new HashMap<>();
+            for (String pair : uri.getRawQuery().split("&")) {
+                int eq = pair.indexOf('=');
+                params.put(pair.substring(0, eq), pair.substring(eq + 1));
+            }
+            return params;
+        }
+
+        private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
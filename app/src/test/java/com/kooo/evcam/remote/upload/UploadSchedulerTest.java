@@ -0,0 +1,197 @@
+package com.kooo.evcam.remote.upload;
+
+import com.kooo.evcam.remote.core.RemoteApiException;
+import com.kooo.evcam.remote.core.RemotePlatform;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * UploadScheduler 单元测试：四个视频的总耗时（与原来逐个上传、文件之间固定等待 2 秒的做法对比）、
+ * 按文件顺序发送，以及按 {@link RemoteApiException} 的类型重试
+ */
+public class UploadSchedulerTest {
+    // 原上传服务在文件之间固定等待的时间
+    private static final long LEGACY_SLEEP_BETWEEN_FILES_MS = 2000;
+    private static final long THUMBNAIL_MS = 200;
+    private static final long UPLOAD_MS = 1000;
+
+    private File dir;
+    private List<File> videos;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("upload-test").toFile();
+        videos = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            File file = new File(dir, "20240102_03040" + i + "_front.mp4");
+            Files.write(file.toPath(), new byte[16]);
+            videos.add(file);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : videos) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * 模拟 Telegram 视频上传：准备（提取缩略图）和上传（sendVideo）各耗时固定时间，记录发送顺序和并发数
+     */
+    private static class SimulatedUploader implements UploadScheduler.FileUploader<String, String> {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger cleanups = new AtomicInteger();
+
+        @Override
+        public String prepare(File file, int index) throws Exception {
+            Thread.sleep(THUMBNAIL_MS);
+            return file.getName() + ".jpg";
+        }
+
+        @Override
+        public String upload(File file, String prepared, int index, UploadScheduler.TokenBucket limiter)
+                throws Exception {
+            limiter.acquire();
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                // 后面的文件先传完，验证发送仍按文件顺序
+                Thread.sleep(UPLOAD_MS - index * 50L);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            return "media-" + index;
+        }
+
+        @Override
+        public void deliver(File file, String uploaded, int index, UploadScheduler.TokenBucket limiter) {
+            // 与 Telegram 一致：上传即发送，这里只记录顺序
+            delivered.add(uploaded);
+        }
+
+        @Override
+        public void cleanup(String prepared) {
+            cleanups.incrementAndGet();
+        }
+    }
+
+    /**
+     * 等待批次完成的回调
+     */
+    private static class Completion implements UploadScheduler.BatchListener {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile List<String> uploaded;
+        volatile List<String> failed;
+
+        @Override
+        public void onProgress(String message) {
+        }
+
+        @Override
+        public void onComplete(List<String> uploaded, List<String> failed, UploadScheduler.TokenBucket limiter) {
+            this.uploaded = uploaded;
+            this.failed = failed;
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("batch did not complete", latch.await(30, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void fourVideosFinishInLessThanHalfTheSequentialTime() throws Exception {
+        SimulatedUploader uploader = new SimulatedUploader();
+        Completion completion = new Completion();
+        long start = System.nanoTime();
+        assertTrue(UploadScheduler.getInstance().submit(RemotePlatform.TELEGRAM, videos, uploader, completion));
+        completion.await();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // 原做法：逐个准备、上传，文件之间固定等待（不含完成后的等待）
+        long sequentialMs = 0;
+        for (int i = 0; i < videos.size(); i++) {
+            sequentialMs += THUMBNAIL_MS + UPLOAD_MS - i * 50L;
+        }
+        sequentialMs += LEGACY_SLEEP_BETWEEN_FILES_MS * (videos.size() - 1);
+
+        assertTrue("scheduled " + elapsedMs + "ms vs sequential " + sequentialMs + "ms",
+                elapsedMs * 2 < sequentialMs);
+        assertEquals(4, completion.uploaded.size());
+        assertTrue(completion.failed.isEmpty());
+        assertEquals(Arrays.asList("media-0", "media-1", "media-2", "media-3"), uploader.delivered);
+        assertEquals(2, uploader.maxConcurrent.get());
+        assertEquals(4, uploader.cleanups.get());
+    }
+
+    @Test
+    public void retryableApiErrorsAreRetriedAndRejectionsAreNot() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        SimulatedUploader uploader = new SimulatedUploader() {
+            @Override
+            public String prepare(File file, int index) {
+                return null;
+            }
+
+            @Override
+            public String upload(File file, String prepared, int index, UploadScheduler.TokenBucket limiter)
+                    throws Exception {
+                limiter.acquire();
+                if (index == 0 && attempts.incrementAndGet() == 1) {
+                    // 频率限制，服务器要求等待 1 秒
+                    throw new RemoteApiException("发送视频失败: 429, Too Many Requests", 429, 1000, true);
+                }
+                if (index == 1) {
+                    throw RemoteApiException.rejected("发送视频失败: 400, Bad Request: file is too big");
+                }
+                return "media-" + index;
+            }
+        };
+        Completion completion = new Completion();
+        long start = System.nanoTime();
+        assertTrue(UploadScheduler.getInstance().submit(RemotePlatform.FEISHU, videos.subList(0, 2), uploader,
+                completion));
+        completion.await();
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(2, attempts.get());
+        // 重试等到 Retry-After 之后，而不是立即重试
+        assertTrue("retried after " + elapsedMs + "ms", elapsedMs >= 900);
+        assertEquals(Collections.singletonList(videos.get(0).getName()), completion.uploaded);
+        assertEquals(1, completion.failed.size());
+        assertTrue(completion.failed.get(0).contains("file is too big"));
+    }
+
+    @Test
+    public void errorClassificationUsesExceptionType() {
+        assertTrue(UploadScheduler.isRetryable(new RemoteApiException("x", 503, 0, true)));
+        assertTrue(UploadScheduler.isRetryable(RemoteApiException.rateLimited("发送消息失败: code=99991400")));
+        assertFalse(UploadScheduler.isRetryable(RemoteApiException.rejected("发送单聊文件消息需要提供 userId")));
+        // 没有 HTTP 响应的网络错误
+        assertTrue(UploadScheduler.isRetryable(new SocketTimeoutException("timeout")));
+        // 中文信息中带有状态码样式的文字不再影响判断
+        assertTrue(UploadScheduler.isRetryable(new IOException("连接失败: 404, reset")));
+        assertFalse(UploadScheduler.isRetryable(new IllegalStateException("bug")));
+    }
+}
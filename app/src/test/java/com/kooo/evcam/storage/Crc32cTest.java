@@ -0,0 +1,82 @@
+package com.kooo.evcam.storage;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Crc32c 单元测试：标准测试向量（RFC 3720 附录 B.4）、分段累加、直接内存缓冲区
+ */
+public class Crc32cTest {
+
+    @Test
+    public void matchesPublishedTestVectors() {
+        assertEquals(0xE3069283L, crc("123456789".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0x8A9136AAL, crc(new byte[32]));
+
+        byte[] ones = new byte[32];
+        Arrays.fill(ones, (byte) 0xFF);
+        assertEquals(0x62A8AB43L, crc(ones));
+
+        byte[] ascending = new byte[32];
+        byte[] descending = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            ascending[i] = (byte) i;
+            descending[i] = (byte) (31 - i);
+        }
+        assertEquals(0x46DD794EL, crc(ascending));
+        assertEquals(0x113FDB5CL, crc(descending));
+
+        assertEquals(0L, crc(new byte[0]));
+    }
+
+    @Test
+    public void incrementalAndBufferUpdatesMatchSinglePass() {
+        byte[] data = new byte[100_003];
+        new Random(7).nextBytes(data);
+        long expected = crc(data);
+
+        // 任意切分（包括不足 8 字节的片段和单字节）
+        Crc32c split = new Crc32c();
+        Random random = new Random(11);
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, random.nextInt(20));
+            if (length == 1) {
+                split.update(data[offset]);
+            } else {
+                split.update(data, offset, length);
+            }
+            offset += length;
+        }
+        assertEquals(expected, split.getValue());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        Crc32c fromDirect = new Crc32c();
+        fromDirect.update(direct);
+        assertEquals(expected, fromDirect.getValue());
+        assertEquals(direct.limit(), direct.position());
+
+        ByteBuffer heap = ByteBuffer.wrap(data, 1, data.length - 1).slice();
+        Crc32c fromHeap = new Crc32c();
+        fromHeap.update(data[0]);
+        fromHeap.update(heap);
+        assertEquals(expected, fromHeap.getValue());
+
+        fromHeap.reset();
+        fromHeap.update(data);
+        assertEquals(expected, fromHeap.getValue());
+    }
+
+    private static long crc(byte[] data) {
+        Crc32c crc = new Crc32c();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+}
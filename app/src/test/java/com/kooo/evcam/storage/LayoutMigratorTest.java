@@ -0,0 +1,102 @@
+package com.kooo.evcam.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * LayoutMigrator 单元测试：分批迁移、正在写入的文件延后迁移、目标冲突时不标记完成
+ */
+public class LayoutMigratorTest {
+    private static final long MIN_AGE_MS = 60_000;
+
+    private File root;
+    private File mediaDir;
+    private MediaCatalog catalog;
+    private LayoutMigrator migrator;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("migrator-test").toFile();
+        mediaDir = new File(root, "media");
+        assertTrue(mediaDir.mkdirs());
+        catalog = new MediaCatalog(new File(root, "catalog"));
+        migrator = new LayoutMigrator(catalog);
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(root);
+    }
+
+    @Test
+    public void movesFlatFilesInBatches() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            flatFile(String.format("20240102_0304%02d_front.mp4", i), true);
+        }
+        assertEquals(3, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 2, MIN_AGE_MS));
+        assertEquals(1, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 2, MIN_AGE_MS));
+        assertEquals(0, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 2, MIN_AGE_MS));
+        assertEquals(0, MediaLayout.listFlatFiles(mediaDir, null).size());
+        File moved = MediaLayout.resolve(mediaDir, "20240102_030400_front.mp4");
+        assertTrue(moved.exists());
+        assertNotNull(catalog.get(moved.getAbsolutePath()));
+    }
+
+    @Test
+    public void recentFileIsRequeuedUntilItIsOldEnough() throws IOException {
+        File old = flatFile("20240102_030400_front.mp4", true);
+        File recording = flatFile("20240102_030500_front.mp4", false);
+
+        // 正在写入的文件留在队列里，根目录不标记完成
+        assertEquals(1, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 10, MIN_AGE_MS));
+        assertFalse(old.exists());
+        assertTrue(recording.exists());
+        assertEquals(1, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 10, MIN_AGE_MS));
+
+        assertTrue(recording.setLastModified(System.currentTimeMillis() - 2 * MIN_AGE_MS));
+        assertEquals(0, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 10, MIN_AGE_MS));
+        assertFalse(recording.exists());
+        assertTrue(MediaLayout.resolve(mediaDir, recording.getName()).exists());
+    }
+
+    @Test
+    public void conflictingFileIsRetriedAndRootIsRescanned() throws IOException {
+        File flat = flatFile("20240102_030400_front.mp4", true);
+        File existing = MediaLayout.resolveAndCreate(mediaDir, flat.getName());
+        Files.write(existing.toPath(), new byte[10]);
+
+        // 目标已存在：重试几次后放弃，本轮结束但不标记完成
+        int remaining = 1;
+        int batches = 0;
+        while (remaining > 0) {
+            remaining = migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 10, MIN_AGE_MS);
+            assertTrue(++batches < 10);
+        }
+        assertTrue(flat.exists());
+
+        // 冲突解除后，下次调用重新列出根目录并完成迁移
+        assertTrue(existing.delete());
+        assertEquals(0, migrator.migrateBatch(mediaDir, MediaCatalog.TYPE_VIDEO, 10, MIN_AGE_MS));
+        assertFalse(flat.exists());
+        assertEquals(100, existing.length());
+    }
+
+    private File flatFile(String name, boolean old) throws IOException {
+        File file = new File(mediaDir, name);
+        Files.write(file.toPath(), new byte[100]);
+        if (old) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * MIN_AGE_MS));
+        }
+        return file;
+    }
+}
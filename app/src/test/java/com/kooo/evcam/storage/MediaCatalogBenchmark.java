@@ -0,0 +1,107 @@
+package com.kooo.evcam.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 10 万条目的媒体目录：从快照加载、按时间范围查询、按存储卷统计大小，与列目录并逐个读取文件大小的对照
+ * 条目为 4 路摄像头、1 分钟分段（约 17 天的循环录像）
+ * 运行：./gradlew :app:testDebugUnitTest --tests '*BenchmarkRunnerTest' -Pbenchmark=MediaCatalogBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MediaCatalogBenchmark {
+
+    static final int ENTRIES = 100_000;
+    private static final String[] CAMERAS = {"front", "back", "left", "right"};
+    private static final long START_MS = 1_700_000_000_000L;
+    private static final long SEGMENT_MS = 60_000;
+
+    private File root;
+    private File catalogDir;
+    private File mediaDir;
+    private MediaCatalog catalog;
+    private long queryFromMs;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("catalog-bench").toFile();
+        catalogDir = new File(root, "catalog");
+        mediaDir = new File(root, "media");
+        if (!mediaDir.mkdirs()) {
+            throw new IOException("Cannot create " + mediaDir);
+        }
+        MediaCatalog writer = new MediaCatalog(catalogDir);
+        for (int i = 0; i < ENTRIES; i++) {
+            String camera = CAMERAS[i % CAMERAS.length];
+            File file = new File(mediaDir, String.format("segment_%06d_%s.mp4", i, camera));
+            // 对照组需要真实文件（空文件，只测目录遍历和 stat 的开销）
+            if (!file.createNewFile()) {
+                throw new IOException("Cannot create " + file);
+            }
+            writer.put(new MediaCatalog.Entry(file.getAbsolutePath(), MediaCatalog.TYPE_VIDEO, camera,
+                    START_MS + (i / CAMERAS.length) * SEGMENT_MS, SEGMENT_MS, 50L * 1024 * 1024, "h264",
+                    MediaCatalog.TIER_LOOP, "internal"));
+        }
+        writer.compact();
+        catalog = new MediaCatalog(catalogDir);
+        queryFromMs = START_MS + (ENTRIES / CAMERAS.length / 2) * SEGMENT_MS;
+    }
+
+    @TearDown
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public int loadSnapshot() {
+        return new MediaCatalog(catalogDir).size();
+    }
+
+    @Benchmark
+    public List<MediaCatalog.Entry> queryOneHourOneCamera() {
+        return catalog.query(MediaCatalog.TYPE_VIDEO, "front", queryFromMs, queryFromMs + 3_600_000);
+    }
+
+    @Benchmark
+    public List<MediaCatalog.Entry> queryOverlappingAllCameras() {
+        return catalog.queryOverlapping(MediaCatalog.TYPE_VIDEO, null, queryFromMs + 30_000,
+                queryFromMs + 300_000, SEGMENT_MS);
+    }
+
+    @Benchmark
+    public long totalSizeOfVolume() {
+        return catalog.getTotalSize(MediaCatalog.TYPE_VIDEO, "internal");
+    }
+
+    @Benchmark
+    public long listFilesAndStat() {
+        long size = 0;
+        File[] files = mediaDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
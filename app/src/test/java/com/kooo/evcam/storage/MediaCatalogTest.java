@@ -0,0 +1,224 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.media.Mp4Fixture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MediaCatalog 单元测试：后台加载、快照压缩后的重新加载、监听器回调时机、目录对账、后台补充录像元数据
+ */
+public class MediaCatalogTest {
+    private File root;
+    private File catalogDir;
+    private File mediaDir;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("catalog-test").toFile();
+        catalogDir = new File(root, "catalog");
+        mediaDir = new File(root, "media");
+        assertTrue(mediaDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        deleteRecursively(root);
+    }
+
+    @Test
+    public void loadsOnExecutorAndRunsReadyCallbacks() {
+        MediaCatalog writer = new MediaCatalog(catalogDir);
+        for (int i = 0; i < 10; i++) {
+            writer.put(videoEntry(i));
+        }
+
+        List<Runnable> queued = new ArrayList<>();
+        Executor manual = queued::add;
+        MediaCatalog catalog = new MediaCatalog(catalogDir, manual);
+        assertFalse(catalog.isReady());
+        AtomicInteger callbacks = new AtomicInteger();
+        catalog.whenReady(callbacks::incrementAndGet);
+        assertEquals(0, callbacks.get());
+
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertTrue(catalog.isReady());
+        assertEquals(1, callbacks.get());
+        assertEquals(10, catalog.size());
+
+        // 已加载后立即在当前线程执行
+        catalog.whenReady(callbacks::incrementAndGet);
+        assertEquals(2, callbacks.get());
+    }
+
+    @Test
+    public void compactedSnapshotReloadsAllEntries() {
+        MediaCatalog catalog = new MediaCatalog(catalogDir);
+        for (int i = 0; i < 1500; i++) {
+            catalog.put(videoEntry(i));
+        }
+        catalog.onMediaFileDeleted(new File(pathOf(0)));
+        catalog.compact();
+        assertTrue(new File(catalogDir, "catalog.snapshot").exists());
+        assertFalse(new File(catalogDir, "catalog.snapshot.tmp").exists());
+        assertFalse(new File(catalogDir, "catalog.journal").exists());
+
+        MediaCatalog reloaded = new MediaCatalog(catalogDir);
+        assertEquals(1499, reloaded.size());
+        assertNull(reloaded.get(pathOf(0)));
+        assertNotNull(reloaded.get(pathOf(1499)));
+        assertEquals(catalog.getTotalSize(MediaCatalog.TYPE_VIDEO), reloaded.getTotalSize(MediaCatalog.TYPE_VIDEO));
+    }
+
+    @Test
+    public void listenersRunAfterLockIsReleased() throws Exception {
+        MediaCatalog catalog = new MediaCatalog(catalogDir);
+        AtomicBoolean queriedFromOtherThread = new AtomicBoolean();
+        catalog.addChangeListener(entry -> {
+            // 其他线程能在回调期间访问目录，说明回调时未持有目录锁
+            Thread reader = new Thread(() -> queriedFromOtherThread.set(catalog.get(entry.path) != null));
+            reader.start();
+            try {
+                reader.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        catalog.put(videoEntry(1));
+        assertTrue(queriedFromOtherThread.get());
+    }
+
+    @Test
+    public void onlyFirstInsertIsReportedAsAdded() throws IOException {
+        List<Runnable> queued = new ArrayList<>();
+        MediaCatalog catalog = new MediaCatalog(catalogDir, queued::add);
+        queued.remove(0).run();
+        List<String> added = new ArrayList<>();
+        List<String> updated = new ArrayList<>();
+        catalog.addChangeListener(new MediaCatalog.ChangeListener() {
+            @Override
+            public void onEntryAdded(MediaCatalog.Entry entry) {
+                added.add(entry.path);
+            }
+
+            @Override
+            public void onEntryUpdated(MediaCatalog.Entry entry) {
+                updated.add(entry.path);
+            }
+        });
+
+        File video = MediaLayout.resolveAndCreate(mediaDir, "20240102_030405_front.mp4");
+        Mp4Fixture.writeVideo(video, 90);
+        catalog.onMediaFileClosed(video, MediaCatalog.TYPE_VIDEO);
+        queued.remove(0).run();
+        catalog.setLocked(video.getAbsolutePath(), true);
+        File renamed = new File(video.getParentFile(), "20240102_030405_front_event.mp4");
+        assertTrue(video.renameTo(renamed));
+        catalog.onMediaFileMoved(video, renamed);
+
+        // 补充元数据、锁定、同一存储卷内改名都只是更新，写入量只按首次加入统计一次
+        assertEquals(1, added.size());
+        assertEquals(video.getAbsolutePath(), added.get(0));
+        assertEquals(3, updated.size());
+        assertEquals(renamed.getAbsolutePath(), updated.get(2));
+    }
+
+    @Test
+    public void reconcileAddsNewFilesAndRemovesDeletedOnes() throws IOException {
+        MediaCatalog catalog = new MediaCatalog(catalogDir);
+        File a = MediaLayout.resolveAndCreate(mediaDir, "20240102_030405_front.mp4");
+        File b = MediaLayout.resolveAndCreate(mediaDir, "20240102_030505_back.mp4");
+        File photo = MediaLayout.resolveAndCreate(mediaDir, "20240102_030405_front.png");
+        Files.write(a.toPath(), new byte[100]);
+        Files.write(b.toPath(), new byte[200]);
+        Files.write(photo.toPath(), new byte[50]);
+
+        catalog.reconcile(mediaDir, MediaCatalog.TYPE_VIDEO);
+        catalog.reconcile(mediaDir, MediaCatalog.TYPE_PHOTO);
+        assertEquals(300, catalog.getTotalSize(MediaCatalog.TYPE_VIDEO));
+        assertEquals(50, catalog.getTotalSize(MediaCatalog.TYPE_PHOTO));
+        assertEquals("front", catalog.get(a.getAbsolutePath()).camera);
+        assertEquals("png", catalog.get(photo.getAbsolutePath()).codec);
+
+        assertTrue(b.delete());
+        Files.write(a.toPath(), new byte[150]);
+        catalog.reconcile(mediaDir, MediaCatalog.TYPE_VIDEO);
+        assertNull(catalog.get(b.getAbsolutePath()));
+        assertEquals(150, catalog.getTotalSize(MediaCatalog.TYPE_VIDEO));
+    }
+
+    @Test
+    public void videoInfoIsFilledInOnBackgroundExecutor() throws IOException {
+        List<Runnable> queued = new ArrayList<>();
+        MediaCatalog catalog = new MediaCatalog(catalogDir, queued::add);
+        queued.remove(0).run();
+
+        // 文件内容不是 MP4：保留估算值
+        File broken = MediaLayout.resolveAndCreate(mediaDir, "20240102_030405_back.mp4");
+        Files.write(broken.toPath(), new byte[64]);
+        catalog.onMediaFileClosed(broken, MediaCatalog.TYPE_VIDEO);
+        MediaCatalog.Entry estimated = catalog.get(broken.getAbsolutePath());
+        assertNotNull(estimated);
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+        assertEquals(estimated.durationMs, catalog.get(broken.getAbsolutePath()).durationMs);
+
+        // 录像关闭时只记录估算值，后台任务执行后才替换为 moov 中的时长
+        File video = MediaLayout.resolveAndCreate(mediaDir, "20240102_030405_front.mp4");
+        Mp4Fixture.writeVideo(video, 90);
+        catalog.onMediaFileClosed(video, MediaCatalog.TYPE_VIDEO);
+        catalog.setLocked(video.getAbsolutePath(), true);
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+        MediaCatalog.Entry filled = catalog.get(video.getAbsolutePath());
+        // 90 帧减去编辑列表跳过的 2 帧
+        assertEquals(2933, filled.durationMs);
+        assertEquals("h264", filled.codec);
+        assertTrue("tier set before the probe finished is kept", filled.isLocked());
+    }
+
+    @Test
+    public void guessTypeMatchesPhotoExtensions() {
+        assertEquals(MediaCatalog.TYPE_VIDEO, MediaCatalog.guessType("20240102_030405_front.mp4"));
+        assertEquals(MediaCatalog.TYPE_PHOTO, MediaCatalog.guessType("20240102_030405_front.jpg"));
+        assertEquals(MediaCatalog.TYPE_PHOTO, MediaCatalog.guessType("20240102_030405_front.JPEG"));
+        assertEquals(MediaCatalog.TYPE_PHOTO, MediaCatalog.guessType("20240102_030405_front.png"));
+        assertEquals(-1, MediaCatalog.guessType("20240102_030405_front.txt"));
+    }
+
+    private String pathOf(int i) {
+        return new File(mediaDir, String.format("20240102_%06d_front.mp4", i)).getAbsolutePath();
+    }
+
+    private MediaCatalog.Entry videoEntry(int i) {
+        return new MediaCatalog.Entry(pathOf(i), MediaCatalog.TYPE_VIDEO, "front", 1_700_000_000_000L + i * 60_000L,
+                60_000, 1000 + i, "h264", MediaCatalog.TIER_LOOP, "internal");
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
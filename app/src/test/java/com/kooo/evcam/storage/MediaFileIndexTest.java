@@ -0,0 +1,177 @@
+package com.kooo.evcam.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MediaFileIndex 单元测试：按时间戳 / 时间范围查找、分段边界处的重叠判断、按路径移除、
+ * 与监听器重新扫描（清空后重新加入）的结果一致
+ */
+public class MediaFileIndexTest {
+    private static final long SEGMENT_MS = 60_000;
+    // 2024-01-02 10:00:00（本地时区，与索引键的格式化一致）
+    private static final long BASE_MS = parse("20240102_100000");
+
+    private File root;
+    private File tempDir;
+    private File videoDir;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("file-index-test").toFile();
+        tempDir = new File(root, "temp");
+        videoDir = new File(root, "video");
+        assertTrue(tempDir.mkdirs());
+        assertTrue(videoDir.mkdirs());
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(root);
+    }
+
+    @Test
+    public void findsByTimestampAndTimeRange() throws IOException {
+        MediaFileIndex index = new MediaFileIndex(".mp4");
+        for (int i = 0; i < 5; i++) {
+            index.add(segment(videoDir, i, "front"));
+            index.add(segment(videoDir, i, "back"));
+        }
+        // 扩展名不匹配或不是时间戳文件名的文件不进入索引
+        index.add(new File(videoDir, "20240102_100000_front.png"));
+        index.add(new File(videoDir, "readme.mp4"));
+        assertEquals(10, index.size());
+        assertFalse(index.accepts("20240102_100000_front.jpg"));
+        assertTrue(index.accepts("20240102_100000_front.MP4"));
+
+        assertEquals(names("20240102_100100_back.mp4", "20240102_100100_front.mp4"),
+                names(index.findByTimestamp("20240102_100100")));
+        assertTrue(index.findByTimestamp("20240102_100101").isEmpty());
+
+        // 区间两端都包含（秒级精度：结束时间所在秒内开始的文件也命中）
+        assertEquals(names("20240102_100100_back.mp4", "20240102_100100_front.mp4",
+                        "20240102_100200_back.mp4", "20240102_100200_front.mp4"),
+                names(index.findInRange(BASE_MS + SEGMENT_MS, BASE_MS + 2 * SEGMENT_MS + 999)));
+        assertTrue(index.findInRange(BASE_MS + 2 * SEGMENT_MS, BASE_MS + SEGMENT_MS).isEmpty());
+    }
+
+    @Test
+    public void overlapUsesSegmentEndAtBoundaries() throws IOException {
+        MediaFileIndex index = new MediaFileIndex(".mp4");
+        for (int i = 0; i < 4; i++) {
+            index.add(segment(videoDir, i, "front"));
+        }
+
+        // 区间在 10:01:30 - 10:01:45：只有 10:01:00 的分段覆盖，10:00:00 的分段在 10:01:00 结束
+        assertEquals(names("20240102_100100_front.mp4"),
+                names(index.findOverlapping(BASE_MS + 90_000, BASE_MS + 105_000, SEGMENT_MS)));
+
+        // 区间从分段边界 10:01:00 开始：上一个分段恰好在此结束，也算重叠
+        assertEquals(names("20240102_100000_front.mp4", "20240102_100100_front.mp4"),
+                names(index.findOverlapping(BASE_MS + SEGMENT_MS, BASE_MS + SEGMENT_MS + 1_000, SEGMENT_MS)));
+
+        // 区间结束于下一个分段的开始：下一个分段开始的那一秒也命中
+        assertEquals(names("20240102_100100_front.mp4", "20240102_100200_front.mp4"),
+                names(index.findOverlapping(BASE_MS + 90_000, BASE_MS + 2 * SEGMENT_MS, SEGMENT_MS)));
+
+        // 最大时长为 0 时只按开始时间查找
+        assertEquals(names("20240102_100200_front.mp4"),
+                names(index.findOverlapping(BASE_MS + 2 * SEGMENT_MS, BASE_MS + 2 * SEGMENT_MS + 30_000, 0)));
+    }
+
+    @Test
+    public void removeOnlyMatchesTheIndexedPath() throws IOException {
+        MediaFileIndex index = new MediaFileIndex(".mp4");
+        // 中转写入：临时目录中的分段先加入，移动到最终目录后同名文件替换为最终路径
+        File temp = segment(tempDir, 0, "front");
+        index.add(temp);
+        File moved = segment(videoDir, 0, "front");
+        index.add(moved);
+        assertEquals(1, index.size());
+
+        // 临时文件的删除事件晚于移入事件到达：不影响最终文件的记录
+        index.remove(temp);
+        assertEquals(Collections.singletonList(moved), index.findByTimestamp("20240102_100000"));
+
+        index.remove(moved);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void rescanMatchesIncrementalUpdates() throws IOException {
+        File hourDir = new File(videoDir, "20240102/10");
+        assertTrue(hourDir.mkdirs());
+        MediaFileIndex incremental = new MediaFileIndex(".mp4");
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            File file = segment(i < 3 ? videoDir : hourDir, i, i % 2 == 0 ? "front" : "back");
+            files.add(file);
+            incremental.add(file);
+        }
+        // 分区目录被删除（DELETE_SELF）时移除其下所有文件
+        incremental.removeUnder(hourDir);
+        assertEquals(3, incremental.size());
+
+        // 存储卷变化后监听器清空索引并重新扫描，结果与增量维护一致
+        MediaCatalogTest.deleteRecursively(hourDir);
+        MediaFileIndex rescanned = new MediaFileIndex(".mp4");
+        rescanned.add(files.get(0));
+        rescanned.clear();
+        File[] listed = videoDir.listFiles(File::isFile);
+        rescanned.addAll(Arrays.asList(listed));
+        assertEquals(incremental.findInRange(BASE_MS, BASE_MS + 10 * SEGMENT_MS),
+                rescanned.findInRange(BASE_MS, BASE_MS + 10 * SEGMENT_MS));
+    }
+
+    /**
+     * 创建第 i 个分段（开始时间 BASE_MS + i 分钟，最后修改时间为分段结束时间）
+     */
+    private static File segment(File dir, int i, String camera) throws IOException {
+        long startMs = BASE_MS + i * SEGMENT_MS;
+        File file = new File(dir, format(startMs) + "_" + camera + ".mp4");
+        Files.write(file.toPath(), new byte[16]);
+        assertTrue(file.setLastModified(startMs + SEGMENT_MS));
+        return file;
+    }
+
+    private static List<String> names(String... names) {
+        return Arrays.asList(names);
+    }
+
+    private static List<String> names(List<File> files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    private static String format(long timeMs) {
+        return new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date(timeMs));
+    }
+
+    private static long parse(String timestamp) {
+        try {
+            return new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).parse(timestamp).getTime();
+        } catch (ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
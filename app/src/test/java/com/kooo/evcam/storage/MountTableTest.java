@@ -0,0 +1,99 @@
+package com.kooo.evcam.storage;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MountTable 单元测试：解析车机上采集的 /proc/mounts 样本（test/resources/mounts）
+ */
+public class MountTableTest {
+
+    @Test
+    public void fuseVolumesAreListedOnceInMountOrder() throws IOException {
+        List<MountTable.Mount> mounts = load("android12_usb_fuse.txt");
+        assertEquals(14, mounts.size());
+
+        // /storage/1A2B-3C4D 挂载了两次，/mnt/media_rw、/mnt/user 下的同名目录不是存储卷
+        assertEquals(Arrays.asList(new File("/storage/1A2B-3C4D"), new File("/storage/5E6F-7A8B")),
+                MountTable.removableVolumes(mounts));
+
+        MountTable.Mount usb = MountTable.findMountFor(mounts, "/storage/1A2B-3C4D/DCIM/EVCam_Video/a.mp4");
+        assertNotNull(usb);
+        assertEquals("fuse", usb.fsType);
+        assertTrue(usb.isRemovableVolume());
+        assertFalse(usb.isReadOnly());
+
+        MountTable.Mount raw = MountTable.findMountFor(mounts, "/mnt/media_rw/5E6F-7A8B/DCIM");
+        assertEquals("exfat", raw.fsType);
+        assertTrue(raw.isReadOnly());
+        assertEquals("/dev/block/vold/public:8,17", raw.device);
+
+        // 最长前缀：/data/media 而不是 /data，也不是 /
+        assertEquals("/data/media", MountTable.findMountFor(mounts, "/data/media/0/DCIM").mountPoint);
+        assertEquals("/data", MountTable.findMountFor(mounts, "/data/mediaserver").mountPoint);
+        assertEquals("/", MountTable.findMountFor(mounts, "/system/bin").mountPoint);
+    }
+
+    @Test
+    public void sdcardfsVolumesAcceptLowercaseSerials() throws IOException {
+        List<MountTable.Mount> mounts = load("android9_sdcardfs.txt");
+        assertEquals(Arrays.asList(new File("/storage/B4FE-5315"), new File("/storage/0123-abcd")),
+                MountTable.removableVolumes(mounts));
+        assertEquals("sdcardfs", MountTable.findMountFor(mounts, "/storage/B4FE-5315/DCIM").fsType);
+        assertFalse(MountTable.findMountFor(mounts, "/storage/emulated/0").isRemovableVolume());
+    }
+
+    @Test
+    public void escapedFieldsAreDecodedAndMalformedLinesSkipped() throws IOException {
+        List<MountTable.Mount> mounts = load("escaped_and_malformed.txt");
+        // 空行和字段不足的行被跳过
+        assertEquals(8, mounts.size());
+        assertEquals("/mnt/usb drive", mounts.get(0).mountPoint);
+        assertEquals("/mnt/tab\tand\\slash", mounts.get(1).mountPoint);
+        // 不完整的转义原样保留
+        assertEquals("/mnt/bad\\04escape", mounts.get(2).mountPoint);
+        // 多余的空白
+        assertEquals("/storage/ABCD-1234", mounts.get(3).mountPoint);
+        assertEquals("rw,nosuid", mounts.get(3).options);
+
+        assertEquals(Arrays.asList(new File("/storage/ABCD-1234")), MountTable.removableVolumes(mounts));
+        assertEquals("/mnt/usb drive", MountTable.findMountFor(mounts, "/mnt/usb drive/EVCam").mountPoint);
+        assertNull(MountTable.findMountFor(mounts, "/mnt/usb"));
+        assertEquals("/storage/ABCD-1234/sub",
+                MountTable.findMountFor(mounts, "/storage/ABCD-1234/sub/a.mp4").mountPoint);
+    }
+
+    @Test
+    public void removableVolumePathRequiresHexSerial() {
+        assertTrue(MountTable.isRemovableVolumePath("/storage/1A2B-3C4D"));
+        assertTrue(MountTable.isRemovableVolumePath("/storage/0123-abcd"));
+        assertFalse(MountTable.isRemovableVolumePath("/storage/emulated"));
+        assertFalse(MountTable.isRemovableVolumePath("/storage/ABCD-12345"));
+        assertFalse(MountTable.isRemovableVolumePath("/storage/ABCD_1234"));
+        assertFalse(MountTable.isRemovableVolumePath("/storage/GHIJ-1234"));
+        assertFalse(MountTable.isRemovableVolumePath("/mnt/media_rw/1A2B-3C4D"));
+        assertFalse(MountTable.isRemovableVolumePath(null));
+    }
+
+    private List<MountTable.Mount> load(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream("/mounts/" + name);
+        assertNotNull(name, in);
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return MountTable.parse(reader);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.kooo.evcam.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * RelayCopier 单元测试：复制后的校验值、目标文件损坏检测、按检查点续传时校验已复制部分
+ */
+public class RelayCopierTest {
+    private File dir;
+    private File source;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("relay-copier-test").toFile();
+        source = new File(dir, "source.mp4");
+        content = new byte[RelayCopier.CHUNK_SIZE * 2 + 4321];
+        new Random(3).nextBytes(content);
+        Files.write(source.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(dir);
+    }
+
+    @Test
+    public void copiedTargetVerifiesAgainstResultChecksum() throws IOException {
+        File target = new File(dir, "target.mp4");
+        RelayCopier.Result result = RelayCopier.copy(source, target, null);
+
+        assertEquals(content.length, result.bytes);
+        assertEquals(RelayCopier.checksum(source), result.checksum);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        RelayCopier.verify(target, result.bytes, result.checksum);
+    }
+
+    @Test
+    public void corruptedOrTruncatedTargetFailsVerification() throws IOException {
+        File target = new File(dir, "target.mp4");
+        RelayCopier.Result result = RelayCopier.copy(source, target, null);
+
+        // 存储介质上翻转一个字节
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.seek(RelayCopier.CHUNK_SIZE + 17);
+            int b = raf.read();
+            raf.seek(RelayCopier.CHUNK_SIZE + 17);
+            raf.write(b ^ 0x01);
+        }
+        assertThrows(RelayCopier.ChecksumMismatchException.class,
+                () -> RelayCopier.verify(target, result.bytes, result.checksum));
+
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            raf.setLength(result.bytes - 1);
+        }
+        assertThrows(RelayCopier.ChecksumMismatchException.class,
+                () -> RelayCopier.verify(target, result.bytes, result.checksum));
+    }
+
+    @Test
+    public void resumeContinuesOnlyWhenCopiedPrefixMatchesCheckpoint() throws IOException {
+        File target = new File(dir, "target.mp4.part");
+        int prefix = RelayCopier.CHUNK_SIZE;
+        Files.write(target.toPath(), Arrays.copyOf(content, prefix));
+        long prefixChecksum = RelayCopier.checksum(target);
+
+        RelayCopier.Result resumed = RelayCopier.copy(source, target, null, prefix, prefixChecksum, null);
+        assertEquals(prefix, resumed.resumedFrom);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+
+        // 已复制部分被破坏：不续传，从头复制
+        byte[] damaged = Arrays.copyOf(content, prefix);
+        damaged[100] ^= 0x01;
+        Files.write(target.toPath(), damaged);
+        RelayCopier.Result restarted = RelayCopier.copy(source, target, null, prefix, prefixChecksum, null);
+        assertEquals(0, restarted.resumedFrom);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        RelayCopier.verify(target, restarted.bytes, RelayCopier.checksum(source));
+    }
+}
@@ -0,0 +1,248 @@
+package com.kooo.evcam.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 保留策略与淘汰索引测试：10 万个目录条目（约 17 天的 4 路一分钟分段），
+ * 覆盖层级顺序、事件保留期、摄像头权重、锁定上限、淘汰耗时以及快照重新加载后的淘汰顺序
+ * 条目没有对应的磁盘文件，淘汰时按“文件已不存在”处理，只验证目录与淘汰顺序
+ */
+public class RetentionTest {
+    private static final int FILE_COUNT = 100_000;
+    private static final long MINUTE_MS = 60_000;
+    private static final long DAY_MS = 24 * 60 * MINUTE_MS;
+    private static final long SEGMENT_BYTES = 1000;
+    private static final long START_MS = 1_700_000_000_000L;
+    private static final String[] CAMERAS = {"front", "back", "left", "right"};
+
+    private File root;
+    private File catalogDir;
+    private String volume;
+    private MediaCatalog catalog;
+    private long nowMs;
+    private int lockedCount;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("retention-test").toFile();
+        catalogDir = new File(root, "catalog");
+        volume = new File(root, "media").getAbsolutePath();
+        catalog = new MediaCatalog(catalogDir);
+        // 每 50 个分段一个事件录像，每 100 个分段一个锁定录像（与事件录像交替）
+        for (int i = 0; i < FILE_COUNT; i++) {
+            int tier = i % 100 == 0 ? MediaCatalog.TIER_LOCKED
+                    : i % 50 == 0 ? MediaCatalog.TIER_EVENT : MediaCatalog.TIER_LOOP;
+            if (tier == MediaCatalog.TIER_LOCKED) {
+                lockedCount++;
+            }
+            catalog.put(entry(i, tier));
+        }
+        nowMs = startOf(FILE_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(root);
+    }
+
+    @Test
+    public void loopAndExpiredEventsGoFirstAndLockedNever() {
+        RetentionPolicy policy = new RetentionPolicy(7 * DAY_MS, 0, new HashMap<>());
+        List<MediaCatalog.Entry> all = catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume, policy,
+                nowMs, FILE_COUNT);
+        assertEquals(FILE_COUNT - lockedCount, all.size());
+
+        long eventBound = nowMs - policy.getEventRetentionMs();
+        boolean inSecondPass = false;
+        for (int i = 0; i < all.size(); i++) {
+            MediaCatalog.Entry e = all.get(i);
+            assertFalse(e.isLocked());
+            boolean unexpiredEvent = e.tier == MediaCatalog.TIER_EVENT && e.startTimeMs >= eventBound;
+            if (unexpiredEvent) {
+                inSecondPass = true;
+            } else {
+                assertFalse("loop clip " + e.path + " after unexpired events", inSecondPass);
+            }
+            if (i > 0 && unexpiredEvent == isUnexpiredEvent(all.get(i - 1), eventBound)) {
+                // 同一轮内权重相同，严格从旧到新
+                assertTrue(all.get(i - 1).startTimeMs <= e.startTimeMs);
+            }
+        }
+        assertTrue(inSecondPass);
+    }
+
+    @Test
+    public void weightedCameraIsKeptLonger() {
+        Map<String, Double> weights = new HashMap<>();
+        weights.put("front", 2.0);
+        RetentionPolicy policy = new RetentionPolicy(7 * DAY_MS, 0, weights);
+        List<MediaCatalog.Entry> candidates = catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume,
+                policy, nowMs, FILE_COUNT);
+
+        // 前摄像头最旧的可淘汰分段加权年龄约 8.7 天：其他摄像头年龄超过 8.7 天的分段（约 3.6 万个）先被淘汰
+        double frontOldest = (nowMs - startOf(4)) / 2.0;
+        int expectedBefore = 0;
+        for (int i = 0; i < FILE_COUNT; i++) {
+            if (!"front".equals(CAMERAS[i % CAMERAS.length]) && nowMs - startOf(i) > frontOldest
+                    && i % 100 != 0) {
+                expectedBefore++;
+            }
+        }
+        assertTrue(expectedBefore > 30_000);
+        for (int i = 0; i < expectedBefore; i++) {
+            assertFalse("front evicted at " + i, "front".equals(candidates.get(i).camera));
+        }
+        assertEquals("front", candidates.get(expectedBefore).camera);
+
+        // 合并后的淘汰顺序按加权年龄单调不增（第一轮内）
+        double previous = Double.MAX_VALUE;
+        for (MediaCatalog.Entry e : candidates) {
+            if (e.tier == MediaCatalog.TIER_EVENT && e.startTimeMs >= nowMs - policy.getEventRetentionMs()) {
+                break;
+            }
+            double weighted = (nowMs - e.startTimeMs) / policy.getCameraWeight(e.camera);
+            assertTrue(weighted <= previous);
+            previous = weighted;
+        }
+    }
+
+    @Test
+    public void candidateBatchesStayCheapAtScale() {
+        RetentionPolicy policy = RetentionPolicy.DEFAULT;
+        // 预热
+        for (int i = 0; i < 100; i++) {
+            catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume, policy, nowMs, 32);
+        }
+        int rounds = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume, policy, nowMs, 32);
+        }
+        long perBatchUs = (System.nanoTime() - start) / rounds / 1000;
+        // 与文件总数无关（O(k log c)）；宽松上限，只用于发现退化为全量扫描的实现
+        assertTrue("32 candidates took " + perBatchUs + "us", perBatchUs < 2000);
+    }
+
+    @Test
+    public void quotaEvictionKeepsNewestAndLockedAndSurvivesReload() {
+        StorageQuotaEngine engine = new StorageQuotaEngine(catalog);
+        long total = catalog.getTotalSize(MediaCatalog.TYPE_VIDEO, volume);
+        long limit = total / 2;
+        long start = System.nanoTime();
+        StorageQuotaEngine.Result result = engine.enforceLimit(MediaCatalog.TYPE_VIDEO, volume, limit, 0.0);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(total, result.originalSize);
+        assertTrue(result.finalSize <= limit);
+        assertEquals(total - result.finalSize, result.deletedSize);
+        assertEquals(FILE_COUNT / 2, result.deletedCount);
+        assertTrue("evicting 50k entries took " + elapsedMs + "ms", elapsedMs < 30_000);
+        assertEquals(lockedCount * SEGMENT_BYTES, catalog.getLockedSize(MediaCatalog.TYPE_VIDEO, volume));
+        // 锁定录像保留；最旧的循环录像和已过保留期的事件录像被删除
+        assertNotNull(catalog.get(pathOf(0)));
+        assertNull(catalog.get(pathOf(1)));
+        assertNull(catalog.get(pathOf(50)));
+        assertNotNull(catalog.get(pathOf(FILE_COUNT - 1)));
+
+        // 淘汰索引随目录持久化：压缩快照后重新加载，淘汰顺序不变
+        List<MediaCatalog.Entry> before = catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume,
+                RetentionPolicy.DEFAULT, nowMs, 1000);
+        catalog.compact();
+        MediaCatalog reloaded = new MediaCatalog(catalogDir);
+        assertEquals(catalog.size(), reloaded.size());
+        List<MediaCatalog.Entry> after = reloaded.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume,
+                RetentionPolicy.DEFAULT, nowMs, 1000);
+        assertEquals(paths(before), paths(after));
+        assertEquals(catalog.getLockedSize(MediaCatalog.TYPE_VIDEO, volume),
+                reloaded.getLockedSize(MediaCatalog.TYPE_VIDEO, volume));
+    }
+
+    @Test
+    public void lockedCapEvictsOldestLockedOnly() {
+        long cap = 100 * SEGMENT_BYTES;
+        StorageQuotaEngine engine = new StorageQuotaEngine(catalog);
+        engine.setRetentionPolicy(new RetentionPolicy(7 * DAY_MS, cap, new HashMap<>()));
+        StorageQuotaEngine.Result result = engine.enforceLockedCap(MediaCatalog.TYPE_VIDEO, volume);
+
+        assertEquals(lockedCount - 100, result.deletedCount);
+        assertEquals(cap, catalog.getLockedSize(MediaCatalog.TYPE_VIDEO, volume));
+        assertNull(catalog.get(pathOf(0)));
+        assertNotNull(catalog.get(pathOf(FILE_COUNT - 100)));
+        // 循环录像不受影响
+        assertNotNull(catalog.get(pathOf(1)));
+        assertEquals(FILE_COUNT - (lockedCount - 100), catalog.size());
+    }
+
+    @Test
+    public void lockAndUnlockMoveEntriesBetweenTiers() {
+        RetentionPolicy policy = RetentionPolicy.DEFAULT;
+        String oldest = pathOf(1);
+        assertEquals(oldest, catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume, policy, nowMs, 1)
+                .get(0).path);
+
+        assertTrue(catalog.setLocked(oldest, true));
+        assertEquals(pathOf(2), catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume, policy, nowMs, 1)
+                .get(0).path);
+        assertEquals((lockedCount + 1) * SEGMENT_BYTES, catalog.getLockedSize(MediaCatalog.TYPE_VIDEO, volume));
+
+        assertTrue(catalog.setLocked(oldest, false));
+        assertEquals(oldest, catalog.selectEvictionCandidates(MediaCatalog.TYPE_VIDEO, volume, policy, nowMs, 1)
+                .get(0).path);
+        assertFalse(catalog.setLocked(pathOf(FILE_COUNT), true));
+    }
+
+    @Test
+    public void cameraWeightSpecIgnoresInvalidItems() {
+        Map<String, Double> weights = RetentionPolicy.parseCameraWeights(" front:2 , back:x, :3, left:-1, right:1.5");
+        assertEquals(2, weights.size());
+        RetentionPolicy policy = new RetentionPolicy(DAY_MS, 0, weights);
+        assertEquals(2.0, policy.getCameraWeight("front"), 0);
+        assertEquals(1.5, policy.getCameraWeight("right"), 0);
+        assertEquals(1.0, policy.getCameraWeight("back"), 0);
+        assertTrue(RetentionPolicy.parseCameraWeights(null).isEmpty());
+    }
+
+    private static boolean isUnexpiredEvent(MediaCatalog.Entry e, long eventBound) {
+        return e.tier == MediaCatalog.TIER_EVENT && e.startTimeMs >= eventBound;
+    }
+
+    private static List<String> paths(List<MediaCatalog.Entry> entries) {
+        List<String> paths = new ArrayList<>();
+        for (MediaCatalog.Entry e : entries) {
+            paths.add(e.path);
+        }
+        return paths;
+    }
+
+    /**
+     * 第 i 个分段：4 路摄像头轮流，每分钟一组，各摄像头依次晚 1 秒启动
+     */
+    private static long startOf(int i) {
+        return START_MS + (i / CAMERAS.length) * MINUTE_MS + (i % CAMERAS.length) * 1000;
+    }
+
+    private String pathOf(int i) {
+        return volume + File.separator + String.format("seg%06d_%s.mp4", i, CAMERAS[i % CAMERAS.length]);
+    }
+
+    private MediaCatalog.Entry entry(int i, int tier) {
+        return new MediaCatalog.Entry(pathOf(i), MediaCatalog.TYPE_VIDEO, CAMERAS[i % CAMERAS.length], startOf(i),
+                MINUTE_MS, SEGMENT_BYTES, "h264", tier, volume);
+    }
+}
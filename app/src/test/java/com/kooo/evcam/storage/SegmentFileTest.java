@@ -0,0 +1,137 @@
+package com.kooo.evcam.storage;
+
+import com.kooo.evcam.media.Mp4Fixture;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SegmentFile 单元测试：按文件系统决定是否预分配、按 MP4 box 链截断预分配空间
+ *
+ * FAT 延迟测试需要回环挂载的 vfat / exFAT 目录（默认跳过），例如：
+ * truncate -s 1G fat.img && mkfs.vfat fat.img && sudo mount -o loop,uid=$(id -u) fat.img /mnt/evcam-vfat
+ * ./gradlew :app:testDebugUnitTest --tests '*SegmentFileTest' -Pevcam.fatDirs=/mnt/evcam-vfat,/mnt/evcam-exfat
+ */
+public class SegmentFileTest {
+    // 60 秒 10 Mbps 分段的预计大小
+    private static final long SEGMENT_BYTES = SegmentFile.expectedSize(10_000_000, 60_000);
+
+    private static final String MOUNTS =
+            "/dev/block/dm-5 /data ext4 rw,nosuid,nodev,noatime 0 0\n"
+            + "/dev/fuse /storage/emulated fuse rw,nosuid,nodev 0 0\n"
+            + "/dev/block/vold/public:8,1 /mnt/media_rw/1A2B-3C4D vfat rw,dirsync,nosuid 0 0\n"
+            + "/dev/fuse /storage/1A2B-3C4D fuse rw,nosuid,nodev 0 0\n"
+            + "/dev/block/vold/public:8,17 /mnt/media_rw/5E6F-7A8B exfat rw,nosuid 0 0\n"
+            + "/dev/block/sda1 /storage/9C0D-1E2F sdcardfs rw,nosuid 0 0\n"
+            + "/dev/block/sdb1 /mnt/usb\\040disk f2fs rw 0 0\n";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("segment-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(dir);
+    }
+
+    @Test
+    public void preallocatesOnlyWhereFallocateDoesNotZeroFill() throws IOException {
+        List<MountTable.Mount> mounts = MountTable.parse(new StringReader(MOUNTS));
+        assertTrue(SegmentFile.supportsPreallocation(mounts, "/data/media/0/DCIM/EVCam_Video/a.mp4"));
+        assertTrue(SegmentFile.supportsPreallocation(mounts, "/storage/emulated/0/DCIM/EVCam_Video/a.mp4"));
+        assertTrue(SegmentFile.supportsPreallocation(mounts, "/mnt/usb disk/EVCam_Video/a.mp4"));
+        assertTrue("unknown mount is left to fallocate", SegmentFile.supportsPreallocation(mounts, "/other/a.mp4"));
+
+        assertFalse(SegmentFile.supportsPreallocation(mounts, "/mnt/media_rw/1A2B-3C4D/EVCam_Video/a.mp4"));
+        assertFalse(SegmentFile.supportsPreallocation(mounts, "/mnt/media_rw/5E6F-7A8B/EVCam_Video/a.mp4"));
+        // 可移动存储卷经 FUSE / sdcardfs 转发，看不到底层 FAT
+        assertFalse(SegmentFile.supportsPreallocation(mounts, "/storage/1A2B-3C4D/EVCam_Video/a.mp4"));
+        assertFalse(SegmentFile.supportsPreallocation(mounts, "/storage/9C0D-1E2F/EVCam_Video/a.mp4"));
+    }
+
+    @Test
+    public void findMp4EndStopsAtPreallocatedZeros() throws IOException {
+        File file = Mp4Fixture.writeVideo(new File(dir, "a.mp4"), 60);
+        long dataEnd = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(dataEnd + 4 * 1024 * 1024);
+            assertEquals(dataEnd, SegmentFile.findMp4End(raf.getChannel()));
+        }
+    }
+
+    @Test
+    public void findMp4EndDoesNotTruncateIncompleteBoxes() throws IOException {
+        File file = Mp4Fixture.writeVideo(new File(dir, "a.mp4"), 60);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            // 最后一个 box 被截断（崩溃时 moov 尚未写完）
+            channel.truncate(channel.size() - 10);
+            assertEquals(-1, SegmentFile.findMp4End(channel));
+        }
+    }
+
+    /**
+     * 在回环挂载的 FAT 目录上测量：旧实现的 setLength 回退需要写 0 整段空间，
+     * 现在 SegmentFile.create 跳过预分配，创建耗时与分段大小无关，也不留下整段大小的文件
+     */
+    @Test
+    public void fatVolumesSkipPreallocation() throws IOException {
+        String dirs = System.getProperty("evcam.fatDirs", "");
+        Assume.assumeFalse("needs loop-mounted vfat/exFAT directories (-Pevcam.fatDirs=...)", dirs.isEmpty());
+        List<MountTable.Mount> mounts = MountTable.read();
+        for (String path : dirs.split(",")) {
+            File fatDir = new File(path.trim());
+            Assume.assumeTrue(fatDir + " is not writable", fatDir.canWrite());
+            MountTable.Mount mount = MountTable.findMountFor(mounts, fatDir.getAbsolutePath());
+            assertFalse(fatDir + " (" + (mount != null ? mount.fsType : "?") + ")",
+                    SegmentFile.supportsPreallocation(mounts, fatDir.getAbsolutePath()));
+
+            File old = new File(fatDir, "zero_fill.mp4");
+            long zeroFillNs;
+            try (RandomAccessFile raf = new RandomAccessFile(old, "rw")) {
+                long start = System.nanoTime();
+                raf.setLength(SEGMENT_BYTES);
+                // 写入分段末尾的一块，FAT 在这里为之前的整段空间补 0
+                raf.seek(SEGMENT_BYTES - 4096);
+                raf.write(new byte[4096]);
+                raf.getFD().sync();
+                zeroFillNs = System.nanoTime() - start;
+            } finally {
+                old.delete();
+            }
+
+            File segment = new File(fatDir, "segment.mp4");
+            long createNs;
+            try {
+                long start = System.nanoTime();
+                try (SegmentFile file = SegmentFile.create(segment, 10_000_000, 60_000, mounts)) {
+                    createNs = System.nanoTime() - start;
+                    assertEquals(0, file.getPreallocatedBytes());
+                }
+                assertEquals(0, segment.length());
+            } finally {
+                segment.delete();
+            }
+            System.out.printf("%s (%s): zero-fill %.1f ms, create %.1f ms%n", fatDir,
+                    mount != null ? mount.fsType : "?", zeroFillNs / 1e6, createNs / 1e6);
+            assertTrue(createNs < zeroFillNs);
+        }
+    }
+}
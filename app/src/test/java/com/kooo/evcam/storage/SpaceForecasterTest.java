@@ -0,0 +1,163 @@
+package com.kooo.evcam.storage;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SpaceForecaster 单元测试：用模拟的录制负载（摄像头数 × 码率 × 分段时长）和删除速度驱动预测器
+ */
+public class SpaceForecasterTest {
+    private static final long MB = 1024 * 1024;
+    private static final long SEGMENT_MS = 60_000;
+    private static final String[] CAMERAS = {"front", "back", "left", "right"};
+
+    @Test
+    public void steadyFourCameraWorkload() {
+        SpaceForecaster forecaster = new SpaceForecaster();
+        // 4 路 × 1MB/s，每分钟一个 60MB 分段，运行 15 分钟
+        long now = recordSegments(forecaster, "usb", 0, 15, 60 * MB);
+
+        SpaceForecaster.Forecast forecast = forecaster.forecast("usb", 4000 * MB, now);
+        assertEquals(4 * MB, forecast.writeBytesPerSec, 0.01 * MB);
+        assertEquals(1000, forecast.secondsToFull, 5);
+        assertEquals(4, forecast.activeCameras);
+        // 尚未测量删除速度：只预留每路 2 个分段
+        assertEquals(4 * 2 * 60 * MB, forecast.reserveBytes);
+    }
+
+    @Test
+    public void startupSpikeIsNotExtrapolated() {
+        SpaceForecaster forecaster = new SpaceForecaster();
+        // 启动 1 秒后保存一张 6MB 的照片（无时长），不能被当作 6MB/s 的持续写入
+        forecaster.onBytesWritten("usb", "front", 6 * MB, 0, 1_000);
+        SpaceForecaster.Forecast forecast = forecaster.forecast("usb", 1000 * MB, 1_000);
+        assertEquals(0.1 * MB, forecast.writeBytesPerSec, 1);
+
+        // 第一个分段按其录制时长计算速率
+        forecaster.onBytesWritten("usb", "front", 60 * MB, SEGMENT_MS, 61_000);
+        assertEquals(1.1 * MB, forecaster.forecast("usb", 1000 * MB, 61_000).writeBytesPerSec, 0.01 * MB);
+    }
+
+    @Test
+    public void stoppedCamerasLeaveTheWindow() {
+        SpaceForecaster forecaster = new SpaceForecaster();
+        long now = recordSegments(forecaster, "usb", 0, 5, 60 * MB);
+        // 只剩前摄像头继续录制
+        for (int i = 0; i < 11; i++) {
+            now += SEGMENT_MS;
+            forecaster.onBytesWritten("usb", "front", 60 * MB, SEGMENT_MS, now);
+        }
+        SpaceForecaster.Forecast forecast = forecaster.forecast("usb", 4000 * MB, now);
+        assertEquals(1, forecast.activeCameras);
+        assertEquals(2 * 60 * MB, forecast.reserveBytes);
+        assertEquals(1 * MB, forecast.writeBytesPerSec, 0.01 * MB);
+
+        // 全部停止超过统计窗口后不再预测写满时间
+        forecast = forecaster.forecast("usb", 4000 * MB, now + SpaceForecaster.RATE_WINDOW_MS + 1);
+        assertEquals(0, forecast.activeCameras);
+        assertEquals(-1, forecast.secondsToFull);
+        assertEquals(0, forecast.reserveBytes);
+    }
+
+    @Test
+    public void bitrateChangeMovesSegmentReserve() {
+        SpaceForecaster forecaster = new SpaceForecaster();
+        forecaster.setReservedSegments(1);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            now += SEGMENT_MS;
+            forecaster.onBytesWritten("usb", "front", 30 * MB, SEGMENT_MS, now);
+        }
+        assertEquals(30 * MB, forecaster.forecast("usb", 4000 * MB, now).reserveBytes, MB);
+
+        // 码率翻倍：几个分段后预留接近新分段大小
+        for (int i = 0; i < 10; i++) {
+            now += SEGMENT_MS;
+            forecaster.onBytesWritten("usb", "front", 60 * MB, SEGMENT_MS, now);
+        }
+        assertEquals(60 * MB, forecaster.forecast("usb", 4000 * MB, now).reserveBytes, MB);
+    }
+
+    @Test
+    public void slowDeletionAddsWriteLead() {
+        SpaceForecaster forecaster = new SpaceForecaster();
+        long now = recordSegments(forecaster, "usb", 0, 15, 60 * MB);
+        // U 盘删除 100MB 用了 20 秒：回收 480MB 需要 96 秒，期间还会写入 384MB
+        forecaster.onBytesEvicted("usb", 100 * MB, 20_000);
+        SpaceForecaster.Forecast forecast = forecaster.forecast("usb", 4000 * MB, now);
+        assertEquals(480 * MB + 384 * MB, forecast.reserveBytes, MB);
+
+        // 其他存储卷不受影响
+        assertEquals(0, forecaster.forecast("internal", 4000 * MB, now).reserveBytes);
+    }
+
+    @Test
+    public void simulatedDriveKeepsRoomForReservedSegments() {
+        // 8GB U 盘，4 路 × 1MB/s 录制 3 小时；每个分段关闭时按预测的预留空间清理，慢速 U 盘每秒只能删除 1 个分段
+        long capacity = 8 * 1024 * MB;
+        long deleteBytesPerSec = 60 * MB;
+        SpaceForecaster forecaster = new SpaceForecaster();
+        ArrayDeque<Long> files = new ArrayDeque<>();
+        long used = 0;
+        long pendingDelete = 0;
+        long minAvailable = Long.MAX_VALUE;
+        int cleanups = 0;
+
+        for (long second = 1; second <= 3 * 3600; second++) {
+            long now = second * 1000;
+            // 录制中的分段持续占用空间
+            used += CAMERAS.length * MB;
+            // 清理在后台按删除速度逐步释放空间
+            long freed = Math.min(pendingDelete, deleteBytesPerSec);
+            used -= freed;
+            pendingDelete -= freed;
+            minAvailable = Math.min(minAvailable, capacity - used);
+
+            if (second % 60 != 0) {
+                continue;
+            }
+            for (String camera : CAMERAS) {
+                files.addLast(60 * MB);
+                forecaster.onBytesWritten("usb", camera, 60 * MB, SEGMENT_MS, now);
+            }
+            long available = capacity - used;
+            SpaceForecaster.Forecast forecast = forecaster.forecast("usb", available, now);
+            if (pendingDelete == 0 && available < forecast.reserveBytes) {
+                // 与 StorageCleanupManager 一致：回收到低水位之上 20%
+                long target = (long) (forecast.reserveBytes * 1.2) - available;
+                long selected = 0;
+                while (selected < target && !files.isEmpty()) {
+                    selected += files.pollFirst();
+                }
+                pendingDelete = selected;
+                forecaster.onBytesEvicted("usb", selected, selected * 1000 / deleteBytesPerSec);
+                cleanups++;
+            }
+        }
+
+        assertTrue(cleanups > 10);
+        // 删除期间写入继续，可用空间仍然够每路再录 1 个分段
+        assertTrue("min available " + minAvailable / MB + "MB",
+                minAvailable >= CAMERAS.length * 60 * MB);
+    }
+
+    /**
+     * 4 路摄像头每分钟关闭一个分段
+     * @return 最后一个分段关闭的时间
+     */
+    private static long recordSegments(SpaceForecaster forecaster, String volume, long startMs, int minutes,
+                                       long segmentBytes) {
+        long now = startMs;
+        for (int i = 0; i < minutes; i++) {
+            now += SEGMENT_MS;
+            for (String camera : CAMERAS) {
+                forecaster.onBytesWritten(volume, camera, segmentBytes, SEGMENT_MS, now);
+            }
+        }
+        return now;
+    }
+}
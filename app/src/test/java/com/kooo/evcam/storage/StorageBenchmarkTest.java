@@ -0,0 +1,73 @@
+package com.kooo.evcam.storage;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * StorageBenchmark 单元测试
+ *
+ * 对指定目录（如 U 盘挂载点）运行完整测试并输出结果（默认跳过）：
+ * ./gradlew :app:testDebugUnitTest --tests '*StorageBenchmarkTest' -Pevcam.storageBenchmarkDir=目录
+ */
+public class StorageBenchmarkTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("storage-bench-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(dir);
+    }
+
+    @Test
+    public void smallRunReportsConsistentResultAndCleansUp() throws IOException {
+        // 进度在各写入线程上回调
+        List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+        StorageBenchmark.Result result = new StorageBenchmark(dir, 2, 4 * StorageBenchmark.CHUNK_SIZE)
+                .run(progress::add);
+
+        assertEquals(2, result.writers);
+        assertEquals(dir.getAbsolutePath(), result.path);
+        assertTrue(result.aggregateBytesPerSec > 0);
+        assertTrue(result.minWriterBytesPerSec <= result.aggregateBytesPerSec);
+        assertTrue(result.writeP50Ms <= result.writeP99Ms && result.writeP99Ms <= result.writeMaxMs);
+        assertTrue(result.getMaxSafeAggregateBitrate() > 0);
+        assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+        String[] left = dir.list();
+        assertEquals(0, left == null ? 0 : left.length);
+
+        StorageBenchmark.Result restored = StorageBenchmark.Result.deserialize(result.serialize());
+        // 序列化时速度取整到字节
+        assertEquals(result.aggregateBytesPerSec, restored.aggregateBytesPerSec, 1);
+        assertEquals(result.writeP99Ms, restored.writeP99Ms, 0.001);
+        assertEquals(result.writers, restored.writers);
+    }
+
+    @Test
+    public void runOnConfiguredDirectory() throws IOException {
+        String path = System.getProperty("evcam.storageBenchmarkDir", "");
+        Assume.assumeFalse("set -Pevcam.storageBenchmarkDir to benchmark a directory", path.isEmpty());
+        int writers = Integer.getInteger("evcam.storageBenchmarkWriters", 4);
+        long mb = Long.getLong("evcam.storageBenchmarkMb", 64);
+        StorageBenchmark.Result result = new StorageBenchmark(new File(path), writers, mb * 1024 * 1024).run(null);
+        System.out.println(result);
+        System.out.println(String.format(Locale.US, "Max safe aggregate bitrate: %.1f Mbps",
+                result.getMaxSafeAggregateBitrate() / 1e6));
+    }
+}
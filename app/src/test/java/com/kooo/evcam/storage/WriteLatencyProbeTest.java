@@ -0,0 +1,59 @@
+package com.kooo.evcam.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WriteLatencyProbe 单元测试：录制期间上报同步写入延迟、按目录引用计数、停止后删除探测文件
+ */
+public class WriteLatencyProbeTest {
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("write-probe-test").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        MediaCatalogTest.deleteRecursively(dir);
+    }
+
+    @Test
+    public void reportsSyncWriteLatencyWhileRecording() throws InterruptedException {
+        IoScheduler scheduler = IoScheduler.getInstance();
+        WriteLatencyProbe probe = new WriteLatencyProbe(scheduler, 20);
+        File probeFile = new File(dir, WriteLatencyProbe.PROBE_FILE_NAME);
+
+        probe.start(dir);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getWriteLatencyNs() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(scheduler.getWriteLatencyNs() > 0);
+        // 循环覆盖，不随录制时长增长
+        Thread.sleep(200);
+        assertTrue(probeFile.exists());
+        assertTrue(probeFile.length() <= 64 * 1024);
+
+        // 两个录制器共用同一目录：都停止后才结束探测
+        probe.start(dir);
+        probe.stop(dir);
+        assertTrue(probe.isProbing(dir));
+        probe.stop(dir);
+        assertFalse(probe.isProbing(dir));
+        deadline = System.currentTimeMillis() + 5000;
+        while (probeFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(probeFile.exists());
+    }
+}